@@ -28,6 +28,7 @@ public class TwinParser
 
     protected TwinTags tags = null;
     protected TwinProperties properties = new TwinProperties();
+    private volatile boolean desiredPropertyResyncPending = false;
     protected RegisterManagerParser manager = new RegisterManagerParser();
 
     /**
@@ -613,19 +614,19 @@ public class TwinParser
         }
 
         /* Codes_SRS_TWINPARSER_21_043: [If the provided json is not valid, the updateTwin shall throws IllegalArgumentException.] */
-        validateJson(json);
+        /* Codes_SRS_TWINPARSER_28_006: [The updateTwin shall parse the json tree only once, to validate it and to update the collection.] */
+        Map<String, Object> jsonTree = validateJson(json);
 
         /* Codes_SRS_TWINPARSER_21_071: [If the provided json is empty, the updateTwin shall not change the collection and not call the OnDesiredCallback or the OnReportedCallback.] */
-        if(!json.isEmpty())
+        if((!json.isEmpty()) && (jsonTree != null))
         {
             Gson gson = new GsonBuilder().disableInnerClassSerialization().disableHtmlEscaping().create();
-            Map<String, Object> jsonTree;
+            boolean resync = this.desiredPropertyResyncPending;
             try
             {
                 /* Codes_SRS_TWINPARSER_21_097: [If the provided json have any duplicated `properties` or `tags`, the updateTwin shall throw IllegalArgumentException.] */
                 /* Codes_SRS_TWINPARSER_21_098: [If the provided json is properties only and contains duplicated `desired` or `reported`, the updateTwin shall throws IllegalArgumentException.] */
                 /* Codes_SRS_TWINPARSER_21_094: [If the provided json have any duplicated `key`, the updateTwin shall use the content of the last one in the String.] */
-                jsonTree = (Map<String, Object>) gson.fromJson(json, HashMap.class);
                 manager = gson.fromJson(json, RegisterManagerParser.class);
             }
             catch (JsonSyntaxException e)
@@ -635,6 +636,7 @@ public class TwinParser
             }
 
             boolean propertiesLevel = false;
+            boolean desiredUpdated = false;
             for (Map.Entry<String, Object> entry : jsonTree.entrySet())
             {
                 if (entry.getKey().equals(PROPERTIES_TAG))
@@ -649,7 +651,9 @@ public class TwinParser
                     /* Codes_SRS_TWINPARSER_21_047: [If OnReportedCallback was not provided, the updateTwin shall not do anything with the list of updated reported properties.] */
                     /* Codes_SRS_TWINPARSER_21_069: [If there is no change in the Desired property, the updateTwin shall not change the reported collection and not call the OnReportedCallback.] */
                     /* Codes_SRS_TWINPARSER_21_070: [If there is no change in the Reported property, the updateTwin shall not change the reported collection and not call the OnReportedCallback.] */
-                    properties.update((Map<String, Object>) entry.getValue(), onDesiredCallback, onReportedCallback);
+                    Map<String, Object> propertiesTree = (Map<String, Object>) entry.getValue();
+                    properties.update(propertiesTree, onDesiredCallback, onReportedCallback, resync);
+                    desiredUpdated = (propertiesTree != null) && propertiesTree.containsKey(DESIRED_TAG);
                     propertiesLevel = true;
                 }
                 else if ((entry.getKey().equals(DESIRED_TAG)) || (entry.getKey().equals(REPORTED_TAG)))
@@ -658,7 +662,8 @@ public class TwinParser
                     if (!propertiesLevel)
                     {
                         /* Codes_SRS_TWINPARSER_21_090: [If the provided json is properties only and contains other tag different than `desired` or `reported`, the updateTwin shall throws IllegalArgumentException.] */
-                        properties.update(jsonTree, onDesiredCallback, onReportedCallback);
+                        properties.update(jsonTree, onDesiredCallback, onReportedCallback, resync);
+                        desiredUpdated = jsonTree.containsKey(DESIRED_TAG);
                     }
                     else
                     {
@@ -676,6 +681,13 @@ public class TwinParser
                     propertiesLevel = true;
                 }
             }
+
+            if (resync && desiredUpdated)
+            {
+                /* Codes_SRS_TWINPARSER_28_005: [If a resync of the desired properties is pending, the updateTwin shall delete the desired properties that are not in the json.] */
+                /* Codes_SRS_TWINPARSER_28_007: [Once the updateTwin received the desired properties, the resync shall not be pending anymore.] */
+                this.desiredPropertyResyncPending = false;
+            }
         }
     }
 
@@ -705,7 +717,12 @@ public class TwinParser
             /* Codes_SRS_TWINPARSER_21_092: [If the provided json is not valid, the updateDesiredProperty shall throws IllegalArgumentException.] */
             try
             {
-                properties.updateDesired(json, onDesiredCallback);
+                /* Codes_SRS_TWINPARSER_28_001: [The update shall merge the json into the collection as a patch, walking only the keys in the json, and send only the changed leaves to the callback.] */
+                if (!properties.updateDesired(json, onDesiredCallback))
+                {
+                    /* Codes_SRS_TWINPARSER_28_004: [If a version is missing, the updateDesiredProperty shall mark a resync of the desired properties as pending, until updateTwin receives the desired properties.] */
+                    this.desiredPropertyResyncPending = true;
+                }
             }
             catch (JsonSyntaxException e)
             {
@@ -715,6 +732,18 @@ public class TwinParser
         }
     }
 
+    /**
+     * Return whether a `desired` patch arrived after a missing version, so the
+     * collection shall be resynchronized with the full twin.
+     *
+     * @return true if updateTwin shall be called with the full twin, false otherwise.
+     */
+    public boolean isDesiredPropertyResyncPending()
+    {
+        /* Codes_SRS_TWINPARSER_28_008: [The isDesiredPropertyResyncPending shall return true if a desired version is missing and the full twin was not received since, and false otherwise.] */
+        return this.desiredPropertyResyncPending;
+    }
+
     /**
      * Update the `reported` properties information in the collection, using the information parsed from the provided json.
      * It will fire a callback if any property was added, excluded, or had its value updated.
@@ -1000,7 +1029,7 @@ public class TwinParser
         return this.manager.lastActivityTime;
     }
 
-    private void validateJson(String json) throws IllegalArgumentException
+    private Map<String, Object> validateJson(String json) throws IllegalArgumentException
     {
         Map<String, Object> map;
         try
@@ -1053,6 +1082,7 @@ public class TwinParser
                 throw new IllegalArgumentException("Json do not contains twin information");
             }
         }
+        return map;
     }
 
     private void validateMap(Map<String, Object> map) throws IllegalArgumentException
@@ -72,9 +72,9 @@ public class TwinProperties
         this.reported = new TwinProperty();
     }
 
-    protected void updateDesired(String json, TwinChangedCallback onDesiredCallback)
+    protected boolean updateDesired(String json, TwinChangedCallback onDesiredCallback)
     {
-        this.desired.update(json, onDesiredCallback);
+        return this.desired.update(json, onDesiredCallback);
     }
 
     protected void updateReported(String json, TwinChangedCallback onDesiredCallback)
@@ -130,12 +130,20 @@ public class TwinProperties
     protected void update(Map<String, Object> jsonTree,
                           TwinChangedCallback onDesiredCallback, TwinChangedCallback onReportedCallback)
             throws IllegalArgumentException
+    {
+        update(jsonTree, onDesiredCallback, onReportedCallback, false);
+    }
+
+    protected void update(Map<String, Object> jsonTree,
+                          TwinChangedCallback onDesiredCallback, TwinChangedCallback onReportedCallback,
+                          boolean replaceDesired)
+            throws IllegalArgumentException
     {
         for(Map.Entry<String, Object> entry : jsonTree.entrySet())
         {
             if(entry.getKey().equals(DESIRED_TAG))
             {
-                desired.update((Map<String, Object>) entry.getValue(), onDesiredCallback);
+                desired.update((Map<String, Object>) entry.getValue(), onDesiredCallback, replaceDesired);
             }
             else if(entry.getKey().equals(REPORTED_TAG))
             {
@@ -44,6 +44,9 @@ public class TwinProperty
         }
     }
 
+    /* Returned by mergeValue when the json does not change the value. */
+    private static final Object NO_CHANGE = new Object();
+
     private ConcurrentMap<String, Property> property = new ConcurrentHashMap<>();;
     private Integer version;
     private Boolean reportMetadata;
@@ -295,6 +298,18 @@ public class TwinProperty
 
     protected void update(Map<String, Object> jsonTree,
                        TwinChangedCallback onCallback) throws IllegalArgumentException
+    {
+        update(jsonTree, onCallback, false);
+    }
+
+    protected void update(Map<String, Object> jsonTree,
+                          TwinChangedCallback onCallback, boolean removeMissing) throws IllegalArgumentException
+    {
+        apply(jsonTree, onCallback, false, removeMissing);
+    }
+
+    private void apply(Map<String, Object> jsonTree,
+                       TwinChangedCallback onCallback, boolean isPatch, boolean removeMissing) throws IllegalArgumentException
     {
         Map<String, Object> diffField = new HashMap<>();
         Map<String, Object> diffMetadata = new HashMap<>();
@@ -308,7 +323,7 @@ public class TwinProperty
             /* Codes_SRS_TWINPARSER_21_041: [The updateTwin shall create a list with all properties that was updated (new key or value) by the new json.] */
             /* Codes_SRS_TWINPARSER_21_030: [The updateDesiredProperty shall generate a map with all pairs key value that had its content changed.] */
             /* Codes_SRS_TWINPARSER_21_035: [The updateReportedProperty shall generate a map with all pairs key value that had its content changed.] */
-            diffField = updateFields(jsonTree);
+            diffField = updateFields(jsonTree, isPatch, removeMissing);
             diffMetadata = updateMetadata(jsonTree);
         }
         catch (Exception e)
@@ -352,7 +367,7 @@ public class TwinProperty
         }
     }
 
-    protected void update(String json, TwinChangedCallback onCallback) throws IllegalArgumentException
+    protected boolean update(String json, TwinChangedCallback onCallback) throws IllegalArgumentException
     {
         Map   <String, Object> newValues;
         try
@@ -366,7 +381,133 @@ public class TwinProperty
         {
             throw new IllegalArgumentException("Malformed Json:" + e);
         }
-        update(newValues, onCallback);
+
+        boolean inOrder = true;
+        Integer patchVersion = readVersion(newValues);
+        if ((patchVersion != null) && (version != null))
+        {
+            if (patchVersion <= version)
+            {
+                /* Codes_SRS_TWINPARSER_28_002: [If the json has a `$version` that is not newer than the version of the collection, the update shall ignore the json, and not call the callback.] */
+                return true;
+            }
+            /* Codes_SRS_TWINPARSER_28_003: [If the `$version` of the json is not the next version of the collection, the update shall apply the json and report that a version is missing.] */
+            inOrder = (patchVersion == version + 1);
+        }
+
+        /* Codes_SRS_TWINPARSER_28_001: [The update shall merge the json into the collection as a patch, walking only the keys in the json, and send only the changed leaves to the callback.] */
+        apply(newValues, onCallback, true, false);
+        return inOrder;
+    }
+
+    private static Integer readVersion(Map<String, Object> jsonTree)
+    {
+        Object value = (jsonTree == null) ? null : jsonTree.get(VERSION_TAG);
+        return (value instanceof Number) ? ((Number) value).intValue() : null;
+    }
+
+    /*
+     * Merges the new json value into the current value, and returns the leaves
+     * that changed, or NO_CHANGE. A patch only copies the maps on the changed
+     * paths, keeps the keys it does not mention, and deletes the keys it sets
+     * to null; otherwise the new value replaces the current one. The value to
+     * store is returned in mergedValue[0].
+     */
+    private static Object mergeValue(Object currentValue, Object newValue, boolean isPatch, Object[] mergedValue)
+    {
+        if ((newValue instanceof Map) && (currentValue instanceof Map))
+        {
+            Map<String, Object> current = (Map<String, Object>) currentValue;
+            Map<String, Object> changes = (Map<String, Object>) newValue;
+            Map<String, Object> merged = isPatch ? null : changes;
+            Map<String, Object> diff = new HashMap<>();
+            Object[] mergedChild = new Object[1];
+
+            for (Map.Entry<String, Object> entry : changes.entrySet())
+            {
+                String key = entry.getKey();
+                if (entry.getValue() == null)
+                {
+                    if (current.containsKey(key))
+                    {
+                        if (isPatch)
+                        {
+                            merged = copyOnWrite(current, merged);
+                            merged.remove(key);
+                        }
+                        diff.put(key, null);
+                    }
+                }
+                else
+                {
+                    Object childDiff = mergeValue(current.get(key), entry.getValue(), isPatch, mergedChild);
+                    if (childDiff != NO_CHANGE)
+                    {
+                        if (isPatch)
+                        {
+                            merged = copyOnWrite(current, merged);
+                            merged.put(key, mergedChild[0]);
+                        }
+                        diff.put(key, childDiff);
+                    }
+                }
+            }
+
+            if (!isPatch)
+            {
+                for (String key : current.keySet())
+                {
+                    if (!changes.containsKey(key))
+                    {
+                        diff.put(key, null);
+                    }
+                }
+            }
+
+            if (diff.isEmpty())
+            {
+                mergedValue[0] = current;
+                return NO_CHANGE;
+            }
+            mergedValue[0] = merged;
+            return diff;
+        }
+
+        Object value = (isPatch && (newValue instanceof Map)) ? withoutNulls((Map<String, Object>) newValue) : newValue;
+        if (value.equals(currentValue))
+        {
+            mergedValue[0] = currentValue;
+            return NO_CHANGE;
+        }
+        mergedValue[0] = value;
+        return value;
+    }
+
+    private static Map<String, Object> copyOnWrite(Map<String, Object> current, Map<String, Object> copy)
+    {
+        if (copy == null)
+        {
+            copy = new LinkedTreeMap<>();
+            copy.putAll(current);
+        }
+        return copy;
+    }
+
+    private static Map<String, Object> withoutNulls(Map<String, Object> map)
+    {
+        Map<String, Object> result = new LinkedTreeMap<>();
+        for (Map.Entry<String, Object> entry : map.entrySet())
+        {
+            if (entry.getValue() instanceof Map)
+            {
+                result.put(entry.getKey(), withoutNulls((Map<String, Object>) entry.getValue()));
+            }
+            else if (entry.getValue() != null)
+            {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
     }
 
     private void updateVersion(Map<String, Object> jsonTree)
@@ -422,9 +563,10 @@ public class TwinProperty
         return diff;
     }
 
-    private Map<String, Object> updateFields(Map<String, Object> jsonTree) throws IllegalArgumentException
+    private Map<String, Object> updateFields(Map<String, Object> jsonTree, boolean isPatch, boolean removeMissing) throws IllegalArgumentException
     {
         Map<String, Object> diff = new HashMap<>();
+        Object[] mergedValue = new Object[1];
 
         for (Map.Entry<String, Object> entry : jsonTree.entrySet())
         {
@@ -437,24 +579,40 @@ public class TwinProperty
                 synchronized (lock)
                 {
                     /* Codes_SRS_TWINPARSER_21_040: [The updateTwin shall not change fields that is not reported in the json string.] */
-                    if (property.containsKey(entry.getKey()))
+                    Property current = property.get(entry.getKey());
+                    if (entry.getValue() == null)
                     {
-                        if (entry.getValue() == null)
+                        if (current != null)
                         {
                             /* Codes_SRS_TWINPARSER_21_042: [If a valid key has a null value, the updateTwin shall delete this property.] */
                             property.remove(entry.getKey());
                             diff.put(entry.getKey(), null);
                         }
-                        else if (!property.get(entry.getKey()).value.equals(entry.getValue()))
+                    }
+                    else
+                    {
+                        Object changed = mergeValue((current == null) ? null : current.value, entry.getValue(), isPatch, mergedValue);
+                        if (changed != NO_CHANGE)
                         {
-                            property.put(entry.getKey(), new Property(entry.getValue(), null));
-                            diff.put(entry.getKey(), entry.getValue());
+                            property.put(entry.getKey(), new Property(mergedValue[0], null));
+                            diff.put(entry.getKey(), changed);
                         }
                     }
-                    else if (entry.getValue() != null)
+                }
+            }
+        }
+
+        if (removeMissing)
+        {
+            synchronized (lock)
+            {
+                for (String key : property.keySet())
+                {
+                    if (!jsonTree.containsKey(key))
                     {
-                        property.put(entry.getKey(), new Property(entry.getValue(), null));
-                        diff.put(entry.getKey(), entry.getValue());
+                        /* Codes_SRS_TWINPARSER_28_005: [If a resync of the desired properties is pending, the updateTwin shall delete the desired properties that are not in the json.] */
+                        property.remove(key);
+                        diff.put(key, null);
                     }
                 }
             }
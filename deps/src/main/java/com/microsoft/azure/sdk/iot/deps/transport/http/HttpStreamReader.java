@@ -0,0 +1,113 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.deps.transport.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads the content of an HTTP response stream in bulk.
+ *
+ * If the Content-Length of the response is known and small, the content is read
+ * straight into an array of that size. The Content-Length is sent by the server,
+ * so a bigger one only sizes the first array up to a limit, and the array grows
+ * as the content is actually read. Without a Content-Length, the content is read
+ * into a per thread chunk buffer that is reused by every read on that thread.
+ * The buffers grow by doubling.
+ */
+public final class HttpStreamReader
+{
+    /** The size of the reused chunk buffer, and the minimum growth of a read. */
+    private static final int CHUNK_SIZE_IN_BYTES = 8 * 1024;
+
+    /** The biggest array a read allocates up front from the Content-Length. */
+    private static final int MAX_INITIAL_BUFFER_SIZE_IN_BYTES = 64 * 1024;
+
+    /** The biggest array a read can grow to. */
+    private static final long MAX_BUFFER_SIZE_IN_BYTES = Integer.MAX_VALUE - 8;
+
+    private static final ThreadLocal<byte[]> CHUNK_BUFFER = new ThreadLocal<byte[]>()
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[CHUNK_SIZE_IN_BYTES];
+        }
+    };
+
+    private HttpStreamReader()
+    {
+    }
+
+    /**
+     * Reads the input stream until the stream is empty.
+     *
+     * @param stream The input stream. It is not closed by this function.
+     * @param contentLength The Content-Length of the response, or a negative
+     *                      value if it is not known.
+     *
+     * @return The content of the input stream.
+     *
+     * @throws IllegalArgumentException This exception is thrown if the stream is {@code null}.
+     * @throws IOException This exception is thrown if the input stream could not be read from.
+     */
+    public static byte[] readFully(InputStream stream, long contentLength) throws IllegalArgumentException, IOException
+    {
+        if (stream == null)
+        {
+            // Codes_SRS_HTTPSTREAMREADER_28_001: [If the provided stream is null, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("stream cannot be null");
+        }
+
+        byte[] buffer;
+        boolean isChunkBuffer;
+        if (contentLength > 0)
+        {
+            // Codes_SRS_HTTPSTREAMREADER_28_002: [If the contentLength is positive, the function shall read the stream into an array of contentLength bytes, or of 64 KB if the contentLength is bigger.]
+            buffer = new byte[(int)Math.min(contentLength, MAX_INITIAL_BUFFER_SIZE_IN_BYTES)];
+            isChunkBuffer = false;
+        }
+        else
+        {
+            // Codes_SRS_HTTPSTREAMREADER_28_003: [If the contentLength is not positive, the function shall read the stream into the chunk buffer of the current thread.]
+            buffer = CHUNK_BUFFER.get();
+            isChunkBuffer = true;
+        }
+
+        // Codes_SRS_HTTPSTREAMREADER_28_006: [If the stream could not be read from, the function shall throw IOException.]
+        int size = 0;
+        while (true)
+        {
+            if (size == buffer.length)
+            {
+                // The buffer is full. Only grow it if the stream has more content.
+                int nextByte = stream.read();
+                if (nextByte < 0)
+                {
+                    break;
+                }
+
+                // Codes_SRS_HTTPSTREAMREADER_28_004: [If the stream has more content than the buffer can hold, the function shall double the buffer, and keep reading.]
+                buffer = Arrays.copyOf(buffer, (int)Math.min(Math.max(2L * buffer.length, CHUNK_SIZE_IN_BYTES), MAX_BUFFER_SIZE_IN_BYTES));
+                isChunkBuffer = false;
+                buffer[size++] = (byte)nextByte;
+            }
+
+            int bytesRead = stream.read(buffer, size, buffer.length - size);
+            if (bytesRead < 0)
+            {
+                break;
+            }
+            size += bytesRead;
+        }
+
+        // Codes_SRS_HTTPSTREAMREADER_28_005: [The function shall return a new array with exactly the content read from the stream.]
+        if (!isChunkBuffer && (size == buffer.length))
+        {
+            return buffer;
+        }
+        return Arrays.copyOf(buffer, size);
+    }
+}
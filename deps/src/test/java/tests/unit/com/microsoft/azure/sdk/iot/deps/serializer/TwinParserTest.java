@@ -2047,6 +2047,155 @@ public class TwinParserTest {
         assertTwin(twinParser, newValues, null, null);
     }
 
+    /* Tests_SRS_TWINPARSER_28_001: [The update shall merge the json into the collection as a patch, walking only the keys in the json, and send only the changed leaves to the callback.] */
+    @Test
+    public void updateDesiredPropertyJsonMergesNestedPatchSucceed()
+    {
+        // Arrange
+        OnDesiredCallback onDesiredCallback = new OnDesiredCallback();
+        TwinParser twinParser = new TwinParser(onDesiredCallback);
+        twinParser.updateDesiredProperty("{\"keys\":{\"key1\":\"value1\",\"key2\":1234,\"sub\":{\"key3\":\"value3\",\"key4\":false}},\"key5\":\"value5\",\"$version\":1}");
+        Map<String, Object> keysBefore = (Map<String, Object>) twinParser.getDesiredPropertyMap().get("keys");
+
+        // Act
+        twinParser.updateDesiredProperty("{\"keys\":{\"key2\":4321,\"key1\":\"value1\",\"sub\":{\"key4\":null,\"key6\":\"value6\"}},\"$version\":2}");
+
+        // Assert
+        Map<String, Object> keys = (Map<String, Object>) twinParser.getDesiredPropertyMap().get("keys");
+        assertThat(keys.get("key1").toString(), is("value1"));
+        assertThat((Double) keys.get("key2"), is(4321.0));
+        Map<String, Object> sub = (Map<String, Object>) keys.get("sub");
+        assertThat(sub.size(), is(2));
+        assertThat(sub.get("key3").toString(), is("value3"));
+        assertThat(sub.get("key6").toString(), is("value6"));
+        assertThat(twinParser.getDesiredPropertyMap().get("key5").toString(), is("value5"));
+        assertThat(twinParser.getDesiredPropertyVersion(), is(2));
+
+        assertThat(onDesiredCallback.diff.size(), is(1));
+        Map<String, Object> keysDiff = (Map<String, Object>) onDesiredCallback.diff.get("keys");
+        assertThat(keysDiff.size(), is(2));
+        assertThat((Double) keysDiff.get("key2"), is(4321.0));
+        Map<String, Object> subDiff = (Map<String, Object>) keysDiff.get("sub");
+        assertThat(subDiff.size(), is(2));
+        assertTrue(subDiff.containsKey("key4"));
+        assertNull(subDiff.get("key4"));
+        assertThat(subDiff.get("key6").toString(), is("value6"));
+
+        /* the maps returned before the patch are not changed by it */
+        assertThat((Double) keysBefore.get("key2"), is(1234.0));
+        assertThat(((Map<String, Object>) keysBefore.get("sub")).size(), is(2));
+        assertFalse(twinParser.isDesiredPropertyResyncPending());
+    }
+
+    /* Tests_SRS_TWINPARSER_28_001: [The update shall merge the json into the collection as a patch, walking only the keys in the json, and send only the changed leaves to the callback.] */
+    @Test
+    public void updateDesiredPropertyJsonNestedPatchNoChangesSucceed()
+    {
+        // Arrange
+        TwinParser twinParser = new TwinParser();
+        twinParser.updateDesiredProperty("{\"keys\":{\"key1\":\"value1\",\"sub\":{\"key3\":\"value3\"}},\"$version\":1}");
+        OnDesiredCallback onDesiredCallback = new OnDesiredCallback();
+        twinParser.setDesiredCallback(onDesiredCallback);
+
+        // Act
+        twinParser.updateDesiredProperty("{\"keys\":{\"sub\":{\"key3\":\"value3\",\"key4\":null}},\"$version\":2}");
+
+        // Assert
+        assertNull(onDesiredCallback.diff);
+        assertThat(twinParser.getDesiredPropertyVersion(), is(2));
+    }
+
+    /* Tests_SRS_TWINPARSER_28_002: [If the json has a `$version` that is not newer than the version of the collection, the update shall ignore the json, and not call the callback.] */
+    @Test
+    public void updateDesiredPropertyJsonIgnoresStaleVersionSucceed()
+    {
+        // Arrange
+        TwinParser twinParser = new TwinParser();
+        twinParser.updateDesiredProperty("{\"key1\":\"value1\",\"$version\":5}");
+        OnDesiredCallback onDesiredCallback = new OnDesiredCallback();
+        twinParser.setDesiredCallback(onDesiredCallback);
+
+        // Act
+        twinParser.updateDesiredProperty("{\"key1\":\"value4\",\"$version\":5}");
+        twinParser.updateDesiredProperty("{\"key1\":\"value3\",\"$version\":4}");
+
+        // Assert
+        assertNull(onDesiredCallback.diff);
+        assertThat(twinParser.getDesiredPropertyMap().get("key1").toString(), is("value1"));
+        assertThat(twinParser.getDesiredPropertyVersion(), is(5));
+        assertFalse(twinParser.isDesiredPropertyResyncPending());
+    }
+
+    /* Tests_SRS_TWINPARSER_28_003: [If the `$version` of the json is not the next version of the collection, the update shall apply the json and report that a version is missing.] */
+    /* Tests_SRS_TWINPARSER_28_004: [If a version is missing, the updateDesiredProperty shall mark a resync of the desired properties as pending, until updateTwin receives the desired properties.] */
+    /* Tests_SRS_TWINPARSER_28_008: [The isDesiredPropertyResyncPending shall return true if a desired version is missing and the full twin was not received since, and false otherwise.] */
+    @Test
+    public void updateDesiredPropertyJsonVersionGapSetsResyncPendingSucceed()
+    {
+        // Arrange
+        OnDesiredCallback onDesiredCallback = new OnDesiredCallback();
+        TwinParser twinParser = new TwinParser(onDesiredCallback);
+        twinParser.updateDesiredProperty("{\"key1\":\"value1\",\"$version\":1}");
+        assertFalse(twinParser.isDesiredPropertyResyncPending());
+
+        // Act
+        twinParser.updateDesiredProperty("{\"key2\":\"value2\",\"$version\":3}");
+
+        // Assert
+        assertTrue(twinParser.isDesiredPropertyResyncPending());
+        assertThat(onDesiredCallback.diff.get("key2").toString(), is("value2"));
+        assertThat(twinParser.getDesiredPropertyVersion(), is(3));
+    }
+
+    /* Tests_SRS_TWINPARSER_28_005: [If a resync of the desired properties is pending, the updateTwin shall delete the desired properties that are not in the json.] */
+    /* Tests_SRS_TWINPARSER_28_007: [Once the updateTwin received the desired properties, the resync shall not be pending anymore.] */
+    @Test
+    public void updateTwinJsonResyncDeletesMissingDesiredSucceed()
+    {
+        // Arrange
+        OnDesiredCallback onDesiredCallback = new OnDesiredCallback();
+        TwinParser twinParser = new TwinParser(onDesiredCallback);
+        twinParser.updateDesiredProperty("{\"key1\":\"value1\",\"key2\":\"value2\",\"$version\":1}");
+        twinParser.updateDesiredProperty("{\"key3\":\"value3\",\"$version\":4}");
+
+        // Act
+        twinParser.updateTwin("{\"properties\":{\"desired\":{\"key1\":\"value1\",\"key3\":\"value3\",\"key4\":\"value4\",\"$version\":4},\"reported\":{}}}");
+
+        // Assert
+        assertFalse(twinParser.isDesiredPropertyResyncPending());
+        assertThat(onDesiredCallback.diff.size(), is(2));
+        assertTrue(onDesiredCallback.diff.containsKey("key2"));
+        assertNull(onDesiredCallback.diff.get("key2"));
+        assertThat(onDesiredCallback.diff.get("key4").toString(), is("value4"));
+        Map<String, Object> desired = twinParser.getDesiredPropertyMap();
+        assertThat(desired.size(), is(3));
+        assertFalse(desired.containsKey("key2"));
+    }
+
+    /* Tests_SRS_TWINPARSER_21_040: [The updateTwin shall not change fields that is not reported in the json string.] */
+    /* Tests_SRS_TWINPARSER_28_006: [The updateTwin shall parse the json tree only once, to validate it and to update the collection.] */
+    @Test
+    public void updateTwinJsonWithoutResyncKeepsMissingDesiredSucceed()
+    {
+        // Arrange
+        OnDesiredCallback onDesiredCallback = new OnDesiredCallback();
+        TwinParser twinParser = new TwinParser(onDesiredCallback);
+        twinParser.updateDesiredProperty("{\"key1\":\"value1\",\"key2\":{\"key3\":\"value3\",\"key4\":\"value4\"},\"$version\":1}");
+
+        // Act
+        twinParser.updateTwin("{\"properties\":{\"desired\":{\"key2\":{\"key3\":\"value5\"},\"$version\":2},\"reported\":{}}}");
+
+        // Assert
+        assertThat(twinParser.getDesiredPropertyMap().get("key1").toString(), is("value1"));
+        Map<String, Object> key2 = (Map<String, Object>) twinParser.getDesiredPropertyMap().get("key2");
+        assertThat(key2.size(), is(1));
+        Map<String, Object> key2Diff = (Map<String, Object>) onDesiredCallback.diff.get("key2");
+        assertThat(key2Diff.size(), is(2));
+        assertThat(key2Diff.get("key3").toString(), is("value5"));
+        assertTrue(key2Diff.containsKey("key4"));
+        assertNull(key2Diff.get("key4"));
+    }
+
     /* Tests_SRS_TWINPARSER_21_159: [The updateDeviceManager shall replace the `deviceId` by the provided one.] */
     /* Tests_SRS_TWINPARSER_21_166: [The updateDeviceManager shall return a json with the new device management information.] */
     @Test
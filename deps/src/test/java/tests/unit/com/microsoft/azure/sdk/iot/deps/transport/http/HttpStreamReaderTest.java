@@ -0,0 +1,184 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.deps.transport.http;
+
+import com.microsoft.azure.sdk.iot.deps.transport.http.HttpStreamReader;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit tests for HttpStreamReader.
+ * 100% methods, 100% lines covered
+ */
+public class HttpStreamReaderTest
+{
+    private static final int CHUNK_SIZE_IN_BYTES = 8 * 1024;
+
+    private static byte[] createContent(int size)
+    {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++)
+        {
+            content[i] = (byte)i;
+        }
+        return content;
+    }
+
+    /* Tests_SRS_HTTPSTREAMREADER_28_001: [If the provided stream is null, the function shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void readFullyThrowsOnNullStream() throws IOException
+    {
+        // act
+        HttpStreamReader.readFully(null, -1);
+    }
+
+    /* Tests_SRS_HTTPSTREAMREADER_28_002: [If the contentLength is positive, the function shall read the stream into an array of contentLength bytes, or of 64 KB if the contentLength is bigger.] */
+    /* Tests_SRS_HTTPSTREAMREADER_28_005: [The function shall return a new array with exactly the content read from the stream.] */
+    @Test
+    public void readFullyReadsContentLengthBytes() throws IOException
+    {
+        // arrange
+        byte[] content = createContent(100);
+
+        // act
+        byte[] result = HttpStreamReader.readFully(new ByteArrayInputStream(content), content.length);
+
+        // assert
+        assertThat(result, is(content));
+    }
+
+    /* Tests_SRS_HTTPSTREAMREADER_28_002: [If the contentLength is positive, the function shall read the stream into an array of contentLength bytes, or of 64 KB if the contentLength is bigger.] */
+    /* Tests_SRS_HTTPSTREAMREADER_28_004: [If the stream has more content than the buffer can hold, the function shall double the buffer, and keep reading.] */
+    @Test
+    public void readFullyDoesNotAllocateHugeContentLength() throws IOException
+    {
+        // arrange
+        byte[] content = createContent(10 * CHUNK_SIZE_IN_BYTES + 3);
+
+        // act
+        byte[] result = HttpStreamReader.readFully(new ByteArrayInputStream(content), Integer.MAX_VALUE);
+
+        // assert
+        assertThat(result, is(content));
+    }
+
+    /* Tests_SRS_HTTPSTREAMREADER_28_004: [If the stream has more content than the buffer can hold, the function shall double the buffer, and keep reading.] */
+    @Test
+    public void readFullyReadsMoreThanContentLength() throws IOException
+    {
+        // arrange
+        byte[] content = createContent(100);
+
+        // act
+        byte[] result = HttpStreamReader.readFully(new ByteArrayInputStream(content), 10);
+
+        // assert
+        assertThat(result, is(content));
+    }
+
+    /* Tests_SRS_HTTPSTREAMREADER_28_005: [The function shall return a new array with exactly the content read from the stream.] */
+    @Test
+    public void readFullyReadsLessThanContentLength() throws IOException
+    {
+        // arrange
+        byte[] content = createContent(100);
+
+        // act
+        byte[] result = HttpStreamReader.readFully(new ByteArrayInputStream(content), 1000);
+
+        // assert
+        assertThat(result, is(content));
+    }
+
+    /* Tests_SRS_HTTPSTREAMREADER_28_003: [If the contentLength is not positive, the function shall read the stream into the chunk buffer of the current thread.] */
+    /* Tests_SRS_HTTPSTREAMREADER_28_005: [The function shall return a new array with exactly the content read from the stream.] */
+    @Test
+    public void readFullyWithoutContentLengthReturnsNewArrays() throws IOException
+    {
+        // arrange
+        byte[] content1 = createContent(100);
+        byte[] content2 = createContent(50);
+
+        // act
+        byte[] result1 = HttpStreamReader.readFully(new ByteArrayInputStream(content1), -1);
+        byte[] result2 = HttpStreamReader.readFully(new ByteArrayInputStream(content2), -1);
+
+        // assert
+        assertThat(result1, is(content1));
+        assertThat(result2, is(content2));
+        assertThat(result1, not(sameInstance(result2)));
+    }
+
+    /* Tests_SRS_HTTPSTREAMREADER_28_003: [If the contentLength is not positive, the function shall read the stream into the chunk buffer of the current thread.] */
+    @Test
+    public void readFullyWithoutContentLengthReadsEmptyStream() throws IOException
+    {
+        // act
+        byte[] result = HttpStreamReader.readFully(new ByteArrayInputStream(new byte[0]), 0);
+
+        // assert
+        assertThat(result.length, is(0));
+    }
+
+    /* Tests_SRS_HTTPSTREAMREADER_28_004: [If the stream has more content than the buffer can hold, the function shall double the buffer, and keep reading.] */
+    @Test
+    public void readFullyWithoutContentLengthReadsMoreThanOneChunk() throws IOException
+    {
+        // arrange
+        byte[] content = createContent(5 * CHUNK_SIZE_IN_BYTES + 3);
+
+        // act
+        byte[] result = HttpStreamReader.readFully(new ByteArrayInputStream(content), -1);
+
+        // assert
+        assertThat(result, is(content));
+    }
+
+    /* Tests_SRS_HTTPSTREAMREADER_28_004: [If the stream has more content than the buffer can hold, the function shall double the buffer, and keep reading.] */
+    @Test
+    public void readFullyReadsStreamReturningPartialReads(@Mocked final InputStream mockStream) throws IOException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockStream.read((byte[]) any, anyInt, anyInt);
+                returns(3, 2, -1);
+            }
+        };
+
+        // act
+        byte[] result = HttpStreamReader.readFully(mockStream, -1);
+
+        // assert
+        assertThat(result.length, is(5));
+    }
+
+    /* Tests_SRS_HTTPSTREAMREADER_28_006: [If the stream could not be read from, the function shall throw IOException.] */
+    @Test (expected = IOException.class)
+    public void readFullyThrowsIfStreamThrows(@Mocked final InputStream mockStream) throws IOException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockStream.read((byte[]) any, anyInt, anyInt);
+                result = new IOException();
+            }
+        };
+
+        // act
+        HttpStreamReader.readFully(mockStream, -1);
+    }
+}
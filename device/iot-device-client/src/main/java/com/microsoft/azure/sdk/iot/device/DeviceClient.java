@@ -5,7 +5,12 @@ package com.microsoft.azure.sdk.iot.device;
 
 import com.microsoft.azure.sdk.iot.deps.serializer.ParserUtility;
 import com.microsoft.azure.sdk.iot.device.DeviceTwin.*;
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenSoftwareAuthenticationProvider;
 import com.microsoft.azure.sdk.iot.device.fileupload.FileUpload;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackDispatcherMetrics;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueueMetrics;
+import com.microsoft.azure.sdk.iot.device.transport.ReconnectRateLimiter;
+import com.microsoft.azure.sdk.iot.device.transport.RetryPolicy;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.IoTHubConnectionType;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProvider;
 
@@ -16,6 +21,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import static com.microsoft.azure.sdk.iot.device.IotHubClientProtocol.AMQPS;
 import static com.microsoft.azure.sdk.iot.device.IotHubClientProtocol.AMQPS_WS;
@@ -101,6 +107,21 @@ public final class DeviceClient implements Closeable
     private static final String SET_SEND_INTERVAL = "SetSendInterval";
     private static final String SET_CERTIFICATE_PATH = "SetCertificatePath";
     private static final String SET_SAS_TOKEN_EXPIRY_TIME = "SetSASTokenExpiryTime";
+    private static final String SET_SAS_TOKEN_RENEWAL_FRACTION = "SetSASTokenRenewalFraction";
+    private static final String SET_EVENT_DRIVEN_SEND = "SetEventDrivenSend";
+    private static final String SET_HTTPS_MAX_IN_FLIGHT_REQUESTS = "SetHttpsMaxInFlightRequests";
+    private static final String SET_OUTBOUND_QUEUE_CAPACITY = "SetOutboundQueueCapacity";
+    private static final String SET_OUTBOUND_QUEUE_CAPACITY_IN_BYTES = "SetOutboundQueueCapacityInBytes";
+    private static final String SET_OUTBOUND_QUEUE_POLICY = "SetOutboundQueuePolicy";
+    private static final String SET_OUTBOUND_MESSAGE_STORE_DIRECTORY = "SetOutboundMessageStoreDirectory";
+    private static final String SET_CALLBACK_EXECUTOR = "SetCallbackExecutor";
+    private static final String SET_RECEIVE_PREFETCH_COUNT = "SetReceivePrefetchCount";
+    private static final String SET_MQTT_BATCH_MAX_SIZE_IN_BYTES = "SetMqttBatchMaxSizeInBytes";
+    private static final String SET_MQTT_BATCH_LINGER_TIME = "SetMqttBatchLingerTime";
+    private static final String SET_RETRY_POLICY = "SetRetryPolicy";
+    private static final String SET_RECONNECT_RATE_LIMITER = "SetReconnectRateLimiter";
+    private static final String SET_REPORTED_PROPERTIES_BATCH_MAX_SIZE = "SetReportedPropertiesBatchMaxSize";
+    private static final String SET_REPORTED_PROPERTIES_LINGER_TIME = "SetReportedPropertiesLingerTime";
 
     private DeviceClientConfig config;
     private DeviceIO deviceIO;
@@ -633,6 +654,75 @@ public final class DeviceClient implements Closeable
 
     }
 
+    /**
+     * Sends reported properties, and invokes the provided callback with the
+     * status of the twin patch that sends them. If the client merges the
+     * reported properties into fewer patches, as set by the option
+     * SetReportedPropertiesBatchMaxSize, the callback is invoked when the
+     * patch that contains the last update of these properties is sent.
+     *
+     * @param reportedProperties the Set for reported properties. Cannot be {@code null}.
+     * @param reportedPropertiesCallback the callback to invoke with the status of the patch. Can be {@code null}.
+     * @param reportedPropertiesCallbackContext the context of the callback. Can be {@code null}.
+     *
+     * @throws IOException if called when client is not opened or called before starting twin.
+     * @throws IllegalArgumentException if reportedProperties is null or empty.
+     */
+    public void sendReportedProperties(Set<Property> reportedProperties, IotHubEventCallback reportedPropertiesCallback,
+                                       Object reportedPropertiesCallbackContext) throws IOException
+    {
+        if (this.deviceTwin == null)
+        {
+            /*
+            **Codes_SRS_DEVICECLIENT_25_032: [**If the client has not started twin before calling this method, the function shall throw an IOException.**]**
+             */
+            throw new IOException("Start twin before using it");
+        }
+
+        if (!this.deviceIO.isOpen())
+        {
+            /*
+            **Codes_SRS_DEVICECLIENT_25_033: [**If the client has not been open, the function shall throw an IOException.**]**
+             */
+            throw new IOException("Open the client connection before using it.");
+        }
+
+        if (reportedProperties == null || reportedProperties.isEmpty())
+        {
+            /*
+            **Codes_SRS_DEVICECLIENT_25_034: [**If reportedProperties is null or empty, the function shall throw an IllegalArgumentException.**]**
+             */
+            throw new IllegalArgumentException("Reported properties set cannot be null or empty.");
+        }
+
+        /*
+        **Codes_SRS_DEVICECLIENT_28_043: [**This method shall send the reported properties with the callback by calling updateReportedProperties on the twin object.**]**
+         */
+        this.deviceTwin.updateReportedProperties(reportedProperties, reportedPropertiesCallback, reportedPropertiesCallbackContext);
+    }
+
+    /**
+     * Sends now the reported properties that wait to be merged into a twin
+     * patch, as set by the option SetReportedPropertiesBatchMaxSize.
+     *
+     * @throws IOException if called before starting twin, or if the patch cannot be sent.
+     */
+    public void flushReportedProperties() throws IOException
+    {
+        if (this.deviceTwin == null)
+        {
+            /*
+            **Codes_SRS_DEVICECLIENT_28_044: [**If the client has not started twin before calling this method, the function shall throw an IOException.**]**
+             */
+            throw new IOException("Start twin before using it");
+        }
+
+        /*
+        **Codes_SRS_DEVICECLIENT_28_045: [**This method shall send the pending reported properties by calling flushReportedProperties on the twin object.**]**
+         */
+        this.deviceTwin.flushReportedProperties();
+    }
+
     /**
      * Subscribes to device methods
      *
@@ -796,6 +886,237 @@ public final class DeviceClient implements Closeable
         }
     }
 
+    private void setOption_SetEventDrivenSend(Object value)
+    {
+        logger.LogInfo("Setting event driven send as %s, method name is %s ", value, logger.getMethodName());
+
+        // Codes_SRS_DEVICECLIENT_28_002: ["SetEventDrivenSend" needs to have value type boolean.]
+        if (value instanceof Boolean)
+        {
+            this.deviceIO.setEventDrivenSend((boolean) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not boolean = " + value);
+        }
+    }
+
+    private void setOption_SetHttpsMaxInFlightRequests(Object value)
+    {
+        logger.LogInfo("Setting HTTPS max in flight requests as %s, method name is %s ", value, logger.getMethodName());
+
+        // Codes_SRS_DEVICECLIENT_28_006: ["SetHttpsMaxInFlightRequests" needs to have value type int.]
+        if (value instanceof Integer)
+        {
+            this.config.setHttpsMaxInFlightRequests((int) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not int = " + value);
+        }
+    }
+
+    private void setOption_SetOutboundQueueCapacity(Object value)
+    {
+        logger.LogInfo("Setting outbound queue capacity as %s messages, method name is %s ", value, logger.getMethodName());
+
+        // Codes_SRS_DEVICECLIENT_28_013: ["SetOutboundQueueCapacity" needs to have value type int.]
+        if (value instanceof Integer)
+        {
+            this.config.setOutboundQueueCapacity((int) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not int = " + value);
+        }
+    }
+
+    private void setOption_SetOutboundQueueCapacityInBytes(Object value)
+    {
+        logger.LogInfo("Setting outbound queue capacity as %s bytes, method name is %s ", value, logger.getMethodName());
+
+        // Codes_SRS_DEVICECLIENT_28_014: ["SetOutboundQueueCapacityInBytes" needs to have value type long.]
+        if (value instanceof Long)
+        {
+            this.config.setOutboundQueueCapacityInBytes((long) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not long = " + value);
+        }
+    }
+
+    private void setOption_SetOutboundQueuePolicy(Object value)
+    {
+        logger.LogInfo("Setting outbound queue policy as %s, method name is %s ", value, logger.getMethodName());
+
+        // Codes_SRS_DEVICECLIENT_28_015: ["SetOutboundQueuePolicy" needs to have value type IotHubOutboundQueuePolicy.]
+        if (value instanceof IotHubOutboundQueuePolicy)
+        {
+            this.config.setOutboundQueuePolicy((IotHubOutboundQueuePolicy) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not IotHubOutboundQueuePolicy = " + value);
+        }
+    }
+
+    private void setOption_SetOutboundMessageStoreDirectory(Object value)
+    {
+        logger.LogInfo("Setting outbound message store directory as %s, method name is %s ", value, logger.getMethodName());
+
+        // Codes_SRS_DEVICECLIENT_28_021: ["SetOutboundMessageStoreDirectory" needs to have value type String.]
+        if (value instanceof String)
+        {
+            this.config.setOutboundMessageStoreDirectory((String) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not String = " + value);
+        }
+    }
+
+    private void setOption_SetCallbackExecutor(Object value)
+    {
+        logger.LogInfo("Setting callback executor as %s, method name is %s ", value, logger.getMethodName());
+
+        // Codes_SRS_DEVICECLIENT_28_025: ["SetCallbackExecutor" needs to have value type Executor.]
+        if (value instanceof Executor)
+        {
+            this.config.setCallbackExecutor((Executor) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not Executor = " + value);
+        }
+    }
+
+    private void setOption_SetReceivePrefetchCount(Object value)
+    {
+        logger.LogInfo("Setting receive prefetch count as %s messages, method name is %s ", value, logger.getMethodName());
+
+        // Codes_SRS_DEVICECLIENT_28_031: ["SetReceivePrefetchCount" needs to have value type int.]
+        if (value instanceof Integer)
+        {
+            this.config.setReceivePrefetchCount((int) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not int = " + value);
+        }
+    }
+
+    private void setOption_SetMqttBatchMaxSizeInBytes(Object value)
+    {
+        logger.LogInfo("Setting MQTT batch maximum size as %s bytes, method name is %s ", value, logger.getMethodName());
+
+        // Codes_SRS_DEVICECLIENT_28_036: ["SetMqttBatchMaxSizeInBytes" needs to have value type int.]
+        if (value instanceof Integer)
+        {
+            this.config.setMqttBatchMaxSizeInBytes((int) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not int = " + value);
+        }
+    }
+
+    private void setOption_SetMqttBatchLingerTime(Object value)
+    {
+        logger.LogInfo("Setting MQTT batch linger time as %s milliseconds, method name is %s ", value, logger.getMethodName());
+
+        // Codes_SRS_DEVICECLIENT_28_037: ["SetMqttBatchLingerTime" needs to have value type long.]
+        if (value instanceof Long)
+        {
+            this.config.setMqttBatchLingerTimeInMilliseconds((long) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not long = " + value);
+        }
+    }
+
+    private void setOption_SetRetryPolicy(Object value)
+    {
+        logger.LogInfo("Setting retry policy as %s, method name is %s ", value, logger.getMethodName());
+
+        // Codes_SRS_DEVICECLIENT_28_041: ["SetRetryPolicy" needs to have value type RetryPolicy.]
+        if (value instanceof RetryPolicy)
+        {
+            this.config.setRetryPolicy((RetryPolicy) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not RetryPolicy = " + value);
+        }
+    }
+
+    private void setOption_SetReconnectRateLimiter(Object value)
+    {
+        logger.LogInfo("Setting reconnect rate limiter as %s, method name is %s ", value, logger.getMethodName());
+
+        // Codes_SRS_DEVICECLIENT_28_042: ["SetReconnectRateLimiter" needs to have value type ReconnectRateLimiter.]
+        if (value instanceof ReconnectRateLimiter)
+        {
+            this.config.setReconnectRateLimiter((ReconnectRateLimiter) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not ReconnectRateLimiter = " + value);
+        }
+    }
+
+    private void setOption_SetReportedPropertiesBatchMaxSize(Object value)
+    {
+        logger.LogInfo("Setting reported properties batch maximum size as %s, method name is %s ", value, logger.getMethodName());
+
+        // Codes_SRS_DEVICECLIENT_28_050: ["SetReportedPropertiesBatchMaxSize" needs to have value type int.]
+        if (value instanceof Integer)
+        {
+            this.config.setReportedPropertiesBatchMaxSize((int) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not int = " + value);
+        }
+    }
+
+    private void setOption_SetReportedPropertiesLingerTime(Object value)
+    {
+        logger.LogInfo("Setting reported properties linger time as %s milliseconds, method name is %s ", value, logger.getMethodName());
+
+        // Codes_SRS_DEVICECLIENT_28_051: ["SetReportedPropertiesLingerTime" needs to have value type long.]
+        if (value instanceof Long)
+        {
+            this.config.setReportedPropertiesLingerTimeInMilliseconds((long) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not long = " + value);
+        }
+    }
+
+    private void setOption_SetSASTokenRenewalFraction(Object value)
+    {
+        logger.LogInfo("Setting SASTokenRenewalFraction as %s, method name is %s ", value, logger.getMethodName());
+
+        if (!(this.config.getSasTokenAuthentication() instanceof IotHubSasTokenSoftwareAuthenticationProvider))
+        {
+            // Codes_SRS_DEVICECLIENT_28_053: [If the client does not use sas token authentication with a software provider, "SetSASTokenRenewalFraction" shall throw IllegalStateException.]
+            throw new IllegalStateException("Cannot set sas token renewal fraction when not using sas token authentication");
+        }
+
+        // Codes_SRS_DEVICECLIENT_28_054: ["SetSASTokenRenewalFraction" needs to have value type double.]
+        if (value instanceof Double)
+        {
+            ((IotHubSasTokenSoftwareAuthenticationProvider) this.config.getSasTokenAuthentication()).setTokenRenewalFraction((double) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not double = " + value);
+        }
+    }
+
     private void setOption_SetCertificatePath(Object value)
     {
         logger.LogInfo("Setting CertificatePath as %s, method name is %s ", value, logger.getMethodName());
@@ -917,6 +1238,107 @@ public final class DeviceClient implements Closeable
      *         SASToken expires. If the transport is already open then setting this
      *         option will restart the transport with the updated expiry time. The
      *         value is expected to be of type {@code long}.
+     *      - <b>SetSASTokenRenewalFraction</b> - this option is applicable for
+     *         HTTP/AMQP/MQTT when the client authenticates with a device key.
+     *         This option specifies the fraction of the lifetime of a SASToken
+     *         after which it is renewed in the background. The default is 0.85.
+     *         It applies from the next renewal. The value is expected to be of
+     *         type {@code double}, greater than 0 and not greater than 1.
+     *      - <b>SetEventDrivenSend</b> - this option is applicable for HTTP/
+     *         AMQP/MQTT. When set to {@code true}, queued messages are sent as
+     *         soon as they are added instead of on the next send interval, and
+     *         the send thread parks while there is nothing to send. It can only
+     *         be set while the client is closed. The value is expected to be of
+     *         type {@code boolean}.
+     *      - <b>SetHttpsMaxInFlightRequests</b> - this option is applicable only
+     *         when the transport configured with this client is HTTP. This
+     *         option specifies how many requests can be in flight at the same
+     *         time, so receiving does not block sending. It can only be set
+     *         while the client is closed. The value is expected to be of type
+     *         {@code int}, and at least 1.
+     *      - <b>SetOutboundQueueCapacity</b> - this option is applicable for HTTP/
+     *         AMQP/MQTT. This option specifies how many messages can wait to be
+     *         sent, or 0 for no limit, which is the default. It can only be set
+     *         while the client is closed. The value is expected to be of type
+     *         {@code int}.
+     *      - <b>SetOutboundQueueCapacityInBytes</b> - this option is applicable
+     *         for HTTP/AMQP/MQTT. This option specifies the total body size of the
+     *         messages that can wait to be sent, or 0 for no limit, which is the
+     *         default. It can only be set while the client is closed. The value is
+     *         expected to be of type {@code long}.
+     *      - <b>SetOutboundQueuePolicy</b> - this option is applicable for HTTP/
+     *         AMQP/MQTT. This option specifies what happens to a new message when
+     *         the messages waiting to be sent reach the capacity: the caller
+     *         blocks, which is the default, the new message fails, or older
+     *         messages are dropped. It can only be set while the client is closed.
+     *         The value is expected to be of type {@link IotHubOutboundQueuePolicy}.
+     *      - <b>SetOutboundMessageStoreDirectory</b> - this option is applicable
+     *         for AMQP/MQTT. This option specifies a directory, used only by this
+     *         client, where the telemetry messages waiting to be sent are kept on
+     *         disk. The messages left there when the client is closed or the
+     *         process stops are sent when a client opens the directory again,
+     *         without their callbacks. It can only be set while the client is
+     *         closed. The value is expected to be of type {@code String}.
+     *      - <b>SetCallbackExecutor</b> - this option is applicable for HTTP/
+     *         AMQP/MQTT. This option specifies the executor that invokes the
+     *         message sent callbacks, and with MQTT the message received
+     *         callbacks, so a slow callback does not delay the other messages.
+     *         The callbacks are still invoked one at a time, in order. By
+     *         default they are invoked on the threads of the transport. The
+     *         client does not shut the executor down. It can only be set while
+     *         the client is closed. The value is expected to be of type
+     *         {@link Executor}.
+     *      - <b>SetReceivePrefetchCount</b> - this option is applicable for
+     *         AMQP/MQTT. This option specifies how many received messages are
+     *         handed to the callbacks in one receive pass, and with AMQP how
+     *         many messages the service can send before they are acknowledged.
+     *         The default is 1024. It can only be set while the client is
+     *         closed. The value is expected to be of type {@code int}, and at
+     *         least 1.
+     *      - <b>SetMqttBatchMaxSizeInBytes</b> - this option is applicable only
+     *         when the transport configured with this client is MQTT. This
+     *         option specifies the maximum size of a publish that packs the
+     *         telemetry messages waiting to be sent into one JSON array, in the
+     *         format of the HTTPS batches, or 0 to publish them one at a time,
+     *         which is the default. Each message keeps its own callback. It can
+     *         only be set while the client is closed. The value is expected to
+     *         be of type {@code int}.
+     *      - <b>SetMqttBatchLingerTime</b> - this option is applicable only
+     *         when the transport configured with this client is MQTT. This
+     *         option specifies the time in milliseconds the first message of a
+     *         batch waits for other messages before the batch is published. A
+     *         full batch is published without waiting. The default is 0. It can
+     *         only be set while the client is closed. The value is expected to
+     *         be of type {@code long}.
+     *      - <b>SetRetryPolicy</b> - this option is applicable for AMQP/MQTT.
+     *         This option specifies the policy that decides how long the client
+     *         waits before each attempt to reconnect after the connection is
+     *         lost, and when it stops trying. The default is an
+     *         {@link com.microsoft.azure.sdk.iot.device.transport.ExponentialBackoffWithJitter}
+     *         with delays between 1 and 60 seconds that retries forever. It
+     *         applies from the next attempt. The value is expected to be of type
+     *         {@link RetryPolicy}.
+     *      - <b>SetReconnectRateLimiter</b> - this option is applicable for
+     *         AMQP/MQTT. This option specifies a limiter of the rate of the
+     *         reconnects. Setting the same limiter on all the clients of the
+     *         process spreads their reconnects when they all lose their
+     *         connection at once. By default there is no limit. It applies from
+     *         the next attempt. The value is expected to be of type
+     *         {@link ReconnectRateLimiter}.
+     *      - <b>SetReportedPropertiesBatchMaxSize</b> - this option is
+     *         applicable for AMQP/MQTT. This option specifies the maximum number
+     *         of reported properties merged into one twin patch, or 0 to send
+     *         each call of sendReportedProperties as its own patch, which is the
+     *         default. An update of a property that waits to be sent replaces
+     *         its value. It can only be set before the twin is started. The
+     *         value is expected to be of type {@code int}.
+     *      - <b>SetReportedPropertiesLingerTime</b> - this option is applicable
+     *         for AMQP/MQTT. This option specifies the time in milliseconds the
+     *         first reported property of a patch waits for other properties
+     *         before the patch is sent. A full patch is sent without waiting, and
+     *         flushReportedProperties sends the patch at once. The default is 0.
+     *         It can only be set before the twin is started. The value is
+     *         expected to be of type {@code long}.
      *
      * @param optionName the option name to modify
      * @param value an object of the appropriate type for the option's value
@@ -1052,6 +1474,218 @@ public final class DeviceClient implements Closeable
                     }
                     break;
                 }
+                // Codes_SRS_DEVICECLIENT_28_052: ["SetSASTokenRenewalFraction" - the fraction of the lifetime of a sas token after which it is renewed in the background.]
+                case SET_SAS_TOKEN_RENEWAL_FRACTION:
+                {
+                    setOption_SetSASTokenRenewalFraction(value);
+                    break;
+                }
+                // Codes_SRS_DEVICECLIENT_28_001: ["SetEventDrivenSend" - send the messages as soon as they are queued instead of every send interval.]
+                case SET_EVENT_DRIVEN_SEND:
+                {
+                    if (this.ioTHubConnectionType == IoTHubConnectionType.USE_TRANSPORTCLIENT)
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_003: [If the client configured to use TransportClient the SetEventDrivenSend shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + SET_EVENT_DRIVEN_SEND + " is not supported for single client if using TransportClient.");
+                    }
+                    else if (this.deviceIO.isOpen())
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_004: [If the client is already open the SetEventDrivenSend shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + SET_EVENT_DRIVEN_SEND + " only works when the transport is closed");
+                    }
+                    else
+                    {
+                        setOption_SetEventDrivenSend(value);
+                    }
+                    break;
+                }
+                // Codes_SRS_DEVICECLIENT_28_005: ["SetHttpsMaxInFlightRequests" - the number of HTTPS requests that can be in flight at the same time.]
+                case SET_HTTPS_MAX_IN_FLIGHT_REQUESTS:
+                {
+                    if (this.ioTHubConnectionType == IoTHubConnectionType.USE_TRANSPORTCLIENT)
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_007: [If the client configured to use TransportClient the SetHttpsMaxInFlightRequests shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + SET_HTTPS_MAX_IN_FLIGHT_REQUESTS + " is not supported for single client if using TransportClient.");
+                    }
+                    else if (this.deviceIO.isOpen())
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_008: [If the client is already open the SetHttpsMaxInFlightRequests shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + SET_HTTPS_MAX_IN_FLIGHT_REQUESTS + " only works when the transport is closed");
+                    }
+                    else if (this.deviceIO.getProtocol() != IotHubClientProtocol.HTTPS)
+                    {
+                        logger.LogError("optionName is unknown = %s for %s, method name is %s ", optionName, this.deviceIO.getProtocol().toString(), logger.getMethodName());
+                        // Codes_SRS_DEVICECLIENT_28_009: [Option "SetHttpsMaxInFlightRequests" is available only for HTTP.]
+                        throw new IllegalArgumentException("optionName is unknown = " + optionName + " for " + this.deviceIO.getProtocol().toString());
+                    }
+                    else
+                    {
+                        setOption_SetHttpsMaxInFlightRequests(value);
+                    }
+                    break;
+                }
+                // Codes_SRS_DEVICECLIENT_28_010: ["SetOutboundQueueCapacity", "SetOutboundQueueCapacityInBytes" and "SetOutboundQueuePolicy" - the bounds of the queue of messages waiting to be sent, and what happens when it is full.]
+                case SET_OUTBOUND_QUEUE_CAPACITY:
+                case SET_OUTBOUND_QUEUE_CAPACITY_IN_BYTES:
+                case SET_OUTBOUND_QUEUE_POLICY:
+                {
+                    if (this.ioTHubConnectionType == IoTHubConnectionType.USE_TRANSPORTCLIENT)
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_011: [If the client configured to use TransportClient the outbound queue options shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + optionName + " is not supported for single client if using TransportClient.");
+                    }
+                    else if (this.deviceIO.isOpen())
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_012: [If the client is already open the outbound queue options shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + optionName + " only works when the transport is closed");
+                    }
+                    else if (SET_OUTBOUND_QUEUE_CAPACITY.equals(optionName))
+                    {
+                        setOption_SetOutboundQueueCapacity(value);
+                    }
+                    else if (SET_OUTBOUND_QUEUE_CAPACITY_IN_BYTES.equals(optionName))
+                    {
+                        setOption_SetOutboundQueueCapacityInBytes(value);
+                    }
+                    else
+                    {
+                        setOption_SetOutboundQueuePolicy(value);
+                    }
+                    break;
+                }
+                // Codes_SRS_DEVICECLIENT_28_018: ["SetOutboundMessageStoreDirectory" - the directory where the messages waiting to be sent are kept, so they survive a restart.]
+                case SET_OUTBOUND_MESSAGE_STORE_DIRECTORY:
+                {
+                    if (this.ioTHubConnectionType == IoTHubConnectionType.USE_TRANSPORTCLIENT)
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_019: [If the client configured to use TransportClient the SetOutboundMessageStoreDirectory shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + optionName + " is not supported for single client if using TransportClient.");
+                    }
+                    else if (this.deviceIO.isOpen())
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_020: [If the client is already open the SetOutboundMessageStoreDirectory shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + optionName + " only works when the transport is closed");
+                    }
+                    setOption_SetOutboundMessageStoreDirectory(value);
+                    break;
+                }
+                // Codes_SRS_DEVICECLIENT_28_022: ["SetCallbackExecutor" - the executor that invokes the callbacks, so a slow callback does not hold the transport threads.]
+                case SET_CALLBACK_EXECUTOR:
+                {
+                    if (this.ioTHubConnectionType == IoTHubConnectionType.USE_TRANSPORTCLIENT)
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_023: [If the client configured to use TransportClient the SetCallbackExecutor shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + optionName + " is not supported for single client if using TransportClient.");
+                    }
+                    else if (this.deviceIO.isOpen())
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_024: [If the client is already open the SetCallbackExecutor shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + optionName + " only works when the transport is closed");
+                    }
+                    setOption_SetCallbackExecutor(value);
+                    break;
+                }
+                // Codes_SRS_DEVICECLIENT_28_028: ["SetReceivePrefetchCount" - the number of received messages handled in one receive pass, and the AMQP link credit.]
+                case SET_RECEIVE_PREFETCH_COUNT:
+                {
+                    if (this.ioTHubConnectionType == IoTHubConnectionType.USE_TRANSPORTCLIENT)
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_029: [If the client configured to use TransportClient the SetReceivePrefetchCount shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + optionName + " is not supported for single client if using TransportClient.");
+                    }
+                    else if (this.deviceIO.isOpen())
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_030: [If the client is already open the SetReceivePrefetchCount shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + optionName + " only works when the transport is closed");
+                    }
+                    setOption_SetReceivePrefetchCount(value);
+                    break;
+                }
+                // Codes_SRS_DEVICECLIENT_28_032: ["SetMqttBatchMaxSizeInBytes" and "SetMqttBatchLingerTime" - the bounds of an MQTT publish that packs several telemetry messages.]
+                case SET_MQTT_BATCH_MAX_SIZE_IN_BYTES:
+                case SET_MQTT_BATCH_LINGER_TIME:
+                {
+                    if (this.ioTHubConnectionType == IoTHubConnectionType.USE_TRANSPORTCLIENT)
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_033: [If the client configured to use TransportClient the MQTT batch options shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + optionName + " is not supported for single client if using TransportClient.");
+                    }
+                    else if (this.deviceIO.isOpen())
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_034: [If the client is already open the MQTT batch options shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + optionName + " only works when the transport is closed");
+                    }
+                    else if (this.deviceIO.getProtocol() != IotHubClientProtocol.MQTT && this.deviceIO.getProtocol() != IotHubClientProtocol.MQTT_WS)
+                    {
+                        logger.LogError("optionName is unknown = %s for %s, method name is %s ", optionName, this.deviceIO.getProtocol().toString(), logger.getMethodName());
+                        // Codes_SRS_DEVICECLIENT_28_035: [The MQTT batch options are available only for MQTT.]
+                        throw new IllegalArgumentException("optionName is unknown = " + optionName + " for " + this.deviceIO.getProtocol().toString());
+                    }
+                    else if (SET_MQTT_BATCH_MAX_SIZE_IN_BYTES.equals(optionName))
+                    {
+                        setOption_SetMqttBatchMaxSizeInBytes(value);
+                    }
+                    else
+                    {
+                        setOption_SetMqttBatchLingerTime(value);
+                    }
+                    break;
+                }
+                // Codes_SRS_DEVICECLIENT_28_038: ["SetRetryPolicy" and "SetReconnectRateLimiter" - when the transport attempts to reconnect after the connection is lost.]
+                case SET_RETRY_POLICY:
+                case SET_RECONNECT_RATE_LIMITER:
+                {
+                    if (this.ioTHubConnectionType == IoTHubConnectionType.USE_TRANSPORTCLIENT)
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_039: [If the client configured to use TransportClient the reconnect options shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + optionName + " is not supported for single client if using TransportClient.");
+                    }
+                    else if (this.deviceIO.getProtocol() == IotHubClientProtocol.HTTPS)
+                    {
+                        logger.LogError("optionName is unknown = %s for %s, method name is %s ", optionName, this.deviceIO.getProtocol().toString(), logger.getMethodName());
+                        // Codes_SRS_DEVICECLIENT_28_040: [The reconnect options are available only for AMQP and MQTT.]
+                        throw new IllegalArgumentException("optionName is unknown = " + optionName + " for " + this.deviceIO.getProtocol().toString());
+                    }
+                    else if (SET_RETRY_POLICY.equals(optionName))
+                    {
+                        setOption_SetRetryPolicy(value);
+                    }
+                    else
+                    {
+                        setOption_SetReconnectRateLimiter(value);
+                    }
+                    break;
+                }
+                // Codes_SRS_DEVICECLIENT_28_046: ["SetReportedPropertiesBatchMaxSize" and "SetReportedPropertiesLingerTime" - the bounds of a twin patch that merges several reported properties updates.]
+                case SET_REPORTED_PROPERTIES_BATCH_MAX_SIZE:
+                case SET_REPORTED_PROPERTIES_LINGER_TIME:
+                {
+                    if (this.ioTHubConnectionType == IoTHubConnectionType.USE_TRANSPORTCLIENT)
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_047: [If the client configured to use TransportClient the reported properties batch options shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + optionName + " is not supported for single client if using TransportClient.");
+                    }
+                    else if (this.deviceTwin != null)
+                    {
+                        // Codes_SRS_DEVICECLIENT_28_048: [If the twin is already started the reported properties batch options shall throw IllegalStateException.]
+                        throw new IllegalStateException("setOption " + optionName + " only works before the twin is started");
+                    }
+                    else if (this.deviceIO.getProtocol() == IotHubClientProtocol.HTTPS)
+                    {
+                        logger.LogError("optionName is unknown = %s for %s, method name is %s ", optionName, this.deviceIO.getProtocol().toString(), logger.getMethodName());
+                        // Codes_SRS_DEVICECLIENT_28_049: [The reported properties batch options are available only for AMQP and MQTT.]
+                        throw new IllegalArgumentException("optionName is unknown = " + optionName + " for " + this.deviceIO.getProtocol().toString());
+                    }
+                    else if (SET_REPORTED_PROPERTIES_BATCH_MAX_SIZE.equals(optionName))
+                    {
+                        setOption_SetReportedPropertiesBatchMaxSize(value);
+                    }
+                    else
+                    {
+                        setOption_SetReportedPropertiesLingerTime(value);
+                    }
+                    break;
+                }
                 default:
                 {
                     throw new IllegalArgumentException("optionName is unknown = " + optionName);
@@ -1104,6 +1738,44 @@ public final class DeviceClient implements Closeable
         return this.config;
     }
 
+    /**
+     * Getter for the depth of the queue of messages waiting to be sent, and
+     * for the time the messages spent in it.
+     *
+     * @return a snapshot of the metrics of the outbound queue.
+     * @throws IllegalStateException if the client uses a TransportClient that is not open yet.
+     */
+    public IotHubOutboundQueueMetrics getOutboundQueueMetrics() throws IllegalStateException
+    {
+        if (this.deviceIO == null)
+        {
+            // Codes_SRS_DEVICECLIENT_28_016: [If the client does not have a deviceIO yet, the function shall throw IllegalStateException.]
+            throw new IllegalStateException("The outbound queue is only available after the TransportClient is opened.");
+        }
+
+        // Codes_SRS_DEVICECLIENT_28_017: [The function shall return the outbound queue metrics of the deviceIO.]
+        return this.deviceIO.getOutboundQueueMetrics();
+    }
+
+    /**
+     * Getter for the number of callbacks waiting to be invoked, and for the
+     * time they waited and ran.
+     *
+     * @return a snapshot of the metrics of the callback dispatcher.
+     * @throws IllegalStateException if the client uses a TransportClient that is not open yet.
+     */
+    public IotHubCallbackDispatcherMetrics getCallbackDispatcherMetrics() throws IllegalStateException
+    {
+        if (this.deviceIO == null)
+        {
+            // Codes_SRS_DEVICECLIENT_28_026: [If the client does not have a deviceIO yet, the function shall throw IllegalStateException.]
+            throw new IllegalStateException("The callback dispatcher is only available after the TransportClient is opened.");
+        }
+
+        // Codes_SRS_DEVICECLIENT_28_027: [The function shall return the callback dispatcher metrics of the deviceIO.]
+        return this.deviceIO.getCallbackDispatcherMetrics();
+    }
+
     /**
      * Getter for the underlying DeviceIO for multiplexing scenarios.
      *
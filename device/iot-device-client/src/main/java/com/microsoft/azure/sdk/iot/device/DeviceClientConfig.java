@@ -4,11 +4,15 @@
 package com.microsoft.azure.sdk.iot.device;
 
 import com.microsoft.azure.sdk.iot.device.auth.*;
+import com.microsoft.azure.sdk.iot.device.transport.ExponentialBackoffWithJitter;
+import com.microsoft.azure.sdk.iot.device.transport.ReconnectRateLimiter;
+import com.microsoft.azure.sdk.iot.device.transport.RetryPolicy;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProvider;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProviderTpm;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProviderX509;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 /**
  * Configuration settings for an IoT Hub client. Validates all user-defined
@@ -20,6 +24,36 @@ public final class DeviceClientConfig
     private static final int DEFAULT_READ_TIMEOUT_MILLIS = 240000;
     /** The default value for messageLockTimeoutSecs. */
     private static final int DEFAULT_MESSAGE_LOCK_TIMEOUT_SECS = 180;
+    /** The default value for httpsMaxInFlightRequests. */
+    private static final int DEFAULT_HTTPS_MAX_IN_FLIGHT_REQUESTS = 2;
+
+    private int httpsMaxInFlightRequests = DEFAULT_HTTPS_MAX_IN_FLIGHT_REQUESTS;
+
+    /** The maximum number of messages waiting to be sent, or 0 for no limit. */
+    private int outboundQueueCapacity = 0;
+    /** The maximum total body size of the messages waiting to be sent, or 0 for no limit. */
+    private long outboundQueueCapacityInBytes = 0;
+    private IotHubOutboundQueuePolicy outboundQueuePolicy = IotHubOutboundQueuePolicy.BLOCK;
+    /** The directory of the store that keeps the messages waiting to be sent on disk, or null for no store. */
+    private String outboundMessageStoreDirectory;
+    /** The executor that invokes the user callbacks, or null to invoke them on the transport threads. */
+    private Executor callbackExecutor;
+    /** The default value for receivePrefetchCount, the same as the default link credit of Proton. */
+    private static final int DEFAULT_RECEIVE_PREFETCH_COUNT = 1024;
+    /** The maximum number of received messages handled in one receive pass, and the AMQP link credit. */
+    private int receivePrefetchCount = DEFAULT_RECEIVE_PREFETCH_COUNT;
+    /** The maximum size of an MQTT publish that packs several telemetry messages, or 0 to publish them one at a time. */
+    private int mqttBatchMaxSizeInBytes = 0;
+    /** The time the first telemetry message of an MQTT batch waits for others before the batch is published. */
+    private long mqttBatchLingerTimeInMilliseconds = 0;
+    /** The policy that decides when the transport tries again to reconnect after the connection is lost. */
+    private volatile RetryPolicy retryPolicy = new ExponentialBackoffWithJitter();
+    /** The limiter of the reconnects shared with other clients, or null to reconnect without limit. */
+    private volatile ReconnectRateLimiter reconnectRateLimiter;
+    /** The maximum number of reported properties merged into one twin patch, or 0 to send each update as its own patch. */
+    private int reportedPropertiesBatchMaxSize = 0;
+    /** The time the first reported property of a twin patch waits for others before the patch is sent. */
+    private long reportedPropertiesLingerTimeInMilliseconds = 0;
 
     private boolean useWebsocket;
 
@@ -426,6 +460,400 @@ public final class DeviceClientConfig
         return DEFAULT_MESSAGE_LOCK_TIMEOUT_SECS;
     }
 
+    /**
+     * Getter for the maximum number of requests that the HTTPS transport
+     * can have in flight at the same time for this device.
+     *
+     * @return the maximum number of concurrent HTTPS requests.
+     */
+    public int getHttpsMaxInFlightRequests()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_001: [The function shall return the saved maximum number of in flight HTTPS requests, which is 2 by default.]
+        return this.httpsMaxInFlightRequests;
+    }
+
+    /**
+     * Setter for the maximum number of requests that the HTTPS transport
+     * can have in flight at the same time for this device.
+     *
+     * @param httpsMaxInFlightRequests the maximum number of concurrent HTTPS requests.
+     * @throws IllegalArgumentException if the provided value is smaller than 1.
+     */
+    public void setHttpsMaxInFlightRequests(int httpsMaxInFlightRequests) throws IllegalArgumentException
+    {
+        if (httpsMaxInFlightRequests < 1)
+        {
+            // Codes_SRS_DEVICECLIENTCONFIG_28_002: [If the provided httpsMaxInFlightRequests is smaller than 1, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("httpsMaxInFlightRequests cannot be smaller than 1");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_28_003: [The function shall save the provided httpsMaxInFlightRequests.]
+        this.httpsMaxInFlightRequests = httpsMaxInFlightRequests;
+    }
+
+    /**
+     * Getter for the maximum number of messages that can wait to be sent.
+     *
+     * @return the capacity of the outbound queue, in messages, or 0 if it has no limit.
+     */
+    public int getOutboundQueueCapacity()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_004: [The function shall return the saved outbound queue capacity, which is 0, no limit, by default.]
+        return this.outboundQueueCapacity;
+    }
+
+    /**
+     * Setter for the maximum number of messages that can wait to be sent.
+     *
+     * @param outboundQueueCapacity the capacity of the outbound queue, in messages, or 0 for no limit.
+     * @throws IllegalArgumentException if the provided value is negative.
+     */
+    public void setOutboundQueueCapacity(int outboundQueueCapacity) throws IllegalArgumentException
+    {
+        if (outboundQueueCapacity < 0)
+        {
+            // Codes_SRS_DEVICECLIENTCONFIG_28_005: [If the provided outboundQueueCapacity is negative, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("outboundQueueCapacity cannot be negative");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_28_006: [The function shall save the provided outboundQueueCapacity.]
+        this.outboundQueueCapacity = outboundQueueCapacity;
+    }
+
+    /**
+     * Getter for the maximum total body size of the messages that can wait to be sent.
+     *
+     * @return the capacity of the outbound queue, in bytes, or 0 if it has no limit.
+     */
+    public long getOutboundQueueCapacityInBytes()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_007: [The function shall return the saved outbound queue capacity in bytes, which is 0, no limit, by default.]
+        return this.outboundQueueCapacityInBytes;
+    }
+
+    /**
+     * Setter for the maximum total body size of the messages that can wait to be sent.
+     *
+     * @param outboundQueueCapacityInBytes the capacity of the outbound queue, in bytes, or 0 for no limit.
+     * @throws IllegalArgumentException if the provided value is negative.
+     */
+    public void setOutboundQueueCapacityInBytes(long outboundQueueCapacityInBytes) throws IllegalArgumentException
+    {
+        if (outboundQueueCapacityInBytes < 0)
+        {
+            // Codes_SRS_DEVICECLIENTCONFIG_28_008: [If the provided outboundQueueCapacityInBytes is negative, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("outboundQueueCapacityInBytes cannot be negative");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_28_009: [The function shall save the provided outboundQueueCapacityInBytes.]
+        this.outboundQueueCapacityInBytes = outboundQueueCapacityInBytes;
+    }
+
+    /**
+     * Getter for what the transport does with a new message when the outbound queue is full.
+     *
+     * @return the policy of the outbound queue.
+     */
+    public IotHubOutboundQueuePolicy getOutboundQueuePolicy()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_010: [The function shall return the saved outbound queue policy, which is BLOCK by default.]
+        return this.outboundQueuePolicy;
+    }
+
+    /**
+     * Setter for what the transport does with a new message when the outbound queue is full.
+     *
+     * @param outboundQueuePolicy the policy of the outbound queue.
+     * @throws IllegalArgumentException if the provided policy is null.
+     */
+    public void setOutboundQueuePolicy(IotHubOutboundQueuePolicy outboundQueuePolicy) throws IllegalArgumentException
+    {
+        if (outboundQueuePolicy == null)
+        {
+            // Codes_SRS_DEVICECLIENTCONFIG_28_011: [If the provided outboundQueuePolicy is null, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("outboundQueuePolicy cannot be null");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_28_012: [The function shall save the provided outboundQueuePolicy.]
+        this.outboundQueuePolicy = outboundQueuePolicy;
+    }
+
+    /**
+     * Getter for the directory where the transport keeps the messages waiting
+     * to be sent, so they survive a restart of the process.
+     *
+     * @return the directory of the outbound message store, or {@code null} if the messages are only kept in memory.
+     */
+    public String getOutboundMessageStoreDirectory()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_013: [The function shall return the saved outbound message store directory, which is null, no store, by default.]
+        return this.outboundMessageStoreDirectory;
+    }
+
+    /**
+     * Setter for the directory where the transport keeps the messages waiting
+     * to be sent, so they survive a restart of the process. Each device client
+     * needs its own directory.
+     *
+     * @param outboundMessageStoreDirectory the directory of the outbound message store, or {@code null} to only keep the messages in memory.
+     * @throws IllegalArgumentException if the provided directory is empty.
+     */
+    public void setOutboundMessageStoreDirectory(String outboundMessageStoreDirectory) throws IllegalArgumentException
+    {
+        if ((outboundMessageStoreDirectory != null) && outboundMessageStoreDirectory.isEmpty())
+        {
+            // Codes_SRS_DEVICECLIENTCONFIG_28_014: [If the provided outboundMessageStoreDirectory is empty, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("outboundMessageStoreDirectory cannot be empty");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_28_015: [The function shall save the provided outboundMessageStoreDirectory.]
+        this.outboundMessageStoreDirectory = outboundMessageStoreDirectory;
+    }
+
+    /**
+     * Getter for the executor that invokes the user callbacks.
+     *
+     * @return the callback executor, or {@code null} if the callbacks are invoked on the threads of the transport.
+     */
+    public Executor getCallbackExecutor()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_016: [The function shall return the saved callback executor, which is null, the threads of the transport, by default.]
+        return this.callbackExecutor;
+    }
+
+    /**
+     * Setter for the executor that invokes the user callbacks, so a slow
+     * callback does not hold the threads that send and receive the messages.
+     * The callbacks of a device are still invoked one at a time, in order. The
+     * executor is not shut down by the client.
+     *
+     * @param callbackExecutor the callback executor, or {@code null} to invoke the callbacks on the threads of the transport.
+     */
+    public void setCallbackExecutor(Executor callbackExecutor)
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_017: [The function shall save the provided callbackExecutor.]
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Getter for the maximum number of received messages that the transport
+     * hands to the callbacks in one receive pass. With AMQP it is also the
+     * number of messages the service can send before they are acknowledged.
+     *
+     * @return the receive prefetch count, in messages.
+     */
+    public int getReceivePrefetchCount()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_018: [The function shall return the saved receive prefetch count, which is 1024 by default.]
+        return this.receivePrefetchCount;
+    }
+
+    /**
+     * Setter for the maximum number of received messages that the transport
+     * hands to the callbacks in one receive pass, so a burst of messages does
+     * not wait one receive period per message. With AMQP it is also the link
+     * credit given to the service.
+     *
+     * @param receivePrefetchCount the receive prefetch count, in messages.
+     * @throws IllegalArgumentException if the provided value is smaller than 1.
+     */
+    public void setReceivePrefetchCount(int receivePrefetchCount) throws IllegalArgumentException
+    {
+        if (receivePrefetchCount < 1)
+        {
+            // Codes_SRS_DEVICECLIENTCONFIG_28_019: [If the provided receivePrefetchCount is smaller than 1, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("receivePrefetchCount cannot be smaller than 1");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_28_020: [The function shall save the provided receivePrefetchCount.]
+        this.receivePrefetchCount = receivePrefetchCount;
+    }
+
+    /**
+     * Getter for the maximum size of an MQTT publish that packs several
+     * telemetry messages.
+     *
+     * @return the MQTT batch maximum size, in bytes, or 0 if the messages are published one at a time.
+     */
+    public int getMqttBatchMaxSizeInBytes()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_021: [The function shall return the saved MQTT batch maximum size, which is 0, no batching, by default.]
+        return this.mqttBatchMaxSizeInBytes;
+    }
+
+    /**
+     * Setter for the maximum size of an MQTT publish that packs several
+     * telemetry messages. The messages are sent as one JSON array, in the
+     * format of the HTTPS batches, and each message keeps its own callback.
+     *
+     * @param mqttBatchMaxSizeInBytes the MQTT batch maximum size, in bytes, or 0 to publish the messages one at a time.
+     * @throws IllegalArgumentException if the provided value is negative.
+     */
+    public void setMqttBatchMaxSizeInBytes(int mqttBatchMaxSizeInBytes) throws IllegalArgumentException
+    {
+        if (mqttBatchMaxSizeInBytes < 0)
+        {
+            // Codes_SRS_DEVICECLIENTCONFIG_28_022: [If the provided mqttBatchMaxSizeInBytes is negative, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("mqttBatchMaxSizeInBytes cannot be negative");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_28_023: [The function shall save the provided mqttBatchMaxSizeInBytes.]
+        this.mqttBatchMaxSizeInBytes = mqttBatchMaxSizeInBytes;
+    }
+
+    /**
+     * Getter for the time the first telemetry message of an MQTT batch waits
+     * for other messages before the batch is published.
+     *
+     * @return the MQTT batch linger time, in milliseconds.
+     */
+    public long getMqttBatchLingerTimeInMilliseconds()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_024: [The function shall return the saved MQTT batch linger time, which is 0 by default.]
+        return this.mqttBatchLingerTimeInMilliseconds;
+    }
+
+    /**
+     * Setter for the time the first telemetry message of an MQTT batch waits
+     * for other messages before the batch is published. A full batch is
+     * published without waiting.
+     *
+     * @param mqttBatchLingerTimeInMilliseconds the MQTT batch linger time, in milliseconds.
+     * @throws IllegalArgumentException if the provided value is negative.
+     */
+    public void setMqttBatchLingerTimeInMilliseconds(long mqttBatchLingerTimeInMilliseconds) throws IllegalArgumentException
+    {
+        if (mqttBatchLingerTimeInMilliseconds < 0)
+        {
+            // Codes_SRS_DEVICECLIENTCONFIG_28_025: [If the provided mqttBatchLingerTimeInMilliseconds is negative, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("mqttBatchLingerTimeInMilliseconds cannot be negative");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_28_026: [The function shall save the provided mqttBatchLingerTimeInMilliseconds.]
+        this.mqttBatchLingerTimeInMilliseconds = mqttBatchLingerTimeInMilliseconds;
+    }
+
+    /**
+     * Getter for the policy that decides when the transport tries again to
+     * reconnect after the connection is lost.
+     *
+     * @return the retry policy.
+     */
+    public RetryPolicy getRetryPolicy()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_027: [The function shall return the saved retry policy, which is an ExponentialBackoffWithJitter with its default delays by default.]
+        return this.retryPolicy;
+    }
+
+    /**
+     * Setter for the policy that decides when the transport tries again to
+     * reconnect after the connection is lost. The policy applies from the
+     * next attempt to reconnect.
+     *
+     * @param retryPolicy the retry policy.
+     * @throws IllegalArgumentException if the provided policy is null.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) throws IllegalArgumentException
+    {
+        if (retryPolicy == null)
+        {
+            // Codes_SRS_DEVICECLIENTCONFIG_28_028: [If the provided retryPolicy is null, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("retryPolicy cannot be null");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_28_029: [The function shall save the provided retryPolicy.]
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Getter for the limiter of the reconnects that the client shares with
+     * other clients.
+     *
+     * @return the reconnect rate limiter, or {@code null} if the client reconnects without limit.
+     */
+    public ReconnectRateLimiter getReconnectRateLimiter()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_030: [The function shall return the saved reconnect rate limiter, which is null by default.]
+        return this.reconnectRateLimiter;
+    }
+
+    /**
+     * Setter for the limiter of the reconnects. Giving the same limiter to
+     * all the clients of the process spreads their reconnects when they all
+     * lose their connection at once.
+     *
+     * @param reconnectRateLimiter the reconnect rate limiter, or {@code null} to reconnect without limit.
+     */
+    public void setReconnectRateLimiter(ReconnectRateLimiter reconnectRateLimiter)
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_031: [The function shall save the provided reconnectRateLimiter.]
+        this.reconnectRateLimiter = reconnectRateLimiter;
+    }
+
+    /**
+     * Getter for the maximum number of reported properties merged into one
+     * twin patch.
+     *
+     * @return the reported properties batch maximum size, or 0 if each update is sent as its own patch.
+     */
+    public int getReportedPropertiesBatchMaxSize()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_032: [The function shall return the saved reported properties batch maximum size, which is 0, no batching, by default.]
+        return this.reportedPropertiesBatchMaxSize;
+    }
+
+    /**
+     * Setter for the maximum number of reported properties merged into one
+     * twin patch. The updates of a property that is waiting to be sent
+     * replace its value, so only the last value is sent.
+     *
+     * @param reportedPropertiesBatchMaxSize the reported properties batch maximum size, or 0 to send each update as its own patch.
+     * @throws IllegalArgumentException if the provided value is negative.
+     */
+    public void setReportedPropertiesBatchMaxSize(int reportedPropertiesBatchMaxSize) throws IllegalArgumentException
+    {
+        if (reportedPropertiesBatchMaxSize < 0)
+        {
+            // Codes_SRS_DEVICECLIENTCONFIG_28_033: [If the provided reportedPropertiesBatchMaxSize is negative, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("reportedPropertiesBatchMaxSize cannot be negative");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_28_034: [The function shall save the provided reportedPropertiesBatchMaxSize.]
+        this.reportedPropertiesBatchMaxSize = reportedPropertiesBatchMaxSize;
+    }
+
+    /**
+     * Getter for the time the first reported property of a twin patch waits
+     * for other properties before the patch is sent.
+     *
+     * @return the reported properties linger time, in milliseconds.
+     */
+    public long getReportedPropertiesLingerTimeInMilliseconds()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_28_035: [The function shall return the saved reported properties linger time, which is 0 by default.]
+        return this.reportedPropertiesLingerTimeInMilliseconds;
+    }
+
+    /**
+     * Setter for the time the first reported property of a twin patch waits
+     * for other properties before the patch is sent. A full patch is sent
+     * without waiting.
+     *
+     * @param reportedPropertiesLingerTimeInMilliseconds the reported properties linger time, in milliseconds.
+     * @throws IllegalArgumentException if the provided value is negative.
+     */
+    public void setReportedPropertiesLingerTimeInMilliseconds(long reportedPropertiesLingerTimeInMilliseconds) throws IllegalArgumentException
+    {
+        if (reportedPropertiesLingerTimeInMilliseconds < 0)
+        {
+            // Codes_SRS_DEVICECLIENTCONFIG_28_036: [If the provided reportedPropertiesLingerTimeInMilliseconds is negative, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("reportedPropertiesLingerTimeInMilliseconds cannot be negative");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_28_037: [The function shall save the provided reportedPropertiesLingerTimeInMilliseconds.]
+        this.reportedPropertiesLingerTimeInMilliseconds = reportedPropertiesLingerTimeInMilliseconds;
+    }
+
     /**
      * Getter for AuthenticationType
      *
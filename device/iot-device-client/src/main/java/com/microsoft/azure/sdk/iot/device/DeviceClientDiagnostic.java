@@ -4,7 +4,6 @@ import com.microsoft.azure.sdk.iot.device.DeviceTwin.Device;
 import com.microsoft.azure.sdk.iot.device.DeviceTwin.DeviceTwin;
 import com.microsoft.azure.sdk.iot.device.DeviceTwin.Property;
 import com.microsoft.azure.sdk.iot.device.DeviceTwin.PropertyCallBack;
-import com.sun.javafx.css.CssError;
 
 import java.io.IOException;
 import java.text.DecimalFormat;
@@ -3,6 +3,9 @@
 
 package com.microsoft.azure.sdk.iot.device;
 
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackDispatcherMetrics;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubEventDrivenSendTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueueMetrics;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubReceiveTask;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubSendTask;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransport;
@@ -80,7 +83,9 @@ public final class DeviceIO
     private IotHubTransport transport;
     private DeviceClientConfig config;
     private IotHubSendTask sendTask = null;
+    private IotHubEventDrivenSendTask eventDrivenSendTask = null;
     private IotHubReceiveTask receiveTask = null;
+    private boolean eventDrivenSend = false;
     private IotHubClientProtocol protocol = null;
 
     private ScheduledExecutorService taskScheduler;
@@ -215,12 +220,21 @@ public final class DeviceIO
         this.receiveTask = new IotHubReceiveTask(this.transport);
 
         this.taskScheduler = Executors.newScheduledThreadPool(2);
-        // the scheduler waits until each execution is finished before
-        // scheduling the next one, so executions of a given task
-        // will never overlap.
-        /* Codes_SRS_DEVICE_IO_21_013: [The open shall schedule send tasks to run every SEND_PERIOD_MILLIS milliseconds.] */
-        this.taskScheduler.scheduleAtFixedRate(this.sendTask, 0,
-                sendPeriodInMilliseconds, TimeUnit.MILLISECONDS);
+        if (this.eventDrivenSend)
+        {
+            /* Codes_SRS_DEVICE_IO_28_001: [If the event driven send is enabled, the open shall execute an IotHubEventDrivenSendTask instead of scheduling the send tasks.] */
+            this.eventDrivenSendTask = new IotHubEventDrivenSendTask(this.transport, sendPeriodInMilliseconds);
+            this.taskScheduler.execute(this.eventDrivenSendTask);
+        }
+        else
+        {
+            // the scheduler waits until each execution is finished before
+            // scheduling the next one, so executions of a given task
+            // will never overlap.
+            /* Codes_SRS_DEVICE_IO_21_013: [The open shall schedule send tasks to run every SEND_PERIOD_MILLIS milliseconds.] */
+            this.taskScheduler.scheduleAtFixedRate(this.sendTask, 0,
+                    sendPeriodInMilliseconds, TimeUnit.MILLISECONDS);
+        }
         /* Codes_SRS_DEVICE_IO_21_014: [The open shall schedule receive tasks to run every receivePeriodInMilliseconds milliseconds.] */
         this.taskScheduler.scheduleAtFixedRate(this.receiveTask, 0,
                 receivePeriodInMilliseconds, TimeUnit.MILLISECONDS);
@@ -245,6 +259,13 @@ public final class DeviceIO
             return;
         }
 
+        /* Codes_SRS_DEVICE_IO_28_002: [If the event driven send task exists, the close shall stop it.] */
+        if (this.eventDrivenSendTask != null)
+        {
+            this.eventDrivenSendTask.stop();
+            this.eventDrivenSendTask = null;
+        }
+
         /* Codes_SRS_DEVICE_IO_21_017: [The close shall finish all ongoing tasks.] */
         /* Codes_SRS_DEVICE_IO_21_018: [The close shall cancel all recurring tasks.] */
         this.taskScheduler.shutdown();
@@ -252,6 +273,12 @@ public final class DeviceIO
         /* Codes_SRS_DEVICE_IO_21_019: [The close shall close the transport.] */
         this.transport.close();
 
+        /* Codes_SRS_DEVICE_IO_28_011: [The close shall cancel the background renewal of the sas token of the config, if any.] */
+        if (this.config.getSasTokenAuthentication() != null)
+        {
+            this.config.getSasTokenAuthentication().cancelTokenRenewal();
+        }
+
         /* Codes_SRS_DEVICE_IO_21_021: [The close shall set the `state` as `CLOSE`.] */
         this.state = IotHubClientState.CLOSED;
     }
@@ -311,6 +338,9 @@ public final class DeviceIO
         logger.LogInfo("Message with messageid %s along with callback and callbackcontext is added to the queue, method name is %s ", message.getMessageId(), logger.getMethodName());
         /* Codes_SRS_DEVICE_IO_21_022: [The sendEventAsync shall add the message, with its associated callback and callback context, to the transport.] */
         transport.addMessage(message, callback, callbackContext);
+
+        /* Codes_SRS_DEVICE_IO_28_003: [If the event driven send task exists, the sendEventAsync shall signal it.] */
+        signalEventDrivenSendTask();
     }
 
     /**
@@ -355,6 +385,9 @@ public final class DeviceIO
         logger.LogInfo("Message with messageid %s along with callback and callbackContext is added to the queue, method name is %s ", message.getMessageId(), logger.getMethodName());
         /* Codes_SRS_DEVICE_IO_21_040: [The sendEventAsync shall add the message, with its associated callback and callback context, to the transport.] */
         transport.addMessage(message, callback, callbackContext);
+
+        /* Codes_SRS_DEVICE_IO_28_004: [If the event driven send task exists, the sendEventAsync shall signal it.] */
+        signalEventDrivenSendTask();
     }
 
     /**
@@ -429,8 +462,13 @@ public final class DeviceIO
         /* Codes_SRS_DEVICE_IO_21_033: [The setSendPeriodInMilliseconds shall store the new send period in milliseconds.] */
         this.sendPeriodInMilliseconds = newIntervalInMilliseconds;
 
+        /* Codes_SRS_DEVICE_IO_28_005: [If the event driven send task exists, the setSendPeriodInMilliseconds shall change its pending period to the new value.] */
+        if (this.eventDrivenSendTask != null)
+        {
+            this.eventDrivenSendTask.setPendingPeriodInMilliseconds(this.sendPeriodInMilliseconds);
+        }
         /* Codes_SRS_DEVICE_IO_21_034: [If the task scheduler already exists, the setSendPeriodInMilliseconds shall change the `scheduleAtFixedRate` for the sendTask to the new value.] */
-        if(this.taskScheduler != null)
+        else if(this.taskScheduler != null)
         {
             /* Codes_SRS_DEVICE_IO_21_035: [If the `sendTask` is null, the setSendPeriodInMilliseconds shall throw IOException.] */
             if(this.sendTask == null)
@@ -443,6 +481,37 @@ public final class DeviceIO
         }
     }
 
+    /**
+     * Getter for the event driven send mode.
+     *
+     * @return a boolean true if messages are sent as soon as they are queued, or false if they are sent every send period.
+     */
+    public boolean isEventDrivenSend()
+    {
+        /* Codes_SRS_DEVICE_IO_28_006: [The isEventDrivenSend shall return the programed send mode.] */
+        return this.eventDrivenSend;
+    }
+
+    /**
+     * Setter for the event driven send mode. When enabled, the send task is woken up
+     * every time a message is queued, and parks while the transport is empty, instead
+     * of running every send period.
+     *
+     * @param eventDrivenSend is the new send mode.
+     * @throws IllegalStateException if the client is already open.
+     */
+    public void setEventDrivenSend(boolean eventDrivenSend)
+    {
+        /* Codes_SRS_DEVICE_IO_28_007: [If the client is already open, the setEventDrivenSend shall throw IllegalStateException.] */
+        if (this.state == IotHubClientState.OPEN)
+        {
+            throw new IllegalStateException("event driven send can only be set when the client is closed");
+        }
+
+        /* Codes_SRS_DEVICE_IO_28_008: [The setEventDrivenSend shall store the new send mode.] */
+        this.eventDrivenSend = eventDrivenSend;
+    }
+
     /**
      * Getter for the transport protocol.
      *
@@ -475,6 +544,30 @@ public final class DeviceIO
         return this.transport.isEmpty();
     }
 
+    /**
+     * Getter for the depth of the transport queue, and for the time the
+     * messages spent in it.
+     *
+     * @return a snapshot of the metrics of the transport queue.
+     */
+    public IotHubOutboundQueueMetrics getOutboundQueueMetrics()
+    {
+        /* Codes_SRS_DEVICE_IO_28_009: [The getOutboundQueueMetrics shall return the outbound queue metrics of the transport.] */
+        return this.transport.getOutboundQueueMetrics();
+    }
+
+    /**
+     * Getter for the number of callbacks of the transport waiting to be
+     * invoked, and for the time they waited and ran.
+     *
+     * @return a snapshot of the metrics of the callback dispatcher of the transport.
+     */
+    public IotHubCallbackDispatcherMetrics getCallbackDispatcherMetrics()
+    {
+        /* Codes_SRS_DEVICE_IO_28_010: [The getCallbackDispatcherMetrics shall return the callback dispatcher metrics of the transport.] */
+        return this.transport.getCallbackDispatcherMetrics();
+    }
+
     /**
      * Registers a callback with the configured transport to be executed whenever the connection to the device is lost or established.
      *
@@ -486,4 +579,13 @@ public final class DeviceIO
         /* Codes_SRS_DEVICE_IO_99_001: [The registerConnectionStateCallback shall register the callback with the transport.]*/
         this.transport.registerConnectionStateCallback(callback, callbackContext);
     }
+
+    private void signalEventDrivenSendTask()
+    {
+        IotHubEventDrivenSendTask task = this.eventDrivenSendTask;
+        if (task != null)
+        {
+            task.signal();
+        }
+    }
 }
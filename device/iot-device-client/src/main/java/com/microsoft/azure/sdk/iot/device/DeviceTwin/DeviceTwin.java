@@ -9,22 +9,28 @@ import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransportMessage;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.microsoft.azure.sdk.iot.device.IotHubMessageResult.ABANDON;
 import static com.microsoft.azure.sdk.iot.device.IotHubMessageResult.COMPLETE;
 
 public class DeviceTwin
 {
-    private int requestId;
+    private final AtomicInteger requestId = new AtomicInteger();
     private TwinParser twinParser = null;
     private DeviceIO deviceIO = null;
     private DeviceClientConfig config = null;
     private boolean isSubscribed = false;
+    private boolean isResyncRequested = false;
+    private ReportedPropertiesWriter reportedPropertiesWriter = null;
 
     private final Object DEVICE_TWIN_LOCK = new Object();
 
@@ -46,6 +52,11 @@ public class DeviceTwin
 
     private ConcurrentSkipListMap<String, Pair<PropertyCallBack<String, Object>, Object>> onDesiredPropertyChangeMap;
 
+    /*
+        Callbacks of the reported properties patches waiting for their response, by request id
+     */
+    private final Map<String, List<Pair<IotHubEventCallback, Object>>> reportedPropertiesCallbacks = new LinkedHashMap<>();
+
     /*
         Callback invoked by serializer when desired property changes
     */
@@ -151,6 +162,10 @@ public class DeviceTwin
                 {
                     case DEVICE_OPERATION_TWIN_GET_RESPONSE:
                     {
+                        /*
+                        **Codes_SRS_DEVICETWIN_28_002: [**If the message is of type DeviceTwin and DEVICE_TWIN_OPERATION_GET_RESPONSE then a later missing version of the desired properties shall request the full twin again.**]**
+                         */
+                        isResyncRequested = false;
                         if (status != null)
                         {
                             iotHubStatus = IotHubStatusCode.getIotHubStatusCode(Integer.parseInt(status));
@@ -181,6 +196,11 @@ public class DeviceTwin
                          */
                         deviceTwinStatusCallback.execute(iotHubStatus, deviceTwinStatusCallbackContext);
 
+                        /*
+                        **Codes_SRS_DEVICETWIN_28_005: [**If the message is of type DEVICE_TWIN and DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_RESPONSE then the callbacks of the patch with the request id of the message, or of the oldest patch if the message has no request id, are triggered with the status.**]**
+                         */
+                        completeReportedProperties(dtMessage.getRequestId(), iotHubStatus);
+
                         break;
                     }
                     case DEVICE_OPERATION_TWIN_SUBSCRIBE_DESIRED_PROPERTIES_RESPONSE:
@@ -191,6 +211,15 @@ public class DeviceTwin
                         isSubscribed = true;
                         twinParser.updateDesiredProperty(new String(dtMessage.getBytes(), Message.DEFAULT_IOTHUB_MESSAGE_CHARSET));
 
+                        if (twinParser.isDesiredPropertyResyncPending() && !isResyncRequested)
+                        {
+                            /*
+                            **Codes_SRS_DEVICETWIN_28_001: [**If the desired properties missed a version, the callback shall request the full twin to resync them, unless a request is already pending.**]**
+                             */
+                            isResyncRequested = true;
+                            getDeviceTwin();
+                        }
+
                         break;
                     }
                     default:
@@ -220,6 +249,48 @@ public class DeviceTwin
         }
     }
 
+    /*
+        Callback invoked when a reported properties patch has been sent, or could not be sent
+    */
+    private final class reportedPropertiesRequestMessageCallback implements IotHubEventCallback
+    {
+        private final String requestId;
+
+        private reportedPropertiesRequestMessageCallback(String requestId)
+        {
+            this.requestId = requestId;
+        }
+
+        @Override
+        public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+        {
+            synchronized (DEVICE_TWIN_LOCK)
+            {
+                deviceTwinStatusCallback.execute(responseStatus, deviceTwinStatusCallbackContext);
+
+                if (responseStatus != IotHubStatusCode.OK && responseStatus != IotHubStatusCode.OK_EMPTY)
+                {
+                    /*
+                    **Codes_SRS_DEVICETWIN_28_006: [**If a reported properties patch could not be sent, its callbacks shall be triggered with the status of the send.**]**
+                     */
+                    completeReportedProperties(this.requestId, responseStatus);
+                }
+            }
+        }
+    }
+
+    /*
+        Sends the patches merged by the reported properties writer
+    */
+    private final class reportedPropertiesPatchSender implements ReportedPropertiesWriter.PatchSender
+    {
+        @Override
+        public void send(Map<String, Object> reportedProperties, List<Pair<IotHubEventCallback, Object>> callbacks) throws IOException
+        {
+            sendReportedProperties(reportedProperties, callbacks);
+        }
+    }
+
     public DeviceTwin(DeviceIO client, DeviceClientConfig config, IotHubEventCallback deviceTwinCallback, Object deviceTwinCallbackContext,
                       PropertyCallBack genericPropertyCallback, Object genericPropertyCallbackContext)
     {
@@ -251,7 +322,6 @@ public class DeviceTwin
         **Codes_SRS_DEVICETWIN_25_002: [**The constructor shall save the device twin message callback by calling setDeviceTwinMessageCallback where any further messages for device twin shall be delivered.**]**
          */
         this.config.setDeviceTwinMessageCallback(new deviceTwinResponseMessageCallback(), null);
-        this.requestId = 0;
 
         this.deviceTwinStatusCallback = deviceTwinCallback;
         this.deviceTwinStatusCallbackContext = deviceTwinCallbackContext;
@@ -266,6 +336,15 @@ public class DeviceTwin
         **Codes_SRS_DEVICETWIN_25_020: [**OnDesiredPropertyChange callback is registered with the serializer to be triggered when desired property changes.**]**
          */
         this.twinParser = new TwinParser(new OnDesiredPropertyChanged(), new OnReportedPropertyChanged());
+
+        if (this.config.getReportedPropertiesBatchMaxSize() > 0)
+        {
+            /*
+            **Codes_SRS_DEVICETWIN_28_003: [**If the config has a reported properties batch maximum size, the constructor shall create a reported properties writer with it and the reported properties linger time of the config.**]**
+             */
+            this.reportedPropertiesWriter = new ReportedPropertiesWriter(this.config.getReportedPropertiesBatchMaxSize(),
+                    this.config.getReportedPropertiesLingerTimeInMilliseconds(), new reportedPropertiesPatchSender());
+        }
     }
 
 
@@ -278,8 +357,9 @@ public class DeviceTwin
 
         /*
         **Codes_SRS_DEVICETWIN_25_007: [**This method shall set the request id for the message by calling setRequestId .**]**
+        **Codes_SRS_DEVICETWIN_28_010: [**The request ids shall be unique numbers, even for requests sent from several threads at once.**]**
          */
-        getTwinRequestMessage.setRequestId(String.valueOf(requestId++));
+        getTwinRequestMessage.setRequestId(String.valueOf(requestId.getAndIncrement()));
 
         /*
         **Codes_SRS_DEVICETWIN_25_006: [**This method shall set the message type as DEVICE_OPERATION_TWIN_GET_REQUEST by calling setDeviceOperationType.**]**
@@ -292,7 +372,13 @@ public class DeviceTwin
         this.deviceIO.sendEventAsync(getTwinRequestMessage,new deviceTwinRequestMessageCallback(), null, this.config.getIotHubConnectionString());
     }
 
-    public synchronized void updateReportedProperties(Set<Property> reportedProperties) throws IOException
+    public void updateReportedProperties(Set<Property> reportedProperties) throws IOException
+    {
+        updateReportedProperties(reportedProperties, null, null);
+    }
+
+    public void updateReportedProperties(Set<Property> reportedProperties, IotHubEventCallback reportedPropertiesCallback,
+                                         Object reportedPropertiesCallbackContext) throws IOException
     {
         if (reportedProperties == null)
         {
@@ -309,6 +395,15 @@ public class DeviceTwin
             throw new IOException("Initilaize twin object before using it");
         }
 
+        if (this.reportedPropertiesWriter != null && !reportedProperties.isEmpty())
+        {
+            /*
+            **Codes_SRS_DEVICETWIN_28_004: [**If there is a reported properties writer, the method shall merge the property set and the callback into its pending patch.**]**
+             */
+            this.reportedPropertiesWriter.add(reportedProperties, reportedPropertiesCallback, reportedPropertiesCallbackContext);
+            return;
+        }
+
         HashMap<String, Object> reportedPropertiesMap = new HashMap<>();
 
         for(Property p : reportedProperties)
@@ -316,6 +411,29 @@ public class DeviceTwin
             reportedPropertiesMap.put(p.getKey(), p.getValue());
         }
 
+        List<Pair<IotHubEventCallback, Object>> callbacks = new ArrayList<>();
+        if (reportedPropertiesCallback != null)
+        {
+            callbacks.add(new Pair<>(reportedPropertiesCallback, reportedPropertiesCallbackContext));
+        }
+
+        sendReportedProperties(reportedPropertiesMap, callbacks);
+    }
+
+    public void flushReportedProperties() throws IOException
+    {
+        if (this.reportedPropertiesWriter != null)
+        {
+            /*
+            **Codes_SRS_DEVICETWIN_28_007: [**If there is a reported properties writer, the method shall send its pending patch now.**]**
+             */
+            this.reportedPropertiesWriter.flush();
+        }
+    }
+
+    private synchronized void sendReportedProperties(Map<String, Object> reportedPropertiesMap, List<Pair<IotHubEventCallback, Object>> callbacks)
+            throws IOException
+    {
         /*
         **Codes_SRS_DEVICETWIN_25_011: [**The method shall send the property set to Twin Serializer for serilization by calling updateReportedProperty.**]**
          */
@@ -323,6 +441,13 @@ public class DeviceTwin
 
         if (serializedReportedProperties == null)
         {
+            /*
+            **Codes_SRS_DEVICETWIN_28_008: [**If no reported property changed, the method shall not send a patch and shall trigger the callbacks with OK.**]**
+             */
+            for (Pair<IotHubEventCallback, Object> callback : callbacks)
+            {
+                callback.getKey().execute(IotHubStatusCode.OK, callback.getValue());
+            }
             return;
         }
 
@@ -333,19 +458,61 @@ public class DeviceTwin
 
         /*
         **Codes_SRS_DEVICETWIN_25_014: [**This method shall set the request id for the message by calling setRequestId .**]**
+        **Codes_SRS_DEVICETWIN_28_010: [**The request ids shall be unique numbers, even for requests sent from several threads at once.**]**
          */
-        updateReportedPropertiesRequest.setRequestId(String.valueOf(requestId++));
+        String reportedPropertiesRequestId = String.valueOf(requestId.getAndIncrement());
+        updateReportedPropertiesRequest.setRequestId(reportedPropertiesRequestId);
 
         /*
         **Codes_SRS_DEVICETWIN_25_013: [**This method shall set the message type as DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST by calling setDeviceOperationType.**]**
          */
         updateReportedPropertiesRequest.setDeviceOperationType(DeviceOperations.DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST);
 
+        synchronized (this.reportedPropertiesCallbacks)
+        {
+            /*
+            **Codes_SRS_DEVICETWIN_28_009: [**The method shall keep the callbacks of the patch until the response with its request id.**]**
+             */
+            this.reportedPropertiesCallbacks.put(reportedPropertiesRequestId, callbacks);
+        }
+
         /*
         **Codes_SRS_DEVICETWIN_25_015: [**This method shall send the message to the lower transport layers by calling sendEventAsync.**]**
          */
-        this.deviceIO.sendEventAsync(updateReportedPropertiesRequest, new deviceTwinRequestMessageCallback(), null, this.config.getIotHubConnectionString());
+        try
+        {
+            this.deviceIO.sendEventAsync(updateReportedPropertiesRequest, new reportedPropertiesRequestMessageCallback(reportedPropertiesRequestId), null, this.config.getIotHubConnectionString());
+        }
+        catch (RuntimeException e)
+        {
+            synchronized (this.reportedPropertiesCallbacks)
+            {
+                this.reportedPropertiesCallbacks.remove(reportedPropertiesRequestId);
+            }
+            throw e;
+        }
+    }
 
+    private void completeReportedProperties(String reportedPropertiesRequestId, IotHubStatusCode status)
+    {
+        List<Pair<IotHubEventCallback, Object>> callbacks;
+        synchronized (this.reportedPropertiesCallbacks)
+        {
+            if (reportedPropertiesRequestId == null)
+            {
+                Iterator<String> requestIds = this.reportedPropertiesCallbacks.keySet().iterator();
+                reportedPropertiesRequestId = requestIds.hasNext() ? requestIds.next() : null;
+            }
+            callbacks = (reportedPropertiesRequestId == null) ? null : this.reportedPropertiesCallbacks.remove(reportedPropertiesRequestId);
+        }
+
+        if (callbacks != null)
+        {
+            for (Pair<IotHubEventCallback, Object> callback : callbacks)
+            {
+                callback.getKey().execute(status, callback.getValue());
+            }
+        }
     }
 
     public void subscribeDesiredPropertiesNotification(Map<Property, Pair<PropertyCallBack<String, Object>, Object>> onDesiredPropertyChange)
@@ -0,0 +1,306 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.DeviceTwin;
+
+import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
+import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubDaemonExecutors;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the reported properties sent by the device into one twin patch.
+ * An update of a property that is waiting to be sent replaces its value, so
+ * only the last value is sent. The patch is sent when it has the maximum
+ * number of properties, when its first update waited for the linger time, or
+ * when it is flushed.
+ *
+ * The callback of every update is invoked with the status of the patch that
+ * sent it.
+ *
+ * The patches are sent and their callbacks are invoked outside the lock of the
+ * writer, one patch at a time and in the order they were completed. A patch
+ * completed while another thread is sending is sent by that thread.
+ */
+public final class ReportedPropertiesWriter
+{
+    /**
+     * Sends the patches of the writer.
+     */
+    public interface PatchSender
+    {
+        /**
+         * Sends a patch of reported properties.
+         *
+         * @param reportedProperties the properties of the patch, by key.
+         * @param callbacks the callbacks of the updates merged into the patch, with their contexts.
+         * @throws IOException if the patch cannot be sent.
+         */
+        void send(Map<String, Object> reportedProperties, List<Pair<IotHubEventCallback, Object>> callbacks) throws IOException;
+    }
+
+    private static final ScheduledExecutorService EXECUTOR = IotHubDaemonExecutors.newScheduledExecutor("ReportedPropertiesWriter", 1);
+
+    private final int maxBatchSize;
+    private final long lingerTimeInMilliseconds;
+    private final PatchSender patchSender;
+
+    private Map<String, Object> pendingProperties = new LinkedHashMap<>();
+    private List<Pair<IotHubEventCallback, Object>> pendingCallbacks = new ArrayList<>();
+    private ScheduledFuture<?> pendingFlush;
+
+    private final Queue<Patch> patchesToSend = new ArrayDeque<>();
+    private boolean isSending;
+
+    private static final class Patch
+    {
+        private final Map<String, Object> properties;
+        private final List<Pair<IotHubEventCallback, Object>> callbacks;
+
+        private Patch(Map<String, Object> properties, List<Pair<IotHubEventCallback, Object>> callbacks)
+        {
+            this.properties = properties;
+            this.callbacks = callbacks;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxBatchSize the maximum number of properties in a patch.
+     * @param lingerTimeInMilliseconds the time the first update of a patch waits for other updates.
+     * @param patchSender the sender of the patches.
+     * @throws IllegalArgumentException if the maximum number of properties is smaller than 1, the linger time is
+     * negative, or the sender is null.
+     */
+    public ReportedPropertiesWriter(int maxBatchSize, long lingerTimeInMilliseconds, PatchSender patchSender) throws IllegalArgumentException
+    {
+        if ((maxBatchSize < 1) || (lingerTimeInMilliseconds < 0) || (patchSender == null))
+        {
+            // Codes_SRS_REPORTEDPROPERTIESWRITER_28_001: [If the maxBatchSize is smaller than 1, the lingerTimeInMilliseconds is negative, or the patchSender is null, the constructor shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("maxBatchSize must be positive, lingerTimeInMilliseconds cannot be negative and patchSender cannot be null");
+        }
+
+        // Codes_SRS_REPORTEDPROPERTIESWRITER_28_002: [The constructor shall save the parameters and start with an empty patch.]
+        this.maxBatchSize = maxBatchSize;
+        this.lingerTimeInMilliseconds = lingerTimeInMilliseconds;
+        this.patchSender = patchSender;
+    }
+
+    /**
+     * Merges reported properties into the pending patch.
+     *
+     * @param reportedProperties the properties to report.
+     * @param callback the callback to invoke with the status of the patch that sends the properties. Can be {@code null}.
+     * @param callbackContext the context of the callback. Can be {@code null}.
+     * @throws IllegalArgumentException if the properties are null or empty.
+     * @throws IOException if the patch is full and cannot be sent.
+     */
+    public void add(Set<Property> reportedProperties, IotHubEventCallback callback, Object callbackContext)
+            throws IllegalArgumentException, IOException
+    {
+        if ((reportedProperties == null) || reportedProperties.isEmpty())
+        {
+            // Codes_SRS_REPORTEDPROPERTIESWRITER_28_003: [If the reportedProperties is null or empty, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("reportedProperties cannot be null or empty");
+        }
+
+        if (this.merge(reportedProperties, callback, callbackContext))
+        {
+            // Codes_SRS_REPORTEDPROPERTIESWRITER_28_006: [If the pending patch has maxBatchSize properties or more, the function shall send it.]
+            this.sendPatches();
+        }
+    }
+
+    /**
+     * Sends the pending patch now.
+     *
+     * @throws IOException if the patch cannot be sent.
+     */
+    public void flush() throws IOException
+    {
+        boolean completed;
+        synchronized (this)
+        {
+            completed = this.completePendingPatch();
+        }
+
+        if (completed)
+        {
+            this.sendPatches();
+        }
+    }
+
+    /**
+     * Getter for the number of properties of the pending patch.
+     *
+     * @return the number of properties waiting to be sent.
+     */
+    public synchronized int size()
+    {
+        // Codes_SRS_REPORTEDPROPERTIESWRITER_28_012: [The function shall return the number of properties of the pending patch.]
+        return this.pendingProperties.size();
+    }
+
+    /**
+     * Merges the properties into the pending patch, and completes the patch if
+     * it is full.
+     *
+     * @return {@code true} if the patch was completed and must be sent.
+     */
+    private synchronized boolean merge(Set<Property> reportedProperties, IotHubEventCallback callback, Object callbackContext)
+    {
+        // Codes_SRS_REPORTEDPROPERTIESWRITER_28_004: [The function shall merge the properties into the pending patch, replacing the pending value of a property with the new one.]
+        for (Property property : reportedProperties)
+        {
+            this.pendingProperties.remove(property.getKey());
+            this.pendingProperties.put(property.getKey(), property.getValue());
+        }
+
+        if (callback != null)
+        {
+            // Codes_SRS_REPORTEDPROPERTIESWRITER_28_005: [If the callback is not null, the function shall add it to the callbacks of the pending patch.]
+            this.pendingCallbacks.add(new Pair<>(callback, callbackContext));
+        }
+
+        if (this.pendingProperties.size() >= this.maxBatchSize)
+        {
+            return this.completePendingPatch();
+        }
+
+        if (this.pendingFlush == null)
+        {
+            // Codes_SRS_REPORTEDPROPERTIESWRITER_28_007: [Otherwise, if no flush is scheduled, the function shall schedule the flush of the pending patch after the linger time.]
+            this.pendingFlush = EXECUTOR.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        flush();
+                    }
+                    catch (IOException e)
+                    {
+                        // The callbacks of the patch were invoked with the error.
+                    }
+                }
+            }, this.lingerTimeInMilliseconds, TimeUnit.MILLISECONDS);
+        }
+
+        return false;
+    }
+
+    /**
+     * Moves the pending patch to the patches to send, and starts a new empty
+     * patch. Called with the lock of the writer held.
+     *
+     * @return {@code true} if the pending patch was not empty.
+     */
+    private boolean completePendingPatch()
+    {
+        if (this.pendingFlush != null)
+        {
+            // Codes_SRS_REPORTEDPROPERTIESWRITER_28_008: [The function shall cancel the scheduled flush, if any.]
+            this.pendingFlush.cancel(false);
+            this.pendingFlush = null;
+        }
+
+        if (this.pendingProperties.isEmpty())
+        {
+            // Codes_SRS_REPORTEDPROPERTIESWRITER_28_009: [If the pending patch is empty, the function shall do nothing.]
+            return false;
+        }
+
+        this.patchesToSend.add(new Patch(this.pendingProperties, this.pendingCallbacks));
+        this.pendingProperties = new LinkedHashMap<>();
+        this.pendingCallbacks = new ArrayList<>();
+        return true;
+    }
+
+    /**
+     * Sends the completed patches in order, outside the lock of the writer,
+     * unless another thread is already sending them.
+     *
+     * @throws IOException if a patch sent by this thread cannot be sent.
+     */
+    private void sendPatches() throws IOException
+    {
+        synchronized (this)
+        {
+            if (this.isSending)
+            {
+                // Codes_SRS_REPORTEDPROPERTIESWRITER_28_013: [If another thread is sending patches, the function shall leave the patch to that thread, which sends it after the patches completed before it.]
+                return;
+            }
+
+            this.isSending = true;
+        }
+
+        IOException sendException = null;
+        boolean sentAll = false;
+        try
+        {
+            while (true)
+            {
+                Patch patch;
+                synchronized (this)
+                {
+                    patch = this.patchesToSend.poll();
+                    if (patch == null)
+                    {
+                        this.isSending = false;
+                        sentAll = true;
+                        break;
+                    }
+                }
+
+                try
+                {
+                    // Codes_SRS_REPORTEDPROPERTIESWRITER_28_010: [The function shall send the pending patch with its callbacks through the patchSender, and start a new empty patch.]
+                    // Codes_SRS_REPORTEDPROPERTIESWRITER_28_014: [The patches shall be sent and their callbacks invoked without holding the lock of the writer.]
+                    this.patchSender.send(patch.properties, patch.callbacks);
+                }
+                catch (IOException | IllegalStateException e)
+                {
+                    // Codes_SRS_REPORTEDPROPERTIESWRITER_28_011: [If the patch cannot be sent, the function shall invoke its callbacks with ERROR and throw IOException.]
+                    for (Pair<IotHubEventCallback, Object> callback : patch.callbacks)
+                    {
+                        callback.getKey().execute(IotHubStatusCode.ERROR, callback.getValue());
+                    }
+
+                    if (sendException == null)
+                    {
+                        sendException = new IOException("Reported properties could not be sent", e);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            if (!sentAll)
+            {
+                synchronized (this)
+                {
+                    this.isSending = false;
+                }
+            }
+        }
+
+        if (sendException != null)
+        {
+            throw sendException;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+/**
+ * What the transport does with a new message when its queue of messages
+ * waiting to be sent is full.
+ */
+public enum IotHubOutboundQueuePolicy
+{
+    /** The caller waits until the queue has room for the message. */
+    BLOCK,
+
+    /** The new message is not queued, and its callback receives {@link IotHubStatusCode#OUTBOUND_QUEUE_FULL}. */
+    FAIL_FAST,
+
+    /** The oldest messages leave the queue to make room, and their callbacks receive {@link IotHubStatusCode#OUTBOUND_QUEUE_FULL}. */
+    DROP_OLDEST,
+
+    /**
+     * The expired messages leave the queue to make room, and their callbacks receive
+     * {@link IotHubStatusCode#MESSAGE_EXPIRED}. If no message expired, the new message
+     * is not queued, and its callback receives {@link IotHubStatusCode#OUTBOUND_QUEUE_FULL}.
+     */
+    DROP_EXPIRED
+}
@@ -11,7 +11,8 @@ public enum IotHubStatusCode
     OK, OK_EMPTY, BAD_FORMAT, UNAUTHORIZED, TOO_MANY_DEVICES,
     HUB_OR_DEVICE_ID_NOT_FOUND,
     PRECONDITION_FAILED, REQUEST_ENTITY_TOO_LARGE, THROTTLED,
-    INTERNAL_SERVER_ERROR, SERVER_BUSY, ERROR, MESSAGE_EXPIRED,MESSAGE_CANCELLED_ONCLOSE;
+    INTERNAL_SERVER_ERROR, SERVER_BUSY, ERROR, MESSAGE_EXPIRED,MESSAGE_CANCELLED_ONCLOSE,
+    OUTBOUND_QUEUE_FULL;
 
     /**
      * Returns the IoT Hub status code referenced by the HTTPS status code.
@@ -5,9 +5,9 @@ package com.microsoft.azure.sdk.iot.device;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.UUID;
@@ -120,13 +120,19 @@ public class Message
     /**
      * User-defined properties.
      */
-    private ArrayList<MessageProperty> properties;
+    private MessagePropertyMap properties;
 
     /// <summary>
     /// The message body
     /// </summary>
     private byte[] body;
 
+    /**
+     * The body provided as a buffer, kept without copying it. Only set when
+     * the message was created from a buffer, in which case body is null.
+     */
+    private ByteBuffer bodyBuffer;
+
     /**
      * Stream that will provide the bytes for the body of the
      */
@@ -193,6 +199,27 @@ public class Message
         this.body = body.getBytes(DEFAULT_IOTHUB_MESSAGE_CHARSET);
     }
 
+    /**
+     * Constructor. The message keeps the bytes between the position and the
+     * limit of the buffer without copying them, and the transports copy them
+     * only when they send the message, so they must not change until the
+     * message callback is invoked.
+     * @param body The body of the new Message instance.
+     */
+    public Message(ByteBuffer body)
+    {
+        // Codes_SRS_MESSAGE_28_002: [If the message body is null, the constructor shall throw an IllegalArgumentException.]
+        if (body == null)
+        {
+            throw new IllegalArgumentException("Message body cannot be 'null'.");
+        }
+
+        initialize();
+
+        // Codes_SRS_MESSAGE_28_003: [The constructor shall save a view of the remaining bytes of the buffer, without copying them.]
+        this.bodyBuffer = body.slice();
+    }
+
     
     // ----- Public Methods -----
 
@@ -216,10 +243,47 @@ public class Message
         if (this.body != null) {
             bodyClone = Arrays.copyOf(this.body, this.body.length);
         }
+        else if (this.bodyBuffer != null)
+        {
+            bodyClone = new byte[this.bodyBuffer.remaining()];
+            this.bodyBuffer.duplicate().get(bodyClone);
+        }
 
         return bodyClone;
     }
 
+    /**
+     * The content of the body, without copying it. The returned buffer is a
+     * new read-only view, so moving its position does not change the message,
+     * and the body cannot be modified through it.
+     * @return A read-only view of this Message body, or null if the message has no body.
+     */
+    public ByteBuffer getBodyBuffer()
+    {
+        // Codes_SRS_MESSAGE_28_004: [The function shall return a new read-only view of the message body, without copying it, or null if the message has no body.]
+        if (this.body != null)
+        {
+            return ByteBuffer.wrap(this.body).asReadOnlyBuffer();
+        }
+
+        return (this.bodyBuffer == null) ? null : this.bodyBuffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * The length of the body, without copying it.
+     * @return The length of this Message body, in bytes, or 0 if the message has no body.
+     */
+    public int getBodyLength()
+    {
+        // Codes_SRS_MESSAGE_28_005: [The function shall return the length of the message body, or 0 if the message has no body.]
+        if (this.body != null)
+        {
+            return this.body.length;
+        }
+
+        return (this.bodyBuffer == null) ? 0 : this.bodyBuffer.remaining();
+    }
+
     /**
      * Gets the values of user-defined properties of this Message.
      * @param name Name of the user-defined property to search for.
@@ -227,16 +291,8 @@ public class Message
      */
     public String getProperty(String name)
     {
-        MessageProperty messageProperty = null;
-
-        for (MessageProperty currentMessageProperty: this.properties)
-        {
-            if (currentMessageProperty.hasSameName(name))
-            {
-                messageProperty = currentMessageProperty;
-                break;
-            }
-        }
+        // Codes_SRS_MESSAGE_28_006: [The function shall find the property by its name without scanning the other properties.]
+        MessageProperty messageProperty = this.properties.get(name);
 
         // Codes_SRS_MESSAGE_11_034: [If no value associated with the property name is found, the function shall return null.]
         if (messageProperty == null) {
@@ -268,24 +324,8 @@ public class Message
         }
 
         // Codes_SRS_MESSAGE_11_026: [The function shall set the message property to the given value.]
-        MessageProperty messageProperty = null;
-
-        for (MessageProperty currentMessageProperty: this.properties)
-        {
-            if (currentMessageProperty.hasSameName(name))
-            {
-                messageProperty = currentMessageProperty;
-                break;
-            }
-        }
-
-        if (messageProperty != null)
-        {
-            this.properties.remove(messageProperty);
-        }
-
         logger.LogInfo("Setting message property with name=%s and value=%s, method name is %s ", name, value, logger.getMethodName());
-        this.properties.add(new MessageProperty(name, value));
+        this.properties.put(new MessageProperty(name, value));
     }
 
     /**
@@ -295,7 +335,20 @@ public class Message
      */
     public MessageProperty[] getProperties() {
         // Codes_SRS_MESSAGE_11_033: [The function shall return a copy of the message properties.]
-        return properties.toArray(new MessageProperty[this.properties.size()]);
+        return this.properties.toArray();
+    }
+
+    /**
+     * Returns the message properties, without copying them. The transports
+     * iterate over it to serialize the properties. Setting a property on the
+     * map sets it on the message.
+     *
+     * @return the message properties.
+     */
+    public MessagePropertyMap getPropertyMap()
+    {
+        // Codes_SRS_MESSAGE_28_007: [The function shall return the properties of the message, without copying them.]
+        return this.properties;
     }
 
     // ----- Private Methods -----
@@ -309,7 +362,7 @@ public class Message
         this.correlationId = UUID.randomUUID().toString();
         this.feedbackStatusCode = FeedbackStatusCodeEnum.none;
         this.ack = FeedbackStatusCodeEnum.none;
-        this.properties = new ArrayList<>();
+        this.properties = new MessagePropertyMap();
         this.logger = new CustomLogger(this.getClass());
     }
 
@@ -413,6 +466,16 @@ public class Message
         logger.LogInfo("The message with messageid %s has expiry time as %s milliseconds and the message will expire on %s, method name is %s ", this.getMessageId(), absoluteTimeout, new Date(this.expiryTime), logger.getMethodName());
     }
 
+    /**
+     * Getter for the expiryTime property
+     * @return The absolute expiry time, in milliseconds since the epoch, or 0 if the message does not expire.
+     */
+    public long getExpiryTime()
+    {
+        // Codes_SRS_MESSAGE_28_001: [The function shall return the message's absolute expiry time, or 0 if it is not set.]
+        return this.expiryTime;
+    }
+
     /**
      * Getter for the Message type
      * @return the Message type value
@@ -0,0 +1,309 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The user-defined properties of a message. A property is found by its name,
+ * compared in a case-insensitive manner, without scanning the other
+ * properties, and the properties can be iterated, in the order they were set,
+ * without being copied.
+ */
+public final class MessagePropertyMap implements Iterable<MessageProperty>
+{
+    private static final int INITIAL_CAPACITY = 4;
+    private static final MessageProperty[] NO_PROPERTIES = new MessageProperty[0];
+    private static final int[] NO_SLOTS = new int[0];
+
+    /* The properties in the order they were set. A property that was set again leaves a null behind. */
+    private MessageProperty[] entries = NO_PROPERTIES;
+    /* The hash of the name of each entry. */
+    private int[] hashes = NO_SLOTS;
+    /* The number of entries used, including the nulls. */
+    private int entryCount = 0;
+    /* The number of properties. */
+    private int size = 0;
+    /* Open addressing table, with linear probing, of the index of an entry plus one, or 0 for a free slot. */
+    private int[] slots = NO_SLOTS;
+
+    /**
+     * Creates a map without properties.
+     */
+    public MessagePropertyMap()
+    {
+        // Codes_SRS_MESSAGEPROPERTYMAP_28_001: [The constructor shall create a map without properties.]
+    }
+
+    /**
+     * Creates a map with the provided properties, as if they were set in order.
+     *
+     * @param properties the properties to set.
+     * @throws IllegalArgumentException if the properties or one of them is null.
+     */
+    public MessagePropertyMap(MessageProperty[] properties) throws IllegalArgumentException
+    {
+        if (properties == null)
+        {
+            // Codes_SRS_MESSAGEPROPERTYMAP_28_002: [If the properties are null, the constructor shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("properties cannot be null");
+        }
+
+        // Codes_SRS_MESSAGEPROPERTYMAP_28_003: [The constructor shall put the provided properties in order.]
+        for (MessageProperty property : properties)
+        {
+            this.put(property);
+        }
+    }
+
+    /**
+     * Returns the property with the provided name.
+     *
+     * @param name the property name, compared in a case-insensitive manner.
+     * @return the property, or {@code null} if no property has this name.
+     */
+    public MessageProperty get(String name)
+    {
+        if (name == null || this.size == 0)
+        {
+            // Codes_SRS_MESSAGEPROPERTYMAP_28_004: [If the name is null or the map is empty, the function shall return null.]
+            return null;
+        }
+
+        // Codes_SRS_MESSAGEPROPERTYMAP_28_005: [The function shall return the property with the provided name, compared in a case-insensitive manner, or null if there is none.]
+        int slot = this.findSlot(name, hash(name));
+        return (this.slots[slot] == 0) ? null : this.entries[this.slots[slot] - 1];
+    }
+
+    /**
+     * Sets a property. A property with the same name, compared in a
+     * case-insensitive manner, is replaced, and the new property is iterated
+     * after the others.
+     *
+     * @param property the property to set.
+     * @return the replaced property, or {@code null} if there was none.
+     * @throws IllegalArgumentException if the property is null.
+     */
+    public MessageProperty put(MessageProperty property) throws IllegalArgumentException
+    {
+        if (property == null)
+        {
+            // Codes_SRS_MESSAGEPROPERTYMAP_28_006: [If the property is null, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("property cannot be null");
+        }
+
+        String name = property.getName();
+        int hash = hash(name);
+        MessageProperty replaced = null;
+
+        if (this.size > 0)
+        {
+            int slot = this.findSlot(name, hash);
+            if (this.slots[slot] != 0)
+            {
+                // Codes_SRS_MESSAGEPROPERTYMAP_28_007: [If a property has the same name, compared in a case-insensitive manner, the function shall remove it and return it.]
+                int replacedIndex = this.slots[slot] - 1;
+                replaced = this.entries[replacedIndex];
+                this.entries[replacedIndex] = null;
+                this.slots[slot] = 0;
+                this.size--;
+                this.closeGap(slot);
+            }
+        }
+
+        if (this.entryCount == this.entries.length)
+        {
+            this.rebuild();
+        }
+
+        // Codes_SRS_MESSAGEPROPERTYMAP_28_008: [The function shall add the property after the other properties.]
+        this.entries[this.entryCount] = property;
+        this.hashes[this.entryCount] = hash;
+        this.entryCount++;
+        this.slots[this.findSlot(name, hash)] = this.entryCount;
+        this.size++;
+
+        return replaced;
+    }
+
+    /**
+     * Returns the number of properties.
+     *
+     * @return the number of properties.
+     */
+    public int size()
+    {
+        // Codes_SRS_MESSAGEPROPERTYMAP_28_009: [The function shall return the number of properties.]
+        return this.size;
+    }
+
+    /**
+     * Returns whether the map has no property.
+     *
+     * @return {@code true} if the map has no property, {@code false} otherwise.
+     */
+    public boolean isEmpty()
+    {
+        // Codes_SRS_MESSAGEPROPERTYMAP_28_010: [The function shall return true if the map has no property, and false otherwise.]
+        return this.size == 0;
+    }
+
+    /**
+     * Returns a copy of the properties, in the order they were set.
+     *
+     * @return a new array with the properties.
+     */
+    public MessageProperty[] toArray()
+    {
+        // Codes_SRS_MESSAGEPROPERTYMAP_28_011: [The function shall return a new array with the properties, in the order they were set.]
+        MessageProperty[] properties = new MessageProperty[this.size];
+        int count = 0;
+        for (int i = 0; i < this.entryCount; i++)
+        {
+            if (this.entries[i] != null)
+            {
+                properties[count++] = this.entries[i];
+            }
+        }
+
+        return properties;
+    }
+
+    /**
+     * Returns an iterator over the properties, in the order they were set,
+     * that does not copy them. The iterator does not support {@code remove}.
+     *
+     * @return an iterator over the properties.
+     */
+    @Override
+    public Iterator<MessageProperty> iterator()
+    {
+        // Codes_SRS_MESSAGEPROPERTYMAP_28_012: [The function shall return an iterator over the properties, in the order they were set, that does not copy them and does not support remove.]
+        final MessageProperty[] iteratedEntries = this.entries;
+        final int iteratedEntryCount = this.entryCount;
+        return new Iterator<MessageProperty>()
+        {
+            private int next = this.skipRemoved(0);
+
+            private int skipRemoved(int index)
+            {
+                while (index < iteratedEntryCount && iteratedEntries[index] == null)
+                {
+                    index++;
+                }
+                return index;
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return this.next < iteratedEntryCount;
+            }
+
+            @Override
+            public MessageProperty next()
+            {
+                if (this.next >= iteratedEntryCount)
+                {
+                    throw new NoSuchElementException();
+                }
+
+                MessageProperty property = iteratedEntries[this.next];
+                this.next = this.skipRemoved(this.next + 1);
+                return property;
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+
+    /* The slot of the entry with the provided name, or the free slot where it would go. */
+    private int findSlot(String name, int hash)
+    {
+        int mask = this.slots.length - 1;
+        int slot = hash & mask;
+        while (this.slots[slot] != 0)
+        {
+            int index = this.slots[slot] - 1;
+            if (this.hashes[index] == hash && this.entries[index].hasSameName(name))
+            {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /* Moves back the entries that were probed past a slot that was just freed, so they can still be found. */
+    private void closeGap(int freedSlot)
+    {
+        int mask = this.slots.length - 1;
+        int gap = freedSlot;
+        int slot = (gap + 1) & mask;
+        while (this.slots[slot] != 0)
+        {
+            int home = this.hashes[this.slots[slot] - 1] & mask;
+            // the entry can fill the gap if its home slot is not between the gap and its slot
+            boolean canMove = (gap <= slot) ? (home <= gap || home > slot) : (home <= gap && home > slot);
+            if (canMove)
+            {
+                this.slots[gap] = this.slots[slot];
+                this.slots[slot] = 0;
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /* Drops the nulls left by replaced properties, and grows the arrays if they are more than half used. */
+    private void rebuild()
+    {
+        int capacity = Math.max(INITIAL_CAPACITY, this.entries.length);
+        if (this.size >= capacity / 2)
+        {
+            capacity *= 2;
+        }
+
+        MessageProperty[] newEntries = new MessageProperty[capacity];
+        int[] newHashes = new int[capacity];
+        int count = 0;
+        for (int i = 0; i < this.entryCount; i++)
+        {
+            if (this.entries[i] != null)
+            {
+                newEntries[count] = this.entries[i];
+                newHashes[count] = this.hashes[i];
+                count++;
+            }
+        }
+
+        // a new array is used, so the iterators already returned keep working on the old one
+        this.entries = newEntries;
+        this.hashes = newHashes;
+        this.entryCount = count;
+        this.slots = new int[capacity * 2];
+        for (int i = 0; i < count; i++)
+        {
+            this.slots[this.findSlot(newEntries[i].getName(), newHashes[i])] = i + 1;
+        }
+    }
+
+    /* A case-insensitive hash of the name, spread over the low bits used by the table. */
+    private static int hash(String name)
+    {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++)
+        {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+}
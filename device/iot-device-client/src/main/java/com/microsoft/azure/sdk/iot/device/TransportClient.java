@@ -134,6 +134,12 @@ public class TransportClient
         for (int i = 0; i < this.deviceClientList.size(); i++)
         {
             deviceClientList.get(i).closeFileUpload();
+
+            // Codes_SRS_TRANSPORTCLIENT_28_001: [The function shall cancel the background renewal of the sas token of all devices, if any.]
+            if (deviceClientList.get(i).getConfig().getSasTokenAuthentication() != null)
+            {
+                deviceClientList.get(i).getConfig().getSasTokenAuthentication().cancelTokenRenewal();
+            }
         }
 
         // Codes_SRS_TRANSPORTCLIENT_12_014: [If the deviceIO not null the function shall call multiplexClose on the deviceIO and set the deviceIO to null.]
@@ -4,6 +4,10 @@
 package com.microsoft.azure.sdk.iot.device.auth;
 
 import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
@@ -117,7 +121,13 @@ public class IotHubCertificateManager
                     "R9I4LtD+gdwyah617jzV/OeBHRnDJELqYzmp\r\n" +
                     "-----END CERTIFICATE-----\r\n";
 
+    private static final String CERT_DIGEST_ALGORITHM = "SHA-256";
+
+    // The digest of the default certificates, computed once for all the certificate managers that keep them
+    private static volatile String defaultCertDigest = null;
+
     private String validCert = null;
+    private boolean isDefaultCert = false;
 
     /**
      * Certificate manager for IotHub creating default certificates
@@ -126,6 +136,7 @@ public class IotHubCertificateManager
     {
         //Codes_SRS_IOTHUBCERTIFICATEMANAGER_25_001: [**The constructor shall set the valid certificate to be default certificate unless changed by user.**]**
         this.validCert = DEFAULT_CERT;
+        this.isDefaultCert = true;
     }
 
     /**
@@ -151,6 +162,33 @@ public class IotHubCertificateManager
         }
     }
 
+    /**
+     * Getter for the digest of the certificates used to communicate with IotHub
+     * @return The hex encoded SHA-256 digest of the PEM formatted certificates, or null if a valid certificate was not defined.
+     * @throws NoSuchAlgorithmException If the SHA-256 digest is not available.
+     */
+    String getValidCertDigest() throws NoSuchAlgorithmException
+    {
+        if (this.validCert == null)
+        {
+            //Codes_SRS_IOTHUBCERTIFICATEMANAGER_28_001: [This method shall return the hex encoded SHA-256 digest of the valid certificate, or null if it was not defined.]
+            return null;
+        }
+
+        if (this.isDefaultCert)
+        {
+            //Codes_SRS_IOTHUBCERTIFICATEMANAGER_28_002: [This method shall compute the digest of the default certificate only once for all the certificate managers.]
+            if (defaultCertDigest == null)
+            {
+                defaultCertDigest = digest(DEFAULT_CERT);
+            }
+
+            return defaultCertDigest;
+        }
+
+        return digest(this.validCert);
+    }
+
     /**
      * Setter for a valid certificate path provided by user
      * @param certPath The valid path where a certificate could be loaded from.
@@ -160,6 +198,7 @@ public class IotHubCertificateManager
     {
         //Codes_SRS_IOTHUBCERTIFICATEMANAGER_25_006: [*If a user attempted to set the certificate and for somereason could not succeed then this method shall not use default certificate by setting valid certificate as null.**]**
         this.validCert = null;
+        this.isDefaultCert = false;
 
         if (certPath == null)
         {
@@ -198,6 +237,7 @@ public class IotHubCertificateManager
     {
         //Codes_SRS_IOTHUBCERTIFICATEMANAGER_25_009: [*If a user attempted to set the certificate and for somereason could not succeed then this method shall not use default certificate by setting valid certificate as null.**]**
         this.validCert = null;
+        this.isDefaultCert = false;
 
         if (cert == null || cert.length() == 0)
         {
@@ -208,4 +248,10 @@ public class IotHubCertificateManager
         //Codes_SRS_IOTHUBCERTIFICATEMANAGER_25_008: [*This method shall save the cert provided by the user a s valid cert to be used to communicate with IotHub.**]**
         this.validCert = cert;
     }
+
+    private static String digest(String cert) throws NoSuchAlgorithmException
+    {
+        byte[] certDigest = MessageDigest.getInstance(CERT_DIGEST_ALGORITHM).digest(cert.getBytes(StandardCharsets.UTF_8));
+        return String.format("%0" + (certDigest.length * 2) + "x", new BigInteger(1, certDigest));
+    }
 }
@@ -13,6 +13,7 @@ import org.bouncycastle.util.io.pem.PemReader;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManagerFactory;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -22,6 +23,8 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 public class IotHubSSLContext
@@ -35,6 +38,23 @@ public class IotHubSSLContext
 
     private static final String TRUSTED_IOT_HUB_CERT_PREFIX = "trustedIotHubCert-";
 
+    private static final int SESSION_CACHE_SIZE = 1024;
+    private static final int SESSION_CACHE_TIMEOUT_IN_SECONDS = 24 * 60 * 60;
+
+    private static final int MAX_SHARED_SSL_CONTEXTS = 16;
+
+    // The SSL contexts that only hold trusted certificates, keyed by the digest of these certificates,
+    // so that every client with the same trusted certificates parses them and builds a trust store once.
+    // The least recently used context is dropped beyond MAX_SHARED_SSL_CONTEXTS. Guarded by itself.
+    private static final Map<String, SSLContext> SHARED_SSL_CONTEXTS = new LinkedHashMap<String, SSLContext>(MAX_SHARED_SSL_CONTEXTS, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SSLContext> eldest)
+        {
+            return size() > MAX_SHARED_SSL_CONTEXTS;
+        }
+    };
+
     /**
      * Creates a SSLContext for the IotHub.
      *
@@ -198,7 +218,8 @@ public class IotHubSSLContext
     }
 
     /**
-     * Generates the default SSL Context and saves it to this object's SSLContext object
+     * Generates the default SSL Context and saves it to this object's SSLContext object. The SSL Context is shared
+     * with every other IotHubSSLContext created for the same trusted certificates.
      *
      * @throws KeyStoreException If the provided certificateManager's certificates cannot be loaded into the trust manager used in creating the SSLContext
      * @throws IOException If a valid certificate could not be retrieved from the provided certificateManager
@@ -208,9 +229,48 @@ public class IotHubSSLContext
      */
     private void generateDefaultSSLContext(IotHubCertificateManager certificateManager)
             throws KeyStoreException, IOException, CertificateException, KeyManagementException, NoSuchAlgorithmException
+    {
+        String trustedCertsDigest = certificateManager.getValidCertDigest();
+        if (trustedCertsDigest == null)
+        {
+            // nothing to share the context on, the certificate manager reports the missing certificate
+            this.sslContext = generateTrustedSSLContext(certificateManager);
+            return;
+        }
+
+        SSLContext sharedSSLContext;
+        synchronized (SHARED_SSL_CONTEXTS)
+        {
+            //Codes_SRS_IOTHUBSSLCONTEXT_28_001: [If an SSL context was already created for the same trusted certificates, compared by their SHA-256 digest, the constructor shall use it instead of creating a new one.]
+            sharedSSLContext = SHARED_SSL_CONTEXTS.get(trustedCertsDigest);
+            if (sharedSSLContext == null)
+            {
+                //Codes_SRS_IOTHUBSSLCONTEXT_28_002: [The constructor shall save the created SSL context for the other IotHubSSLContext objects created for the same trusted certificates.]
+                //Codes_SRS_IOTHUBSSLCONTEXT_28_004: [The constructor shall keep at most 16 saved SSL contexts, and drop the least recently used one beyond that.]
+                sharedSSLContext = generateTrustedSSLContext(certificateManager);
+                SHARED_SSL_CONTEXTS.put(trustedCertsDigest, sharedSSLContext);
+            }
+        }
+
+        this.sslContext = sharedSSLContext;
+    }
+
+    /**
+     * Creates an SSL Context that trusts the certificates of the provided certificate manager.
+     *
+     * @param certificateManager the certificate manager holding the trusted certificates
+     * @return The created SSL Context
+     * @throws KeyStoreException If the provided certificateManager's certificates cannot be loaded into the trust manager used in creating the SSLContext
+     * @throws IOException If a valid certificate could not be retrieved from the provided certificateManager
+     * @throws CertificateException If the provided certificateManager cannot retrieve any certificates for any of a variety of reasons
+     * @throws KeyManagementException If the generated SSLContext cannot be initialized given the provided certificateManager's certificates
+     * @throws NoSuchAlgorithmException if default ssl context cannot be created or the trust manager cannot be created
+     */
+    private SSLContext generateTrustedSSLContext(IotHubCertificateManager certificateManager)
+            throws KeyStoreException, IOException, CertificateException, KeyManagementException, NoSuchAlgorithmException
     {
         //Codes_SRS_IOTHUBSSLCONTEXT_25_002: [The constructor shall create default SSL context for TLSv1.2.]
-        this.sslContext = SSLContext.getInstance(SSL_CONTEXT_INSTANCE);
+        SSLContext trustedSSLContext = SSLContext.getInstance(SSL_CONTEXT_INSTANCE);
 
         //Codes_SRS_IOTHUBSSLCONTEXT_25_003: [The constructor shall create default TrustManagerFactory with the default algorithm.]
         //Codes_SRS_IOTHUBSSLCONTEXT_25_004: [The constructor shall create default KeyStore instance with the default type and initialize it.]
@@ -219,7 +279,17 @@ public class IotHubSSLContext
         //Codes_SRS_IOTHUBSSLCONTEXT_25_007: [The constructor shall initialize SSL context with the above initialized TrustManagerFactory and a new secure random.]
         TrustManagerFactory trustManagerFactory = generateTrustManagerFactory(certificateManager, null);
 
-        this.sslContext.init(null, trustManagerFactory.getTrustManagers(), new SecureRandom());
+        trustedSSLContext.init(null, trustManagerFactory.getTrustManagers(), new SecureRandom());
+
+        //Codes_SRS_IOTHUBSSLCONTEXT_28_003: [The constructor shall enable the client session cache of the SSL context so that reconnections can resume their TLS sessions.]
+        SSLSessionContext sessionContext = trustedSSLContext.getClientSessionContext();
+        if (sessionContext != null)
+        {
+            sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+            sessionContext.setSessionTimeout(SESSION_CACHE_TIMEOUT_IN_SECONDS);
+        }
+
+        return trustedSSLContext;
     }
 
     /**
@@ -19,6 +19,9 @@ public final class IotHubSasToken
     private static final String TOKEN_FORMAT = "SharedAccessSignature sig=%s&se=%s&sr=%s";
     private String sasToken = null;
 
+    /** The SAS token built from the signature, the expiry time and the scope, once it was first requested. */
+    private String builtSasToken = null;
+
     /** Components of the SAS token. */
     private String signature = null;
     /** The time, as a UNIX timestamp, before which the token is valid. */
@@ -129,7 +132,14 @@ public final class IotHubSasToken
         else if(this.signature != null && this.expiryTime != 0L && this.scope!= null)
         {
             //Codes_SRS_IOTHUBSASTOKEN_25_010: [**If SAS Token was not provided by config it should be built and returned as string **]**
-            return buildSasToken();
+            // The token never changes, so it is only built once.
+            String token = this.builtSasToken;
+            if (token == null)
+            {
+                token = buildSasToken();
+                this.builtSasToken = token;
+            }
+            return token;
         }
         else
         {
@@ -24,7 +24,7 @@ public abstract class IotHubSasTokenAuthenticationProvider
 
     protected static final String ENCODING_FORMAT_NAME = StandardCharsets.UTF_8.displayName();
 
-    protected IotHubSasToken sasToken;
+    protected volatile IotHubSasToken sasToken;
     protected IotHubSSLContext iotHubSSLContext;
 
     protected String hostname;
@@ -73,4 +73,12 @@ public abstract class IotHubSasTokenAuthenticationProvider
     {
         return this.tokenValidSecs;
     }
+
+    /**
+     * Cancels the background renewal of the sas token, if any, when the client is closed.
+     */
+    public void cancelTokenRenewal()
+    {
+        //Codes_SRS_IOTHUBSASTOKENAUTHENTICATION_28_001: [This function shall do nothing if the sas token is not renewed in the background.]
+    }
 }
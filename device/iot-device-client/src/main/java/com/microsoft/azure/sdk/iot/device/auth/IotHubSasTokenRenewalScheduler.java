@@ -0,0 +1,45 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.auth;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubDaemonExecutors;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the background renewal of the SAS tokens of all the devices in the process.
+ *
+ * All the renewals share a single daemon thread, which is only started by the
+ * first renewal that is scheduled.
+ */
+public final class IotHubSasTokenRenewalScheduler
+{
+    private static final ScheduledExecutorService EXECUTOR = IotHubDaemonExecutors.newScheduledExecutor("SasTokenRenewal", 1);
+
+    private IotHubSasTokenRenewalScheduler()
+    {
+    }
+
+    /**
+     * Runs the renewal task once, after the delay.
+     *
+     * @param renewalTask the task to run.
+     * @param delayInMilliseconds the delay before running the task.
+     * @return the future of the scheduled run, to cancel it.
+     * @throws IllegalArgumentException if the renewal task is null or the delay is negative.
+     */
+    public static ScheduledFuture<?> schedule(Runnable renewalTask, long delayInMilliseconds) throws IllegalArgumentException
+    {
+        if ((renewalTask == null) || (delayInMilliseconds < 0))
+        {
+            // Codes_SRS_IOTHUBSASTOKENRENEWALSCHEDULER_28_001: [If the renewalTask is null or the delayInMilliseconds is negative, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("renewalTask cannot be null and delayInMilliseconds cannot be negative");
+        }
+
+        // Codes_SRS_IOTHUBSASTOKENRENEWALSCHEDULER_28_002: [The function shall run the renewalTask once after the delay, on the single renewal thread of the process, and return its future.]
+        return EXECUTOR.schedule(renewalTask, delayInMilliseconds, TimeUnit.MILLISECONDS);
+    }
+}
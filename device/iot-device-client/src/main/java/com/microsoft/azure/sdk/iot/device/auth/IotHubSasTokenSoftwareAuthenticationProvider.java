@@ -7,15 +7,28 @@ package com.microsoft.azure.sdk.iot.device.auth;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.util.concurrent.ScheduledFuture;
 
 public class IotHubSasTokenSoftwareAuthenticationProvider extends IotHubSasTokenAuthenticationProvider
 {
+    /**
+     * The fraction of the lifetime of a sas token after which the token is renewed in the background,
+     * so the send paths never have to renew it themselves.
+     */
+    private static final double DEFAULT_TOKEN_RENEWAL_FRACTION = 0.85;
+
     protected String deviceKey;
 
+    private double tokenRenewalFraction = DEFAULT_TOKEN_RENEWAL_FRACTION;
+    private final Object renewalLock = new Object();
+    /** The next background renewal, or null if it was canceled when the client was closed. */
+    private volatile ScheduledFuture<?> scheduledRenewal;
+
     protected String iotHubTrustedCert;
     protected String pathToIotHubTrustedCert;
 
@@ -37,7 +50,17 @@ public class IotHubSasTokenSoftwareAuthenticationProvider extends IotHubSasToken
         this.sslContextNeedsUpdate = true;
 
         //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_34_002: [This constructor shall save the provided hostname, device id, deviceKey, and sharedAccessToken.]
-        this.sasToken = new IotHubSasToken(hostname, deviceId, deviceKey, sharedAccessToken, getExpiryTimeInSeconds());
+        long expiryTime = getExpiryTimeInSeconds();
+        this.sasToken = new IotHubSasToken(hostname, deviceId, deviceKey, sharedAccessToken, expiryTime);
+
+        if (this.deviceKey != null)
+        {
+            synchronized (this.renewalLock)
+            {
+                //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_001: [If there is a device key present, the constructor shall schedule the background renewal of the sas token.]
+                this.scheduleRenewal(expiryTime);
+            }
+        }
     }
 
     /**
@@ -47,28 +70,94 @@ public class IotHubSasTokenSoftwareAuthenticationProvider extends IotHubSasToken
     @Override
     public boolean isRenewalNecessary()
     {
-        return (super.isRenewalNecessary() && this.deviceKey == null);
+        return (this.deviceKey == null && super.isRenewalNecessary());
     }
 
     /**
-     * Getter for SasToken. If the saved token has expired, this method shall renew it if possible
+     * Getter for SasToken. If the saved token has expired, this method shall renew it if possible.
+     *
+     * If there is a device key, the token is renewed in the background before it expires, so
+     * this method only reads the current token, without locking. If the background renewal
+     * was canceled when the client was closed, this method starts it again.
      *
      * @return The value of SasToken
      */
     @Override
     public String getRenewedSasToken() throws IOException
     {
-        if (this.sasToken.isExpired())
+        IotHubSasToken currentSasToken = this.sasToken;
+        if ((this.deviceKey != null) && ((this.scheduledRenewal == null) || currentSasToken.isExpired()))
         {
-            if (this.deviceKey != null)
+            synchronized (this.renewalLock)
             {
+                // The background renewal may have renewed the token while this thread waited for the lock.
                 //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_34_004: [If the saved sas token has expired and there is a device key present, the saved sas token shall be renewed.]
-                this.sasToken = new IotHubSasToken(this.hostname, this.deviceId, this.deviceKey, null, getExpiryTimeInSeconds());
+                //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_008: [If the background renewal was canceled and there is a device key present, this function shall renew the saved sas token, which schedules its background renewal again.]
+                if ((this.scheduledRenewal == null) || this.sasToken.isExpired())
+                {
+                    this.renewSasToken();
+                }
+                currentSasToken = this.sasToken;
             }
         }
 
         //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_34_005: [This function shall return the saved sas token.]
-        return this.sasToken.toString();
+        return currentSasToken.toString();
+    }
+
+    /**
+     * Setter for the fraction of the lifetime of a sas token after which the token is renewed
+     * in the background. It applies from the next renewal.
+     *
+     * @param tokenRenewalFraction the fraction, greater than 0 and not greater than 1.
+     * @throws IllegalArgumentException if the fraction is not greater than 0 or is greater than 1.
+     */
+    public void setTokenRenewalFraction(double tokenRenewalFraction) throws IllegalArgumentException
+    {
+        if (!(tokenRenewalFraction > 0) || (tokenRenewalFraction > 1))
+        {
+            //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_004: [If the tokenRenewalFraction is not greater than 0 or is greater than 1, this function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("tokenRenewalFraction must be greater than 0 and not greater than 1");
+        }
+
+        synchronized (this.renewalLock)
+        {
+            //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_005: [This function shall save the provided tokenRenewalFraction.]
+            this.tokenRenewalFraction = tokenRenewalFraction;
+        }
+    }
+
+    /**
+     * Cancels the background renewal of the sas token when the client is closed, so a closed
+     * client does not keep renewing it. The renewal starts again the next time the token is read.
+     */
+    @Override
+    public void cancelTokenRenewal()
+    {
+        synchronized (this.renewalLock)
+        {
+            if (this.scheduledRenewal != null)
+            {
+                //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_007: [This function shall cancel the background renewal of the sas token, if any.]
+                this.scheduledRenewal.cancel(false);
+                this.scheduledRenewal = null;
+            }
+        }
+    }
+
+    /**
+     * Getter for the fraction of the lifetime of a sas token after which the token is renewed
+     * in the background.
+     *
+     * @return the fraction.
+     */
+    public double getTokenRenewalFraction()
+    {
+        synchronized (this.renewalLock)
+        {
+            //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_006: [This function shall return the saved tokenRenewalFraction.]
+            return this.tokenRenewalFraction;
+        }
     }
 
     /**
@@ -132,6 +221,66 @@ public class IotHubSasTokenSoftwareAuthenticationProvider extends IotHubSasToken
         this.iotHubTrustedCert = certificate;
     }
 
+    /**
+     * Replaces the saved sas token by a new one, and schedules the background renewal of the new one.
+     * Must be called while holding the renewal lock.
+     */
+    private void renewSasToken()
+    {
+        long expiryTime = getExpiryTimeInSeconds();
+        this.sasToken = new IotHubSasToken(this.hostname, this.deviceId, this.deviceKey, null, expiryTime);
+        this.scheduleRenewal(expiryTime);
+    }
+
+    /**
+     * Schedules the background renewal of the sas token that expires at the given time.
+     * Must be called while holding the renewal lock.
+     */
+    private void scheduleRenewal(long expiryTimeInSeconds)
+    {
+        if (this.scheduledRenewal != null)
+        {
+            this.scheduledRenewal.cancel(false);
+        }
+
+        //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_002: [The background renewal shall run after the tokenRenewalFraction of the remaining lifetime of the sas token.]
+        long lifetimeInMilliseconds = Math.max(0, (expiryTimeInSeconds * MILLISECONDS_PER_SECOND) - System.currentTimeMillis());
+        long delayInMilliseconds = (long)(lifetimeInMilliseconds * this.tokenRenewalFraction);
+        this.scheduledRenewal = IotHubSasTokenRenewalScheduler.schedule(new RenewalTask(this), delayInMilliseconds);
+    }
+
+    /**
+     * Renews the sas token of a provider in the background. Only holds a weak reference to the
+     * provider, so a provider that is no longer used stops being renewed.
+     */
+    private static final class RenewalTask implements Runnable
+    {
+        private final WeakReference<IotHubSasTokenSoftwareAuthenticationProvider> provider;
+
+        private RenewalTask(IotHubSasTokenSoftwareAuthenticationProvider provider)
+        {
+            this.provider = new WeakReference<>(provider);
+        }
+
+        @Override
+        public void run()
+        {
+            IotHubSasTokenSoftwareAuthenticationProvider provider = this.provider.get();
+            if (provider != null)
+            {
+                synchronized (provider.renewalLock)
+                {
+                    // The renewal may have been canceled while this task waited for the lock.
+                    if (provider.scheduledRenewal != null)
+                    {
+                        //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_003: [The background renewal shall replace the saved sas token by a new one, and schedule the background renewal of the new one.]
+                        provider.renewSasToken();
+                    }
+                }
+            }
+        }
+    }
+
     /**
      *
      * @throws KeyStoreException  if no Provider supports a KeyStoreSpi implementation for the specified type or
@@ -12,6 +12,7 @@ import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /** Builds the authorization signature as a composition of functions. */
@@ -26,6 +27,16 @@ public final class SignatureHelper
     /** The charset used for the raw and hashed signature. */
     private static final Charset SIGNATURE_CHARSET = StandardCharsets.UTF_8;
 
+    private static final String HMAC_SHA256 = "HmacSHA256";
+
+    /**
+     * The HMAC-SHA256 of each thread, and a copy of the device key it was initialized with,
+     * so signing again with the same key neither looks up the algorithm nor initializes it.
+     * The key is copied, so a caller that reuses its array cannot make it stale.
+     */
+    private static final ThreadLocal<Mac> THREAD_HMAC_SHA256 = new ThreadLocal<>();
+    private static final ThreadLocal<byte[]> THREAD_HMAC_SHA256_KEY = new ThreadLocal<>();
+
     /**
      * Builds the raw signature.
      *
@@ -66,17 +77,30 @@ public final class SignatureHelper
     public static byte[] encryptSignatureHmacSha256(byte[] sig,
             byte[] deviceKey)
     {
-        String hmacSha256 = "HmacSHA256";
-
-        // Codes_SRS_SIGNATUREHELPER_11_005: [The function shall use the device key as the secret for the algorithm.]
-        SecretKeySpec secretKey = new SecretKeySpec(deviceKey, hmacSha256);
-
         byte[] encryptedSig = null;
         try
         {
             // Codes_SRS_SIGNATUREHELPER_11_004: [The function shall encrypt the signature using the HMAC-SHA256 algorithm.]
-            Mac hMacSha256 = Mac.getInstance(hmacSha256);
-            hMacSha256.init(secretKey);
+            // Codes_SRS_SIGNATUREHELPER_28_001: [The function shall reuse the HMAC-SHA256 of the current thread, and only initialize it again if the device key changed.]
+            Mac hMacSha256 = THREAD_HMAC_SHA256.get();
+            if (hMacSha256 == null)
+            {
+                hMacSha256 = Mac.getInstance(HMAC_SHA256);
+                THREAD_HMAC_SHA256.set(hMacSha256);
+                THREAD_HMAC_SHA256_KEY.remove();
+            }
+
+            // Codes_SRS_SIGNATUREHELPER_28_002: [The function shall recognize the device key of the current thread by comparing its bytes with a copy of the key kept by the thread, without hashing it.]
+            byte[] threadDeviceKey = THREAD_HMAC_SHA256_KEY.get();
+            if ((threadDeviceKey == null) || !MessageDigest.isEqual(deviceKey, threadDeviceKey))
+            {
+                // Codes_SRS_SIGNATUREHELPER_11_005: [The function shall use the device key as the secret for the algorithm.]
+                THREAD_HMAC_SHA256_KEY.remove();
+                hMacSha256.init(new SecretKeySpec(deviceKey, HMAC_SHA256));
+                THREAD_HMAC_SHA256_KEY.set(deviceKey.clone());
+            }
+
+            // doFinal resets the HMAC-SHA256, so it is ready for the next signature with the same key.
             encryptedSig = hMacSha256.doFinal(sig);
         }
         catch (NoSuchAlgorithmException e)
@@ -0,0 +1,122 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The default retry policy. The delays grow exponentially with decorrelated
+ * jitter: each delay is a random value between the base delay and three times
+ * the previous delay, capped by the maximum delay. The devices that lose their
+ * connection at the same time therefore spread their reconnects instead of
+ * retrying in lockstep.
+ */
+public final class ExponentialBackoffWithJitter implements RetryPolicy
+{
+    private static final long DEFAULT_BASE_DELAY_IN_MILLISECONDS = 1000;
+    private static final long DEFAULT_MAX_DELAY_IN_MILLISECONDS = 60 * 1000;
+    private static final int JITTER_FACTOR = 3;
+
+    private final long baseDelayInMilliseconds;
+    private final long maxDelayInMilliseconds;
+    private final long maxElapsedTimeInMilliseconds;
+
+    /**
+     * Constructor for a policy that retries forever, with delays between 1 and 60 seconds.
+     */
+    public ExponentialBackoffWithJitter()
+    {
+        // Codes_SRS_EXPONENTIALBACKOFFWITHJITTER_28_001: [The constructor shall create a policy with a base delay of 1 second, a maximum delay of 60 seconds and no maximum elapsed time.]
+        this(DEFAULT_BASE_DELAY_IN_MILLISECONDS, DEFAULT_MAX_DELAY_IN_MILLISECONDS, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param baseDelayInMilliseconds the shortest delay.
+     * @param maxDelayInMilliseconds the longest delay.
+     * @param maxElapsedTimeInMilliseconds the time after the connection is lost to stop reconnecting, or 0 to retry forever.
+     * @throws IllegalArgumentException if the base delay is smaller than 1, the maximum delay is smaller than the base
+     * delay, or the maximum elapsed time is negative.
+     */
+    public ExponentialBackoffWithJitter(long baseDelayInMilliseconds, long maxDelayInMilliseconds, long maxElapsedTimeInMilliseconds)
+            throws IllegalArgumentException
+    {
+        if ((baseDelayInMilliseconds < 1) || (maxDelayInMilliseconds < baseDelayInMilliseconds) || (maxElapsedTimeInMilliseconds < 0))
+        {
+            // Codes_SRS_EXPONENTIALBACKOFFWITHJITTER_28_002: [If the baseDelayInMilliseconds is smaller than 1, the maxDelayInMilliseconds is smaller than the baseDelayInMilliseconds, or the maxElapsedTimeInMilliseconds is negative, the constructor shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("baseDelayInMilliseconds must be positive, maxDelayInMilliseconds cannot be smaller than it and maxElapsedTimeInMilliseconds cannot be negative");
+        }
+
+        // Codes_SRS_EXPONENTIALBACKOFFWITHJITTER_28_003: [The constructor shall save the provided delays and maximum elapsed time.]
+        this.baseDelayInMilliseconds = baseDelayInMilliseconds;
+        this.maxDelayInMilliseconds = maxDelayInMilliseconds;
+        this.maxElapsedTimeInMilliseconds = maxElapsedTimeInMilliseconds;
+    }
+
+    /**
+     * Gets the delay before the next attempt to reconnect.
+     *
+     * @param currentRetryCount the number of the attempt to make, starting at 1 after the connection is lost.
+     * @param previousDelayInMilliseconds the delay before the previous attempt, or 0 before the first attempt.
+     * @param elapsedTimeInMilliseconds the time since the connection was lost.
+     * @return the delay before the attempt, in milliseconds, or {@link #NO_MORE_RETRIES} to stop reconnecting.
+     */
+    @Override
+    public long getRetryDelayInMilliseconds(int currentRetryCount, long previousDelayInMilliseconds, long elapsedTimeInMilliseconds)
+    {
+        long remainingTimeInMilliseconds = Long.MAX_VALUE;
+        if (this.maxElapsedTimeInMilliseconds > 0)
+        {
+            remainingTimeInMilliseconds = this.maxElapsedTimeInMilliseconds - elapsedTimeInMilliseconds;
+            if (remainingTimeInMilliseconds <= 0)
+            {
+                // Codes_SRS_EXPONENTIALBACKOFFWITHJITTER_28_004: [If there is a maximum elapsed time and the elapsedTimeInMilliseconds reached it, the function shall return NO_MORE_RETRIES.]
+                return NO_MORE_RETRIES;
+            }
+        }
+
+        // Codes_SRS_EXPONENTIALBACKOFFWITHJITTER_28_005: [The function shall return a random delay between the base delay and three times the previous delay, or three times the base delay before the first attempt.]
+        long lowerBound = this.baseDelayInMilliseconds;
+        long upperBound = Math.max(lowerBound, previousDelayInMilliseconds);
+        upperBound = (upperBound > this.maxDelayInMilliseconds) ? this.maxDelayInMilliseconds * JITTER_FACTOR : upperBound * JITTER_FACTOR;
+        long delay = lowerBound + ThreadLocalRandom.current().nextLong(upperBound - lowerBound + 1);
+
+        // Codes_SRS_EXPONENTIALBACKOFFWITHJITTER_28_006: [The function shall not return a delay longer than the maximum delay, or than the time left before the maximum elapsed time.]
+        return Math.min(delay, Math.min(this.maxDelayInMilliseconds, remainingTimeInMilliseconds));
+    }
+
+    /**
+     * Getter for the shortest delay.
+     *
+     * @return the base delay, in milliseconds.
+     */
+    public long getBaseDelayInMilliseconds()
+    {
+        // Codes_SRS_EXPONENTIALBACKOFFWITHJITTER_28_007: [The function shall return the saved base delay.]
+        return this.baseDelayInMilliseconds;
+    }
+
+    /**
+     * Getter for the longest delay.
+     *
+     * @return the maximum delay, in milliseconds.
+     */
+    public long getMaxDelayInMilliseconds()
+    {
+        // Codes_SRS_EXPONENTIALBACKOFFWITHJITTER_28_008: [The function shall return the saved maximum delay.]
+        return this.maxDelayInMilliseconds;
+    }
+
+    /**
+     * Getter for the time after the connection is lost to stop reconnecting.
+     *
+     * @return the maximum elapsed time, in milliseconds, or 0 if the policy retries forever.
+     */
+    public long getMaxElapsedTimeInMilliseconds()
+    {
+        // Codes_SRS_EXPONENTIALBACKOFFWITHJITTER_28_009: [The function shall return the saved maximum elapsed time.]
+        return this.maxElapsedTimeInMilliseconds;
+    }
+}
@@ -0,0 +1,266 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.CustomLogger;
+import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invokes the user callbacks of a transport.
+ *
+ * Without a callback executor in the {@link DeviceClientConfig}, a callback is
+ * invoked on the thread that dispatches it, as the transports always did. With
+ * a callback executor, the callbacks are queued and invoked by the executor, so
+ * a slow callback does not hold the thread that sends the messages. The
+ * callbacks of a dispatcher are invoked one at a time, in the order they were
+ * dispatched, so they keep their order even on a pool of many threads.
+ */
+public final class IotHubCallbackDispatcher
+{
+    private final DeviceClientConfig config;
+    private final CustomLogger logger;
+
+    private final Object dispatchLock = new Object();
+    private final Queue<Entry> entries = new ArrayDeque<>();
+    private boolean draining;
+    private int pendingCount;
+
+    private int peakPendingCount;
+    private long completedCount;
+    private long failedCount;
+    private long totalQueuedTimeInNanoseconds;
+    private long maxQueuedTimeInNanoseconds;
+    private long totalExecutionTimeInNanoseconds;
+    private long maxExecutionTimeInNanoseconds;
+
+    private static final class Entry
+    {
+        private final Runnable callback;
+        private final long dispatchedTimeInNanoseconds;
+
+        private Entry(Runnable callback)
+        {
+            this.callback = callback;
+            this.dispatchedTimeInNanoseconds = System.nanoTime();
+        }
+    }
+
+    private final Runnable drainTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            drain();
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param config the configuration with the callback executor.
+     * @throws IllegalArgumentException if the config is null.
+     */
+    public IotHubCallbackDispatcher(DeviceClientConfig config) throws IllegalArgumentException
+    {
+        if (config == null)
+        {
+            // Codes_SRS_IOTHUBCALLBACKDISPATCHER_28_001: [If the config is null, the constructor shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("config cannot be null");
+        }
+
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHER_28_002: [The constructor shall create a dispatcher with no pending callback.]
+        this.config = config;
+        this.logger = new CustomLogger(this.getClass());
+    }
+
+    /**
+     * Invokes the callback, on the callback executor of the config if there is
+     * one, or on the calling thread otherwise.
+     *
+     * @param callback the callback to invoke.
+     * @throws IllegalArgumentException if the callback is null.
+     */
+    public void dispatch(Runnable callback) throws IllegalArgumentException
+    {
+        if (callback == null)
+        {
+            // Codes_SRS_IOTHUBCALLBACKDISPATCHER_28_003: [If the callback is null, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("callback cannot be null");
+        }
+
+        Entry entry = new Entry(callback);
+        Executor executor = this.config.getCallbackExecutor();
+        boolean queued;
+        synchronized (this.dispatchLock)
+        {
+            this.pendingCount++;
+            this.peakPendingCount = Math.max(this.peakPendingCount, this.pendingCount);
+
+            if ((executor == null) && !this.draining && this.entries.isEmpty())
+            {
+                queued = false;
+            }
+            else
+            {
+                // Codes_SRS_IOTHUBCALLBACKDISPATCHER_28_005: [If the config has a callback executor, or callbacks are still queued, the function shall queue the callback behind the callbacks dispatched before it.]
+                this.entries.add(entry);
+                if (this.draining)
+                {
+                    return;
+                }
+
+                this.draining = true;
+                queued = true;
+            }
+        }
+
+        if (!queued)
+        {
+            // Codes_SRS_IOTHUBCALLBACKDISPATCHER_28_004: [If the config has no callback executor, the function shall invoke the callback on the calling thread, and let the exceptions it throws go to the caller.]
+            this.invoke(entry, true);
+            return;
+        }
+
+        if (executor == null)
+        {
+            // Codes_SRS_IOTHUBCALLBACKDISPATCHER_28_013: [If the config has no callback executor and callbacks are still queued, the function shall invoke the queued callbacks on the calling thread.]
+            this.drain();
+            return;
+        }
+
+        try
+        {
+            // Codes_SRS_IOTHUBCALLBACKDISPATCHER_28_006: [The function shall submit a task to the callback executor that invokes the queued callbacks one at a time, in order, until the queue is empty.]
+            executor.execute(this.drainTask);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Codes_SRS_IOTHUBCALLBACKDISPATCHER_28_007: [If the callback executor rejects the task, the function shall invoke the queued callbacks on the calling thread.]
+            this.logger.LogWarn("The callback executor rejected the callbacks, invoking them on the calling thread, method name is %s ", this.logger.getMethodName());
+            this.drain();
+        }
+    }
+
+    /**
+     * Returns {@code true} if no callback is queued or being invoked, and
+     * {@code false} otherwise.
+     *
+     * @return {@code true} if the dispatcher has no pending callback.
+     */
+    public boolean isEmpty()
+    {
+        synchronized (this.dispatchLock)
+        {
+            // Codes_SRS_IOTHUBCALLBACKDISPATCHER_28_010: [The function shall return true if no callback is queued or being invoked, and false otherwise.]
+            return this.pendingCount == 0;
+        }
+    }
+
+    /**
+     * Getter for the number of callbacks waiting to be invoked, and for the
+     * time they waited and ran.
+     *
+     * @return a snapshot of the metrics of the dispatcher.
+     */
+    public IotHubCallbackDispatcherMetrics getMetrics()
+    {
+        synchronized (this.dispatchLock)
+        {
+            // Codes_SRS_IOTHUBCALLBACKDISPATCHER_28_011: [The function shall return the pending count, peak pending count, completed count, failed count, and average and maximum queued and execution time of the callbacks.]
+            long averageQueuedTimeInNanoseconds = (this.completedCount == 0) ? 0 : this.totalQueuedTimeInNanoseconds / this.completedCount;
+            long averageExecutionTimeInNanoseconds = (this.completedCount == 0) ? 0 : this.totalExecutionTimeInNanoseconds / this.completedCount;
+            return new IotHubCallbackDispatcherMetrics(
+                    this.pendingCount,
+                    this.peakPendingCount,
+                    this.completedCount,
+                    this.failedCount,
+                    TimeUnit.NANOSECONDS.toMillis(averageQueuedTimeInNanoseconds),
+                    TimeUnit.NANOSECONDS.toMillis(this.maxQueuedTimeInNanoseconds),
+                    TimeUnit.NANOSECONDS.toMillis(averageExecutionTimeInNanoseconds),
+                    TimeUnit.NANOSECONDS.toMillis(this.maxExecutionTimeInNanoseconds));
+        }
+    }
+
+    private void drain()
+    {
+        boolean drained = false;
+        try
+        {
+            while (true)
+            {
+                Entry entry;
+                synchronized (this.dispatchLock)
+                {
+                    entry = this.entries.poll();
+                    if (entry == null)
+                    {
+                        this.draining = false;
+                        drained = true;
+                        return;
+                    }
+                }
+
+                this.invoke(entry, false);
+            }
+        }
+        finally
+        {
+            if (!drained)
+            {
+                // Codes_SRS_IOTHUBCALLBACKDISPATCHER_28_012: [If a callback throws an Error, the dispatcher shall stop invoking callbacks and let the Error go, and the callbacks still queued shall be invoked on the next dispatch.]
+                synchronized (this.dispatchLock)
+                {
+                    this.draining = false;
+                }
+            }
+        }
+    }
+
+    private void invoke(Entry entry, boolean propagateExceptions)
+    {
+        long startTimeInNanoseconds = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            entry.callback.run();
+            failed = false;
+        }
+        catch (RuntimeException e)
+        {
+            if (propagateExceptions)
+            {
+                throw e;
+            }
+
+            // Codes_SRS_IOTHUBCALLBACKDISPATCHER_28_008: [If a callback invoked by the callback executor throws, the dispatcher shall log the exception and invoke the next callback.]
+            this.logger.LogError(e);
+        }
+        finally
+        {
+            // Codes_SRS_IOTHUBCALLBACKDISPATCHER_28_009: [Once a callback returns or throws, the dispatcher shall count it as completed, or failed if it threw, and record the time it was queued and the time it ran.]
+            long endTimeInNanoseconds = System.nanoTime();
+            long queuedTimeInNanoseconds = startTimeInNanoseconds - entry.dispatchedTimeInNanoseconds;
+            long executionTimeInNanoseconds = endTimeInNanoseconds - startTimeInNanoseconds;
+            synchronized (this.dispatchLock)
+            {
+                this.pendingCount--;
+                this.completedCount++;
+                if (failed)
+                {
+                    this.failedCount++;
+                }
+                this.totalQueuedTimeInNanoseconds += queuedTimeInNanoseconds;
+                this.maxQueuedTimeInNanoseconds = Math.max(this.maxQueuedTimeInNanoseconds, queuedTimeInNanoseconds);
+                this.totalExecutionTimeInNanoseconds += executionTimeInNanoseconds;
+                this.maxExecutionTimeInNanoseconds = Math.max(this.maxExecutionTimeInNanoseconds, executionTimeInNanoseconds);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+/**
+ * A snapshot of the number of user callbacks waiting to be invoked, and of the
+ * time the callbacks waited and ran.
+ */
+public final class IotHubCallbackDispatcherMetrics
+{
+    private final int pendingCount;
+    private final int peakPendingCount;
+    private final long completedCount;
+    private final long failedCount;
+    private final long averageQueuedTimeInMilliseconds;
+    private final long maxQueuedTimeInMilliseconds;
+    private final long averageExecutionTimeInMilliseconds;
+    private final long maxExecutionTimeInMilliseconds;
+
+    IotHubCallbackDispatcherMetrics(int pendingCount, int peakPendingCount, long completedCount, long failedCount,
+                                    long averageQueuedTimeInMilliseconds, long maxQueuedTimeInMilliseconds,
+                                    long averageExecutionTimeInMilliseconds, long maxExecutionTimeInMilliseconds)
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_001: [The constructor shall save the provided values.]
+        this.pendingCount = pendingCount;
+        this.peakPendingCount = peakPendingCount;
+        this.completedCount = completedCount;
+        this.failedCount = failedCount;
+        this.averageQueuedTimeInMilliseconds = averageQueuedTimeInMilliseconds;
+        this.maxQueuedTimeInMilliseconds = maxQueuedTimeInMilliseconds;
+        this.averageExecutionTimeInMilliseconds = averageExecutionTimeInMilliseconds;
+        this.maxExecutionTimeInMilliseconds = maxExecutionTimeInMilliseconds;
+    }
+
+    /**
+     * Getter for the number of callbacks waiting to be invoked or running.
+     *
+     * @return the depth of the callback queue, in callbacks.
+     */
+    public int getPendingCount()
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_002: [The function shall return the saved pending count.]
+        return this.pendingCount;
+    }
+
+    /**
+     * Getter for the largest number of callbacks that were pending at the same time.
+     *
+     * @return the peak depth of the callback queue, in callbacks.
+     */
+    public int getPeakPendingCount()
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_003: [The function shall return the saved peak pending count.]
+        return this.peakPendingCount;
+    }
+
+    /**
+     * Getter for the number of callbacks that returned or threw.
+     *
+     * @return the number of completed callbacks, including the failed ones.
+     */
+    public long getCompletedCount()
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_004: [The function shall return the saved completed count.]
+        return this.completedCount;
+    }
+
+    /**
+     * Getter for the number of callbacks that threw.
+     *
+     * @return the number of failed callbacks.
+     */
+    public long getFailedCount()
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_005: [The function shall return the saved failed count.]
+        return this.failedCount;
+    }
+
+    /**
+     * Getter for the average time the completed callbacks waited to be invoked.
+     *
+     * @return the average queued time, in milliseconds, or 0 if no callback completed.
+     */
+    public long getAverageQueuedTimeInMilliseconds()
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_006: [The function shall return the saved average queued time.]
+        return this.averageQueuedTimeInMilliseconds;
+    }
+
+    /**
+     * Getter for the longest time a completed callback waited to be invoked.
+     *
+     * @return the maximum queued time, in milliseconds, or 0 if no callback completed.
+     */
+    public long getMaxQueuedTimeInMilliseconds()
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_007: [The function shall return the saved maximum queued time.]
+        return this.maxQueuedTimeInMilliseconds;
+    }
+
+    /**
+     * Getter for the average time the completed callbacks ran.
+     *
+     * @return the average execution time, in milliseconds, or 0 if no callback completed.
+     */
+    public long getAverageExecutionTimeInMilliseconds()
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_008: [The function shall return the saved average execution time.]
+        return this.averageExecutionTimeInMilliseconds;
+    }
+
+    /**
+     * Getter for the longest time a completed callback ran.
+     *
+     * @return the maximum execution time, in milliseconds, or 0 if no callback completed.
+     */
+    public long getMaxExecutionTimeInMilliseconds()
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_009: [The function shall return the saved maximum execution time.]
+        return this.maxExecutionTimeInMilliseconds;
+    }
+}
@@ -0,0 +1,61 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the scheduled executors that the SDK shares between all the clients
+ * of the process, for the token renewals, the reconnects and the reported
+ * properties.
+ *
+ * Their threads are daemon threads, so they never keep the process alive, and
+ * they are only started by the first task that is scheduled.
+ */
+public final class IotHubDaemonExecutors
+{
+    private static final String THREAD_NAME_PREFIX = "azure-iot-sdk-";
+
+    private IotHubDaemonExecutors()
+    {
+    }
+
+    /**
+     * Creates a scheduled executor with daemon threads. Canceled tasks are
+     * removed from its queue at once.
+     *
+     * @param threadName the name of the threads, after the "azure-iot-sdk-" prefix.
+     * @param threadCount the number of threads.
+     * @return the new executor.
+     * @throws IllegalArgumentException if the thread name is null or empty, or the number of threads is smaller than 1.
+     */
+    public static ScheduledExecutorService newScheduledExecutor(String threadName, int threadCount) throws IllegalArgumentException
+    {
+        if ((threadName == null) || threadName.isEmpty() || (threadCount < 1))
+        {
+            // Codes_SRS_IOTHUBDAEMONEXECUTORS_28_001: [If the threadName is null or empty, or the threadCount is smaller than 1, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("threadName cannot be null or empty and threadCount must be positive");
+        }
+
+        final String fullThreadName = THREAD_NAME_PREFIX + threadName;
+
+        // Codes_SRS_IOTHUBDAEMONEXECUTORS_28_002: [The function shall return a scheduled executor with threadCount daemon threads named "azure-iot-sdk-" followed by the threadName.]
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threadCount, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, fullThreadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // Codes_SRS_IOTHUBDAEMONEXECUTORS_28_003: [The executor shall remove the canceled tasks from its queue.]
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+}
@@ -0,0 +1,181 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.CustomLogger;
+import com.microsoft.azure.sdk.iot.device.ObjectLock;
+
+/**
+ * Sends queued messages and invokes callbacks on completed requests as soon as
+ * it is signaled, instead of on a fixed period. Meant to be executed once on a
+ * dedicated thread; run() only returns after stop() is called.
+ *
+ * While the transport is empty the task parks until the next signal. While the
+ * transport still holds work that completes asynchronously (messages in
+ * progress, callbacks or messages buffered for retry) the task also wakes up
+ * every pendingPeriodInMilliseconds to drive it.
+ */
+public final class IotHubEventDrivenSendTask implements Runnable
+{
+    private final IotHubTransport transport;
+    private final IotHubSendTask sendTask;
+    private final ObjectLock sendSignalLock = new ObjectLock();
+
+    private long pendingPeriodInMilliseconds;
+    private boolean signaled;
+    private boolean stopped;
+
+    /**
+     * Private logger for class
+     */
+    private final CustomLogger logger = new CustomLogger(this.getClass());
+
+    /**
+     * Constructor.
+     *
+     * @param transport the transport to send the messages.
+     * @param pendingPeriodInMilliseconds the period to drive the transport while it has pending work.
+     * @throws IllegalArgumentException if the transport is null or the period is zero or negative.
+     */
+    public IotHubEventDrivenSendTask(IotHubTransport transport, long pendingPeriodInMilliseconds)
+    {
+        if (transport == null)
+        {
+            logger.LogError("IotHubEventDrivenSendTask constructor called with null value for parameter transport");
+            // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_28_002: [If the provided transport is null, the constructor shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("Parameter 'transport' must not be null");
+        }
+
+        if (pendingPeriodInMilliseconds <= 0L)
+        {
+            // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_28_003: [If the provided pendingPeriodInMilliseconds is zero or negative, the constructor shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("pending period can not be zero or negative");
+        }
+
+        // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_28_001: [The constructor shall save the transport and the pending period, and create an IotHubSendTask for the transport.]
+        this.transport = transport;
+        this.sendTask = new IotHubSendTask(transport);
+        this.pendingPeriodInMilliseconds = pendingPeriodInMilliseconds;
+        this.signaled = false;
+        this.stopped = false;
+    }
+
+    /**
+     * Wakes up the task to send the messages on the transport queue.
+     */
+    public void signal()
+    {
+        synchronized (this.sendSignalLock)
+        {
+            // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_28_004: [The signal shall mark the task as signaled and wake it up if it is parked.]
+            if (!this.signaled)
+            {
+                this.signaled = true;
+                this.sendSignalLock.notifyLock();
+            }
+        }
+    }
+
+    /**
+     * Stops the task. The current send cycle, if any, is finished before run() returns.
+     */
+    public void stop()
+    {
+        synchronized (this.sendSignalLock)
+        {
+            // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_28_005: [The stop shall mark the task as stopped and wake it up if it is parked.]
+            this.stopped = true;
+            this.sendSignalLock.notifyLock();
+        }
+    }
+
+    /**
+     * Setter for the period used to drive the transport while it has pending work.
+     *
+     * @param pendingPeriodInMilliseconds the new period in milliseconds.
+     * @throws IllegalArgumentException if the provided period is zero or negative.
+     */
+    public void setPendingPeriodInMilliseconds(long pendingPeriodInMilliseconds)
+    {
+        // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_28_007: [If the provided period is zero or negative, the setPendingPeriodInMilliseconds shall throw IllegalArgumentException.]
+        if (pendingPeriodInMilliseconds <= 0L)
+        {
+            throw new IllegalArgumentException("pending period can not be zero or negative");
+        }
+
+        synchronized (this.sendSignalLock)
+        {
+            // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_28_006: [The setPendingPeriodInMilliseconds shall store the new period and wake up the task to apply it.]
+            this.pendingPeriodInMilliseconds = pendingPeriodInMilliseconds;
+            this.sendSignalLock.notifyLock();
+        }
+    }
+
+    /**
+     * Getter for the period used to drive the transport while it has pending work.
+     *
+     * @return the period in milliseconds.
+     */
+    public long getPendingPeriodInMilliseconds()
+    {
+        // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_28_008: [The getPendingPeriodInMilliseconds shall return the stored period.]
+        return this.pendingPeriodInMilliseconds;
+    }
+
+    public void run()
+    {
+        logger.LogInfo("Event driven send task started, method name is %s ", logger.getMethodName());
+
+        while (!this.isStopped())
+        {
+            // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_28_009: [The run shall send all messages and invoke all callbacks on the transport using the IotHubSendTask.]
+            this.sendTask.run();
+
+            try
+            {
+                this.awaitSignal();
+            }
+            catch (InterruptedException e)
+            {
+                // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_28_013: [If the thread is interrupted, the run shall stop.]
+                logger.LogDebug("Event driven send task interrupted", e);
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        logger.LogInfo("Event driven send task stopped, method name is %s ", logger.getMethodName());
+    }
+
+    private boolean isStopped()
+    {
+        synchronized (this.sendSignalLock)
+        {
+            // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_28_012: [The run shall return when the task is stopped.]
+            return this.stopped;
+        }
+    }
+
+    private void awaitSignal() throws InterruptedException
+    {
+        synchronized (this.sendSignalLock)
+        {
+            if (!this.signaled && !this.stopped)
+            {
+                if (this.transport.isEmpty())
+                {
+                    // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_28_010: [If the transport is empty, the run shall park until the task is signaled or stopped.]
+                    this.sendSignalLock.waitLock(0);
+                }
+                else
+                {
+                    // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_28_011: [If the transport is not empty, the run shall park for at most pendingPeriodInMilliseconds.]
+                    this.sendSignalLock.waitLock(this.pendingPeriodInMilliseconds);
+                }
+            }
+
+            this.signaled = false;
+        }
+    }
+}
@@ -0,0 +1,850 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Keeps the telemetry messages waiting to be sent on disk, so they are sent
+ * after the process restarts instead of being lost with the transport queue.
+ * </p>
+ * <p>
+ * The store is an append-only log split in memory mapped segment files. A
+ * message is written to the log when it is added to the transport, and an
+ * acknowledge record is appended when the IoT Hub settles it. The writers
+ * share the flushes of the log to disk, so one flush covers all the messages
+ * written while the previous one was running. The flushes run outside the
+ * lock of the store, so they never block the settlements. A segment is
+ * deleted once all the messages in it and in the segments before it are
+ * acknowledged. Its mapping is released when the buffer is garbage collected.
+ * </p>
+ * <p>
+ * The messages of the log that are not acknowledged and not in the transport
+ * queue, because the process restarted, the transport was closed or the IoT
+ * Hub failed with a transient error, are replayed in the order they were
+ * added. The messages that the IoT Hub or the transport queue rejected for good
+ * are logged and acknowledged, so they are never replayed. The expired messages
+ * are dropped instead of being replayed. A replayed message has no user
+ * callback, and can be sent twice if the process stops before its
+ * acknowledge record is written.
+ * </p>
+ */
+public final class IotHubOutboundMessageStore
+{
+    /** The size of a new segment file, unless a message needs a larger one. */
+    public static final int DEFAULT_SEGMENT_SIZE_IN_BYTES = 4 * 1024 * 1024;
+
+    /** The maximum number of messages put back in the transport queue at a time. */
+    public static final int REPLAY_BATCH_SIZE = 100;
+
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".log";
+    private static final String LOCK_FILE_NAME = "store.lock";
+
+    private static final byte RECORD_TYPE_MESSAGE = 1;
+    private static final byte RECORD_TYPE_ACKNOWLEDGE = 2;
+
+    /** The length, checksum, type and sequence number in front of each record. */
+    private static final int RECORD_HEADER_SIZE = 4 + 4 + 1 + 8;
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+
+    private final File directory;
+    private final int segmentSizeInBytes;
+    private final IotHubConnectionString iotHubConnectionString;
+    private final CustomLogger logger;
+
+    private final RandomAccessFile lockFile;
+    private final FileLock lock;
+
+    private final Object flushLock = new Object();
+
+    /** The segments of the log, oldest first. The last one is written. */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    /** The segments that were filled since the last flush, and must be flushed by the next one. */
+    private final List<Segment> unflushedSegments = new ArrayList<>();
+    /** The messages written and not acknowledged, by sequence number. */
+    private final Map<Long, Record> pendingRecords = new HashMap<>();
+    /** The pending messages that are not in the transport queue, so they can be replayed. */
+    private final TreeSet<Long> replayableSequenceNumbers = new TreeSet<>();
+    /** The files of the removed segments that are not deleted yet, oldest first. Guarded by the flush lock. */
+    private final Deque<File> undeletedFiles = new ArrayDeque<>();
+
+    private long nextSequenceNumber = 1;
+    private long nextSegmentIndex = 1;
+    private long writtenSequenceNumber;
+    private long durableSequenceNumber;
+    private boolean isClosed;
+
+    private static final class Segment
+    {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int pendingCount;
+
+        private Segment(File file, MappedByteBuffer buffer)
+        {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Record
+    {
+        private final Segment segment;
+        private final int position;
+
+        private Record(Segment segment, int position)
+        {
+            this.segment = segment;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Settles the stored message with the status of its callback, then invokes
+     * the callback of the user. A message is only replayed after a transient
+     * error.
+     */
+    private static final class StoredMessageCallback implements IotHubEventCallback
+    {
+        private final IotHubOutboundMessageStore store;
+        private final long sequenceNumber;
+        private final IotHubEventCallback callback;
+
+        private StoredMessageCallback(IotHubOutboundMessageStore store, long sequenceNumber, IotHubEventCallback callback)
+        {
+            this.store = store;
+            this.sequenceNumber = sequenceNumber;
+            this.callback = callback;
+        }
+
+        @Override
+        public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+        {
+            switch (responseStatus)
+            {
+                case OK:
+                case OK_EMPTY:
+                case MESSAGE_EXPIRED:
+                    // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_013: [If the status is OK, OK_EMPTY or MESSAGE_EXPIRED, the callback of the packet shall acknowledge the message in the log.]
+                    this.store.acknowledge(this.sequenceNumber);
+                    break;
+                case THROTTLED:
+                case SERVER_BUSY:
+                case INTERNAL_SERVER_ERROR:
+                case ERROR:
+                    // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_012: [If the status is THROTTLED, SERVER_BUSY, INTERNAL_SERVER_ERROR or ERROR, the callback of the packet shall make the message replayable.]
+                    this.store.release(this.sequenceNumber);
+                    break;
+                case MESSAGE_CANCELLED_ONCLOSE:
+                    // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_023: [If the status is MESSAGE_CANCELLED_ONCLOSE, the callback of the packet shall keep the message in the log without making it replayable, so it is only replayed when the store is opened again.]
+                    break;
+                default:
+                    // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_024: [Otherwise, the callback of the packet shall log the status and acknowledge the message in the log, so it is never replayed.]
+                    this.store.reject(this.sequenceNumber, responseStatus);
+                    break;
+            }
+
+            if (this.callback != null)
+            {
+                // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_014: [The callback of the packet shall invoke the callback of the user, if any, with the status and the context.]
+                this.callback.execute(responseStatus, callbackContext);
+            }
+        }
+    }
+
+    /**
+     * Opens the store configured for the device, if any.
+     *
+     * @param config the config of the device.
+     * @return the store, or {@code null} if no store directory is configured or the store cannot be opened.
+     */
+    public static IotHubOutboundMessageStore open(DeviceClientConfig config)
+    {
+        String directory = (config == null) ? null : config.getOutboundMessageStoreDirectory();
+        if (directory == null)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_001: [If the config is null or has no outbound message store directory, the function shall return null.]
+            return null;
+        }
+
+        try
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_002: [The function shall open the store in the directory of the config, with the default segment size, and return it.]
+            return new IotHubOutboundMessageStore(new File(directory), DEFAULT_SEGMENT_SIZE_IN_BYTES, config.getIotHubConnectionString());
+        }
+        catch (IOException e)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_003: [If the store cannot be opened, the function shall log the error and return null, so the messages are only kept in memory.]
+            new CustomLogger(IotHubOutboundMessageStore.class).LogError("Cannot open the outbound message store in %s, the messages will only be kept in memory: %s", directory, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Constructor. Opens the log in the directory, and recovers the messages
+     * it holds.
+     *
+     * @param directory the directory of the log, which is created if needed.
+     * @param segmentSizeInBytes the size of a new segment file.
+     * @param iotHubConnectionString the connection string set on the replayed messages, or {@code null}.
+     * @throws IllegalArgumentException if the directory is null or the segment size cannot hold a record.
+     * @throws IOException if the directory cannot be created, is used by another store, or a segment cannot be read.
+     */
+    public IotHubOutboundMessageStore(File directory, int segmentSizeInBytes, IotHubConnectionString iotHubConnectionString) throws IllegalArgumentException, IOException
+    {
+        if ((directory == null) || (segmentSizeInBytes <= RECORD_HEADER_SIZE))
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_004: [If the directory is null or the segment size is not larger than a record header, the constructor shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("directory cannot be null and segmentSizeInBytes must be larger than " + RECORD_HEADER_SIZE);
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_005: [If the directory does not exist and cannot be created, the constructor shall throw IOException.]
+            throw new IOException("Cannot create the outbound message store directory " + directory);
+        }
+
+        this.directory = directory;
+        this.segmentSizeInBytes = segmentSizeInBytes;
+        this.iotHubConnectionString = iotHubConnectionString;
+        this.logger = new CustomLogger(this.getClass());
+
+        // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_006: [If another store uses the directory, the constructor shall throw IOException.]
+        this.lockFile = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+        FileLock fileLock;
+        try
+        {
+            fileLock = this.lockFile.getChannel().tryLock();
+        }
+        catch (OverlappingFileLockException e)
+        {
+            fileLock = null;
+        }
+        if (fileLock == null)
+        {
+            this.lockFile.close();
+            throw new IOException("The outbound message store directory " + directory + " is used by another store");
+        }
+        this.lock = fileLock;
+
+        try
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_007: [The constructor shall read the segments of the directory in order, and keep the messages that are not acknowledged as replayable, up to the first corrupted or incomplete record of each segment.]
+            this.recover();
+        }
+        catch (IOException e)
+        {
+            this.lock.release();
+            this.lockFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates the packet to add to the transport queue for a message. A
+     * telemetry message is written to the log before the function returns,
+     * and the callback of the packet settles it in the log.
+     *
+     * @param message the message to be sent.
+     * @param callback the callback of the user, or {@code null}.
+     * @param callbackContext the context of the callback.
+     * @return the packet to add to the transport queue.
+     * @throws IllegalArgumentException if the message is null.
+     */
+    public IotHubOutboundPacket createPacket(Message message, IotHubEventCallback callback, Object callbackContext) throws IllegalArgumentException
+    {
+        if (message == null)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_008: [If the message is null, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("message cannot be null");
+        }
+
+        MessageType messageType = message.getMessageType();
+        ByteBuffer body = message.getBodyBuffer();
+        if ((messageType == MessageType.DEVICE_TWIN) || (messageType == MessageType.DEVICE_METHODS) || (body == null))
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_009: [If the message is a twin or method message, or has no body, the function shall return a packet with the callback of the user, without writing the message.]
+            return new IotHubOutboundPacket(message, callback, callbackContext);
+        }
+
+        long sequenceNumber;
+        try
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_010: [The function shall append the message to the log and wait until it is flushed to disk, sharing the flush with the concurrent writers.]
+            sequenceNumber = this.append(encode(message, body));
+            this.flush(sequenceNumber);
+        }
+        catch (IOException e)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_011: [If the message cannot be written, the function shall log the error and return a packet with the callback of the user.]
+            this.logger.LogError("Cannot write the message %s to the outbound message store: %s", message.getMessageId(), e.getMessage());
+            return new IotHubOutboundPacket(message, callback, callbackContext);
+        }
+
+        // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_015: [The function shall return a packet with the message, a callback that settles the message in the log, and the context.]
+        IotHubEventCallback storedMessageCallback = new StoredMessageCallback(this, sequenceNumber, callback);
+        return new IotHubOutboundPacket(message, storedMessageCallback, callbackContext);
+    }
+
+    /**
+     * Takes the oldest messages that are in the log but not in the transport
+     * queue. The expired messages are acknowledged instead of being returned.
+     *
+     * @param maxCount the maximum number of messages to take.
+     * @return the packets of the messages, in the order they were added.
+     * @throws IllegalArgumentException if maxCount is smaller than 1.
+     */
+    public List<IotHubOutboundPacket> replay(int maxCount) throws IllegalArgumentException
+    {
+        if (maxCount < 1)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_016: [If maxCount is smaller than 1, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("maxCount must be at least 1");
+        }
+
+        List<IotHubOutboundPacket> packets = new ArrayList<>();
+        List<Segment> acknowledgedSegments;
+        synchronized (this)
+        {
+            if (this.isClosed)
+            {
+                // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_017: [If the store is closed, the function shall return an empty list.]
+                return packets;
+            }
+
+            while ((packets.size() < maxCount) && !this.replayableSequenceNumbers.isEmpty())
+            {
+                long sequenceNumber = this.replayableSequenceNumbers.pollFirst();
+                Message message = this.read(this.pendingRecords.get(sequenceNumber));
+                if ((message == null) || message.isExpired())
+                {
+                    // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_018: [The function shall acknowledge the expired and unreadable messages instead of returning them.]
+                    this.writeAcknowledge(sequenceNumber);
+                }
+                else
+                {
+                    // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_019: [The function shall return up to maxCount packets with the oldest replayable messages, in order, and a callback that settles them in the log.]
+                    IotHubEventCallback storedMessageCallback = new StoredMessageCallback(this, sequenceNumber, null);
+                    packets.add(new IotHubOutboundPacket(message, storedMessageCallback, null));
+                }
+            }
+            acknowledgedSegments = this.removeAcknowledgedSegments();
+        }
+
+        this.deleteSegments(acknowledgedSegments);
+        return packets;
+    }
+
+    /**
+     * Getter for the number of messages in the log that are not acknowledged.
+     *
+     * @return the number of pending messages.
+     */
+    public synchronized int size()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_020: [The function shall return the number of messages written and not acknowledged.]
+        return this.pendingRecords.size();
+    }
+
+    /**
+     * Flushes the log and releases the directory. The messages that are not
+     * acknowledged are replayed by the next store opened in the directory.
+     */
+    public void close()
+    {
+        synchronized (this.flushLock)
+        {
+            synchronized (this)
+            {
+                if (this.isClosed)
+                {
+                    // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_021: [If the store is already closed, the function shall do nothing.]
+                    return;
+                }
+
+                // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_022: [The function shall flush the segments, release the directory, and ignore the settlements received after it.]
+                this.isClosed = true;
+                for (Segment segment : this.unflushedSegments)
+                {
+                    segment.buffer.force();
+                }
+                this.segments.getLast().buffer.force();
+                this.deleteUndeletedFiles();
+                this.pendingRecords.clear();
+                this.replayableSequenceNumbers.clear();
+                this.unflushedSegments.clear();
+                this.segments.clear();
+
+                try
+                {
+                    this.lock.release();
+                    this.lockFile.close();
+                }
+                catch (IOException e)
+                {
+                    this.logger.LogError(e);
+                }
+            }
+        }
+    }
+
+    void acknowledge(long sequenceNumber)
+    {
+        List<Segment> acknowledgedSegments;
+        synchronized (this)
+        {
+            this.writeAcknowledge(sequenceNumber);
+            acknowledgedSegments = this.removeAcknowledgedSegments();
+        }
+
+        this.deleteSegments(acknowledgedSegments);
+    }
+
+    void reject(long sequenceNumber, IotHubStatusCode status)
+    {
+        this.logger.LogWarn("Dropping the stored message %s, which was rejected with status %s, method name is %s ", sequenceNumber, status, this.logger.getMethodName());
+        this.acknowledge(sequenceNumber);
+    }
+
+    synchronized void release(long sequenceNumber)
+    {
+        if (!this.isClosed && this.pendingRecords.containsKey(sequenceNumber))
+        {
+            this.replayableSequenceNumbers.add(sequenceNumber);
+        }
+    }
+
+    /**
+     * Writes the acknowledge record of a message. The caller holds the lock of the store.
+     */
+    private void writeAcknowledge(long sequenceNumber)
+    {
+        this.replayableSequenceNumbers.remove(sequenceNumber);
+        Record record = this.pendingRecords.remove(sequenceNumber);
+        if (this.isClosed || (record == null))
+        {
+            return;
+        }
+
+        record.segment.pendingCount--;
+        try
+        {
+            // A lost acknowledge record only makes the message be sent again, so it is not flushed.
+            this.write(RECORD_TYPE_ACKNOWLEDGE, sequenceNumber, EMPTY_PAYLOAD);
+        }
+        catch (IOException e)
+        {
+            this.logger.LogError("Cannot acknowledge the message %s in the outbound message store: %s", sequenceNumber, e.getMessage());
+        }
+    }
+
+    private synchronized long append(byte[] payload) throws IOException
+    {
+        if (this.isClosed)
+        {
+            throw new IOException("The outbound message store is closed");
+        }
+
+        long sequenceNumber = this.nextSequenceNumber;
+        Record record = this.write(RECORD_TYPE_MESSAGE, sequenceNumber, payload);
+        this.nextSequenceNumber++;
+        this.pendingRecords.put(sequenceNumber, record);
+        record.segment.pendingCount++;
+        this.writtenSequenceNumber = sequenceNumber;
+        return sequenceNumber;
+    }
+
+    /**
+     * Waits until the message is on disk. The caller that finds no flush
+     * running flushes everything written so far, so the callers that arrive
+     * during a flush are covered by the next one instead of flushing one by one.
+     */
+    private void flush(long sequenceNumber)
+    {
+        synchronized (this.flushLock)
+        {
+            if (this.durableSequenceNumber >= sequenceNumber)
+            {
+                return;
+            }
+
+            long targetSequenceNumber;
+            List<Segment> segmentsToFlush;
+            synchronized (this)
+            {
+                if (this.isClosed)
+                {
+                    return;
+                }
+                targetSequenceNumber = this.writtenSequenceNumber;
+                segmentsToFlush = new ArrayList<>(this.unflushedSegments);
+                segmentsToFlush.add(this.segments.getLast());
+                this.unflushedSegments.clear();
+            }
+
+            // The other segments were flushed by the previous flushes. A segment
+            // is only deleted under the flush lock, so its file stays here.
+            for (Segment segment : segmentsToFlush)
+            {
+                segment.buffer.force();
+            }
+            this.durableSequenceNumber = targetSequenceNumber;
+        }
+    }
+
+    private Record write(byte type, long sequenceNumber, byte[] payload) throws IOException
+    {
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        Segment segment = this.segments.getLast();
+        if (segment.buffer.capacity() - segment.writePosition < recordSize)
+        {
+            // The filled segment is flushed by the next flush, outside the lock of the store.
+            this.unflushedSegments.add(segment);
+            segment = this.createSegment(Math.max(this.segmentSizeInBytes, recordSize));
+        }
+
+        int position = segment.writePosition;
+        ByteBuffer buffer = segment.buffer;
+        buffer.position(position);
+        buffer.putInt(payload.length);
+        buffer.putInt(checksum(type, sequenceNumber, payload));
+        buffer.put(type);
+        buffer.putLong(sequenceNumber);
+        buffer.put(payload);
+        segment.writePosition = buffer.position();
+        return new Record(segment, position);
+    }
+
+    private void recover() throws IOException
+    {
+        File[] files = this.directory.listFiles();
+        List<String> segmentFileNames = new ArrayList<>();
+        for (File file : (files == null) ? new File[0] : files)
+        {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_SUFFIX))
+            {
+                segmentFileNames.add(name);
+            }
+        }
+        // The index in the names is zero padded, so their order is the order of the segments.
+        String[] sortedNames = segmentFileNames.toArray(new String[segmentFileNames.size()]);
+        Arrays.sort(sortedNames);
+
+        for (String name : sortedNames)
+        {
+            File file = new File(this.directory, name);
+            long index = Long.parseLong(name.substring(SEGMENT_FILE_PREFIX.length(), name.length() - SEGMENT_FILE_SUFFIX.length()));
+            Segment segment = new Segment(file, map(file, (int) file.length()));
+            this.segments.addLast(segment);
+            this.nextSegmentIndex = index + 1;
+            this.scan(segment);
+        }
+
+        if (this.segments.isEmpty())
+        {
+            this.createSegment(this.segmentSizeInBytes);
+        }
+        else
+        {
+            // Clear what follows the last complete record, so a torn write is never read after the new records.
+            Segment last = this.segments.getLast();
+            ByteBuffer buffer = last.buffer;
+            buffer.position(last.writePosition);
+            while (buffer.hasRemaining())
+            {
+                buffer.put((byte) 0);
+            }
+            last.buffer.force();
+        }
+
+        this.writtenSequenceNumber = this.nextSequenceNumber - 1;
+        this.durableSequenceNumber = this.writtenSequenceNumber;
+        this.deleteSegments(this.removeAcknowledgedSegments());
+    }
+
+    private void scan(Segment segment)
+    {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+        while (buffer.capacity() - position >= RECORD_HEADER_SIZE)
+        {
+            buffer.position(position);
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            byte type = buffer.get();
+            long sequenceNumber = buffer.getLong();
+            if ((length < 0) || (length > buffer.remaining()))
+            {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            if ((checksum != checksum(type, sequenceNumber, payload)) || (sequenceNumber <= 0))
+            {
+                break;
+            }
+
+            if ((type == RECORD_TYPE_MESSAGE) && (sequenceNumber >= this.nextSequenceNumber))
+            {
+                this.pendingRecords.put(sequenceNumber, new Record(segment, position));
+                this.replayableSequenceNumbers.add(sequenceNumber);
+                segment.pendingCount++;
+                this.nextSequenceNumber = sequenceNumber + 1;
+            }
+            else if (type == RECORD_TYPE_ACKNOWLEDGE)
+            {
+                Record record = this.pendingRecords.remove(sequenceNumber);
+                if (record != null)
+                {
+                    this.replayableSequenceNumbers.remove(sequenceNumber);
+                    record.segment.pendingCount--;
+                }
+            }
+            else
+            {
+                // An old message record left after a torn write, or an unknown record.
+                break;
+            }
+
+            position = buffer.position();
+        }
+        segment.writePosition = position;
+    }
+
+    private Segment createSegment(int sizeInBytes) throws IOException
+    {
+        File file = new File(this.directory, String.format("%s%020d%s", SEGMENT_FILE_PREFIX, this.nextSegmentIndex, SEGMENT_FILE_SUFFIX));
+        Segment segment = new Segment(file, map(file, sizeInBytes));
+        this.nextSegmentIndex++;
+        this.segments.addLast(segment);
+        return segment;
+    }
+
+    /**
+     * Removes the oldest segments from the log while all their messages are
+     * acknowledged. The acknowledge records of a message are always after it,
+     * so removing in order never loses the acknowledge record of a pending
+     * message. The caller holds the lock of the store, and deletes the removed
+     * segments once it released it.
+     */
+    private List<Segment> removeAcknowledgedSegments()
+    {
+        List<Segment> acknowledgedSegments = new ArrayList<>();
+        while ((this.segments.size() > 1) && (this.segments.getFirst().pendingCount == 0))
+        {
+            Segment segment = this.segments.removeFirst();
+            this.unflushedSegments.remove(segment);
+            acknowledgedSegments.add(segment);
+        }
+        return acknowledgedSegments;
+    }
+
+    /**
+     * Deletes the files of the segments removed from the log, oldest first. A
+     * flush that started before they were removed may still be forcing them,
+     * so they are deleted under the flush lock.
+     */
+    private void deleteSegments(List<Segment> acknowledgedSegments)
+    {
+        if (acknowledgedSegments.isEmpty() && this.undeletedFiles.isEmpty())
+        {
+            return;
+        }
+
+        synchronized (this.flushLock)
+        {
+            for (Segment segment : acknowledgedSegments)
+            {
+                this.undeletedFiles.add(segment.file);
+            }
+            this.deleteUndeletedFiles();
+        }
+    }
+
+    /**
+     * Deletes the files of the removed segments, oldest first. Some systems
+     * cannot delete a file that is still mapped, and a mapping is only released
+     * when its buffer is garbage collected. So the deletion stops at the first
+     * file that cannot be deleted, and is tried again later, which keeps the
+     * older segments on disk as long as the newer ones that acknowledge their
+     * messages. The caller holds the flush lock.
+     */
+    private void deleteUndeletedFiles()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_025: [If the file of a removed segment cannot be deleted, the store shall keep it and the files of the segments after it, and try to delete them again after the next acknowledgement and when it is closed.]
+        while (!this.undeletedFiles.isEmpty())
+        {
+            File file = this.undeletedFiles.peekFirst();
+            if (file.exists() && !file.delete())
+            {
+                this.logger.LogWarn("Cannot delete the acknowledged outbound message store segment %s yet", file);
+                return;
+            }
+            this.undeletedFiles.removeFirst();
+        }
+    }
+
+    private Message read(Record record)
+    {
+        if (record == null)
+        {
+            return null;
+        }
+
+        ByteBuffer buffer = record.segment.buffer.duplicate();
+        buffer.position(record.position);
+        int length = buffer.getInt();
+        buffer.position(record.position + RECORD_HEADER_SIZE);
+        ByteBuffer payload = buffer.slice();
+        payload.limit(length);
+
+        try
+        {
+            return decode(payload);
+        }
+        catch (RuntimeException e)
+        {
+            this.logger.LogError("Cannot read a message of the outbound message store: %s", e.getMessage());
+            return null;
+        }
+    }
+
+    private static byte[] encode(Message message, ByteBuffer body) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.remaining() + 128);
+        DataOutputStream output = new DataOutputStream(bytes);
+        writeString(output, message.getMessageId());
+        writeString(output, message.getCorrelationId());
+        writeString(output, (message.getMessageType() == null) ? null : message.getMessageType().name());
+        output.writeLong(message.getExpiryTime());
+
+        MessageProperty[] properties = message.getProperties();
+        output.writeInt(properties.length);
+        for (MessageProperty property : properties)
+        {
+            writeString(output, property.getName());
+            writeString(output, property.getValue());
+        }
+
+        output.writeInt(body.remaining());
+        output.write(TransportUtils.toByteArray(body));
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private Message decode(ByteBuffer payload)
+    {
+        String messageId = readString(payload);
+        String correlationId = readString(payload);
+        String messageType = readString(payload);
+        long expiryTime = payload.getLong();
+
+        int propertyCount = payload.getInt();
+        String[] propertyNames = new String[propertyCount];
+        String[] propertyValues = new String[propertyCount];
+        for (int i = 0; i < propertyCount; i++)
+        {
+            propertyNames[i] = readString(payload);
+            propertyValues[i] = readString(payload);
+        }
+
+        byte[] body = new byte[payload.getInt()];
+        payload.get(body);
+
+        Message message = new Message(body);
+        message.setMessageId(messageId);
+        message.setCorrelationId(correlationId);
+        if (messageType != null)
+        {
+            message.setMessageType(MessageType.valueOf(messageType));
+        }
+        if (expiryTime != 0)
+        {
+            message.setAbsoluteExpiryTime(expiryTime);
+        }
+        for (int i = 0; i < propertyCount; i++)
+        {
+            message.setProperty(propertyNames[i], propertyValues[i]);
+        }
+        if (this.iotHubConnectionString != null)
+        {
+            message.setIotHubConnectionString(this.iotHubConnectionString);
+        }
+        return message;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException
+    {
+        if (value == null)
+        {
+            output.writeInt(-1);
+        }
+        else
+        {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer input)
+    {
+        int length = input.getInt();
+        if (length < 0)
+        {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        input.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(byte type, long sequenceNumber, byte[] payload)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        for (int shift = 56; shift >= 0; shift -= 8)
+        {
+            crc.update((int) (sequenceNumber >>> shift));
+        }
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static MappedByteBuffer map(File file, int sizeInBytes) throws IOException
+    {
+        // The mapping stays valid after the file is closed.
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"))
+        {
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, sizeInBytes);
+        }
+    }
+}
@@ -0,0 +1,436 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.*;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The messages waiting to be sent by a transport.
+ *
+ * The queue is bounded by the outbound queue capacity of the
+ * {@link DeviceClientConfig}, in messages and in bytes of body. When a new
+ * message does not fit, the outbound queue policy of the configuration decides
+ * whether the caller waits, the new message is rejected, or older messages are
+ * dropped. The callback of every message that does not get sent is added to the
+ * callback list of the transport, with the status that tells why.
+ *
+ * The messages that were already accepted and are put back in the queue to be
+ * sent again never count against the capacity, so a retry never drops a message.
+ *
+ * The thread that sends the messages of the transports also invokes their
+ * callbacks, so it never waits for room: nobody else would make room for it.
+ * A callback that sends a message into a full queue with the BLOCK policy gets
+ * it dropped instead.
+ *
+ * The transport closes the queue when it is closed. The callers waiting for
+ * room are woken up, and their messages are cancelled instead of being added
+ * to a queue that nobody sends.
+ */
+public final class IotHubOutboundQueue
+{
+    private static final ThreadLocal<Boolean> IS_SEND_THREAD = new ThreadLocal<Boolean>()
+    {
+        @Override
+        protected Boolean initialValue()
+        {
+            return false;
+        }
+    };
+
+    private final DeviceClientConfig config;
+    private final Queue<IotHubCallbackPacket> callbackList;
+
+    private final Object queueLock = new Object();
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    private long sizeInBytes;
+    private boolean isClosed;
+
+    private int peakSize;
+    private long droppedCount;
+    private long dequeuedCount;
+    private long totalQueuedTimeInNanoseconds;
+    private long maxQueuedTimeInNanoseconds;
+
+    private static final class Entry
+    {
+        private final IotHubOutboundPacket packet;
+        private final long sizeInBytes;
+        private final long queuedTimeInNanoseconds;
+
+        private Entry(IotHubOutboundPacket packet)
+        {
+            this.packet = packet;
+            Message message = packet.getMessage();
+            this.sizeInBytes = (message == null) ? 0 : message.getBodyLength();
+            this.queuedTimeInNanoseconds = System.nanoTime();
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param config the configuration with the capacity and policy of the queue.
+     * @param callbackList the callback list of the transport, for the messages that the queue drops.
+     * @throws IllegalArgumentException if the config or the callback list is null.
+     */
+    public IotHubOutboundQueue(DeviceClientConfig config, Queue<IotHubCallbackPacket> callbackList) throws IllegalArgumentException
+    {
+        if ((config == null) || (callbackList == null))
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_001: [If the config or the callbackList is null, the constructor shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("config and callbackList cannot be null");
+        }
+
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_002: [The constructor shall create an empty queue.]
+        this.config = config;
+        this.callbackList = callbackList;
+    }
+
+    /**
+     * Adds a new message at the end of the queue, applying the outbound queue
+     * policy if the queue is full.
+     *
+     * @param packet the message to be sent.
+     * @throws IllegalArgumentException if the packet is null.
+     */
+    public void add(IotHubOutboundPacket packet) throws IllegalArgumentException
+    {
+        if (packet == null)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_003: [If the packet is null, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("packet cannot be null");
+        }
+
+        Entry entry = new Entry(packet);
+        synchronized (this.queueLock)
+        {
+            int capacity = this.config.getOutboundQueueCapacity();
+            long capacityInBytes = this.config.getOutboundQueueCapacityInBytes();
+
+            if ((capacityInBytes > 0) && (entry.sizeInBytes > capacityInBytes))
+            {
+                // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_004: [If the body of the message is larger than the capacity in bytes, the function shall drop the message with status OUTBOUND_QUEUE_FULL.]
+                this.drop(packet, IotHubStatusCode.OUTBOUND_QUEUE_FULL);
+                return;
+            }
+
+            while (!this.isClosed && !this.hasRoom(entry, capacity, capacityInBytes))
+            {
+                IotHubOutboundQueuePolicy policy = this.config.getOutboundQueuePolicy();
+                if ((policy == IotHubOutboundQueuePolicy.BLOCK) && IS_SEND_THREAD.get())
+                {
+                    // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_024: [If the queue is full and the policy is BLOCK, but the caller is the thread that sends the messages and invokes the callbacks of the transports, the function shall drop the message with status OUTBOUND_QUEUE_FULL instead of waiting.]
+                    this.drop(packet, IotHubStatusCode.OUTBOUND_QUEUE_FULL);
+                    return;
+                }
+                else if (policy == IotHubOutboundQueuePolicy.BLOCK)
+                {
+                    try
+                    {
+                        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_005: [If the queue is full and the policy is BLOCK, the function shall wait until the queue has room for the message.]
+                        this.queueLock.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_006: [If the caller is interrupted while it waits, the function shall drop the message with status OUTBOUND_QUEUE_FULL and preserve the interrupt status.]
+                        Thread.currentThread().interrupt();
+                        this.drop(packet, IotHubStatusCode.OUTBOUND_QUEUE_FULL);
+                        return;
+                    }
+                }
+                else if (policy == IotHubOutboundQueuePolicy.DROP_OLDEST)
+                {
+                    // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_007: [If the queue is full and the policy is DROP_OLDEST, the function shall drop the oldest messages with status OUTBOUND_QUEUE_FULL until the message fits.]
+                    this.drop(this.removeFirst(), IotHubStatusCode.OUTBOUND_QUEUE_FULL);
+                }
+                else if (!((policy == IotHubOutboundQueuePolicy.DROP_EXPIRED) && this.dropExpired()))
+                {
+                    // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_009: [If the queue is full and the policy is FAIL_FAST, or is DROP_EXPIRED and no message expired, the function shall drop the new message with status OUTBOUND_QUEUE_FULL.]
+                    this.drop(packet, IotHubStatusCode.OUTBOUND_QUEUE_FULL);
+                    return;
+                }
+            }
+
+            if (!this.isClosed)
+            {
+                // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_010: [The function shall add the packet at the end of the queue.]
+                this.addLast(entry);
+                return;
+            }
+
+            this.droppedCount++;
+        }
+
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_023: [If the queue is closed, or is closed while the caller waits for room, the function shall not add the packet, and shall invoke its callback with status MESSAGE_CANCELLED_ONCLOSE.]
+        this.cancel(packet);
+    }
+
+    /**
+     * Puts back at the end of the queue a message that could not be sent,
+     * without checking the capacity.
+     *
+     * @param packet the message to be sent again.
+     * @throws IllegalArgumentException if the packet is null.
+     */
+    public void requeue(IotHubOutboundPacket packet) throws IllegalArgumentException
+    {
+        if (packet == null)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_011: [If the packet is null, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("packet cannot be null");
+        }
+
+        synchronized (this.queueLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_012: [The function shall add the packet at the end of the queue, even if the queue is full.]
+            this.addLast(new Entry(packet));
+        }
+    }
+
+    /**
+     * Puts back in front of the queue the messages that could not be sent,
+     * without checking the capacity.
+     *
+     * @param packets the messages to be sent again, in the order to send them.
+     * @throws IllegalArgumentException if the list of packets is null.
+     */
+    public void requeueFirst(List<IotHubOutboundPacket> packets) throws IllegalArgumentException
+    {
+        if (packets == null)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_013: [If the list of packets is null, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("packets cannot be null");
+        }
+
+        synchronized (this.queueLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_014: [The function shall add the packets in front of the queue, keeping their order, even if the queue is full.]
+            for (int i = packets.size() - 1; i >= 0; i--)
+            {
+                Entry entry = new Entry(packets.get(i));
+                this.entries.addFirst(entry);
+                this.sizeInBytes += entry.sizeInBytes;
+            }
+            this.peakSize = Math.max(this.peakSize, this.entries.size());
+        }
+    }
+
+    /**
+     * Removes the first message of the queue, to send it.
+     *
+     * @return the first message, or {@code null} if the queue is empty.
+     */
+    public IotHubOutboundPacket poll()
+    {
+        synchronized (this.queueLock)
+        {
+            if (this.entries.isEmpty())
+            {
+                // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_015: [If the queue is empty, the function shall return null.]
+                return null;
+            }
+
+            // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_016: [The function shall remove the first packet of the queue, record the time it spent in the queue, wake up the callers waiting for room, and return it.]
+            Entry entry = this.entries.peekFirst();
+            long queuedTimeInNanoseconds = System.nanoTime() - entry.queuedTimeInNanoseconds;
+            this.dequeuedCount++;
+            this.totalQueuedTimeInNanoseconds += queuedTimeInNanoseconds;
+            this.maxQueuedTimeInNanoseconds = Math.max(this.maxQueuedTimeInNanoseconds, queuedTimeInNanoseconds);
+            return this.removeFirst();
+        }
+    }
+
+    /**
+     * Getter for the first message of the queue, without removing it.
+     *
+     * @return the first message, or {@code null} if the queue is empty.
+     */
+    public IotHubOutboundPacket peek()
+    {
+        synchronized (this.queueLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_017: [The function shall return the first packet of the queue, or null if the queue is empty.]
+            Entry entry = this.entries.peekFirst();
+            return (entry == null) ? null : entry.packet;
+        }
+    }
+
+    /**
+     * Getter for the number of messages in the queue.
+     *
+     * @return the number of messages waiting to be sent.
+     */
+    public int size()
+    {
+        synchronized (this.queueLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_018: [The function shall return the number of packets in the queue.]
+            return this.entries.size();
+        }
+    }
+
+    /**
+     * Checks if no message is waiting to be sent.
+     *
+     * @return {@code true} if the queue is empty.
+     */
+    public boolean isEmpty()
+    {
+        synchronized (this.queueLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_019: [The function shall return true if the queue has no packet, and false otherwise.]
+            return this.entries.isEmpty();
+        }
+    }
+
+    /**
+     * Opens the queue again after it was closed, when the transport is opened again.
+     */
+    public void open()
+    {
+        synchronized (this.queueLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_021: [The function shall let the queue accept new packets again.]
+            this.isClosed = false;
+        }
+    }
+
+    /**
+     * Closes the queue when the transport is closed. The callers waiting for
+     * room are woken up, and the new messages are cancelled until the queue is
+     * opened again. The messages already in the queue are not changed.
+     */
+    public void close()
+    {
+        synchronized (this.queueLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_022: [The function shall mark the queue as closed and wake up the callers waiting for room.]
+            this.isClosed = true;
+            this.queueLock.notifyAll();
+        }
+    }
+
+    /**
+     * Getter for a snapshot of the depth of the queue and of the time the messages spent in it.
+     *
+     * @return the metrics of the queue.
+     */
+    public IotHubOutboundQueueMetrics getMetrics()
+    {
+        synchronized (this.queueLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_020: [The function shall return the size, size in bytes, peak size, dropped count, dequeued count, and average and maximum queued time of the queue.]
+            long averageQueuedTimeInNanoseconds = (this.dequeuedCount == 0) ? 0 : this.totalQueuedTimeInNanoseconds / this.dequeuedCount;
+            return new IotHubOutboundQueueMetrics(
+                    this.entries.size(),
+                    this.sizeInBytes,
+                    this.peakSize,
+                    this.droppedCount,
+                    this.dequeuedCount,
+                    TimeUnit.NANOSECONDS.toMillis(averageQueuedTimeInNanoseconds),
+                    TimeUnit.NANOSECONDS.toMillis(this.maxQueuedTimeInNanoseconds));
+        }
+    }
+
+    /**
+     * Marks the calling thread as the thread that sends the messages and
+     * invokes the callbacks of the transports, or clears the mark.
+     *
+     * @param isSendThread {@code true} while the thread runs the send task.
+     */
+    static void setSendThread(boolean isSendThread)
+    {
+        IS_SEND_THREAD.set(isSendThread);
+    }
+
+    private boolean hasRoom(Entry entry, int capacity, long capacityInBytes)
+    {
+        return ((capacity <= 0) || (this.entries.size() < capacity))
+                && ((capacityInBytes <= 0) || (this.sizeInBytes + entry.sizeInBytes <= capacityInBytes));
+    }
+
+    private void addLast(Entry entry)
+    {
+        this.entries.addLast(entry);
+        this.sizeInBytes += entry.sizeInBytes;
+        this.peakSize = Math.max(this.peakSize, this.entries.size());
+    }
+
+    private IotHubOutboundPacket removeFirst()
+    {
+        Entry entry = this.entries.removeFirst();
+        this.sizeInBytes -= entry.sizeInBytes;
+        this.queueLock.notifyAll();
+        return entry.packet;
+    }
+
+    /**
+     * Drops the expired messages of the queue.
+     *
+     * @return {@code true} if a message was dropped.
+     */
+    private boolean dropExpired()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_28_008: [If the queue is full and the policy is DROP_EXPIRED, the function shall drop the expired messages with status MESSAGE_EXPIRED.]
+        boolean dropped = false;
+        Iterator<Entry> iterator = this.entries.iterator();
+        while (iterator.hasNext())
+        {
+            Entry entry = iterator.next();
+            Message message = entry.packet.getMessage();
+            if ((message != null) && message.isExpired())
+            {
+                iterator.remove();
+                this.sizeInBytes -= entry.sizeInBytes;
+                this.drop(entry.packet, IotHubStatusCode.MESSAGE_EXPIRED);
+                dropped = true;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Invokes the callbacks of a message added to the closed queue. The
+     * transport already invoked its callback list when it was closed, so the
+     * callbacks are invoked here, without holding the queue lock.
+     */
+    private void cancel(IotHubOutboundPacket packet)
+    {
+        IotHubEventCallback eventCallback = packet.getCallback();
+        if (eventCallback != null)
+        {
+            eventCallback.execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, packet.getContext());
+        }
+
+        IotHubResponseCallback responseCallback = packet.getResponseCallback();
+        if (responseCallback != null)
+        {
+            responseCallback.execute(new ResponseMessage(new byte[]{}, IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE), packet.getContext());
+        }
+    }
+
+    private void drop(IotHubOutboundPacket packet, IotHubStatusCode status)
+    {
+        this.droppedCount++;
+
+        IotHubEventCallback eventCallback = packet.getCallback();
+        if (eventCallback != null)
+        {
+            this.callbackList.add(new IotHubCallbackPacket(status, eventCallback, packet.getContext()));
+        }
+
+        IotHubResponseCallback responseCallback = packet.getResponseCallback();
+        if (responseCallback != null)
+        {
+            this.callbackList.add(new IotHubCallbackPacket(new ResponseMessage(new byte[]{}, status), responseCallback, packet.getContext()));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+/**
+ * A snapshot of the depth of the queue of messages waiting to be sent, and of
+ * the time the messages spent in it.
+ */
+public final class IotHubOutboundQueueMetrics
+{
+    private final int size;
+    private final long sizeInBytes;
+    private final int peakSize;
+    private final long droppedCount;
+    private final long dequeuedCount;
+    private final long averageQueuedTimeInMilliseconds;
+    private final long maxQueuedTimeInMilliseconds;
+
+    IotHubOutboundQueueMetrics(int size, long sizeInBytes, int peakSize, long droppedCount,
+                               long dequeuedCount, long averageQueuedTimeInMilliseconds, long maxQueuedTimeInMilliseconds)
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_001: [The constructor shall save the provided values.]
+        this.size = size;
+        this.sizeInBytes = sizeInBytes;
+        this.peakSize = peakSize;
+        this.droppedCount = droppedCount;
+        this.dequeuedCount = dequeuedCount;
+        this.averageQueuedTimeInMilliseconds = averageQueuedTimeInMilliseconds;
+        this.maxQueuedTimeInMilliseconds = maxQueuedTimeInMilliseconds;
+    }
+
+    /**
+     * Getter for the number of messages waiting to be sent.
+     *
+     * @return the depth of the queue, in messages.
+     */
+    public int getSize()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_002: [The function shall return the saved size.]
+        return this.size;
+    }
+
+    /**
+     * Getter for the total body size of the messages waiting to be sent.
+     *
+     * @return the depth of the queue, in bytes.
+     */
+    public long getSizeInBytes()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_003: [The function shall return the saved size in bytes.]
+        return this.sizeInBytes;
+    }
+
+    /**
+     * Getter for the largest number of messages that waited to be sent at the same time.
+     *
+     * @return the peak depth of the queue, in messages.
+     */
+    public int getPeakSize()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_004: [The function shall return the saved peak size.]
+        return this.peakSize;
+    }
+
+    /**
+     * Getter for the number of messages that the queue dropped because it was full.
+     *
+     * @return the number of dropped messages, including the expired messages dropped to make room.
+     */
+    public long getDroppedCount()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_005: [The function shall return the saved dropped count.]
+        return this.droppedCount;
+    }
+
+    /**
+     * Getter for the number of times a message left the queue to be sent.
+     *
+     * @return the number of dequeued messages.
+     */
+    public long getDequeuedCount()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_006: [The function shall return the saved dequeued count.]
+        return this.dequeuedCount;
+    }
+
+    /**
+     * Getter for the average time the dequeued messages waited in the queue.
+     *
+     * @return the average queued time, in milliseconds, or 0 if no message was dequeued.
+     */
+    public long getAverageQueuedTimeInMilliseconds()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_007: [The function shall return the saved average queued time.]
+        return this.averageQueuedTimeInMilliseconds;
+    }
+
+    /**
+     * Getter for the longest time a dequeued message waited in the queue.
+     *
+     * @return the maximum queued time, in milliseconds, or 0 if no message was dequeued.
+     */
+    public long getMaxQueuedTimeInMilliseconds()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_008: [The function shall return the saved maximum queued time.]
+        return this.maxQueuedTimeInMilliseconds;
+    }
+}
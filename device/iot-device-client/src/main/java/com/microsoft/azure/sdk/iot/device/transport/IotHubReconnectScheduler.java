@@ -0,0 +1,153 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the attempts of a connection to reconnect to the IoT Hub, after
+ * the delays of the retry policy and reconnect rate limiter of the client.
+ *
+ * The attempts of all the connections of the process run on a small pool of
+ * daemon threads, which is only started by the first attempt that is
+ * scheduled, so the threads of Paho and Proton are never held while a
+ * connection waits to reconnect.
+ */
+public final class IotHubReconnectScheduler
+{
+    private static final int MIN_RECONNECT_THREADS = 2;
+    private static final ScheduledExecutorService EXECUTOR = IotHubDaemonExecutors.newScheduledExecutor(
+            "Reconnect", Math.max(MIN_RECONNECT_THREADS, Runtime.getRuntime().availableProcessors()));
+
+    private final DeviceClientConfig config;
+    private int currentRetryCount;
+    private long previousDelayInMilliseconds;
+    private long connectionLostTimeInMilliseconds;
+    private boolean cancelled;
+    private ScheduledFuture<?> pendingReconnect;
+
+    /**
+     * Constructor.
+     *
+     * @param config the configuration of the client, which gives the retry policy and the reconnect rate limiter.
+     * @throws IllegalArgumentException if the config is null.
+     */
+    public IotHubReconnectScheduler(DeviceClientConfig config) throws IllegalArgumentException
+    {
+        if (config == null)
+        {
+            // Codes_SRS_IOTHUBRECONNECTSCHEDULER_28_001: [If the config is null, the constructor shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("config cannot be null");
+        }
+
+        // Codes_SRS_IOTHUBRECONNECTSCHEDULER_28_002: [The constructor shall save the config and start with no retry.]
+        this.config = config;
+    }
+
+    /**
+     * Schedules the next attempt to reconnect.
+     *
+     * @param reconnectTask the task that attempts to reconnect.
+     * @return {@code true} if the attempt was scheduled, {@code false} if the retry policy stopped reconnecting
+     * or the scheduler was cancelled.
+     * @throws IllegalArgumentException if the reconnect task is null.
+     */
+    public synchronized boolean schedule(Runnable reconnectTask) throws IllegalArgumentException
+    {
+        if (reconnectTask == null)
+        {
+            // Codes_SRS_IOTHUBRECONNECTSCHEDULER_28_003: [If the reconnectTask is null, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("reconnectTask cannot be null");
+        }
+
+        if (this.cancelled)
+        {
+            // Codes_SRS_IOTHUBRECONNECTSCHEDULER_28_004: [If the scheduler is cancelled, the function shall return false.]
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        if (this.currentRetryCount == 0)
+        {
+            // Codes_SRS_IOTHUBRECONNECTSCHEDULER_28_005: [When the first attempt is scheduled, the function shall save the current time as the time the connection was lost.]
+            this.connectionLostTimeInMilliseconds = now;
+        }
+
+        // Codes_SRS_IOTHUBRECONNECTSCHEDULER_28_006: [The function shall get the delay of the attempt from the retry policy of the config, with the number of the attempt, the previous delay and the time since the connection was lost.]
+        long delayInMilliseconds = this.config.getRetryPolicy().getRetryDelayInMilliseconds(
+                this.currentRetryCount + 1, this.previousDelayInMilliseconds, now - this.connectionLostTimeInMilliseconds);
+        if (delayInMilliseconds < 0)
+        {
+            // Codes_SRS_IOTHUBRECONNECTSCHEDULER_28_007: [If the retry policy returns a negative delay, the function shall return false.]
+            return false;
+        }
+
+        this.currentRetryCount++;
+        this.previousDelayInMilliseconds = delayInMilliseconds;
+
+        ReconnectRateLimiter rateLimiter = this.config.getReconnectRateLimiter();
+        if (rateLimiter != null)
+        {
+            // Codes_SRS_IOTHUBRECONNECTSCHEDULER_28_008: [If the config has a reconnect rate limiter, the function shall delay the attempt to the slot reserved by the limiter.]
+            delayInMilliseconds = rateLimiter.reserve(delayInMilliseconds);
+        }
+
+        // Codes_SRS_IOTHUBRECONNECTSCHEDULER_28_009: [The function shall run the reconnectTask once after the delay, on the reconnect threads of the process, and return true.]
+        this.pendingReconnect = EXECUTOR.schedule(reconnectTask, delayInMilliseconds, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Starts the retries over, after the connection is established.
+     */
+    public synchronized void reset()
+    {
+        // Codes_SRS_IOTHUBRECONNECTSCHEDULER_28_010: [The function shall set the number of attempts and the previous delay to 0, and clear the cancellation.]
+        this.currentRetryCount = 0;
+        this.previousDelayInMilliseconds = 0;
+        this.cancelled = false;
+    }
+
+    /**
+     * Cancels the pending attempt, when the connection is closed. No attempt
+     * is scheduled until the scheduler is reset.
+     */
+    public synchronized void cancel()
+    {
+        // Codes_SRS_IOTHUBRECONNECTSCHEDULER_28_011: [The function shall cancel the pending attempt, if any, without interrupting it, and make the scheduler refuse the attempts until it is reset.]
+        this.cancelled = true;
+        if (this.pendingReconnect != null)
+        {
+            this.pendingReconnect.cancel(false);
+            this.pendingReconnect = null;
+        }
+    }
+
+    /**
+     * Returns whether the scheduler was cancelled, so an attempt that already
+     * started can give up.
+     *
+     * @return {@code true} if the scheduler was cancelled and not reset since, {@code false} otherwise.
+     */
+    public synchronized boolean isCancelled()
+    {
+        // Codes_SRS_IOTHUBRECONNECTSCHEDULER_28_012: [The function shall return true if the scheduler was cancelled and not reset since, and false otherwise.]
+        return this.cancelled;
+    }
+
+    /**
+     * Getter for the number of attempts scheduled since the connection was lost.
+     *
+     * @return the number of attempts.
+     */
+    public synchronized int getCurrentRetryCount()
+    {
+        // Codes_SRS_IOTHUBRECONNECTSCHEDULER_28_013: [The function shall return the number of attempts scheduled since the last reset.]
+        return this.currentRetryCount;
+    }
+}
@@ -35,6 +35,8 @@ public final class IotHubSendTask implements Runnable
     {
         logger.LogTrace("Now sending all queued messages to IoT Hub");
 
+        // Codes_SRS_IOTHUBSENDTASK_28_001: [The function shall mark its thread as the send thread while it runs, so the callbacks it invokes never wait for room in a full outbound queue.]
+        IotHubOutboundQueue.setSendThread(true);
         try
         {
             // Codes_SRS_IOTHUBSENDTASK_11_002: [The function shall send all messages on the transport queue.]
@@ -53,5 +55,9 @@ public final class IotHubSendTask implements Runnable
             logger.LogError(e.toString() + ": " + e.getMessage());
             logger.LogDebug("Exception on sending queued messages to IoT Hub", e);
         }
+        finally
+        {
+            IotHubOutboundQueue.setSendThread(false);
+        }
     }
 }
\ No newline at end of file
@@ -107,4 +107,20 @@ public interface IotHubTransport extends Closeable
      * {@code null} if no callback is provided.
      */
     void registerConnectionStateCallback(IotHubConnectionStateCallback callback, Object callbackContext);
+
+    /**
+     * Getter for the depth of the queue of messages waiting to be sent, and
+     * for the time the messages spent in it.
+     *
+     * @return a snapshot of the metrics of the outbound queue.
+     */
+    IotHubOutboundQueueMetrics getOutboundQueueMetrics();
+
+    /**
+     * Getter for the number of callbacks waiting to be invoked, and for the
+     * time they waited and ran.
+     *
+     * @return a snapshot of the metrics of the callback dispatcher.
+     */
+    IotHubCallbackDispatcherMetrics getCallbackDispatcherMetrics();
 }
@@ -0,0 +1,71 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of the reconnects of the clients that share it. When an IoT
+ * Hub fails over, every device of the process loses its connection at once;
+ * giving the same limiter to all the clients spreads their reconnects so they
+ * do not all hit the hub in the same second.
+ *
+ * A reconnect is never refused, it only gets a later slot, so the limiter
+ * never blocks a thread.
+ */
+public final class ReconnectRateLimiter
+{
+    private final long intervalInNanoseconds;
+    private final long burstInNanoseconds;
+    private long nextSlotInNanoseconds;
+
+    /**
+     * Constructor.
+     *
+     * @param reconnectsPerSecond the number of reconnects that can start every second.
+     * @param burstSize the number of reconnects that can start at once after a quiet time.
+     * @throws IllegalArgumentException if the rate is not positive or the burst size is smaller than 1.
+     */
+    public ReconnectRateLimiter(double reconnectsPerSecond, int burstSize) throws IllegalArgumentException
+    {
+        if (!(reconnectsPerSecond > 0) || (burstSize < 1))
+        {
+            // Codes_SRS_RECONNECTRATELIMITER_28_001: [If the reconnectsPerSecond is not positive or the burstSize is smaller than 1, the constructor shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("reconnectsPerSecond must be positive and burstSize cannot be smaller than 1");
+        }
+
+        // Codes_SRS_RECONNECTRATELIMITER_28_002: [The constructor shall allow burstSize reconnects at once, then one reconnect every 1/reconnectsPerSecond seconds.]
+        this.intervalInNanoseconds = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / reconnectsPerSecond));
+        this.burstInNanoseconds = this.intervalInNanoseconds * (burstSize - 1);
+        this.nextSlotInNanoseconds = System.nanoTime();
+    }
+
+    /**
+     * Reserves the slot of a reconnect that should start after the provided delay.
+     *
+     * @param delayInMilliseconds the delay the reconnect should wait, as given by the retry policy.
+     * @return the delay the reconnect shall wait to start in its slot, in milliseconds, which is never
+     * shorter than the provided delay.
+     * @throws IllegalArgumentException if the delay is negative.
+     */
+    public synchronized long reserve(long delayInMilliseconds) throws IllegalArgumentException
+    {
+        if (delayInMilliseconds < 0)
+        {
+            // Codes_SRS_RECONNECTRATELIMITER_28_003: [If the delayInMilliseconds is negative, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("delayInMilliseconds cannot be negative");
+        }
+
+        long now = System.nanoTime();
+        long requestedStart = now + TimeUnit.MILLISECONDS.toNanos(delayInMilliseconds);
+
+        // Codes_SRS_RECONNECTRATELIMITER_28_004: [If the rate and the burst size allow it, the function shall return the provided delay.]
+        // Codes_SRS_RECONNECTRATELIMITER_28_005: [Otherwise, the function shall return the delay until the first free slot after the provided delay.]
+        long slot = Math.max(this.nextSlotInNanoseconds, requestedStart);
+        long start = Math.max(requestedStart, slot - this.burstInNanoseconds);
+        this.nextSlotInNanoseconds = slot + this.intervalInNanoseconds;
+
+        return Math.max(delayInMilliseconds, TimeUnit.NANOSECONDS.toMillis(start - now + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+    }
+}
@@ -0,0 +1,25 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+/**
+ * Decides how long a transport waits before it tries again to reconnect to
+ * the IoT Hub, and when it stops trying. A policy can be shared by several
+ * clients, so it gets all the state of the retries as parameters.
+ */
+public interface RetryPolicy
+{
+    /** The delay returned to stop reconnecting. */
+    long NO_MORE_RETRIES = -1;
+
+    /**
+     * Gets the delay before the next attempt to reconnect.
+     *
+     * @param currentRetryCount the number of the attempt to make, starting at 1 after the connection is lost.
+     * @param previousDelayInMilliseconds the delay before the previous attempt, or 0 before the first attempt.
+     * @param elapsedTimeInMilliseconds the time since the connection was lost.
+     * @return the delay before the attempt, in milliseconds, or {@link #NO_MORE_RETRIES} to stop reconnecting.
+     */
+    long getRetryDelayInMilliseconds(int currentRetryCount, long previousDelayInMilliseconds, long elapsedTimeInMilliseconds);
+}
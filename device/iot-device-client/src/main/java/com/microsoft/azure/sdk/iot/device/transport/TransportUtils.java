@@ -3,6 +3,8 @@
 
 package com.microsoft.azure.sdk.iot.device.transport;
 
+import java.nio.ByteBuffer;
+
 public class TransportUtils
 {
     public static final String JAVA_DEVICE_CLIENT_IDENTIFIER = "com.microsoft.azure.sdk.iot.iot-device-client/";
@@ -30,4 +32,23 @@ public class TransportUtils
             return 0;
         }
     }
+
+    /** Copies the bytes of a message body for an API that only takes a byte
+     * array. The body of a message is a read-only view, so its array is never
+     * accessible and the bytes are always copied.
+     *
+     * @param buffer the message body.
+     * @return a copy of the bytes of the buffer, between its position and its limit, or null if the buffer is null.
+     */
+    public static byte[] toByteArray(ByteBuffer buffer)
+    {
+        if (buffer == null)
+        {
+            return null;
+        }
+
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
 }
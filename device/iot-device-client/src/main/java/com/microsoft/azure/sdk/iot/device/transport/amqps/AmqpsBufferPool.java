@@ -0,0 +1,141 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reuses the buffers that the Proton messages of an AMQP connection are
+ * encoded into and decoded from.
+ *
+ * Proton copies the bytes of a message when it is sent or decoded, so a buffer
+ * can be released as soon as the call that uses it returns. The pooled buffers
+ * are the size of the frames negotiated with the IoT Hub, which holds most
+ * messages; a bigger buffer is allocated for a bigger message, and it is not
+ * kept when it is released.
+ *
+ * The pool counts the buffers that were acquired and not released yet, so a
+ * buffer that is never released can be detected.
+ */
+public final class AmqpsBufferPool
+{
+    /** The size of the pooled buffers until the frame size is negotiated. */
+    public static final int DEFAULT_BUFFER_SIZE_IN_BYTES = 16 * 1024;
+
+    /** The smallest size of the pooled buffers, which is the smallest AMQP frame size. */
+    public static final int MIN_BUFFER_SIZE_IN_BYTES = 512;
+
+    /** The biggest size of the pooled buffers, which is the biggest IoT Hub message size. */
+    public static final int MAX_BUFFER_SIZE_IN_BYTES = 256 * 1024;
+
+    /** The maximum number of released buffers that are kept for reuse. */
+    public static final int MAX_POOLED_BUFFERS = 16;
+
+    private final Deque<byte[]> pooledBuffers = new ArrayDeque<>();
+    private int bufferSize;
+    private int outstandingCount;
+
+    /**
+     * Constructor. The pooled buffers have the default size until
+     * {@link #setBufferSize(int)} is called.
+     */
+    public AmqpsBufferPool()
+    {
+        // Codes_SRS_AMQPSBUFFERPOOL_28_001: [The constructor shall set the size of the pooled buffers to DEFAULT_BUFFER_SIZE_IN_BYTES.]
+        this.bufferSize = DEFAULT_BUFFER_SIZE_IN_BYTES;
+    }
+
+    /**
+     * Sets the size of the pooled buffers, usually to the negotiated frame size.
+     * The buffers of the previous size are not reused anymore.
+     *
+     * @param bufferSize the size of the buffers, in bytes. It is bounded by
+     *                   {@link #MIN_BUFFER_SIZE_IN_BYTES} and {@link #MAX_BUFFER_SIZE_IN_BYTES}.
+     */
+    public synchronized void setBufferSize(int bufferSize)
+    {
+        // Codes_SRS_AMQPSBUFFERPOOL_28_002: [The function shall set the size of the pooled buffers, bounded by MIN_BUFFER_SIZE_IN_BYTES and MAX_BUFFER_SIZE_IN_BYTES. A size that is not positive shall be bounded to MAX_BUFFER_SIZE_IN_BYTES.]
+        int newBufferSize = (bufferSize <= 0) ? MAX_BUFFER_SIZE_IN_BYTES : Math.max(MIN_BUFFER_SIZE_IN_BYTES, Math.min(MAX_BUFFER_SIZE_IN_BYTES, bufferSize));
+        if (newBufferSize != this.bufferSize)
+        {
+            // Codes_SRS_AMQPSBUFFERPOOL_28_003: [If the size changes, the function shall drop the pooled buffers.]
+            this.bufferSize = newBufferSize;
+            this.pooledBuffers.clear();
+        }
+    }
+
+    /**
+     * Getter for the size of the pooled buffers.
+     *
+     * @return the size of the pooled buffers, in bytes.
+     */
+    public synchronized int getBufferSize()
+    {
+        // Codes_SRS_AMQPSBUFFERPOOL_28_004: [The function shall return the size of the pooled buffers.]
+        return this.bufferSize;
+    }
+
+    /**
+     * Takes a buffer, which must be given back to {@link #release(byte[])}
+     * once it is not used anymore.
+     *
+     * @param minimumSize the minimum size of the buffer, in bytes.
+     * @return a buffer of at least the minimum size. Its content is undefined.
+     */
+    public synchronized byte[] acquire(int minimumSize)
+    {
+        // Codes_SRS_AMQPSBUFFERPOOL_28_005: [The function shall count the buffer as acquired.]
+        this.outstandingCount++;
+
+        if (minimumSize > this.bufferSize)
+        {
+            // Codes_SRS_AMQPSBUFFERPOOL_28_006: [If the minimum size is bigger than the size of the pooled buffers, the function shall return a new buffer of the minimum size.]
+            return new byte[minimumSize];
+        }
+
+        // Codes_SRS_AMQPSBUFFERPOOL_28_007: [Otherwise, the function shall return a pooled buffer, or a new buffer of the size of the pooled buffers if there is none.]
+        byte[] buffer = this.pooledBuffers.pollFirst();
+        return (buffer == null) ? new byte[this.bufferSize] : buffer;
+    }
+
+    /**
+     * Gives back a buffer taken by {@link #acquire(int)}. The buffer must not be
+     * used after it is released.
+     *
+     * @param buffer the buffer to release.
+     * @throws IllegalArgumentException if the buffer is null.
+     */
+    public synchronized void release(byte[] buffer) throws IllegalArgumentException
+    {
+        if (buffer == null)
+        {
+            // Codes_SRS_AMQPSBUFFERPOOL_28_008: [If the buffer is null, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("buffer cannot be null");
+        }
+
+        // Codes_SRS_AMQPSBUFFERPOOL_28_009: [The function shall count the buffer as released.]
+        if (this.outstandingCount > 0)
+        {
+            this.outstandingCount--;
+        }
+
+        // Codes_SRS_AMQPSBUFFERPOOL_28_010: [The function shall keep the buffer for reuse only if it has the size of the pooled buffers and fewer than MAX_POOLED_BUFFERS buffers are kept.]
+        if ((buffer.length == this.bufferSize) && (this.pooledBuffers.size() < MAX_POOLED_BUFFERS))
+        {
+            this.pooledBuffers.addFirst(buffer);
+        }
+    }
+
+    /**
+     * Getter for the number of buffers that were acquired and not released yet.
+     *
+     * @return the number of buffers in use. It is 0 when no buffer leaked.
+     */
+    public synchronized int getOutstandingCount()
+    {
+        // Codes_SRS_AMQPSBUFFERPOOL_28_011: [The function shall return the number of buffers that were acquired and not released.]
+        return this.outstandingCount;
+    }
+}
@@ -0,0 +1,94 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates and reads the delivery tags of the messages sent over AMQP.
+ *
+ * A delivery tag is the next number of a single increasing sequence, encoded
+ * in 8 big-endian bytes. The sequence is shared by every sender link, so a
+ * tag is unique on its link, and the tags of a link always increase. The
+ * number of a tag identifies the delivery until it is settled.
+ */
+public final class AmqpsDeliveryTag
+{
+    /** The size of an encoded delivery tag, in bytes. */
+    public static final int DELIVERY_TAG_SIZE_IN_BYTES = 8;
+
+    /** The value returned for a delivery tag that was not created by this class. */
+    public static final long INVALID_DELIVERY_TAG = -1;
+
+    private static final AtomicLong NEXT_DELIVERY_TAG = new AtomicLong(0);
+
+    private AmqpsDeliveryTag()
+    {
+    }
+
+    /**
+     * Getter for the number of the next delivery tag.
+     *
+     * @return the next number of the sequence. It is never negative.
+     */
+    public static long next()
+    {
+        // Codes_SRS_AMQPSDELIVERYTAG_28_001: [The function shall return the next number of the delivery tag sequence, starting again from 0 after Long.MAX_VALUE.]
+        long deliveryTag = NEXT_DELIVERY_TAG.getAndIncrement();
+        if (deliveryTag < 0)
+        {
+            NEXT_DELIVERY_TAG.compareAndSet(deliveryTag + 1, 1);
+            deliveryTag = 0;
+        }
+        return deliveryTag;
+    }
+
+    /**
+     * Encodes the number of a delivery tag.
+     *
+     * @param deliveryTag the number of the delivery tag.
+     * @return the delivery tag to give to the sender link.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public static byte[] encode(long deliveryTag) throws IllegalArgumentException
+    {
+        if (deliveryTag < 0)
+        {
+            // Codes_SRS_AMQPSDELIVERYTAG_28_002: [If the deliveryTag is negative, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("deliveryTag cannot be negative");
+        }
+
+        // Codes_SRS_AMQPSDELIVERYTAG_28_003: [The function shall return the deliveryTag in 8 big-endian bytes.]
+        byte[] encoded = new byte[DELIVERY_TAG_SIZE_IN_BYTES];
+        for (int i = DELIVERY_TAG_SIZE_IN_BYTES - 1; i >= 0; i--)
+        {
+            encoded[i] = (byte)deliveryTag;
+            deliveryTag >>>= 8;
+        }
+        return encoded;
+    }
+
+    /**
+     * Decodes the number of a delivery tag.
+     *
+     * @param encoded the delivery tag of a delivery.
+     * @return the number of the delivery tag, or {@link #INVALID_DELIVERY_TAG} if the delivery tag was not created by {@link #encode(long)}.
+     */
+    public static long decode(byte[] encoded)
+    {
+        if ((encoded == null) || (encoded.length != DELIVERY_TAG_SIZE_IN_BYTES))
+        {
+            // Codes_SRS_AMQPSDELIVERYTAG_28_004: [If the encoded delivery tag is null or is not 8 bytes long, the function shall return INVALID_DELIVERY_TAG.]
+            return INVALID_DELIVERY_TAG;
+        }
+
+        // Codes_SRS_AMQPSDELIVERYTAG_28_005: [The function shall return the number encoded in the 8 big-endian bytes, or INVALID_DELIVERY_TAG if it is negative.]
+        long deliveryTag = 0;
+        for (int i = 0; i < DELIVERY_TAG_SIZE_IN_BYTES; i++)
+        {
+            deliveryTag = (deliveryTag << 8) | (encoded[i] & 0xFF);
+        }
+        return (deliveryTag < 0) ? INVALID_DELIVERY_TAG : deliveryTag;
+    }
+}
@@ -92,31 +92,45 @@ public final class AmqpsDeviceAuthenticationCBS extends AmqpsDeviceAuthenticatio
             // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_005: [If there is no message in the queue to send the function shall do nothing.]
             while (!this.waitingMessages.isEmpty())
             {
-                byte[] msgData = new byte[1024];
                 int length;
 
                 // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_006: [The function shall read the message from the queue.]
                 MessageImpl outgoingMessage = this.waitingMessages.remove();
 
-                while (true)
+                // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_28_001: [The function shall take the buffer from the buffer pool, and release it once the message is sent.]
+                byte[] msgData = this.bufferPool.acquire(0);
+                try
                 {
-                    try
+                    while (true)
                     {
-                        // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_007: [The function shall encode the message to a buffer.]
-                        length = outgoingMessage.encode(msgData, 0, msgData.length);
-                        break;
+                        try
+                        {
+                            // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_007: [The function shall encode the message to a buffer.]
+                            length = outgoingMessage.encode(msgData, 0, msgData.length);
+                            break;
+                        }
+                        catch (BufferOverflowException e)
+                        {
+                            // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_008: [The function shall double the buffer if encode throws BufferOverflowException.]
+                            int size = msgData.length * 2;
+                            this.bufferPool.release(msgData);
+                            msgData = null;
+                            msgData = this.bufferPool.acquire(size);
+                        }
                     }
-                    catch (BufferOverflowException e)
+                    // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_009: [The function shall set the delivery tag for the sender.]
+                    byte[] deliveryTag = String.valueOf(this.nextTag++).getBytes();
+
+                    // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_010: [The function shall call the super class sendMessageAndGetDeliveryHash.]
+                    this.sendMessageAndGetDeliveryHash(MessageType.CBS_AUTHENTICATION, msgData, 0, length, deliveryTag);
+                }
+                finally
+                {
+                    if (msgData != null)
                     {
-                        // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_008: [The function shall double the buffer if encode throws BufferOverflowException.]
-                        msgData = new byte[msgData.length * 2];
+                        this.bufferPool.release(msgData);
                     }
                 }
-                // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_009: [The function shall set the delivery tag for the sender.]
-                byte[] deliveryTag = String.valueOf(this.nextTag++).getBytes();
-
-                // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_010: [The function shall call the super class sendMessageAndGetDeliveryHash.]
-                this.sendMessageAndGetDeliveryHash(MessageType.CBS_AUTHENTICATION, msgData, 0, length, deliveryTag);
             }
         }
     }
@@ -316,11 +316,13 @@ public final class AmqpsDeviceMethods extends AmqpsDeviceOperations
         outgoingMessage.setProperties(properties);
 
         // Codes_SRS_AMQPSDEVICEMETHODS_12_032: [The function shall copy the user properties to Proton message application properties excluding the reserved property names.]
-        int propertiesLength = deviceMethodMessage.getProperties().length;
+        // Codes_SRS_AMQPSDEVICEMETHODS_28_001: [The function shall read the user properties from the property map of the message, without copying them.]
+        MessagePropertyMap messageProperties = deviceMethodMessage.getPropertyMap();
+        int propertiesLength = messageProperties.size();
         Map<String, Object> userProperties = new HashMap<>(propertiesLength);
         if (propertiesLength > 0)
         {
-            for(MessageProperty messageProperty : deviceMethodMessage.getProperties())
+            for(MessageProperty messageProperty : messageProperties)
             {
                 if (!MessageProperty.RESERVED_PROPERTY_NAMES.contains(messageProperty.getName()))
                 {
@@ -49,6 +49,9 @@ public class AmqpsDeviceOperations
     protected Sender senderLink;
     protected Receiver receiverLink;
 
+    /** The pool of the buffers that the messages are encoded into and decoded from. */
+    protected AmqpsBufferPool bufferPool = new AmqpsBufferPool();
+
     /**
      * This constructor creates an instance of device operation class and initializes member variables
      */
@@ -79,6 +82,24 @@ public class AmqpsDeviceOperations
         this.amqpsRecvLinkState = AmqpsDeviceOperationLinkState.CLOSED;
     }
 
+    /**
+     * Setter for the buffer pool of the connection.
+     *
+     * @param bufferPool the pool of the buffers that the messages are encoded into and decoded from.
+     * @throws IllegalArgumentException if bufferPool is null.
+     */
+    void setBufferPool(AmqpsBufferPool bufferPool) throws IllegalArgumentException
+    {
+        if (bufferPool == null)
+        {
+            // Codes_SRS_AMQPSDEVICEOPERATIONS_28_001: [The function shall throw IllegalArgumentException if the bufferPool is null.]
+            throw new IllegalArgumentException("bufferPool cannot be null.");
+        }
+
+        // Codes_SRS_AMQPSDEVICEOPERATIONS_28_002: [The function shall save the bufferPool, which the messages are decoded from.]
+        this.bufferPool = bufferPool;
+    }
+
     /**
      * Opens receiver and sender link
      * @param session The session where the links shall be created
@@ -306,19 +327,27 @@ public class AmqpsDeviceOperations
                     if ((delivery != null) && delivery.isReadable() && !delivery.isPartial())
                     {
                         // Codes_SRS_AMQPSDEVICEOPERATIONS_12_034: [The function shall read the full message into a buffer.]
+                        // Codes_SRS_AMQPSDEVICEOPERATIONS_28_003: [The function shall read the message into a buffer of the buffer pool, and release the buffer once the message is decoded.]
                         int size = delivery.pending();
-                        byte[] buffer = new byte[size];
-                        int read = this.receiverLink.recv(buffer, 0, buffer.length);
-
-                        // Codes_SRS_AMQPSDEVICEOPERATIONS_12_035: [The function shall advance the receiver link.]
-                        this.receiverLink.advance();
-
-                        // Codes_SRS_AMQPSDEVICEOPERATIONS_12_038: [The function shall create a Proton message from the received buffer and return with it.]
-                        AmqpsMessage amqpsMessage = new AmqpsMessage();
-                        amqpsMessage.setDelivery(delivery);
-                        amqpsMessage.decode(buffer, 0, read);
-
-                        return amqpsMessage;
+                        byte[] buffer = this.bufferPool.acquire(size);
+                        try
+                        {
+                            int read = this.receiverLink.recv(buffer, 0, size);
+
+                            // Codes_SRS_AMQPSDEVICEOPERATIONS_12_035: [The function shall advance the receiver link.]
+                            this.receiverLink.advance();
+
+                            // Codes_SRS_AMQPSDEVICEOPERATIONS_12_038: [The function shall create a Proton message from the received buffer and return with it.]
+                            AmqpsMessage amqpsMessage = new AmqpsMessage();
+                            amqpsMessage.setDelivery(delivery);
+                            amqpsMessage.decode(buffer, 0, read);
+
+                            return amqpsMessage;
+                        }
+                        finally
+                        {
+                            this.bufferPool.release(buffer);
+                        }
                     }
                     else
                     {
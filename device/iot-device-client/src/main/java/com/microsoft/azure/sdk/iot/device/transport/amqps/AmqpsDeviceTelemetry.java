@@ -4,6 +4,7 @@
 package com.microsoft.azure.sdk.iot.device.transport.amqps;
 
 import com.microsoft.azure.sdk.iot.device.*;
+import com.microsoft.azure.sdk.iot.device.transport.TransportUtils;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.Binary;
 import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
@@ -298,10 +299,12 @@ public final class AmqpsDeviceTelemetry extends AmqpsDeviceOperations
         outgoingMessage.setProperties(properties);
 
         // Codes_SRS_AMQPSDEVICETELEMETRY_12_017: [The function shall copy the user properties to Proton message application properties excluding the reserved property names.]
-        if (message.getProperties().length > 0)
+        // Codes_SRS_AMQPSDEVICETELEMETRY_28_002: [The function shall read the user properties from the property map of the message, without copying them.]
+        MessagePropertyMap messageProperties = message.getPropertyMap();
+        if (messageProperties.size() > 0)
         {
-            Map<String, String> userProperties = new HashMap<>(message.getProperties().length);
-            for(MessageProperty messageProperty : message.getProperties())
+            Map<String, String> userProperties = new HashMap<>(messageProperties.size());
+            for(MessageProperty messageProperty : messageProperties)
             {
                 if (!MessageProperty.RESERVED_PROPERTY_NAMES.contains(messageProperty.getName()))
                 {
@@ -328,7 +331,9 @@ public final class AmqpsDeviceTelemetry extends AmqpsDeviceOperations
         }
 
         // Codes_SRS_AMQPSDEVICETELEMETRY_12_023: [The function shall set the proton message body using the IotHubTransportMessage body.]
-        Binary binary = new Binary(message.getBytes());
+        // Codes_SRS_AMQPSDEVICETELEMETRY_28_001: [The function shall copy the bytes of the message body into the proton message body, or use an empty body if the message has none.]
+        ByteBuffer body = message.getBodyBuffer();
+        Binary binary = new Binary((body == null) ? new byte[0] : TransportUtils.toByteArray(body));
         Section section = new Data(binary);
         outgoingMessage.setBody(section);
         return outgoingMessage;
@@ -381,11 +381,13 @@ public final class AmqpsDeviceTwin extends AmqpsDeviceOperations
         outgoingMessage.setProperties(properties);
 
         // Codes_SRS_AMQPSDEVICETWIN_12_032: [The function shall copy the user properties to Proton message application properties excluding the reserved property names.]
-        int propertiesLength = deviceTwinMessage.getProperties().length;
+        // Codes_SRS_AMQPSDEVICETWIN_28_001: [The function shall read the user properties from the property map of the message, without copying them.]
+        MessagePropertyMap messageProperties = deviceTwinMessage.getPropertyMap();
+        int propertiesLength = messageProperties.size();
         Map<String, Object> userProperties = new HashMap<>(propertiesLength);
         if (propertiesLength > 0)
         {
-            for(MessageProperty messageProperty : deviceTwinMessage.getProperties())
+            for(MessageProperty messageProperty : messageProperties)
             {
                 if (!MessageProperty.RESERVED_PROPERTY_NAMES.contains(messageProperty.getName()))
                 {
@@ -0,0 +1,217 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The messages sent over AMQP that are waiting for the service to settle them,
+ * keyed by the number of their delivery tag.
+ *
+ * The table uses open addressing on a primitive {@code long} key array, so
+ * tracking a message does not box its delivery tag, and two delivery tags
+ * never collide on the same entry. The table doubles when it is half full.
+ */
+public final class AmqpsInFlightDeliveries
+{
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long EMPTY_KEY = -1;
+
+    private long[] keys;
+    private IotHubOutboundPacket[] values;
+    private int size;
+
+    /**
+     * Constructor. Creates an empty table.
+     */
+    public AmqpsInFlightDeliveries()
+    {
+        // Codes_SRS_AMQPSINFLIGHTDELIVERIES_28_001: [The constructor shall create an empty table.]
+        this.allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Tracks a message until its delivery is settled.
+     *
+     * @param deliveryTag the number of the delivery tag of the message.
+     * @param packet the message.
+     * @throws IllegalArgumentException if the delivery tag is negative or the packet is null.
+     */
+    public synchronized void put(long deliveryTag, IotHubOutboundPacket packet) throws IllegalArgumentException
+    {
+        if ((deliveryTag < 0) || (packet == null))
+        {
+            // Codes_SRS_AMQPSINFLIGHTDELIVERIES_28_002: [If the deliveryTag is negative or the packet is null, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("deliveryTag cannot be negative and packet cannot be null");
+        }
+
+        // Codes_SRS_AMQPSINFLIGHTDELIVERIES_28_003: [The function shall store the packet for the deliveryTag, replacing the packet previously stored for it, if any.]
+        int index = this.indexOf(deliveryTag);
+        if (this.keys[index] == EMPTY_KEY)
+        {
+            this.keys[index] = deliveryTag;
+            this.size++;
+        }
+        this.values[index] = packet;
+
+        if (this.size * 2 > this.keys.length)
+        {
+            // Codes_SRS_AMQPSINFLIGHTDELIVERIES_28_004: [If the table is more than half full, the function shall double its capacity.]
+            this.resize(this.keys.length * 2);
+        }
+    }
+
+    /**
+     * Stops tracking a message.
+     *
+     * @param deliveryTag the number of the delivery tag of the message.
+     * @return the message, or {@code null} if no message is tracked for the delivery tag.
+     */
+    public synchronized IotHubOutboundPacket remove(long deliveryTag)
+    {
+        if (deliveryTag < 0)
+        {
+            // Codes_SRS_AMQPSINFLIGHTDELIVERIES_28_005: [If the deliveryTag is negative or is not in the table, the function shall return null.]
+            return null;
+        }
+
+        int index = this.indexOf(deliveryTag);
+        if (this.keys[index] == EMPTY_KEY)
+        {
+            // Codes_SRS_AMQPSINFLIGHTDELIVERIES_28_005: [If the deliveryTag is negative or is not in the table, the function shall return null.]
+            return null;
+        }
+
+        // Codes_SRS_AMQPSINFLIGHTDELIVERIES_28_006: [The function shall remove the deliveryTag from the table and return its packet.]
+        IotHubOutboundPacket packet = this.values[index];
+        this.deleteAt(index);
+        return packet;
+    }
+
+    /**
+     * Stops tracking all the messages.
+     *
+     * @return the messages, in the order of their delivery tags.
+     */
+    public synchronized List<IotHubOutboundPacket> removeAll()
+    {
+        // Codes_SRS_AMQPSINFLIGHTDELIVERIES_28_007: [The function shall remove all the packets from the table and return them in the order of their delivery tags.]
+        long[] deliveryTags = new long[this.size];
+        int count = 0;
+        for (long key : this.keys)
+        {
+            if (key != EMPTY_KEY)
+            {
+                deliveryTags[count++] = key;
+            }
+        }
+        Arrays.sort(deliveryTags);
+
+        List<IotHubOutboundPacket> packets = new ArrayList<>(count);
+        for (long deliveryTag : deliveryTags)
+        {
+            packets.add(this.values[this.indexOf(deliveryTag)]);
+        }
+
+        this.allocate(INITIAL_CAPACITY);
+        return packets;
+    }
+
+    /**
+     * Getter for the number of messages tracked.
+     *
+     * @return the number of messages waiting to be settled.
+     */
+    public synchronized int size()
+    {
+        // Codes_SRS_AMQPSINFLIGHTDELIVERIES_28_008: [The function shall return the number of packets in the table.]
+        return this.size;
+    }
+
+    /**
+     * Checks if no message is tracked.
+     *
+     * @return {@code true} if no message is waiting to be settled.
+     */
+    public synchronized boolean isEmpty()
+    {
+        // Codes_SRS_AMQPSINFLIGHTDELIVERIES_28_009: [The function shall return true if the table has no packet, and false otherwise.]
+        return this.size == 0;
+    }
+
+    private void allocate(int capacity)
+    {
+        this.keys = new long[capacity];
+        Arrays.fill(this.keys, EMPTY_KEY);
+        this.values = new IotHubOutboundPacket[capacity];
+        this.size = 0;
+    }
+
+    private void resize(int capacity)
+    {
+        long[] oldKeys = this.keys;
+        IotHubOutboundPacket[] oldValues = this.values;
+        this.allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldKeys[i] != EMPTY_KEY)
+            {
+                int index = this.indexOf(oldKeys[i]);
+                this.keys[index] = oldKeys[i];
+                this.values[index] = oldValues[i];
+                this.size++;
+            }
+        }
+    }
+
+    /**
+     * Finds the entry of the key, or the empty entry where the key belongs.
+     */
+    private int indexOf(long key)
+    {
+        int mask = this.keys.length - 1;
+        int index = slotOf(key, mask);
+        while ((this.keys[index] != EMPTY_KEY) && (this.keys[index] != key))
+        {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Empties the entry, and moves back the following entries of the same
+     * probe sequence, so the lookups never have to skip deleted entries.
+     */
+    private void deleteAt(int index)
+    {
+        int mask = this.keys.length - 1;
+        int next = (index + 1) & mask;
+        while (this.keys[next] != EMPTY_KEY)
+        {
+            int slot = slotOf(this.keys[next], mask);
+            // Move the entry back if its slot is not between the hole and the entry, cyclically.
+            if (((next - slot) & mask) >= ((next - index) & mask))
+            {
+                this.keys[index] = this.keys[next];
+                this.values[index] = this.values[next];
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.keys[index] = EMPTY_KEY;
+        this.values[index] = null;
+        this.size--;
+    }
+
+    private static int slotOf(long key, int mask)
+    {
+        // Consecutive delivery tags are spread over the table by the 64 bits golden ratio.
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int)(hash ^ (hash >>> 32)) & mask;
+    }
+}
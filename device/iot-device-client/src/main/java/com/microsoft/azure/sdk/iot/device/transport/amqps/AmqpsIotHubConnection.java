@@ -7,7 +7,7 @@ package com.microsoft.azure.sdk.iot.device.transport.amqps;
 import com.microsoft.azure.sdk.iot.deps.ws.impl.WebSocketImpl;
 import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.transport.State;
-import com.microsoft.azure.sdk.iot.device.transport.TransportUtils;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubReconnectScheduler;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.messaging.Accepted;
 import org.apache.qpid.proton.amqp.transport.DeliveryState;
@@ -61,7 +61,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
     private Reactor reactor;
 
     private Boolean reconnectCall = false;
-    private int currentReconnectionAttempt = 1;
+    private final IotHubReconnectScheduler reconnectScheduler;
     private CustomLogger logger;
 
 	public AmqpsSessionManager amqpsSessionManager;
@@ -107,6 +107,9 @@ public final class AmqpsIotHubConnection extends BaseHandler
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_002: [The constructor shall save the configuration into private member variables.]
         this.deviceClientConfig = config;
 
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_28_003: [The constructor shall create the reconnect scheduler of the connection with the configuration.]
+        this.reconnectScheduler = new IotHubReconnectScheduler(config);
+
         // Codes_SRS_AMQPSIOTHUBCONNECTION_12_017: [The constructor shall set the AMQP socket port using the configuration.]
         this.useWebSockets = this.deviceClientConfig.isUseWebsocket();
         if (useWebSockets)
@@ -125,7 +128,17 @@ public final class AmqpsIotHubConnection extends BaseHandler
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_005: [The constructor shall initialize a new FlowController
         // (Proton) object to handle communication flow.]
         add(new Handshaker());
-        add(new FlowController());
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_28_002: [If the config has a receive prefetch count, the FlowController
+        // shall give it as link credit, so the service can send that many messages before they are acknowledged.]
+        int receivePrefetchCount = this.deviceClientConfig.getReceivePrefetchCount();
+        if (receivePrefetchCount > 0)
+        {
+            add(new FlowController(receivePrefetchCount));
+        }
+        else
+        {
+            add(new FlowController());
+        }
 
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_006: [The constructor shall set its state to CLOSED.]
         this.state = State.CLOSED;
@@ -177,6 +190,9 @@ public final class AmqpsIotHubConnection extends BaseHandler
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_007: [If the AMQPS connection is already open, the function shall do nothing.]
         if(this.state == State.CLOSED)
         {
+            // Codes_SRS_AMQPSIOTHUBCONNECTION_28_004: [The function shall start the retries of the reconnect scheduler over.]
+            this.reconnectScheduler.reset();
+
             try
             {
                 // Codes_SRS_AMQPSIOTHUBCONNECTION_15_009: [The function shall trigger the Reactor (Proton) to begin running.]
@@ -288,6 +304,9 @@ public final class AmqpsIotHubConnection extends BaseHandler
      */
     public void close() throws IOException
     {
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_28_005: [The function shall cancel the pending attempt to reconnect, if any.]
+        this.reconnectScheduler.cancel();
+
         closeAsync();
 
         try
@@ -360,26 +379,26 @@ public final class AmqpsIotHubConnection extends BaseHandler
      * @param messageType the type of the message being sent
      * @param iotHubConnectionString the connection string to use for sender identification.
      * @throws IOException if send message fails
-     * @return An {@link Integer} representing the hash of the message, or -1 if the connection is closed.
+     * @return the delivery tag of the message, or -1 if the connection is closed.
      */
-    public synchronized Integer sendMessage(Message message, MessageType messageType, IotHubConnectionString iotHubConnectionString) throws IOException
+    public synchronized long sendMessage(Message message, MessageType messageType, IotHubConnectionString iotHubConnectionString) throws IOException
     {
-        Integer deliveryHash = -1;
+        long deliveryTag = AmqpsDeliveryTag.INVALID_DELIVERY_TAG;
 
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_015: [If the state of the connection is CLOSED or there is not enough
         // credit, the function shall return -1.]
         if (this.state == State.CLOSED || this.linkCredit <= 0)
         {
-            deliveryHash = -1;
+            deliveryTag = AmqpsDeliveryTag.INVALID_DELIVERY_TAG;
         }
         else
         {
             // Codes_SRS_AMQPSIOTHUBCONNECTION_12_024: [The function shall call AmqpsSessionManager.sendMessage with the given parameters.]
-            deliveryHash = this.amqpsSessionManager.sendMessage(message, messageType, iotHubConnectionString);
+            deliveryTag = this.amqpsSessionManager.sendMessage(message, messageType, iotHubConnectionString);
         }
 
-        // Codes_SRS_AMQPSIOTHUBCONNECTION_15_021: [The function shall return the delivery hash.]
-        return deliveryHash;
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_15_021: [The function shall return the delivery tag.]
+        return deliveryTag;
     }
 
     /**
@@ -473,17 +492,9 @@ public final class AmqpsIotHubConnection extends BaseHandler
 
         if (reconnectCall)
         {
-            // Codes_SRS_AMQPSIOTHUBCONNECTION_12_013: [The function shall call openAsync and disable reconnection if it is a reconnection attempt.]
+            // Codes_SRS_AMQPSIOTHUBCONNECTION_12_013: [The function shall disable reconnection and schedule a call to openAsync if it is a reconnection attempt.]
             reconnectCall = false;
-            try
-            {
-                openAsync();
-            }
-            catch (IOException e)
-            {
-                // Codes_SRS_AMQPSIOTHUBCONNECTION_12_014: [The function shall log the error if openAsync failed.]
-                logger.LogDebug("onReactorFinal has thrown exception: %s", e.getMessage());
-            }
+            scheduleReconnect();
         }
         logger.LogDebug("Exited from method %s", logger.getMethodName());
     }
@@ -541,6 +552,19 @@ public final class AmqpsIotHubConnection extends BaseHandler
         logger.LogDebug("Exited from method %s", logger.getMethodName());
     }
 
+    /**
+     * Event handler for the connection remote open event. Sizes the message buffers from the negotiated frame size.
+     * @param event The Proton Event object.
+     */
+    @Override
+    public void onConnectionRemoteOpen(Event event)
+    {
+        logger.LogDebug("Entered in method %s", logger.getMethodName());
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_28_001: [The event handler shall call the AmqpsSessionManager.onConnectionRemoteOpen with the transport.]
+        this.amqpsSessionManager.onConnectionRemoteOpen(event.getConnection().getTransport());
+        logger.LogDebug("Exited from method %s", logger.getMethodName());
+    }
+
     /**
      * Event handler for the connection unbound event. Sets the connection state to CLOSED.
      * @param event The Proton Event object.
@@ -591,14 +615,15 @@ public final class AmqpsIotHubConnection extends BaseHandler
                 Delivery d = event.getDelivery();
                 DeliveryState remoteState = d.getRemoteState();
 
-                // Codes_SRS_AMQPSIOTHUBCONNECTION_15_039: [The event handler shall note the remote delivery state and use it and the Delivery (Proton) hash code to inform the AmqpsIotHubConnection of the message receipt.]
+                // Codes_SRS_AMQPSIOTHUBCONNECTION_15_039: [The event handler shall note the remote delivery state and use it and the Delivery (Proton) delivery tag to inform the AmqpsIotHubConnection of the message receipt.]
                 boolean state = remoteState.equals(Accepted.getInstance());
+                long deliveryTag = AmqpsDeliveryTag.decode(d.getTag());
                 logger.LogInfo("Is state of remote Delivery COMPLETE ? %s, method name is %s ", state, logger.getMethodName());
                 logger.LogInfo("Inform listener that a message has been sent to IoT Hub along with remote state, method name is %s ", logger.getMethodName());
                 //let any listener know that the message was received by the server
                 for (ServerListener listener : listeners)
                 {
-                    listener.messageSent(d.hashCode(), state);
+                    listener.messageSent(deliveryTag, state);
                 }
                 // release the delivery object which created in sendMessage().
                 d.free();
@@ -658,6 +683,10 @@ public final class AmqpsIotHubConnection extends BaseHandler
         if (this.amqpsSessionManager.onLinkRemoteOpen(event))
         {
             this.state = State.OPEN;
+
+            // Codes_SRS_AMQPSIOTHUBCONNECTION_28_006: [When the connection is established, the retries of the reconnect scheduler shall start over.]
+            this.reconnectScheduler.reset();
+
             // Codes_SRS_AMQPSIOTHUBCONNECTION_99_001: [All server listeners shall be notified when that the connection has been established.]
             for(ServerListener listener : listeners)
             {
@@ -752,8 +781,8 @@ public final class AmqpsIotHubConnection extends BaseHandler
     }
 
     /**
-     * Notifies all listeners that the connection was lost and attempts to startReconnect to the IoTHub
-     * using an exponential backoff interval.
+     * Notifies all listeners that the connection was lost and closes the connection. The reactor final
+     * event then schedules the attempt to reopen it, so the Proton thread does not wait for it.
      */
     private void startReconnect()
     {
@@ -765,21 +794,48 @@ public final class AmqpsIotHubConnection extends BaseHandler
             listener.connectionLost();
         }
 
-        if (currentReconnectionAttempt == Integer.MAX_VALUE)
-            currentReconnectionAttempt = 0;
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_28_007: [The event handler shall close the connection without waiting for the delay of the next attempt to reconnect.]
+        closeAsync();
+    }
 
-        System.out.println("Lost connection to the server. Reconnection attempt " + currentReconnectionAttempt++ + "...");
-        logger.LogInfo("Lost connection to the server. Reconnection attempt %s, method name is %s ", currentReconnectionAttempt, logger.getMethodName());
-        try
+    /**
+     * Schedules the next attempt to reopen the connection, unless the retry policy stopped reconnecting.
+     */
+    private void scheduleReconnect()
+    {
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_28_008: [The attempt to reopen the connection shall run on the reconnect scheduler, after the delay of the retry policy.]
+        boolean scheduled = this.reconnectScheduler.schedule(new Runnable()
         {
-            Thread.sleep(TransportUtils.generateSleepInterval(currentReconnectionAttempt));
-        }
-        catch (InterruptedException e)
+            @Override
+            public void run()
+            {
+                if (reconnectScheduler.isCancelled())
+                {
+                    // Codes_SRS_AMQPSIOTHUBCONNECTION_28_011: [If the connection was closed since the attempt was scheduled, the attempt shall do nothing.]
+                    return;
+                }
+
+                logger.LogInfo("Lost connection to the server. Reconnection attempt %s, method name is %s ", reconnectScheduler.getCurrentRetryCount(), logger.getMethodName());
+                try
+                {
+                    openAsync();
+                }
+                catch (IOException e)
+                {
+                    // Codes_SRS_AMQPSIOTHUBCONNECTION_12_014: [The function shall log the error if openAsync failed.]
+                    logger.LogDebug("onReactorFinal has thrown exception: %s", e.getMessage());
+
+                    // Codes_SRS_AMQPSIOTHUBCONNECTION_28_009: [If openAsync failed, the next attempt shall be scheduled.]
+                    scheduleReconnect();
+                }
+            }
+        });
+
+        if (!scheduled)
         {
-            Thread.currentThread().interrupt();
+            // Codes_SRS_AMQPSIOTHUBCONNECTION_28_010: [If the retry policy stops reconnecting, or the connection is closed, no attempt shall be scheduled.]
+            logger.LogInfo("Stopped reconnecting after %s attempts, method name is %s ", this.reconnectScheduler.getCurrentRetryCount(), logger.getMethodName());
         }
-
-        closeAsync();
     }
 
     /**
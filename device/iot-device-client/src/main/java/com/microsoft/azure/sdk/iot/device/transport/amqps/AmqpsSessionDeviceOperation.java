@@ -6,9 +6,6 @@ import org.apache.qpid.proton.engine.*;
 import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 public class AmqpsSessionDeviceOperation
 {
@@ -19,13 +16,15 @@ public class AmqpsSessionDeviceOperation
 
     private ArrayList<AmqpsDeviceOperations> amqpsDeviceOperationsList = new ArrayList<>();;
 
-    private long nextTag = 0;
+    /** The device operation owning each sender and receiver link, by link name. */
+    private final Map<String, AmqpsDeviceOperations> amqpsDeviceOperationsByLinkName = new HashMap<>();
 
     private Integer openLock = new Integer(1);
 
     private long tokenRenewalPeriodInMillisecSecs = 4000; //45*60*100;
 
-    private ScheduledExecutorService taskSchedulerTokenRenewal;
+    private final AmqpsTokenRenewalScheduler tokenRenewalScheduler;
+    private boolean isRenewalCanceled = false;
     private AmqpsDeviceAuthenticationCBSTokenRenewalTask tokenRenewalTask = null;
 
     private static final int MAX_WAIT_TO_AUTHENTICATE = 10*1000;
@@ -33,13 +32,17 @@ public class AmqpsSessionDeviceOperation
 
     private List<UUID> cbsCorrelationIdList = Collections.synchronizedList(new ArrayList<UUID>());
 
+    private AmqpsBufferPool bufferPool = new AmqpsBufferPool();
+
     /**
      * Create logical device entity to handle all operation.
      *
      * @param deviceClientConfig the configuration of teh device.
      * @param amqpsDeviceAuthentication the authentication object associated with the device.
+     * @param tokenRenewalScheduler the scheduler shared by the devices of the connection to renew the CBS tokens.
+     *                              Can be {@code null} if the authentication type is not CBS.
      */
-    public AmqpsSessionDeviceOperation(final DeviceClientConfig deviceClientConfig, AmqpsDeviceAuthentication amqpsDeviceAuthentication)
+    public AmqpsSessionDeviceOperation(final DeviceClientConfig deviceClientConfig, AmqpsDeviceAuthentication amqpsDeviceAuthentication, AmqpsTokenRenewalScheduler tokenRenewalScheduler)
     {
         // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_001: [The constructor shall throw IllegalArgumentException if the deviceClientConfig or the amqpsDeviceAuthentication parameter is null.]
         if (deviceClientConfig == null)
@@ -50,16 +53,29 @@ public class AmqpsSessionDeviceOperation
         {
             throw new IllegalArgumentException("amqpsDeviceAuthentication cannot be null.");
         }
+        if ((deviceClientConfig.getAuthenticationType() == DeviceClientConfig.AuthType.CBS) && (tokenRenewalScheduler == null))
+        {
+            // Codes_SRS_AMQPSESSIONDEVICEOPERATION_28_001: [The constructor shall throw IllegalArgumentException if the authentication type is CBS and the tokenRenewalScheduler parameter is null.]
+            throw new IllegalArgumentException("tokenRenewalScheduler cannot be null for CBS authentication.");
+        }
 
         // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_002: [The constructor shall save the deviceClientConfig and amqpsDeviceAuthentication parameter value to a member variable.]
         this.deviceClientConfig = deviceClientConfig;
         this.amqpsDeviceAuthentication = amqpsDeviceAuthentication;
+        this.tokenRenewalScheduler = tokenRenewalScheduler;
 
         // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_003: [The constructor shall create AmqpsDeviceTelemetry, AmqpsDeviceMethods and AmqpsDeviceTwin and add them to the device operations list. ]
         this.amqpsDeviceOperationsList.add(new AmqpsDeviceTelemetry(this.deviceClientConfig));
         this.amqpsDeviceOperationsList.add(new AmqpsDeviceMethods(this.deviceClientConfig));
         this.amqpsDeviceOperationsList.add(new AmqpsDeviceTwin(this.deviceClientConfig));
 
+        // Codes_SRS_AMQPSESSIONDEVICEOPERATION_28_004: [The constructor shall index the device operations by the names of their sender and receiver links.]
+        for (AmqpsDeviceOperations amqpsDeviceOperations : this.amqpsDeviceOperationsList)
+        {
+            this.addLinkName(amqpsDeviceOperations.getSenderLinkTag(), amqpsDeviceOperations);
+            this.addLinkName(amqpsDeviceOperations.getReceiverLinkTag(), amqpsDeviceOperations);
+        }
+
         if (this.deviceClientConfig.getAuthenticationType() == DeviceClientConfig.AuthType.CBS)
         {
             // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_004: [The constructor shall set the authentication state to not authenticated if the authentication type is CBS.]
@@ -70,8 +86,8 @@ public class AmqpsSessionDeviceOperation
 
             // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_048: [The constructor saves the calculated renewal period if it is greater than zero.]
             // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_045: [The constructor shall create AmqpsDeviceAuthenticationCBSTokenRenewalTask if the authentication type is CBS.]
-            // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_046: [The constructor shall create and start a scheduler with the calculated renewal period for AmqpsDeviceAuthenticationCBSTokenRenewalTask if the authentication type is CBS.]
-            this.scheduleRenewalThread();
+            // Codes_SRS_AMQPSESSIONDEVICEOPERATION_28_002: [The constructor shall schedule the AmqpsDeviceAuthenticationCBSTokenRenewalTask with the calculated renewal period on the tokenRenewalScheduler if the authentication type is CBS.]
+            this.scheduleRenewal();
         }
         else
         {
@@ -80,17 +96,42 @@ public class AmqpsSessionDeviceOperation
         }
     }
 
+    /**
+     * Setter for the buffer pool of the connection, which the messages of the
+     * device are encoded into and decoded from.
+     *
+     * @param bufferPool the buffer pool of the connection.
+     * @throws IllegalArgumentException if bufferPool is null.
+     */
+    void setBufferPool(AmqpsBufferPool bufferPool) throws IllegalArgumentException
+    {
+        if (bufferPool == null)
+        {
+            // Codes_SRS_AMQPSESSIONDEVICEOPERATION_28_009: [The function shall throw IllegalArgumentException if the bufferPool is null.]
+            throw new IllegalArgumentException("bufferPool cannot be null.");
+        }
+
+        // Codes_SRS_AMQPSESSIONDEVICEOPERATION_28_010: [The function shall save the bufferPool and set it on all the device operation objects.]
+        this.bufferPool = bufferPool;
+        for (AmqpsDeviceOperations amqpsDeviceOperations : this.amqpsDeviceOperationsList)
+        {
+            amqpsDeviceOperations.setBufferPool(bufferPool);
+        }
+    }
+
     /**
      * Release all resources and close all links.
      */
     public void close()
     {
-        this.shutDownScheduler();
+        // Codes_SRS_AMQPSESSIONDEVICEOPERATION_28_003: [The function shall cancel the token renewal of the device.]
+        this.cancelRenewal();
         this.closeLinks();
 
         if (this.deviceClientConfig.getAuthenticationType() == DeviceClientConfig.AuthType.CBS)
         {
             this.amqpsAuthenticatorState = AmqpsDeviceAuthenticationState.NOT_AUTHENTICATED;
+            this.isRenewalCanceled = true;
         }
     }
 
@@ -107,15 +148,13 @@ public class AmqpsSessionDeviceOperation
         // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_006: [The function shall start the authentication if the authentication type is CBS.]
         if (this.deviceClientConfig.getAuthenticationType() == DeviceClientConfig.AuthType.CBS)
         {
-            // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_060: [The function shall create a new UUID and add it to the correlationIdList if the authentication type is CBS.]
-            UUID correlationId = UUID.randomUUID();
-            synchronized (this.cbsCorrelationIdList)
+            if (this.isRenewalCanceled)
             {
-                // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_061: [The function shall use the correlationID to call authenticate on the authentication object if the authentication type is CBS.]
-                cbsCorrelationIdList.add(correlationId);
+                // Codes_SRS_AMQPSESSIONDEVICEOPERATION_28_012: [If the token renewal was canceled by close, the function shall schedule the token renewal again if the authentication type is CBS.]
+                this.scheduleRenewal();
             }
 
-            this.amqpsDeviceAuthentication.authenticate(this.deviceClientConfig, correlationId);
+            UUID correlationId = this.sendAuthenticationMessage();
             synchronized (this.authenticationLock)
             {
                 // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_005: [The function shall set the authentication state to not authenticated if the authentication type is CBS.]
@@ -155,10 +194,15 @@ public class AmqpsSessionDeviceOperation
             this.deviceClientConfig.getSasTokenAuthentication().getRenewedSasToken();
 
             // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_052: [The function shall restart the scheduler with the calculated renewal period if the authentication type is CBS.]
-            if (scheduleRenewalThread())
+            if (scheduleRenewal())
             {
                 // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_051: [The function start the authentication with the new token.]
-                authenticate();
+                this.sendAuthenticationMessage();
+                synchronized (this.authenticationLock)
+                {
+                    // Codes_SRS_AMQPSESSIONDEVICEOPERATION_28_013: [The function shall set the authentication state to authenticating and return without waiting for the authentication message reply, so the renewals of the other devices are not delayed.]
+                    this.amqpsAuthenticatorState = AmqpsDeviceAuthenticationState.AUTHENTICATING;
+                }
             }
         }
     }
@@ -247,10 +291,11 @@ public class AmqpsSessionDeviceOperation
         {
             if (this.amqpsAuthenticatorState == AmqpsDeviceAuthenticationState.AUTHENTICATED)
             {
-                for (int i = 0; i < this.amqpsDeviceOperationsList.size(); i++)
+                // Codes_SRS_AMQPSESSIONDEVICEOPERATION_28_005: [The function shall call initLink on the device operation that owns the link, if any.]
+                AmqpsDeviceOperations amqpsDeviceOperations = this.findDeviceOperations(link.getName());
+                if (amqpsDeviceOperations != null)
                 {
-                    // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_011: [The function shall call initLink on all device operations.**]**]
-                    this.amqpsDeviceOperationsList.get(i).initLink(link);
+                    amqpsDeviceOperations.initLink(link);
                 }
             }
         }
@@ -266,9 +311,9 @@ public class AmqpsSessionDeviceOperation
      * @param iotHubConnectionString the deviceconnection string to
      *                               find the sender.
      *
-     * @return Integer
+     * @return the delivery tag of the message, or -1 if it was not sent.
      */
-    Integer sendMessage(org.apache.qpid.proton.message.Message message, MessageType messageType, IotHubConnectionString iotHubConnectionString) throws IOException
+    long sendMessage(org.apache.qpid.proton.message.Message message, MessageType messageType, IotHubConnectionString iotHubConnectionString) throws IOException
     {
         // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_012: [The function shall return -1 if the state is not authenticated.]
         if (this.amqpsAuthenticatorState == AmqpsDeviceAuthenticationState.AUTHENTICATED)
@@ -277,37 +322,52 @@ public class AmqpsSessionDeviceOperation
             if (this.deviceClientConfig.getDeviceId() == iotHubConnectionString.getDeviceId())
             {
                 // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_014: [The function shall encode the message and copy the contents to the byte buffer.]
-                byte[] msgData = new byte[1024];
-                int length;
-
-                while (true)
+                // Codes_SRS_AMQPSESSIONDEVICEOPERATION_28_011: [The function shall take the buffer from the buffer pool, and release it once the message is sent.]
+                byte[] msgData = this.bufferPool.acquire(0);
+                try
                 {
-                    try
+                    int length;
+
+                    while (true)
                     {
-                        length = message.encode(msgData, 0, msgData.length);
-                        break;
+                        try
+                        {
+                            length = message.encode(msgData, 0, msgData.length);
+                            break;
+                        }
+                        catch (BufferOverflowException e)
+                        {
+                            // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_015: [The function shall doubles the buffer if encode throws BufferOverflowException.]
+                            int size = msgData.length * 2;
+                            this.bufferPool.release(msgData);
+                            msgData = null;
+                            msgData = this.bufferPool.acquire(size);
+                        }
                     }
-                    catch (BufferOverflowException e)
+                    // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_017: [The function shall set the delivery tag for the sender.]
+                    // Codes_SRS_AMQPSESSIONDEVICEOPERATION_28_008: [The delivery tag shall be the next number of the delivery tag sequence, encoded by AmqpsDeliveryTag.]
+                    long deliveryTag = AmqpsDeliveryTag.next();
+
+                    // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_018: [The function shall call sendMessageAndGetDeliveryHash on all device operation objects.]
+                    // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_019: [The function shall return the delivery tag if a device operation object sent the message, and -1 otherwise.]
+                    return this.sendMessageAndGetDeliveryTag(messageType, msgData, 0, length, deliveryTag);
+                }
+                finally
+                {
+                    if (msgData != null)
                     {
-                        // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_015: [The function shall doubles the buffer if encode throws BufferOverflowException.]
-                        msgData = new byte[msgData.length * 2];
+                        this.bufferPool.release(msgData);
                     }
                 }
-                // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_017: [The function shall set the delivery tag for the sender.]
-                byte[] deliveryTag = String.valueOf(this.nextTag++).getBytes();
-
-                // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_018: [The function shall call sendMessageAndGetDeliveryHash on all device operation objects.]
-                // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_019: [The function shall return the delivery hash.]
-                return this.sendMessageAndGetDeliveryHash(messageType, msgData, 0, length, deliveryTag);
             }
             else
             {
-                return -1;
+                return AmqpsDeliveryTag.INVALID_DELIVERY_TAG;
             }
         }
         else
         {
-            return -1;
+            return AmqpsDeliveryTag.INVALID_DELIVERY_TAG;
         }
     }
 
@@ -320,25 +380,25 @@ public class AmqpsSessionDeviceOperation
      * @param msgData the binary content of the message.
      * @param offset the start index to read the binary.
      * @param length the length of the binary to read.
-     * @param deliveryTag the message delivery tag.
+     * @param deliveryTag the number of the message delivery tag.
      * 
-     * @return Integer 
+     * @return the delivery tag if the message was sent, otherwise -1.
      */
-    private Integer sendMessageAndGetDeliveryHash(MessageType messageType, byte[] msgData, int offset, int length, byte[] deliveryTag) throws IllegalStateException, IllegalArgumentException, IOException
+    private long sendMessageAndGetDeliveryTag(MessageType messageType, byte[] msgData, int offset, int length, long deliveryTag) throws IllegalStateException, IllegalArgumentException, IOException
     {
-        Integer deliveryHash = -1;
+        byte[] encodedDeliveryTag = AmqpsDeliveryTag.encode(deliveryTag);
 
         for (int i = 0; i < this.amqpsDeviceOperationsList.size(); i++)
         {
             AmqpsSendReturnValue amqpsSendReturnValue = null;
-            amqpsSendReturnValue = this.amqpsDeviceOperationsList.get(i).sendMessageAndGetDeliveryHash(messageType, msgData, 0, length, deliveryTag);
+            amqpsSendReturnValue = this.amqpsDeviceOperationsList.get(i).sendMessageAndGetDeliveryHash(messageType, msgData, 0, length, encodedDeliveryTag);
             if (amqpsSendReturnValue.isDeliverySuccessful())
             {
-                return amqpsSendReturnValue.getDeliveryHash();
+                return deliveryTag;
             }
         }
 
-        return deliveryHash;
+        return AmqpsDeliveryTag.INVALID_DELIVERY_TAG;
     }
 
     /**
@@ -394,13 +454,11 @@ public class AmqpsSessionDeviceOperation
         else
         {
             // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_057: [If the state is other than authenticating the function shall try to read the message from the device operation objects.]
-            for (int i = 0; i < this.amqpsDeviceOperationsList.size(); i++)
+            // Codes_SRS_AMQPSESSIONDEVICEOPERATION_28_006: [The function shall only read the message from the device operation that owns the link, and return null if there is none.]
+            AmqpsDeviceOperations amqpsDeviceOperations = this.findDeviceOperations(linkName);
+            if (amqpsDeviceOperations != null)
             {
-                amqpsMessage = this.amqpsDeviceOperationsList.get(i).getMessageFromReceiverLink(linkName);
-                if (amqpsMessage != null)
-                {
-                    break;
-                }
+                amqpsMessage = amqpsDeviceOperations.getMessageFromReceiverLink(linkName);
             }
         }
 
@@ -419,17 +477,26 @@ public class AmqpsSessionDeviceOperation
         // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_024: [The function shall return true if any of the operation's link name is a match and return false otherwise.]
         if (this.amqpsAuthenticatorState == AmqpsDeviceAuthenticationState.AUTHENTICATED)
         {
-            for (int i = 0; i < this.amqpsDeviceOperationsList.size(); i++)
+            AmqpsDeviceOperations amqpsDeviceOperations = this.findDeviceOperations(linkName);
+            if (amqpsDeviceOperations != null)
             {
-                if (this.amqpsDeviceOperationsList.get(i).isLinkFound(linkName))
-                {
-                    return true;
-                }
+                return amqpsDeviceOperations.isLinkFound(linkName);
             }
         }
         return false;
     }
 
+    /**
+     * Getter for the names of the sender and receiver links of the device operations.
+     *
+     * @return the link names.
+     */
+    Set<String> getLinkNames()
+    {
+        // Codes_SRS_AMQPSESSIONDEVICEOPERATION_28_007: [The function shall return the names of the sender and receiver links of all device operations.]
+        return Collections.unmodifiableSet(this.amqpsDeviceOperationsByLinkName.keySet());
+    }
+
     /**
      * Convert from IoTHub message to Proton using operation 
      * specific converter. 
@@ -491,23 +558,39 @@ public class AmqpsSessionDeviceOperation
     }
 
     /**
-     * Restart the renewal thread
+     * Send the CBS authentication message with the current token, without
+     * waiting for its reply.
      *
-     * @return true is the renewal is successful
+     * @return the correlation ID of the authentication message.
+     * @throws IOException throw if Proton operation throws.
      */
-    private Boolean scheduleRenewalThread()
+    private UUID sendAuthenticationMessage() throws IOException
+    {
+        // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_060: [The function shall create a new UUID and add it to the correlationIdList if the authentication type is CBS.]
+        UUID correlationId = UUID.randomUUID();
+        synchronized (this.cbsCorrelationIdList)
+        {
+            // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_061: [The function shall use the correlationID to call authenticate on the authentication object if the authentication type is CBS.]
+            cbsCorrelationIdList.add(correlationId);
+        }
+
+        this.amqpsDeviceAuthentication.authenticate(this.deviceClientConfig, correlationId);
+        return correlationId;
+    }
+
+    /**
+     * Schedule the token renewal with the renewal period of the current token.
+     *
+     * @return true is the renewal is scheduled
+     */
+    private Boolean scheduleRenewal()
     {
         long renewalPeriod = calculateRenewalTimeInMilliSecs(this.deviceClientConfig.getSasTokenAuthentication().getTokenValidSecs());
         if (renewalPeriod > 0)
         {
-            shutDownScheduler();
-            if (this.taskSchedulerTokenRenewal == null)
-            {
-                this.taskSchedulerTokenRenewal = Executors.newScheduledThreadPool(1);
-            }
-
             this.tokenRenewalPeriodInMillisecSecs = renewalPeriod;
-            this.taskSchedulerTokenRenewal.scheduleAtFixedRate(this.tokenRenewalTask, 0, tokenRenewalPeriodInMillisecSecs, TimeUnit.MILLISECONDS);
+            this.tokenRenewalScheduler.schedule(this.tokenRenewalTask, this.tokenRenewalPeriodInMillisecSecs);
+            this.isRenewalCanceled = false;
 
             return true;
         }
@@ -515,30 +598,38 @@ public class AmqpsSessionDeviceOperation
     }
 
     /**
-     * Shut down the renewal thread
+     * Index the device operation by the given link name.
+     *
+     * @param linkName the name of the link owned by the device operation.
+     * @param amqpsDeviceOperations the device operation.
+     */
+    private void addLinkName(String linkName, AmqpsDeviceOperations amqpsDeviceOperations)
+    {
+        if (linkName != null)
+        {
+            this.amqpsDeviceOperationsByLinkName.put(linkName, amqpsDeviceOperations);
+        }
+    }
+
+    /**
+     * Find the device operation that owns the link.
+     *
+     * @param linkName the name of the link.
+     * @return the device operation, or null if no device operation owns the link.
      */
-    private void shutDownScheduler()
+    private AmqpsDeviceOperations findDeviceOperations(String linkName)
     {
-        if (this.taskSchedulerTokenRenewal  != null)
+        return (linkName == null) ? null : this.amqpsDeviceOperationsByLinkName.get(linkName);
+    }
+
+    /**
+     * Cancel the token renewal of the device
+     */
+    private void cancelRenewal()
+    {
+        if ((this.tokenRenewalScheduler != null) && (this.tokenRenewalTask != null))
         {
-            taskSchedulerTokenRenewal.shutdown(); // Disable new tasks from being submitted
-            try
-            {
-                // Wait a while for existing tasks to terminate
-                if (!taskSchedulerTokenRenewal.awaitTermination(60, TimeUnit.SECONDS))
-                {
-                    taskSchedulerTokenRenewal.shutdownNow(); // Cancel currently executing tasks
-                    // Wait a while for tasks to respond to being cancelled
-                    if (!taskSchedulerTokenRenewal.awaitTermination(60, TimeUnit.SECONDS)) System.err.println("taskSchedulerTokenRenewal did not terminate correctly");
-                }
-            }
-            catch (InterruptedException ie)
-            {
-                // (Re-)Cancel if current thread also interrupted
-                taskSchedulerTokenRenewal.shutdownNow();
-                // Preserve interrupt status
-                Thread.currentThread().interrupt();
-            }
+            this.tokenRenewalScheduler.cancel(this.tokenRenewalTask);
         }
     }
 
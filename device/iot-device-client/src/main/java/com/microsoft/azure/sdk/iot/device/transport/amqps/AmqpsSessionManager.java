@@ -7,6 +7,8 @@ import com.microsoft.azure.sdk.iot.device.ObjectLock;
 import org.apache.qpid.proton.engine.*;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.*;
 
 
@@ -23,14 +25,24 @@ public class AmqpsSessionManager
     private AmqpsDeviceAuthentication amqpsDeviceAuthentication;
     private ArrayList<AmqpsSessionDeviceOperation> amqpsDeviceSessionList = new ArrayList<>();
 
+    /** The device session owning each open link, by link name. */
+    private final ConcurrentMap<String, AmqpsSessionDeviceOperation> amqpsDeviceSessionsByLinkName = new ConcurrentHashMap<>();
+
+    /** The device session of each device, by device id. */
+    private final ConcurrentMap<String, AmqpsSessionDeviceOperation> amqpsDeviceSessionsByDeviceId = new ConcurrentHashMap<>();
+
     private long SEND_PERIOD_MILLISECONDS = 300;
     private ScheduledExecutorService taskSchedulerCBSSend;
     private AmqpsDeviceAuthenticationCBSSendTask cbsAuthSendTask = null;
+    private AmqpsTokenRenewalScheduler tokenRenewalScheduler = null;
 
     private static final int MAX_WAIT_TO_AUTHENTICATE_MS = 10*1000;
 
     private final ObjectLock openLinksLock = new ObjectLock();
 
+    /** The buffers that the messages of all the devices of the connection are encoded into and decoded from. */
+    private final AmqpsBufferPool bufferPool = new AmqpsBufferPool();
+
     /**
      * Constructor that takes a device configuration.
      * 
@@ -64,12 +76,21 @@ public class AmqpsSessionManager
                 this.taskSchedulerCBSSend = Executors.newScheduledThreadPool(2);
                 this.taskSchedulerCBSSend.scheduleAtFixedRate(this.cbsAuthSendTask, 0, SEND_PERIOD_MILLISECONDS, TimeUnit.MILLISECONDS);
 
+                // Codes_SRS_AMQPSESSIONMANAGER_28_001: [The constructor shall create the token renewal scheduler shared by all the devices if the authentication type is CBS.]
+                this.tokenRenewalScheduler = new AmqpsTokenRenewalScheduler();
+
                 break;
             case X509_CERTIFICATE:
                 this.amqpsDeviceAuthentication = new AmqpsDeviceAuthenticationX509(this.deviceClientConfig);
                 break;
         }
 
+        if (this.amqpsDeviceAuthentication != null)
+        {
+            // Codes_SRS_AMQPSESSIONMANAGER_28_013: [The constructor shall set the buffer pool of the connection on the authentication object.]
+            this.amqpsDeviceAuthentication.setBufferPool(this.bufferPool);
+        }
+
         // Codes_SRS_AMQPSESSIONMANAGER_12_007: [The constructor shall add the create a AmqpsSessionDeviceOperation with the given deviceClientConfig.]
         this.addDeviceOperationSession(this.deviceClientConfig);
     }
@@ -87,9 +108,49 @@ public class AmqpsSessionManager
             throw new IllegalArgumentException("deviceClientConfig cannot be null.");
         }
 
+        // Codes_SRS_AMQPSESSIONMANAGER_28_015: [The function shall remove the device session already registered for the device id, if any.]
+        String deviceId = deviceClientConfig.getDeviceId();
+        if (deviceId != null)
+        {
+            this.removeDeviceOperationSession(deviceId);
+        }
+
         // Codes_SRS_AMQPSESSIONMANAGER_12_009: [The function shall create a new  AmqpsSessionDeviceOperation with the given deviceClietnConfig and add it to the session list.]
-        AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(deviceClientConfig, this.amqpsDeviceAuthentication);
+        AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(deviceClientConfig, this.amqpsDeviceAuthentication, this.tokenRenewalScheduler);
         this.amqpsDeviceSessionList.add(amqpsSessionDeviceOperation);
+
+        // Codes_SRS_AMQPSESSIONMANAGER_28_014: [The function shall set the buffer pool of the connection on the new AmqpsSessionDeviceOperation.]
+        amqpsSessionDeviceOperation.setBufferPool(this.bufferPool);
+
+        // Codes_SRS_AMQPSESSIONMANAGER_28_004: [The function shall index the new AmqpsSessionDeviceOperation by the device id.]
+        if (deviceId != null)
+        {
+            this.amqpsDeviceSessionsByDeviceId.put(deviceId, amqpsSessionDeviceOperation);
+        }
+    }
+
+    /**
+     * Unregister the given device from the manager.
+     *
+     * @param deviceId the id of the device to unregister.
+     */
+    void removeDeviceOperationSession(String deviceId)
+    {
+        // Codes_SRS_AMQPSESSIONMANAGER_28_016: [The function shall throw IllegalArgumentException if the deviceId parameter is null.]
+        if (deviceId == null)
+        {
+            throw new IllegalArgumentException("deviceId cannot be null.");
+        }
+
+        // Codes_SRS_AMQPSESSIONMANAGER_28_017: [The function shall remove the device session of the device id from the device id index, and do nothing else if there is none.]
+        AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = this.amqpsDeviceSessionsByDeviceId.remove(deviceId);
+        if (amqpsSessionDeviceOperation != null)
+        {
+            // Codes_SRS_AMQPSESSIONMANAGER_28_018: [The function shall remove the device session from the session list and from the link name index, then close it.]
+            this.amqpsDeviceSessionList.remove(amqpsSessionDeviceOperation);
+            this.amqpsDeviceSessionsByLinkName.values().removeAll(Collections.singleton(amqpsSessionDeviceOperation));
+            amqpsSessionDeviceOperation.close();
+        }
     }
 
     /**
@@ -111,6 +172,9 @@ public class AmqpsSessionManager
             }
         }
 
+        // Codes_SRS_AMQPSESSIONMANAGER_28_005: [The function shall remove all the links from the link name index.]
+        this.amqpsDeviceSessionsByLinkName.clear();
+
         // Codes_SRS_AMQPSESSIONMANAGER_12_011: [The function shall closeNow the authentication links.]
         this.amqpsDeviceAuthentication.closeLinks();
 
@@ -162,7 +226,7 @@ public class AmqpsSessionManager
                 if (this.amqpsDeviceSessionList.get(i) != null)
                 {
                     // Codes_SRS_AMQPSESSIONMANAGER_12_019: [The function shall call openLinks on all session list members.]
-                    this.amqpsDeviceSessionList.get(i).openLinks(this.session);
+                    this.openLinks(this.amqpsDeviceSessionList.get(i));
                     synchronized (this.openLinksLock)
                     {
                         try
@@ -207,7 +271,7 @@ public class AmqpsSessionManager
                 for (int i = 0; i < this.amqpsDeviceSessionList.size(); i++)
                 {
                     // Codes_SRS_AMQPSESSIONMANAGER_12_042: [The function shall call openLinks on all device sessions if the session is not null and the authentication is open.]
-                    this.amqpsDeviceSessionList.get(i).openLinks(this.session);
+                    this.openLinks(this.amqpsDeviceSessionList.get(i));
                 }
             }
             else
@@ -233,6 +297,21 @@ public class AmqpsSessionManager
         }
     }
 
+    /**
+     * Event handler for the remote open of the connection.
+     * Size the buffers of the connection from the negotiated frame size.
+     *
+     * @param transport the Proton transport object to work with.
+     */
+    void onConnectionRemoteOpen(Transport transport)
+    {
+        if (transport != null)
+        {
+            // Codes_SRS_AMQPSESSIONMANAGER_28_012: [The function shall set the size of the buffers of the connection to the maximum frame size of the remote peer.]
+            this.bufferPool.setBufferSize(transport.getRemoteMaxFrameSize());
+        }
+    }
+
     /**
      * Event handler for link initialization. 
      * If the manager is in opening state initialize the 
@@ -248,10 +327,12 @@ public class AmqpsSessionManager
         {
             if (this.isAuthenticationOpened())
             {
-                for (int i = 0; i < this.amqpsDeviceSessionList.size(); i++)
+                // Codes_SRS_AMQPSESSIONMANAGER_12_027: [The function shall call authentication initLink on all session list member if the authentication is open and the session is not null.]
+                // Codes_SRS_AMQPSESSIONMANAGER_28_006: [The function shall only call initLink on the device session that owns the link, if any.]
+                AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = this.findDeviceSession(link.getName());
+                if (amqpsSessionDeviceOperation != null)
                 {
-                    // Codes_SRS_AMQPSESSIONMANAGER_12_027: [The function shall call authentication initLink on all session list member if the authentication is open and the session is not null.]
-                    this.amqpsDeviceSessionList.get(i).initLink(link);
+                    amqpsSessionDeviceOperation.initLink(link);
                 }
             }
             else
@@ -280,19 +361,17 @@ public class AmqpsSessionManager
         String linkName = event.getLink().getName();
         if (this.isAuthenticationOpened())
         {
-            for (int i = 0; i < this.amqpsDeviceSessionList.size(); i++)
+            // Codes_SRS_AMQPSESSIONMANAGER_28_011: [The function shall only call isLinkFound and operationLinksOpened on the device session that owns the link, if any.]
+            AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = this.findDeviceSession(linkName);
+            if (amqpsSessionDeviceOperation != null)
             {
-                isLinkFound = this.amqpsDeviceSessionList.get(i).isLinkFound(linkName);
-                if (isLinkFound == true)
+                isLinkFound = amqpsSessionDeviceOperation.isLinkFound(linkName);
+                if (isLinkFound && amqpsSessionDeviceOperation.operationLinksOpened())
                 {
-                    if (this.amqpsDeviceSessionList.get(i).operationLinksOpened())
+                    synchronized (this.openLinksLock)
                     {
-                        synchronized (this.openLinksLock)
-                        {
-                            // Codes_SRS_AMQPSESSIONMANAGER_12_031: [The function shall call authentication isLinkFound if the authentication is not open and return true if both links are open]
-                            this.openLinksLock.notifyLock();
-                        }
-                        break;
+                        // Codes_SRS_AMQPSESSIONMANAGER_12_031: [The function shall call authentication isLinkFound if the authentication is not open and return true if both links are open]
+                        this.openLinksLock.notifyLock();
                     }
                 }
             }
@@ -323,26 +402,25 @@ public class AmqpsSessionManager
      * @param iotHubConnectionString the deviceconnection string to 
      *                               find the sender.
      * 
-     * @return Integer 
+     * @return the delivery tag of the message, or -1 if it was not sent.
      */
-    Integer sendMessage(org.apache.qpid.proton.message.Message message, MessageType messageType, IotHubConnectionString iotHubConnectionString) throws IOException
+    long sendMessage(org.apache.qpid.proton.message.Message message, MessageType messageType, IotHubConnectionString iotHubConnectionString) throws IOException
     {
-        Integer deliveryHash = -1;
+        long deliveryTag = AmqpsDeliveryTag.INVALID_DELIVERY_TAG;
 
-        if (this.session != null)
+        if ((this.session != null) && (iotHubConnectionString != null))
         {
-            for (int i = 0; i < this.amqpsDeviceSessionList.size(); i++)
+            // Codes_SRS_AMQPSESSIONMANAGER_12_032: [The function shall call sendMessage on all session list member and if there is a successful send return with the deliveryTag, otherwise return -1.]
+            // Codes_SRS_AMQPSESSIONMANAGER_28_008: [The function shall only call sendMessage on the device session of the device id in the iotHubConnectionString, and return -1 if there is none.]
+            String deviceId = iotHubConnectionString.getDeviceId();
+            AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = (deviceId == null) ? null : this.amqpsDeviceSessionsByDeviceId.get(deviceId);
+            if (amqpsSessionDeviceOperation != null)
             {
-                // Codes_SRS_AMQPSESSIONMANAGER_12_032: [The function shall call sendMessage on all session list member and if there is a successful send return with the deliveryHash, otherwise return -1.]
-                deliveryHash = this.amqpsDeviceSessionList.get(i).sendMessage(message, messageType, iotHubConnectionString);
-                if (deliveryHash != -1)
-                {
-                    break;
-                }
+                deliveryTag = amqpsSessionDeviceOperation.sendMessage(message, messageType, iotHubConnectionString);
             }
         }
 
-        return deliveryHash;
+        return deliveryTag;
     }
 
     /**
@@ -364,14 +442,12 @@ public class AmqpsSessionManager
         {
             if (this.isAuthenticationOpened())
             {
-                for (int i = 0; i < this.amqpsDeviceSessionList.size(); i++)
+                // Codes_SRS_AMQPSESSIONMANAGER_12_035: [The function shall call device sessions getMessageFromReceiverLink if the authentication is open.]
+                // Codes_SRS_AMQPSESSIONMANAGER_28_009: [The function shall only call getMessageFromReceiverLink on the device session that owns the link, and return null if there is none.]
+                AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = this.findDeviceSession(linkName);
+                if (amqpsSessionDeviceOperation != null)
                 {
-                    // Codes_SRS_AMQPSESSIONMANAGER_12_035: [The function shall call device sessions getMessageFromReceiverLink if the authentication is open.]
-                    amqpsMessage = this.amqpsDeviceSessionList.get(i).getMessageFromReceiverLink(linkName);
-                    if (amqpsMessage != null)
-                    {
-                        break;
-                    }
+                    amqpsMessage = amqpsSessionDeviceOperation.getMessageFromReceiverLink(linkName);
                 }
             }
             else
@@ -397,14 +473,12 @@ public class AmqpsSessionManager
 
         if (this.isAuthenticationOpened())
         {
-            for (int i = 0; i < this.amqpsDeviceSessionList.size(); i++)
+            // Codes_SRS_AMQPSESSIONMANAGER_12_038: [The function shall call all device session's isLinkFound, and if any of them true return true otherwise return false.]
+            // Codes_SRS_AMQPSESSIONMANAGER_28_007: [The function shall only call isLinkFound on the device session that owns the link, if any.]
+            AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = this.findDeviceSession(linkName);
+            if (amqpsSessionDeviceOperation != null)
             {
-                // Codes_SRS_AMQPSESSIONMANAGER_12_038: [The function shall call all device session's isLinkFound, and if any of them true return true otherwise return false.]
-                isLinkFound = this.amqpsDeviceSessionList.get(i).isLinkFound(linkName);
-                if (isLinkFound == true)
-                {
-                    break;
-                }
+                isLinkFound = amqpsSessionDeviceOperation.isLinkFound(linkName);
             }
         }
         else
@@ -484,10 +558,60 @@ public class AmqpsSessionManager
     }
 
     /**
-     * Shut down the CBS authentication sender thread
+     * Getter for the number of devices with a scheduled token renewal.
+     *
+     * @return the number of pending token renewals, or 0 if the authentication type is not CBS.
+     */
+    int getPendingTokenRenewalCount()
+    {
+        // Codes_SRS_AMQPSESSIONMANAGER_28_003: [The function shall return the number of pending renewals of the token renewal scheduler, or 0 if there is no token renewal scheduler.]
+        return (this.tokenRenewalScheduler == null) ? 0 : this.tokenRenewalScheduler.getPendingRenewalCount();
+    }
+
+    /**
+     * Index the links of the device session, then open them. The links are
+     * indexed first so the link events find their device session.
+     *
+     * @param amqpsSessionDeviceOperation the device session to open the links of.
+     * @throws IOException if the device session throws.
+     */
+    private void openLinks(AmqpsSessionDeviceOperation amqpsSessionDeviceOperation) throws IOException
+    {
+        // Codes_SRS_AMQPSESSIONMANAGER_28_010: [Before opening the links of a device session, the function shall index the device session by the names of its links.]
+        Set<String> linkNames = amqpsSessionDeviceOperation.getLinkNames();
+        if (linkNames != null)
+        {
+            for (String linkName : linkNames)
+            {
+                this.amqpsDeviceSessionsByLinkName.put(linkName, amqpsSessionDeviceOperation);
+            }
+        }
+
+        amqpsSessionDeviceOperation.openLinks(this.session);
+    }
+
+    /**
+     * Find the device session that owns the link.
+     *
+     * @param linkName the name of the link.
+     * @return the device session, or null if no open device session owns the link.
+     */
+    private AmqpsSessionDeviceOperation findDeviceSession(String linkName)
+    {
+        return (linkName == null) ? null : this.amqpsDeviceSessionsByLinkName.get(linkName);
+    }
+
+    /**
+     * Shut down the CBS authentication sender and token renewal threads
      */
     private void shutDownScheduler()
     {
+        if (this.tokenRenewalScheduler != null)
+        {
+            // Codes_SRS_AMQPSESSIONMANAGER_28_002: [The function shall cancel all the token renewals of the connection, and keep the token renewal scheduler for the next open.]
+            this.tokenRenewalScheduler.cancelAll();
+        }
+
         if (this.taskSchedulerCBSSend != null)
         {
             this.taskSchedulerCBSSend.shutdown(); // Disable new tasks from being submitted
@@ -0,0 +1,194 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import com.microsoft.azure.sdk.iot.device.CustomLogger;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubDaemonExecutors;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the CBS token renewal of all the devices that share an AMQP connection.
+ *
+ * The renewals of all the connections of the process run on a single daemon
+ * thread, instead of one thread per device. So a renewal task must only send
+ * the renewed token and never wait for its reply, or a connection that stopped
+ * answering would delay the renewals of all the others. Closing a connection
+ * only cancels its own renewals, so the scheduler can be used again when the
+ * connection is opened again.
+ *
+ * Each renewal runs once per renewal period, minus a random jitter of up to
+ * {@link #JITTER_PERCENTAGE} percent of the period, so the devices that were
+ * authenticated together do not all renew at the same time. The jitter only ever
+ * makes a renewal earlier, so a token is never renewed later than its period.
+ */
+public final class AmqpsTokenRenewalScheduler
+{
+    /** The maximum jitter, in percent of the renewal period. */
+    private static final int JITTER_PERCENTAGE = 10;
+
+    private static final ScheduledExecutorService EXECUTOR = IotHubDaemonExecutors.newScheduledExecutor("AmqpsTokenRenewal", 1);
+
+    private final CustomLogger logger = new CustomLogger(this.getClass());
+
+    private final Object scheduleLock = new Object();
+    private final Random random = new Random();
+
+    /** The next run of each scheduled renewal task. */
+    private final Map<Runnable, ScheduledRenewal> scheduledRenewals = new HashMap<>();
+
+    private final AtomicLong completedRenewalCount = new AtomicLong(0);
+
+    private final class ScheduledRenewal implements Runnable
+    {
+        private final Runnable renewalTask;
+        private final long renewalPeriodInMilliseconds;
+        private ScheduledFuture<?> future;
+
+        private ScheduledRenewal(Runnable renewalTask, long renewalPeriodInMilliseconds)
+        {
+            this.renewalTask = renewalTask;
+            this.renewalPeriodInMilliseconds = renewalPeriodInMilliseconds;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                this.renewalTask.run();
+            }
+            catch (Throwable e)
+            {
+                logger.LogError("Token renewal failed with %s, method name is %s ", e.toString(), logger.getMethodName());
+            }
+            finally
+            {
+                completedRenewalCount.incrementAndGet();
+            }
+
+            synchronized (scheduleLock)
+            {
+                // The renewal task may have scheduled itself again, or have been canceled, while it ran.
+                if (scheduledRenewals.get(this.renewalTask) == this)
+                {
+                    this.future = EXECUTOR.schedule(this, nextDelayInMilliseconds(this.renewalPeriodInMilliseconds), TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructor.
+     */
+    public AmqpsTokenRenewalScheduler()
+    {
+        // Codes_SRS_AMQPSTOKENRENEWALSCHEDULER_28_001: [The constructor shall run the renewals on the single daemon renewal thread shared by the process, and start with no scheduled renewal.]
+    }
+
+    /**
+     * Schedules the renewal task to run once every renewal period, replacing
+     * any previous schedule of the same task.
+     *
+     * @param renewalTask the task to run.
+     * @param renewalPeriodInMilliseconds the renewal period.
+     * @throws IllegalArgumentException if the renewal task is null or the renewal period is not positive.
+     */
+    public void schedule(Runnable renewalTask, long renewalPeriodInMilliseconds) throws IllegalArgumentException
+    {
+        if ((renewalTask == null) || (renewalPeriodInMilliseconds <= 0))
+        {
+            // Codes_SRS_AMQPSTOKENRENEWALSCHEDULER_28_002: [If the renewalTask is null or the renewalPeriodInMilliseconds is not positive, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("renewalTask cannot be null and renewalPeriodInMilliseconds must be positive");
+        }
+
+        synchronized (this.scheduleLock)
+        {
+            // Codes_SRS_AMQPSTOKENRENEWALSCHEDULER_28_004: [The function shall cancel the previous schedule of the renewalTask.]
+            this.cancelRenewal(this.scheduledRenewals.remove(renewalTask));
+
+            // Codes_SRS_AMQPSTOKENRENEWALSCHEDULER_28_005: [The function shall schedule the renewalTask to run after the renewal period minus a random jitter of up to 10 percent of the period, and again after each run.]
+            ScheduledRenewal scheduledRenewal = new ScheduledRenewal(renewalTask, renewalPeriodInMilliseconds);
+            scheduledRenewal.future = EXECUTOR.schedule(scheduledRenewal, nextDelayInMilliseconds(renewalPeriodInMilliseconds), TimeUnit.MILLISECONDS);
+            this.scheduledRenewals.put(renewalTask, scheduledRenewal);
+        }
+    }
+
+    /**
+     * Stops running the renewal task.
+     *
+     * @param renewalTask the task to stop. Nothing happens if it is not scheduled.
+     */
+    public void cancel(Runnable renewalTask)
+    {
+        synchronized (this.scheduleLock)
+        {
+            // Codes_SRS_AMQPSTOKENRENEWALSCHEDULER_28_006: [The function shall cancel the schedule of the renewalTask, if any, without interrupting a renewal that is running.]
+            this.cancelRenewal(this.scheduledRenewals.remove(renewalTask));
+        }
+    }
+
+    /**
+     * Getter for the number of renewal tasks that are scheduled.
+     *
+     * @return the number of pending renewals.
+     */
+    public int getPendingRenewalCount()
+    {
+        synchronized (this.scheduleLock)
+        {
+            // Codes_SRS_AMQPSTOKENRENEWALSCHEDULER_28_007: [The function shall return the number of scheduled renewal tasks.]
+            return this.scheduledRenewals.size();
+        }
+    }
+
+    /**
+     * Getter for the number of renewals that ran since the scheduler was created.
+     *
+     * @return the number of completed renewals.
+     */
+    public long getCompletedRenewalCount()
+    {
+        // Codes_SRS_AMQPSTOKENRENEWALSCHEDULER_28_008: [The function shall return the number of renewals that ran, successfully or not.]
+        return this.completedRenewalCount.get();
+    }
+
+    /**
+     * Cancels all the renewals, when the connection is closed. The scheduler
+     * can be used again when the connection is opened again.
+     */
+    public void cancelAll()
+    {
+        synchronized (this.scheduleLock)
+        {
+            // Codes_SRS_AMQPSTOKENRENEWALSCHEDULER_28_009: [The function shall cancel all the scheduled renewal tasks of the scheduler, without interrupting a renewal that is running, and keep the renewal thread for the other schedulers.]
+            for (ScheduledRenewal scheduledRenewal : this.scheduledRenewals.values())
+            {
+                this.cancelRenewal(scheduledRenewal);
+            }
+            this.scheduledRenewals.clear();
+        }
+    }
+
+    private void cancelRenewal(ScheduledRenewal scheduledRenewal)
+    {
+        if ((scheduledRenewal != null) && (scheduledRenewal.future != null))
+        {
+            scheduledRenewal.future.cancel(false);
+        }
+    }
+
+    private long nextDelayInMilliseconds(long renewalPeriodInMilliseconds)
+    {
+        long maxJitter = renewalPeriodInMilliseconds * JITTER_PERCENTAGE / 100;
+        long jitter = (long)(this.random.nextDouble() * maxJitter);
+        return renewalPeriodInMilliseconds - jitter;
+    }
+}
@@ -4,14 +4,18 @@
 package com.microsoft.azure.sdk.iot.device.transport.amqps;
 
 import com.microsoft.azure.sdk.iot.device.*;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackDispatcher;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackDispatcherMetrics;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundMessageStore;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueue;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueueMetrics;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransport;
 import com.microsoft.azure.sdk.iot.device.transport.State;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -34,10 +38,13 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
     private AmqpsIotHubConnection connection;
 
     /** Messages waiting to be sent to the IoT Hub. */
-    private final Queue<IotHubOutboundPacket> waitingMessages = new LinkedBlockingDeque<>();
+    private final IotHubOutboundQueue waitingMessages;
 
-    /** Messages which are sent to the IoT Hub but did not receive ack yet. */
-    private final Map<Integer, IotHubOutboundPacket> inProgressMessages = new ConcurrentHashMap<>();
+    /** Messages waiting to be sent on disk, or null if they are only kept in memory. */
+    private volatile IotHubOutboundMessageStore messageStore;
+
+    /** Messages which are sent to the IoT Hub but did not receive ack yet, keyed by delivery tag. */
+    private final AmqpsInFlightDeliveries inProgressMessages = new AmqpsInFlightDeliveries();
 
     /** Messages received from the IoT Hub */
     private final Queue<AmqpsMessage> receivedMessages = new LinkedBlockingQueue<>();
@@ -45,6 +52,9 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
     /** Messages whose callbacks that are waiting to be invoked. */
     private final Queue<IotHubCallbackPacket> callbackList = new LinkedBlockingDeque<>();
 
+    /** Invokes the callbacks, on the callback executor of the config if there is one. */
+    private final IotHubCallbackDispatcher callbackDispatcher;
+
     /** Connection state change callback */
     private IotHubConnectionStateCallback stateCallback;
     private Object stateCallbackContext;
@@ -67,6 +77,12 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
         this.state = State.CLOSED;
         this.logger = new CustomLogger(this.getClass());
 
+        // Codes_SRS_AMQPSTRANSPORT_28_001: [The constructor shall create the queue of messages waiting to be sent, bounded by the outbound queue capacity and policy of the config.]
+        this.waitingMessages = new IotHubOutboundQueue(config, this.callbackList);
+
+        // Codes_SRS_AMQPSTRANSPORT_28_007: [The constructor shall create a callback dispatcher for the config.]
+        this.callbackDispatcher = new IotHubCallbackDispatcher(config);
+
         // Codes_SRS_AMQPSTRANSPORT_12_001: [The constructor shall create device operation list with DEVICE_TELEMETRY, DEVICE_METHODS and DEVICE_TWIN objects.]
     }
 
@@ -101,6 +117,17 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
                 throw new IOException(e);
             }
 
+            // Codes_SRS_AMQPSTRANSPORT_28_012: [The function shall open the queue of messages waiting to be sent, so it accepts new messages again after a close.]
+            this.waitingMessages.open();
+
+            // Codes_SRS_AMQPSTRANSPORT_28_003: [The function shall open the outbound message store of the config, if any,
+            // and put the messages it holds in front of the queue of messages waiting to be sent.]
+            this.messageStore = IotHubOutboundMessageStore.open(this.deviceClientConfig);
+            if (this.messageStore != null)
+            {
+                this.waitingMessages.requeueFirst(this.messageStore.replay(IotHubOutboundMessageStore.REPLAY_BATCH_SIZE));
+            }
+
             // Codes_SRS_AMQPSTRANSPORT_15_006: [If the connection was opened successfully, the transport state shall be set to OPEN.]
             this.state = State.OPEN;
         }
@@ -154,6 +181,9 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
                 throw new IOException(e);
             }
 
+            // Codes_SRS_AMQPSTRANSPORT_28_012: [The function shall open the queue of messages waiting to be sent, so it accepts new messages again after a close.]
+            this.waitingMessages.open();
+
             // Codes_SRS_AMQPSTRANSPORT_12_018: [The function shal set the transport state to OPEN.]
             this.state = State.OPEN;
 
@@ -176,15 +206,18 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
             logger.LogInfo("The connection is already in closed state, method name is %s ", logger.getMethodName());
             return;
         }
-        
+
+        // Codes_SRS_AMQPSTRANSPORT_28_013: [The function shall close the queue of messages waiting to be sent first, so the callers waiting for room in it get their messages cancelled.]
+        this.waitingMessages.close();
+
         // Codes_SRS_AMQPSTRANSPORT_99_036: [The method will remove all the messages which are in progress or waiting to be sent and add them to the callback list.]
         while (!this.waitingMessages.isEmpty())
         {
-           IotHubOutboundPacket packet = this.waitingMessages.remove();
+           IotHubOutboundPacket packet = this.waitingMessages.poll();
            Message message = packet.getMessage();
             
            // Codes_SRS_AMQPSTRANSPORT_15_015: [The function shall skip messages with null or empty body.]
-            if (message != null && message.getBytes().length > 0)
+            if (message != null && message.getBodyLength() > 0)
             {
                 IotHubCallbackPacket callbackPacket = new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, packet.getCallback(), packet.getContext());
                 this.callbackList.add(callbackPacket);
@@ -193,18 +226,22 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
         }
 
         // Codes_SRS_AMQPSTRANSPORT_12_005: [The function shall add a new outbound packet to the callback list.]
-        for (Map.Entry<Integer, IotHubOutboundPacket> entry : inProgressMessages.entrySet())
+        // Codes_SRS_AMQPSTRANSPORT_15_033: [The map of messages in progress is cleared.]
+        for (IotHubOutboundPacket packet : inProgressMessages.removeAll())
         {
-            IotHubOutboundPacket packet = entry.getValue();
             IotHubCallbackPacket callbackPacket = new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, packet.getCallback(), packet.getContext());
             this.callbackList.add(callbackPacket);
         }
                     
         // Codes_SRS_AMQPSTRANSPORT_99_037: [The method will invoke all the callbacks..]
         invokeCallbacks(); 
-        
-        // Codes_SRS_AMQPSTRANSPORT_15_033: [The map of messages in progress is cleared.]
-        inProgressMessages.clear();
+
+        // Codes_SRS_AMQPSTRANSPORT_28_004: [The function shall close the outbound message store, which keeps the cancelled messages for the next open.]
+        if (this.messageStore != null)
+        {
+            this.messageStore.close();
+            this.messageStore = null;
+        }
                        
         logger.LogInfo("Starting to close the connection..., method name is %s ", logger.getMethodName());
        
@@ -235,7 +272,11 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
         }
 
         // Codes_SRS_AMQPSTRANSPORT_15_011: [The function shall add a packet containing the message, callback, and callback context to the queue of messages waiting to be sent.]
-        IotHubOutboundPacket packet = new IotHubOutboundPacket(message, callback, callbackContext);
+        // Codes_SRS_AMQPSTRANSPORT_28_005: [If the transport has an outbound message store, the function shall write the message to it before adding it to the queue.]
+        IotHubOutboundMessageStore store = this.messageStore;
+        IotHubOutboundPacket packet = (store == null)
+                ? new IotHubOutboundPacket(message, callback, callbackContext)
+                : store.createPacket(message, callback, callbackContext);
         this.waitingMessages.add(packet);
     }
 
@@ -275,19 +316,25 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
             throw new IllegalStateException("Cannot send messages when the AMQPS transport is closed.");
         }
 
+        if ((this.messageStore != null) && this.waitingMessages.isEmpty())
+        {
+            // Codes_SRS_AMQPSTRANSPORT_28_006: [If there are no messages in the waiting list, the function shall put the next messages of the outbound message store in it.]
+            this.waitingMessages.requeueFirst(this.messageStore.replay(IotHubOutboundMessageStore.REPLAY_BATCH_SIZE));
+        }
+
         // Codes_SRS_AMQPSTRANSPORT_15_013: [If there are no messages in the waiting list, the function shall return.]
         if (this.waitingMessages.size() <= 0)
         {
             return;
         }
 
-        Collection<IotHubOutboundPacket> failedMessages = new ArrayList<>() ;
+        List<IotHubOutboundPacket> failedMessages = new ArrayList<>() ;
 
         // Codes_SRS_AMQPSTRANSPORT_15_014: [The function shall attempt to send every message on its waiting list, one at a time.]
         while (!this.waitingMessages.isEmpty())
         {
             logger.LogInfo("Get the message from waiting message queue to be sent to IoT Hub, method name is %s ", logger.getMethodName());
-            IotHubOutboundPacket packet = this.waitingMessages.remove();
+            IotHubOutboundPacket packet = this.waitingMessages.poll();
 
             Message message = packet.getMessage();
 
@@ -332,14 +379,14 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
                     else
                     {
                         // Codes_SRS_AMQPSTRANSPORT_15_037: [The function shall attempt to send the Proton message to IoTHub using the underlying AMQPS connection.]
-                        Integer sendHash = connection.sendMessage(amqpsConvertToProtonReturnValue.getMessageImpl(), amqpsConvertToProtonReturnValue.getMessageType(), message.getIotHubConnectionString());
+                        long deliveryTag = connection.sendMessage(amqpsConvertToProtonReturnValue.getMessageImpl(), amqpsConvertToProtonReturnValue.getMessageType(), message.getIotHubConnectionString());
 
-                        // Codes_SRS_AMQPSTRANSPORT_15_016: [If the sent message hash is valid, it shall be added to the in progress map.]
-                        if (sendHash != -1)
+                        // Codes_SRS_AMQPSTRANSPORT_15_016: [If the sent message delivery tag is valid, it shall be added to the in progress map.]
+                        if (deliveryTag != AmqpsDeliveryTag.INVALID_DELIVERY_TAG)
                         {
-                            this.inProgressMessages.put(sendHash, packet);
+                            this.inProgressMessages.put(deliveryTag, packet);
                         }
-                        // Codes_SRS_AMQPSTRANSPORT_15_017: [If the sent message hash is not valid, it shall be buffered to be sent in a subsequent attempt.]
+                        // Codes_SRS_AMQPSTRANSPORT_15_017: [If the sent message delivery tag is not valid, it shall be buffered to be sent in a subsequent attempt.]
                         else
                         {
                             failedMessages.add(packet);
@@ -349,7 +396,10 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
             }
         }
 
-        this.waitingMessages.addAll(failedMessages);
+        for (IotHubOutboundPacket packet : failedMessages)
+        {
+            this.waitingMessages.requeue(packet);
+        }
     }
 
     /**
@@ -371,12 +421,20 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
         {
             IotHubCallbackPacket packet = this.callbackList.remove();
 
-            IotHubStatusCode status = packet.getStatus();
-            IotHubEventCallback callback = packet.getCallback();
-            Object context = packet.getContext();
+            final IotHubStatusCode status = packet.getStatus();
+            final IotHubEventCallback callback = packet.getCallback();
+            final Object context = packet.getContext();
 
             logger.LogInfo("Invoking the callback function for sent message, IoT Hub responded to message with status %s, method name is %s ", status.name(), logger.getMethodName());
-            callback.execute(status, context);
+            // Codes_SRS_AMQPSTRANSPORT_28_008: [The function shall invoke the callbacks through the callback dispatcher.]
+            this.callbackDispatcher.dispatch(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    callback.execute(status, context);
+                }
+            });
         }
     }
 
@@ -401,61 +459,79 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
         
         logger.LogDebug("Get the callback function for the received message, method name is %s ", logger.getMethodName());
 
-        // Codes_SRS_AMQPSTRANSPORT_15_023: [The function shall attempt to consume a message from the IoT Hub.]
-        // Codes_SRS_AMQPSTRANSPORT_15_024: [If no message was received from IotHub, the function shall return.]
-        if (this.receivedMessages.size() > 0)
+        // Codes_SRS_AMQPSTRANSPORT_28_011: [The function shall consume the received messages until none is left,
+        // or the receive prefetch count of the config is reached, so a burst of messages is handled in one pass.]
+        int receivePrefetchCount = Math.max(1, this.deviceClientConfig.getReceivePrefetchCount());
+        for (int handled = 0; handled < receivePrefetchCount; handled++)
         {
-            logger.LogInfo("Consuming a message received from IoT Hub using receive message queue, method name is %s ", logger.getMethodName());
-            AmqpsMessage receivedMessage = this.receivedMessages.remove();
-
+            // Codes_SRS_AMQPSTRANSPORT_15_023: [The function shall attempt to consume a message from the IoT Hub.]
+            // Codes_SRS_AMQPSTRANSPORT_15_024: [If no message was received from IotHub, the function shall return.]
+            AmqpsMessage receivedMessage = this.receivedMessages.poll();
+            if (receivedMessage == null || !this.handleReceivedMessage(receivedMessage))
+            {
+                break;
+            }
+        }
+    }
 
-            logger.LogInfo("Converting the AmqpsMessage to IoT Hub message, method name is %s ", logger.getMethodName());
+    /**
+     * Invokes the callback on a received message and returns the message result to the IoT Hub.
+     *
+     * @param receivedMessage the message consumed from the receive message queue.
+     * @return {@code true} if the next received message can be handled, {@code false} otherwise.
+     * @throws IOException if the message could not be converted.
+     */
+    private boolean handleReceivedMessage(AmqpsMessage receivedMessage) throws IOException
+    {
+        logger.LogInfo("Converting the AmqpsMessage to IoT Hub message, method name is %s ", logger.getMethodName());
 
-            // Codes_SRS_AMQPSTRANSPORT_12_006: [The function shall call device operation objects to convert the Proton message to IoTHubMessage.]
-            AmqpsConvertFromProtonReturnValue amqpsHandleMessageReturnValue = this.connection.convertFromProton(receivedMessage, receivedMessage.getDeviceClientConfig());
+        // Codes_SRS_AMQPSTRANSPORT_12_006: [The function shall call device operation objects to convert the Proton message to IoTHubMessage.]
+        AmqpsConvertFromProtonReturnValue amqpsHandleMessageReturnValue = this.connection.convertFromProton(receivedMessage, receivedMessage.getDeviceClientConfig());
 
-            // Codes_SRS_AMQPSTRANSPORT_12_007: [The function throws IllegalStateException if none of the device operation object could handle the conversion.]
-            if (amqpsHandleMessageReturnValue == null)
-            {
-                // Should never happen
-                throw new IllegalStateException("No handler found for received message!");
-            }
+        // Codes_SRS_AMQPSTRANSPORT_12_007: [The function throws IllegalStateException if none of the device operation object could handle the conversion.]
+        if (amqpsHandleMessageReturnValue == null)
+        {
+            // Should never happen
+            throw new IllegalStateException("No handler found for received message!");
+        }
 
-            // Codes_SRS_AMQPSTRANSPORT_12_008: [The function shall return if there is no message callback defined.]
-            if (amqpsHandleMessageReturnValue.getMessageCallback() == null)
-            {
-                logger.LogError("Callback is not defined therefore response to IoT Hub cannot be generated. All received messages will be removed from receive message queue, method name is %s ", logger.getMethodName());
-                return;
-            }
+        // Codes_SRS_AMQPSTRANSPORT_12_008: [The function shall return if there is no message callback defined.]
+        if (amqpsHandleMessageReturnValue.getMessageCallback() == null)
+        {
+            logger.LogError("Callback is not defined therefore response to IoT Hub cannot be generated. All received messages will be removed from receive message queue, method name is %s ", logger.getMethodName());
+            return false;
+        }
 
-            logger.LogInfo("Executing the callback function for received message, method name is %s ", logger.getMethodName());
-            // Codes_SRS_AMQPSTRANSPORT_15_026: [The function shall invoke the callback on the message.]
-            IotHubMessageResult result = amqpsHandleMessageReturnValue.getMessageCallback().execute(amqpsHandleMessageReturnValue.getMessage(), amqpsHandleMessageReturnValue.getMessageContext());
+        logger.LogInfo("Executing the callback function for received message, method name is %s ", logger.getMethodName());
+        // Codes_SRS_AMQPSTRANSPORT_15_026: [The function shall invoke the callback on the message.]
+        IotHubMessageResult result = amqpsHandleMessageReturnValue.getMessageCallback().execute(amqpsHandleMessageReturnValue.getMessage(), amqpsHandleMessageReturnValue.getMessageContext());
 
-            // Codes_SRS_AMQPSTRANSPORT_15_027: [The function shall return the message result (one of COMPLETE, ABANDON, or REJECT) to the IoT Hub.]
-            Boolean ackResult = this.connection.sendMessageResult(receivedMessage, result);
-            // Codes_SRS_AMQPSTRANSPORT_15_028: [If the result could not be sent to IoTHub, the message shall be put back in the received messages queue to be processed again.]
-            if (!ackResult)
-            {
-                logger.LogWarn("Callback did not return a response for IoT Hub. Message has been added in the queue to be processed again, method name is %s", logger.getMethodName());
-                receivedMessages.add(receivedMessage);
-            }
+        // Codes_SRS_AMQPSTRANSPORT_15_027: [The function shall return the message result (one of COMPLETE, ABANDON, or REJECT) to the IoT Hub.]
+        Boolean ackResult = this.connection.sendMessageResult(receivedMessage, result);
+        // Codes_SRS_AMQPSTRANSPORT_15_028: [If the result could not be sent to IoTHub, the message shall be put back in the received messages queue to be processed again.]
+        if (!ackResult)
+        {
+            logger.LogWarn("Callback did not return a response for IoT Hub. Message has been added in the queue to be processed again, method name is %s", logger.getMethodName());
+            receivedMessages.add(receivedMessage);
+            return false;
         }
+
+        return true;
     }
 
     /**
      * When a message is acknowledged by IoTHub, it is removed from the list of in progress messages and its callback
      * is added to the list of callbacks to be executed. If the message was not successfully delivered, it is buffered
      * to be sent again.
-     * @param messageHash The hash of the message.
+     * @param deliveryTag The delivery tag of the message.
      * @param deliveryState The state of the delivery.
      */
-    public void messageSent(Integer messageHash, Boolean deliveryState)
+    public void messageSent(long deliveryTag, Boolean deliveryState)
     {
-        // Codes_SRS_AMQPSTRANSPORT_15_029: [If the hash cannot be found in the list of keys for the messages in progress, the method returns.]
-        if (inProgressMessages.containsKey(messageHash))
+        // Codes_SRS_AMQPSTRANSPORT_15_029: [If the delivery tag cannot be found in the list of keys for the messages in progress, the method returns.]
+        IotHubOutboundPacket packet = inProgressMessages.remove(deliveryTag);
+        if (packet != null)
         {
-            IotHubOutboundPacket packet = inProgressMessages.remove(messageHash);
             if (deliveryState)
             {
                 logger.LogInfo("Message with messageid %s has been successfully delivered to IoTHub, adding a callback to callbacklist with IotHubStatusCode.OK_EMPTY, method name is %s ", packet.getMessage().getMessageId(), logger.getMethodName());
@@ -467,7 +543,7 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
             {
                 logger.LogInfo("Message with messageid %s was not delivered to IoTHub, it is buffered to be sent again, method name is %s ", packet.getMessage().getMessageId(), logger.getMethodName());
                 // Codes_SRS_AMQPSTRANSPORT_15_031: [If the message was not delivered successfully, it is buffered to be sent again.]
-                waitingMessages.add(packet);
+                waitingMessages.requeue(packet);
             }
         }
     }
@@ -479,14 +555,12 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
     {
         logger.LogInfo("The messages in progress are buffered to be sent again due to a connection loss, method name is %s ", logger.getMethodName());
         // Codes_SRS_AMQPSTRANSPORT_15_032: [The messages in progress are buffered to be sent again.]
-        for (Map.Entry<Integer, IotHubOutboundPacket> entry : inProgressMessages.entrySet())
+        // Codes_SRS_AMQPSTRANSPORT_15_033: [The map of messages in progress is cleared.]
+        for (IotHubOutboundPacket packet : inProgressMessages.removeAll())
         {
-            this.waitingMessages.add(entry.getValue());
+            this.waitingMessages.requeue(packet);
         }
 
-        // Codes_SRS_AMQPSTRANSPORT_15_033: [The map of messages in progress is cleared.]
-        inProgressMessages.clear();
-
         // Notify the listener that the connection is down
         // Codes_SRS_AMQPSTRANSPORT_99_001: [Registered connection state callback is notified that the connection has been lost.]
         if (this.stateCallback != null) {
@@ -529,7 +603,9 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
     {
         // Codes_SRS_AMQPSTRANSPORT_15_035: [The function shall return true if the waiting list,
         // in progress list and callback list are all empty, and false otherwise.]
-        return this.waitingMessages.isEmpty() && this.inProgressMessages.size() == 0 && this.callbackList.isEmpty();
+        // Codes_SRS_AMQPSTRANSPORT_28_009: [The function shall return false while the callback dispatcher has callbacks to invoke.]
+        return this.waitingMessages.isEmpty() && this.inProgressMessages.isEmpty() && this.callbackList.isEmpty()
+                && this.callbackDispatcher.isEmpty();
 
     }
 
@@ -552,4 +628,28 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
         this.stateCallback = callback;
         this.stateCallbackContext = callbackContext;
     }
-}
\ No newline at end of file
+
+    /**
+     * Getter for the depth of the queue of messages waiting to be sent, and
+     * for the time the messages spent in it.
+     *
+     * @return a snapshot of the metrics of the outbound queue.
+     */
+    public IotHubOutboundQueueMetrics getOutboundQueueMetrics()
+    {
+        // Codes_SRS_AMQPSTRANSPORT_28_002: [The function shall return the metrics of the transport queue.]
+        return this.waitingMessages.getMetrics();
+    }
+
+    /**
+     * Getter for the number of callbacks waiting to be invoked, and for the
+     * time they waited and ran.
+     *
+     * @return a snapshot of the metrics of the callback dispatcher.
+     */
+    public IotHubCallbackDispatcherMetrics getCallbackDispatcherMetrics()
+    {
+        // Codes_SRS_AMQPSTRANSPORT_28_010: [The function shall return the metrics of the callback dispatcher.]
+        return this.callbackDispatcher.getMetrics();
+    }
+}
@@ -10,10 +10,10 @@ public interface ServerListener
 {
     /**
      * Method executed when a message was acknowledged by IoTHub.
-     * @param messageHash The hash of the message.
+     * @param deliveryTag The delivery tag of the message, as read by {@link AmqpsDeliveryTag#decode(byte[])}.
      * @param deliveryState The state of the delivery.
      */
-    void messageSent(Integer messageHash, Boolean deliveryState);
+    void messageSent(long deliveryTag, Boolean deliveryState);
 
     /**
      * Method executed when a message was received from IoTHub.
@@ -7,6 +7,7 @@ import com.microsoft.azure.sdk.iot.device.MessageProperty;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import com.microsoft.azure.sdk.iot.deps.util.Base64;
@@ -34,17 +35,55 @@ public final class HttpsBatchMessage implements HttpsMessage
      */
     private static final Charset BATCH_CHARSET = StandardCharsets.UTF_8;
 
-    /** The current batched message body. */
-    private String batchBody;
+    /** The initial capacity of the batch body buffer. It grows as needed. */
+    private static final int BATCH_BODY_INITIAL_CAPACITY = 1024;
+
+    private static final byte JSON_ARRAY_OPEN = '[';
+    private static final byte JSON_ARRAY_CLOSE = ']';
+    private static final byte JSON_ARRAY_SEPARATOR = ',';
+
+    /**
+     * The current batched message body, UTF-8 encoded, without the closing
+     * bracket of the JSON array. Only the first batchBodySize bytes are used.
+     */
+    private byte[] batchBody;
+
+    /** The number of bytes used in batchBody. */
+    private int batchBodySize;
 
     /** The current number of messages in the batch. */
     private int numMsgs;
 
+    /** The maximum size of the batch body, in bytes. */
+    private final int maxSizeInBytes;
+
     /** Constructor. Initializes the batch body as an empty JSON array. */
     public HttpsBatchMessage()
     {
+        this(SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES);
+    }
+
+    /**
+     * Constructor. Initializes the batch body as an empty JSON array, which
+     * cannot grow over the provided size, nor over 256 kb.
+     *
+     * @param maxSizeInBytes the maximum size of the batch body, in bytes.
+     * @throws IllegalArgumentException if the provided size is smaller than 1.
+     */
+    public HttpsBatchMessage(int maxSizeInBytes) throws IllegalArgumentException
+    {
+        if (maxSizeInBytes < 1)
+        {
+            // Codes_SRS_HTTPSBATCHMESSAGE_28_003: [If the provided maxSizeInBytes is smaller than 1, the constructor shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("maxSizeInBytes cannot be smaller than 1");
+        }
+
         // Codes_SRS_HTTPSBATCHMESSAGE_11_001: [The constructor shall initialize the batch message with the body as an empty JSON array.]
-        this.batchBody = "[]";
+        // Codes_SRS_HTTPSBATCHMESSAGE_28_004: [The constructor shall limit the batch body to the smaller of the provided maxSizeInBytes and 256 kb.]
+        this.maxSizeInBytes = Math.min(maxSizeInBytes, SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES);
+        this.batchBody = new byte[BATCH_BODY_INITIAL_CAPACITY];
+        this.batchBody[0] = JSON_ARRAY_OPEN;
+        this.batchBodySize = 1;
         this.numMsgs = 0;
     }
 
@@ -54,28 +93,34 @@ public final class HttpsBatchMessage implements HttpsMessage
      * @param msg the message to be added.
      *
      * @throws IotHubSizeExceededException if adding the message causes the
-     * batched message to exceed 256 kb in size. The batched message will remain
-     * as if the message was never added.
+     * batched message to exceed its maximum size. The batched message will
+     * remain as if the message was never added.
      */
     public void addMessage(HttpsSingleMessage msg)
             throws IotHubSizeExceededException
     {
-        String jsonMsg = msgToJson(msg);
-        // Codes_SRS_HTTPSBATCHMESSAGE_11_002: [The function shall add the message as a JSON object appended to the current JSON array.]
-        String newBatchBody = addJsonObjToArray(jsonMsg, this.batchBody);
+        byte[] jsonMsgBytes = msgToJson(msg).getBytes(BATCH_CHARSET);
 
         // Codes_SRS_HTTPSBATCHMESSAGE_11_008: [If adding the message causes the batched message to exceed 256 kb in size, the function shall throw a IotHubSizeExceededException.]
         // Codes_SRS_HTTPSBATCHMESSAGE_11_009: [If the function throws a IotHubSizeExceededException, the batched message shall remain as if the message was never added.]
-        byte[] newBatchBodyBytes = newBatchBody.getBytes(BATCH_CHARSET);
-
-        if (newBatchBodyBytes.length > SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES)
+        int separatorSize = (this.numMsgs > 0) ? 1 : 0;
+        int newBatchBodySize = this.batchBodySize + separatorSize + jsonMsgBytes.length;
+        if (newBatchBodySize + 1 > this.maxSizeInBytes)
         {
             String errMsg = String.format("Service-bound message size (%d bytes) cannot exceed %d bytes.",
-                    newBatchBodyBytes.length, SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES);
+                    newBatchBodySize + 1, this.maxSizeInBytes);
             throw new IotHubSizeExceededException(errMsg);
         }
 
-        this.batchBody = newBatchBody;
+        // Codes_SRS_HTTPSBATCHMESSAGE_11_002: [The function shall add the message as a JSON object appended to the current JSON array.]
+        // Codes_SRS_HTTPSBATCHMESSAGE_28_001: [The function shall append the UTF-8 encoded message to the batch body buffer, growing the buffer when it is full, without encoding again the messages already in the batch.]
+        ensureCapacity(newBatchBodySize + 1);
+        if (separatorSize > 0)
+        {
+            this.batchBody[this.batchBodySize] = JSON_ARRAY_SEPARATOR;
+        }
+        System.arraycopy(jsonMsgBytes, 0, this.batchBody, this.batchBodySize + separatorSize, jsonMsgBytes.length);
+        this.batchBodySize = newBatchBodySize;
         this.numMsgs++;
     }
 
@@ -88,7 +133,10 @@ public final class HttpsBatchMessage implements HttpsMessage
     {
         // Codes_SRS_HTTPSBATCHMESSAGE_11_006: [The function shall return the current batch message body.]
         // Codes_SRS_HTTPSBATCHMESSAGE_11_007: [The batch message body shall be encoded using UTF-8.]
-        return this.batchBody.getBytes(BATCH_CHARSET);
+        // Codes_SRS_HTTPSBATCHMESSAGE_28_002: [The function shall return a copy of the batch body, which is not changed by messages added later.]
+        byte[] body = Arrays.copyOf(this.batchBody, this.batchBodySize + 1);
+        body[this.batchBodySize] = JSON_ARRAY_CLOSE;
+        return body;
     }
 
     /**
@@ -185,24 +233,18 @@ public final class HttpsBatchMessage implements HttpsMessage
     }
 
     /**
-     * Adds a JSON object to a JSON array.
-     *
-     * @param jsonObj the object to be added to the JSON array.
-     * @param jsonArray the JSON array.
+     * Grows the batch body buffer, if needed, to hold at least the provided
+     * number of bytes. The capacity is doubled, so appending n messages costs
+     * linear time overall.
      *
-     * @return the JSON string representation of the JSON array with the object
-     * added.
+     * @param minCapacity the number of bytes the buffer must be able to hold.
      */
-    private static String addJsonObjToArray(String jsonObj, String jsonArray)
+    private void ensureCapacity(int minCapacity)
     {
-        if (jsonArray.equals("[]"))
+        if (minCapacity > this.batchBody.length)
         {
-            return "[" + jsonObj + "]";
+            int newCapacity = Math.max(this.batchBody.length * 2, minCapacity);
+            this.batchBody = Arrays.copyOf(this.batchBody, newCapacity);
         }
-
-        // removes the closing brace of the JSON array.
-        String openJsonArray = jsonArray.substring(0, jsonArray.length() - 1);
-
-        return openJsonArray + "," + jsonObj + "]";
     }
 }
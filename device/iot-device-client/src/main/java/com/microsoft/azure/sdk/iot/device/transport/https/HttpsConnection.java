@@ -3,16 +3,19 @@
 
 package com.microsoft.azure.sdk.iot.device.transport.https;
 
+import com.microsoft.azure.sdk.iot.deps.transport.http.HttpStreamReader;
+
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.ProtocolException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * <p>
@@ -25,11 +28,16 @@ import java.util.Map;
  * connections, for each time {@link #connect()} is called, the input streams (input
  * stream or error stream, if input stream is not accessible) must be completely
  * read. Otherwise, the data remains in the stream and the connection will not
- * be reusable.
+ * be reusable. The keep-alive cache only reuses a socket for a connection with
+ * the same SSL socket factory, so one factory is shared by all the connections
+ * of the same {@link SSLContext}.
  * </p>
  */
 public class HttpsConnection
 {
+    /** The SSL socket factories already created, by SSL context. */
+    private static final Map<SSLContext, SSLSocketFactory> SOCKET_FACTORIES = new WeakHashMap<>();
+
     /** The underlying HTTPS connection. */
     private final HttpsURLConnection connection;
 
@@ -191,7 +199,8 @@ public class HttpsConnection
         // Codes_SRS_HTTPSCONNECTION_11_011: [The function shall read from the input stream (response stream) and return the response.]
         // Codes_SRS_HTTPSCONNECTION_11_012: [The function shall throw an IOException if the input stream could not be accessed.]
         InputStream inputStream = this.connection.getInputStream();
-        byte[] input = readInputStream(inputStream);
+        // Codes_SRS_HTTPSCONNECTION_28_001: [The function shall read the input stream in bulk, using the Content-Length of the response to size the result.]
+        byte[] input = HttpStreamReader.readFully(inputStream, this.connection.getContentLengthLong());
         // Codes_SRS_HTTPSCONNECTION_11_019: [The function shall close the input stream after it has been completely read.]
         inputStream.close();
 
@@ -216,7 +225,8 @@ public class HttpsConnection
         // if there is no error reason, getErrorStream() returns null.
         if (errorStream != null)
         {
-            error = readInputStream(errorStream);
+            // Codes_SRS_HTTPSCONNECTION_28_002: [The function shall read the error stream in bulk, using the Content-Length of the response to size the result.]
+            error = HttpStreamReader.readFully(errorStream, this.connection.getContentLengthLong());
             // Codes_SRS_HTTPSCONNECTION_11_020: [The function shall close the error stream after it has been completely read.]
             errorStream.close();
         }
@@ -253,37 +263,6 @@ public class HttpsConnection
         return this.connection.getHeaderFields();
     }
 
-    /**
-     * Reads the input stream until the stream is empty.
-     *
-     * @param stream the input stream.
-     *
-     * @return the content of the input stream.
-     *
-     * @throws IOException if the input stream could not be read from.
-     */
-    private static byte[] readInputStream(InputStream stream)
-            throws IOException
-    {
-        ArrayList<Byte> byteBuffer = new ArrayList<>();
-        int nextByte = -1;
-        // read(byte[]) reads the byte into the buffer and returns the number
-        // of bytes read, or -1 if the end of the stream has been reached.
-        while ((nextByte = stream.read()) > -1)
-        {
-            byteBuffer.add((byte) nextByte);
-        }
-
-        int bufferSize = byteBuffer.size();
-        byte[] byteArray = new byte[bufferSize];
-        for (int i = 0; i < bufferSize; ++i)
-        {
-            byteArray[i] = byteBuffer.get(i);
-        }
-
-        return byteArray;
-    }
-
     void setSSLContext(SSLContext sslContext) throws IllegalArgumentException
     {
         if (sslContext == null)
@@ -292,7 +271,22 @@ public class HttpsConnection
             throw new IllegalArgumentException("SSL context cannot be null");
         }
         //Codes_SRS_HTTPSCONNECTION_25_024: [**The function shall set the the SSL context with the given value.**]**
-        this.connection.setSSLSocketFactory(sslContext.getSocketFactory());
+        this.connection.setSSLSocketFactory(getSocketFactory(sslContext));
+    }
+
+    private static SSLSocketFactory getSocketFactory(SSLContext sslContext)
+    {
+        synchronized (SOCKET_FACTORIES)
+        {
+            //Codes_SRS_HTTPSCONNECTION_28_005: [The function shall reuse the SSL socket factory already created for the given context, so the connections of the same context can share keep-alive sockets and TLS sessions.]
+            SSLSocketFactory socketFactory = SOCKET_FACTORIES.get(sslContext);
+            if (socketFactory == null)
+            {
+                socketFactory = sslContext.getSocketFactory();
+                SOCKET_FACTORIES.put(sslContext, socketFactory);
+            }
+            return socketFactory;
+        }
     }
 
     @SuppressWarnings("unused")
@@ -8,12 +8,22 @@ import com.microsoft.azure.sdk.iot.device.net.*;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URL;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
 
 /**
  * An HTTPS connection between a device and an IoT Hub. Contains functionality
  * for synchronously connecting to the different IoT Hub resource URIs.
+ *
+ * Up to {@link DeviceClientConfig#getHttpsMaxInFlightRequests()} requests can be
+ * in flight at the same time, so a receive poll does not block the send of an event.
+ *
+ * The request URLs of the device are built once and reused until the IoT Hub
+ * hostname or the device id in the configuration change.
  */
 public class HttpsIotHubConnection
 {
@@ -25,8 +35,42 @@ public class HttpsIotHubConnection
     private static final String HTTPS_PROPERTY_IF_MATCH_TAG = "if-match";
     private static final String HTTPS_PROPERTY_ETAG_TAG = "etag";
 
-    /** The HTTPS connection lock. */
-    private final Object HTTPS_CONNECTION_LOCK = new Object();
+    /** The lock shared by receiveMessage and sendMessageResult, which use the message e-tag. */
+    private final Object MESSAGE_LOCK = new Object();
+
+    /** The permits for the requests in flight. */
+    private final Semaphore requestPermits;
+
+    /** The URL and 'iothub-to' path of the requests, built for one hostname and device id. */
+    private static final class RequestTemplate
+    {
+        private final String iotHubHostname;
+        private final String deviceId;
+        private final URL url;
+        private final String path;
+
+        private RequestTemplate(String iotHubHostname, String deviceId, String uri, String path) throws IOException
+        {
+            this.iotHubHostname = iotHubHostname;
+            this.deviceId = deviceId;
+            this.url = new URL(HTTPS_HEAD_TAG + uri);
+            this.path = path;
+        }
+
+        private boolean isFor(String iotHubHostname, String deviceId)
+        {
+            return equals(this.iotHubHostname, iotHubHostname) && equals(this.deviceId, deviceId);
+        }
+
+        private static boolean equals(String a, String b)
+        {
+            return (a == null) ? (b == null) : a.equals(b);
+        }
+    }
+
+    private volatile RequestTemplate eventTemplate;
+    private volatile RequestTemplate messageTemplate;
+    private final ConcurrentMap<String, RequestTemplate> pathTemplates = new ConcurrentHashMap<>();
 
     /** The client configuration. */
     private final DeviceClientConfig config;
@@ -45,11 +89,11 @@ public class HttpsIotHubConnection
      */
     public HttpsIotHubConnection(DeviceClientConfig config)
     {
-        synchronized (HTTPS_CONNECTION_LOCK)
-        {
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_001: [The constructor shall save the client configuration.]
-            this.config = config;
-        }
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_001: [The constructor shall save the client configuration.]
+        this.config = config;
+
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_28_001: [The constructor shall allow up to the configuration parameter httpsMaxInFlightRequests requests in flight at the same time, and at least 1.]
+        this.requestPermits = new Semaphore(Math.max(1, config.getHttpsMaxInFlightRequests()), true);
     }
 
     /**
@@ -63,73 +107,76 @@ public class HttpsIotHubConnection
      */
     public ResponseMessage sendEvent(HttpsMessage msg) throws IOException
     {
-        synchronized (HTTPS_CONNECTION_LOCK)
+        String iotHubHostname = this.config.getIotHubHostname();
+        String deviceId = this.config.getDeviceId();
+        int readTimeoutMillis = this.config.getReadTimeoutMillis();
+
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_002: [The function shall send a request to the URL 'https://[iotHubHostname]/devices/[deviceId]/messages/events?api-version=2016-02-03'.]
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_28_004: [The function shall reuse the URL built by a previous call for the same IoT Hub hostname and device id.]
+        RequestTemplate template = this.eventTemplate;
+        if ((template == null) || !template.isFor(iotHubHostname, deviceId))
         {
-            String iotHubHostname = this.config.getIotHubHostname();
-            String deviceId = this.config.getDeviceId();
-            int readTimeoutMillis = this.config.getReadTimeoutMillis();
-
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_002: [The function shall send a request to the URL 'https://[iotHubHostname]/devices/[deviceId]/messages/events?api-version=2016-02-03'.]
             IotHubEventUri iotHubEventUri = new IotHubEventUri(iotHubHostname, deviceId);
-            URL eventUrl = new URL(HTTPS_HEAD_TAG + iotHubEventUri.toString());
-
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_003: [The function shall send a POST request.]
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_004: [The function shall set the request body to the message body.]
-            HttpsRequest request =
-                    new HttpsRequest(eventUrl, HttpsMethod.POST, msg.getBody());
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_005: [The function shall write each message property as a request header.]
-            for (MessageProperty property : msg.getProperties())
-            {
-                request.setHeaderField(property.getName(),
-                        property.getValue());
-            }
+            template = new RequestTemplate(iotHubHostname, deviceId, iotHubEventUri.toString(), iotHubEventUri.getPath());
+            this.eventTemplate = template;
+        }
 
-            Map<String, String> systemProperties = msg.getSystemProperties();
-            for (String systemProperty : systemProperties.keySet())
-            {
-                request.setHeaderField(systemProperty, systemProperties.get(systemProperty));
-            }
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_003: [The function shall send a POST request.]
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_004: [The function shall set the request body to the message body.]
+        HttpsRequest request =
+                new HttpsRequest(template.url, HttpsMethod.POST, msg.getBody());
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_005: [The function shall write each message property as a request header.]
+        for (MessageProperty property : msg.getProperties())
+        {
+            request.setHeaderField(property.getName(),
+                    property.getValue());
+        }
 
-            SSLContext sslContext = null;
-            if (this.config.getAuthenticationType() == DeviceClientConfig.AuthType.SAS_TOKEN)
-            {
-                sslContext = this.config.getSasTokenAuthentication().getSSLContext();
+        Map<String, String> systemProperties = msg.getSystemProperties();
+        for (String systemProperty : systemProperties.keySet())
+        {
+            request.setHeaderField(systemProperty, systemProperties.get(systemProperty));
+        }
 
-                //Codes_SRS_HTTPSIOTHUBCONNECTION_34_055: [This function shall retrieve a sas token from its config to use in the https request header.]
-                if (this.config.getSasTokenAuthentication().isRenewalNecessary())
-                {
-                    //Codes_SRS_HTTPSIOTHUBCONNECTION_34_052: [If the SAS token used by this has expired, the function shall return a ResponseMessage object with the IotHubStatusCode UNAUTHORIZED.]
-                    return new ResponseMessage("Your sas token has expired".getBytes(), IotHubStatusCode.UNAUTHORIZED);
-                }
+        SSLContext sslContext = null;
+        if (this.config.getAuthenticationType() == DeviceClientConfig.AuthType.SAS_TOKEN)
+        {
+            sslContext = this.config.getSasTokenAuthentication().getSSLContext();
 
-                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_007: [The function shall set the header field 'authorization' to be a valid SAS token generated from the configuration parameters.]
-                request.setHeaderField(HTTPS_PROPERTY_AUTHORIZATION_TAG, this.config.getSasTokenAuthentication().getRenewedSasToken());
-            }
-            else if (this.config.getAuthenticationType() == DeviceClientConfig.AuthType.X509_CERTIFICATE)
+            //Codes_SRS_HTTPSIOTHUBCONNECTION_34_055: [This function shall retrieve a sas token from its config to use in the https request header.]
+            if (this.config.getSasTokenAuthentication().isRenewalNecessary())
             {
-                //Codes_SRS_HTTPSIOTHUBCONNECTION_34_059: [If this config is using x509 authentication, this function shall retrieve its sslcontext from its x509 Authentication object.]
-                sslContext = this.config.getX509Authentication().getSSLContext();
+                //Codes_SRS_HTTPSIOTHUBCONNECTION_34_052: [If the SAS token used by this has expired, the function shall return a ResponseMessage object with the IotHubStatusCode UNAUTHORIZED.]
+                return new ResponseMessage("Your sas token has expired".getBytes(), IotHubStatusCode.UNAUTHORIZED);
             }
 
-            //Codes_SRS_HTTPSIOTHUBCONNECTION_25_040: [The function shall set the IotHub SSL context by calling setSSLContext on the request.]
-            request.setSSLContext(sslContext);
+            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_007: [The function shall set the header field 'authorization' to be a valid SAS token generated from the configuration parameters.]
+            request.setHeaderField(HTTPS_PROPERTY_AUTHORIZATION_TAG, this.config.getSasTokenAuthentication().getRenewedSasToken());
+        }
+        else if (this.config.getAuthenticationType() == DeviceClientConfig.AuthType.X509_CERTIFICATE)
+        {
+            //Codes_SRS_HTTPSIOTHUBCONNECTION_34_059: [If this config is using x509 authentication, this function shall retrieve its sslcontext from its x509 Authentication object.]
+            sslContext = this.config.getX509Authentication().getSSLContext();
+        }
 
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_006: [The function shall set the request read timeout to be the configuration parameter readTimeoutMillis.]
-            request.setReadTimeoutMillis(readTimeoutMillis).
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_008: [The function shall set the header field 'iothub-to' to be '/devices/[deviceId]/messages/events'.]
-                            setHeaderField(HTTPS_PROPERTY_IOTHUB_TO_TAG, iotHubEventUri.getPath()).
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_009: [The function shall set the header field 'content-type' to be the message content type.]
-                            setHeaderField(HTTPS_PROPERTY_CONTENT_TYPE_TAG, msg.getContentType());
+        //Codes_SRS_HTTPSIOTHUBCONNECTION_25_040: [The function shall set the IotHub SSL context by calling setSSLContext on the request.]
+        request.setSSLContext(sslContext);
 
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_012: [If the IoT Hub could not be reached, the function shall throw an IOException.]
-            HttpsResponse response = request.send();
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_006: [The function shall set the request read timeout to be the configuration parameter readTimeoutMillis.]
+        request.setReadTimeoutMillis(readTimeoutMillis).
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_008: [The function shall set the header field 'iothub-to' to be '/devices/[deviceId]/messages/events'.]
+                        setHeaderField(HTTPS_PROPERTY_IOTHUB_TO_TAG, template.path).
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_009: [The function shall set the header field 'content-type' to be the message content type.]
+                        setHeaderField(HTTPS_PROPERTY_CONTENT_TYPE_TAG, msg.getContentType());
 
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_010: [The function shall return a ResponseMessage with the status and payload.]
-            IotHubStatusCode status = IotHubStatusCode.getIotHubStatusCode(response.getStatus());
-            byte[] body = response.getBody();
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_012: [If the IoT Hub could not be reached, the function shall throw an IOException.]
+        HttpsResponse response = this.sendRequest(request);
 
-            return new ResponseMessage(body, status);
-        }
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_010: [The function shall return a ResponseMessage with the status and payload.]
+        IotHubStatusCode status = IotHubStatusCode.getIotHubStatusCode(response.getStatus());
+        byte[] body = response.getBody();
+
+        return new ResponseMessage(body, status);
     }
 
     /**
@@ -145,66 +192,69 @@ public class HttpsIotHubConnection
      */
     public ResponseMessage sendHttpsMessage(HttpsMessage httpsMessage, HttpsMethod httpsMethod, String httpsPath) throws IOException
     {
-        synchronized (HTTPS_CONNECTION_LOCK)
+        String iotHubHostname = this.config.getIotHubHostname();
+        String deviceId = this.config.getDeviceId();
+        int readTimeoutMillis = this.config.getReadTimeoutMillis();
+
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_041: [The function shall send a request to the URL https://[iotHubHostname]/devices/[deviceId]/[path]?api-version=2016-02-03.]
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_28_005: [The function shall reuse the URL built by a previous call for the same IoT Hub hostname, device id and path.]
+        RequestTemplate template = this.pathTemplates.get(httpsPath);
+        if ((template == null) || !template.isFor(iotHubHostname, deviceId))
         {
-            String iotHubHostname = this.config.getIotHubHostname();
-            String deviceId = this.config.getDeviceId();
-            int readTimeoutMillis = this.config.getReadTimeoutMillis();
-
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_21_041: [The function shall send a request to the URL https://[iotHubHostname]/devices/[deviceId]/[path]?api-version=2016-02-03.]
             IotHubUri iotHubUri = new IotHubUri(iotHubHostname, deviceId, httpsPath);
-            URL messageUrl = new URL(HTTPS_HEAD_TAG + iotHubUri.toString());
+            template = new RequestTemplate(iotHubHostname, deviceId, iotHubUri.toString(), iotHubUri.getPath());
+            this.pathTemplates.put(httpsPath, template);
+        }
 
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_21_042: [The function shall send a `httpsMethod` request.]
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_21_043: [The function shall set the request body to the message body.]
-            HttpsRequest request = new HttpsRequest(messageUrl, httpsMethod, httpsMessage.getBody());
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_042: [The function shall send a `httpsMethod` request.]
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_043: [The function shall set the request body to the message body.]
+        HttpsRequest request = new HttpsRequest(template.url, httpsMethod, httpsMessage.getBody());
 
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_21_044: [The function shall write each message property as a request header.]
-            for (MessageProperty property : httpsMessage.getProperties())
-            {
-                request.setHeaderField(property.getName(),
-                        property.getValue());
-            }
-
-            SSLContext sslContext = null;
-            if (this.config.getAuthenticationType() == DeviceClientConfig.AuthType.SAS_TOKEN)
-            {
-                sslContext = this.config.getSasTokenAuthentication().getSSLContext();
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_044: [The function shall write each message property as a request header.]
+        for (MessageProperty property : httpsMessage.getProperties())
+        {
+            request.setHeaderField(property.getName(),
+                    property.getValue());
+        }
 
-                //Codes_SRS_HTTPSIOTHUBCONNECTION_34_056: [This function shall retrieve a sas token from its config to use in the https request header.]
-                if (this.config.getSasTokenAuthentication().isRenewalNecessary())
-                {
-                    //Codes_SRS_HTTPSIOTHUBCONNECTION_34_053: [If the SAS token used by this has expired, the function shall return a ResponseMessage object with the IotHubStatusCode UNAUTHORIZED.]
-                    return new ResponseMessage("Your sas token has expired".getBytes(), IotHubStatusCode.UNAUTHORIZED);
-                }
+        SSLContext sslContext = null;
+        if (this.config.getAuthenticationType() == DeviceClientConfig.AuthType.SAS_TOKEN)
+        {
+            sslContext = this.config.getSasTokenAuthentication().getSSLContext();
 
-                // Codes_SRS_HTTPSIOTHUBCONNECTION_21_047: [The function shall set the header field 'authorization' to be a valid SAS token generated from the configuration parameters.]
-                request.setHeaderField(HTTPS_PROPERTY_AUTHORIZATION_TAG, this.config.getSasTokenAuthentication().getRenewedSasToken());
-            }
-            else if (this.config.getAuthenticationType() == DeviceClientConfig.AuthType.X509_CERTIFICATE)
+            //Codes_SRS_HTTPSIOTHUBCONNECTION_34_056: [This function shall retrieve a sas token from its config to use in the https request header.]
+            if (this.config.getSasTokenAuthentication().isRenewalNecessary())
             {
-                //Codes_SRS_HTTPSIOTHUBCONNECTION_34_060: [If this config is using x509 authentication, this function shall retrieve its sslcontext from its x509 Authentication object.]
-                sslContext = this.config.getX509Authentication().getSSLContext();
+                //Codes_SRS_HTTPSIOTHUBCONNECTION_34_053: [If the SAS token used by this has expired, the function shall return a ResponseMessage object with the IotHubStatusCode UNAUTHORIZED.]
+                return new ResponseMessage("Your sas token has expired".getBytes(), IotHubStatusCode.UNAUTHORIZED);
             }
 
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_21_045: [The function shall set the request read timeout to be the configuration parameter readTimeoutMillis.]
-            request.setReadTimeoutMillis(readTimeoutMillis).
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_21_048: [The function shall set the header field 'iothub-to' to be '/devices/[deviceId]/[path]'.]
-                            setHeaderField(HTTPS_PROPERTY_IOTHUB_TO_TAG, iotHubUri.getPath()).
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_21_049: [The function shall set the header field 'content-type' to be the message content type.]
-                            setHeaderField(HTTPS_PROPERTY_CONTENT_TYPE_TAG, httpsMessage.getContentType());
-            //Codes_SRS_HTTPSIOTHUBCONNECTION_21_046: [The function shall set the IotHub SSL context by calling setSSLContext on the request.]
-            request.setSSLContext(sslContext);
+            // Codes_SRS_HTTPSIOTHUBCONNECTION_21_047: [The function shall set the header field 'authorization' to be a valid SAS token generated from the configuration parameters.]
+            request.setHeaderField(HTTPS_PROPERTY_AUTHORIZATION_TAG, this.config.getSasTokenAuthentication().getRenewedSasToken());
+        }
+        else if (this.config.getAuthenticationType() == DeviceClientConfig.AuthType.X509_CERTIFICATE)
+        {
+            //Codes_SRS_HTTPSIOTHUBCONNECTION_34_060: [If this config is using x509 authentication, this function shall retrieve its sslcontext from its x509 Authentication object.]
+            sslContext = this.config.getX509Authentication().getSSLContext();
+        }
 
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_21_051: [If the IoT Hub could not be reached, the function shall throw an IOException.]
-            HttpsResponse response = request.send();
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_045: [The function shall set the request read timeout to be the configuration parameter readTimeoutMillis.]
+        request.setReadTimeoutMillis(readTimeoutMillis).
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_21_048: [The function shall set the header field 'iothub-to' to be '/devices/[deviceId]/[path]'.]
+                        setHeaderField(HTTPS_PROPERTY_IOTHUB_TO_TAG, template.path).
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_21_049: [The function shall set the header field 'content-type' to be the message content type.]
+                        setHeaderField(HTTPS_PROPERTY_CONTENT_TYPE_TAG, httpsMessage.getContentType());
+        //Codes_SRS_HTTPSIOTHUBCONNECTION_21_046: [The function shall set the IotHub SSL context by calling setSSLContext on the request.]
+        request.setSSLContext(sslContext);
 
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_21_050: [The function shall return a ResponseMessage with the status and payload.]
-            IotHubStatusCode status = IotHubStatusCode.getIotHubStatusCode(response.getStatus());
-            byte[] body = response.getBody();
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_051: [If the IoT Hub could not be reached, the function shall throw an IOException.]
+        HttpsResponse response = this.sendRequest(request);
 
-            return new ResponseMessage(body, status);
-        }
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_050: [The function shall return a ResponseMessage with the status and payload.]
+        IotHubStatusCode status = IotHubStatusCode.getIotHubStatusCode(response.getStatus());
+        byte[] body = response.getBody();
+
+        return new ResponseMessage(body, status);
     }
 
     /**
@@ -216,7 +266,7 @@ public class HttpsIotHubConnection
      */
     public Message receiveMessage() throws IOException
     {
-        synchronized (HTTPS_CONNECTION_LOCK)
+        synchronized (MESSAGE_LOCK)
         {
             String iotHubHostname = this.config.getIotHubHostname();
             String deviceId = this.config.getDeviceId();
@@ -224,17 +274,23 @@ public class HttpsIotHubConnection
             int messageLockTimeoutSecs = this.config.getMessageLockTimeoutSecs();
 
             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_013: [The function shall send a request to the URL 'https://[iotHubHostname]/devices/[deviceId]/messages/devicebound?api-version=2016-02-03'.]
-            IotHubMessageUri messageUri = new IotHubMessageUri(iotHubHostname, deviceId);
-            URL messageUrl = new URL(HTTPS_HEAD_TAG + messageUri.toString());
+            // Codes_SRS_HTTPSIOTHUBCONNECTION_28_006: [The function shall reuse the URL built by a previous call for the same IoT Hub hostname and device id.]
+            RequestTemplate template = this.messageTemplate;
+            if ((template == null) || !template.isFor(iotHubHostname, deviceId))
+            {
+                IotHubMessageUri messageUri = new IotHubMessageUri(iotHubHostname, deviceId);
+                template = new RequestTemplate(iotHubHostname, deviceId, messageUri.toString(), messageUri.getPath());
+                this.messageTemplate = template;
+            }
 
             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_014: [The function shall send a GET request.]
             HttpsRequest request =
-                    new HttpsRequest(messageUrl, HttpsMethod.GET, new byte[0]).
+                    new HttpsRequest(template.url, HttpsMethod.GET, new byte[0]).
                             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_015: [The function shall set the request read timeout to be the configuration parameter readTimeoutMillis.]
                                     setReadTimeoutMillis(readTimeoutMillis).
                             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_017: [The function shall set the header field 'iothub-to' to be '/devices/[deviceId]/messages/devicebound'.]
                                     setHeaderField(HTTPS_PROPERTY_IOTHUB_TO_TAG,
-                                    messageUri.getPath()).
+                                    template.path).
                             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_018: [The function shall set the header field 'iothub-messagelocktimeout' to be the configuration parameter messageLockTimeoutSecs.]
                                     setHeaderField(HTTPS_PROPERTY_IOTHUB_MESSAGELOCKTIMEOUT_TAG,
                                     Integer.toString(messageLockTimeoutSecs));
@@ -264,7 +320,7 @@ public class HttpsIotHubConnection
             request.setSSLContext(sslContext);
 
             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_023: [If the IoT Hub could not be reached, the function shall throw an IOException.]
-            HttpsResponse response = request.send();
+            HttpsResponse response = this.sendRequest(request);
 
             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_021: [If a response with IoT Hub status code OK is not received, the function shall return null.]
             Message msg = null;
@@ -298,7 +354,7 @@ public class HttpsIotHubConnection
     public void sendMessageResult(IotHubMessageResult result)
             throws IOException, SecurityException
     {
-        synchronized (HTTPS_CONNECTION_LOCK)
+        synchronized (MESSAGE_LOCK)
         {
             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_039: [If the function is called before receiveMessage() returns a message, the function shall throw an IllegalStateException.]
             if (this.messageEtag == null)
@@ -396,7 +452,7 @@ public class HttpsIotHubConnection
             request.setSSLContext(sslContext);
 
             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_037: [If the IoT Hub could not be reached, the function shall throw an IOException.]
-            HttpsResponse response = request.send();
+            HttpsResponse response = this.sendRequest(request);
             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_038: [If the IoT Hub status code in the response is not OK_EMPTY, the function shall throw an IOException.]
             IotHubStatusCode resultStatus =
                     IotHubStatusCode.getIotHubStatusCode(
@@ -411,6 +467,40 @@ public class HttpsIotHubConnection
         }
     }
 
+    /**
+     * Sends the request once a request permit is available.
+     *
+     * @param request the request to send.
+     *
+     * @return the response to the request.
+     *
+     * @throws IOException if the IoT Hub could not be reached, or if the thread
+     * was interrupted while waiting for a request permit.
+     */
+    private HttpsResponse sendRequest(HttpsRequest request) throws IOException
+    {
+        try
+        {
+            // Codes_SRS_HTTPSIOTHUBCONNECTION_28_002: [The function shall wait for a free request permit before sending the request, and give it back after the request completes or fails.]
+            this.requestPermits.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            // Codes_SRS_HTTPSIOTHUBCONNECTION_28_003: [If the thread is interrupted while waiting for a request permit, the function shall throw an InterruptedIOException.]
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send the request");
+        }
+
+        try
+        {
+            return request.send();
+        }
+        finally
+        {
+            this.requestPermits.release();
+        }
+    }
+
     /**
      * Removes double quotes from the e-tag property.
      *
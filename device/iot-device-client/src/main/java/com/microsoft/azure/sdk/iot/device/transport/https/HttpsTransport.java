@@ -5,8 +5,12 @@ package com.microsoft.azure.sdk.iot.device.transport.https;
 
 import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.exceptions.IotHubSizeExceededException;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackDispatcher;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackDispatcherMetrics;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueue;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueueMetrics;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransport;
 
 import java.io.IOException;
@@ -45,11 +49,13 @@ public final class HttpsTransport implements IotHubTransport
     private HttpsIotHubConnection connection;
 
     /** Messages waiting to be sent to an IoT Hub. */
-    private final Queue<IotHubOutboundPacket> waitingList;
+    private final IotHubOutboundQueue waitingList;
     /** Messages that are waiting for a response from an IoT Hub. */
     private final Queue<IotHubOutboundPacket> inProgressList;
     /** Messages whose callbacks that are waiting to be invoked. */
     private final Queue<IotHubCallbackPacket> callbackList;
+    /** Invokes the callbacks, on the callback executor of the config if there is one. */
+    private final IotHubCallbackDispatcher callbackDispatcher;
 
     private final DeviceClientConfig config;
 
@@ -61,14 +67,19 @@ public final class HttpsTransport implements IotHubTransport
      */
     public HttpsTransport(DeviceClientConfig config)
     {
-        // Codes_SRS_HTTPSTRANSPORT_11_001: [The constructor shall initialize an empty transport queue for adding messages to be sent as a batch.]
-        this.waitingList = new LinkedBlockingDeque<>();
         this.inProgressList = new LinkedBlockingDeque<>();
         // Codes_SRS_HTTPSTRANSPORT_11_002: [The constructor shall initialize an empty queue for adding callbacks waiting to be invoked.]
         this.callbackList = new LinkedBlockingDeque<>();
 
         this.config = config;
 
+        // Codes_SRS_HTTPSTRANSPORT_11_001: [The constructor shall initialize an empty transport queue for adding messages to be sent as a batch.]
+        // Codes_SRS_HTTPSTRANSPORT_28_001: [The transport queue shall be bounded by the outbound queue capacity and policy of the config.]
+        this.waitingList = new IotHubOutboundQueue(this.config, this.callbackList);
+
+        // Codes_SRS_HTTPSTRANSPORT_28_003: [The constructor shall create a callback dispatcher for the config.]
+        this.callbackDispatcher = new IotHubCallbackDispatcher(this.config);
+
         this.state = HttpsTransportState.CLOSED;
     }
 
@@ -89,6 +100,9 @@ public final class HttpsTransport implements IotHubTransport
         // Codes_SRS_HTTPSTRANSPORT_11_023: [If the transport is already closed, the function shall throw an IllegalStateException.]
         // Codes_SRS_HTTPSTRANSPORT_11_021: [The function shall establish an HTTPS connection with the IoT Hub given in the configuration.]
         this.connection = new HttpsIotHubConnection(this.config);
+
+        // Codes_SRS_HTTPSTRANSPORT_28_007: [The function shall open the transport queue, so it accepts new messages again after a close.]
+        this.waitingList.open();
         this.state = HttpsTransportState.OPEN;
     }
 
@@ -107,11 +121,13 @@ public final class HttpsTransport implements IotHubTransport
      */
     public void close() throws IOException
     {
-        
+        // Codes_SRS_HTTPSTRANSPORT_28_008: [The function shall close the transport queue first, so the callers waiting for room in it get their messages cancelled.]
+        this.waitingList.close();
+
         // Codes_SRS_HTTPSTRANSPORT_99_036: [The method will remove all the messages which are in progress or waiting to be sent and add them to the callback list.]
         while (!this.waitingList.isEmpty())
         {
-            IotHubOutboundPacket packet = this.waitingList.remove();
+            IotHubOutboundPacket packet = this.waitingList.poll();
             ResponseMessage responseMessage = new ResponseMessage(new byte[]{}, IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE);
             addOutboundPacketToCallbackList(packet, responseMessage);
         }
@@ -265,21 +281,29 @@ public final class HttpsTransport implements IotHubTransport
         while (!this.callbackList.isEmpty())
         {
             // Codes_SRS_HTTPSTRANSPORT_11_016: [If an exception is thrown during the callback, the function shall drop the callback from the queue.]
-            IotHubCallbackPacket packet = this.callbackList.remove();
+            final IotHubCallbackPacket packet = this.callbackList.remove();
 
-            Object context = packet.getContext();
-
-            IotHubEventCallback eventCallback = packet.getCallback();
-            if(eventCallback != null)
-            {
-                eventCallback.execute(packet.getStatus(), context);
-            }
-
-            IotHubResponseCallback responseCallback = packet.getResponseCallback();
-            if(responseCallback != null)
+            // Codes_SRS_HTTPSTRANSPORT_28_004: [The function shall invoke the callbacks through the callback dispatcher.]
+            this.callbackDispatcher.dispatch(new Runnable()
             {
-                responseCallback.execute(packet.getResponseMessage(), context);
-            }
+                @Override
+                public void run()
+                {
+                    Object context = packet.getContext();
+
+                    IotHubEventCallback eventCallback = packet.getCallback();
+                    if(eventCallback != null)
+                    {
+                        eventCallback.execute(packet.getStatus(), context);
+                    }
+
+                    IotHubResponseCallback responseCallback = packet.getResponseCallback();
+                    if(responseCallback != null)
+                    {
+                        responseCallback.execute(packet.getResponseMessage(), context);
+                    }
+                }
+            });
         }
     }
 
@@ -358,7 +382,9 @@ public final class HttpsTransport implements IotHubTransport
     public boolean isEmpty()
     {
         // Codes_SRS_HTTPSTRANSPORT_11_015: [The function shall return true if the waiting list, in progress list, and callback list are all empty, and false otherwise.]
-        return this.waitingList.isEmpty() && this.inProgressList.isEmpty() && this.callbackList.isEmpty();
+        // Codes_SRS_HTTPSTRANSPORT_28_005: [The function shall return false while the callback dispatcher has callbacks to invoke.]
+        return this.waitingList.isEmpty() && this.inProgressList.isEmpty() && this.callbackList.isEmpty()
+                && this.callbackDispatcher.isEmpty();
     }
 
     /**
@@ -408,7 +434,7 @@ public final class HttpsTransport implements IotHubTransport
             if (packet.getMessage().isExpired())
             {
                 //Codes_SRS_HTTPSTRANSPORT_34_039: [If any packet in the waiting list contains a message that has expired, that packet shall be removed from the waiting list and added to the callback list with status MESSAGE_EXPIRED.]
-                this.waitingList.remove();
+                this.waitingList.poll();
                 this.callbackList.add(new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_EXPIRED, packet.getCallback(), packet.getContext()));
             }
             else
@@ -423,14 +449,14 @@ public final class HttpsTransport implements IotHubTransport
                     break;
                 }
 
-                this.waitingList.remove();
+                this.waitingList.poll();
                 this.inProgressList.add(packet);
             }
         }
 
         if (!this.waitingList.isEmpty() && batch.numMessages() <= 0)
         {
-            IotHubOutboundPacket packet = this.waitingList.remove();
+            IotHubOutboundPacket packet = this.waitingList.poll();
             this.inProgressList.add(packet);
         }
     }
@@ -516,4 +542,28 @@ public final class HttpsTransport implements IotHubTransport
             this.callbackList.add(callbackPacket);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Getter for the depth of the queue of messages waiting to be sent, and
+     * for the time the messages spent in it.
+     *
+     * @return a snapshot of the metrics of the outbound queue.
+     */
+    public IotHubOutboundQueueMetrics getOutboundQueueMetrics()
+    {
+        // Codes_SRS_HTTPSTRANSPORT_28_002: [The function shall return the metrics of the transport queue.]
+        return this.waitingList.getMetrics();
+    }
+
+    /**
+     * Getter for the number of callbacks waiting to be invoked, and for the
+     * time they waited and ran.
+     *
+     * @return a snapshot of the metrics of the callback dispatcher.
+     */
+    public IotHubCallbackDispatcherMetrics getCallbackDispatcherMetrics()
+    {
+        // Codes_SRS_HTTPSTRANSPORT_28_006: [The function shall return the metrics of the callback dispatcher.]
+        return this.callbackDispatcher.getMetrics();
+    }
+}
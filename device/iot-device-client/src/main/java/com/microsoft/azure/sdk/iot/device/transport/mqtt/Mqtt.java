@@ -3,10 +3,11 @@
 
 package com.microsoft.azure.sdk.iot.device.transport.mqtt;
 
+import com.microsoft.azure.sdk.iot.device.CustomLogger;
 import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
 import com.microsoft.azure.sdk.iot.device.Message;
 import com.microsoft.azure.sdk.iot.device.auth.IotHubSasToken;
-import com.microsoft.azure.sdk.iot.device.transport.TransportUtils;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubReconnectScheduler;
 import org.apache.commons.lang3.tuple.MutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.eclipse.paho.client.mqttv3.*;
@@ -17,6 +18,8 @@ import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidParameterException;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 abstract public class Mqtt implements MqttCallback
 {
@@ -24,6 +27,7 @@ abstract public class Mqtt implements MqttCallback
     private DeviceClientConfig deviceClientConfig = null;
     ConcurrentLinkedQueue<Pair<String, byte[]>> allReceivedMessages;
     Object mqttLock = null;
+    private Semaphore inFlightWindow;
 
     // SAS token expiration check on retry
     private boolean userSpecifiedSASTokenExpiredOnRetry = false;
@@ -33,8 +37,6 @@ abstract public class Mqtt implements MqttCallback
     private final static String MESSAGE_SYSTEM_PROPERTY_IDENTIFIER_ENCODED = "%24";
     private final static char MESSAGE_SYSTEM_PROPERTY_IDENTIFIER_DECODED = '$';
     final static char MESSAGE_PROPERTY_KEY_VALUE_SEPARATOR = '=';
-    private final static int PROPERTY_KEY_INDEX = 0;
-    private final static int PROPERTY_VALUE_INDEX = 1;
 
     /* The system property keys expected in a message */
     //This may be common with amqp as well
@@ -48,6 +50,10 @@ abstract public class Mqtt implements MqttCallback
     private final static String IOTHUB_ACK = "iothub-ack";
 
     private MqttConnectionStateListener listener;
+    private MqttDeliveryTracker deliveryTracker = null;
+    private IotHubReconnectScheduler reconnectScheduler = null;
+
+    private final CustomLogger logger = new CustomLogger(this.getClass());
 
     /**
      * Constructor to instantiate mqtt broker connection.
@@ -65,6 +71,8 @@ abstract public class Mqtt implements MqttCallback
         this.mqttConnection = mqttConnection;
         this.allReceivedMessages = mqttConnection.getAllReceivedMessages();
         this.mqttLock = mqttConnection.getMqttLock();
+        //Codes_SRS_Mqtt_28_006: [The constructor shall retrieve the in-flight window from the provided connection information.]
+        this.inFlightWindow = mqttConnection.getInFlightWindow();
         this.userSpecifiedSASTokenExpiredOnRetry = false;
         this.listener = listener;
     }
@@ -123,6 +131,12 @@ abstract public class Mqtt implements MqttCallback
      */
     protected void disconnect() throws IOException
     {
+        if (this.reconnectScheduler != null)
+        {
+            //Codes_SRS_Mqtt_28_017: [The function shall cancel the pending attempt to reconnect, if any.]
+            this.reconnectScheduler.cancel();
+        }
+
         try
         {
             /*
@@ -150,87 +164,107 @@ abstract public class Mqtt implements MqttCallback
     /**
      * Method to publish to mqtt broker connection.
      *
+     * The message takes a slot in the in-flight window of the connection, which is given back when paho
+     * reports the delivery as complete. The mqtt lock is only held while the message is handed to paho, so
+     * a full window does not block subscribe and receive.
+     *
      * @param publishTopic the topic to publish on mqtt broker connection.
      * @param payload   the payload to publish on publishTopic of mqtt broker connection.
+     * @return the delivery token for the message, which completes when the message is acknowledged by the IoT Hub.
      * @throws IOException if failed to publish the mqtt topic.
      */
-    protected void publish(String publishTopic, byte[] payload) throws IOException
+    protected IMqttDeliveryToken publish(String publishTopic, byte[] payload) throws IOException
     {
-        synchronized (this.mqttLock)
+        boolean inFlightSlotTaken = false;
+        IMqttDeliveryToken publishToken = null;
+
+        try
         {
-            try
+            if (this.mqttConnection == null)
             {
-                if (this.mqttConnection == null)
-                {
-                    throw new InvalidParameterException();
-                }
+                throw new InvalidParameterException();
+            }
 
-                if (this.userSpecifiedSASTokenExpiredOnRetry)
-                {
-                    /*
-                    ** Codes_SRS_Mqtt_99_049: [**If the user supplied SAS token has expired, the function shall throw an IOException.**]**
-                     */
-                    throw new IOException("Cannot publish when user supplied SAS token has expired");
-                }
+            if (this.userSpecifiedSASTokenExpiredOnRetry)
+            {
+                /*
+                ** Codes_SRS_Mqtt_99_049: [**If the user supplied SAS token has expired, the function shall throw an IOException.**]**
+                 */
+                throw new IOException("Cannot publish when user supplied SAS token has expired");
+            }
 
-                if (!this.mqttConnection.getMqttAsyncClient().isConnected())
-                {
-                    /*
-                    ** Codes_SRS_Mqtt_25_012: [**If the MQTT connection is closed, the function shall throw an IOException.**]**
-                     */
-                    throw new IOException("Cannot publish when mqtt client is disconnected");
-                }
+            if (!this.mqttConnection.getMqttAsyncClient().isConnected())
+            {
+                /*
+                ** Codes_SRS_Mqtt_25_012: [**If the MQTT connection is closed, the function shall throw an IOException.**]**
+                 */
+                throw new IOException("Cannot publish when mqtt client is disconnected");
+            }
 
-                if (publishTopic == null || publishTopic.length() == 0 || payload == null)
-                {
-                    /*
-                    **Codes_SRS_Mqtt_25_013: [**If the either publishTopic is null or empty or if payload is null, the function shall throw an IOException.**]**
-                    */
-                    throw new IOException("Cannot publish on null or empty publish topic");
-                }
+            if (publishTopic == null || publishTopic.length() == 0 || payload == null)
+            {
+                /*
+                **Codes_SRS_Mqtt_25_013: [**If the either publishTopic is null or empty or if payload is null, the function shall throw an IOException.**]**
+                */
+                throw new IOException("Cannot publish on null or empty publish topic");
+            }
 
-                while (this.mqttConnection.getMqttAsyncClient().getPendingDeliveryTokens().length >= MqttConnection.MAX_IN_FLIGHT_COUNT)
+            /*
+            **Codes_SRS_Mqtt_28_001: [**publish shall take a slot in the in-flight window of the connection before publishing, waiting without holding the mqtt lock until a slot is free.**]**
+             */
+            while (!this.inFlightWindow.tryAcquire(MqttConnection.MAX_WAIT_TIME, TimeUnit.MILLISECONDS))
+            {
+                if (!this.mqttConnection.getMqttAsyncClient().isConnected())
                 {
                     /*
-                    **Codes_SRS_Mqtt_25_048: [**publish shall check for pending publish tokens by calling getPendingDeliveryTokens.
-                    * And if there are pending tokens publish shall sleep until the number of pending tokens are less than 10 as per paho limitations**]**
-                    */
-                    Thread.sleep(10);
-
-                    if (!this.mqttConnection.getMqttAsyncClient().isConnected())
-                    {
-                    /*
-                    ** Codes_SRS_Mqtt_25_012: [**If the MQTT connection is closed, the function shall throw an IOException.**]**
+                    **Codes_SRS_Mqtt_28_002: [**If the MQTT connection is closed while publish waits for a slot in the in-flight window, the function shall throw an IOException.**]**
                      */
-                        throw new IOException("Cannot publish when mqtt client is holding 10 tokens and  is disconnected");
-                    }
+                    throw new IOException("Cannot publish when mqtt client is holding " + MqttConnection.MAX_IN_FLIGHT_COUNT + " tokens and is disconnected");
                 }
+            }
+            inFlightSlotTaken = true;
 
-                MqttMessage mqttMessage = (payload.length == 0) ? new MqttMessage() : new MqttMessage(payload);
+            MqttMessage mqttMessage = (payload.length == 0) ? new MqttMessage() : new MqttMessage(payload);
 
-                mqttMessage.setQos(MqttConnection.QOS);
+            mqttMessage.setQos(MqttConnection.QOS);
 
+            synchronized (this.mqttLock)
+            {
                 /*
                 **Codes_SRS_Mqtt_25_014: [**The function shall publish message payload on the publishTopic specified to the IoT Hub given in the configuration.**]**
                  */
-
-                IMqttDeliveryToken publishToken = this.mqttConnection.getMqttAsyncClient().publish(publishTopic, mqttMessage);
-
+                publishToken = this.mqttConnection.getMqttAsyncClient().publish(publishTopic, mqttMessage);
             }
-            catch (MqttException e)
+
+            /*
+            **Codes_SRS_Mqtt_28_003: [**The function shall return the delivery token returned by paho for the published message.**]**
+             */
+            return publishToken;
+        }
+        catch (MqttException e)
+        {
+            /*
+            **Codes_SRS_Mqtt_25_047: [**If the Mqtt Client Async throws MqttException, the function shall throw an IOException with the message.**]**
+             */
+            throw new IOException("Unable to publish message on topic : " + publishTopic + " because " + e.getCause() + e.getMessage(), e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted, Unable to publish message on topic : " + publishTopic);
+        }
+        catch (Exception e)
+        {
+            throw new IOException("Unable to publish message on topic : " + publishTopic + " " + e.getCause() + e.getMessage(), e);
+        }
+        finally
+        {
+            if (inFlightSlotTaken && publishToken == null)
             {
                 /*
-                **Codes_SRS_Mqtt_25_047: [**If the Mqtt Client Async throws MqttException, the function shall throw an IOException with the message.**]**
+                **Codes_SRS_Mqtt_28_004: [**If the message could not be handed to paho, the function shall give its slot in the in-flight window back.**]**
                  */
-                throw new IOException("Unable to publish message on topic : " + publishTopic + " because " + e.getCause() + e.getMessage(), e);
-            }
-            catch (InterruptedException e)
-            {
-                throw new IOException("Interrupted, Unable to publish message on topic : " + publishTopic);
-            }
-            catch (Exception e)
-            {
-                throw new IOException("Unable to publish message on topic : " + publishTopic + " " + e.getCause() + e.getMessage(), e);
+                this.inFlightWindow.release();
             }
         }
     }
@@ -349,7 +383,9 @@ abstract public class Mqtt implements MqttCallback
     }
 
     /**
-     * Event fired when the connection with the MQTT broker is lost.
+     * Event fired when the connection with the MQTT broker is lost. The
+     * attempts to reconnect are scheduled on the reconnect threads, so the
+     * thread of paho is not held while the connection waits to reconnect.
      * @param throwable Reason for losing the connection.
      */
     @Override
@@ -363,76 +399,99 @@ abstract public class Mqtt implements MqttCallback
 
         synchronized (this.mqttLock)
         {
-            if (this.mqttConnection != null && this.mqttConnection.getMqttAsyncClient() != null)
+            if (this.mqttConnection != null && this.mqttConnection.getMqttAsyncClient() != null && this.reconnectScheduler != null)
+            {
+                //Codes_SRS_Mqtt_28_011: [The function shall schedule the first attempt to reconnect with the reconnect scheduler, and return without waiting for it.]
+                scheduleReconnect();
+            }
+            else
+            {
+                logger.LogError("Initialise before using this, method name is %s ", logger.getMethodName());
+            }
+        }
+    }
+
+    /**
+     * Schedules the next attempt to reconnect, unless the retry policy stopped reconnecting.
+     */
+    private void scheduleReconnect()
+    {
+        boolean scheduled = this.reconnectScheduler.schedule(new Runnable()
+        {
+            @Override
+            public void run()
             {
-                int currentReconnectionAttempt = 0;
-                while (!this.mqttConnection.getMqttAsyncClient().isConnected())
+                reconnect();
+            }
+        });
+
+        if (!scheduled)
+        {
+            //Codes_SRS_Mqtt_28_012: [If the retry policy stops reconnecting, or the connection is closed, no attempt shall be scheduled.]
+            logger.LogInfo("Stopped reconnecting after %s attempts, method name is %s ", this.reconnectScheduler.getCurrentRetryCount(), logger.getMethodName());
+        }
+    }
+
+    /**
+     * Attempts once to reconnect, and schedules the next attempt if this one fails.
+     */
+    private void reconnect()
+    {
+        synchronized (this.mqttLock)
+        {
+            if (this.reconnectScheduler.isCancelled() || this.mqttConnection.getMqttAsyncClient() == null)
+            {
+                //Codes_SRS_Mqtt_28_013: [If the connection was closed since the attempt was scheduled, the attempt shall do nothing.]
+                return;
+            }
+
+            if (this.mqttConnection.getMqttAsyncClient().isConnected())
+            {
+                this.reconnectScheduler.reset();
+                return;
+            }
+
+            logger.LogInfo("Lost connection to the server. Reconnection attempt %s, method name is %s ", this.reconnectScheduler.getCurrentRetryCount(), logger.getMethodName());
+            try
+            {
+                if (this.deviceClientConfig.getAuthenticationType() == DeviceClientConfig.AuthType.SAS_TOKEN)
                 {
-                    System.out.println("Lost connection to the server. Reconnecting " + currentReconnectionAttempt + " time.");
-                    try
+                    /*
+                    **Codes_SRS_Mqtt_99_050: [**The function shall check if SAS token has already expired.**]**
+                    */
+                    if (IotHubSasToken.isExpired(new String(this.mqttConnection.getConnectionOptions().getPassword())))
                     {
-                        currentReconnectionAttempt++;
-                        if (this.deviceClientConfig.getAuthenticationType() == DeviceClientConfig.AuthType.SAS_TOKEN)
+                        /*
+                        **Codes_SRS_Mqtt_99_050: [**The function shall check if SAS token has already expired.**]**
+                        */
+                        if (this.deviceClientConfig.getIotHubConnectionString().getSharedAccessKey() != null)
                         {
-                            /*
-                            **Codes_SRS_Mqtt_99_050: [**The function shall check if SAS token has already expired.**]**
+                           /*
+                            **Codes_SRS_Mqtt_99_052: [**The function shall generate a new SAS token.**]**
                             */
-                            if (!IotHubSasToken.isExpired(new String(this.mqttConnection.getConnectionOptions().getPassword())))
-                            {
-                                connect(); // Try to reconnect
-                            }
-                            else
-                            {
-                                /*
-                                **Codes_SRS_Mqtt_99_050: [**The function shall check if SAS token has already expired.**]**
-                                */
-                                if (this.deviceClientConfig.getIotHubConnectionString().getSharedAccessKey() != null)
-                                {
-                                   /*
-                                    **Codes_SRS_Mqtt_99_052: [**The function shall generate a new SAS token.**]**
-                                    */
-                                    String sasToken = this.deviceClientConfig.getSasTokenAuthentication().getRenewedSasToken();
-                                    this.mqttConnection.getConnectionOptions().setPassword(sasToken.toCharArray());
-
-                                    connect(); // Try to reconnect
-                                }
-                                else
-                                {
-                                    /*
-                                    **Codes_SRS_Mqtt_99_053: [**The function shall set user supplied SAS token expiration flag to true .**]**
-                                    */
-                                    this.userSpecifiedSASTokenExpiredOnRetry  = true;
-                                    return; // no reconnect exit now
-                                }
-                            }
+                            String sasToken = this.deviceClientConfig.getSasTokenAuthentication().getRenewedSasToken();
+                            this.mqttConnection.getConnectionOptions().setPassword(sasToken.toCharArray());
                         }
-                        else if (this.deviceClientConfig.getAuthenticationType() == DeviceClientConfig.AuthType.X509_CERTIFICATE)
+                        else
                         {
-                            connect(); // Try to reconnect
-                        }
-                    }
-                    catch (IOException e)
-                    {
-                        try
-                        {
-                            /*
-                            Codes_SRS_Mqtt_25_027: [**The function shall attempt to reconnect to the IoTHub in a loop with exponential backoff until it succeeds**]**
-                             */
                             /*
-                            **Codes_SRS_Mqtt_25_028: [**The maximum wait interval until a reconnect is attempted shall be 60 seconds.**]**
-                             */
-                            Thread.sleep(TransportUtils.generateSleepInterval(currentReconnectionAttempt));
-                        }
-                        catch (InterruptedException ie)
-                        {
-                            // do nothing and continue trying...
+                            **Codes_SRS_Mqtt_99_053: [**The function shall set user supplied SAS token expiration flag to true .**]**
+                            */
+                            this.userSpecifiedSASTokenExpiredOnRetry = true;
+                            return; // no reconnect exit now
                         }
                     }
                 }
+
+                connect(); // Try to reconnect
+
+                //Codes_SRS_Mqtt_28_014: [If the attempt reconnects, the retries shall start over the next time the connection is lost.]
+                this.reconnectScheduler.reset();
             }
-            else
+            catch (IOException e)
             {
-                System.out.println("Initialise before using this..");
+                //Codes_SRS_Mqtt_28_015: [If the attempt fails, the next attempt shall be scheduled with the reconnect scheduler.]
+                scheduleReconnect();
             }
         }
     }
@@ -452,13 +511,24 @@ abstract public class Mqtt implements MqttCallback
     }
 
     /**
-     * Event fired when the message arrived on the MQTT broker.
+     * Event fired when the delivery of a published message is complete.
      * @param iMqttDeliveryToken the MqttDeliveryToken for which the message was successfully sent.
      */
     @Override
     public void deliveryComplete(IMqttDeliveryToken iMqttDeliveryToken)
     {
+        /*
+        **Codes_SRS_Mqtt_28_005: [**The function shall give the slot taken by the delivered message back to the in-flight window.**]**
+         */
+        this.inFlightWindow.release();
 
+        if (this.deliveryTracker != null)
+        {
+            /*
+            **Codes_SRS_Mqtt_28_007: [**If a delivery tracker is set, the function shall mark the delivery of the token as complete on the tracker.**]**
+             */
+            this.deliveryTracker.complete(iMqttDeliveryToken);
+        }
     }
 
     public Pair<String, byte[]> peekMessage() throws IOException
@@ -489,84 +559,122 @@ abstract public class Mqtt implements MqttCallback
         int propertiesStringStartingIndex = topic.indexOf(MESSAGE_SYSTEM_PROPERTY_IDENTIFIER_ENCODED);
         if (propertiesStringStartingIndex != -1)
         {
-            String propertiesString = topic.substring(propertiesStringStartingIndex);
-
             /*
             **Codes_SRS_Mqtt_34_041: [**This method shall call assignPropertiesToMessage so that all properties from the topic string can be assigned to the message**]**
             */
-            assignPropertiesToMessage(message, propertiesString);
+            assignPropertiesToMessage(message, topic, propertiesStringStartingIndex);
         }
 
         return message;
     }
 
     /**
-     * Takes propertiesString and parses it for all the properties it holds and then assigns them to the provided message
-     * @param propertiesString the string to parse containing all the properties
+     * Parses the properties at the end of the topic in a single pass and assigns them to the provided message.
+     * The topic is not split or copied, and a key or value is only URL decoded if it holds an escaped character.
      * @param message the message to add the parsed properties to
+     * @param topic the topic string containing all the properties
+     * @param propertiesStringStartingIndex the index in the topic where the first property starts
      * @throws IllegalArgumentException if a property's key and value are not separated by the '=' symbol
      * @throws NumberFormatException if the property for expiry time is present, but the value cannot be parsed as a Long
      * */
-    private void assignPropertiesToMessage(Message message, String propertiesString) throws IllegalArgumentException, NumberFormatException
+    private void assignPropertiesToMessage(Message message, String topic, int propertiesStringStartingIndex) throws IllegalArgumentException, NumberFormatException
     {
         /*
         **Codes_SRS_Mqtt_34_054: [**A message may have 0 to many custom properties**]**
         */
+        /*
+        **Codes_SRS_Mqtt_28_010: [**This method shall parse the properties in a single pass over the topic, and only URL decode a key or value that holds an escaped character.**]**
+        */
         //expected format is <key>=<value><MESSAGE_PROPERTY_SEPARATOR><key>=<value><MESSAGE_PROPERTY_SEPARATOR>...
-        for (String propertyString : propertiesString.split(String.valueOf(MESSAGE_PROPERTY_SEPARATOR)))
+        int topicLength = topic.length();
+        while (topicLength > propertiesStringStartingIndex && topic.charAt(topicLength - 1) == MESSAGE_PROPERTY_SEPARATOR)
+        {
+            // trailing separators do not start a new property
+            topicLength--;
+        }
+
+        int propertyStart = propertiesStringStartingIndex;
+        while (propertyStart < topicLength)
         {
-            if (propertyString.contains("="))
+            int propertyEnd = topic.indexOf(MESSAGE_PROPERTY_SEPARATOR, propertyStart);
+            if (propertyEnd == -1 || propertyEnd > topicLength)
+            {
+                propertyEnd = topicLength;
+            }
+
+            int keyEnd = topic.indexOf(MESSAGE_PROPERTY_KEY_VALUE_SEPARATOR, propertyStart);
+            if (keyEnd == -1 || keyEnd >= propertyEnd)
+            {
+                /*
+                 **Codes_SRS_Mqtt_34_051: [**If a topic string's property's key and value are not separated by the '=' symbol, an IllegalArgumentException shall be thrown**]**
+                 */
+                throw new IllegalArgumentException("Unexpected property string provided. Expected '=' symbol between key and value of the property in string: " + topic.substring(propertyStart, propertyEnd));
+            }
+
+            //Expected format is <key>=<value> where both key and value may be encoded
+            int valueEnd = topic.indexOf(MESSAGE_PROPERTY_KEY_VALUE_SEPARATOR, keyEnd + 1);
+            if (valueEnd == -1 || valueEnd > propertyEnd)
+            {
+                valueEnd = propertyEnd;
+            }
+
+            /*
+            **Codes_SRS_Mqtt_34_053: [**A property's key and value may include unusual characters such as &, %, $**]**
+            */
+            String key = decodePropertyToken(topic, propertyStart, keyEnd);
+
+            //Some properties are reserved system properties and must be saved in the message differently
+            switch (key)
+            {
+                case TO:
+                case IOTHUB_ACK:
+                case USER_ID:
+                case ABSOLUTE_EXPIRY_TIME:
+                    //do nothing, so the value is never decoded
+                    break;
+                case MESSAGE_ID:
+                    message.setMessageId(decodePropertyToken(topic, keyEnd + 1, valueEnd));
+                    break;
+                case CORRELATION_ID:
+                    message.setCorrelationId(decodePropertyToken(topic, keyEnd + 1, valueEnd));
+                    break;
+                default:
+                    message.setProperty(key, decodePropertyToken(topic, keyEnd + 1, valueEnd));
+            }
+
+            propertyStart = propertyEnd + 1;
+        }
+    }
+
+    /**
+     * Returns the URL decoded characters of the topic between the provided indexes, and only
+     * runs the decoder if there is an escaped character among them.
+     * @param topic the topic string containing the token
+     * @param start the index of the first character of the token
+     * @param end the index after the last character of the token
+     * @return the decoded token
+     */
+    private static String decodePropertyToken(String topic, int start, int end)
+    {
+        String token = topic.substring(start, end);
+        for (int i = start; i < end; i++)
+        {
+            char c = topic.charAt(i);
+            if (c == '%' || c == '+')
             {
-                //Expected format is <key>=<value> where both key and value may be encoded
-                String key = propertyString.split("=")[PROPERTY_KEY_INDEX];
-                String value = propertyString.split("=")[PROPERTY_VALUE_INDEX];
                 try
                 {
-                    /*
-                    **Codes_SRS_Mqtt_34_053: [**A property's key and value may include unusual characters such as &, %, $**]**
-                    */
-                    key = URLDecoder.decode(key, StandardCharsets.UTF_8.name());
-                    value = URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+                    return URLDecoder.decode(token, StandardCharsets.UTF_8.name());
                 }
                 catch (UnsupportedEncodingException e)
                 {
                     // should never happen, since the encoding is hard-coded.
                     throw new IllegalStateException(e);
                 }
-
-                //Some properties are reserved system properties and must be saved in the message differently
-                switch (key)
-                {
-                    case TO:
-                        //do nothing
-                        break;
-                    case MESSAGE_ID:
-                        message.setMessageId(value);
-                        break;
-                    case IOTHUB_ACK:
-                        //do nothing
-                        break;
-                    case CORRELATION_ID:
-                        message.setCorrelationId(value);
-                        break;
-                    case USER_ID:
-                        //do nothing
-                        break;
-                    case ABSOLUTE_EXPIRY_TIME:
-                        //do nothing
-                        break;
-                    default:
-                        message.setProperty(key, value);
-                }
-            }
-            else
-            {
-                /*
-                 **Codes_SRS_Mqtt_34_051: [**If a topic string's property's key and value are not separated by the '=' symbol, an IllegalArgumentException shall be thrown**]**
-                 */
-                throw new IllegalArgumentException("Unexpected property string provided. Expected '=' symbol between key and value of the property in string: " + propertyString);
             }
         }
+
+        return token;
     }
 
     /**
@@ -585,5 +693,29 @@ abstract public class Mqtt implements MqttCallback
         }
 
         this.deviceClientConfig = deviceConfig; // set device client config object
+
+        //Codes_SRS_Mqtt_28_016: [The function shall create the reconnect scheduler of the connection with the device client configuration.]
+        this.reconnectScheduler = new IotHubReconnectScheduler(deviceConfig);
+    }
+
+    /**
+     * Set the tracker to notify when paho reports the delivery of a published message as complete.
+     * @param deliveryTracker is the delivery tracker to be set
+     * @throws IllegalArgumentException if the delivery tracker is null
+     */
+    protected void setDeliveryTracker(MqttDeliveryTracker deliveryTracker) throws IllegalArgumentException
+    {
+        if (deliveryTracker == null)
+        {
+            /*
+            ** Codes_SRS_Mqtt_28_008: [**If deliveryTracker is null, the function shall throw an IllegalArgumentException**]**
+             */
+            throw new IllegalArgumentException("MqttDeliveryTracker is null");
+        }
+
+        /*
+        ** Codes_SRS_Mqtt_28_009: [**The function shall save the provided delivery tracker.**]**
+         */
+        this.deliveryTracker = deliveryTracker;
     }
 }
\ No newline at end of file
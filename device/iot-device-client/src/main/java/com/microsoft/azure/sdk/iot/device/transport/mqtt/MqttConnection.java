@@ -15,6 +15,7 @@ import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 
 public class MqttConnection
 {
@@ -22,6 +23,7 @@ public class MqttConnection
     private MqttConnectOptions connectionOptions = null;
     private ConcurrentLinkedQueue<Pair<String, byte[]>> allReceivedMessages;
     private Object mqttLock;
+    private Semaphore inFlightWindow;
     private MqttCallback mqttCallback;
 
     //mqtt connection options
@@ -74,6 +76,9 @@ public class MqttConnection
         //Codes_SRS_MQTTCONNECTION_25_003: [The constructor shall create lock, queue for this MqttConnection.]
         this.allReceivedMessages = new ConcurrentLinkedQueue<>();
         this.mqttLock = new Object();
+
+        //Codes_SRS_MQTTCONNECTION_28_001: [The constructor shall create an in-flight window with MAX_IN_FLIGHT_COUNT slots for this MqttConnection.]
+        this.inFlightWindow = new Semaphore(MAX_IN_FLIGHT_COUNT);
     }
 
     /**
@@ -144,6 +149,28 @@ public class MqttConnection
         return mqttLock;
     }
 
+    /**
+     * Getter for the in-flight window. Each publish holds a slot until paho reports its delivery as complete.
+     * @return The semaphore used to count the messages in flight on this connection
+     */
+    Semaphore getInFlightWindow()
+    {
+        //Codes_SRS_MQTTCONNECTION_28_002: [Getter for the in-flight window on this connection.]
+        return inFlightWindow;
+    }
+
+    /**
+     * Resets the in-flight window after a reconnect. The messages that paho dropped from its in-flight
+     * state are never reported as delivered, so their slots are given back here.
+     * @param pendingDeliveryCount the number of messages that paho still holds in flight
+     */
+    void resetInFlightWindow(int pendingDeliveryCount)
+    {
+        //Codes_SRS_MQTTCONNECTION_28_003: [The function shall set the free slots of the in-flight window to MAX_IN_FLIGHT_COUNT minus the provided number of pending deliveries, and never below zero.]
+        this.inFlightWindow.drainPermits();
+        this.inFlightWindow.release(Math.max(0, MAX_IN_FLIGHT_COUNT - pendingDeliveryCount));
+    }
+
     /**
      * Getter for connection Options
      * @return the connection options to be used for Mqtt
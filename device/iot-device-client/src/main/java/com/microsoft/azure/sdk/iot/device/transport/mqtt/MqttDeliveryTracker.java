@@ -0,0 +1,249 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.mqtt;
+
+import com.microsoft.azure.sdk.iot.device.CustomLogger;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+
+import java.util.*;
+
+/**
+ * Tracks the telemetry messages published over MQTT until the IoT Hub acknowledges them.
+ *
+ * Each packet is kept under the paho delivery token returned by its publish. When paho reports the
+ * delivery as complete, the packet moves to the delivered list. A packet that is not acknowledged
+ * within the delivery timeout is given back as timed out. If paho drops a message from its in-flight
+ * state, the packet moves to the requeued list so it can be sent again. The transport polls these
+ * lists to fire the user callbacks. All lists keep the order in which the packets were published.
+ */
+public final class MqttDeliveryTracker
+{
+    private final Object trackerLock = new Object();
+    private final long deliveryTimeoutInMilliseconds;
+
+    /** Messages published and waiting for the acknowledge from the IoT Hub, in publish order. */
+    private final Map<IMqttDeliveryToken, TrackedDelivery> inFlightDeliveries = new LinkedHashMap<>();
+
+    private final List<IotHubOutboundPacket> deliveredPackets = new ArrayList<>();
+    private final List<IotHubOutboundPacket> requeuedPackets = new ArrayList<>();
+
+    private final CustomLogger logger = new CustomLogger(this.getClass());
+
+    private static final class TrackedDelivery
+    {
+        private final IotHubOutboundPacket packet;
+        private final long publishTimeInMilliseconds;
+
+        private TrackedDelivery(IotHubOutboundPacket packet, long publishTimeInMilliseconds)
+        {
+            this.packet = packet;
+            this.publishTimeInMilliseconds = publishTimeInMilliseconds;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param deliveryTimeoutInMilliseconds the time to wait for the acknowledge of each message.
+     * @throws IllegalArgumentException if the provided timeout is zero or negative.
+     */
+    public MqttDeliveryTracker(long deliveryTimeoutInMilliseconds) throws IllegalArgumentException
+    {
+        if (deliveryTimeoutInMilliseconds <= 0)
+        {
+            // Codes_SRS_MQTTDELIVERYTRACKER_28_002: [If the provided deliveryTimeoutInMilliseconds is zero or negative, the constructor shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("delivery timeout can not be zero or negative");
+        }
+
+        // Codes_SRS_MQTTDELIVERYTRACKER_28_001: [The constructor shall save the delivery timeout and start with no tracked deliveries.]
+        this.deliveryTimeoutInMilliseconds = deliveryTimeoutInMilliseconds;
+    }
+
+    /**
+     * Starts tracking the delivery of a published packet.
+     *
+     * @param deliveryToken the paho delivery token returned by the publish.
+     * @param packet the packet that was published.
+     * @throws IllegalArgumentException if any of the parameters is null.
+     */
+    public void track(IMqttDeliveryToken deliveryToken, IotHubOutboundPacket packet) throws IllegalArgumentException
+    {
+        if (deliveryToken == null || packet == null)
+        {
+            // Codes_SRS_MQTTDELIVERYTRACKER_28_004: [If the provided deliveryToken or packet is null, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("delivery token and packet cannot be null");
+        }
+
+        synchronized (this.trackerLock)
+        {
+            if (deliveryToken.isComplete())
+            {
+                // Codes_SRS_MQTTDELIVERYTRACKER_28_005: [If the delivery is already complete, the function shall add the packet to the delivered list.]
+                this.deliveredPackets.add(packet);
+            }
+            else
+            {
+                // Codes_SRS_MQTTDELIVERYTRACKER_28_003: [The function shall save the packet and its publish time under the provided delivery token.]
+                this.inFlightDeliveries.put(deliveryToken, new TrackedDelivery(packet, System.currentTimeMillis()));
+            }
+        }
+    }
+
+    /**
+     * Marks the delivery of the packet tracked under the provided token as complete.
+     *
+     * @param deliveryToken the paho delivery token reported as complete.
+     */
+    public void complete(IMqttDeliveryToken deliveryToken)
+    {
+        synchronized (this.trackerLock)
+        {
+            // Codes_SRS_MQTTDELIVERYTRACKER_28_007: [If the provided deliveryToken is not tracked, the function shall do nothing.]
+            TrackedDelivery delivery = this.inFlightDeliveries.remove(deliveryToken);
+            if (delivery != null)
+            {
+                // Codes_SRS_MQTTDELIVERYTRACKER_28_006: [The function shall move the packet tracked under the provided deliveryToken to the delivered list.]
+                this.deliveredPackets.add(delivery.packet);
+                logger.LogDebug("Message with messageid %s was acknowledged by IoTHub after %d milliseconds, method name is %s ",
+                        delivery.packet.getMessage().getMessageId(),
+                        System.currentTimeMillis() - delivery.publishTimeInMilliseconds,
+                        logger.getMethodName());
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the packets acknowledged by the IoT Hub.
+     *
+     * @return the delivered packets, in publish order. It can be empty.
+     */
+    public List<IotHubOutboundPacket> pollDelivered()
+    {
+        synchronized (this.trackerLock)
+        {
+            // Codes_SRS_MQTTDELIVERYTRACKER_28_008: [The function shall remove and return all packets in the delivered list, in publish order.]
+            return drain(this.deliveredPackets);
+        }
+    }
+
+    /**
+     * Removes and returns the packets that were not acknowledged within the delivery timeout.
+     *
+     * @return the timed out packets, in publish order. It can be empty.
+     */
+    public List<IotHubOutboundPacket> pollTimedOut()
+    {
+        synchronized (this.trackerLock)
+        {
+            List<IotHubOutboundPacket> timedOutPackets = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            Iterator<TrackedDelivery> iterator = this.inFlightDeliveries.values().iterator();
+            while (iterator.hasNext())
+            {
+                TrackedDelivery delivery = iterator.next();
+                if (now - delivery.publishTimeInMilliseconds >= this.deliveryTimeoutInMilliseconds)
+                {
+                    // Codes_SRS_MQTTDELIVERYTRACKER_28_009: [The function shall stop tracking every packet tracked for longer than the delivery timeout.]
+                    iterator.remove();
+                    timedOutPackets.add(delivery.packet);
+                }
+            }
+
+            // Codes_SRS_MQTTDELIVERYTRACKER_28_010: [The function shall return the packets that timed out, in publish order.]
+            return timedOutPackets;
+        }
+    }
+
+    /**
+     * Moves the packets that paho no longer holds in flight to the requeued list, so they can be sent again.
+     *
+     * @param pendingDeliveryTokens the delivery tokens paho still holds in flight. Can be {@code null}.
+     */
+    public void requeueLostDeliveries(IMqttDeliveryToken[] pendingDeliveryTokens)
+    {
+        Set<IMqttDeliveryToken> pendingTokens = new HashSet<>();
+        if (pendingDeliveryTokens != null)
+        {
+            pendingTokens.addAll(Arrays.asList(pendingDeliveryTokens));
+        }
+
+        synchronized (this.trackerLock)
+        {
+            Iterator<Map.Entry<IMqttDeliveryToken, TrackedDelivery>> iterator = this.inFlightDeliveries.entrySet().iterator();
+            while (iterator.hasNext())
+            {
+                Map.Entry<IMqttDeliveryToken, TrackedDelivery> entry = iterator.next();
+                if (entry.getKey().isComplete())
+                {
+                    // Codes_SRS_MQTTDELIVERYTRACKER_28_012: [The function shall move every tracked packet whose delivery is complete to the delivered list.]
+                    iterator.remove();
+                    this.deliveredPackets.add(entry.getValue().packet);
+                }
+                else if (!pendingTokens.contains(entry.getKey()))
+                {
+                    // Codes_SRS_MQTTDELIVERYTRACKER_28_011: [The function shall move every tracked packet whose delivery token is not complete and not in the provided pending tokens to the requeued list, in publish order.]
+                    iterator.remove();
+                    this.requeuedPackets.add(entry.getValue().packet);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the packets that must be sent again.
+     *
+     * @return the requeued packets, in publish order. It can be empty.
+     */
+    public List<IotHubOutboundPacket> pollRequeued()
+    {
+        synchronized (this.trackerLock)
+        {
+            // Codes_SRS_MQTTDELIVERYTRACKER_28_013: [The function shall remove and return all packets in the requeued list, in publish order.]
+            return drain(this.requeuedPackets);
+        }
+    }
+
+    /**
+     * Removes and returns all the packets that are in flight or requeued.
+     *
+     * @return the requeued packets followed by the packets in flight, in publish order. It can be empty.
+     */
+    public List<IotHubOutboundPacket> removeUndelivered()
+    {
+        synchronized (this.trackerLock)
+        {
+            // Codes_SRS_MQTTDELIVERYTRACKER_28_014: [The function shall remove and return all requeued packets followed by all packets in flight, in publish order.]
+            List<IotHubOutboundPacket> undeliveredPackets = drain(this.requeuedPackets);
+            for (TrackedDelivery delivery : this.inFlightDeliveries.values())
+            {
+                undeliveredPackets.add(delivery.packet);
+            }
+            this.inFlightDeliveries.clear();
+
+            return undeliveredPackets;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the tracker holds no packet, and {@code false} otherwise.
+     *
+     * @return {@code true} if the tracker holds no packet, and {@code false} otherwise.
+     */
+    public boolean isEmpty()
+    {
+        synchronized (this.trackerLock)
+        {
+            // Codes_SRS_MQTTDELIVERYTRACKER_28_015: [The function shall return true if there are no packets in flight, delivered or requeued, and false otherwise.]
+            return this.inFlightDeliveries.isEmpty() && this.deliveredPackets.isEmpty() && this.requeuedPackets.isEmpty();
+        }
+    }
+
+    private static List<IotHubOutboundPacket> drain(List<IotHubOutboundPacket> packets)
+    {
+        List<IotHubOutboundPacket> drainedPackets = new ArrayList<>(packets);
+        packets.clear();
+        return drainedPackets;
+    }
+}
@@ -10,15 +10,16 @@ import com.microsoft.azure.sdk.iot.device.MessageType;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransportMessage;
 import org.apache.commons.lang3.tuple.Pair;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 
 
 public class MqttDeviceMethod extends Mqtt
 {
+    /** The longest time the IoT Hub waits for the response of a method, after which it fails the invocation. */
+    private static final long REQUEST_TIMEOUT_IN_MILLISECONDS = 300 * 1000;
+
     private String subscribeTopic;
     private String responseTopic;
-    private final Map<String, DeviceOperations> requestMap = new HashMap<>();
+    private final MqttPendingRequests pendingRequests = new MqttPendingRequests(REQUEST_TIMEOUT_IN_MILLISECONDS);
     private boolean isStarted = false;
     private final CustomLogger logger = new CustomLogger(this.getClass());
 
@@ -64,9 +65,9 @@ public class MqttDeviceMethod extends Mqtt
     {
         isStarted = false;
 
-        if (!requestMap.isEmpty())
+        if (pendingRequests.size() > 0)
         {
-            logger.LogInfo("Pending %d responses to be sent to IotHub yet unsubscribed %s", requestMap.size(), logger.getMethodName());
+            logger.LogInfo("Pending %d responses to be sent to IotHub yet unsubscribed %s", pendingRequests.size(), logger.getMethodName());
         }
     }
 
@@ -113,9 +114,10 @@ public class MqttDeviceMethod extends Mqtt
                     throw new IOException("Request id cannot be null or empty");
                 }
 
-                if (requestMap.containsKey(message.getRequestId()))
+                DeviceOperations requestOperation = pendingRequests.remove(message.getRequestId());
+                if (requestOperation != null)
                 {
-                    switch (requestMap.remove(message.getRequestId()))
+                    switch (requestOperation)
                     {
                         case DEVICE_OPERATION_METHOD_RECEIVE_REQUEST:
                             break;
@@ -159,6 +161,15 @@ public class MqttDeviceMethod extends Mqtt
         {
             IotHubTransportMessage message = null;
 
+            Pair<String, DeviceOperations> expiredRequest;
+            while ((expiredRequest = pendingRequests.removeExpired()) != null)
+            {
+                /*
+                Codes_SRS_MqttDeviceMethod_28_002: [**This method shall remove the method invocations that were not answered within the time the IoT Hub waits for their response.**]**
+                 */
+                logger.LogInfo("Method invocation %s was not answered in time, method name is %s", expiredRequest.getKey(), logger.getMethodName());
+            }
+
             Pair<String, byte[]> messagePair = peekMessage();
 
             if (messagePair != null)
@@ -223,7 +234,10 @@ public class MqttDeviceMethod extends Mqtt
                                     Codes_SRS_MqttDeviceMethod_25_032: [**If the topic is of type post topic and if method name and request id has been successfully parsed then this method shall set operation type as DEVICE_OPERATION_METHOD_RECEIVE_REQUEST **]**
                                     */
                                     message.setDeviceOperationType(DeviceOperations.DEVICE_OPERATION_METHOD_RECEIVE_REQUEST);
-                                    requestMap.put(reqId, DeviceOperations.DEVICE_OPERATION_METHOD_RECEIVE_REQUEST);
+                                    /*
+                                    Codes_SRS_MqttDeviceMethod_28_001: [**If the topic is of type post topic then this method shall add the request id to the pending requests until the response is sent.**]**
+                                    */
+                                    pendingRequests.add(reqId, DeviceOperations.DEVICE_OPERATION_METHOD_RECEIVE_REQUEST);
                                 }
                                 else
                                 {
@@ -11,14 +11,17 @@ import com.microsoft.azure.sdk.iot.device.transport.IotHubTransportMessage;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Pattern;
 
 public class MqttDeviceTwin extends Mqtt
 {
+    /** The time to wait for the response of a twin request before failing it. */
+    private static final long REQUEST_TIMEOUT_IN_MILLISECONDS = 60 * 1000;
+
+    /** The status of the response given to a twin request that timed out. */
+    private static final String REQUEST_TIMEOUT_STATUS = "504";
+
     private String subscribeTopic;
-    private final Map<String, DeviceOperations> requestMap = new HashMap<>();
+    private final MqttPendingRequests pendingRequests = new MqttPendingRequests(REQUEST_TIMEOUT_IN_MILLISECONDS);
     private boolean isStarted = false;
     private final CustomLogger logger = new CustomLogger(this.getClass());
 
@@ -78,9 +81,9 @@ public class MqttDeviceTwin extends Mqtt
     {
         isStarted = false;
 
-        if (!requestMap.isEmpty())
+        if (pendingRequests.size() > 0)
         {
-            logger.LogInfo("Pending %d responses from IotHub yet unsubscribed %s", requestMap.size(), logger.getMethodName());
+            logger.LogInfo("Pending %d responses from IotHub yet unsubscribed %s", pendingRequests.size(), logger.getMethodName());
         }
     }
 
@@ -209,7 +212,6 @@ public class MqttDeviceTwin extends Mqtt
         }
 
         String publishTopic = buildTopic(message);
-        requestMap.put(message.getRequestId(), message.getDeviceOperationType());
 
         /*
         **Codes_SRS_MqttMessaging_25_024: [**send method shall publish a message to the IOT Hub on the publish topic by calling method publish().**]**
@@ -237,15 +239,59 @@ public class MqttDeviceTwin extends Mqtt
             /*
             **Codes_SRS_MQTTDEVICETWIN_25_031: [**send method shall publish a message to the IOT Hub on the respective publish topic by calling method publish().**]**
              */
-            this.publish(publishTopic, message.getBytes());
+            String requestId = message.getRequestId();
+            if (!pendingRequests.add(requestId, message.getDeviceOperationType()))
+            {
+                /*
+                **Codes_SRS_MQTTDEVICETWIN_28_003: [**send method shall throw IOException if a request with the same request id is already waiting for its response.**]**
+                 */
+                throw new IOException("Request Id " + requestId + " is already pending");
+            }
+
+            /*
+            **Codes_SRS_MQTTDEVICETWIN_28_002: [**send method shall add the request to the pending requests before publishing it, so any number of requests can wait for their response at once.**]**
+             */
+            boolean isPublished = false;
+            try
+            {
+                this.publish(publishTopic, message.getBytes());
+                isPublished = true;
+            }
+            finally
+            {
+                if (!isPublished)
+                {
+                    /*
+                    **Codes_SRS_MQTTDEVICETWIN_28_004: [**If the request cannot be published, send method shall remove it from the pending requests.**]**
+                     */
+                    pendingRequests.remove(requestId);
+                }
+            }
+        }
+    }
+
+    private IotHubTransportMessage buildTimeoutResponse(Pair<String, DeviceOperations> expiredRequest)
+    {
+        IotHubTransportMessage message = new IotHubTransportMessage(new byte[0], MessageType.DEVICE_TWIN);
+        message.setRequestId(expiredRequest.getKey());
+        message.setStatus(REQUEST_TIMEOUT_STATUS);
+        if (expiredRequest.getValue() == DeviceOperations.DEVICE_OPERATION_TWIN_GET_REQUEST)
+        {
+            message.setDeviceOperationType(DeviceOperations.DEVICE_OPERATION_TWIN_GET_RESPONSE);
+        }
+        else
+        {
+            message.setDeviceOperationType(DeviceOperations.DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_RESPONSE);
         }
+        return message;
     }
 
     private String getStatus(String token) throws IOException
     {
         String status;
 
-        if (token != null && token.matches("\\d{3}")) // 3 digit number
+        if (token != null && token.length() == 3
+                && Character.isDigit(token.charAt(0)) && Character.isDigit(token.charAt(1)) && Character.isDigit(token.charAt(2))) // 3 digit number
         {
             status = token;
         }
@@ -260,41 +306,6 @@ public class MqttDeviceTwin extends Mqtt
         return status;
     }
 
-    private String getRequestId(String token)
-    {
-        String reqId = null;
-
-        if (token.contains(REQ_ID)) // restriction for request id
-        {
-            int startIndex = token.indexOf(REQ_ID) + REQ_ID.length();
-            int endIndex = token.length();
-
-            if (token.contains(VERSION))
-            {
-                endIndex = token.indexOf(VERSION) - 1;
-            }
-
-            reqId = token.substring(startIndex, endIndex);
-        }
-
-        return reqId;
-    }
-
-    private String getVersion(String token)
-    {
-        String version = null;
-
-        if (token.contains(VERSION)) //restriction for version
-        {
-            int startIndex = token.indexOf(VERSION) + VERSION.length();
-            int endIndex = token.length();
-
-            version = token.substring(startIndex, endIndex);
-        }
-
-        return version;
-    }
-
     @Override
     public Message receive() throws IOException
     {
@@ -302,6 +313,16 @@ public class MqttDeviceTwin extends Mqtt
         {
             IotHubTransportMessage messsage = null;
 
+            Pair<String, DeviceOperations> expiredRequest = pendingRequests.removeExpired();
+            if (expiredRequest != null)
+            {
+                /*
+                **Codes_SRS_MQTTDEVICETWIN_28_005: [**If a pending request did not get its response within the request timeout, this method shall remove it and return a response to it with the request id, the status 504 and no payload.**]**
+                 */
+                logger.LogInfo("Twin request %s timed out waiting for its response, method name is %s", expiredRequest.getKey(), logger.getMethodName());
+                return buildTimeoutResponse(expiredRequest);
+            }
+
             // Codes_SRS_MQTTDEVICETWIN_25_035: [This method shall call peekMessage to get the message payload from the received Messages queue corresponding to the messaging client's operation.]
             Pair<String, byte[]> messagePair = peekMessage();
 
@@ -320,8 +341,8 @@ public class MqttDeviceTwin extends Mqtt
 
                         if (topic.length() > RES.length() && topic.startsWith(RES))
                         {
-                            // Tokenize on backslash
-                            String[] topicTokens = topic.split(Pattern.quote("/"));
+                            // Codes_SRS_MQTTDEVICETWIN_28_001: [This method shall parse the response and patch topics in a single pass with a TopicParser, without splitting them.]
+                            TopicParser topicParser = new TopicParser(topic);
                             if (data != null && data.length > 0)
                             {
                             /*
@@ -342,28 +363,29 @@ public class MqttDeviceTwin extends Mqtt
                             }
 
                             // Case for $iothub/twin/res/{status}/?$rid={request id}&$version={new version}
-                            if (topicTokens.length > STATUS_TOKEN)
+                            if (topicParser.getTokenCount() > STATUS_TOKEN)
                             {
                             /*
                             **Codes_SRS_MQTTDEVICETWIN_25_038: [**If the topic is of type response topic then this method shall parse further for status and set it for the message by calling setStatus for the message**]**
                             */
-                                messsage.setStatus(getStatus(topicTokens[STATUS_TOKEN]));
+                                messsage.setStatus(getStatus(topicParser.getStatus(STATUS_TOKEN)));
                             }
                             else
                             {
                                 throw new IOException("Message received without status");
                             }
 
-                            if (topicTokens.length > REQID_TOKEN)
+                            if (topicParser.getTokenCount() > REQID_TOKEN)
                             {
                             /*
                             **Codes_SRS_MQTTDEVICETWIN_25_040: [**If the topic is of type response topic then this method shall parse further to look for request id which if found is set by calling setRequestId**]**
                             */
-                                String requestId = getRequestId(topicTokens[REQID_TOKEN]);
+                                String requestId = topicParser.getRequestId(REQID_TOKEN);
                                 messsage.setRequestId(requestId);
-                                if (requestMap.containsKey(requestId))
+                                DeviceOperations requestOperation = pendingRequests.remove(requestId);
+                                if (requestOperation != null)
                                 {
-                                    switch (requestMap.remove(requestId))
+                                    switch (requestOperation)
                                     {
                                         case DEVICE_OPERATION_TWIN_GET_REQUEST:
                                             messsage.setDeviceOperationType(DeviceOperations.DEVICE_OPERATION_TWIN_GET_RESPONSE);
@@ -377,16 +399,20 @@ public class MqttDeviceTwin extends Mqtt
                                 }
                                 else
                                 {
-                                    throw new UnsupportedOperationException();
+                                    /*
+                                    **Codes_SRS_MQTTDEVICETWIN_28_006: [**If the response is for a request that is not pending, such as a request that timed out, this method shall drop it and return null.**]**
+                                     */
+                                    logger.LogInfo("Dropping the response to twin request %s which is not pending, method name is %s", requestId, logger.getMethodName());
+                                    return null;
                                 }
                             }
 
-                            if (topicTokens.length > VERSION_TOKEN)
+                            if (topicParser.getTokenCount() > VERSION_TOKEN)
                             {
                             /*
                             **Codes_SRS_MQTTDEVICETWIN_25_041: [**If the topic is of type response topic then this method shall parse further to look for version which if found is set by calling setVersion**]**
                             */
-                                messsage.setVersion(getVersion(topicTokens[VERSION_TOKEN]));
+                                messsage.setVersion(topicParser.getVersion(VERSION_TOKEN));
                             }
                         }
                         else if (topic.length() > PATCH.length() && topic.startsWith(PATCH))
@@ -410,14 +436,14 @@ public class MqttDeviceTwin extends Mqtt
                                 }
 
                                 // Case for $iothub/twin/PATCH/properties/desired/?$version={new version}
-                                // Tokenize on backslash
-                                String[] topicTokens = topic.split(Pattern.quote("/"));
-                                if (topicTokens.length > PATCH_VERSION_TOKEN)
+                                // Codes_SRS_MQTTDEVICETWIN_28_001: [This method shall parse the response and patch topics in a single pass with a TopicParser, without splitting them.]
+                                TopicParser topicParser = new TopicParser(topic);
+                                if (topicParser.getTokenCount() > PATCH_VERSION_TOKEN)
                                 {
                                 /*
                                 **Codes_SRS_MQTTDEVICETWIN_25_042: [**If the topic is of type patch for desired properties then this method shall parse further to look for version which if found is set by calling setVersion**]**
                                 */
-                                    messsage.setVersion(getVersion(topicTokens[PATCH_VERSION_TOKEN]));
+                                    messsage.setVersion(topicParser.getVersion(PATCH_VERSION_TOKEN));
                                 }
 
                                 logger.LogInfo("Message received on DT " + messsage.getDeviceOperationType());
@@ -4,13 +4,17 @@
 package com.microsoft.azure.sdk.iot.device.transport.mqtt;
 
 import com.microsoft.azure.sdk.iot.device.*;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransportMessage;
 import com.microsoft.azure.sdk.iot.device.transport.State;
 import com.microsoft.azure.sdk.iot.device.transport.TransportUtils;
 
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 
 public class MqttIotHubConnection implements MqttConnectionStateListener
 {
@@ -44,6 +48,8 @@ public class MqttIotHubConnection implements MqttConnectionStateListener
     private IotHubConnectionStateCallback stateCallback;
     private Object stateCallbackContext;
 
+    private MqttDeliveryTracker deliveryTracker;
+
     /**
      * Constructs an instance from the given {@link DeviceClientConfig}
      * object.
@@ -159,6 +165,12 @@ public class MqttIotHubConnection implements MqttConnectionStateListener
                 // Codes_SRS_MQTTIOTHUBCONNECTION_99_017 : [The function shall set DeviceClientConfig object needed for SAS token renewal.]
                 this.deviceMessaging.setDeviceClientConfig(this.config);
 
+                if (this.deliveryTracker != null)
+                {
+                    //Codes_SRS_MQTTIOTHUBCONNECTION_28_003: [If a delivery tracker is registered, the function shall set it on the MqttMessaging object.]
+                    this.deviceMessaging.setDeliveryTracker(this.deliveryTracker);
+                }
+
                 this.deviceMessaging.start();
                 this.state = State.OPEN;
             }
@@ -228,16 +240,46 @@ public class MqttIotHubConnection implements MqttConnectionStateListener
      * @throws IllegalStateException if the MqttIotHubConnection is not open
      */
     public IotHubStatusCode sendEvent(Message message) throws IllegalStateException
+    {
+        return this.sendEvent(message, null);
+    }
+
+    /**
+     * Sends the event message of the provided packet. If a delivery tracker is registered, a
+     * telemetry message is tracked until the IoT Hub acknowledges it, and the status code only
+     * tells that the message was handed to the MQTT client.
+     *
+     * @param packet the packet containing the event message.
+     *
+     * @return the status code from sending the event message.
+     *
+     * @throws IllegalArgumentException if the packet is null
+     * @throws IllegalStateException if the MqttIotHubConnection is not open
+     */
+    public IotHubStatusCode sendPacket(IotHubOutboundPacket packet) throws IllegalArgumentException, IllegalStateException
+    {
+        if (packet == null)
+        {
+            // Codes_SRS_MQTTIOTHUBCONNECTION_28_005: [If the packet is null, the function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("Packet cannot be null");
+        }
+
+        // Codes_SRS_MQTTIOTHUBCONNECTION_28_006: [The function shall send the message of the packet in the same way as sendEvent.]
+        return this.sendEvent(packet.getMessage(), packet);
+    }
+
+    private IotHubStatusCode sendEvent(Message message, IotHubOutboundPacket packet) throws IllegalStateException
     {
         synchronized (MQTT_CONNECTION_LOCK)
         {
             // Codes_SRS_MQTTIOTHUBCONNECTION_15_010: [If the message is null or empty,
             // the function shall return status code BAD_FORMAT.]
-            if (message == null || message.getBytes() == null ||
+            ByteBuffer body = (message == null) ? null : message.getBodyBuffer();
+            if (body == null ||
                     (
                             (message.getMessageType() != MessageType.DEVICE_TWIN
                                     && message.getMessageType() != MessageType.DEVICE_METHODS)
-                                    && message.getBytes().length == 0))
+                                    && !body.hasRemaining()))
             {
                 return IotHubStatusCode.BAD_FORMAT;
             }
@@ -282,7 +324,13 @@ public class MqttIotHubConnection implements MqttConnectionStateListener
                 }
                 else
                 {
-                    this.deviceMessaging.send(message);
+                    IMqttDeliveryToken deliveryToken = this.deviceMessaging.send(message);
+
+                    if (packet != null && this.deliveryTracker != null)
+                    {
+                        // Codes_SRS_MQTTIOTHUBCONNECTION_28_007: [If the message is telemetry and a delivery tracker is registered, the function shall track the delivery token of the message with the packet.]
+                        this.deliveryTracker.track(deliveryToken, packet);
+                    }
                 }
             }
             // Codes_SRS_MQTTIOTHUBCONNECTION_15_012: [If the message was not successfully
@@ -351,6 +399,23 @@ public class MqttIotHubConnection implements MqttConnectionStateListener
         this.stateCallbackContext = callbackContext;
     }
 
+    /**
+     * Saves the provided tracker, which is notified when the IoT Hub acknowledges a telemetry message.
+     * @param deliveryTracker the delivery tracker to use
+     * @throws IllegalArgumentException if the provided delivery tracker is null
+     */
+    void registerDeliveryTracker(MqttDeliveryTracker deliveryTracker)
+    {
+        if (deliveryTracker == null)
+        {
+            //Codes_SRS_MQTTIOTHUBCONNECTION_28_001: [If the provided delivery tracker is null, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("Delivery tracker cannot be null");
+        }
+
+        //Codes_SRS_MQTTIOTHUBCONNECTION_28_002: [This function shall save the provided delivery tracker.]
+        this.deliveryTracker = deliveryTracker;
+    }
+
     public void connectionLost()
     {
         if (this.stateCallback != null)
@@ -362,6 +427,20 @@ public class MqttIotHubConnection implements MqttConnectionStateListener
 
     public void connectionEstablished()
     {
+        if (this.mqttConnection != null && this.mqttConnection.getMqttAsyncClient() != null)
+        {
+            IMqttDeliveryToken[] pendingDeliveryTokens = this.mqttConnection.getMqttAsyncClient().getPendingDeliveryTokens();
+
+            //Codes_SRS_MQTTIOTHUBCONNECTION_28_008: [This function shall reset the in-flight window of the connection to the number of deliveries that the MQTT client still holds in flight.]
+            this.mqttConnection.resetInFlightWindow(pendingDeliveryTokens == null ? 0 : pendingDeliveryTokens.length);
+
+            if (this.deliveryTracker != null)
+            {
+                //Codes_SRS_MQTTIOTHUBCONNECTION_28_004: [If a delivery tracker is registered, this function shall requeue on the tracker the deliveries that the MQTT client no longer holds in flight.]
+                this.deliveryTracker.requeueLostDeliveries(pendingDeliveryTokens);
+            }
+        }
+
         if (this.stateCallback != null)
         {
             //Codes_SRS_MQTTIOTHUBCONNECTION_34_029: [If this object's connection state callback is not null, this function shall fire that callback with the saved context and status CONNECTION_SUCCESS.]
@@ -5,9 +5,12 @@ package com.microsoft.azure.sdk.iot.device.transport.mqtt;
 
 import com.microsoft.azure.sdk.iot.device.Message;
 import com.microsoft.azure.sdk.iot.device.MessageProperty;
+import com.microsoft.azure.sdk.iot.device.transport.TransportUtils;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 
 public class MqttMessaging extends Mqtt
 {
@@ -46,9 +49,17 @@ public class MqttMessaging extends Mqtt
        this.disconnect();
     }
 
-    public void send(Message message) throws IOException
+    /**
+     * Publishes the provided message on the messaging publish topic.
+     *
+     * @param message the message to send.
+     * @return the delivery token for the message, which completes when the message is acknowledged by the IoT Hub.
+     * @throws IOException if the message is null or cannot be published.
+     */
+    public IMqttDeliveryToken send(Message message) throws IOException
     {
-        if (message == null || message.getBytes() == null)
+        ByteBuffer body = (message == null) ? null : message.getBodyBuffer();
+        if (body == null)
         {
             //Codes_SRS_MqttMessaging_25_025: [send method shall throw an exception if the message is null.]
             throw new IOException("Message cannot be null");
@@ -132,7 +143,8 @@ public class MqttMessaging extends Mqtt
             stringBuilder.append(URLEncoder.encode(message.getDiagnosticCorrelationContext(), "UTF-8"));
         }
 
-        for(MessageProperty property : message.getProperties())
+        //Codes_SRS_MqttMessaging_28_003: [This method shall append the custom properties from the property map of the message, without copying them.]
+        for(MessageProperty property : message.getPropertyMap())
         {
             if (separatorNeeded)
             {
@@ -150,6 +162,8 @@ public class MqttMessaging extends Mqtt
         String messagePublishTopic = stringBuilder.toString();
 
         //Codes_SRS_MqttMessaging_25_024: [send method shall publish a message to the IOT Hub on the publish topic by calling method publish().]
-        this.publish(messagePublishTopic, message.getBytes());
+        //Codes_SRS_MqttMessaging_28_001: [send method shall return the delivery token returned by publish().]
+        //Codes_SRS_MqttMessaging_28_002: [send method shall publish a copy of the bytes of the message body.]
+        return this.publish(messagePublishTopic, TransportUtils.toByteArray(body));
     }
 }
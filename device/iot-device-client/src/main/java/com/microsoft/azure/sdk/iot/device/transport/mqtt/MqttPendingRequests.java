@@ -0,0 +1,158 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.mqtt;
+
+import com.microsoft.azure.sdk.iot.device.DeviceTwin.DeviceOperations;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Correlates the MQTT requests that wait for an answer with their request id.
+ *
+ * Any number of requests can be pending at once, and they can be added and
+ * answered from any thread. A request that is not answered within the request
+ * timeout expires: it is given back once by {@link #removeExpired()} so its
+ * caller can be failed, and is no longer pending.
+ */
+public final class MqttPendingRequests
+{
+    private final long requestTimeoutInNanoseconds;
+
+    /** Pending requests by request id. */
+    private final ConcurrentMap<String, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+
+    /** Requests in the order they were added, which is the order of their deadlines. Answered requests are dropped lazily. */
+    private final Queue<PendingRequest> deadlines = new ConcurrentLinkedQueue<>();
+
+    private static final class PendingRequest
+    {
+        private final String requestId;
+        private final DeviceOperations operation;
+        private final long deadlineInNanoseconds;
+
+        private PendingRequest(String requestId, DeviceOperations operation, long deadlineInNanoseconds)
+        {
+            this.requestId = requestId;
+            this.operation = operation;
+            this.deadlineInNanoseconds = deadlineInNanoseconds;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param requestTimeoutInMilliseconds the time to wait for the answer of each request.
+     * @throws IllegalArgumentException if the provided timeout is zero or negative.
+     */
+    public MqttPendingRequests(long requestTimeoutInMilliseconds) throws IllegalArgumentException
+    {
+        if (requestTimeoutInMilliseconds <= 0)
+        {
+            // Codes_SRS_MQTTPENDINGREQUESTS_28_001: [If the provided requestTimeoutInMilliseconds is zero or negative, the constructor shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("request timeout can not be zero or negative");
+        }
+
+        // Codes_SRS_MQTTPENDINGREQUESTS_28_002: [The constructor shall save the request timeout and start with no pending request.]
+        this.requestTimeoutInNanoseconds = TimeUnit.MILLISECONDS.toNanos(requestTimeoutInMilliseconds);
+    }
+
+    /**
+     * Adds a request that waits for an answer.
+     *
+     * @param requestId the id of the request.
+     * @param operation the operation of the request.
+     * @return {@code true} if the request was added, {@code false} if a request with the same id is already pending.
+     * @throws IllegalArgumentException if the request id is null or empty, or the operation is null.
+     */
+    public boolean add(String requestId, DeviceOperations operation) throws IllegalArgumentException
+    {
+        if (requestId == null || requestId.isEmpty() || operation == null)
+        {
+            // Codes_SRS_MQTTPENDINGREQUESTS_28_003: [If the provided requestId is null or empty, or the operation is null, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("request id cannot be null or empty and operation cannot be null");
+        }
+
+        PendingRequest request = new PendingRequest(requestId, operation, System.nanoTime() + this.requestTimeoutInNanoseconds);
+        if (this.pendingRequests.putIfAbsent(requestId, request) != null)
+        {
+            // Codes_SRS_MQTTPENDINGREQUESTS_28_004: [If a request with the same id is already pending, the function shall not change it and shall return false.]
+            return false;
+        }
+
+        // Codes_SRS_MQTTPENDINGREQUESTS_28_005: [The function shall save the request with its operation and a deadline of the request timeout from now, and return true.]
+        this.deadlines.offer(request);
+        return true;
+    }
+
+    /**
+     * Removes the request that was answered.
+     *
+     * @param requestId the id of the answered request.
+     * @return the operation of the request, or {@code null} if no request with this id is pending.
+     */
+    public DeviceOperations remove(String requestId)
+    {
+        if (requestId == null)
+        {
+            // Codes_SRS_MQTTPENDINGREQUESTS_28_006: [If the provided requestId is null, the function shall return null.]
+            return null;
+        }
+
+        // Codes_SRS_MQTTPENDINGREQUESTS_28_007: [The function shall remove the pending request with the provided id and return its operation, or return null if there is none, even if its deadline passed.]
+        PendingRequest request = this.pendingRequests.remove(requestId);
+        return (request == null) ? null : request.operation;
+    }
+
+    /**
+     * Removes the oldest request whose deadline passed without an answer.
+     *
+     * @return the id and the operation of the expired request, or {@code null} if no pending request expired.
+     */
+    public synchronized Pair<String, DeviceOperations> removeExpired()
+    {
+        long now = System.nanoTime();
+        PendingRequest request;
+        while ((request = this.deadlines.peek()) != null)
+        {
+            if (this.pendingRequests.get(request.requestId) != request)
+            {
+                // Codes_SRS_MQTTPENDINGREQUESTS_28_008: [The function shall skip the requests that were already removed.]
+                this.deadlines.poll();
+            }
+            else if (now - request.deadlineInNanoseconds < 0)
+            {
+                // Codes_SRS_MQTTPENDINGREQUESTS_28_009: [If the deadline of the oldest pending request did not pass, the function shall return null.]
+                return null;
+            }
+            else
+            {
+                this.deadlines.poll();
+                if (this.pendingRequests.remove(request.requestId, request))
+                {
+                    // Codes_SRS_MQTTPENDINGREQUESTS_28_010: [Otherwise, the function shall remove the oldest pending request and return its id and operation.]
+                    return new ImmutablePair<>(request.requestId, request.operation);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Getter for the number of pending requests.
+     *
+     * @return the number of requests that wait for an answer.
+     */
+    public int size()
+    {
+        // Codes_SRS_MQTTPENDINGREQUESTS_28_011: [The function shall return the number of pending requests.]
+        return this.pendingRequests.size();
+    }
+}
@@ -0,0 +1,212 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.mqtt;
+
+import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
+import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessageType;
+import com.microsoft.azure.sdk.iot.device.exceptions.IotHubSizeExceededException;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsBatchMessage;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsSingleMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Packs telemetry messages into one MQTT publish. The body of the publish is
+ * a JSON array of the messages, in the format of the HTTPS batches, and the
+ * callback of the publish invokes the callback of every message it packs.
+ */
+public final class MqttTelemetryBatch
+{
+    /** The name of the property that gives the content type of the publish. */
+    public static final String CONTENT_TYPE_PROPERTY = "content-type";
+
+    private final HttpsBatchMessage batchMessage;
+    private final List<IotHubOutboundPacket> packets = new ArrayList<>();
+    private long startTimeInMilliseconds;
+
+    /**
+     * Invokes the callback of every packet of a batch, in order, with the
+     * status of the publish.
+     */
+    private static final class BatchCallback implements IotHubEventCallback
+    {
+        private final List<IotHubOutboundPacket> packets;
+
+        private BatchCallback(List<IotHubOutboundPacket> packets)
+        {
+            this.packets = packets;
+        }
+
+        @Override
+        public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+        {
+            RuntimeException firstException = null;
+            for (IotHubOutboundPacket packet : this.packets)
+            {
+                if (packet.getCallback() != null)
+                {
+                    try
+                    {
+                        packet.getCallback().execute(responseStatus, packet.getContext());
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // the other messages of the batch still get their callback
+                        if (firstException == null)
+                        {
+                            firstException = e;
+                        }
+                    }
+                }
+            }
+
+            if (firstException != null)
+            {
+                throw firstException;
+            }
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxSizeInBytes the maximum size of the body of the publish, in bytes.
+     * @throws IllegalArgumentException if the provided size is smaller than 1.
+     */
+    public MqttTelemetryBatch(int maxSizeInBytes) throws IllegalArgumentException
+    {
+        // Codes_SRS_MQTTTELEMETRYBATCH_28_001: [If the provided maxSizeInBytes is smaller than 1, the constructor shall throw IllegalArgumentException.]
+        // Codes_SRS_MQTTTELEMETRYBATCH_28_002: [The constructor shall create an empty batch whose body cannot grow over the provided maxSizeInBytes.]
+        this.batchMessage = new HttpsBatchMessage(maxSizeInBytes);
+    }
+
+    /**
+     * Returns whether a packet can be packed into a batch. Only telemetry
+     * messages with a body can, and a packet that is itself a batch cannot.
+     *
+     * @param packet the packet to check.
+     * @return {@code true} if the packet can be packed into a batch, {@code false} otherwise.
+     */
+    public static boolean canPack(IotHubOutboundPacket packet)
+    {
+        if (packet == null || packet.getMessage() == null || packet.getCallback() instanceof BatchCallback)
+        {
+            // Codes_SRS_MQTTTELEMETRYBATCH_28_003: [If the packet is null, has no message, or is a batch, the function shall return false.]
+            return false;
+        }
+
+        // Codes_SRS_MQTTTELEMETRYBATCH_28_004: [The function shall return true only for the telemetry messages with a body that is not empty.]
+        MessageType messageType = packet.getMessage().getMessageType();
+        return messageType != MessageType.DEVICE_TWIN
+                && messageType != MessageType.DEVICE_METHODS
+                && packet.getMessage().getBodyLength() > 0;
+    }
+
+    /**
+     * Packs a packet into the batch.
+     *
+     * @param packet the packet to pack.
+     * @return {@code true} if the packet was packed, {@code false} if it would make the batch too large.
+     * @throws IllegalArgumentException if the packet cannot be packed into a batch.
+     */
+    public boolean add(IotHubOutboundPacket packet) throws IllegalArgumentException
+    {
+        if (!canPack(packet))
+        {
+            // Codes_SRS_MQTTTELEMETRYBATCH_28_005: [If the packet cannot be packed into a batch, the function shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("packet cannot be packed into a batch");
+        }
+
+        try
+        {
+            // Codes_SRS_MQTTTELEMETRYBATCH_28_006: [The function shall append the message of the packet to the JSON array, in the format of the HTTPS batches, and return true.]
+            this.batchMessage.addMessage(HttpsSingleMessage.parseHttpsMessage(packet.getMessage()));
+        }
+        catch (IotHubSizeExceededException e)
+        {
+            // Codes_SRS_MQTTTELEMETRYBATCH_28_007: [If the message makes the body larger than the maximum size, the function shall leave the batch unchanged and return false.]
+            return false;
+        }
+
+        if (this.packets.isEmpty())
+        {
+            // Codes_SRS_MQTTTELEMETRYBATCH_28_008: [When the first packet is packed, the function shall save the current time as the start time of the batch.]
+            this.startTimeInMilliseconds = System.currentTimeMillis();
+        }
+        this.packets.add(packet);
+        return true;
+    }
+
+    /**
+     * Getter for the number of packets in the batch.
+     *
+     * @return the number of packets in the batch.
+     */
+    public int size()
+    {
+        // Codes_SRS_MQTTTELEMETRYBATCH_28_009: [The function shall return the number of packets in the batch.]
+        return this.packets.size();
+    }
+
+    /**
+     * Returns whether the batch has no packet.
+     *
+     * @return {@code true} if the batch has no packet, {@code false} otherwise.
+     */
+    public boolean isEmpty()
+    {
+        // Codes_SRS_MQTTTELEMETRYBATCH_28_010: [The function shall return true if the batch has no packet, and false otherwise.]
+        return this.packets.isEmpty();
+    }
+
+    /**
+     * Getter for the time the first packet was packed.
+     *
+     * @return the start time of the batch, in milliseconds, or 0 if the batch is empty.
+     */
+    public long getStartTimeInMilliseconds()
+    {
+        // Codes_SRS_MQTTTELEMETRYBATCH_28_011: [The function shall return the time the first packet was packed, or 0 if the batch is empty.]
+        return this.startTimeInMilliseconds;
+    }
+
+    /**
+     * Getter for the packets in the batch.
+     *
+     * @return the packets, in the order they were packed.
+     */
+    public List<IotHubOutboundPacket> getPackets()
+    {
+        // Codes_SRS_MQTTTELEMETRYBATCH_28_012: [The function shall return the packets, in the order they were packed, in a list that cannot be changed.]
+        return Collections.unmodifiableList(new ArrayList<>(this.packets));
+    }
+
+    /**
+     * Creates the packet to publish for the batch.
+     *
+     * @return the packet to publish.
+     * @throws IllegalStateException if the batch is empty.
+     */
+    public IotHubOutboundPacket toPacket() throws IllegalStateException
+    {
+        if (this.packets.isEmpty())
+        {
+            // Codes_SRS_MQTTTELEMETRYBATCH_28_013: [If the batch is empty, the function shall throw IllegalStateException.]
+            throw new IllegalStateException("an empty batch cannot be published");
+        }
+
+        // Codes_SRS_MQTTTELEMETRYBATCH_28_014: [The function shall create a telemetry message with the JSON array as its body and the content type of the HTTPS batches as its content-type property.]
+        Message message = new Message(this.batchMessage.getBody());
+        message.setMessageType(MessageType.DEVICE_TELEMETRY);
+        message.setProperty(CONTENT_TYPE_PROPERTY, this.batchMessage.getContentType());
+
+        // Codes_SRS_MQTTTELEMETRYBATCH_28_015: [The callback of the packet shall invoke the callback of every packed packet, in order, with the status of the publish, and shall throw the first exception thrown by these callbacks once all of them are invoked.]
+        return new IotHubOutboundPacket(message, new BatchCallback(this.getPackets()), null);
+    }
+}
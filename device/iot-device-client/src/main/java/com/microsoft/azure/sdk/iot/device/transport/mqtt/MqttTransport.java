@@ -4,8 +4,13 @@
 package com.microsoft.azure.sdk.iot.device.transport.mqtt;
 
 import com.microsoft.azure.sdk.iot.device.*;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackDispatcher;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackDispatcherMetrics;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundMessageStore;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueue;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueueMetrics;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransport;
 import com.microsoft.azure.sdk.iot.device.transport.State;
 
@@ -39,13 +44,28 @@ public final class MqttTransport implements IotHubTransport
     private MqttIotHubConnection mqttIotHubConnection;
 
     /** Messages waiting to be sent. */
-    private final Queue<IotHubOutboundPacket> waitingList;
+    private final IotHubOutboundQueue waitingList;
 
     /** Messages whose callbacks that are waiting to be invoked. */
     private final Queue<IotHubCallbackPacket> callbackList;
 
+    /** Invokes the callbacks, on the callback executor of the config if there is one. */
+    private final IotHubCallbackDispatcher callbackDispatcher;
+
+    /** Telemetry messages sent and waiting for the acknowledge from the IoT Hub. */
+    private final MqttDeliveryTracker deliveryTracker;
+
+    /** Longer than the keep alive interval, so a broken connection is detected before a message times out. */
+    private static final long DELIVERY_TIMEOUT_IN_MILLISECONDS = 4 * 60 * 1000;
+
     private final DeviceClientConfig config;
 
+    /** The messages waiting to be sent on disk, or null if they are only kept in memory. */
+    private volatile IotHubOutboundMessageStore messageStore;
+
+    /** The telemetry messages packed into a publish that waits for the linger time, or null if there is none. */
+    private MqttTelemetryBatch pendingBatch;
+
     /**
      * Constructs an instance from the given {@link DeviceClientConfig}
      * object.
@@ -54,15 +74,22 @@ public final class MqttTransport implements IotHubTransport
      */
     public MqttTransport(DeviceClientConfig config)
     {
-        // Codes_SRS_MQTTTRANSPORT_15_001: [The constructor shall initialize an empty transport queue
-        // for adding messages to be sent as a batch.]
-        this.waitingList = new LinkedBlockingDeque<>();
         // Codes_SRS_MQTTTRANSPORT_15_002: [The constructor shall initialize an empty queue
         // for completed messages whose callbacks are waiting to be invoked.]
         this.callbackList = new LinkedBlockingDeque<>();
         this.config = config;
+        // Codes_SRS_MQTTTRANSPORT_15_001: [The constructor shall initialize an empty transport queue
+        // for adding messages to be sent as a batch.]
+        // Codes_SRS_MQTTTRANSPORT_28_007: [The transport queue shall be bounded by the outbound queue capacity and policy of the config.]
+        this.waitingList = new IotHubOutboundQueue(this.config, this.callbackList);
+        // Codes_SRS_MQTTTRANSPORT_28_014: [The constructor shall create a callback dispatcher for the config.]
+        this.callbackDispatcher = new IotHubCallbackDispatcher(this.config);
         this.state = State.CLOSED;
         this.mqttIotHubConnection = new MqttIotHubConnection(this.config);
+
+        // Codes_SRS_MQTTTRANSPORT_28_001: [The constructor shall create a delivery tracker and register it with the MqttIotHubConnection.]
+        this.deliveryTracker = new MqttDeliveryTracker(DELIVERY_TIMEOUT_IN_MILLISECONDS);
+        this.mqttIotHubConnection.registerDeliveryTracker(this.deliveryTracker);
     }
 
     /**
@@ -82,6 +109,17 @@ public final class MqttTransport implements IotHubTransport
         //Codes_SRS_MQTTTRANSPORT_34_003: [This function shall open the connection of the saved MqttIotHubConnection object.]
         this.mqttIotHubConnection.open();
 
+        // Codes_SRS_MQTTTRANSPORT_28_026: [The function shall open the transport queue, so it accepts new messages again after a close.]
+        this.waitingList.open();
+
+        // Codes_SRS_MQTTTRANSPORT_28_010: [The function shall open the outbound message store of the config, if any,
+        // and put the messages it holds in front of the transport queue.]
+        this.messageStore = IotHubOutboundMessageStore.open(this.config);
+        if (this.messageStore != null)
+        {
+            this.waitingList.requeueFirst(this.messageStore.replay(IotHubOutboundMessageStore.REPLAY_BATCH_SIZE));
+        }
+
         this.state = State.OPEN;
     }
 
@@ -103,11 +141,35 @@ public final class MqttTransport implements IotHubTransport
         {
             return;
         }
-        
+
+        // Codes_SRS_MQTTTRANSPORT_28_027: [The function shall close the transport queue first, so the callers waiting for room in it get their messages cancelled.]
+        this.waitingList.close();
+
+        // Codes_SRS_MQTTTRANSPORT_28_002: [The method will add the messages delivered but not yet notified to the callback list with status OK_EMPTY.]
+        for (IotHubOutboundPacket packet : this.deliveryTracker.pollDelivered())
+        {
+            this.callbackList.add(new IotHubCallbackPacket(IotHubStatusCode.OK_EMPTY, packet.getCallback(), packet.getContext()));
+        }
+
         // Codes_SRS_MQTTTRANSPORT_99_020: [The method will remove all the messages which are in progress or waiting to be sent and add them to the callback list.]
+        for (IotHubOutboundPacket packet : this.deliveryTracker.removeUndelivered())
+        {
+            this.callbackList.add(new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, packet.getCallback(), packet.getContext()));
+        }
+
+        // Codes_SRS_MQTTTRANSPORT_28_024: [The method will cancel the messages packed into a batch that was not published.]
+        if (this.pendingBatch != null)
+        {
+            for (IotHubOutboundPacket packet : this.pendingBatch.getPackets())
+            {
+                this.callbackList.add(new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, packet.getCallback(), packet.getContext()));
+            }
+            this.pendingBatch = null;
+        }
+
         while (!this.waitingList.isEmpty())
         {
-            IotHubOutboundPacket packet = this.waitingList.remove();
+            IotHubOutboundPacket packet = this.waitingList.poll();
 
             IotHubCallbackPacket callbackPacket = new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, packet.getCallback(), packet.getContext());
             this.callbackList.add(callbackPacket);
@@ -116,6 +178,13 @@ public final class MqttTransport implements IotHubTransport
         // Codes_SRS_MQTTTRANSPORT_99_021: [The method will invoke the callback list]
         invokeCallbacks();
 
+        // Codes_SRS_MQTTTRANSPORT_28_011: [The function shall close the outbound message store, which keeps the cancelled messages for the next open.]
+        if (this.messageStore != null)
+        {
+            this.messageStore.close();
+            this.messageStore = null;
+        }
+
         // Codes_SRS_MQTTTRANSPORT_15_005: [The function shall close the MQTT connection
         // with the IoT Hub given in the configuration.]
         this.mqttIotHubConnection.close();
@@ -147,11 +216,18 @@ public final class MqttTransport implements IotHubTransport
                 throw new IllegalStateException("Cannot add a message to an MQTT transport that is closed.");
             }
 
-            //Codes_SRS_MQTTTRANSPORT_15_007: [The function shall add a packet containing the message, callback,
-            // and callback context to the transport queue.]
-            IotHubOutboundPacket packet = new IotHubOutboundPacket(message, callback, callbackContext);
-            this.waitingList.add(packet);
         }
+
+        //Codes_SRS_MQTTTRANSPORT_15_007: [The function shall add a packet containing the message, callback,
+        // and callback context to the transport queue.]
+        // Codes_SRS_MQTTTRANSPORT_28_008: [The function shall add the packet without holding the send lock,
+        // so a caller waiting for room in a full queue does not stop the messages from being sent.]
+        // Codes_SRS_MQTTTRANSPORT_28_012: [If the transport has an outbound message store, the function shall write the message to it before adding it to the transport queue.]
+        IotHubOutboundMessageStore store = this.messageStore;
+        IotHubOutboundPacket packet = (store == null)
+                ? new IotHubOutboundPacket(message, callback, callbackContext)
+                : store.createPacket(message, callback, callbackContext);
+        this.waitingList.add(packet);
     }
 
     /**
@@ -197,44 +273,145 @@ public final class MqttTransport implements IotHubTransport
                 throw new IllegalStateException("MQTT transport is closed.");
             }
 
-            if (this.waitingList.size() <= 0)
+            // Codes_SRS_MQTTTRANSPORT_28_003: [The function shall put the messages requeued by the delivery tracker in front of the waiting list, keeping their order.]
+            this.waitingList.requeueFirst(this.deliveryTracker.pollRequeued());
+
+            if ((this.messageStore != null) && this.waitingList.isEmpty())
+            {
+                // Codes_SRS_MQTTTRANSPORT_28_013: [If the waiting list is empty, the function shall put the next messages of the outbound message store in it.]
+                this.waitingList.requeueFirst(this.messageStore.replay(IotHubOutboundMessageStore.REPLAY_BATCH_SIZE));
+            }
+
+            if (this.waitingList.size() <= 0 && this.pendingBatch == null)
             {
                 return;
             }
 
+            int batchMaxSizeInBytes = this.config.getMqttBatchMaxSizeInBytes();
+
             // Codes_SRS_MQTTTRANSPORT_15_009: [The function shall attempt to send every message
             // on its waiting list, one at a time.]
             while (!this.waitingList.isEmpty())
             {
-                IotHubOutboundPacket packet = this.waitingList.remove();
+                IotHubOutboundPacket packet = this.waitingList.poll();
                 if (packet.getMessage().isExpired())
                 {
                     //Codes_SRS_MQTTTRANSPORT_34_027: [If the packet to be sent contains a message that has expired, the message shall not be sent, but shall be added to the callback list with IotHubStatusCode MESSAGE_EXPIRED.]
                     IotHubCallbackPacket callbackPacket = new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_EXPIRED, packet.getCallback(), packet.getContext());
                     this.callbackList.add(callbackPacket);
                 }
-                else
+                else if (batchMaxSizeInBytes > 0 && MqttTelemetryBatch.canPack(packet))
                 {
-                    try
+                    // Codes_SRS_MQTTTRANSPORT_28_020: [If the config has an MQTT batch maximum size, the function shall pack
+                    // the telemetry messages into batches that do not exceed it, in the order they were queued.]
+                    if (this.pendingBatch == null)
                     {
-                        IotHubStatusCode status = this.mqttIotHubConnection.sendEvent(packet.getMessage());
-
-                        // Codes_SRS_MQTTTRANSPORT_15_010: [For each message being sent, the function shall add
-                        // the IoT Hub status code along with the callback and context to the callback list.]
-                        IotHubCallbackPacket callbackPacket = new IotHubCallbackPacket(status, packet.getCallback(), packet.getContext());
-                        this.callbackList.add(callbackPacket);
+                        this.pendingBatch = new MqttTelemetryBatch(batchMaxSizeInBytes);
                     }
-                    // Codes_SRS_MQTTTRANSPORT_15_011: [If the IoT Hub could not be reached, the message
-                    // shall be buffered to be sent again next time.]
-                    catch (IllegalStateException e)
+
+                    if (!this.pendingBatch.add(packet))
                     {
-                        this.waitingList.add(packet);
+                        // Codes_SRS_MQTTTRANSPORT_28_021: [When a message does not fit in the batch, the function shall publish the batch
+                        // and start a new one, and a message too large for an empty batch shall be sent on its own.]
+                        this.publishPendingBatch();
+                        this.pendingBatch = new MqttTelemetryBatch(batchMaxSizeInBytes);
+                        if (!this.pendingBatch.add(packet))
+                        {
+                            this.sendOrRequeue(packet);
+                        }
                     }
                 }
+                else
+                {
+                    // Codes_SRS_MQTTTRANSPORT_28_022: [The function shall publish the pending batch before a message that is not packed, so the messages keep their order.]
+                    this.publishPendingBatch();
+                    this.sendOrRequeue(packet);
+                }
+            }
+
+            // Codes_SRS_MQTTTRANSPORT_28_023: [The function shall publish the pending batch once its first message waited
+            // for the MQTT batch linger time of the config.]
+            if (this.pendingBatch != null
+                    && System.currentTimeMillis() - this.pendingBatch.getStartTimeInMilliseconds() >= this.config.getMqttBatchLingerTimeInMilliseconds())
+            {
+                this.publishPendingBatch();
             }
         }
     }
 
+    /**
+     * Publishes the telemetry messages packed into the pending batch, if any,
+     * as one message whose callback invokes the callback of every packed
+     * message. If the IoT Hub could not be reached, the packed messages are
+     * buffered to be sent again next time.
+     */
+    private void publishPendingBatch()
+    {
+        if (this.pendingBatch == null || this.pendingBatch.isEmpty())
+        {
+            this.pendingBatch = null;
+            return;
+        }
+
+        MqttTelemetryBatch batch = this.pendingBatch;
+        this.pendingBatch = null;
+        try
+        {
+            this.sendPacket(batch.toPacket());
+        }
+        catch (IllegalStateException e)
+        {
+            for (IotHubOutboundPacket packet : batch.getPackets())
+            {
+                this.waitingList.requeue(packet);
+            }
+        }
+    }
+
+    /**
+     * Sends a packet, and buffers it to be sent again next time if the IoT Hub
+     * could not be reached.
+     *
+     * @param packet the packet to send.
+     */
+    private void sendOrRequeue(IotHubOutboundPacket packet)
+    {
+        try
+        {
+            this.sendPacket(packet);
+        }
+        // Codes_SRS_MQTTTRANSPORT_15_011: [If the IoT Hub could not be reached, the message
+        // shall be buffered to be sent again next time.]
+        catch (IllegalStateException e)
+        {
+            this.waitingList.requeue(packet);
+        }
+    }
+
+    /**
+     * Sends a packet, and adds its callback to the callback list unless the
+     * callback waits for the acknowledge of the IoT Hub.
+     *
+     * @param packet the packet to send.
+     * @throws IllegalStateException if the IoT Hub could not be reached.
+     */
+    private void sendPacket(IotHubOutboundPacket packet) throws IllegalStateException
+    {
+        IotHubStatusCode status = this.mqttIotHubConnection.sendPacket(packet);
+
+        MessageType messageType = packet.getMessage().getMessageType();
+        boolean isTelemetry = messageType != MessageType.DEVICE_TWIN && messageType != MessageType.DEVICE_METHODS;
+        if (!isTelemetry || status != IotHubStatusCode.OK_EMPTY)
+        {
+            // Codes_SRS_MQTTTRANSPORT_15_010: [For each message being sent, the function shall add
+            // the IoT Hub status code along with the callback and context to the callback list.]
+            IotHubCallbackPacket callbackPacket = new IotHubCallbackPacket(status, packet.getCallback(), packet.getContext());
+            this.callbackList.add(callbackPacket);
+        }
+        // Codes_SRS_MQTTTRANSPORT_28_004: [If a telemetry message was sent with status OK_EMPTY,
+        // the function shall not add its callback, which is added when the IoT Hub acknowledges the message.]
+    }
+
     /**
      * Invokes the callbacks for all completed requests.
      *
@@ -251,6 +428,18 @@ public final class MqttTransport implements IotHubTransport
                 throw new IllegalStateException("MQTT transport is closed.");
             }
 
+            // Codes_SRS_MQTTTRANSPORT_28_005: [The function shall add the messages acknowledged by the IoT Hub to the callback queue with status OK_EMPTY.]
+            for (IotHubOutboundPacket packet : this.deliveryTracker.pollDelivered())
+            {
+                this.callbackList.add(new IotHubCallbackPacket(IotHubStatusCode.OK_EMPTY, packet.getCallback(), packet.getContext()));
+            }
+
+            // Codes_SRS_MQTTTRANSPORT_28_006: [The function shall add the messages not acknowledged within the delivery timeout to the callback queue with status ERROR.]
+            for (IotHubOutboundPacket packet : this.deliveryTracker.pollTimedOut())
+            {
+                this.callbackList.add(new IotHubCallbackPacket(IotHubStatusCode.ERROR, packet.getCallback(), packet.getContext()));
+            }
+
             // Codes_SRS_MQTTTRANSPORT_15_013: [The function shall invoke all callbacks on the callback queue.]
             while (!this.callbackList.isEmpty())
             {
@@ -258,11 +447,19 @@ public final class MqttTransport implements IotHubTransport
                 // the function shall drop the callback from the queue.]
                 IotHubCallbackPacket packet = this.callbackList.remove();
 
-                IotHubStatusCode status = packet.getStatus();
-                IotHubEventCallback callback = packet.getCallback();
-                Object context = packet.getContext();
+                final IotHubStatusCode status = packet.getStatus();
+                final IotHubEventCallback callback = packet.getCallback();
+                final Object context = packet.getContext();
 
-                callback.execute(status, context);
+                // Codes_SRS_MQTTTRANSPORT_28_015: [The function shall invoke the callbacks through the callback dispatcher, so a slow callback does not hold the send lock when the config has a callback executor.]
+                this.callbackDispatcher.dispatch(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        callback.execute(status, context);
+                    }
+                });
             }
         }
     }
@@ -302,38 +499,59 @@ public final class MqttTransport implements IotHubTransport
                 return;
             }
 
-            // Codes_SRS_MQTTTRANSPORT_15_016: [The function shall attempt to consume a message from the IoT Hub.]
-            Message message = this.mqttIotHubConnection.receiveMessage();
-
-            // Codes_SRS_MQTTTRANSPORT_15_017: [If a message is found and a message callback is registered,
-            // the function shall invoke the callback on the message.]
-            if (message != null)
+            // Codes_SRS_MQTTTRANSPORT_28_019: [The function shall consume the received messages until none is left,
+            // or the receive prefetch count of the config is reached, so a burst of messages is handled in one pass.]
+            int receivePrefetchCount = Math.max(1, this.config.getReceivePrefetchCount());
+            for (int handled = 0; handled < receivePrefetchCount; handled++)
             {
+                // Codes_SRS_MQTTTRANSPORT_15_016: [The function shall attempt to consume a message from the IoT Hub.]
+                Message message = this.mqttIotHubConnection.receiveMessage();
+                if (message == null)
+                {
+                    break;
+                }
+
+                // Codes_SRS_MQTTTRANSPORT_15_017: [If a message is found and a message callback is registered,
+                // the function shall invoke the callback on the message.]
                 if (message.getMessageType() == MessageType.DEVICE_METHODS)
                 {
                     if (deviceMethodMessageCallback != null)
                     {
-                        deviceMethodMessageCallback.execute(message, deviceMethodContext);
+                        this.dispatchMessage(deviceMethodMessageCallback, message, deviceMethodContext);
                     }
                 }
                 else if (message.getMessageType() == MessageType.DEVICE_TWIN)
                 {
                     if (deviceTwinMessageCallback != null)
                     {
-                        deviceTwinMessageCallback.execute(message, deviceTwinContext);
+                        this.dispatchMessage(deviceTwinMessageCallback, message, deviceTwinContext);
                     }
                 }
                 else
                 {
                     if (callback != null)
                     {
-                        callback.execute(message, context);
+                        this.dispatchMessage(callback, message, context);
                     }
                 }
             }
         }
     }
 
+    private void dispatchMessage(final MessageCallback callback, final Message message, final Object context)
+    {
+        // Codes_SRS_MQTTTRANSPORT_28_016: [The function shall invoke the message callback through the callback dispatcher,
+        // so a slow callback does not delay the next received message when the config has a callback executor.]
+        this.callbackDispatcher.dispatch(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                callback.execute(message, context);
+            }
+        });
+    }
+
     /**
      * Returns {@code true} if the transport has no more messages to handle,
      * and {@code false} otherwise.
@@ -345,9 +563,12 @@ public final class MqttTransport implements IotHubTransport
     {
         synchronized (sendMessagesLock)
         {
-            // Codes_SRS_MQTTTRANSPORT_15_019: [The function shall return true if the waiting list
-            // and callback list are all empty, and false otherwise.]
-            if (this.waitingList.isEmpty() && this.callbackList.isEmpty())
+            // Codes_SRS_MQTTTRANSPORT_15_019: [The function shall return true if the waiting list,
+            // callback list and delivery tracker are all empty, and false otherwise.]
+            // Codes_SRS_MQTTTRANSPORT_28_017: [The function shall return false while the callback dispatcher has callbacks to invoke.]
+            // Codes_SRS_MQTTTRANSPORT_28_025: [The function shall return false while a batch waits for the linger time.]
+            if (this.waitingList.isEmpty() && this.callbackList.isEmpty() && this.deliveryTracker.isEmpty()
+                    && this.callbackDispatcher.isEmpty() && this.pendingBatch == null)
             {
                 return true;
             }
@@ -369,4 +590,28 @@ public final class MqttTransport implements IotHubTransport
         //Codes_SRS_MQTTTRANSPORT_34_025: [This function shall register the provided connection state callback and context with the saved mqtt iot hub connection.]
         this.mqttIotHubConnection.registerConnectionStateCallback(callback, callbackContext);
     }
-}
\ No newline at end of file
+
+    /**
+     * Getter for the depth of the queue of messages waiting to be sent, and
+     * for the time the messages spent in it.
+     *
+     * @return a snapshot of the metrics of the outbound queue.
+     */
+    public IotHubOutboundQueueMetrics getOutboundQueueMetrics()
+    {
+        // Codes_SRS_MQTTTRANSPORT_28_009: [The function shall return the metrics of the transport queue.]
+        return this.waitingList.getMetrics();
+    }
+
+    /**
+     * Getter for the number of callbacks waiting to be invoked, and for the
+     * time they waited and ran.
+     *
+     * @return a snapshot of the metrics of the callback dispatcher.
+     */
+    public IotHubCallbackDispatcherMetrics getCallbackDispatcherMetrics()
+    {
+        // Codes_SRS_MQTTTRANSPORT_28_018: [The function shall return the metrics of the callback dispatcher.]
+        return this.callbackDispatcher.getMetrics();
+    }
+}
@@ -7,8 +7,12 @@ import java.io.IOException;
 
 public class TopicParser
 {
-    private String[] topicTokens = null;
+    private final String topic;
+    /* tokenStarts[i] is the index of the first character of token i, and tokenStarts[i + 1] - 1 the index after its last one */
+    private int[] tokenStarts = null;
+    private int tokenCount = 0;
 
+    private static final char SEPARATOR = '/';
     private final String QUESTION = "?";
 
     private final String REQ_ID = "$rid=";
@@ -27,14 +31,73 @@ public class TopicParser
         /*
         Codes_SRS_TopicParser_25_001: [**The constructor shall spilt the topic by "/" and save the tokens.**]**
          */
-        this.topicTokens = topic.split("/");
+        /*
+        Codes_SRS_TopicParser_28_001: [**The constructor shall find the tokens in a single pass and save where each of them starts, without copying them out of the topic.**]**
+         */
+        this.topic = topic;
+        int separatorCount = 0;
+        for (int i = 0; i < topic.length(); i++)
+        {
+            if (topic.charAt(i) == SEPARATOR)
+            {
+                separatorCount++;
+            }
+        }
+
+        this.tokenStarts = new int[separatorCount + 2];
+        int token = 1;
+        for (int i = 0; i < topic.length(); i++)
+        {
+            if (topic.charAt(i) == SEPARATOR)
+            {
+                this.tokenStarts[token++] = i + 1;
+            }
+        }
+        this.tokenStarts[token] = topic.length() + 1;
+
+        // like String.split, the empty tokens at the end of the topic are not counted
+        this.tokenCount = separatorCount + 1;
+        while (this.tokenCount > 0 && tokenStart(this.tokenCount - 1) == tokenEnd(this.tokenCount - 1))
+        {
+            this.tokenCount--;
+        }
+    }
+
+    private int tokenStart(int tokenIndex)
+    {
+        return this.tokenStarts[tokenIndex];
+    }
+
+    private int tokenEnd(int tokenIndex)
+    {
+        return this.tokenStarts[tokenIndex + 1] - 1;
+    }
+
+    /* The index of value in the token, or -1 if the token does not contain it */
+    private int indexInToken(String value, int tokenIndex)
+    {
+        int index = this.topic.indexOf(value, tokenStart(tokenIndex));
+        return (index != -1 && index + value.length() <= tokenEnd(tokenIndex)) ? index : -1;
+    }
+
+    /**
+     * Getter for the number of tokens in the topic, not counting the empty tokens at its end.
+     *
+     * @return the number of tokens.
+     */
+    int getTokenCount()
+    {
+        /*
+        Codes_SRS_TopicParser_28_002: [**This method shall return the number of tokens, not counting the empty tokens at the end of the topic.**]**
+         */
+        return this.tokenCount;
     }
 
     protected String getStatus(int tokenIndexStatus) throws IOException
     {
         String status = null;
 
-        if (tokenIndexStatus <= 0 || tokenIndexStatus >= topicTokens.length)
+        if (tokenIndexStatus <= 0 || tokenIndexStatus >= tokenCount)
         {
             /*
             Codes_SRS_TopicParser_25_003: [**If tokenIndexStatus is not valid i.e less than or equal to zero or greater then token length then getStatus shall throw  IllegalArgumentException.**]**
@@ -42,9 +105,9 @@ public class TopicParser
             throw new IllegalArgumentException("Invalid token Index for status");
         }
 
-        if (topicTokens.length > tokenIndexStatus)
+        if (tokenCount > tokenIndexStatus)
         {
-            String token = topicTokens[tokenIndexStatus];
+            String token = topic.substring(tokenStart(tokenIndexStatus), tokenEnd(tokenIndexStatus));
 
             if (token != null)
             {
@@ -69,7 +132,7 @@ public class TopicParser
     {
         String reqId = null;
 
-        if (tokenIndexReqID <= 0 || tokenIndexReqID >= topicTokens.length)
+        if (tokenIndexReqID <= 0 || tokenIndexReqID >= tokenCount)
         {
             /*
             Codes_SRS_TopicParser_25_006: [**If tokenIndexReqID is not valid i.e less than or equal to zero or greater then token length then getRequestId shall throw  IllegalArgumentException.**]**
@@ -77,28 +140,29 @@ public class TopicParser
             throw new IllegalArgumentException("Invalid token Index for request id");
         }
 
-        if (topicTokens.length > tokenIndexReqID)
+        if (tokenCount > tokenIndexReqID)
         {
-            String token = topicTokens[tokenIndexReqID];
+            int reqIdIndex = indexInToken(REQ_ID, tokenIndexReqID);
 
             /*
             Codes_SRS_TopicParser_25_008: [**If the topic token does not contain request id then this method shall return null.**]**
              */
-            if (token.contains(REQ_ID) && token.contains(QUESTION)) // restriction for request id
+            if (reqIdIndex != -1 && indexInToken(QUESTION, tokenIndexReqID) != -1) // restriction for request id
             {
-                int startIndex = token.indexOf(REQ_ID) + REQ_ID.length();
-                int endIndex = token.length();
+                int startIndex = reqIdIndex + REQ_ID.length();
+                int endIndex = tokenEnd(tokenIndexReqID);
 
-                if (token.contains(VERSION) && !token.contains(QUESTION + VERSION))
+                int versionIndex = indexInToken(VERSION, tokenIndexReqID);
+                if (versionIndex != -1 && indexInToken(QUESTION + VERSION, tokenIndexReqID) == -1)
                 {
                     // version after rid in the query
-                    endIndex = token.indexOf(VERSION) - 1;
+                    endIndex = versionIndex - 1;
                 }
 
                 /*
                 Codes_SRS_TopicParser_25_007: [**This method shall return the request ID value corresponding to the tokenIndexReqID from tokens.**]**
                  */
-                reqId = token.substring(startIndex, endIndex);
+                reqId = topic.substring(startIndex, endIndex);
             }
         }
 
@@ -109,7 +173,7 @@ public class TopicParser
     {
         String version = null;
 
-        if (tokenIndexVersion <= 0 || tokenIndexVersion >= topicTokens.length)
+        if (tokenIndexVersion <= 0 || tokenIndexVersion >= tokenCount)
         {
             /*
             Codes_SRS_TopicParser_25_009: [**If tokenIndexVersion is not valid i.e less than or equal to zero or greater then token length then getVersion shall throw  IllegalArgumentException.**]**
@@ -117,26 +181,26 @@ public class TopicParser
             throw new IllegalArgumentException("Invalid token Index for Version");
         }
 
-        if (topicTokens.length > tokenIndexVersion)
+        if (tokenCount > tokenIndexVersion)
         {
-
-            String token = topicTokens[tokenIndexVersion];
+            int versionIndex = indexInToken(VERSION, tokenIndexVersion);
 
             /*
             Codes_SRS_TopicParser_25_010: [**This method shall return the version value(if present) corresponding to the tokenIndexVersion from tokens.**]**
             Codes_SRS_TopicParser_25_011: [**If the topic token does not contain version then this method shall return null.**]**
              */
-            if (token.contains(VERSION) && token.contains(QUESTION) ) //restriction for version
+            if (versionIndex != -1 && indexInToken(QUESTION, tokenIndexVersion) != -1) //restriction for version
             {
-                int startIndex = token.indexOf(VERSION) + VERSION.length();
-                int endIndex = token.length();
+                int startIndex = versionIndex + VERSION.length();
+                int endIndex = tokenEnd(tokenIndexVersion);
 
-                if(!token.contains(QUESTION + REQ_ID) && token.contains(REQ_ID))
+                int reqIdIndex = indexInToken(REQ_ID, tokenIndexVersion);
+                if (indexInToken(QUESTION + REQ_ID, tokenIndexVersion) == -1 && reqIdIndex != -1)
                 {
-                    endIndex = token.indexOf(REQ_ID) - 1;
+                    endIndex = reqIdIndex - 1;
                 }
 
-                version = token.substring(startIndex, endIndex);
+                version = topic.substring(startIndex, endIndex);
             }
         }
 
@@ -148,7 +212,7 @@ public class TopicParser
     {
         String methodName = null;
 
-        if (tokenIndexMethod <= 0 || tokenIndexMethod >= topicTokens.length)
+        if (tokenIndexMethod <= 0 || tokenIndexMethod >= tokenCount)
         {
             /*
             Codes_SRS_TopicParser_25_012: [**If tokenIndexMethod is not valid i.e less than or equal to zero or greater then token length then getMethodName shall throw  IllegalArgumentException.**]**
@@ -156,9 +220,9 @@ public class TopicParser
             throw new IllegalArgumentException("Invalid token Index for Method Name");
         }
 
-        if (topicTokens.length > tokenIndexMethod)
+        if (tokenCount > tokenIndexMethod)
         {
-            String token = topicTokens[tokenIndexMethod];
+            String token = topic.substring(tokenStart(tokenIndexMethod), tokenEnd(tokenIndexMethod));
             /*
             Codes_SRS_TopicParser_25_013: [**This method shall return the method name(if present) corresponding to the tokenIndexMethod from tokens.**]**
 
@@ -5,8 +5,12 @@ package tests.unit.com.microsoft.azure.sdk.iot.device;
 
 import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
 import com.microsoft.azure.sdk.iot.device.IotHubConnectionString;
+import com.microsoft.azure.sdk.iot.device.IotHubOutboundQueuePolicy;
 import com.microsoft.azure.sdk.iot.device.MessageCallback;
 import com.microsoft.azure.sdk.iot.device.auth.*;
+import com.microsoft.azure.sdk.iot.device.transport.ExponentialBackoffWithJitter;
+import com.microsoft.azure.sdk.iot.device.transport.ReconnectRateLimiter;
+import com.microsoft.azure.sdk.iot.device.transport.RetryPolicy;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProvider;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProviderTpm;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProviderX509;
@@ -21,6 +25,7 @@ import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.util.concurrent.Executor;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.*;
@@ -390,6 +395,514 @@ public class DeviceClientConfigTest
                 is(expectedMessageLockTimeoutSecs));
     }
 
+    // Tests_SRS_DEVICECLIENTCONFIG_28_001: [The function shall return the saved maximum number of in flight HTTPS requests, which is 2 by default.]
+    @Test
+    public void getHttpsMaxInFlightRequestsReturnsDefault()
+            throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        assertThat(config.getHttpsMaxInFlightRequests(), is(2));
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_003: [The function shall save the provided httpsMaxInFlightRequests.]
+    @Test
+    public void setHttpsMaxInFlightRequestsSavesValue()
+            throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        config.setHttpsMaxInFlightRequests(5);
+
+        assertThat(config.getHttpsMaxInFlightRequests(), is(5));
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_002: [If the provided httpsMaxInFlightRequests is smaller than 1, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setHttpsMaxInFlightRequestsThrowsOnZero()
+            throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        config.setHttpsMaxInFlightRequests(0);
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_004: [The function shall return the saved outbound queue capacity, which is 0, no limit, by default.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_007: [The function shall return the saved outbound queue capacity in bytes, which is 0, no limit, by default.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_010: [The function shall return the saved outbound queue policy, which is BLOCK by default.]
+    @Test
+    public void getOutboundQueueSettingsReturnDefaults()
+            throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        assertThat(config.getOutboundQueueCapacity(), is(0));
+        assertThat(config.getOutboundQueueCapacityInBytes(), is(0L));
+        assertThat(config.getOutboundQueuePolicy(), is(IotHubOutboundQueuePolicy.BLOCK));
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_006: [The function shall save the provided outboundQueueCapacity.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_009: [The function shall save the provided outboundQueueCapacityInBytes.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_012: [The function shall save the provided outboundQueuePolicy.]
+    @Test
+    public void setOutboundQueueSettingsSaveValues()
+            throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        config.setOutboundQueueCapacity(100);
+        config.setOutboundQueueCapacityInBytes(65536L);
+        config.setOutboundQueuePolicy(IotHubOutboundQueuePolicy.DROP_OLDEST);
+
+        assertThat(config.getOutboundQueueCapacity(), is(100));
+        assertThat(config.getOutboundQueueCapacityInBytes(), is(65536L));
+        assertThat(config.getOutboundQueuePolicy(), is(IotHubOutboundQueuePolicy.DROP_OLDEST));
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_005: [If the provided outboundQueueCapacity is negative, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOutboundQueueCapacityThrowsOnNegative()
+            throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        config.setOutboundQueueCapacity(-1);
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_008: [If the provided outboundQueueCapacityInBytes is negative, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOutboundQueueCapacityInBytesThrowsOnNegative()
+            throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        config.setOutboundQueueCapacityInBytes(-1L);
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_011: [If the provided outboundQueuePolicy is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOutboundQueuePolicyThrowsOnNull()
+            throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        config.setOutboundQueuePolicy(null);
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_013: [The function shall return the saved outbound message store directory, which is null, no store, by default.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_015: [The function shall save the provided outboundMessageStoreDirectory.]
+    @Test
+    public void setOutboundMessageStoreDirectorySavesTheDirectory()
+            throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        assertNull(config.getOutboundMessageStoreDirectory());
+        config.setOutboundMessageStoreDirectory("/var/lib/device/outbound");
+        assertEquals("/var/lib/device/outbound", config.getOutboundMessageStoreDirectory());
+        config.setOutboundMessageStoreDirectory(null);
+        assertNull(config.getOutboundMessageStoreDirectory());
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_014: [If the provided outboundMessageStoreDirectory is empty, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOutboundMessageStoreDirectoryThrowsOnEmpty()
+            throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        config.setOutboundMessageStoreDirectory("");
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_016: [The function shall return the saved callback executor, which is null, the threads of the transport, by default.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_017: [The function shall save the provided callbackExecutor.]
+    @Test
+    public void setCallbackExecutorSavesTheExecutor(@Mocked final Executor mockExecutor)
+            throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        assertNull(config.getCallbackExecutor());
+        config.setCallbackExecutor(mockExecutor);
+        assertEquals(mockExecutor, config.getCallbackExecutor());
+        config.setCallbackExecutor(null);
+        assertNull(config.getCallbackExecutor());
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_018: [The function shall return the saved receive prefetch count, which is 1024 by default.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_020: [The function shall save the provided receivePrefetchCount.]
+    @Test
+    public void setReceivePrefetchCountSavesValue() throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        assertEquals(1024, config.getReceivePrefetchCount());
+        config.setReceivePrefetchCount(1);
+        assertEquals(1, config.getReceivePrefetchCount());
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_019: [If the provided receivePrefetchCount is smaller than 1, the function shall throw IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setReceivePrefetchCountThrowsOnZero() throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        config.setReceivePrefetchCount(0);
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_021: [The function shall return the saved MQTT batch maximum size, which is 0, no batching, by default.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_023: [The function shall save the provided mqttBatchMaxSizeInBytes.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_024: [The function shall return the saved MQTT batch linger time, which is 0 by default.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_026: [The function shall save the provided mqttBatchLingerTimeInMilliseconds.]
+    @Test
+    public void setMqttBatchOptionsSavesValues() throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        assertEquals(0, config.getMqttBatchMaxSizeInBytes());
+        assertEquals(0L, config.getMqttBatchLingerTimeInMilliseconds());
+        config.setMqttBatchMaxSizeInBytes(4096);
+        config.setMqttBatchLingerTimeInMilliseconds(50L);
+        assertEquals(4096, config.getMqttBatchMaxSizeInBytes());
+        assertEquals(50L, config.getMqttBatchLingerTimeInMilliseconds());
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_022: [If the provided mqttBatchMaxSizeInBytes is negative, the function shall throw IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setMqttBatchMaxSizeInBytesThrowsOnNegative() throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        config.setMqttBatchMaxSizeInBytes(-1);
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_025: [If the provided mqttBatchLingerTimeInMilliseconds is negative, the function shall throw IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setMqttBatchLingerTimeInMillisecondsThrowsOnNegative() throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        config.setMqttBatchLingerTimeInMilliseconds(-1L);
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_027: [The function shall return the saved retry policy, which is an ExponentialBackoffWithJitter with its default delays by default.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_029: [The function shall save the provided retryPolicy.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_030: [The function shall return the saved reconnect rate limiter, which is null by default.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_031: [The function shall save the provided reconnectRateLimiter.]
+    @Test
+    public void setReconnectOptionsSavesValues() throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+        RetryPolicy retryPolicy = new ExponentialBackoffWithJitter(10, 100, 1000);
+        ReconnectRateLimiter rateLimiter = new ReconnectRateLimiter(10, 2);
+
+        assertTrue(config.getRetryPolicy() instanceof ExponentialBackoffWithJitter);
+        assertEquals(1000L, ((ExponentialBackoffWithJitter) config.getRetryPolicy()).getBaseDelayInMilliseconds());
+        assertNull(config.getReconnectRateLimiter());
+        config.setRetryPolicy(retryPolicy);
+        config.setReconnectRateLimiter(rateLimiter);
+        assertEquals(retryPolicy, config.getRetryPolicy());
+        assertEquals(rateLimiter, config.getReconnectRateLimiter());
+        config.setReconnectRateLimiter(null);
+        assertNull(config.getReconnectRateLimiter());
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_028: [If the provided retryPolicy is null, the function shall throw IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setRetryPolicyThrowsOnNull() throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        config.setRetryPolicy(null);
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_032: [The function shall return the saved reported properties batch maximum size, which is 0, no batching, by default.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_034: [The function shall save the provided reportedPropertiesBatchMaxSize.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_035: [The function shall return the saved reported properties linger time, which is 0 by default.]
+    // Tests_SRS_DEVICECLIENTCONFIG_28_037: [The function shall save the provided reportedPropertiesLingerTimeInMilliseconds.]
+    @Test
+    public void setReportedPropertiesBatchOptionsSavesValues() throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        assertEquals(0, config.getReportedPropertiesBatchMaxSize());
+        assertEquals(0L, config.getReportedPropertiesLingerTimeInMilliseconds());
+        config.setReportedPropertiesBatchMaxSize(20);
+        config.setReportedPropertiesLingerTimeInMilliseconds(100L);
+        assertEquals(20, config.getReportedPropertiesBatchMaxSize());
+        assertEquals(100L, config.getReportedPropertiesLingerTimeInMilliseconds());
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_033: [If the provided reportedPropertiesBatchMaxSize is negative, the function shall throw IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setReportedPropertiesBatchMaxSizeThrowsOnNegative() throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        config.setReportedPropertiesBatchMaxSize(-1);
+    }
+
+    // Tests_SRS_DEVICECLIENTCONFIG_28_036: [If the provided reportedPropertiesLingerTimeInMilliseconds is negative, the function shall throw IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setReportedPropertiesLingerTimeInMillisecondsThrowsOnNegative() throws URISyntaxException, IOException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+        final IotHubConnectionString iotHubConnectionString =
+                Deencapsulation.newInstance(IotHubConnectionString.class,
+                        new Class[] {String.class, String.class, String.class, String.class},
+                        iotHubHostname,
+                        deviceId,
+                        deviceKey,
+                        sharedAccessToken);
+
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, iotHubConnectionString, DeviceClientConfig.AuthType.SAS_TOKEN);
+
+        config.setReportedPropertiesLingerTimeInMilliseconds(-1L);
+    }
+
     // Tests_SRS_DEVICECLIENTCONFIG_21_034: [If the provided `iotHubConnectionString` is null,
     // the constructor shall throw IllegalArgumentException.]
     @Test(expected = IllegalArgumentException.class)
@@ -6,8 +6,13 @@ package tests.unit.com.microsoft.azure.sdk.iot.device;
 import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.DeviceTwin.*;
 import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenAuthenticationProvider;
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenSoftwareAuthenticationProvider;
 import com.microsoft.azure.sdk.iot.device.auth.IotHubX509AuthenticationProvider;
 import com.microsoft.azure.sdk.iot.device.fileupload.FileUpload;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackDispatcherMetrics;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueueMetrics;
+import com.microsoft.azure.sdk.iot.device.transport.ReconnectRateLimiter;
+import com.microsoft.azure.sdk.iot.device.transport.RetryPolicy;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.IoTHubConnectionType;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProvider;
 import com.microsoft.azure.sdk.iot.provisioning.security.exceptions.SecurityProviderException;
@@ -21,6 +26,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.Executor;
 
 /**
  * Unit tests for DeviceClient.
@@ -1808,6 +1814,1333 @@ public class DeviceClientTest
         client.setOption("SetSendInterval", "thisIsNotALong");
     }
 
+    // Tests_SRS_DEVICECLIENT_28_001: ["SetEventDrivenSend" - send the messages as soon as they are queued instead of every send interval.]
+    @Test
+    public void setOptionEventDrivenSendSucceeds()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetEventDrivenSend", true);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockDeviceIO.setEventDrivenSend(true);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_002: ["SetEventDrivenSend" needs to have value type boolean.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionEventDrivenSendWithStringInsteadOfBooleanFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetEventDrivenSend", "thisIsNotABoolean");
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_004: [If the client is already open the SetEventDrivenSend shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionEventDrivenSendWhenOpenFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetEventDrivenSend", true);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_005: ["SetHttpsMaxInFlightRequests" - the number of HTTPS requests that can be in flight at the same time.]
+    @Test
+    public void setOptionHttpsMaxInFlightRequestsSucceeds()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.HTTPS;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetHttpsMaxInFlightRequests", 4);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockConfig.setHttpsMaxInFlightRequests(4);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_006: ["SetHttpsMaxInFlightRequests" needs to have value type int.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionHttpsMaxInFlightRequestsWithStringInsteadOfIntFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.HTTPS;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetHttpsMaxInFlightRequests", "thisIsNotAnInt");
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_008: [If the client is already open the SetHttpsMaxInFlightRequests shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionHttpsMaxInFlightRequestsWhenOpenFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.HTTPS;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetHttpsMaxInFlightRequests", 4);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_010: ["SetOutboundQueueCapacity", "SetOutboundQueueCapacityInBytes" and "SetOutboundQueuePolicy" - the bounds of the queue of messages waiting to be sent, and what happens when it is full.]
+    @Test
+    public void setOptionOutboundQueueSucceeds()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetOutboundQueueCapacity", 100);
+        client.setOption("SetOutboundQueueCapacityInBytes", 65536L);
+        client.setOption("SetOutboundQueuePolicy", IotHubOutboundQueuePolicy.FAIL_FAST);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockConfig.setOutboundQueueCapacity(100);
+                times = 1;
+                mockConfig.setOutboundQueueCapacityInBytes(65536L);
+                times = 1;
+                mockConfig.setOutboundQueuePolicy(IotHubOutboundQueuePolicy.FAIL_FAST);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_013: ["SetOutboundQueueCapacity" needs to have value type int.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionOutboundQueueCapacityWithLongInsteadOfIntFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetOutboundQueueCapacity", 100L);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_014: ["SetOutboundQueueCapacityInBytes" needs to have value type long.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionOutboundQueueCapacityInBytesWithIntInsteadOfLongFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetOutboundQueueCapacityInBytes", 65536);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_015: ["SetOutboundQueuePolicy" needs to have value type IotHubOutboundQueuePolicy.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionOutboundQueuePolicyWithStringInsteadOfPolicyFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetOutboundQueuePolicy", "FAIL_FAST");
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_012: [If the client is already open the outbound queue options shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionOutboundQueueCapacityWhenOpenFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetOutboundQueueCapacity", 100);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_011: [If the client configured to use TransportClient the outbound queue options shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionOutboundQueuePolicyWithTransportClientFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        DeviceClient client = new DeviceClient(connString, mockTransportClient);
+
+        // act
+        client.setOption("SetOutboundQueuePolicy", IotHubOutboundQueuePolicy.DROP_OLDEST);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_018: ["SetOutboundMessageStoreDirectory" - the directory where the messages waiting to be sent are kept, so they survive a restart.]
+    @Test
+    public void setOptionOutboundMessageStoreDirectorySucceeds()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetOutboundMessageStoreDirectory", "/var/lib/device/outbound");
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockConfig.setOutboundMessageStoreDirectory("/var/lib/device/outbound");
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_019: [If the client configured to use TransportClient the SetOutboundMessageStoreDirectory shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionOutboundMessageStoreDirectoryWithTransportClientFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        DeviceClient client = new DeviceClient(connString, mockTransportClient);
+
+        // act
+        client.setOption("SetOutboundMessageStoreDirectory", "/var/lib/device/outbound");
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_020: [If the client is already open the SetOutboundMessageStoreDirectory shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionOutboundMessageStoreDirectoryWhenOpenFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetOutboundMessageStoreDirectory", "/var/lib/device/outbound");
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_021: ["SetOutboundMessageStoreDirectory" needs to have value type String.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionOutboundMessageStoreDirectoryWithFileInsteadOfStringFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetOutboundMessageStoreDirectory", new java.io.File("/var/lib/device/outbound"));
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_022: ["SetCallbackExecutor" - the executor that invokes the callbacks, so a slow callback does not hold the transport threads.]
+    @Test
+    public void setOptionCallbackExecutorSucceeds(@Mocked final Executor mockExecutor)
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetCallbackExecutor", mockExecutor);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockConfig.setCallbackExecutor(mockExecutor);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_023: [If the client configured to use TransportClient the SetCallbackExecutor shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionCallbackExecutorWithTransportClientFails(@Mocked final Executor mockExecutor)
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        DeviceClient client = new DeviceClient(connString, mockTransportClient);
+
+        // act
+        client.setOption("SetCallbackExecutor", mockExecutor);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_024: [If the client is already open the SetCallbackExecutor shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionCallbackExecutorWhenOpenFails(@Mocked final Executor mockExecutor)
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetCallbackExecutor", mockExecutor);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_025: ["SetCallbackExecutor" needs to have value type Executor.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionCallbackExecutorWithIntegerFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetCallbackExecutor", 4);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_028: ["SetReceivePrefetchCount" - the number of received messages handled in one receive pass, and the AMQP link credit.]
+    @Test
+    public void setOptionReceivePrefetchCountSucceeds()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetReceivePrefetchCount", 16);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockConfig.setReceivePrefetchCount(16);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_029: [If the client configured to use TransportClient the SetReceivePrefetchCount shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionReceivePrefetchCountWithTransportClientFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        DeviceClient client = new DeviceClient(connString, mockTransportClient);
+
+        // act
+        client.setOption("SetReceivePrefetchCount", 16);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_030: [If the client is already open the SetReceivePrefetchCount shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionReceivePrefetchCountWhenOpenFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetReceivePrefetchCount", 16);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_031: ["SetReceivePrefetchCount" needs to have value type int.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionReceivePrefetchCountWithLongFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetReceivePrefetchCount", 16L);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_032: ["SetMqttBatchMaxSizeInBytes" and "SetMqttBatchLingerTime" - the bounds of an MQTT publish that packs several telemetry messages.]
+    @Test
+    public void setOptionMqttBatchSucceeds()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetMqttBatchMaxSizeInBytes", 4096);
+        client.setOption("SetMqttBatchLingerTime", 50L);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockConfig.setMqttBatchMaxSizeInBytes(4096);
+                times = 1;
+                mockConfig.setMqttBatchLingerTimeInMilliseconds(50L);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_033: [If the client configured to use TransportClient the MQTT batch options shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionMqttBatchWithTransportClientFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        DeviceClient client = new DeviceClient(connString, mockTransportClient);
+
+        // act
+        client.setOption("SetMqttBatchMaxSizeInBytes", 4096);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_034: [If the client is already open the MQTT batch options shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionMqttBatchWhenOpenFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetMqttBatchLingerTime", 50L);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_035: [The MQTT batch options are available only for MQTT.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionMqttBatchWithAmqpFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetMqttBatchMaxSizeInBytes", 4096);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_036: ["SetMqttBatchMaxSizeInBytes" needs to have value type int.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionMqttBatchMaxSizeInBytesWithLongFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT_WS;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetMqttBatchMaxSizeInBytes", 4096L);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_037: ["SetMqttBatchLingerTime" needs to have value type long.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionMqttBatchLingerTimeWithIntFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetMqttBatchLingerTime", 50);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_038: ["SetRetryPolicy" and "SetReconnectRateLimiter" - when the transport attempts to reconnect after the connection is lost.]
+    @Test
+    public void setOptionReconnectOptionsSucceedWhenOpen(@Mocked final RetryPolicy mockRetryPolicy,
+                                                         @Mocked final ReconnectRateLimiter mockRateLimiter)
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetRetryPolicy", mockRetryPolicy);
+        client.setOption("SetReconnectRateLimiter", mockRateLimiter);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockConfig.setRetryPolicy(mockRetryPolicy);
+                times = 1;
+                mockConfig.setReconnectRateLimiter(mockRateLimiter);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_039: [If the client configured to use TransportClient the reconnect options shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionRetryPolicyWithTransportClientFails(@Mocked final RetryPolicy mockRetryPolicy)
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        DeviceClient client = new DeviceClient(connString, mockTransportClient);
+
+        // act
+        client.setOption("SetRetryPolicy", mockRetryPolicy);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_040: [The reconnect options are available only for AMQP and MQTT.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionReconnectRateLimiterWithHttpsFails(@Mocked final ReconnectRateLimiter mockRateLimiter)
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.HTTPS;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetReconnectRateLimiter", mockRateLimiter);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_041: ["SetRetryPolicy" needs to have value type RetryPolicy.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionRetryPolicyWithWrongTypeFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetRetryPolicy", 1000L);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_042: ["SetReconnectRateLimiter" needs to have value type ReconnectRateLimiter.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionReconnectRateLimiterWithWrongTypeFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT_WS;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetReconnectRateLimiter", 10.0);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_043: [This method shall send the reported properties with the callback by calling updateReportedProperties on the twin object.]
+    @Test
+    public void sendRPWithCallbackSucceeds(@Mocked final DeviceTwin mockedDeviceTwin,
+                                           @Mocked final IotHubEventCallback mockedStatusCB,
+                                           @Mocked final PropertyCallBack mockedPropertyCB,
+                                           @Mocked final Set<Property> mockSet) throws IOException, URISyntaxException
+    {
+        // arrange
+        final Object context = new Object();
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+        client.open();
+        client.startDeviceTwin(mockedStatusCB, null, mockedPropertyCB, null);
+
+        // act
+        client.sendReportedProperties(mockSet, mockedStatusCB, context);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockedDeviceTwin.updateReportedProperties(mockSet, mockedStatusCB, context);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_25_032: [If the client has not started twin before calling this method, the function shall throw an IOException.]
+    @Test (expected = IOException.class)
+    public void sendRPWithCallbackThrowsIfCalledBeforeStartingTwin(@Mocked final IotHubEventCallback mockedStatusCB,
+                                                                   @Mocked final Set<Property> mockSet) throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+        client.open();
+
+        // act
+        client.sendReportedProperties(mockSet, mockedStatusCB, null);
+    }
+
+    // Tests_SRS_DEVICECLIENT_25_034: [If reportedProperties is null or empty, the function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void sendRPWithCallbackThrowsIfCalledWhenRPNull(@Mocked final DeviceTwin mockedDeviceTwin,
+                                                           @Mocked final IotHubEventCallback mockedStatusCB,
+                                                           @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+        client.open();
+        client.startDeviceTwin(mockedStatusCB, null, mockedPropertyCB, null);
+
+        // act
+        client.sendReportedProperties(null, mockedStatusCB, null);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_045: [This method shall send the pending reported properties by calling flushReportedProperties on the twin object.]
+    @Test
+    public void flushRPSucceeds(@Mocked final DeviceTwin mockedDeviceTwin,
+                                @Mocked final IotHubEventCallback mockedStatusCB,
+                                @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+        client.open();
+        client.startDeviceTwin(mockedStatusCB, null, mockedPropertyCB, null);
+
+        // act
+        client.flushReportedProperties();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockedDeviceTwin.flushReportedProperties();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_044: [If the client has not started twin before calling this method, the function shall throw an IOException.]
+    @Test (expected = IOException.class)
+    public void flushRPThrowsIfCalledBeforeStartingTwin() throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.flushReportedProperties();
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_046: ["SetReportedPropertiesBatchMaxSize" and "SetReportedPropertiesLingerTime" - the bounds of a twin patch that merges several reported properties updates.]
+    // Tests_SRS_DEVICECLIENT_28_050: ["SetReportedPropertiesBatchMaxSize" needs to have value type int.]
+    // Tests_SRS_DEVICECLIENT_28_051: ["SetReportedPropertiesLingerTime" needs to have value type long.]
+    @Test
+    public void setOptionReportedPropertiesBatchOptionsSucceedBeforeTwinStarted() throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetReportedPropertiesBatchMaxSize", 20);
+        client.setOption("SetReportedPropertiesLingerTime", 100L);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockConfig.setReportedPropertiesBatchMaxSize(20);
+                times = 1;
+                mockConfig.setReportedPropertiesLingerTimeInMilliseconds(100L);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_052: ["SetSASTokenRenewalFraction" - the fraction of the lifetime of a sas token after which it is renewed in the background.]
+    // Tests_SRS_DEVICECLIENT_28_054: ["SetSASTokenRenewalFraction" needs to have value type double.]
+    @Test
+    public void setOptionSASTokenRenewalFractionSetsFractionOnProvider(@Mocked final IotHubSasTokenSoftwareAuthenticationProvider mockSoftwareProvider) throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getSasTokenAuthentication();
+                result = mockSoftwareProvider;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.AMQPS);
+
+        // act
+        client.setOption("SetSASTokenRenewalFraction", 0.5);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockSoftwareProvider.setTokenRenewalFraction(0.5);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_053: [If the client does not use sas token authentication with a software provider, "SetSASTokenRenewalFraction" shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionSASTokenRenewalFractionWithoutSoftwareProviderFails() throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getSasTokenAuthentication();
+                result = null;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.AMQPS);
+
+        // act
+        client.setOption("SetSASTokenRenewalFraction", 0.5);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_054: ["SetSASTokenRenewalFraction" needs to have value type double.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionSASTokenRenewalFractionWithWrongTypeFails(@Mocked final IotHubSasTokenSoftwareAuthenticationProvider mockSoftwareProvider) throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getSasTokenAuthentication();
+                result = mockSoftwareProvider;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.AMQPS);
+
+        // act
+        client.setOption("SetSASTokenRenewalFraction", 1);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_047: [If the client configured to use TransportClient the reported properties batch options shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionReportedPropertiesBatchMaxSizeWithTransportClientFails() throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        DeviceClient client = new DeviceClient(connString, mockTransportClient);
+
+        // act
+        client.setOption("SetReportedPropertiesBatchMaxSize", 20);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_048: [If the twin is already started the reported properties batch options shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionReportedPropertiesLingerTimeAfterTwinStartedFails(@Mocked final DeviceTwin mockedDeviceTwin,
+                                                                          @Mocked final IotHubEventCallback mockedStatusCB,
+                                                                          @Mocked final PropertyCallBack mockedPropertyCB)
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+        client.open();
+        client.startDeviceTwin(mockedStatusCB, null, mockedPropertyCB, null);
+
+        // act
+        client.setOption("SetReportedPropertiesLingerTime", 100L);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_049: [The reported properties batch options are available only for AMQP and MQTT.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionReportedPropertiesBatchMaxSizeWithHttpsFails() throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.HTTPS;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetReportedPropertiesBatchMaxSize", 20);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_050: ["SetReportedPropertiesBatchMaxSize" needs to have value type int.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionReportedPropertiesBatchMaxSizeWithWrongTypeFails() throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetReportedPropertiesBatchMaxSize", 20L);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_051: ["SetReportedPropertiesLingerTime" needs to have value type long.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionReportedPropertiesLingerTimeWithWrongTypeFails() throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetReportedPropertiesLingerTime", 100);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_027: [The function shall return the callback dispatcher metrics of the deviceIO.]
+    @Test
+    public void getCallbackDispatcherMetricsReturnsMetricsOfDeviceIO(@Mocked final IotHubCallbackDispatcherMetrics mockMetrics)
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.getCallbackDispatcherMetrics();
+                result = mockMetrics;
+            }
+        };
+
+        // act
+        IotHubCallbackDispatcherMetrics metrics = client.getCallbackDispatcherMetrics();
+
+        // assert
+        assertEquals(mockMetrics, metrics);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_026: [If the client does not have a deviceIO yet, the function shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void getCallbackDispatcherMetricsWithClosedTransportClientFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        DeviceClient client = new DeviceClient(connString, mockTransportClient);
+
+        // act
+        client.getCallbackDispatcherMetrics();
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_017: [The function shall return the outbound queue metrics of the deviceIO.]
+    @Test
+    public void getOutboundQueueMetricsReturnsMetricsOfDeviceIO(@Mocked final IotHubOutboundQueueMetrics mockMetrics)
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.getOutboundQueueMetrics();
+                result = mockMetrics;
+            }
+        };
+
+        // act
+        IotHubOutboundQueueMetrics metrics = client.getOutboundQueueMetrics();
+
+        // assert
+        assertEquals(mockMetrics, metrics);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_016: [If the client does not have a deviceIO yet, the function shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void getOutboundQueueMetricsWithClosedTransportClientFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        DeviceClient client = new DeviceClient(connString, mockTransportClient);
+
+        // act
+        client.getOutboundQueueMetrics();
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_009: [Option "SetHttpsMaxInFlightRequests" is available only for HTTP.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOptionHttpsMaxInFlightRequestsWithMqttFails()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+        DeviceClient client = new DeviceClient(connString, protocol);
+
+        // act
+        client.setOption("SetHttpsMaxInFlightRequests", 4);
+    }
+
+    // Tests_SRS_DEVICECLIENT_28_007: [If the client configured to use TransportClient the SetHttpsMaxInFlightRequests shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionWithTransportClientThrowsSetHttpsMaxInFlightRequests()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        DeviceClient client = new DeviceClient(connString, mockTransportClient);
+
+        // act
+        client.setOption("SetHttpsMaxInFlightRequests", 4);
+    }
+
     @Test (expected = IllegalArgumentException.class)
     public void setOptionValueNullThrows()
             throws IOException, URISyntaxException
@@ -2553,6 +3886,20 @@ public class DeviceClientTest
         client.setOption("SetSendInterval", "thisIsNotALong");
     }
 
+    // Tests_SRS_DEVICECLIENT_28_003: [If the client configured to use TransportClient the SetEventDrivenSend shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setOptionWithTransportClientThrowsSetEventDrivenSend()
+            throws IOException, URISyntaxException
+    {
+        // arrange
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        DeviceClient client = new DeviceClient(connString, mockTransportClient);
+
+        // act
+        client.setOption("SetEventDrivenSend", true);
+    }
+
     // Tests_SRS_DEVICECLIENT_12_023: [If the client configured to use TransportClient the SetMinimumPollingInterval shall throw IOException.]
     @Test (expected = IllegalStateException.class)
     public void setOptionWithTransportClientThrowsSetMinimumPollingInterval()
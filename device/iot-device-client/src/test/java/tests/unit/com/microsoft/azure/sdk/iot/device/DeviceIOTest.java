@@ -4,6 +4,10 @@
 package tests.unit.com.microsoft.azure.sdk.iot.device;
 
 import com.microsoft.azure.sdk.iot.device.*;
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenAuthenticationProvider;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubEventDrivenSendTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackDispatcherMetrics;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueueMetrics;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubReceiveTask;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubSendTask;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransport;
@@ -35,6 +39,9 @@ public class DeviceIOTest
     @Mocked
     IotHubSendTask mockIotHubSendTask;
 
+    @Mocked
+    IotHubEventDrivenSendTask mockIotHubEventDrivenSendTask;
+
     @Mocked
     IotHubReceiveTask mockIotHubReceiveTask;
 
@@ -547,6 +554,35 @@ public class DeviceIOTest
         };
     }
 
+    /* Tests_SRS_DEVICE_IO_28_011: [The close shall cancel the background renewal of the sas token of the config, if any.] */
+    @Test
+    public void closeCancelsSasTokenRenewal(@Mocked final IotHubSasTokenAuthenticationProvider mockSasTokenAuthentication)
+            throws URISyntaxException, IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIOAmqp();
+        openDeviceIO(deviceIO, mockAmqpsTransport, mockExecutors, mockScheduler);
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getSasTokenAuthentication();
+                result = mockSasTokenAuthentication;
+            }
+        };
+
+        // act
+        Deencapsulation.invoke(deviceIO, "close");
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockSasTokenAuthentication.cancelTokenRenewal();
+                times = 1;
+            }
+        };
+    }
+
     /* Tests_SRS_DEVICE_IO_21_020: [If the client is already closed, the closeNow shall do nothing.] */
     @Test
     public void closeDoesNothingOnUnopenedClientSuccess()
@@ -1052,6 +1088,52 @@ public class DeviceIOTest
         assertFalse(isOpen);
     }
 
+    /* Tests_SRS_DEVICE_IO_28_009: [The getOutboundQueueMetrics shall return the outbound queue metrics of the transport.] */
+    @Test
+    public void getOutboundQueueMetricsSuccess(@Mocked final IotHubOutboundQueueMetrics mockMetrics)
+            throws URISyntaxException, IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIOAmqp();
+        new NonStrictExpectations()
+        {
+            {
+                mockAmqpsTransport.getOutboundQueueMetrics();
+                result = mockMetrics;
+                times = 1;
+            }
+        };
+
+        // act
+        IotHubOutboundQueueMetrics metrics = Deencapsulation.invoke(deviceIO, "getOutboundQueueMetrics");
+
+        // assert
+        assertEquals(mockMetrics, metrics);
+    }
+
+    /* Tests_SRS_DEVICE_IO_28_010: [The getCallbackDispatcherMetrics shall return the callback dispatcher metrics of the transport.] */
+    @Test
+    public void getCallbackDispatcherMetricsSuccess(@Mocked final IotHubCallbackDispatcherMetrics mockMetrics)
+            throws URISyntaxException, IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIOAmqp();
+        new NonStrictExpectations()
+        {
+            {
+                mockAmqpsTransport.getCallbackDispatcherMetrics();
+                result = mockMetrics;
+                times = 1;
+            }
+        };
+
+        // act
+        IotHubCallbackDispatcherMetrics metrics = Deencapsulation.invoke(deviceIO, "getCallbackDispatcherMetrics");
+
+        // assert
+        assertEquals(mockMetrics, metrics);
+    }
+
     /* Tests_SRS_DEVICE_IO_21_039: [The isEmpty shall return the transport queue state, true if the queue is empty, false if there is pending messages in the queue.] */
     @Test
     public void isEmptyTrueSuccess()
@@ -1121,4 +1203,203 @@ public class DeviceIOTest
             }
         };
     }
+
+    /* Tests_SRS_DEVICE_IO_28_006: [The isEventDrivenSend shall return the programed send mode.] */
+    /* Tests_SRS_DEVICE_IO_28_008: [The setEventDrivenSend shall store the new send mode.] */
+    @Test
+    public void setEventDrivenSendSuccess()
+    {
+        // arrange
+        final Object deviceIO = newDeviceIOAmqp();
+        assertFalse((boolean)Deencapsulation.invoke(deviceIO, "isEventDrivenSend"));
+
+        // act
+        Deencapsulation.invoke(deviceIO, "setEventDrivenSend", true);
+
+        // assert
+        assertTrue((boolean)Deencapsulation.invoke(deviceIO, "isEventDrivenSend"));
+    }
+
+    /* Tests_SRS_DEVICE_IO_28_007: [If the client is already open, the setEventDrivenSend shall throw IllegalStateException.] */
+    @Test (expected = IllegalStateException.class)
+    public void setEventDrivenSendOpenedThrows() throws IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIOAmqp();
+        openDeviceIO(deviceIO, mockAmqpsTransport, mockExecutors, mockScheduler);
+
+        // act
+        Deencapsulation.invoke(deviceIO, "setEventDrivenSend", true);
+    }
+
+    /* Tests_SRS_DEVICE_IO_28_001: [If the event driven send is enabled, the open shall execute an IotHubEventDrivenSendTask instead of scheduling the send tasks.] */
+    @Test
+    public void openEventDrivenSendExecutesEventDrivenSendTask() throws IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIOAmqp();
+        Deencapsulation.invoke(deviceIO, "setEventDrivenSend", true);
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubEventDrivenSendTask(mockAmqpsTransport, SEND_PERIOD_MILLIS);
+                result = mockIotHubEventDrivenSendTask;
+            }
+        };
+
+        // act
+        openDeviceIO(deviceIO, mockAmqpsTransport, mockExecutors, mockScheduler);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockScheduler.execute(mockIotHubEventDrivenSendTask);
+                times = 1;
+                mockScheduler.scheduleAtFixedRate(mockIotHubSendTask, anyLong, anyLong, (TimeUnit)any);
+                times = 0;
+                mockScheduler.scheduleAtFixedRate(mockIotHubReceiveTask,
+                        0, RECEIVE_PERIOD_MILLIS_AMQPS,
+                        TimeUnit.MILLISECONDS);
+                times = 1;
+            }
+        };
+    }
+
+    /* Tests_SRS_DEVICE_IO_28_002: [If the event driven send task exists, the close shall stop it.] */
+    @Test
+    public void closeStopsEventDrivenSendTask() throws IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIOAmqp();
+        Deencapsulation.invoke(deviceIO, "setEventDrivenSend", true);
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubEventDrivenSendTask(mockAmqpsTransport, SEND_PERIOD_MILLIS);
+                result = mockIotHubEventDrivenSendTask;
+            }
+        };
+        openDeviceIO(deviceIO, mockAmqpsTransport, mockExecutors, mockScheduler);
+
+        // act
+        Deencapsulation.invoke(deviceIO, "close");
+
+        // assert
+        new VerificationsInOrder()
+        {
+            {
+                mockIotHubEventDrivenSendTask.stop();
+                times = 1;
+                mockScheduler.shutdown();
+                times = 1;
+            }
+        };
+        assertNull(Deencapsulation.getField(deviceIO, "eventDrivenSendTask"));
+    }
+
+    /* Tests_SRS_DEVICE_IO_28_003: [If the event driven send task exists, the sendEventAsync shall signal it.] */
+    @Test
+    public void sendEventAsyncSignalsEventDrivenSendTask(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final IotHubConnectionString mockConnectionString) throws IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIOAmqp();
+        Deencapsulation.invoke(deviceIO, "setEventDrivenSend", true);
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubEventDrivenSendTask(mockAmqpsTransport, SEND_PERIOD_MILLIS);
+                result = mockIotHubEventDrivenSendTask;
+            }
+        };
+        openDeviceIO(deviceIO, mockAmqpsTransport, mockExecutors, mockScheduler);
+
+        // act
+        Deencapsulation.invoke(deviceIO, "sendEventAsync",
+                new Class[] {Message.class, IotHubEventCallback.class, Object.class, IotHubConnectionString.class},
+                mockMsg, mockCallback, null, mockConnectionString);
+
+        // assert
+        new VerificationsInOrder()
+        {
+            {
+                mockAmqpsTransport.addMessage(mockMsg, mockCallback, null);
+                times = 1;
+                mockIotHubEventDrivenSendTask.signal();
+                times = 1;
+            }
+        };
+    }
+
+    /* Tests_SRS_DEVICE_IO_28_004: [If the event driven send task exists, the sendEventAsync shall signal it.] */
+    @Test
+    public void sendEventAsyncWithResponseSignalsEventDrivenSendTask(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubResponseCallback mockCallback,
+            @Mocked final IotHubConnectionString mockConnectionString) throws IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIOHttps();
+        Deencapsulation.invoke(deviceIO, "setEventDrivenSend", true);
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubEventDrivenSendTask(mockHttpsTransport, SEND_PERIOD_MILLIS);
+                result = mockIotHubEventDrivenSendTask;
+            }
+        };
+        openDeviceIO(deviceIO, mockHttpsTransport, mockExecutors, mockScheduler);
+
+        // act
+        Deencapsulation.invoke(deviceIO, "sendEventAsync",
+                new Class[] {Message.class, IotHubResponseCallback.class, Object.class, IotHubConnectionString.class},
+                mockMsg, mockCallback, null, mockConnectionString);
+
+        // assert
+        new VerificationsInOrder()
+        {
+            {
+                mockHttpsTransport.addMessage(mockMsg, mockCallback, null);
+                times = 1;
+                mockIotHubEventDrivenSendTask.signal();
+                times = 1;
+            }
+        };
+    }
+
+    /* Tests_SRS_DEVICE_IO_28_005: [If the event driven send task exists, the setSendPeriodInMilliseconds shall change its pending period to the new value.] */
+    @Test
+    public void setSendPeriodInMillisecondsEventDrivenSendSuccess() throws IOException
+    {
+        // arrange
+        final long interval = 1234L;
+        final Object deviceIO = newDeviceIOAmqp();
+        Deencapsulation.invoke(deviceIO, "setEventDrivenSend", true);
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubEventDrivenSendTask(mockAmqpsTransport, SEND_PERIOD_MILLIS);
+                result = mockIotHubEventDrivenSendTask;
+            }
+        };
+        openDeviceIO(deviceIO, mockAmqpsTransport, mockExecutors, mockScheduler);
+
+        // act
+        Deencapsulation.invoke(deviceIO, "setSendPeriodInMilliseconds",  interval);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockIotHubEventDrivenSendTask.setPendingPeriodInMilliseconds(interval);
+                times = 1;
+                mockScheduler.scheduleAtFixedRate(mockIotHubSendTask, anyLong, anyLong, (TimeUnit)any);
+                times = 0;
+            }
+        };
+        assertEquals(interval, Deencapsulation.getField(deviceIO, "sendPeriodInMilliseconds"));
+    }
 }
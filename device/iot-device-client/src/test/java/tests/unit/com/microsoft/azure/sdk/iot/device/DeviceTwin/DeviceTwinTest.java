@@ -12,8 +12,10 @@ import mockit.*;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentSkipListMap;
 
@@ -192,6 +194,55 @@ public class DeviceTwinTest
 
     }
 
+    /*
+    **Tests_SRS_DEVICETWIN_28_010: [**The request ids shall be unique numbers, even for requests sent from several threads at once.**]**
+    */
+    @Test
+    public void getDeviceTwinFromSeveralThreadsSetsUniqueRequestIds(@Mocked final IotHubTransportMessage mockedDeviceTwinMessage) throws InterruptedException
+    {
+        //arrange
+        final int threadCount = 4;
+        final int requestsPerThread = 50;
+        final DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++)
+        {
+            threads.add(new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < requestsPerThread; j++)
+                    {
+                        testTwin.getDeviceTwin();
+                    }
+                }
+            }));
+        }
+
+        //act
+        for (Thread thread : threads)
+        {
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        //assert
+        final List<String> requestIds = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockedDeviceTwinMessage.setRequestId(withCapture(requestIds));
+            }
+        };
+        assertEquals(threadCount * requestsPerThread, requestIds.size());
+        assertEquals(requestIds.size(), new HashSet<>(requestIds).size());
+    }
+
     /*
     **Tests_SRS_DEVICETWIN_25_006: [**This method shall set the message type as DEVICE_OPERATION_TWIN_GET_REQUEST by calling setDeviceOperationType.**]**
     */
@@ -607,6 +658,280 @@ public class DeviceTwinTest
         };
     }
 
+    /*
+    **Tests_SRS_DEVICETWIN_28_003: [**If the config has a reported properties batch maximum size, the constructor shall create a reported properties writer with it and the reported properties linger time of the config.**]**
+     */
+    @Test
+    public void constructorCreatesReportedPropertiesWriterIfBatchMaxSizeSet(@Mocked final ReportedPropertiesWriter mockedWriter)
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getReportedPropertiesBatchMaxSize();
+                result = 5;
+                mockedConfig.getReportedPropertiesLingerTimeInMilliseconds();
+                result = 100L;
+            }
+        };
+
+        //act
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+
+        //assert
+        assertNotNull(Deencapsulation.getField(testTwin, "reportedPropertiesWriter"));
+        new Verifications()
+        {
+            {
+                new ReportedPropertiesWriter(5, 100L, (ReportedPropertiesWriter.PatchSender) any);
+                times = 1;
+            }
+        };
+    }
+
+    /*
+    **Tests_SRS_DEVICETWIN_28_003: [**If the config has a reported properties batch maximum size, the constructor shall create a reported properties writer with it and the reported properties linger time of the config.**]**
+     */
+    @Test
+    public void constructorDoesNotCreateReportedPropertiesWriterByDefault()
+    {
+        //act
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+
+        //assert
+        assertNull(Deencapsulation.getField(testTwin, "reportedPropertiesWriter"));
+    }
+
+    /*
+    **Tests_SRS_DEVICETWIN_28_004: [**If there is a reported properties writer, the method shall merge the property set and the callback into its pending patch.**]**
+     */
+    @Test
+    public void updateReportedPropMergesIntoWriterIfBatchMaxSizeSet(@Mocked final ReportedPropertiesWriter mockedWriter) throws IOException
+    {
+        //arrange
+        final Object context = new Object();
+        final HashSet<Property> reportedProp = new HashSet<>();
+        reportedProp.add(new Property("temperature", 20));
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getReportedPropertiesBatchMaxSize();
+                result = 5;
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+
+        //act
+        testTwin.updateReportedProperties(reportedProp, mockedStatusCB, context);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedWriter.add(reportedProp, mockedStatusCB, context);
+                times = 1;
+                mockedDeviceIO.sendEventAsync((IotHubTransportMessage) any, (IotHubEventCallback) any, any, (IotHubConnectionString) any);
+                times = 0;
+            }
+        };
+    }
+
+    /*
+    **Tests_SRS_DEVICETWIN_28_007: [**If there is a reported properties writer, the method shall send its pending patch now.**]**
+     */
+    @Test
+    public void flushReportedPropFlushesWriter(@Mocked final ReportedPropertiesWriter mockedWriter) throws IOException
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getReportedPropertiesBatchMaxSize();
+                result = 5;
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+
+        //act
+        testTwin.flushReportedProperties();
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedWriter.flush();
+                times = 1;
+            }
+        };
+    }
+
+    /*
+    **Tests_SRS_DEVICETWIN_28_005: [**If the message is of type DEVICE_TWIN and DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_RESPONSE then the callbacks of the patch with the request id of the message, or of the oldest patch if the message has no request id, are triggered with the status.**]**
+    **Tests_SRS_DEVICETWIN_28_009: [**The method shall keep the callbacks of the patch until the response with its request id.**]**
+     */
+    @Test
+    public void reportedPropResponseTriggersCallbacksOfItsPatch(@Mocked final TwinParser mockedTwinParserObject,
+                                                                @Mocked final IotHubEventCallback mockedReportedCB) throws IOException
+    {
+        //arrange
+        final Object context1 = new Object();
+        final Object context2 = new Object();
+        new NonStrictExpectations()
+        {
+            {
+                mockedTwinParserObject.updateReportedProperty(withAny(new HashMap<String, Object>()));
+                result = "{\"temperature\":20}";
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+        MessageCallback deviceTwinResponseMessageCallback = Deencapsulation.newInnerInstance("deviceTwinResponseMessageCallback", testTwin);
+        testTwin.updateReportedProperties(new HashSet<Property>(), mockedReportedCB, context1);
+        testTwin.updateReportedProperties(new HashSet<Property>(), mockedReportedCB, context2);
+
+        final IotHubTransportMessage testMessage = new IotHubTransportMessage(new byte[0], MessageType.DEVICE_TWIN);
+        testMessage.setStatus(String.valueOf(200));
+        testMessage.setRequestId("1");
+        testMessage.setDeviceOperationType(DeviceOperations.DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_RESPONSE);
+
+        //act
+        deviceTwinResponseMessageCallback.execute(testMessage, null);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedReportedCB.execute(IotHubStatusCode.OK, context2);
+                times = 1;
+                mockedReportedCB.execute((IotHubStatusCode) any, context1);
+                times = 0;
+            }
+        };
+    }
+
+    /*
+    **Tests_SRS_DEVICETWIN_28_005: [**If the message is of type DEVICE_TWIN and DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_RESPONSE then the callbacks of the patch with the request id of the message, or of the oldest patch if the message has no request id, are triggered with the status.**]**
+     */
+    @Test
+    public void reportedPropResponseWithoutRequestIdTriggersCallbacksOfOldestPatch(@Mocked final TwinParser mockedTwinParserObject,
+                                                                                  @Mocked final IotHubEventCallback mockedReportedCB) throws IOException
+    {
+        //arrange
+        final Object context1 = new Object();
+        final Object context2 = new Object();
+        new NonStrictExpectations()
+        {
+            {
+                mockedTwinParserObject.updateReportedProperty(withAny(new HashMap<String, Object>()));
+                result = "{\"temperature\":20}";
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+        MessageCallback deviceTwinResponseMessageCallback = Deencapsulation.newInnerInstance("deviceTwinResponseMessageCallback", testTwin);
+        testTwin.updateReportedProperties(new HashSet<Property>(), mockedReportedCB, context1);
+        testTwin.updateReportedProperties(new HashSet<Property>(), mockedReportedCB, context2);
+
+        final IotHubTransportMessage testMessage = new IotHubTransportMessage(new byte[0], MessageType.DEVICE_TWIN);
+        testMessage.setStatus(String.valueOf(400));
+        testMessage.setDeviceOperationType(DeviceOperations.DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_RESPONSE);
+
+        //act
+        deviceTwinResponseMessageCallback.execute(testMessage, null);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedReportedCB.execute(IotHubStatusCode.BAD_FORMAT, context1);
+                times = 1;
+                mockedReportedCB.execute((IotHubStatusCode) any, context2);
+                times = 0;
+            }
+        };
+    }
+
+    /*
+    **Tests_SRS_DEVICETWIN_28_006: [**If a reported properties patch could not be sent, its callbacks shall be triggered with the status of the send.**]**
+     */
+    @Test
+    public void reportedPropSendFailureTriggersCallbacksOfPatch(@Mocked final TwinParser mockedTwinParserObject,
+                                                                @Mocked final IotHubEventCallback mockedReportedCB) throws IOException
+    {
+        //arrange
+        final Object context = new Object();
+        final List<IotHubEventCallback> sendCallbacks = new ArrayList<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockedTwinParserObject.updateReportedProperty(withAny(new HashMap<String, Object>()));
+                result = "{\"temperature\":20}";
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+        testTwin.updateReportedProperties(new HashSet<Property>(), mockedReportedCB, context);
+        new Verifications()
+        {
+            {
+                mockedDeviceIO.sendEventAsync((IotHubTransportMessage) any, withCapture(sendCallbacks), any, (IotHubConnectionString) any);
+            }
+        };
+
+        //act
+        sendCallbacks.get(0).execute(IotHubStatusCode.OK_EMPTY, null);
+        sendCallbacks.get(0).execute(IotHubStatusCode.ERROR, null);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedReportedCB.execute(IotHubStatusCode.ERROR, context);
+                times = 1;
+                mockedReportedCB.execute(IotHubStatusCode.OK_EMPTY, context);
+                times = 0;
+            }
+        };
+    }
+
+    /*
+    **Tests_SRS_DEVICETWIN_28_008: [**If no reported property changed, the method shall not send a patch and shall trigger the callbacks with OK.**]**
+     */
+    @Test
+    public void updateReportedPropWithoutChangeTriggersCallbackWithOk(@Mocked final TwinParser mockedTwinParserObject,
+                                                                      @Mocked final IotHubEventCallback mockedReportedCB) throws IOException
+    {
+        //arrange
+        final Object context = new Object();
+        new NonStrictExpectations()
+        {
+            {
+                mockedTwinParserObject.updateReportedProperty(withAny(new HashMap<String, Object>()));
+                result = null;
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+
+        //act
+        testTwin.updateReportedProperties(new HashSet<Property>(), mockedReportedCB, context);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedReportedCB.execute(IotHubStatusCode.OK, context);
+                times = 1;
+                mockedDeviceIO.sendEventAsync((IotHubTransportMessage) any, (IotHubEventCallback) any, any, (IotHubConnectionString) any);
+                times = 0;
+            }
+        };
+    }
+
     /*
     **Tests_SRS_DEVICETWIN_25_017: [**The method shall create a treemap to store callbacks for desired property notifications specified in onDesiredPropertyChange.**]**
     **Tests_SRS_DEVICETWIN_25_018: [**If not already subscribed then this method shall create a device twin message with empty payload and set its type as DEVICE_OPERATION_TWIN_SUBSCRIBE_DESIRED_PROPERTIES_REQUEST.**]**
@@ -791,6 +1116,117 @@ public class DeviceTwinTest
         };
     }
 
+    /*
+    **Tests_SRS_DEVICETWIN_28_001: [**If the desired properties missed a version, the callback shall request the full twin to resync them, unless a request is already pending.**]**
+     */
+    @Test
+    public void desiredPropResponseRequestsFullTwinOnceWhenResyncPending(@Mocked final TwinParser mockedTwinParserObject) throws IOException
+    {
+        //arrange
+        final byte[] body = {};
+        new NonStrictExpectations()
+        {
+            {
+                mockedTwinParserObject.isDesiredPropertyResyncPending();
+                result = true;
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+        MessageCallback deviceTwinResponseMessageCallback = Deencapsulation.newInnerInstance("deviceTwinResponseMessageCallback", testTwin);
+
+        final IotHubTransportMessage testMessage = new IotHubTransportMessage(body, MessageType.DEVICE_TWIN);
+        testMessage.setDeviceOperationType(DeviceOperations.DEVICE_OPERATION_TWIN_SUBSCRIBE_DESIRED_PROPERTIES_RESPONSE);
+
+        //act
+        deviceTwinResponseMessageCallback.execute(testMessage, null);
+        deviceTwinResponseMessageCallback.execute(testMessage, null);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedDeviceIO.sendEventAsync((IotHubTransportMessage) any, (IotHubEventCallback) any, any, (IotHubConnectionString) any);
+                times = 1;
+            }
+        };
+    }
+
+    /*
+    **Tests_SRS_DEVICETWIN_28_002: [**If the message is of type DeviceTwin and DEVICE_TWIN_OPERATION_GET_RESPONSE then a later missing version of the desired properties shall request the full twin again.**]**
+     */
+    @Test
+    public void desiredPropResponseRequestsFullTwinAgainAfterGetResponse(@Mocked final TwinParser mockedTwinParserObject) throws IOException
+    {
+        //arrange
+        final byte[] body = {};
+        new NonStrictExpectations()
+        {
+            {
+                mockedTwinParserObject.isDesiredPropertyResyncPending();
+                result = true;
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+        MessageCallback deviceTwinResponseMessageCallback = Deencapsulation.newInnerInstance("deviceTwinResponseMessageCallback", testTwin);
+
+        final IotHubTransportMessage desiredMessage = new IotHubTransportMessage(body, MessageType.DEVICE_TWIN);
+        desiredMessage.setDeviceOperationType(DeviceOperations.DEVICE_OPERATION_TWIN_SUBSCRIBE_DESIRED_PROPERTIES_RESPONSE);
+        final IotHubTransportMessage getMessage = new IotHubTransportMessage(body, MessageType.DEVICE_TWIN);
+        getMessage.setStatus(String.valueOf(200));
+        getMessage.setDeviceOperationType(DeviceOperations.DEVICE_OPERATION_TWIN_GET_RESPONSE);
+
+        //act
+        deviceTwinResponseMessageCallback.execute(desiredMessage, null);
+        deviceTwinResponseMessageCallback.execute(getMessage, null);
+        deviceTwinResponseMessageCallback.execute(desiredMessage, null);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedDeviceIO.sendEventAsync((IotHubTransportMessage) any, (IotHubEventCallback) any, any, (IotHubConnectionString) any);
+                times = 2;
+            }
+        };
+    }
+
+    /*
+    **Tests_SRS_DEVICETWIN_28_001: [**If the desired properties missed a version, the callback shall request the full twin to resync them, unless a request is already pending.**]**
+     */
+    @Test
+    public void desiredPropResponseDoesNotRequestFullTwinWithoutMissingVersion(@Mocked final TwinParser mockedTwinParserObject) throws IOException
+    {
+        //arrange
+        final byte[] body = {};
+        new NonStrictExpectations()
+        {
+            {
+                mockedTwinParserObject.isDesiredPropertyResyncPending();
+                result = false;
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+        MessageCallback deviceTwinResponseMessageCallback = Deencapsulation.newInnerInstance("deviceTwinResponseMessageCallback", testTwin);
+
+        final IotHubTransportMessage testMessage = new IotHubTransportMessage(body, MessageType.DEVICE_TWIN);
+        testMessage.setDeviceOperationType(DeviceOperations.DEVICE_OPERATION_TWIN_SUBSCRIBE_DESIRED_PROPERTIES_RESPONSE);
+
+        //act
+        deviceTwinResponseMessageCallback.execute(testMessage, null);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedDeviceIO.sendEventAsync((IotHubTransportMessage) any, (IotHubEventCallback) any, any, (IotHubConnectionString) any);
+                times = 0;
+            }
+        };
+    }
+
     /*
     **Codes_SRS_DEVICETWIN_25_023: [**OnDesiredPropertyChange callback shall look for the user registered call back on the property that changed and if no callback is registered or is null then OnDesiredPropertyChange shall call the user on generic callback providing with the desired property change key and value pair**]**
      */
@@ -0,0 +1,335 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.DeviceTwin;
+
+import com.microsoft.azure.sdk.iot.device.DeviceTwin.Pair;
+import com.microsoft.azure.sdk.iot.device.DeviceTwin.Property;
+import com.microsoft.azure.sdk.iot.device.DeviceTwin.ReportedPropertiesWriter;
+import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
+import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/** Unit tests for ReportedPropertiesWriter. */
+public class ReportedPropertiesWriterTest
+{
+    @Mocked
+    IotHubEventCallback mockCallback;
+
+    private static final class RecordingPatchSender implements ReportedPropertiesWriter.PatchSender
+    {
+        private final List<Map<String, Object>> patches = new ArrayList<>();
+        private final List<List<Pair<IotHubEventCallback, Object>>> patchCallbacks = new ArrayList<>();
+        private final List<String> threadNames = new ArrayList<>();
+        private final CountDownLatch latch;
+        private IOException exception;
+
+        private RecordingPatchSender(int expectedPatches)
+        {
+            this.latch = new CountDownLatch(expectedPatches);
+        }
+
+        @Override
+        public synchronized void send(Map<String, Object> reportedProperties, List<Pair<IotHubEventCallback, Object>> callbacks) throws IOException
+        {
+            if (this.exception != null)
+            {
+                throw this.exception;
+            }
+            this.patches.add(new LinkedHashMap<>(reportedProperties));
+            this.patchCallbacks.add(callbacks);
+            this.threadNames.add(Thread.currentThread().getName());
+            this.latch.countDown();
+        }
+    }
+
+    private static Set<Property> properties(Property... properties)
+    {
+        return new HashSet<>(Arrays.asList(properties));
+    }
+
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_001: [If the maxBatchSize is smaller than 1, the lingerTimeInMilliseconds is negative, or the patchSender is null, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnZeroMaxBatchSize()
+    {
+        // act
+        new ReportedPropertiesWriter(0, 10, new RecordingPatchSender(0));
+    }
+
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_001: [If the maxBatchSize is smaller than 1, the lingerTimeInMilliseconds is negative, or the patchSender is null, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNegativeLingerTime()
+    {
+        // act
+        new ReportedPropertiesWriter(10, -1, new RecordingPatchSender(0));
+    }
+
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_001: [If the maxBatchSize is smaller than 1, the lingerTimeInMilliseconds is negative, or the patchSender is null, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNullPatchSender()
+    {
+        // act
+        new ReportedPropertiesWriter(10, 10, null);
+    }
+
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_002: [The constructor shall save the parameters and start with an empty patch.]
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_012: [The function shall return the number of properties of the pending patch.]
+    @Test
+    public void constructorStartsWithEmptyPatch()
+    {
+        // act
+        ReportedPropertiesWriter writer = new ReportedPropertiesWriter(10, 10, new RecordingPatchSender(0));
+
+        // assert
+        assertEquals(0, writer.size());
+    }
+
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_003: [If the reportedProperties is null or empty, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void addThrowsOnNullProperties() throws IOException
+    {
+        // act
+        new ReportedPropertiesWriter(10, 10, new RecordingPatchSender(0)).add(null, mockCallback, null);
+    }
+
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_003: [If the reportedProperties is null or empty, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void addThrowsOnEmptyProperties() throws IOException
+    {
+        // act
+        new ReportedPropertiesWriter(10, 10, new RecordingPatchSender(0)).add(new HashSet<Property>(), mockCallback, null);
+    }
+
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_004: [The function shall merge the properties into the pending patch, replacing the pending value of a property with the new one.]
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_005: [If the callback is not null, the function shall add it to the callbacks of the pending patch.]
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_010: [The function shall send the pending patch with its callbacks through the patchSender, and start a new empty patch.]
+    @Test
+    public void addMergesUpdatesOfSameKeyWithLastValue() throws IOException
+    {
+        // arrange
+        final Object context1 = new Object();
+        final Object context2 = new Object();
+        RecordingPatchSender sender = new RecordingPatchSender(1);
+        ReportedPropertiesWriter writer = new ReportedPropertiesWriter(10, 60000, sender);
+
+        // act
+        writer.add(properties(new Property("temperature", 20), new Property("humidity", 50)), mockCallback, context1);
+        writer.add(properties(new Property("temperature", 21)), mockCallback, context2);
+        writer.add(properties(new Property("pressure", 1000)), null, null);
+        int pendingSize = writer.size();
+        writer.flush();
+
+        // assert
+        assertEquals(3, pendingSize);
+        assertEquals(0, writer.size());
+        assertEquals(1, sender.patches.size());
+        Map<String, Object> patch = sender.patches.get(0);
+        assertEquals(3, patch.size());
+        assertEquals(21, patch.get("temperature"));
+        assertEquals(50, patch.get("humidity"));
+        assertEquals(1000, patch.get("pressure"));
+        List<Pair<IotHubEventCallback, Object>> callbacks = sender.patchCallbacks.get(0);
+        assertEquals(2, callbacks.size());
+        assertEquals(context1, callbacks.get(0).getValue());
+        assertEquals(context2, callbacks.get(1).getValue());
+    }
+
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_006: [If the pending patch has maxBatchSize properties or more, the function shall send it.]
+    @Test
+    public void addSendsPatchWhenFull() throws IOException
+    {
+        // arrange
+        RecordingPatchSender sender = new RecordingPatchSender(1);
+        ReportedPropertiesWriter writer = new ReportedPropertiesWriter(2, 60000, sender);
+
+        // act
+        writer.add(properties(new Property("temperature", 20)), mockCallback, null);
+        writer.add(properties(new Property("temperature", 21)), mockCallback, null);
+        int sentBeforeFull = sender.patches.size();
+        writer.add(properties(new Property("humidity", 50)), mockCallback, null);
+
+        // assert
+        assertEquals(0, sentBeforeFull);
+        assertEquals(1, sender.patches.size());
+        assertEquals(2, sender.patches.get(0).size());
+        assertEquals(3, sender.patchCallbacks.get(0).size());
+        assertEquals(0, writer.size());
+    }
+
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_007: [Otherwise, if no flush is scheduled, the function shall schedule the flush of the pending patch after the linger time.]
+    @Test
+    public void addSendsPatchAfterLingerTime() throws IOException, InterruptedException
+    {
+        // arrange
+        RecordingPatchSender sender = new RecordingPatchSender(1);
+        ReportedPropertiesWriter writer = new ReportedPropertiesWriter(10, 20, sender);
+
+        // act
+        writer.add(properties(new Property("temperature", 20)), mockCallback, null);
+        writer.add(properties(new Property("humidity", 50)), mockCallback, null);
+
+        // assert
+        assertTrue(sender.latch.await(10, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, sender.patches.size());
+        assertEquals(2, sender.patches.get(0).size());
+        assertEquals("azure-iot-sdk-ReportedPropertiesWriter", sender.threadNames.get(0));
+        assertEquals(0, writer.size());
+    }
+
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_008: [The function shall cancel the scheduled flush, if any.]
+    @Test
+    public void flushCancelsScheduledFlush() throws IOException, InterruptedException
+    {
+        // arrange
+        RecordingPatchSender sender = new RecordingPatchSender(1);
+        ReportedPropertiesWriter writer = new ReportedPropertiesWriter(10, 50, sender);
+        writer.add(properties(new Property("temperature", 20)), mockCallback, null);
+
+        // act
+        writer.flush();
+
+        // assert
+        Thread.sleep(150);
+        assertEquals(1, sender.patches.size());
+    }
+
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_009: [If the pending patch is empty, the function shall do nothing.]
+    @Test
+    public void flushDoesNothingWhenEmpty() throws IOException
+    {
+        // arrange
+        RecordingPatchSender sender = new RecordingPatchSender(0);
+        ReportedPropertiesWriter writer = new ReportedPropertiesWriter(10, 10, sender);
+
+        // act
+        writer.flush();
+
+        // assert
+        assertTrue(sender.patches.isEmpty());
+    }
+
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_011: [If the patch cannot be sent, the function shall invoke its callbacks with ERROR and throw IOException.]
+    @Test
+    public void flushInvokesCallbacksWithErrorWhenSendFails() throws IOException
+    {
+        // arrange
+        final Object context = new Object();
+        RecordingPatchSender sender = new RecordingPatchSender(0);
+        sender.exception = new IOException();
+        ReportedPropertiesWriter writer = new ReportedPropertiesWriter(10, 60000, sender);
+        writer.add(properties(new Property("temperature", 20)), mockCallback, context);
+        boolean thrown = false;
+
+        // act
+        try
+        {
+            writer.flush();
+        }
+        catch (IOException expected)
+        {
+            thrown = true;
+        }
+
+        // assert
+        assertTrue(thrown);
+        assertEquals(0, writer.size());
+        new Verifications()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.ERROR, context);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_014: [The patches shall be sent and their callbacks invoked without holding the lock of the writer.]
+    @Test
+    public void flushSendsAndInvokesCallbacksOutsideWriterLock() throws IOException
+    {
+        // arrange
+        final List<Boolean> lockHeld = new ArrayList<>();
+        final ReportedPropertiesWriter[] writer = new ReportedPropertiesWriter[1];
+        writer[0] = new ReportedPropertiesWriter(1, 60000, new ReportedPropertiesWriter.PatchSender()
+        {
+            @Override
+            public void send(Map<String, Object> reportedProperties, List<Pair<IotHubEventCallback, Object>> callbacks) throws IOException
+            {
+                lockHeld.add(Thread.holdsLock(writer[0]));
+                throw new IOException();
+            }
+        });
+        IotHubEventCallback callback = new IotHubEventCallback()
+        {
+            @Override
+            public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+            {
+                lockHeld.add(Thread.holdsLock(writer[0]));
+            }
+        };
+        boolean thrown = false;
+
+        // act
+        try
+        {
+            writer[0].add(properties(new Property("temperature", 20)), callback, null);
+        }
+        catch (IOException expected)
+        {
+            thrown = true;
+        }
+
+        // assert
+        assertTrue(thrown);
+        assertEquals(Arrays.asList(false, false), lockHeld);
+    }
+
+    // Tests_SRS_REPORTEDPROPERTIESWRITER_28_013: [If another thread is sending patches, the function shall leave the patch to that thread, which sends it after the patches completed before it.]
+    @Test
+    public void patchCompletedWhileSendingIsSentAfterIt() throws IOException
+    {
+        // arrange
+        final List<Map<String, Object>> patches = new ArrayList<>();
+        final List<Integer> sentWhenNestedAddReturned = new ArrayList<>();
+        final ReportedPropertiesWriter[] writer = new ReportedPropertiesWriter[1];
+        writer[0] = new ReportedPropertiesWriter(1, 60000, new ReportedPropertiesWriter.PatchSender()
+        {
+            @Override
+            public void send(Map<String, Object> reportedProperties, List<Pair<IotHubEventCallback, Object>> callbacks) throws IOException
+            {
+                patches.add(new LinkedHashMap<>(reportedProperties));
+                if (patches.size() == 1)
+                {
+                    writer[0].add(properties(new Property("temperature", 21)), null, null);
+                    sentWhenNestedAddReturned.add(patches.size());
+                }
+            }
+        });
+
+        // act
+        writer[0].add(properties(new Property("temperature", 20)), null, null);
+
+        // assert
+        assertEquals(Collections.singletonList(1), sentWhenNestedAddReturned);
+        assertEquals(2, patches.size());
+        assertEquals(20, patches.get(0).get("temperature"));
+        assertEquals(21, patches.get(1).get("temperature"));
+        assertEquals(0, writer[0].size());
+    }
+}
@@ -0,0 +1,223 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.MessageProperty;
+import com.microsoft.azure.sdk.iot.device.MessagePropertyMap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Unit tests for MessagePropertyMap. */
+public class MessagePropertyMapTest
+{
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_001: [The constructor shall create a map without properties.]
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_004: [If the name is null or the map is empty, the function shall return null.]
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_009: [The function shall return the number of properties.]
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_010: [The function shall return true if the map has no property, and false otherwise.]
+    @Test
+    public void constructorCreatesEmptyMap()
+    {
+        // act
+        MessagePropertyMap map = new MessagePropertyMap();
+
+        // assert
+        assertEquals(0, map.size());
+        assertTrue(map.isEmpty());
+        assertNull(map.get("key"));
+        assertEquals(0, map.toArray().length);
+        assertFalse(map.iterator().hasNext());
+    }
+
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_002: [If the properties are null, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNullProperties()
+    {
+        // act
+        new MessagePropertyMap(null);
+    }
+
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_003: [The constructor shall put the provided properties in order.]
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_011: [The function shall return a new array with the properties, in the order they were set.]
+    @Test
+    public void constructorPutsPropertiesInOrder()
+    {
+        // arrange
+        MessageProperty[] properties = new MessageProperty[]
+        {
+            new MessageProperty("key1", "value1"),
+            new MessageProperty("key2", "value2"),
+            new MessageProperty("key3", "value3")
+        };
+
+        // act
+        MessagePropertyMap map = new MessagePropertyMap(properties);
+
+        // assert
+        MessageProperty[] actual = map.toArray();
+        assertNotSame(properties, actual);
+        assertArrayEquals(properties, actual);
+        assertEquals(3, map.size());
+        assertFalse(map.isEmpty());
+    }
+
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_004: [If the name is null or the map is empty, the function shall return null.]
+    @Test
+    public void getReturnsNullForNullName()
+    {
+        // arrange
+        MessagePropertyMap map = new MessagePropertyMap();
+        map.put(new MessageProperty("key", "value"));
+
+        // act
+        MessageProperty property = map.get(null);
+
+        // assert
+        assertNull(property);
+    }
+
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_005: [The function shall return the property with the provided name, compared in a case-insensitive manner, or null if there is none.]
+    @Test
+    public void getFindsPropertyIgnoringCase()
+    {
+        // arrange
+        MessageProperty property = new MessageProperty("Content-Kind", "value");
+        MessagePropertyMap map = new MessagePropertyMap();
+        map.put(property);
+
+        // act - assert
+        assertSame(property, map.get("Content-Kind"));
+        assertSame(property, map.get("content-kind"));
+        assertSame(property, map.get("CONTENT-KIND"));
+        assertNull(map.get("content"));
+    }
+
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_006: [If the property is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void putThrowsOnNullProperty()
+    {
+        // arrange
+        MessagePropertyMap map = new MessagePropertyMap();
+
+        // act
+        map.put(null);
+    }
+
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_007: [If a property has the same name, compared in a case-insensitive manner, the function shall remove it and return it.]
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_008: [The function shall add the property after the other properties.]
+    @Test
+    public void putReplacesPropertyWithSameNameAndMovesItLast()
+    {
+        // arrange
+        MessageProperty first = new MessageProperty("key1", "value1");
+        MessageProperty second = new MessageProperty("key2", "value2");
+        MessageProperty replacement = new MessageProperty("KEY1", "value3");
+        MessagePropertyMap map = new MessagePropertyMap(new MessageProperty[] { first, second });
+
+        // act
+        MessageProperty replaced = map.put(replacement);
+
+        // assert
+        assertSame(first, replaced);
+        assertEquals(2, map.size());
+        assertSame(replacement, map.get("key1"));
+        assertArrayEquals(new MessageProperty[] { second, replacement }, map.toArray());
+    }
+
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_005: [The function shall return the property with the provided name, compared in a case-insensitive manner, or null if there is none.]
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_007: [If a property has the same name, compared in a case-insensitive manner, the function shall remove it and return it.]
+    @Test
+    public void putKeepsCollidingPropertiesReachableAfterReplacement()
+    {
+        // arrange - "a@" and "b!" have the same hash, so they are stored in neighbouring slots
+        MessageProperty first = new MessageProperty("a@", "value1");
+        MessageProperty second = new MessageProperty("b!", "value2");
+        MessagePropertyMap map = new MessagePropertyMap(new MessageProperty[] { first, second });
+        MessageProperty replacement = new MessageProperty("A@", "value3");
+
+        // act
+        MessageProperty replaced = map.put(replacement);
+
+        // assert
+        assertSame(first, replaced);
+        assertSame(second, map.get("b!"));
+        assertSame(replacement, map.get("a@"));
+        assertEquals(2, map.size());
+    }
+
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_005: [The function shall return the property with the provided name, compared in a case-insensitive manner, or null if there is none.]
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_008: [The function shall add the property after the other properties.]
+    @Test
+    public void putGrowsMapAndKeepsOrder()
+    {
+        // arrange
+        MessagePropertyMap map = new MessagePropertyMap();
+        List<MessageProperty> expected = new ArrayList<>();
+
+        // act
+        for (int i = 0; i < 100; i++)
+        {
+            map.put(new MessageProperty("key" + i, "value" + i));
+        }
+        for (int i = 0; i < 100; i += 2)
+        {
+            map.put(new MessageProperty("KEY" + i, "new" + i));
+        }
+
+        // assert
+        for (int i = 1; i < 100; i += 2)
+        {
+            expected.add(map.get("key" + i));
+            assertEquals("value" + i, map.get("key" + i).getValue());
+        }
+        for (int i = 0; i < 100; i += 2)
+        {
+            expected.add(map.get("key" + i));
+            assertEquals("new" + i, map.get("key" + i).getValue());
+        }
+        assertEquals(100, map.size());
+        assertArrayEquals(expected.toArray(), map.toArray());
+    }
+
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_012: [The function shall return an iterator over the properties, in the order they were set, that does not copy them and does not support remove.]
+    @Test
+    public void iteratorSkipsReplacedProperties()
+    {
+        // arrange
+        MessageProperty first = new MessageProperty("key1", "value1");
+        MessageProperty second = new MessageProperty("key2", "value2");
+        MessageProperty replacement = new MessageProperty("key1", "value3");
+        MessagePropertyMap map = new MessagePropertyMap(new MessageProperty[] { first, second });
+        map.put(replacement);
+        List<MessageProperty> iterated = new ArrayList<>();
+
+        // act
+        for (MessageProperty property : map)
+        {
+            iterated.add(property);
+        }
+
+        // assert
+        assertEquals(2, iterated.size());
+        assertSame(second, iterated.get(0));
+        assertSame(replacement, iterated.get(1));
+    }
+
+    // Tests_SRS_MESSAGEPROPERTYMAP_28_012: [The function shall return an iterator over the properties, in the order they were set, that does not copy them and does not support remove.]
+    @Test (expected = UnsupportedOperationException.class)
+    public void iteratorDoesNotSupportRemove()
+    {
+        // arrange
+        MessagePropertyMap map = new MessagePropertyMap(new MessageProperty[] { new MessageProperty("key", "value") });
+        Iterator<MessageProperty> iterator = map.iterator();
+        iterator.next();
+
+        // act
+        iterator.remove();
+    }
+}
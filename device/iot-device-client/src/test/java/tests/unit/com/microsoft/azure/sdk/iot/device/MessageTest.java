@@ -6,17 +6,21 @@ package tests.unit.com.microsoft.azure.sdk.iot.device;
 import com.microsoft.azure.sdk.iot.device.IotHubConnectionString;
 import com.microsoft.azure.sdk.iot.device.Message;
 import com.microsoft.azure.sdk.iot.device.MessageProperty;
+import com.microsoft.azure.sdk.iot.device.MessagePropertyMap;
 import com.microsoft.azure.sdk.iot.device.MessageType;
 import mockit.Deencapsulation;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.*;
 
 /**
@@ -51,6 +55,76 @@ public class MessageTest
         new Message(body);
     }
 
+    // Tests_SRS_MESSAGE_28_003: [The constructor shall save a view of the remaining bytes of the buffer, without copying them.]
+    @Test
+    public void constructorSavesBufferBodyWithoutCopy()
+    {
+        final byte[] buffer = { 0, 1, 2, 3, 0 };
+        ByteBuffer body = ByteBuffer.wrap(buffer, 1, 3);
+
+        Message msg = new Message(body);
+        body.position(4);
+        buffer[1] = 4;
+
+        assertThat(msg.getBytes(), is(new byte[] { 4, 2, 3 }));
+        ByteBuffer testBody = msg.getBodyBuffer();
+        assertEquals(3, testBody.remaining());
+        assertEquals(4, testBody.get(0));
+    }
+
+    // Tests_SRS_MESSAGE_28_002: [If the message body is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullBufferBody()
+    {
+        final ByteBuffer body = null;
+
+        new Message(body);
+    }
+
+    // Tests_SRS_MESSAGE_28_004: [The function shall return a new read-only view of the message body, without copying it, or null if the message has no body.]
+    @Test
+    public void getBodyBufferReturnsNewViewOfBody()
+    {
+        final byte[] body = { 1, 2, 3 };
+        Message msg = new Message(body);
+
+        ByteBuffer testBody = msg.getBodyBuffer();
+        testBody.position(3);
+        body[0] = 4;
+
+        ByteBuffer otherBody = msg.getBodyBuffer();
+        assertEquals(3, otherBody.remaining());
+        assertEquals(4, otherBody.get(0));
+        assertNull(new Message().getBodyBuffer());
+    }
+
+    // Tests_SRS_MESSAGE_28_004: [The function shall return a new read-only view of the message body, without copying it, or null if the message has no body.]
+    @Test(expected = ReadOnlyBufferException.class)
+    public void getBodyBufferReturnsReadOnlyView()
+    {
+        Message msg = new Message(new byte[] { 1, 2, 3 });
+
+        msg.getBodyBuffer().put(0, (byte) 4);
+    }
+
+    // Tests_SRS_MESSAGE_28_004: [The function shall return a new read-only view of the message body, without copying it, or null if the message has no body.]
+    @Test(expected = ReadOnlyBufferException.class)
+    public void getBodyBufferOfBufferBodyReturnsReadOnlyView()
+    {
+        Message msg = new Message(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+
+        msg.getBodyBuffer().put(0, (byte) 4);
+    }
+
+    // Tests_SRS_MESSAGE_28_005: [The function shall return the length of the message body, or 0 if the message has no body.]
+    @Test
+    public void getBodyLengthReturnsLengthOfBody()
+    {
+        assertEquals(3, new Message(new byte[] { 1, 2, 3 }).getBodyLength());
+        assertEquals(2, new Message(ByteBuffer.wrap(new byte[] { 1, 2, 3 }, 1, 2)).getBodyLength());
+        assertEquals(0, new Message().getBodyLength());
+    }
+
     // Tests_SRS_MESSAGE_11_022: [The function shall return the message body, encoded using charset UTF-8.]
     @Test
     public void getBodyAsStringReturnsUtf8Body()
@@ -79,6 +153,8 @@ public class MessageTest
             {
                 new MessageProperty(name, value1);
                 result = mockProperty;
+                mockProperty.getName();
+                result = name;
                 mockProperty.hasSameName(name);
                 result = true;
                 mockProperty.getValue();
@@ -99,6 +175,8 @@ public class MessageTest
             {
                 new MessageProperty(name, value2);
                 result = mockProperty;
+                mockProperty.getName();
+                result = name;
                 mockProperty.hasSameName(name);
                 result = true;
                 mockProperty.getValue();
@@ -221,6 +299,24 @@ public class MessageTest
         assertThat(testProperties[0], is(not(mockProperty)));
     }
 
+    // Tests_SRS_MESSAGE_28_006: [The function shall find the property by its name without scanning the other properties.]
+    // Tests_SRS_MESSAGE_28_007: [The function shall return the properties of the message, without copying them.]
+    @Test
+    public void getPropertyMapReturnsPropertiesWithoutCopy()
+    {
+        final byte[] body = { 0x61, 0x62, 0x63 };
+        Message msg = new Message(body);
+        msg.setProperty("name1", "value1");
+        msg.setProperty("name2", "value2");
+
+        MessagePropertyMap testProperties = msg.getPropertyMap();
+
+        assertThat(testProperties.size(), is(2));
+        assertThat(testProperties, is(sameInstance(msg.getPropertyMap())));
+        assertThat(testProperties.get("NAME2").getValue(), is("value2"));
+        assertThat(msg.getProperty("Name1"), is("value1"));
+    }
+
     // Tests_SRS_MESSAGE_15_035: [The function shall return true if the expiryTime is set to 0.]
     @Test
     public void isExpiredReturnsTrueIfExpiryIsNotSet()
@@ -290,6 +386,17 @@ public class MessageTest
         msg.setAbsoluteExpiryTime(-1L);
     }
 
+    // Tests_SRS_MESSAGE_28_001: [The function shall return the message's absolute expiry time, or 0 if it is not set.]
+    @Test
+    public void getExpiryTimeReturnsAbsoluteExpiryTime()
+    {
+        Message msg = new Message("body");
+        assertEquals(0L, msg.getExpiryTime());
+
+        msg.setAbsoluteExpiryTime(1234L);
+        assertEquals(1234L, msg.getExpiryTime());
+    }
+
     // Tests_SRS_MESSAGE_34_047: [The function shall set the message's expiry time.]
     // Tests_SRS_MESSAGE_34_048: [The function shall set the message's message type.]
     // Tests_SRS_MESSAGE_34_046: [The function shall set the message's correlation ID to the provided value.]
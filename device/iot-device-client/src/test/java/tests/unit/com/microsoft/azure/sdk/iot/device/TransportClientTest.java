@@ -214,6 +214,38 @@ public class TransportClientTest
         };
     }
 
+    // Tests_SRS_TRANSPORTCLIENT_28_001: [The function shall cancel the background renewal of the sas token of all devices, if any.]
+    @Test
+    public void closeNowCancelsSasTokenRenewalOfDevices(@Mocked final IotHubSasTokenAuthenticationProvider mockSasTokenAuthentication) throws IOException
+    {
+        // arrange
+        IotHubClientProtocol iotHubClientProtocol = IotHubClientProtocol.AMQPS;
+        final TransportClient transportClient = new TransportClient(iotHubClientProtocol);
+        Deencapsulation.setField(transportClient, "deviceIO", mockDeviceIO);
+        Deencapsulation.invoke(transportClient, "registerDeviceClient", mockDeviceClient);
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceClient.getConfig();
+                result = mockDeviceClientConfig;
+                mockDeviceClientConfig.getSasTokenAuthentication();
+                result = mockSasTokenAuthentication;
+            }
+        };
+
+        // act
+        transportClient.closeNow();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockSasTokenAuthentication.cancelTokenRenewal();
+                times = 1;
+            }
+        };
+    }
+
     // Tests_SRS_TRANSPORTCLIENT_12_014: [If the deviceIO not null the function shall call multiplexClose on the deviceIO and set the deviceIO to null.]
     // Tests_SRS_TRANSPORTCLIENT_12_015: [If the registered device list is not empty the function shall call closeFileUpload on all devices.]
     // Tests_SRS_TRANSPORTCLIENT_12_016: [The function shall clear the registered device list.]
@@ -11,11 +11,17 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.Certificate;
 import java.util.Collection;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * Unit tests for IotHubCertificateManager
@@ -417,4 +423,61 @@ public class IotHubCertificateManagerTests
         Collection<Certificate> testCerts = Deencapsulation.invoke(testCertManager, "getCertificateCollection");
     }
 
+    //Tests_SRS_IOTHUBCERTIFICATEMANAGER_28_001: [This method shall return the hex encoded SHA-256 digest of the valid certificate, or null if it was not defined.]
+    @Test
+    public void getValidCertDigestReturnsDigestOfValidCert() throws NoSuchAlgorithmException
+    {
+        //arrange
+        final String validCertString = "someValidCert";
+        IotHubCertificateManager testCertManager = Deencapsulation.newInstance(IotHubCertificateManager.class);
+        Deencapsulation.invoke(testCertManager, "setValidCert", validCertString);
+
+        //act
+        String testCertDigest = Deencapsulation.invoke(testCertManager, "getValidCertDigest");
+
+        //assert
+        byte[] expectedDigest = MessageDigest.getInstance("SHA-256").digest(validCertString.getBytes(StandardCharsets.UTF_8));
+        assertEquals(String.format("%064x", new BigInteger(1, expectedDigest)), testCertDigest);
+    }
+
+    //Tests_SRS_IOTHUBCERTIFICATEMANAGER_28_001: [This method shall return the hex encoded SHA-256 digest of the valid certificate, or null if it was not defined.]
+    @Test
+    public void getValidCertDigestReturnsNullIfValidCertNotDefined() throws NoSuchAlgorithmException
+    {
+        //arrange
+        IotHubCertificateManager testCertManager = Deencapsulation.newInstance(IotHubCertificateManager.class);
+        try
+        {
+            Deencapsulation.invoke(testCertManager, "setValidCert", "");
+        }
+        catch (IllegalArgumentException e)
+        {
+            //expected, leaves no valid certificate
+        }
+
+        //act
+        String testCertDigest = Deencapsulation.invoke(testCertManager, "getValidCertDigest");
+
+        //assert
+        assertNull(testCertDigest);
+    }
+
+    //Tests_SRS_IOTHUBCERTIFICATEMANAGER_28_002: [This method shall compute the digest of the default certificate only once for all the certificate managers.]
+    @Test
+    public void getValidCertDigestComputesDefaultCertDigestOnce() throws NoSuchAlgorithmException
+    {
+        //arrange
+        IotHubCertificateManager firstCertManager = Deencapsulation.newInstance(IotHubCertificateManager.class);
+        IotHubCertificateManager secondCertManager = Deencapsulation.newInstance(IotHubCertificateManager.class);
+        String defaultCert = Deencapsulation.getField(firstCertManager, "validCert");
+
+        //act
+        String firstCertDigest = Deencapsulation.invoke(firstCertManager, "getValidCertDigest");
+        String secondCertDigest = Deencapsulation.invoke(secondCertManager, "getValidCertDigest");
+
+        //assert
+        byte[] expectedDigest = MessageDigest.getInstance("SHA-256").digest(defaultCert.getBytes(StandardCharsets.UTF_8));
+        assertEquals(String.format("%064x", new BigInteger(1, expectedDigest)), firstCertDigest);
+        assertSame(firstCertDigest, secondCertDigest);
+    }
 }
@@ -24,12 +24,15 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 /*
  * Unit tests for IotHubSSLContext
@@ -121,6 +124,122 @@ public class IotHubSSLContextTest
 
     }
 
+    //Tests_SRS_IOTHUBSSLCONTEXT_28_001: [If an SSL context was already created for the same trusted certificates, compared by their SHA-256 digest, the constructor shall use it instead of creating a new one.]
+    //Tests_SRS_IOTHUBSSLCONTEXT_28_002: [The constructor shall save the created SSL context for the other IotHubSSLContext objects created for the same trusted certificates.]
+    //Tests_SRS_IOTHUBSSLCONTEXT_28_003: [The constructor shall enable the client session cache of the SSL context so that reconnections can resume their TLS sessions.]
+    @Test
+    public void constructorSharesSSLContextForSameTrustedCerts(
+            @Mocked final SSLSessionContext mockedSessionContext) throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException, CertificateException
+    {
+        //arrange
+        final String trustedCert = "sharedTrustedCert-" + System.nanoTime();
+        testCollection.add(mockedX509Certificate);
+        generateSSLContextExpectations();
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockedCertificateManager, "getValidCertDigest");
+                result = trustedCert;
+                mockedSSLContext.getClientSessionContext();
+                result = mockedSessionContext;
+            }
+        };
+
+        //act
+        IotHubSSLContext firstContext = Deencapsulation.newInstance(IotHubSSLContext.class, new Class[] {String.class, boolean.class}, trustedCert, false);
+        IotHubSSLContext secondContext = Deencapsulation.newInstance(IotHubSSLContext.class, new Class[] {String.class, boolean.class}, trustedCert, false);
+
+        //assert
+        assertSame(Deencapsulation.invoke(firstContext, "getSSLContext"), Deencapsulation.invoke(secondContext, "getSSLContext"));
+        new Verifications()
+        {
+            {
+                SSLContext.getInstance(anyString);
+                times = 1;
+                mockedSSLContext.init(null, mockedTrustManager, mockedSecureRandom);
+                times = 1;
+                mockedSessionContext.setSessionCacheSize(anyInt);
+                times = 1;
+                mockedSessionContext.setSessionTimeout(anyInt);
+                times = 1;
+            }
+        };
+        testCollection.remove(mockedX509Certificate);
+    }
+
+    //Tests_SRS_IOTHUBSSLCONTEXT_28_001: [If an SSL context was already created for the same trusted certificates, compared by their SHA-256 digest, the constructor shall use it instead of creating a new one.]
+    @Test
+    public void constructorCreatesSSLContextPerTrustedCerts() throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException, CertificateException
+    {
+        //arrange
+        final String firstTrustedCert = "firstTrustedCert-" + System.nanoTime();
+        final String secondTrustedCert = "secondTrustedCert-" + System.nanoTime();
+        testCollection.add(mockedX509Certificate);
+        generateSSLContextExpectations();
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockedCertificateManager, "getValidCertDigest");
+                returns(firstTrustedCert, secondTrustedCert);
+            }
+        };
+
+        //act
+        Deencapsulation.newInstance(IotHubSSLContext.class, new Class[] {String.class, boolean.class}, firstTrustedCert, false);
+        Deencapsulation.newInstance(IotHubSSLContext.class, new Class[] {String.class, boolean.class}, secondTrustedCert, false);
+
+        //assert
+        new Verifications()
+        {
+            {
+                SSLContext.getInstance(anyString);
+                times = 2;
+            }
+        };
+        testCollection.remove(mockedX509Certificate);
+    }
+
+    //Tests_SRS_IOTHUBSSLCONTEXT_28_004: [The constructor shall keep at most 16 saved SSL contexts, and drop the least recently used one beyond that.]
+    @Test
+    public void constructorDropsLeastRecentlyUsedSSLContext() throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException, CertificateException
+    {
+        //arrange
+        final int maxSharedSSLContexts = Deencapsulation.getField(IotHubSSLContext.class, "MAX_SHARED_SSL_CONTEXTS");
+        final String[] trustedCertDigests = new String[maxSharedSSLContexts + 2];
+        for (int i = 0; i < trustedCertDigests.length; i++)
+        {
+            trustedCertDigests[i] = "trustedCertDigest-" + i + "-" + System.nanoTime();
+        }
+        trustedCertDigests[maxSharedSSLContexts + 1] = trustedCertDigests[0];
+        testCollection.add(mockedX509Certificate);
+        generateSSLContextExpectations();
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockedCertificateManager, "getValidCertDigest");
+                returns(trustedCertDigests[0], (Object[]) Arrays.copyOfRange(trustedCertDigests, 1, trustedCertDigests.length));
+            }
+        };
+
+        //act
+        for (int i = 0; i < trustedCertDigests.length; i++)
+        {
+            Deencapsulation.newInstance(IotHubSSLContext.class, new Class[] {String.class, boolean.class}, "trustedCert", false);
+        }
+
+        //assert
+        Map<String, SSLContext> sharedSSLContexts = Deencapsulation.getField(IotHubSSLContext.class, "SHARED_SSL_CONTEXTS");
+        assertEquals(maxSharedSSLContexts, sharedSSLContexts.size());
+        new Verifications()
+        {
+            {
+                SSLContext.getInstance(anyString);
+                times = trustedCertDigests.length;
+            }
+        };
+        testCollection.remove(mockedX509Certificate);
+    }
+
     //Tests_SRS_IOTHUBSSLCONTEXT_25_017: [*This method shall return the value of sslContext.**]**
     @Test
     public void getterGetsContext() throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException, CertificateException
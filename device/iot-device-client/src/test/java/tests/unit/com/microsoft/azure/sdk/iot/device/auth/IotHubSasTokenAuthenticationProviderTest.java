@@ -201,4 +201,18 @@ public class IotHubSasTokenAuthenticationProviderTest
         //assert
         assertEquals(expectedExpiryTime, actualExpiryTime);
     }
+
+    //Tests_SRS_IOTHUBSASTOKENAUTHENTICATION_28_001: [This function shall do nothing if the sas token is not renewed in the background.]
+    @Test
+    public void cancelTokenRenewalDoesNothing()
+    {
+        //arrange
+        IotHubSasTokenAuthenticationProvider sasAuth = new mockIotHubSasTokenAuthenticationImplementation();
+
+        //act
+        sasAuth.cancelTokenRenewal();
+
+        //assert
+        assertSame(mockSasToken, Deencapsulation.getField(sasAuth, "sasToken"));
+    }
 }
@@ -0,0 +1,93 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.auth;
+
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenRenewalScheduler;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for IotHubSasTokenRenewalScheduler.
+ * 100% methods, 100% lines covered
+ */
+public class IotHubSasTokenRenewalSchedulerTest
+{
+    private final Runnable renewalTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+        }
+    };
+
+    // Tests_SRS_IOTHUBSASTOKENRENEWALSCHEDULER_28_001: [If the renewalTask is null or the delayInMilliseconds is negative, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void scheduleThrowsOnNullTask()
+    {
+        // act
+        IotHubSasTokenRenewalScheduler.schedule(null, 0);
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENRENEWALSCHEDULER_28_001: [If the renewalTask is null or the delayInMilliseconds is negative, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void scheduleThrowsOnNegativeDelay()
+    {
+        // act
+        IotHubSasTokenRenewalScheduler.schedule(renewalTask, -1);
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENRENEWALSCHEDULER_28_002: [The function shall run the renewalTask once after the delay, on the single renewal thread of the process, and return its future.]
+    @Test
+    public void scheduleRunsTasksOnSingleDaemonThread() throws InterruptedException
+    {
+        // arrange
+        final CountDownLatch runs = new CountDownLatch(2);
+        final Thread[] threads = new Thread[2];
+        Runnable firstTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                threads[0] = Thread.currentThread();
+                runs.countDown();
+            }
+        };
+        Runnable secondTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                threads[1] = Thread.currentThread();
+                runs.countDown();
+            }
+        };
+
+        // act
+        IotHubSasTokenRenewalScheduler.schedule(firstTask, 0);
+        IotHubSasTokenRenewalScheduler.schedule(secondTask, 10);
+
+        // assert
+        assertTrue(runs.await(10, TimeUnit.SECONDS));
+        assertEquals(threads[0], threads[1]);
+        assertTrue(threads[0].isDaemon());
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENRENEWALSCHEDULER_28_002: [The function shall run the renewalTask once after the delay, on the single renewal thread of the process, and return its future.]
+    @Test
+    public void scheduleReturnsCancellableFuture()
+    {
+        // act
+        ScheduledFuture<?> future = IotHubSasTokenRenewalScheduler.schedule(renewalTask, TimeUnit.HOURS.toMillis(1));
+
+        // assert
+        assertTrue(future.getDelay(TimeUnit.MILLISECONDS) > 0);
+        assertTrue(future.cancel(false));
+    }
+}
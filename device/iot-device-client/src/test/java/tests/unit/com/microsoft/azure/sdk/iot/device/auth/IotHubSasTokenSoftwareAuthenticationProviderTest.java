@@ -17,10 +17,15 @@ import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 /**
  * Unit tests for IotHubSasTokenSoftwareAuthenticationProvider.java
@@ -38,6 +43,7 @@ public class IotHubSasTokenSoftwareAuthenticationProviderTest
     @Mocked IotHubSasToken mockSasToken;
     @Mocked IotHubSSLContext mockIotHubSSLContext;
     @Mocked SSLContext mockSSLContext;
+    @Mocked IotHubSasTokenRenewalScheduler mockIotHubSasTokenRenewalScheduler;
 
     //Tests_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_34_002: [This constructor shall save the provided hostname, device id, deviceKey, and sharedAccessToken.]
     @Test
@@ -164,8 +170,7 @@ public class IotHubSasTokenSoftwareAuthenticationProviderTest
             {
                 Deencapsulation.newInstance(IotHubSasToken.class, new Class[] {String.class, String.class, String.class, String.class, long.class}, anyString, anyString, anyString, anyString, anyLong);
                 result = mockSasToken;
-                Deencapsulation.invoke(mockSasToken, "isExpired");
-                result = true;
+                IotHubSasTokenRenewalScheduler.schedule((Runnable) any, anyLong);
             }
         };
 
@@ -346,4 +351,200 @@ public class IotHubSasTokenSoftwareAuthenticationProviderTest
         //assert
         assertEquals(mockSSLContext, actualSSLContext);
     }
+
+    //Tests_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_001: [If there is a device key present, the constructor shall schedule the background renewal of the sas token.]
+    //Tests_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_002: [The background renewal shall run after the tokenRenewalFraction of the remaining lifetime of the sas token.]
+    @Test
+    public void constructorSchedulesRenewalAfterFractionOfLifetime()
+    {
+        //arrange
+        final List<Long> delays = new ArrayList<>();
+        long before = System.currentTimeMillis();
+
+        //act
+        IotHubSasTokenSoftwareAuthenticationProvider sasAuth = new IotHubSasTokenSoftwareAuthenticationProvider(expectedHostname, expectedDeviceId, expectedDeviceKey, null);
+
+        //assert
+        long after = System.currentTimeMillis();
+        new Verifications()
+        {
+            {
+                IotHubSasTokenRenewalScheduler.schedule((Runnable) any, withCapture(delays));
+                times = 1;
+            }
+        };
+        double fraction = sasAuth.getTokenRenewalFraction();
+        long tokenValidMilliseconds = (sasAuth.getTokenValidSecs() + 1) * 1000;
+        assertTrue(delays.get(0) >= (long)((tokenValidMilliseconds - (after - before) - 1000) * fraction));
+        assertTrue(delays.get(0) <= (long)(tokenValidMilliseconds * fraction));
+    }
+
+    //Tests_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_001: [If there is a device key present, the constructor shall schedule the background renewal of the sas token.]
+    @Test
+    public void constructorDoesNotScheduleRenewalWithoutDeviceKey()
+    {
+        //act
+        new IotHubSasTokenSoftwareAuthenticationProvider(expectedHostname, expectedDeviceId, null, expectedSasToken);
+
+        //assert
+        new Verifications()
+        {
+            {
+                IotHubSasTokenRenewalScheduler.schedule((Runnable) any, anyLong);
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_003: [The background renewal shall replace the saved sas token by a new one, and schedule the background renewal of the new one.]
+    @Test
+    public void backgroundRenewalRenewsSasTokenAndSchedulesNextRenewal()
+    {
+        //arrange
+        final List<Runnable> renewalTasks = new ArrayList<>();
+        IotHubSasTokenSoftwareAuthenticationProvider sasAuth = new IotHubSasTokenSoftwareAuthenticationProvider(expectedHostname, expectedDeviceId, expectedDeviceKey, expectedSasToken);
+        IotHubSasToken initialSasToken = Deencapsulation.getField(sasAuth, "sasToken");
+        new Verifications()
+        {
+            {
+                IotHubSasTokenRenewalScheduler.schedule(withCapture(renewalTasks), anyLong);
+            }
+        };
+        assertEquals(1, renewalTasks.size());
+
+        //act
+        renewalTasks.get(0).run();
+
+        //assert
+        IotHubSasToken actualSasToken = Deencapsulation.getField(sasAuth, "sasToken");
+        assertNotSame(initialSasToken, actualSasToken);
+        new Verifications()
+        {
+            {
+                Deencapsulation.newInstance(IotHubSasToken.class, new Class[] {String.class, String.class, String.class, String.class, long.class}, anyString, anyString, anyString, anyString, anyLong);
+                times = 2;
+                IotHubSasTokenRenewalScheduler.schedule((Runnable) any, anyLong);
+                times = 2;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_007: [This function shall cancel the background renewal of the sas token, if any.]
+    @Test
+    public void cancelTokenRenewalCancelsScheduledRenewal(@Mocked final ScheduledFuture<?> mockScheduledFuture)
+    {
+        //arrange
+        final List<Runnable> renewalTasks = new ArrayList<>();
+        new NonStrictExpectations()
+        {
+            {
+                IotHubSasTokenRenewalScheduler.schedule(withCapture(renewalTasks), anyLong);
+                result = mockScheduledFuture;
+            }
+        };
+        IotHubSasTokenSoftwareAuthenticationProvider sasAuth = new IotHubSasTokenSoftwareAuthenticationProvider(expectedHostname, expectedDeviceId, expectedDeviceKey, expectedSasToken);
+        IotHubSasToken initialSasToken = Deencapsulation.getField(sasAuth, "sasToken");
+
+        //act
+        sasAuth.cancelTokenRenewal();
+        renewalTasks.get(0).run();
+
+        //assert
+        assertSame(initialSasToken, Deencapsulation.getField(sasAuth, "sasToken"));
+        new Verifications()
+        {
+            {
+                mockScheduledFuture.cancel(false);
+                times = 1;
+                IotHubSasTokenRenewalScheduler.schedule((Runnable) any, anyLong);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_008: [If the background renewal was canceled and there is a device key present, this function shall renew the saved sas token, which schedules its background renewal again.]
+    @Test
+    public void getRenewedSasTokenSchedulesRenewalAgainAfterCancel(@Mocked final ScheduledFuture<?> mockScheduledFuture) throws IOException
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                IotHubSasTokenRenewalScheduler.schedule((Runnable) any, anyLong);
+                result = mockScheduledFuture;
+                Deencapsulation.invoke(mockSasToken, "isExpired");
+                result = false;
+            }
+        };
+        IotHubSasTokenSoftwareAuthenticationProvider sasAuth = new IotHubSasTokenSoftwareAuthenticationProvider(expectedHostname, expectedDeviceId, expectedDeviceKey, expectedSasToken);
+        sasAuth.cancelTokenRenewal();
+
+        //act
+        sasAuth.getRenewedSasToken();
+        sasAuth.getRenewedSasToken();
+
+        //assert
+        new Verifications()
+        {
+            {
+                IotHubSasTokenRenewalScheduler.schedule((Runnable) any, anyLong);
+                times = 2;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_004: [If the tokenRenewalFraction is not greater than 0 or is greater than 1, this function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setTokenRenewalFractionThrowsOnZero()
+    {
+        //arrange
+        IotHubSasTokenSoftwareAuthenticationProvider sasAuth = new IotHubSasTokenSoftwareAuthenticationProvider(expectedHostname, expectedDeviceId, expectedDeviceKey, null);
+
+        //act
+        sasAuth.setTokenRenewalFraction(0);
+    }
+
+    //Tests_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_004: [If the tokenRenewalFraction is not greater than 0 or is greater than 1, this function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setTokenRenewalFractionThrowsOnMoreThanOne()
+    {
+        //arrange
+        IotHubSasTokenSoftwareAuthenticationProvider sasAuth = new IotHubSasTokenSoftwareAuthenticationProvider(expectedHostname, expectedDeviceId, expectedDeviceKey, null);
+
+        //act
+        sasAuth.setTokenRenewalFraction(1.5);
+    }
+
+    //Tests_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_005: [This function shall save the provided tokenRenewalFraction.]
+    //Tests_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_28_006: [This function shall return the saved tokenRenewalFraction.]
+    @Test
+    public void setTokenRenewalFractionAppliesToNextRenewal()
+    {
+        //arrange
+        final List<Runnable> renewalTasks = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+        IotHubSasTokenSoftwareAuthenticationProvider sasAuth = new IotHubSasTokenSoftwareAuthenticationProvider(expectedHostname, expectedDeviceId, expectedDeviceKey, null);
+        new Verifications()
+        {
+            {
+                IotHubSasTokenRenewalScheduler.schedule(withCapture(renewalTasks), anyLong);
+            }
+        };
+
+        //act
+        sasAuth.setTokenRenewalFraction(0.5);
+        renewalTasks.get(0).run();
+
+        //assert
+        assertEquals(0.5, sasAuth.getTokenRenewalFraction(), 0);
+        new Verifications()
+        {
+            {
+                IotHubSasTokenRenewalScheduler.schedule((Runnable) any, withCapture(delays));
+            }
+        };
+        assertEquals(2, delays.size());
+        assertTrue(delays.get(1) <= (sasAuth.getTokenValidSecs() + 1) * 1000 / 2);
+        assertTrue(delays.get(1) < delays.get(0));
+    }
 }
@@ -15,6 +15,7 @@ import java.net.URISyntaxException;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -465,4 +466,30 @@ public class IotHubSasTokenTest
                 iotHubConnectionString.getSharedAccessToken(),
                 0);
     }
+
+    // Tests_SRS_IOTHUBSASTOKEN_25_010: [If SAS Token was not provided by config it should be built and returned as string]
+    @Test
+    public void toStringBuildsSasTokenOnlyOnce()
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockSig.toString();
+                result = "sample-sig";
+            }
+        };
+
+        IotHubSasToken token = Deencapsulation.newInstance(IotHubSasToken.class, new Class[] {String.class, String.class, String.class, String.class, long.class},
+                "iothub.sample-iothub-hostname.net",
+                "sample-device-ID",
+                "sample-device-key",
+                null,
+                100L);
+
+        String firstTokenStr = token.toString();
+        String secondTokenStr = token.toString();
+
+        assertThat(firstTokenStr.indexOf("sig=sample-sig"), is(not(-1)));
+        assertSame(firstTokenStr, secondTokenStr);
+    }
 }
@@ -4,8 +4,10 @@
 package tests.unit.com.microsoft.azure.sdk.iot.device.auth;
 
 import com.microsoft.azure.sdk.iot.device.auth.SignatureHelper;
+import mockit.Deencapsulation;
 import org.junit.Test;
 
+import javax.crypto.Mac;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -66,6 +68,48 @@ public class SignatureHelperTest
         assertThat(testEncryptedSig, is(expectedEncryptedSig));
     }
 
+    // Tests_SRS_SIGNATUREHELPER_28_001: [The function shall reuse the HMAC-SHA256 of the current thread, and only initialize it again if the device key changed.]
+    @Test
+    public void encryptSignatureReusesHmacSha256OfThread()
+    {
+        final byte[] testSig = "what do ya want for nothing?".getBytes(UTF8);
+        final byte[] deviceKey = "Jefe".getBytes(UTF8);
+        final byte[] otherDeviceKey = "other key".getBytes(UTF8);
+
+        byte[] firstEncryptedSig =
+                SignatureHelper.encryptSignatureHmacSha256(testSig, deviceKey);
+        ThreadLocal<Mac> threadHmacSha256 = Deencapsulation.getField(SignatureHelper.class, "THREAD_HMAC_SHA256");
+        Mac firstHmacSha256 = threadHmacSha256.get();
+        byte[] otherEncryptedSig =
+                SignatureHelper.encryptSignatureHmacSha256(testSig, otherDeviceKey);
+        byte[] secondEncryptedSig =
+                SignatureHelper.encryptSignatureHmacSha256(testSig, deviceKey);
+
+        assertThat(threadHmacSha256.get(), is(sameInstance(firstHmacSha256)));
+        assertThat(secondEncryptedSig, is(firstEncryptedSig));
+        assertThat(otherEncryptedSig, is(not(firstEncryptedSig)));
+    }
+
+    // Tests_SRS_SIGNATUREHELPER_28_002: [The function shall recognize the device key of the current thread by comparing its bytes with a copy of the key kept by the thread, without hashing it.]
+    @Test
+    public void encryptSignatureRecognizesChangedBytesOfSameKeyArray()
+    {
+        final byte[] testSig = "what do ya want for nothing?".getBytes(UTF8);
+        final byte[] deviceKey = "Jefe".getBytes(UTF8);
+        final byte[] expectedEncryptedSig =
+                SignatureHelper.encryptSignatureHmacSha256(testSig, "Jeff".getBytes(UTF8));
+
+        SignatureHelper.encryptSignatureHmacSha256(testSig, deviceKey);
+        ThreadLocal<byte[]> threadKey = Deencapsulation.getField(SignatureHelper.class, "THREAD_HMAC_SHA256_KEY");
+        assertThat(threadKey.get(), is(deviceKey));
+        assertThat(threadKey.get(), is(not(sameInstance(deviceKey))));
+        deviceKey[3] = 'f';
+        byte[] testEncryptedSig =
+                SignatureHelper.encryptSignatureHmacSha256(testSig, deviceKey);
+
+        assertThat(testEncryptedSig, is(expectedEncryptedSig));
+    }
+
     // Tests_SRS_SIGNATUREHELPER_11_006: [The function shall encode the signature using Base64.]
     @Test
     public void encodeSignatureUsingBase64()
@@ -0,0 +1,149 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.transport.ExponentialBackoffWithJitter;
+import com.microsoft.azure.sdk.iot.device.transport.RetryPolicy;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for ExponentialBackoffWithJitter. */
+public class ExponentialBackoffWithJitterTest
+{
+    private static final int SAMPLE_COUNT = 1000;
+
+    // Tests_SRS_EXPONENTIALBACKOFFWITHJITTER_28_001: [The constructor shall create a policy with a base delay of 1 second, a maximum delay of 60 seconds and no maximum elapsed time.]
+    // Tests_SRS_EXPONENTIALBACKOFFWITHJITTER_28_007: [The function shall return the saved base delay.]
+    // Tests_SRS_EXPONENTIALBACKOFFWITHJITTER_28_008: [The function shall return the saved maximum delay.]
+    // Tests_SRS_EXPONENTIALBACKOFFWITHJITTER_28_009: [The function shall return the saved maximum elapsed time.]
+    @Test
+    public void constructorUsesDefaults()
+    {
+        // act
+        ExponentialBackoffWithJitter policy = new ExponentialBackoffWithJitter();
+
+        // assert
+        assertEquals(1000L, policy.getBaseDelayInMilliseconds());
+        assertEquals(60000L, policy.getMaxDelayInMilliseconds());
+        assertEquals(0L, policy.getMaxElapsedTimeInMilliseconds());
+    }
+
+    // Tests_SRS_EXPONENTIALBACKOFFWITHJITTER_28_003: [The constructor shall save the provided delays and maximum elapsed time.]
+    @Test
+    public void constructorSavesValues()
+    {
+        // act
+        ExponentialBackoffWithJitter policy = new ExponentialBackoffWithJitter(10, 200, 3000);
+
+        // assert
+        assertEquals(10L, policy.getBaseDelayInMilliseconds());
+        assertEquals(200L, policy.getMaxDelayInMilliseconds());
+        assertEquals(3000L, policy.getMaxElapsedTimeInMilliseconds());
+    }
+
+    // Tests_SRS_EXPONENTIALBACKOFFWITHJITTER_28_002: [If the baseDelayInMilliseconds is smaller than 1, the maxDelayInMilliseconds is smaller than the baseDelayInMilliseconds, or the maxElapsedTimeInMilliseconds is negative, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnZeroBaseDelay()
+    {
+        // act
+        new ExponentialBackoffWithJitter(0, 200, 0);
+    }
+
+    // Tests_SRS_EXPONENTIALBACKOFFWITHJITTER_28_002: [If the baseDelayInMilliseconds is smaller than 1, the maxDelayInMilliseconds is smaller than the baseDelayInMilliseconds, or the maxElapsedTimeInMilliseconds is negative, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnMaxDelaySmallerThanBaseDelay()
+    {
+        // act
+        new ExponentialBackoffWithJitter(100, 99, 0);
+    }
+
+    // Tests_SRS_EXPONENTIALBACKOFFWITHJITTER_28_002: [If the baseDelayInMilliseconds is smaller than 1, the maxDelayInMilliseconds is smaller than the baseDelayInMilliseconds, or the maxElapsedTimeInMilliseconds is negative, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNegativeMaxElapsedTime()
+    {
+        // act
+        new ExponentialBackoffWithJitter(100, 200, -1);
+    }
+
+    // Tests_SRS_EXPONENTIALBACKOFFWITHJITTER_28_005: [The function shall return a random delay between the base delay and three times the previous delay, or three times the base delay before the first attempt.]
+    @Test
+    public void getRetryDelayReturnsJitteredDelayForFirstAttempt()
+    {
+        // arrange
+        ExponentialBackoffWithJitter policy = new ExponentialBackoffWithJitter(100, 100000, 0);
+        long smallest = Long.MAX_VALUE;
+        long largest = Long.MIN_VALUE;
+
+        // act
+        for (int i = 0; i < SAMPLE_COUNT; i++)
+        {
+            long delay = policy.getRetryDelayInMilliseconds(1, 0, 0);
+            smallest = Math.min(smallest, delay);
+            largest = Math.max(largest, delay);
+        }
+
+        // assert
+        assertTrue(smallest >= 100);
+        assertTrue(largest <= 300);
+        assertTrue(largest > smallest);
+    }
+
+    // Tests_SRS_EXPONENTIALBACKOFFWITHJITTER_28_005: [The function shall return a random delay between the base delay and three times the previous delay, or three times the base delay before the first attempt.]
+    @Test
+    public void getRetryDelayGrowsFromPreviousDelay()
+    {
+        // arrange
+        ExponentialBackoffWithJitter policy = new ExponentialBackoffWithJitter(100, 100000, 0);
+
+        // act - assert
+        for (int i = 0; i < SAMPLE_COUNT; i++)
+        {
+            long delay = policy.getRetryDelayInMilliseconds(5, 1000, 5000);
+            assertTrue(delay >= 100 && delay <= 3000);
+        }
+    }
+
+    // Tests_SRS_EXPONENTIALBACKOFFWITHJITTER_28_006: [The function shall not return a delay longer than the maximum delay, or than the time left before the maximum elapsed time.]
+    @Test
+    public void getRetryDelayIsCappedByMaxDelay()
+    {
+        // arrange
+        ExponentialBackoffWithJitter policy = new ExponentialBackoffWithJitter(100, 500, 0);
+
+        // act - assert
+        for (int i = 0; i < SAMPLE_COUNT; i++)
+        {
+            long delay = policy.getRetryDelayInMilliseconds(20, 500, 60000);
+            assertTrue(delay >= 100 && delay <= 500);
+        }
+    }
+
+    // Tests_SRS_EXPONENTIALBACKOFFWITHJITTER_28_006: [The function shall not return a delay longer than the maximum delay, or than the time left before the maximum elapsed time.]
+    @Test
+    public void getRetryDelayIsCappedByRemainingTime()
+    {
+        // arrange
+        ExponentialBackoffWithJitter policy = new ExponentialBackoffWithJitter(1000, 60000, 10000);
+
+        // act - assert
+        for (int i = 0; i < SAMPLE_COUNT; i++)
+        {
+            assertTrue(policy.getRetryDelayInMilliseconds(3, 5000, 9950) <= 50);
+        }
+    }
+
+    // Tests_SRS_EXPONENTIALBACKOFFWITHJITTER_28_004: [If there is a maximum elapsed time and the elapsedTimeInMilliseconds reached it, the function shall return NO_MORE_RETRIES.]
+    @Test
+    public void getRetryDelayStopsAfterMaxElapsedTime()
+    {
+        // arrange
+        ExponentialBackoffWithJitter policy = new ExponentialBackoffWithJitter(1000, 60000, 10000);
+
+        // act - assert
+        assertEquals(RetryPolicy.NO_MORE_RETRIES, policy.getRetryDelayInMilliseconds(4, 5000, 10000));
+        assertTrue(new ExponentialBackoffWithJitter().getRetryDelayInMilliseconds(100, 60000, Long.MAX_VALUE / 2) > 0);
+    }
+}
@@ -0,0 +1,42 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackDispatcherMetrics;
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/** Unit tests for IotHubCallbackDispatcherMetrics. */
+public class IotHubCallbackDispatcherMetricsTest
+{
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_001: [The constructor shall save the provided values.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_002: [The function shall return the saved pending count.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_003: [The function shall return the saved peak pending count.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_004: [The function shall return the saved completed count.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_005: [The function shall return the saved failed count.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_006: [The function shall return the saved average queued time.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_007: [The function shall return the saved maximum queued time.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_008: [The function shall return the saved average execution time.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHERMETRICS_28_009: [The function shall return the saved maximum execution time.]
+    @Test
+    public void gettersReturnSavedValues()
+    {
+        // act
+        IotHubCallbackDispatcherMetrics metrics = Deencapsulation.newInstance(IotHubCallbackDispatcherMetrics.class,
+                new Class[] {int.class, int.class, long.class, long.class, long.class, long.class, long.class, long.class},
+                3, 9, 120L, 2L, 15L, 90L, 4L, 60L);
+
+        // assert
+        assertEquals(3, metrics.getPendingCount());
+        assertEquals(9, metrics.getPeakPendingCount());
+        assertEquals(120L, metrics.getCompletedCount());
+        assertEquals(2L, metrics.getFailedCount());
+        assertEquals(15L, metrics.getAverageQueuedTimeInMilliseconds());
+        assertEquals(90L, metrics.getMaxQueuedTimeInMilliseconds());
+        assertEquals(4L, metrics.getAverageExecutionTimeInMilliseconds());
+        assertEquals(60L, metrics.getMaxExecutionTimeInMilliseconds());
+    }
+}
@@ -0,0 +1,465 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackDispatcher;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackDispatcherMetrics;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for IotHubCallbackDispatcher.
+ * 100% methods covered
+ * 100% lines covered
+ */
+public class IotHubCallbackDispatcherTest
+{
+    @Mocked
+    DeviceClientConfig mockConfig;
+
+    /** Keeps the submitted tasks, so a test decides when they run. */
+    private static final class ManualExecutor implements Executor
+    {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task)
+        {
+            this.tasks.add(task);
+        }
+
+        private void runAll()
+        {
+            while (!this.tasks.isEmpty())
+            {
+                this.tasks.remove(0).run();
+            }
+        }
+    }
+
+    private static final class RecordingCallback implements Runnable
+    {
+        private final List<Integer> invocations;
+        private final int id;
+
+        private RecordingCallback(List<Integer> invocations, int id)
+        {
+            this.invocations = invocations;
+            this.id = id;
+        }
+
+        @Override
+        public void run()
+        {
+            this.invocations.add(this.id);
+        }
+    }
+
+    private void setCallbackExecutor(final Executor executor)
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getCallbackExecutor();
+                result = executor;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_001: [If the config is null, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsIfConfigNull()
+    {
+        // act
+        new IotHubCallbackDispatcher(null);
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_002: [The constructor shall create a dispatcher with no pending callback.]
+    @Test
+    public void constructorCreatesEmptyDispatcher()
+    {
+        // act
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(mockConfig);
+
+        // assert
+        assertTrue(dispatcher.isEmpty());
+        assertEquals(0, dispatcher.getMetrics().getPendingCount());
+        assertEquals(0L, dispatcher.getMetrics().getCompletedCount());
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_003: [If the callback is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void dispatchThrowsIfCallbackNull()
+    {
+        // arrange
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(mockConfig);
+
+        // act
+        dispatcher.dispatch(null);
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_004: [If the config has no callback executor, the function shall invoke the callback on the calling thread, and let the exceptions it throws go to the caller.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_009: [Once a callback returns or throws, the dispatcher shall count it as completed, or failed if it threw, and record the time it was queued and the time it ran.]
+    @Test
+    public void dispatchWithoutExecutorInvokesOnCallingThread()
+    {
+        // arrange
+        setCallbackExecutor(null);
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(mockConfig);
+        final Thread callingThread = Thread.currentThread();
+        final List<Thread> invokingThreads = new ArrayList<>();
+
+        // act
+        dispatcher.dispatch(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                invokingThreads.add(Thread.currentThread());
+            }
+        });
+
+        // assert
+        assertEquals(Collections.singletonList(callingThread), invokingThreads);
+        assertTrue(dispatcher.isEmpty());
+        IotHubCallbackDispatcherMetrics metrics = dispatcher.getMetrics();
+        assertEquals(1L, metrics.getCompletedCount());
+        assertEquals(0L, metrics.getFailedCount());
+        assertEquals(1, metrics.getPeakPendingCount());
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_004: [If the config has no callback executor, the function shall invoke the callback on the calling thread, and let the exceptions it throws go to the caller.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_009: [Once a callback returns or throws, the dispatcher shall count it as completed, or failed if it threw, and record the time it was queued and the time it ran.]
+    @Test
+    public void dispatchWithoutExecutorThrowsIfCallbackThrows()
+    {
+        // arrange
+        setCallbackExecutor(null);
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(mockConfig);
+
+        // act
+        try
+        {
+            dispatcher.dispatch(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    throw new IllegalStateException();
+                }
+            });
+            fail("The exception of the callback did not reach the caller");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+
+        // assert
+        assertTrue(dispatcher.isEmpty());
+        assertEquals(1L, dispatcher.getMetrics().getCompletedCount());
+        assertEquals(1L, dispatcher.getMetrics().getFailedCount());
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_005: [If the config has a callback executor, or callbacks are still queued, the function shall queue the callback behind the callbacks dispatched before it.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_006: [The function shall submit a task to the callback executor that invokes the queued callbacks one at a time, in order, until the queue is empty.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_010: [The function shall return true if no callback is queued or being invoked, and false otherwise.]
+    @Test
+    public void dispatchWithExecutorQueuesCallbacksInOrder()
+    {
+        // arrange
+        ManualExecutor executor = new ManualExecutor();
+        setCallbackExecutor(executor);
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(mockConfig);
+        List<Integer> invocations = new ArrayList<>();
+
+        // act
+        for (int i = 0; i < 3; i++)
+        {
+            dispatcher.dispatch(new RecordingCallback(invocations, i));
+        }
+
+        // assert
+        assertTrue(invocations.isEmpty());
+        assertFalse(dispatcher.isEmpty());
+        assertEquals(1, executor.tasks.size());
+        assertEquals(3, dispatcher.getMetrics().getPendingCount());
+
+        // act
+        executor.runAll();
+
+        // assert
+        assertEquals(0, executor.tasks.size());
+        assertEquals(Arrays.asList(0, 1, 2), invocations);
+        assertTrue(dispatcher.isEmpty());
+
+        // act - the next callback needs a new task
+        dispatcher.dispatch(new RecordingCallback(invocations, 3));
+
+        // assert
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals(Arrays.asList(0, 1, 2, 3), invocations);
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_005: [If the config has a callback executor, or callbacks are still queued, the function shall queue the callback behind the callbacks dispatched before it.]
+    @Test
+    public void dispatchWithoutExecutorQueuesBehindQueuedCallbacks()
+    {
+        // arrange
+        ManualExecutor executor = new ManualExecutor();
+        setCallbackExecutor(executor);
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(mockConfig);
+        List<Integer> invocations = new ArrayList<>();
+        dispatcher.dispatch(new RecordingCallback(invocations, 0));
+        setCallbackExecutor(null);
+
+        // act
+        dispatcher.dispatch(new RecordingCallback(invocations, 1));
+
+        // assert
+        assertTrue(invocations.isEmpty());
+        executor.runAll();
+        assertEquals(Arrays.asList(0, 1), invocations);
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_007: [If the callback executor rejects the task, the function shall invoke the queued callbacks on the calling thread.]
+    @Test
+    public void dispatchInvokesOnCallingThreadIfExecutorRejects()
+    {
+        // arrange
+        setCallbackExecutor(new Executor()
+        {
+            @Override
+            public void execute(Runnable task)
+            {
+                throw new RejectedExecutionException();
+            }
+        });
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(mockConfig);
+        List<Integer> invocations = new ArrayList<>();
+
+        // act
+        dispatcher.dispatch(new RecordingCallback(invocations, 0));
+        dispatcher.dispatch(new RecordingCallback(invocations, 1));
+
+        // assert
+        assertEquals(Arrays.asList(0, 1), invocations);
+        assertTrue(dispatcher.isEmpty());
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_008: [If a callback invoked by the callback executor throws, the dispatcher shall log the exception and invoke the next callback.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_009: [Once a callback returns or throws, the dispatcher shall count it as completed, or failed if it threw, and record the time it was queued and the time it ran.]
+    @Test
+    public void drainInvokesNextCallbackIfCallbackThrows()
+    {
+        // arrange
+        ManualExecutor executor = new ManualExecutor();
+        setCallbackExecutor(executor);
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(mockConfig);
+        List<Integer> invocations = new ArrayList<>();
+        dispatcher.dispatch(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                throw new IllegalStateException();
+            }
+        });
+        dispatcher.dispatch(new RecordingCallback(invocations, 1));
+
+        // act
+        executor.runAll();
+
+        // assert
+        assertEquals(Collections.singletonList(1), invocations);
+        assertTrue(dispatcher.isEmpty());
+        IotHubCallbackDispatcherMetrics metrics = dispatcher.getMetrics();
+        assertEquals(2L, metrics.getCompletedCount());
+        assertEquals(1L, metrics.getFailedCount());
+        assertEquals(2, metrics.getPeakPendingCount());
+    }
+
+    private void dispatchErrorAndRunExecutor(IotHubCallbackDispatcher dispatcher, ManualExecutor executor, List<Integer> invocations)
+    {
+        dispatcher.dispatch(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                throw new Error("test");
+            }
+        });
+        dispatcher.dispatch(new RecordingCallback(invocations, 1));
+        try
+        {
+            executor.runAll();
+            fail("the Error should reach the executor");
+        }
+        catch (Error e)
+        {
+            assertEquals("test", e.getMessage());
+        }
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_012: [If a callback throws an Error, the dispatcher shall stop invoking callbacks and let the Error go, and the callbacks still queued shall be invoked on the next dispatch.]
+    @Test
+    public void drainResumesOnNextDispatchIfCallbackThrowsError()
+    {
+        // arrange
+        ManualExecutor executor = new ManualExecutor();
+        setCallbackExecutor(executor);
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(mockConfig);
+        List<Integer> invocations = new ArrayList<>();
+        dispatchErrorAndRunExecutor(dispatcher, executor, invocations);
+
+        // act
+        dispatcher.dispatch(new RecordingCallback(invocations, 2));
+
+        // assert
+        assertTrue(invocations.isEmpty());
+        assertFalse(dispatcher.isEmpty());
+        executor.runAll();
+        assertEquals(Arrays.asList(1, 2), invocations);
+        assertTrue(dispatcher.isEmpty());
+        assertEquals(1L, dispatcher.getMetrics().getFailedCount());
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_013: [If the config has no callback executor and callbacks are still queued, the function shall invoke the queued callbacks on the calling thread.]
+    @Test
+    public void dispatchWithoutExecutorInvokesQueuedCallbacksFirst()
+    {
+        // arrange
+        ManualExecutor executor = new ManualExecutor();
+        setCallbackExecutor(executor);
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(mockConfig);
+        List<Integer> invocations = new ArrayList<>();
+        dispatchErrorAndRunExecutor(dispatcher, executor, invocations);
+        setCallbackExecutor(null);
+
+        // act
+        dispatcher.dispatch(new RecordingCallback(invocations, 2));
+
+        // assert
+        assertEquals(Arrays.asList(1, 2), invocations);
+        assertTrue(dispatcher.isEmpty());
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_011: [The function shall return the pending count, peak pending count, completed count, failed count, and average and maximum queued and execution time of the callbacks.]
+    @Test
+    public void getMetricsReturnsQueuedAndExecutionTime() throws InterruptedException
+    {
+        // arrange
+        ManualExecutor executor = new ManualExecutor();
+        setCallbackExecutor(executor);
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(mockConfig);
+        dispatcher.dispatch(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Thread.sleep(50);
+
+        // act
+        executor.runAll();
+        IotHubCallbackDispatcherMetrics metrics = dispatcher.getMetrics();
+
+        // assert
+        assertEquals(0, metrics.getPendingCount());
+        assertEquals(1, metrics.getPeakPendingCount());
+        assertEquals(1L, metrics.getCompletedCount());
+        assertEquals(0L, metrics.getFailedCount());
+        assertTrue(metrics.getAverageQueuedTimeInMilliseconds() >= 40);
+        assertEquals(metrics.getAverageQueuedTimeInMilliseconds(), metrics.getMaxQueuedTimeInMilliseconds());
+        assertTrue(metrics.getAverageExecutionTimeInMilliseconds() >= 40);
+        assertEquals(metrics.getAverageExecutionTimeInMilliseconds(), metrics.getMaxExecutionTimeInMilliseconds());
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_28_006: [The function shall submit a task to the callback executor that invokes the queued callbacks one at a time, in order, until the queue is empty.]
+    @Test
+    public void slowCallbackDoesNotBlockDispatchAndKeepsOrderOnThreadPool() throws InterruptedException
+    {
+        // arrange
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        setCallbackExecutor(executor);
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(mockConfig);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> invocations = Collections.synchronizedList(new ArrayList<Integer>());
+        final int callbackCount = 100;
+
+        try
+        {
+            // act
+            dispatcher.dispatch(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            for (int i = 0; i < callbackCount; i++)
+            {
+                dispatcher.dispatch(new RecordingCallback(invocations, i));
+            }
+
+            // assert - the slow callback holds only the callbacks behind it
+            assertTrue(invocations.isEmpty());
+            assertEquals(callbackCount + 1, dispatcher.getMetrics().getPendingCount());
+
+            // act
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!dispatcher.isEmpty() && (System.currentTimeMillis() < deadline))
+            {
+                Thread.sleep(10);
+            }
+
+            // assert
+            assertTrue(dispatcher.isEmpty());
+            assertEquals(callbackCount, invocations.size());
+            for (int i = 0; i < callbackCount; i++)
+            {
+                assertEquals(Integer.valueOf(i), invocations.get(i));
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubDaemonExecutors;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for IotHubDaemonExecutors.
+ * 100% methods, 100% lines covered
+ */
+public class IotHubDaemonExecutorsTest
+{
+    // Tests_SRS_IOTHUBDAEMONEXECUTORS_28_001: [If the threadName is null or empty, or the threadCount is smaller than 1, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void newScheduledExecutorThrowsOnNullThreadName()
+    {
+        // act
+        IotHubDaemonExecutors.newScheduledExecutor(null, 1);
+    }
+
+    // Tests_SRS_IOTHUBDAEMONEXECUTORS_28_001: [If the threadName is null or empty, or the threadCount is smaller than 1, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void newScheduledExecutorThrowsOnEmptyThreadName()
+    {
+        // act
+        IotHubDaemonExecutors.newScheduledExecutor("", 1);
+    }
+
+    // Tests_SRS_IOTHUBDAEMONEXECUTORS_28_001: [If the threadName is null or empty, or the threadCount is smaller than 1, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void newScheduledExecutorThrowsOnZeroThreadCount()
+    {
+        // act
+        IotHubDaemonExecutors.newScheduledExecutor("Test", 0);
+    }
+
+    // Tests_SRS_IOTHUBDAEMONEXECUTORS_28_002: [The function shall return a scheduled executor with threadCount daemon threads named "azure-iot-sdk-" followed by the threadName.]
+    @Test
+    public void newScheduledExecutorRunsTasksOnNamedDaemonThreads() throws InterruptedException
+    {
+        // arrange
+        ScheduledExecutorService executor = IotHubDaemonExecutors.newScheduledExecutor("Test", 2);
+        final CountDownLatch run = new CountDownLatch(1);
+        final Thread[] thread = new Thread[1];
+
+        // act
+        executor.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                thread[0] = Thread.currentThread();
+                run.countDown();
+            }
+        }, 0, TimeUnit.MILLISECONDS);
+
+        // assert
+        assertTrue(run.await(10, TimeUnit.SECONDS));
+        assertEquals("azure-iot-sdk-Test", thread[0].getName());
+        assertTrue(thread[0].isDaemon());
+        assertEquals(2, ((ScheduledThreadPoolExecutor) executor).getCorePoolSize());
+        executor.shutdownNow();
+    }
+
+    // Tests_SRS_IOTHUBDAEMONEXECUTORS_28_003: [The executor shall remove the canceled tasks from its queue.]
+    @Test
+    public void newScheduledExecutorRemovesCanceledTasks()
+    {
+        // arrange
+        ScheduledExecutorService executor = IotHubDaemonExecutors.newScheduledExecutor("Test", 1);
+        ScheduledFuture<?> future = executor.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        }, 1, TimeUnit.HOURS);
+
+        // act
+        future.cancel(false);
+
+        // assert
+        assertTrue(((ScheduledThreadPoolExecutor) executor).getQueue().isEmpty());
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,243 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubEventDrivenSendTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendTask;
+import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttTransport;
+import mockit.Deencapsulation;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for IotHubEventDrivenSendTask. */
+public class IotHubEventDrivenSendTaskTest
+{
+    private static final long PENDING_PERIOD_MILLIS = 10L;
+    private static final long JOIN_TIMEOUT_MILLIS = 5000L;
+
+    @Mocked
+    MqttTransport mockTransport;
+
+    private Thread startTask(IotHubEventDrivenSendTask sendTask)
+    {
+        Thread thread = new Thread(sendTask);
+        thread.start();
+        return thread;
+    }
+
+    private void stopTask(IotHubEventDrivenSendTask sendTask, Thread thread) throws InterruptedException
+    {
+        sendTask.stop();
+        thread.join(JOIN_TIMEOUT_MILLIS);
+        assertFalse(thread.isAlive());
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_28_001: [The constructor shall save the transport and the pending period, and create an IotHubSendTask for the transport.]
+    @Test
+    public void constructorSavesTransportAndPeriod()
+    {
+        // act
+        IotHubEventDrivenSendTask sendTask = new IotHubEventDrivenSendTask(mockTransport, PENDING_PERIOD_MILLIS);
+
+        // assert
+        assertEquals(mockTransport, Deencapsulation.getField(sendTask, "transport"));
+        assertTrue(Deencapsulation.getField(sendTask, "sendTask") instanceof IotHubSendTask);
+        assertEquals(PENDING_PERIOD_MILLIS, sendTask.getPendingPeriodInMilliseconds());
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_28_002: [If the provided transport is null, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNullTransport()
+    {
+        // act
+        new IotHubEventDrivenSendTask(null, PENDING_PERIOD_MILLIS);
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_28_003: [If the provided pendingPeriodInMilliseconds is zero or negative, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnZeroPeriod()
+    {
+        // act
+        new IotHubEventDrivenSendTask(mockTransport, 0L);
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_28_004: [The signal shall mark the task as signaled and wake it up if it is parked.]
+    @Test
+    public void signalMarksTaskAsSignaled()
+    {
+        // arrange
+        IotHubEventDrivenSendTask sendTask = new IotHubEventDrivenSendTask(mockTransport, PENDING_PERIOD_MILLIS);
+
+        // act
+        sendTask.signal();
+
+        // assert
+        assertTrue((boolean)Deencapsulation.getField(sendTask, "signaled"));
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_28_005: [The stop shall mark the task as stopped and wake it up if it is parked.]
+    @Test
+    public void stopMarksTaskAsStopped()
+    {
+        // arrange
+        IotHubEventDrivenSendTask sendTask = new IotHubEventDrivenSendTask(mockTransport, PENDING_PERIOD_MILLIS);
+
+        // act
+        sendTask.stop();
+
+        // assert
+        assertTrue((boolean)Deencapsulation.getField(sendTask, "stopped"));
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_28_006: [The setPendingPeriodInMilliseconds shall store the new period and wake up the task to apply it.]
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_28_008: [The getPendingPeriodInMilliseconds shall return the stored period.]
+    @Test
+    public void setPendingPeriodStoresPeriod()
+    {
+        // arrange
+        IotHubEventDrivenSendTask sendTask = new IotHubEventDrivenSendTask(mockTransport, PENDING_PERIOD_MILLIS);
+
+        // act
+        sendTask.setPendingPeriodInMilliseconds(1234L);
+
+        // assert
+        assertEquals(1234L, sendTask.getPendingPeriodInMilliseconds());
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_28_007: [If the provided period is zero or negative, the setPendingPeriodInMilliseconds shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setPendingPeriodThrowsOnNegativePeriod()
+    {
+        // arrange
+        IotHubEventDrivenSendTask sendTask = new IotHubEventDrivenSendTask(mockTransport, PENDING_PERIOD_MILLIS);
+
+        // act
+        sendTask.setPendingPeriodInMilliseconds(-1L);
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_28_009: [The run shall send all messages and invoke all callbacks on the transport using the IotHubSendTask.]
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_28_010: [If the transport is empty, the run shall park until the task is signaled or stopped.]
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_28_012: [The run shall return when the task is stopped.]
+    @Test
+    public void runParksWhileTransportIsEmpty() throws IOException, InterruptedException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = true;
+            }
+        };
+        IotHubEventDrivenSendTask sendTask = new IotHubEventDrivenSendTask(mockTransport, PENDING_PERIOD_MILLIS);
+
+        // act
+        Thread thread = startTask(sendTask);
+        Thread.sleep(20 * PENDING_PERIOD_MILLIS);
+        stopTask(sendTask, thread);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockTransport.sendMessages();
+                times = 1;
+                mockTransport.invokeCallbacks();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_28_004: [The signal shall mark the task as signaled and wake it up if it is parked.]
+    @Test
+    public void runSendsWhenSignaled() throws IOException, InterruptedException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = true;
+            }
+        };
+        IotHubEventDrivenSendTask sendTask = new IotHubEventDrivenSendTask(mockTransport, PENDING_PERIOD_MILLIS);
+        Thread thread = startTask(sendTask);
+        Thread.sleep(5 * PENDING_PERIOD_MILLIS);
+
+        // act
+        sendTask.signal();
+        Thread.sleep(5 * PENDING_PERIOD_MILLIS);
+        stopTask(sendTask, thread);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockTransport.sendMessages();
+                times = 2;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_28_011: [If the transport is not empty, the run shall park for at most pendingPeriodInMilliseconds.]
+    @Test
+    public void runPollsWhileTransportHasPendingWork() throws IOException, InterruptedException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = false;
+            }
+        };
+        IotHubEventDrivenSendTask sendTask = new IotHubEventDrivenSendTask(mockTransport, PENDING_PERIOD_MILLIS);
+
+        // act
+        Thread thread = startTask(sendTask);
+        Thread.sleep(20 * PENDING_PERIOD_MILLIS);
+        stopTask(sendTask, thread);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockTransport.sendMessages();
+                minTimes = 3;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_28_013: [If the thread is interrupted, the run shall stop.]
+    @Test
+    public void runStopsWhenInterrupted() throws InterruptedException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = true;
+            }
+        };
+        IotHubEventDrivenSendTask sendTask = new IotHubEventDrivenSendTask(mockTransport, PENDING_PERIOD_MILLIS);
+        Thread thread = startTask(sendTask);
+        Thread.sleep(5 * PENDING_PERIOD_MILLIS);
+
+        // act
+        thread.interrupt();
+        thread.join(JOIN_TIMEOUT_MILLIS);
+
+        // assert
+        assertFalse(thread.isAlive());
+    }
+}
@@ -0,0 +1,570 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.*;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundMessageStore;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for IotHubOutboundMessageStore.
+ * 100% methods, 92% lines covered
+ */
+public class IotHubOutboundMessageStoreTest
+{
+    private static final int SEGMENT_SIZE_IN_BYTES = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mocked
+    IotHubEventCallback mockCallback;
+    @Mocked
+    IotHubConnectionString mockConnectionString;
+    @Mocked
+    DeviceClientConfig mockConfig;
+
+    private IotHubOutboundMessageStore store;
+
+    @After
+    public void tearDown()
+    {
+        if (this.store != null)
+        {
+            this.store.close();
+        }
+    }
+
+    private IotHubOutboundMessageStore reopen() throws IOException
+    {
+        if (this.store != null)
+        {
+            this.store.close();
+        }
+        this.store = new IotHubOutboundMessageStore(folder.getRoot(), SEGMENT_SIZE_IN_BYTES, mockConnectionString);
+        return this.store;
+    }
+
+    private static Message newMessage(String body)
+    {
+        return new Message(body.getBytes(Message.DEFAULT_IOTHUB_MESSAGE_CHARSET));
+    }
+
+    private static String bodyOf(IotHubOutboundPacket packet)
+    {
+        return new String(packet.getMessage().getBytes(), Message.DEFAULT_IOTHUB_MESSAGE_CHARSET);
+    }
+
+    private int segmentCount()
+    {
+        int count = 0;
+        for (File file : folder.getRoot().listFiles())
+        {
+            if (file.getName().endsWith(".log"))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_001: [If the config is null or has no outbound message store directory, the function shall return null.]
+    @Test
+    public void openReturnsNullWithoutDirectory()
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getOutboundMessageStoreDirectory();
+                result = null;
+            }
+        };
+
+        // act - assert
+        assertNull(IotHubOutboundMessageStore.open(mockConfig));
+        assertNull(IotHubOutboundMessageStore.open(null));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_002: [The function shall open the store in the directory of the config, with the default segment size, and return it.]
+    @Test
+    public void openOpensTheStoreOfTheConfig()
+    {
+        // arrange
+        final String directory = new File(folder.getRoot(), "device").getPath();
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getOutboundMessageStoreDirectory();
+                result = directory;
+            }
+        };
+
+        // act
+        this.store = IotHubOutboundMessageStore.open(mockConfig);
+
+        // assert
+        assertNotNull(this.store);
+        assertTrue(new File(directory).isDirectory());
+        for (File file : new File(directory).listFiles())
+        {
+            if (file.getName().endsWith(".log"))
+            {
+                assertEquals(IotHubOutboundMessageStore.DEFAULT_SEGMENT_SIZE_IN_BYTES, file.length());
+            }
+        }
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_003: [If the store cannot be opened, the function shall log the error and return null, so the messages are only kept in memory.]
+    @Test
+    public void openReturnsNullIfTheDirectoryIsUsed() throws IOException
+    {
+        // arrange
+        reopen();
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getOutboundMessageStoreDirectory();
+                result = folder.getRoot().getPath();
+            }
+        };
+
+        // act - assert
+        assertNull(IotHubOutboundMessageStore.open(mockConfig));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_004: [If the directory is null or the segment size is not larger than a record header, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNullDirectory() throws IOException
+    {
+        // act
+        new IotHubOutboundMessageStore(null, SEGMENT_SIZE_IN_BYTES, mockConnectionString);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_004: [If the directory is null or the segment size is not larger than a record header, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnTooSmallSegment() throws IOException
+    {
+        // act
+        new IotHubOutboundMessageStore(folder.getRoot(), 8, mockConnectionString);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_005: [If the directory does not exist and cannot be created, the constructor shall throw IOException.]
+    @Test (expected = IOException.class)
+    public void constructorThrowsIfTheDirectoryCannotBeCreated() throws IOException
+    {
+        // arrange
+        File file = folder.newFile("notADirectory");
+
+        // act
+        new IotHubOutboundMessageStore(new File(file, "store"), SEGMENT_SIZE_IN_BYTES, mockConnectionString);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_006: [If another store uses the directory, the constructor shall throw IOException.]
+    @Test
+    public void constructorThrowsIfTheDirectoryIsUsed() throws IOException
+    {
+        // arrange
+        reopen();
+
+        // act
+        try
+        {
+            new IotHubOutboundMessageStore(folder.getRoot(), SEGMENT_SIZE_IN_BYTES, mockConnectionString);
+            fail("expected IOException");
+        }
+        catch (IOException expected)
+        {
+            // assert
+        }
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_007: [The constructor shall read the segments of the directory in order, and keep the messages that are not acknowledged as replayable, up to the first corrupted or incomplete record of each segment.]
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_019: [The function shall return up to maxCount packets with the oldest replayable messages, in order, and a callback that settles them in the log.]
+    @Test
+    public void constructorRecoversTheMessagesOfThePreviousStore() throws IOException
+    {
+        // arrange
+        Message message = newMessage("first");
+        message.setMessageId("id1");
+        message.setCorrelationId("correlation1");
+        message.setMessageType(MessageType.DEVICE_TELEMETRY);
+        message.setProperty("color", "blue");
+        message.setAbsoluteExpiryTime(Long.MAX_VALUE);
+        reopen().createPacket(message, mockCallback, null);
+        this.store.createPacket(newMessage("second"), mockCallback, null);
+
+        // act
+        List<IotHubOutboundPacket> packets = reopen().replay(10);
+
+        // assert
+        assertEquals(2, packets.size());
+        assertEquals(2, this.store.size());
+        Message replayed = packets.get(0).getMessage();
+        assertEquals("first", bodyOf(packets.get(0)));
+        assertEquals("id1", replayed.getMessageId());
+        assertEquals("correlation1", replayed.getCorrelationId());
+        assertEquals(MessageType.DEVICE_TELEMETRY, replayed.getMessageType());
+        assertEquals("blue", replayed.getProperty("color"));
+        assertEquals(Long.MAX_VALUE, replayed.getExpiryTime());
+        assertEquals(mockConnectionString, replayed.getIotHubConnectionString());
+        assertEquals("second", bodyOf(packets.get(1)));
+        assertNull(packets.get(1).getContext());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_007: [The constructor shall read the segments of the directory in order, and keep the messages that are not acknowledged as replayable, up to the first corrupted or incomplete record of each segment.]
+    @Test
+    public void constructorStopsAtATornRecord() throws IOException
+    {
+        // arrange
+        reopen().createPacket(newMessage("kept"), mockCallback, null);
+        this.store.createPacket(newMessage("torn"), mockCallback, null);
+        this.store.close();
+        File segment = null;
+        for (File file : folder.getRoot().listFiles())
+        {
+            if (file.getName().endsWith(".log"))
+            {
+                segment = file;
+            }
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw"))
+        {
+            // The body of the second record ends with its last byte.
+            long length = file.length();
+            byte[] content = new byte[(int) length];
+            file.readFully(content);
+            int end = content.length - 1;
+            while (content[end] == 0)
+            {
+                end--;
+            }
+            file.seek(end);
+            file.write(content[end] + 1);
+        }
+
+        // act
+        List<IotHubOutboundPacket> packets = reopen().replay(10);
+
+        // assert
+        assertEquals(1, packets.size());
+        assertEquals("kept", bodyOf(packets.get(0)));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_008: [If the message is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void createPacketThrowsOnNullMessage() throws IOException
+    {
+        // act
+        reopen().createPacket(null, mockCallback, null);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_009: [If the message is a twin or method message, or has no body, the function shall return a packet with the callback of the user, without writing the message.]
+    @Test
+    public void createPacketDoesNotWriteTwinMessages() throws IOException
+    {
+        // arrange
+        Message message = newMessage("twin");
+        message.setMessageType(MessageType.DEVICE_TWIN);
+        final Object context = new Object();
+
+        // act
+        IotHubOutboundPacket packet = reopen().createPacket(message, mockCallback, context);
+
+        // assert
+        assertEquals(mockCallback, packet.getCallback());
+        assertEquals(context, packet.getContext());
+        assertEquals(0, this.store.size());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_010: [The function shall append the message to the log and wait until it is flushed to disk, sharing the flush with the concurrent writers.]
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_015: [The function shall return a packet with the message, a callback that settles the message in the log, and the context.]
+    @Test
+    public void createPacketWritesTheMessage() throws IOException
+    {
+        // arrange
+        Message message = newMessage("telemetry");
+        final Object context = new Object();
+
+        // act
+        IotHubOutboundPacket packet = reopen().createPacket(message, mockCallback, context);
+
+        // assert
+        assertEquals(message, packet.getMessage());
+        assertEquals(context, packet.getContext());
+        assertNotEquals(mockCallback, packet.getCallback());
+        assertEquals(1, this.store.size());
+        assertTrue(this.store.replay(10).isEmpty());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_011: [If the message cannot be written, the function shall log the error and return a packet with the callback of the user.]
+    @Test
+    public void createPacketReturnsTheUserCallbackIfTheStoreIsClosed() throws IOException
+    {
+        // arrange
+        reopen().close();
+
+        // act
+        IotHubOutboundPacket packet = this.store.createPacket(newMessage("telemetry"), mockCallback, null);
+
+        // assert
+        assertEquals(mockCallback, packet.getCallback());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_023: [If the status is MESSAGE_CANCELLED_ONCLOSE, the callback of the packet shall keep the message in the log without making it replayable, so it is only replayed when the store is opened again.]
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_014: [The callback of the packet shall invoke the callback of the user, if any, with the status and the context.]
+    @Test
+    public void cancelledMessageIsReplayedWhenReopened() throws IOException
+    {
+        // arrange
+        final Object context = new Object();
+        IotHubOutboundPacket packet = reopen().createPacket(newMessage("cancelled"), mockCallback, context);
+
+        // act
+        packet.getCallback().execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, context);
+
+        // assert
+        assertEquals(1, this.store.size());
+        assertTrue(this.store.replay(10).isEmpty());
+        List<IotHubOutboundPacket> packets = reopen().replay(10);
+        assertEquals(1, packets.size());
+        assertEquals("cancelled", bodyOf(packets.get(0)));
+        new Verifications()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, context);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_013: [If the status is OK, OK_EMPTY or MESSAGE_EXPIRED, the callback of the packet shall acknowledge the message in the log.]
+    @Test
+    public void acknowledgedMessageIsNotReplayed() throws IOException
+    {
+        // arrange
+        IotHubOutboundPacket packet = reopen().createPacket(newMessage("sent"), mockCallback, null);
+
+        // act
+        packet.getCallback().execute(IotHubStatusCode.OK_EMPTY, null);
+
+        // assert
+        assertEquals(0, this.store.size());
+        assertTrue(reopen().replay(10).isEmpty());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_012: [If the status is THROTTLED, SERVER_BUSY, INTERNAL_SERVER_ERROR or ERROR, the callback of the packet shall make the message replayable.]
+    @Test
+    public void rejectedMessageIsReplayed() throws IOException
+    {
+        // arrange
+        IotHubOutboundPacket packet = reopen().createPacket(newMessage("throttled"), mockCallback, null);
+
+        // act
+        packet.getCallback().execute(IotHubStatusCode.THROTTLED, null);
+
+        // assert
+        assertEquals(1, this.store.size());
+        List<IotHubOutboundPacket> packets = this.store.replay(10);
+        assertEquals(1, packets.size());
+        assertEquals("throttled", bodyOf(packets.get(0)));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_024: [Otherwise, the callback of the packet shall log the status and acknowledge the message in the log, so it is never replayed.]
+    @Test
+    public void permanentlyRejectedMessagesAreNotReplayed() throws IOException
+    {
+        // arrange
+        reopen();
+        IotHubOutboundPacket badFormatPacket = this.store.createPacket(newMessage("bad format"), mockCallback, null);
+        IotHubOutboundPacket queueFullPacket = this.store.createPacket(newMessage("queue full"), mockCallback, null);
+
+        // act
+        badFormatPacket.getCallback().execute(IotHubStatusCode.BAD_FORMAT, null);
+        queueFullPacket.getCallback().execute(IotHubStatusCode.OUTBOUND_QUEUE_FULL, null);
+
+        // assert
+        assertEquals(0, this.store.size());
+        assertTrue(this.store.replay(10).isEmpty());
+        assertTrue(reopen().replay(10).isEmpty());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_013: [If the status is OK, OK_EMPTY or MESSAGE_EXPIRED, the callback of the packet shall acknowledge the message in the log.]
+    @Test
+    public void expiredMessageIsNotReplayed() throws IOException
+    {
+        // arrange
+        IotHubOutboundPacket packet = reopen().createPacket(newMessage("expired"), mockCallback, null);
+
+        // act
+        packet.getCallback().execute(IotHubStatusCode.MESSAGE_EXPIRED, null);
+
+        // assert
+        assertEquals(0, this.store.size());
+        assertTrue(reopen().replay(10).isEmpty());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_013: [If the status is OK, OK_EMPTY or MESSAGE_EXPIRED, the callback of the packet shall acknowledge the message in the log.]
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_025: [If the file of a removed segment cannot be deleted, the store shall keep it and the files of the segments after it, and try to delete them again after the next acknowledgement and when it is closed.]
+    @Test
+    public void acknowledgedSegmentsAreDeleted() throws IOException
+    {
+        // arrange
+        reopen();
+        IotHubOutboundPacket[] packets = new IotHubOutboundPacket[20];
+        for (int i = 0; i < packets.length; i++)
+        {
+            packets[i] = this.store.createPacket(newMessage("message with a body of some length " + i), mockCallback, null);
+        }
+        assertTrue(segmentCount() > 1);
+
+        // act
+        for (IotHubOutboundPacket packet : packets)
+        {
+            packet.getCallback().execute(IotHubStatusCode.OK_EMPTY, null);
+        }
+
+        // assert
+        assertEquals(0, this.store.size());
+        assertEquals(1, segmentCount());
+        assertTrue(reopen().replay(100).isEmpty());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_010: [The function shall append the message to the log and wait until it is flushed to disk, sharing the flush with the concurrent writers.]
+    @Test
+    public void createPacketWritesMessagesLargerThanASegment() throws IOException
+    {
+        // arrange
+        byte[] body = new byte[4 * SEGMENT_SIZE_IN_BYTES];
+        body[body.length - 1] = 7;
+
+        // act
+        reopen().createPacket(new Message(body), mockCallback, null);
+
+        // assert
+        List<IotHubOutboundPacket> packets = reopen().replay(1);
+        assertEquals(1, packets.size());
+        assertArrayEquals(body, packets.get(0).getMessage().getBytes());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_016: [If maxCount is smaller than 1, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void replayThrowsOnZeroMaxCount() throws IOException
+    {
+        // act
+        reopen().replay(0);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_017: [If the store is closed, the function shall return an empty list.]
+    @Test
+    public void replayReturnsEmptyListIfClosed() throws IOException
+    {
+        // arrange
+        reopen().createPacket(newMessage("first"), mockCallback, null);
+        reopen().close();
+
+        // act - assert
+        assertTrue(this.store.replay(10).isEmpty());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_018: [The function shall acknowledge the expired and unreadable messages instead of returning them.]
+    @Test
+    public void replayDropsExpiredMessages() throws IOException
+    {
+        // arrange
+        Message expired = newMessage("expired");
+        expired.setAbsoluteExpiryTime(1);
+        reopen().createPacket(expired, mockCallback, null);
+        this.store.createPacket(newMessage("valid"), mockCallback, null);
+
+        // act
+        List<IotHubOutboundPacket> packets = reopen().replay(10);
+
+        // assert
+        assertEquals(1, packets.size());
+        assertEquals("valid", bodyOf(packets.get(0)));
+        assertEquals(1, this.store.size());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_019: [The function shall return up to maxCount packets with the oldest replayable messages, in order, and a callback that settles them in the log.]
+    @Test
+    public void replayReturnsUpToMaxCountMessagesInOrder() throws IOException
+    {
+        // arrange
+        reopen();
+        for (int i = 0; i < 5; i++)
+        {
+            this.store.createPacket(newMessage("message" + i), mockCallback, null);
+        }
+        reopen();
+
+        // act
+        List<IotHubOutboundPacket> first = this.store.replay(3);
+        List<IotHubOutboundPacket> second = this.store.replay(3);
+
+        // assert
+        assertEquals(3, first.size());
+        assertEquals(2, second.size());
+        assertEquals("message0", bodyOf(first.get(0)));
+        assertEquals("message2", bodyOf(first.get(2)));
+        assertEquals("message4", bodyOf(second.get(1)));
+        assertTrue(this.store.replay(3).isEmpty());
+
+        second.get(1).getCallback().execute(IotHubStatusCode.OK_EMPTY, null);
+        assertEquals(4, this.store.size());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_020: [The function shall return the number of messages written and not acknowledged.]
+    @Test
+    public void sizeReturnsThePendingMessages() throws IOException
+    {
+        // arrange
+        reopen().createPacket(newMessage("first"), mockCallback, null);
+        this.store.createPacket(newMessage("second"), mockCallback, null);
+
+        // act - assert
+        assertEquals(2, this.store.size());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_021: [If the store is already closed, the function shall do nothing.]
+    @Test
+    public void closeTwiceDoesNothing() throws IOException
+    {
+        // arrange
+        reopen().close();
+
+        // act
+        this.store.close();
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDMESSAGESTORE_28_022: [The function shall flush the segments, release the directory, and ignore the settlements received after it.]
+    @Test
+    public void closeReleasesTheDirectory() throws IOException
+    {
+        // arrange
+        IotHubOutboundPacket packet = reopen().createPacket(newMessage("pending"), mockCallback, null);
+
+        // act
+        this.store.close();
+        packet.getCallback().execute(IotHubStatusCode.OK_EMPTY, null);
+
+        // assert
+        assertEquals(0, this.store.size());
+        assertEquals(1, reopen().replay(10).size());
+    }
+}
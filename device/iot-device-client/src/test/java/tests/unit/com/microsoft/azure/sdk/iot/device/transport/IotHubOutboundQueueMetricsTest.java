@@ -0,0 +1,40 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueueMetrics;
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/** Unit tests for IotHubOutboundQueueMetrics. */
+public class IotHubOutboundQueueMetricsTest
+{
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_001: [The constructor shall save the provided values.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_002: [The function shall return the saved size.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_003: [The function shall return the saved size in bytes.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_004: [The function shall return the saved peak size.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_005: [The function shall return the saved dropped count.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_006: [The function shall return the saved dequeued count.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_007: [The function shall return the saved average queued time.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUEMETRICS_28_008: [The function shall return the saved maximum queued time.]
+    @Test
+    public void gettersReturnSavedValues()
+    {
+        // act
+        IotHubOutboundQueueMetrics metrics = Deencapsulation.newInstance(IotHubOutboundQueueMetrics.class,
+                new Class[] {int.class, long.class, int.class, long.class, long.class, long.class, long.class},
+                3, 300L, 7, 2L, 40L, 15L, 90L);
+
+        // assert
+        assertEquals(3, metrics.getSize());
+        assertEquals(300L, metrics.getSizeInBytes());
+        assertEquals(7, metrics.getPeakSize());
+        assertEquals(2L, metrics.getDroppedCount());
+        assertEquals(40L, metrics.getDequeuedCount());
+        assertEquals(15L, metrics.getAverageQueuedTimeInMilliseconds());
+        assertEquals(90L, metrics.getMaxQueuedTimeInMilliseconds());
+    }
+}
@@ -0,0 +1,585 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.*;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueue;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueueMetrics;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubTransport;
+import mockit.Delegate;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for IotHubOutboundQueue.
+ * 100% methods, 97% lines covered
+ */
+public class IotHubOutboundQueueTest
+{
+    @Mocked
+    DeviceClientConfig mockConfig;
+    @Mocked
+    IotHubEventCallback mockCallback;
+    @Mocked
+    IotHubResponseCallback mockResponseCallback;
+
+    private final Queue<IotHubCallbackPacket> callbackList = new LinkedBlockingDeque<>();
+
+    private void setLimits(final int capacity, final long capacityInBytes, final IotHubOutboundQueuePolicy policy)
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getOutboundQueueCapacity();
+                result = capacity;
+                mockConfig.getOutboundQueueCapacityInBytes();
+                result = capacityInBytes;
+                mockConfig.getOutboundQueuePolicy();
+                result = policy;
+            }
+        };
+    }
+
+    private IotHubOutboundPacket newPacket(int bodySize, Object context)
+    {
+        return new IotHubOutboundPacket(new Message(new byte[bodySize]), mockCallback, context);
+    }
+
+    private IotHubOutboundPacket newExpiredPacket(int bodySize, Object context)
+    {
+        Message message = new Message(new byte[bodySize]);
+        message.setAbsoluteExpiryTime(1);
+        return new IotHubOutboundPacket(message, mockCallback, context);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_001: [If the config or the callbackList is null, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNullConfig()
+    {
+        // act
+        new IotHubOutboundQueue(null, callbackList);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_001: [If the config or the callbackList is null, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNullCallbackList()
+    {
+        // act
+        new IotHubOutboundQueue(mockConfig, null);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_002: [The constructor shall create an empty queue.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_015: [If the queue is empty, the function shall return null.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_017: [The function shall return the first packet of the queue, or null if the queue is empty.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_019: [The function shall return true if the queue has no packet, and false otherwise.]
+    @Test
+    public void constructorCreatesEmptyQueue()
+    {
+        // act
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+
+        // assert
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        assertNull(queue.peek());
+        assertNull(queue.poll());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_003: [If the packet is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void addThrowsOnNullPacket()
+    {
+        // arrange
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+
+        // act
+        queue.add(null);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_010: [The function shall add the packet at the end of the queue.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_016: [The function shall remove the first packet of the queue, record the time it spent in the queue, wake up the callers waiting for room, and return it.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_018: [The function shall return the number of packets in the queue.]
+    @Test
+    public void addWithoutLimitsKeepsOrder()
+    {
+        // arrange
+        setLimits(0, 0, IotHubOutboundQueuePolicy.FAIL_FAST);
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        IotHubOutboundPacket packet1 = newPacket(10, null);
+        IotHubOutboundPacket packet2 = newPacket(10, null);
+        IotHubOutboundPacket packet3 = newPacket(10, null);
+
+        // act
+        queue.add(packet1);
+        queue.add(packet2);
+        queue.add(packet3);
+
+        // assert
+        assertEquals(3, queue.size());
+        assertFalse(queue.isEmpty());
+        assertEquals(packet1, queue.peek());
+        assertEquals(packet1, queue.poll());
+        assertEquals(packet2, queue.poll());
+        assertEquals(packet3, queue.poll());
+        assertTrue(callbackList.isEmpty());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_004: [If the body of the message is larger than the capacity in bytes, the function shall drop the message with status OUTBOUND_QUEUE_FULL.]
+    @Test
+    public void addDropsMessageLargerThanCapacityInBytes()
+    {
+        // arrange
+        setLimits(0, 100, IotHubOutboundQueuePolicy.BLOCK);
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        final Object context = new Object();
+
+        // act
+        queue.add(newPacket(101, context));
+
+        // assert
+        assertTrue(queue.isEmpty());
+        assertEquals(1, callbackList.size());
+        IotHubCallbackPacket callbackPacket = callbackList.remove();
+        assertEquals(IotHubStatusCode.OUTBOUND_QUEUE_FULL, callbackPacket.getStatus());
+        assertEquals(context, callbackPacket.getContext());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_009: [If the queue is full and the policy is FAIL_FAST, or is DROP_EXPIRED and no message expired, the function shall drop the new message with status OUTBOUND_QUEUE_FULL.]
+    @Test
+    public void addFailFastDropsNewMessageWhenCapacityReached()
+    {
+        // arrange
+        setLimits(2, 0, IotHubOutboundQueuePolicy.FAIL_FAST);
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        IotHubOutboundPacket packet1 = newPacket(10, null);
+        IotHubOutboundPacket packet2 = newPacket(10, null);
+        final Object context = new Object();
+
+        // act
+        queue.add(packet1);
+        queue.add(packet2);
+        queue.add(newPacket(10, context));
+
+        // assert
+        assertEquals(2, queue.size());
+        assertEquals(packet1, queue.poll());
+        assertEquals(packet2, queue.poll());
+        IotHubCallbackPacket callbackPacket = callbackList.remove();
+        assertEquals(IotHubStatusCode.OUTBOUND_QUEUE_FULL, callbackPacket.getStatus());
+        assertEquals(context, callbackPacket.getContext());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_009: [If the queue is full and the policy is FAIL_FAST, or is DROP_EXPIRED and no message expired, the function shall drop the new message with status OUTBOUND_QUEUE_FULL.]
+    @Test
+    public void addFailFastDropsNewMessageWhenCapacityInBytesReached()
+    {
+        // arrange
+        setLimits(0, 100, IotHubOutboundQueuePolicy.FAIL_FAST);
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+
+        // act
+        queue.add(newPacket(60, null));
+        queue.add(newPacket(40, null));
+        queue.add(newPacket(1, null));
+
+        // assert
+        assertEquals(2, queue.size());
+        assertEquals(100, queue.getMetrics().getSizeInBytes());
+        assertEquals(1, callbackList.size());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_009: [If the queue is full and the policy is FAIL_FAST, or is DROP_EXPIRED and no message expired, the function shall drop the new message with status OUTBOUND_QUEUE_FULL.]
+    @Test
+    public void addDropsResponseCallbackMessageWithResponse()
+    {
+        // arrange
+        setLimits(1, 0, IotHubOutboundQueuePolicy.FAIL_FAST);
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        queue.add(newPacket(10, null));
+
+        // act
+        queue.add(new IotHubOutboundPacket(new Message(new byte[10]), mockResponseCallback, null));
+
+        // assert
+        IotHubCallbackPacket callbackPacket = callbackList.remove();
+        assertEquals(mockResponseCallback, callbackPacket.getResponseCallback());
+        assertEquals(IotHubStatusCode.OUTBOUND_QUEUE_FULL, callbackPacket.getResponseMessage().getStatus());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_007: [If the queue is full and the policy is DROP_OLDEST, the function shall drop the oldest messages with status OUTBOUND_QUEUE_FULL until the message fits.]
+    @Test
+    public void addDropOldestDropsOldestMessagesUntilNewMessageFits()
+    {
+        // arrange
+        setLimits(3, 100, IotHubOutboundQueuePolicy.DROP_OLDEST);
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        final Object context1 = new Object();
+        final Object context2 = new Object();
+        IotHubOutboundPacket packet3 = newPacket(30, null);
+        IotHubOutboundPacket packet4 = newPacket(60, null);
+        queue.add(newPacket(30, context1));
+        queue.add(newPacket(30, context2));
+        queue.add(packet3);
+
+        // act
+        queue.add(packet4);
+
+        // assert
+        assertEquals(2, queue.size());
+        assertEquals(packet3, queue.poll());
+        assertEquals(packet4, queue.poll());
+        assertEquals(2, callbackList.size());
+        IotHubCallbackPacket callbackPacket = callbackList.remove();
+        assertEquals(IotHubStatusCode.OUTBOUND_QUEUE_FULL, callbackPacket.getStatus());
+        assertEquals(context1, callbackPacket.getContext());
+        assertEquals(context2, callbackList.remove().getContext());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_008: [If the queue is full and the policy is DROP_EXPIRED, the function shall drop the expired messages with status MESSAGE_EXPIRED.]
+    @Test
+    public void addDropExpiredDropsExpiredMessages()
+    {
+        // arrange
+        setLimits(2, 0, IotHubOutboundQueuePolicy.DROP_EXPIRED);
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        final Object context = new Object();
+        IotHubOutboundPacket packet1 = newPacket(10, null);
+        IotHubOutboundPacket packet3 = newPacket(10, null);
+        queue.add(packet1);
+        queue.add(newExpiredPacket(10, context));
+
+        // act
+        queue.add(packet3);
+
+        // assert
+        assertEquals(2, queue.size());
+        assertEquals(packet1, queue.poll());
+        assertEquals(packet3, queue.poll());
+        IotHubCallbackPacket callbackPacket = callbackList.remove();
+        assertEquals(IotHubStatusCode.MESSAGE_EXPIRED, callbackPacket.getStatus());
+        assertEquals(context, callbackPacket.getContext());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_009: [If the queue is full and the policy is FAIL_FAST, or is DROP_EXPIRED and no message expired, the function shall drop the new message with status OUTBOUND_QUEUE_FULL.]
+    @Test
+    public void addDropExpiredDropsNewMessageIfNoMessageExpired()
+    {
+        // arrange
+        setLimits(1, 0, IotHubOutboundQueuePolicy.DROP_EXPIRED);
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        IotHubOutboundPacket packet1 = newPacket(10, null);
+        queue.add(packet1);
+
+        // act
+        queue.add(newPacket(10, null));
+
+        // assert
+        assertEquals(1, queue.size());
+        assertEquals(packet1, queue.peek());
+        assertEquals(IotHubStatusCode.OUTBOUND_QUEUE_FULL, callbackList.remove().getStatus());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_005: [If the queue is full and the policy is BLOCK, the function shall wait until the queue has room for the message.]
+    @Test
+    public void addBlockWaitsForRoom() throws InterruptedException
+    {
+        // arrange
+        setLimits(1, 0, IotHubOutboundQueuePolicy.BLOCK);
+        final IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        IotHubOutboundPacket packet1 = newPacket(10, null);
+        final IotHubOutboundPacket packet2 = newPacket(10, null);
+        queue.add(packet1);
+        final CountDownLatch added = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                queue.add(packet2);
+                added.countDown();
+            }
+        });
+
+        // act
+        producer.start();
+
+        // assert
+        assertFalse(added.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(packet1, queue.poll());
+        assertTrue(added.await(10, TimeUnit.SECONDS));
+        assertEquals(packet2, queue.poll());
+        assertTrue(callbackList.isEmpty());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_024: [If the queue is full and the policy is BLOCK, but the caller is the thread that sends the messages and invokes the callbacks of the transports, the function shall drop the message with status OUTBOUND_QUEUE_FULL instead of waiting.]
+    // Tests_SRS_IOTHUBSENDTASK_28_001: [The function shall mark its thread as the send thread while it runs, so the callbacks it invokes never wait for room in a full outbound queue.]
+    @Test
+    public void addBlockFromCallbackOfSendTaskDropsMessage(@Mocked final IotHubTransport mockTransport) throws InterruptedException
+    {
+        // arrange
+        setLimits(1, 0, IotHubOutboundQueuePolicy.BLOCK);
+        final IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        final Object context = new Object();
+        IotHubOutboundPacket packet1 = newPacket(10, null);
+        queue.add(packet1);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.invokeCallbacks();
+                result = new Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    void invokeCallbacks()
+                    {
+                        // a message callback that sends again into the full queue
+                        queue.add(newPacket(10, context));
+                    }
+                };
+            }
+        };
+        Thread sendThread = new Thread(new IotHubSendTask(mockTransport));
+
+        // act
+        sendThread.start();
+        sendThread.join(10000);
+
+        // assert
+        assertFalse(sendThread.isAlive());
+        assertEquals(1, queue.size());
+        assertEquals(packet1, queue.peek());
+        IotHubCallbackPacket callbackPacket = callbackList.remove();
+        assertEquals(IotHubStatusCode.OUTBOUND_QUEUE_FULL, callbackPacket.getStatus());
+        assertEquals(context, callbackPacket.getContext());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_006: [If the caller is interrupted while it waits, the function shall drop the message with status OUTBOUND_QUEUE_FULL and preserve the interrupt status.]
+    @Test
+    public void addBlockDropsMessageWhenInterrupted()
+    {
+        // arrange
+        setLimits(1, 0, IotHubOutboundQueuePolicy.BLOCK);
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        queue.add(newPacket(10, null));
+        Thread.currentThread().interrupt();
+
+        // act
+        queue.add(newPacket(10, null));
+
+        // assert
+        assertTrue(Thread.interrupted());
+        assertEquals(1, queue.size());
+        assertEquals(IotHubStatusCode.OUTBOUND_QUEUE_FULL, callbackList.remove().getStatus());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_022: [The function shall mark the queue as closed and wake up the callers waiting for room.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_023: [If the queue is closed, or is closed while the caller waits for room, the function shall not add the packet, and shall invoke its callback with status MESSAGE_CANCELLED_ONCLOSE.]
+    @Test
+    public void addBlockCancelsMessageWhenQueueIsClosed() throws InterruptedException
+    {
+        // arrange
+        setLimits(1, 0, IotHubOutboundQueuePolicy.BLOCK);
+        final IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        final Object context = new Object();
+        final IotHubOutboundPacket packet1 = newPacket(10, null);
+        final IotHubOutboundPacket packet2 = newPacket(10, context);
+        queue.add(packet1);
+        final CountDownLatch added = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                queue.add(packet2);
+                added.countDown();
+            }
+        });
+        producer.start();
+        assertFalse(added.await(200, TimeUnit.MILLISECONDS));
+
+        // act
+        queue.close();
+        queue.poll();
+
+        // assert
+        assertTrue(added.await(10, TimeUnit.SECONDS));
+        assertTrue(queue.isEmpty());
+        assertTrue(callbackList.isEmpty());
+        assertEquals(1, queue.getMetrics().getDroppedCount());
+        new Verifications()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, context);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_023: [If the queue is closed, or is closed while the caller waits for room, the function shall not add the packet, and shall invoke its callback with status MESSAGE_CANCELLED_ONCLOSE.]
+    @Test
+    public void addCancelsResponseMessageWhenQueueIsClosed()
+    {
+        // arrange
+        setLimits(0, 0, IotHubOutboundQueuePolicy.BLOCK);
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        final Object context = new Object();
+        queue.close();
+
+        // act
+        queue.add(new IotHubOutboundPacket(new Message(new byte[10]), mockResponseCallback, context));
+
+        // assert
+        assertTrue(queue.isEmpty());
+        new Verifications()
+        {
+            {
+                mockResponseCallback.execute((ResponseMessage) any, context);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_021: [The function shall let the queue accept new packets again.]
+    @Test
+    public void openAcceptsMessagesAgainAfterClose()
+    {
+        // arrange
+        setLimits(0, 0, IotHubOutboundQueuePolicy.BLOCK);
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        IotHubOutboundPacket packet = newPacket(10, null);
+        queue.close();
+
+        // act
+        queue.open();
+        queue.add(packet);
+
+        // assert
+        assertEquals(packet, queue.poll());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_011: [If the packet is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void requeueThrowsOnNullPacket()
+    {
+        // arrange
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+
+        // act
+        queue.requeue(null);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_012: [The function shall add the packet at the end of the queue, even if the queue is full.]
+    @Test
+    public void requeueIgnoresCapacity()
+    {
+        // arrange
+        setLimits(1, 0, IotHubOutboundQueuePolicy.FAIL_FAST);
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        IotHubOutboundPacket packet1 = newPacket(10, null);
+        IotHubOutboundPacket packet2 = newPacket(10, null);
+        queue.add(packet1);
+
+        // act
+        queue.requeue(packet2);
+
+        // assert
+        assertEquals(2, queue.size());
+        assertEquals(packet1, queue.poll());
+        assertEquals(packet2, queue.poll());
+        assertTrue(callbackList.isEmpty());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_013: [If the list of packets is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void requeueFirstThrowsOnNullList()
+    {
+        // arrange
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+
+        // act
+        queue.requeueFirst(null);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_014: [The function shall add the packets in front of the queue, keeping their order, even if the queue is full.]
+    @Test
+    public void requeueFirstAddsPacketsInFrontInOrder()
+    {
+        // arrange
+        setLimits(1, 0, IotHubOutboundQueuePolicy.FAIL_FAST);
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        IotHubOutboundPacket packet1 = newPacket(10, null);
+        IotHubOutboundPacket packet2 = newPacket(10, null);
+        IotHubOutboundPacket packet3 = newPacket(10, null);
+        queue.add(packet3);
+
+        // act
+        queue.requeueFirst(Arrays.asList(packet1, packet2));
+
+        // assert
+        assertEquals(3, queue.size());
+        assertEquals(packet1, queue.poll());
+        assertEquals(packet2, queue.poll());
+        assertEquals(packet3, queue.poll());
+        assertEquals(3, queue.getMetrics().getPeakSize());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_016: [The function shall remove the first packet of the queue, record the time it spent in the queue, wake up the callers waiting for room, and return it.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_020: [The function shall return the size, size in bytes, peak size, dropped count, dequeued count, and average and maximum queued time of the queue.]
+    @Test
+    public void getMetricsReturnsDepthAndQueuedTime() throws InterruptedException
+    {
+        // arrange
+        setLimits(2, 0, IotHubOutboundQueuePolicy.FAIL_FAST);
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+        queue.add(newPacket(10, null));
+        queue.add(newPacket(20, null));
+        queue.add(newPacket(30, null));
+        Thread.sleep(20);
+        queue.poll();
+
+        // act
+        IotHubOutboundQueueMetrics metrics = queue.getMetrics();
+
+        // assert
+        assertEquals(1, metrics.getSize());
+        assertEquals(20, metrics.getSizeInBytes());
+        assertEquals(2, metrics.getPeakSize());
+        assertEquals(1, metrics.getDroppedCount());
+        assertEquals(1, metrics.getDequeuedCount());
+        assertTrue(metrics.getAverageQueuedTimeInMilliseconds() >= 20);
+        assertTrue(metrics.getMaxQueuedTimeInMilliseconds() >= metrics.getAverageQueuedTimeInMilliseconds());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_28_020: [The function shall return the size, size in bytes, peak size, dropped count, dequeued count, and average and maximum queued time of the queue.]
+    @Test
+    public void getMetricsOfNewQueueReturnsZeros()
+    {
+        // arrange
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(mockConfig, callbackList);
+
+        // act
+        IotHubOutboundQueueMetrics metrics = queue.getMetrics();
+
+        // assert
+        assertEquals(0, metrics.getSize());
+        assertEquals(0, metrics.getSizeInBytes());
+        assertEquals(0, metrics.getPeakSize());
+        assertEquals(0, metrics.getDroppedCount());
+        assertEquals(0, metrics.getDequeuedCount());
+        assertEquals(0, metrics.getAverageQueuedTimeInMilliseconds());
+        assertEquals(0, metrics.getMaxQueuedTimeInMilliseconds());
+    }
+}
@@ -0,0 +1,262 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubReconnectScheduler;
+import com.microsoft.azure.sdk.iot.device.transport.ReconnectRateLimiter;
+import com.microsoft.azure.sdk.iot.device.transport.RetryPolicy;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/** Unit tests for IotHubReconnectScheduler. */
+public class IotHubReconnectSchedulerTest
+{
+    @Mocked
+    DeviceClientConfig mockConfig;
+
+    @Mocked
+    RetryPolicy mockRetryPolicy;
+
+    @Mocked
+    ReconnectRateLimiter mockRateLimiter;
+
+    private void retryPolicyExpectations(final long delayInMilliseconds, final ReconnectRateLimiter rateLimiter)
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getRetryPolicy();
+                result = mockRetryPolicy;
+                mockConfig.getReconnectRateLimiter();
+                result = rateLimiter;
+                mockRetryPolicy.getRetryDelayInMilliseconds(anyInt, anyLong, anyLong);
+                result = delayInMilliseconds;
+            }
+        };
+    }
+
+    private static Runnable countDown(final CountDownLatch latch)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                latch.countDown();
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBRECONNECTSCHEDULER_28_001: [If the config is null, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNullConfig()
+    {
+        // act
+        new IotHubReconnectScheduler(null);
+    }
+
+    // Tests_SRS_IOTHUBRECONNECTSCHEDULER_28_002: [The constructor shall save the config and start with no retry.]
+    // Tests_SRS_IOTHUBRECONNECTSCHEDULER_28_012: [The function shall return true if the scheduler was cancelled and not reset since, and false otherwise.]
+    // Tests_SRS_IOTHUBRECONNECTSCHEDULER_28_013: [The function shall return the number of attempts scheduled since the last reset.]
+    @Test
+    public void constructorStartsWithNoRetry()
+    {
+        // act
+        IotHubReconnectScheduler scheduler = new IotHubReconnectScheduler(mockConfig);
+
+        // assert
+        assertEquals(0, scheduler.getCurrentRetryCount());
+        assertFalse(scheduler.isCancelled());
+    }
+
+    // Tests_SRS_IOTHUBRECONNECTSCHEDULER_28_003: [If the reconnectTask is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void scheduleThrowsOnNullTask()
+    {
+        // act
+        new IotHubReconnectScheduler(mockConfig).schedule(null);
+    }
+
+    // Tests_SRS_IOTHUBRECONNECTSCHEDULER_28_006: [The function shall get the delay of the attempt from the retry policy of the config, with the number of the attempt, the previous delay and the time since the connection was lost.]
+    // Tests_SRS_IOTHUBRECONNECTSCHEDULER_28_009: [The function shall run the reconnectTask once after the delay, on the reconnect threads of the process, and return true.]
+    @Test
+    public void scheduleRunsTaskAfterRetryPolicyDelay() throws InterruptedException
+    {
+        // arrange
+        retryPolicyExpectations(10, null);
+        final AtomicInteger runCount = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<String> threadNames = new ArrayList<>();
+        IotHubReconnectScheduler scheduler = new IotHubReconnectScheduler(mockConfig);
+
+        // act
+        boolean scheduled = scheduler.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runCount.incrementAndGet();
+                threadNames.add(Thread.currentThread().getName());
+                latch.countDown();
+            }
+        });
+
+        // assert
+        assertTrue(scheduled);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, runCount.get());
+        assertEquals("azure-iot-sdk-Reconnect", threadNames.get(0));
+        assertEquals(1, scheduler.getCurrentRetryCount());
+        new Verifications()
+        {
+            {
+                mockRetryPolicy.getRetryDelayInMilliseconds(1, 0, anyLong);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBRECONNECTSCHEDULER_28_005: [When the first attempt is scheduled, the function shall save the current time as the time the connection was lost.]
+    // Tests_SRS_IOTHUBRECONNECTSCHEDULER_28_006: [The function shall get the delay of the attempt from the retry policy of the config, with the number of the attempt, the previous delay and the time since the connection was lost.]
+    @Test
+    public void scheduleGivesRetryStateToRetryPolicy() throws InterruptedException
+    {
+        // arrange
+        retryPolicyExpectations(10, null);
+        CountDownLatch latch = new CountDownLatch(2);
+        IotHubReconnectScheduler scheduler = new IotHubReconnectScheduler(mockConfig);
+        final List<Integer> retryCounts = new ArrayList<>();
+        final List<Long> previousDelays = new ArrayList<>();
+        final List<Long> elapsedTimes = new ArrayList<>();
+
+        // act
+        scheduler.schedule(countDown(latch));
+        Thread.sleep(20);
+        scheduler.schedule(countDown(latch));
+
+        // assert
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(2, scheduler.getCurrentRetryCount());
+        new Verifications()
+        {
+            {
+                mockRetryPolicy.getRetryDelayInMilliseconds(withCapture(retryCounts), withCapture(previousDelays), withCapture(elapsedTimes));
+                times = 2;
+            }
+        };
+        assertEquals(1, (int) retryCounts.get(0));
+        assertEquals(2, (int) retryCounts.get(1));
+        assertEquals(0L, (long) previousDelays.get(0));
+        assertEquals(10L, (long) previousDelays.get(1));
+        assertEquals(0L, (long) elapsedTimes.get(0));
+        assertTrue(elapsedTimes.get(1) >= 20);
+    }
+
+    // Tests_SRS_IOTHUBRECONNECTSCHEDULER_28_007: [If the retry policy returns a negative delay, the function shall return false.]
+    @Test
+    public void scheduleReturnsFalseWhenRetryPolicyStops()
+    {
+        // arrange
+        retryPolicyExpectations(RetryPolicy.NO_MORE_RETRIES, null);
+        IotHubReconnectScheduler scheduler = new IotHubReconnectScheduler(mockConfig);
+
+        // act
+        boolean scheduled = scheduler.schedule(countDown(new CountDownLatch(1)));
+
+        // assert
+        assertFalse(scheduled);
+        assertEquals(0, scheduler.getCurrentRetryCount());
+    }
+
+    // Tests_SRS_IOTHUBRECONNECTSCHEDULER_28_008: [If the config has a reconnect rate limiter, the function shall delay the attempt to the slot reserved by the limiter.]
+    @Test
+    public void scheduleReservesSlotWithRateLimiter() throws InterruptedException
+    {
+        // arrange
+        retryPolicyExpectations(10, mockRateLimiter);
+        new NonStrictExpectations()
+        {
+            {
+                mockRateLimiter.reserve(10);
+                result = 20L;
+            }
+        };
+        CountDownLatch latch = new CountDownLatch(1);
+        IotHubReconnectScheduler scheduler = new IotHubReconnectScheduler(mockConfig);
+
+        // act
+        boolean scheduled = scheduler.schedule(countDown(latch));
+
+        // assert
+        assertTrue(scheduled);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        new Verifications()
+        {
+            {
+                mockRateLimiter.reserve(10);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBRECONNECTSCHEDULER_28_004: [If the scheduler is cancelled, the function shall return false.]
+    // Tests_SRS_IOTHUBRECONNECTSCHEDULER_28_011: [The function shall cancel the pending attempt, if any, without interrupting it, and make the scheduler refuse the attempts until it is reset.]
+    @Test
+    public void cancelStopsPendingAndFutureAttempts() throws InterruptedException
+    {
+        // arrange
+        retryPolicyExpectations(200, null);
+        CountDownLatch latch = new CountDownLatch(1);
+        IotHubReconnectScheduler scheduler = new IotHubReconnectScheduler(mockConfig);
+        scheduler.schedule(countDown(latch));
+
+        // act
+        scheduler.cancel();
+
+        // assert
+        assertTrue(scheduler.isCancelled());
+        assertFalse(scheduler.schedule(countDown(latch)));
+        assertFalse(latch.await(400, TimeUnit.MILLISECONDS));
+    }
+
+    // Tests_SRS_IOTHUBRECONNECTSCHEDULER_28_010: [The function shall set the number of attempts and the previous delay to 0, and clear the cancellation.]
+    @Test
+    public void resetStartsRetriesOver() throws InterruptedException
+    {
+        // arrange
+        retryPolicyExpectations(10, null);
+        CountDownLatch latch = new CountDownLatch(1);
+        IotHubReconnectScheduler scheduler = new IotHubReconnectScheduler(mockConfig);
+        scheduler.schedule(countDown(new CountDownLatch(1)));
+        scheduler.cancel();
+
+        // act
+        scheduler.reset();
+
+        // assert
+        assertFalse(scheduler.isCancelled());
+        assertEquals(0, scheduler.getCurrentRetryCount());
+        assertTrue(scheduler.schedule(countDown(latch)));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        new Verifications()
+        {
+            {
+                mockRetryPolicy.getRetryDelayInMilliseconds(1, 0, anyLong);
+                times = 2;
+            }
+        };
+    }
+}
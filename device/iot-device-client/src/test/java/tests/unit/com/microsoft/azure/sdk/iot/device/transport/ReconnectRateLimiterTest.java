@@ -0,0 +1,95 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.transport.ReconnectRateLimiter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for ReconnectRateLimiter. */
+public class ReconnectRateLimiterTest
+{
+    // Tests_SRS_RECONNECTRATELIMITER_28_001: [If the reconnectsPerSecond is not positive or the burstSize is smaller than 1, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnZeroRate()
+    {
+        // act
+        new ReconnectRateLimiter(0, 1);
+    }
+
+    // Tests_SRS_RECONNECTRATELIMITER_28_001: [If the reconnectsPerSecond is not positive or the burstSize is smaller than 1, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNaNRate()
+    {
+        // act
+        new ReconnectRateLimiter(Double.NaN, 1);
+    }
+
+    // Tests_SRS_RECONNECTRATELIMITER_28_001: [If the reconnectsPerSecond is not positive or the burstSize is smaller than 1, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnZeroBurst()
+    {
+        // act
+        new ReconnectRateLimiter(10, 0);
+    }
+
+    // Tests_SRS_RECONNECTRATELIMITER_28_003: [If the delayInMilliseconds is negative, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void reserveThrowsOnNegativeDelay()
+    {
+        // act
+        new ReconnectRateLimiter(10, 1).reserve(-1);
+    }
+
+    // Tests_SRS_RECONNECTRATELIMITER_28_002: [The constructor shall allow burstSize reconnects at once, then one reconnect every 1/reconnectsPerSecond seconds.]
+    // Tests_SRS_RECONNECTRATELIMITER_28_004: [If the rate and the burst size allow it, the function shall return the provided delay.]
+    @Test
+    public void reserveAllowsBurstWithoutDelay()
+    {
+        // arrange
+        ReconnectRateLimiter limiter = new ReconnectRateLimiter(1, 3);
+
+        // act - assert
+        assertEquals(0L, limiter.reserve(0));
+        assertEquals(0L, limiter.reserve(0));
+        assertEquals(0L, limiter.reserve(0));
+    }
+
+    // Tests_SRS_RECONNECTRATELIMITER_28_005: [Otherwise, the function shall return the delay until the first free slot after the provided delay.]
+    @Test
+    public void reserveSpreadsReconnectsOverTheRate()
+    {
+        // arrange
+        ReconnectRateLimiter limiter = new ReconnectRateLimiter(1, 1);
+
+        // act
+        long first = limiter.reserve(0);
+        long second = limiter.reserve(0);
+        long third = limiter.reserve(0);
+
+        // assert
+        assertEquals(0L, first);
+        assertTrue(second > 900 && second <= 1000);
+        assertTrue(third > 1900 && third <= 2000);
+    }
+
+    // Tests_SRS_RECONNECTRATELIMITER_28_004: [If the rate and the burst size allow it, the function shall return the provided delay.]
+    // Tests_SRS_RECONNECTRATELIMITER_28_005: [Otherwise, the function shall return the delay until the first free slot after the provided delay.]
+    @Test
+    public void reserveNeverShortensTheProvidedDelay()
+    {
+        // arrange
+        ReconnectRateLimiter limiter = new ReconnectRateLimiter(1, 1);
+
+        // act
+        long first = limiter.reserve(5000);
+        long second = limiter.reserve(5000);
+
+        // assert
+        assertEquals(5000L, first);
+        assertTrue(second > 5900 && second <= 6000);
+    }
+}
@@ -0,0 +1,161 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsBufferPool;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for AmqpsBufferPool.
+ * 100% methods covered
+ * 100% lines covered
+ */
+public class AmqpsBufferPoolTest
+{
+    // Tests_SRS_AMQPSBUFFERPOOL_28_001: [The constructor shall set the size of the pooled buffers to DEFAULT_BUFFER_SIZE_IN_BYTES.]
+    // Tests_SRS_AMQPSBUFFERPOOL_28_004: [The function shall return the size of the pooled buffers.]
+    @Test
+    public void constructorSetsDefaultBufferSize()
+    {
+        //act
+        AmqpsBufferPool bufferPool = new AmqpsBufferPool();
+
+        //assert
+        assertEquals(AmqpsBufferPool.DEFAULT_BUFFER_SIZE_IN_BYTES, bufferPool.getBufferSize());
+        assertEquals(0, bufferPool.getOutstandingCount());
+    }
+
+    // Tests_SRS_AMQPSBUFFERPOOL_28_002: [The function shall set the size of the pooled buffers, bounded by MIN_BUFFER_SIZE_IN_BYTES and MAX_BUFFER_SIZE_IN_BYTES. A size that is not positive shall be bounded to MAX_BUFFER_SIZE_IN_BYTES.]
+    @Test
+    public void setBufferSizeBoundsTheSize()
+    {
+        //arrange
+        AmqpsBufferPool bufferPool = new AmqpsBufferPool();
+
+        //act - assert
+        bufferPool.setBufferSize(65536);
+        assertEquals(65536, bufferPool.getBufferSize());
+        bufferPool.setBufferSize(1);
+        assertEquals(AmqpsBufferPool.MIN_BUFFER_SIZE_IN_BYTES, bufferPool.getBufferSize());
+        bufferPool.setBufferSize(Integer.MAX_VALUE);
+        assertEquals(AmqpsBufferPool.MAX_BUFFER_SIZE_IN_BYTES, bufferPool.getBufferSize());
+        bufferPool.setBufferSize(-1);
+        assertEquals(AmqpsBufferPool.MAX_BUFFER_SIZE_IN_BYTES, bufferPool.getBufferSize());
+    }
+
+    // Tests_SRS_AMQPSBUFFERPOOL_28_003: [If the size changes, the function shall drop the pooled buffers.]
+    @Test
+    public void setBufferSizeDropsBuffersOfPreviousSize()
+    {
+        //arrange
+        AmqpsBufferPool bufferPool = new AmqpsBufferPool();
+        byte[] buffer = bufferPool.acquire(0);
+        bufferPool.release(buffer);
+
+        //act
+        bufferPool.setBufferSize(1024);
+        byte[] newBuffer = bufferPool.acquire(0);
+
+        //assert
+        assertNotSame(buffer, newBuffer);
+        assertEquals(1024, newBuffer.length);
+
+        //act - a buffer of the previous size is not kept
+        bufferPool.release(buffer);
+        bufferPool.release(newBuffer);
+
+        //assert
+        assertSame(newBuffer, bufferPool.acquire(0));
+    }
+
+    // Tests_SRS_AMQPSBUFFERPOOL_28_005: [The function shall count the buffer as acquired.]
+    // Tests_SRS_AMQPSBUFFERPOOL_28_007: [Otherwise, the function shall return a pooled buffer, or a new buffer of the size of the pooled buffers if there is none.]
+    // Tests_SRS_AMQPSBUFFERPOOL_28_009: [The function shall count the buffer as released.]
+    // Tests_SRS_AMQPSBUFFERPOOL_28_011: [The function shall return the number of buffers that were acquired and not released.]
+    @Test
+    public void acquireReusesReleasedBuffers()
+    {
+        //arrange
+        AmqpsBufferPool bufferPool = new AmqpsBufferPool();
+
+        //act
+        byte[] first = bufferPool.acquire(100);
+        byte[] second = bufferPool.acquire(0);
+
+        //assert
+        assertEquals(AmqpsBufferPool.DEFAULT_BUFFER_SIZE_IN_BYTES, first.length);
+        assertNotSame(first, second);
+        assertEquals(2, bufferPool.getOutstandingCount());
+
+        //act
+        bufferPool.release(first);
+
+        //assert
+        assertEquals(1, bufferPool.getOutstandingCount());
+        assertSame(first, bufferPool.acquire(0));
+        assertEquals(2, bufferPool.getOutstandingCount());
+    }
+
+    // Tests_SRS_AMQPSBUFFERPOOL_28_006: [If the minimum size is bigger than the size of the pooled buffers, the function shall return a new buffer of the minimum size.]
+    // Tests_SRS_AMQPSBUFFERPOOL_28_010: [The function shall keep the buffer for reuse only if it has the size of the pooled buffers and fewer than MAX_POOLED_BUFFERS buffers are kept.]
+    @Test
+    public void acquireAllocatesBiggerBufferWhichIsNotKept()
+    {
+        //arrange
+        AmqpsBufferPool bufferPool = new AmqpsBufferPool();
+        int size = AmqpsBufferPool.DEFAULT_BUFFER_SIZE_IN_BYTES * 2;
+
+        //act
+        byte[] buffer = bufferPool.acquire(size);
+        bufferPool.release(buffer);
+
+        //assert
+        assertEquals(size, buffer.length);
+        assertEquals(0, bufferPool.getOutstandingCount());
+        assertNotSame(buffer, bufferPool.acquire(0));
+    }
+
+    // Tests_SRS_AMQPSBUFFERPOOL_28_010: [The function shall keep the buffer for reuse only if it has the size of the pooled buffers and fewer than MAX_POOLED_BUFFERS buffers are kept.]
+    @Test
+    public void releaseKeepsAtMostMaxPooledBuffers()
+    {
+        //arrange
+        AmqpsBufferPool bufferPool = new AmqpsBufferPool();
+        List<byte[]> buffers = new ArrayList<>();
+        for (int i = 0; i < AmqpsBufferPool.MAX_POOLED_BUFFERS + 1; i++)
+        {
+            buffers.add(bufferPool.acquire(0));
+        }
+
+        //act
+        for (byte[] buffer : buffers)
+        {
+            bufferPool.release(buffer);
+        }
+
+        //assert
+        assertEquals(0, bufferPool.getOutstandingCount());
+        for (int i = 0; i < AmqpsBufferPool.MAX_POOLED_BUFFERS; i++)
+        {
+            assertTrue(buffers.contains(bufferPool.acquire(0)));
+        }
+        assertFalse(buffers.contains(bufferPool.acquire(0)));
+    }
+
+    // Tests_SRS_AMQPSBUFFERPOOL_28_008: [If the buffer is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void releaseThrowsIfBufferNull()
+    {
+        //arrange
+        AmqpsBufferPool bufferPool = new AmqpsBufferPool();
+
+        //act
+        bufferPool.release(null);
+    }
+}
@@ -0,0 +1,110 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsDeliveryTag;
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for AmqpsDeliveryTag.
+ * 100% methods, 100% lines covered
+ */
+public class AmqpsDeliveryTagTest
+{
+    // Tests_SRS_AMQPSDELIVERYTAG_28_001: [The function shall return the next number of the delivery tag sequence, starting again from 0 after Long.MAX_VALUE.]
+    @Test
+    public void nextReturnsIncreasingDeliveryTags()
+    {
+        // act
+        long first = AmqpsDeliveryTag.next();
+        long second = AmqpsDeliveryTag.next();
+
+        // assert
+        assertTrue(first >= 0);
+        assertTrue(second > first);
+    }
+
+    // Tests_SRS_AMQPSDELIVERYTAG_28_001: [The function shall return the next number of the delivery tag sequence, starting again from 0 after Long.MAX_VALUE.]
+    @Test
+    public void nextStartsAgainFromZeroAfterMaxValue()
+    {
+        // arrange
+        AtomicLong sequence = Deencapsulation.getField(AmqpsDeliveryTag.class, "NEXT_DELIVERY_TAG");
+        long previous = sequence.get();
+        sequence.set(Long.MAX_VALUE);
+
+        try
+        {
+            // act
+            long last = AmqpsDeliveryTag.next();
+            long wrapped = AmqpsDeliveryTag.next();
+            long afterWrap = AmqpsDeliveryTag.next();
+
+            // assert
+            assertEquals(Long.MAX_VALUE, last);
+            assertEquals(0, wrapped);
+            assertEquals(1, afterWrap);
+        }
+        finally
+        {
+            sequence.set(previous);
+        }
+    }
+
+    // Tests_SRS_AMQPSDELIVERYTAG_28_002: [If the deliveryTag is negative, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void encodeThrowsOnNegativeDeliveryTag()
+    {
+        // act
+        AmqpsDeliveryTag.encode(-1);
+    }
+
+    // Tests_SRS_AMQPSDELIVERYTAG_28_003: [The function shall return the deliveryTag in 8 big-endian bytes.]
+    @Test
+    public void encodeReturnsBigEndianBytes()
+    {
+        // act
+        byte[] encoded = AmqpsDeliveryTag.encode(0x0102030405060708L);
+
+        // assert
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, encoded);
+    }
+
+    // Tests_SRS_AMQPSDELIVERYTAG_28_004: [If the encoded delivery tag is null or is not 8 bytes long, the function shall return INVALID_DELIVERY_TAG.]
+    @Test
+    public void decodeReturnsInvalidOnNullOrWrongLength()
+    {
+        // act
+        // assert
+        assertEquals(AmqpsDeliveryTag.INVALID_DELIVERY_TAG, AmqpsDeliveryTag.decode(null));
+        assertEquals(AmqpsDeliveryTag.INVALID_DELIVERY_TAG, AmqpsDeliveryTag.decode("1".getBytes()));
+    }
+
+    // Tests_SRS_AMQPSDELIVERYTAG_28_005: [The function shall return the number encoded in the 8 big-endian bytes, or INVALID_DELIVERY_TAG if it is negative.]
+    @Test
+    public void decodeReturnsEncodedDeliveryTag()
+    {
+        // act
+        // assert
+        assertEquals(0, AmqpsDeliveryTag.decode(AmqpsDeliveryTag.encode(0)));
+        assertEquals(255, AmqpsDeliveryTag.decode(AmqpsDeliveryTag.encode(255)));
+        assertEquals(Long.MAX_VALUE, AmqpsDeliveryTag.decode(AmqpsDeliveryTag.encode(Long.MAX_VALUE)));
+    }
+
+    // Tests_SRS_AMQPSDELIVERYTAG_28_005: [The function shall return the number encoded in the 8 big-endian bytes, or INVALID_DELIVERY_TAG if it is negative.]
+    @Test
+    public void decodeReturnsInvalidOnNegativeNumber()
+    {
+        // act
+        long decoded = AmqpsDeliveryTag.decode(new byte[] {(byte)0xFF, 0, 0, 0, 0, 0, 0, 1});
+
+        // assert
+        assertEquals(AmqpsDeliveryTag.INVALID_DELIVERY_TAG, decoded);
+    }
+}
@@ -138,7 +138,7 @@ public class AmqpsDeviceAuthenticationCBSTest
     {
         // arrange
         final AmqpsDeviceAuthenticationCBS amqpsDeviceAuthenticationCBS = new AmqpsDeviceAuthenticationCBS(mockDeviceClientConfig);
-        final byte[] bytes = new byte[1024];
+        final byte[] bytes = new byte[AmqpsBufferPool.DEFAULT_BUFFER_SIZE_IN_BYTES];
         Deencapsulation.setField(amqpsDeviceAuthenticationCBS, "waitingMessages", mockQueue);
         Deencapsulation.setField(amqpsDeviceAuthenticationCBS, "senderLink", mockSender);
 
@@ -161,6 +161,36 @@ public class AmqpsDeviceAuthenticationCBSTest
         Deencapsulation.invoke(amqpsDeviceAuthenticationCBS, "sendAuthenticationMessages");
     }
 
+    // Tests_SRS_AMQPSDEVICEAUTHENTICATIONCBS_28_001: [The function shall take the buffer from the buffer pool, and release it once the message is sent.]
+    @Test
+    public void sendAuthenticationMessagesReleasesBuffers()
+    {
+        // arrange
+        final AmqpsDeviceAuthenticationCBS amqpsDeviceAuthenticationCBS = new AmqpsDeviceAuthenticationCBS(mockDeviceClientConfig);
+        final byte[] bytes = new byte[AmqpsBufferPool.DEFAULT_BUFFER_SIZE_IN_BYTES];
+        Deencapsulation.setField(amqpsDeviceAuthenticationCBS, "waitingMessages", mockQueue);
+        Deencapsulation.setField(amqpsDeviceAuthenticationCBS, "senderLink", mockSender);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockQueue.isEmpty();
+                returns(false, false, true);
+                mockQueue.remove();
+                result = mockMessageImpl;
+                mockMessageImpl.encode(bytes, anyInt, anyInt);
+                result = new BufferOverflowException();
+            }
+        };
+
+        // act
+        Deencapsulation.invoke(amqpsDeviceAuthenticationCBS, "sendAuthenticationMessages");
+
+        // assert
+        AmqpsBufferPool bufferPool = Deencapsulation.getField(amqpsDeviceAuthenticationCBS, "bufferPool");
+        assertEquals(0, bufferPool.getOutstandingCount());
+    }
+
     // Tests_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_006: [The function shall read the message from the queue.]
     // Tests_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_007: [The function shall encode the message to a buffer.]
     // Tests_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_009: [The function shall set the delivery tag for the sender.]
@@ -170,7 +200,7 @@ public class AmqpsDeviceAuthenticationCBSTest
     {
         // arrange
         final AmqpsDeviceAuthenticationCBS amqpsDeviceAuthenticationCBS = new AmqpsDeviceAuthenticationCBS(mockDeviceClientConfig);
-        final byte[] bytes = new byte[1024];
+        final byte[] bytes = new byte[AmqpsBufferPool.DEFAULT_BUFFER_SIZE_IN_BYTES];
         Deencapsulation.setField(amqpsDeviceAuthenticationCBS, "waitingMessages", mockQueue);
         Deencapsulation.setField(amqpsDeviceAuthenticationCBS, "senderLink", mockSender);
 
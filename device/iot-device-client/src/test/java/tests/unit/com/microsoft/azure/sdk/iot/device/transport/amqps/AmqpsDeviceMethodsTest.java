@@ -25,6 +25,7 @@ import org.apache.qpid.proton.message.impl.MessageImpl;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.UUID;
 
@@ -793,6 +794,7 @@ public class AmqpsDeviceMethodsTest
     // Codes_SRS_AMQPSDEVICEMETHODS_12_032: [The function shall copy the user properties to Proton message application properties excluding the reserved property names.]
     @Test
     public void convertToProtonSetsUserProperties(
+            @Mocked final MessagePropertyMap mockMessagePropertyMap,
             @Mocked final Properties mockProtonProperties,
             @Mocked final MessageProperty mockMessageProperty,
             @Mocked final IotHubTransportMessage mockIotHubTransportMessage,
@@ -821,9 +823,13 @@ public class AmqpsDeviceMethodsTest
                 mockIotHubTransportMessage.getCorrelationId();
                 result = null;
 
-                mockIotHubTransportMessage.getProperties();
-                times = 2;
-                result = properties;
+                mockIotHubTransportMessage.getPropertyMap();
+                times = 1;
+                result = mockMessagePropertyMap;
+                mockMessagePropertyMap.size();
+                result = properties.length;
+                mockMessagePropertyMap.iterator();
+                result = Arrays.asList(properties).iterator();
                 mockMessageProperty.getName();
                 times = 2;
                 result = propertyKey;
@@ -860,6 +866,7 @@ public class AmqpsDeviceMethodsTest
     // Codes_SRS_AMQPSDEVICEMETHODS_12_033: [The function shall set the proton message status field to the value of IoTHubTransportMessage status field.]
     @Test
     public void convertToProtonSetsStatus(
+            @Mocked final MessagePropertyMap mockMessagePropertyMap,
             @Mocked final Properties mockProtonProperties,
             @Mocked final MessageProperty mockMessageProperty,
             @Mocked final IotHubTransportMessage mockIotHubTransportMessage,
@@ -888,9 +895,13 @@ public class AmqpsDeviceMethodsTest
                 mockIotHubTransportMessage.getCorrelationId();
                 result = null;
 
-                mockIotHubTransportMessage.getProperties();
-                times = 2;
-                result = properties;
+                mockIotHubTransportMessage.getPropertyMap();
+                times = 1;
+                result = mockMessagePropertyMap;
+                mockMessagePropertyMap.size();
+                result = properties.length;
+                mockMessagePropertyMap.iterator();
+                result = Arrays.asList(properties).iterator();
                 mockMessageProperty.getName();
                 times = 2;
                 result = propertyKey;
@@ -773,6 +773,108 @@ public class AmqpsDeviceOperationsTest
         };
     }
 
+    // Tests_SRS_AMQPSDEVICEOPERATIONS_28_001: [The function shall throw IllegalArgumentException if the bufferPool is null.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setBufferPoolThrowsIfBufferPoolNull()
+    {
+        //arrange
+        AmqpsDeviceOperations amqpsDeviceOperations = Deencapsulation.newInstance(AmqpsDeviceOperations.class);
+
+        //act
+        Deencapsulation.invoke(amqpsDeviceOperations, "setBufferPool", new Class[] {AmqpsBufferPool.class}, (AmqpsBufferPool) null);
+    }
+
+    // Tests_SRS_AMQPSDEVICEOPERATIONS_28_002: [The function shall save the bufferPool, which the messages are decoded from.]
+    // Tests_SRS_AMQPSDEVICEOPERATIONS_28_003: [The function shall read the message into a buffer of the buffer pool, and release the buffer once the message is decoded.]
+    @Test
+    public void getMessageFromReceiverLinkReadsIntoPooledBufferAndReleasesIt()
+    {
+        //arrange
+        String linkName = "receiver";
+        final int size = 100;
+        final AmqpsBufferPool bufferPool = new AmqpsBufferPool();
+        AmqpsDeviceOperations amqpsDeviceOperations = Deencapsulation.newInstance(AmqpsDeviceOperations.class);
+        Deencapsulation.invoke(amqpsDeviceOperations, "setBufferPool", bufferPool);
+        Deencapsulation.setField(amqpsDeviceOperations, "receiverLink", mockReceiver);
+        Deencapsulation.setField(amqpsDeviceOperations, "receiverLinkTag", linkName);
+        final byte[] pooledBuffer = bufferPool.acquire(0);
+        bufferPool.release(pooledBuffer);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockReceiver.current();
+                result = mockDelivery;
+                mockDelivery.isReadable();
+                result = true;
+                mockDelivery.isPartial();
+                result = false;
+                mockDelivery.pending();
+                result = size;
+                mockReceiver.recv((byte[]) any, 0, size);
+                result = size;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(amqpsDeviceOperations, "getMessageFromReceiverLink", linkName);
+
+        //assert
+        assertEquals(0, bufferPool.getOutstandingCount());
+        assertSame(pooledBuffer, bufferPool.acquire(0));
+        new Verifications()
+        {
+            {
+                mockReceiver.recv(pooledBuffer, 0, size);
+                times = 1;
+                mockAmqpsMessage.decode(pooledBuffer, 0, size);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSDEVICEOPERATIONS_28_003: [The function shall read the message into a buffer of the buffer pool, and release the buffer once the message is decoded.]
+    @Test
+    public void getMessageFromReceiverLinkReleasesBufferIfDecodeThrows()
+    {
+        //arrange
+        String linkName = "receiver";
+        AmqpsBufferPool bufferPool = new AmqpsBufferPool();
+        AmqpsDeviceOperations amqpsDeviceOperations = Deencapsulation.newInstance(AmqpsDeviceOperations.class);
+        Deencapsulation.invoke(amqpsDeviceOperations, "setBufferPool", bufferPool);
+        Deencapsulation.setField(amqpsDeviceOperations, "receiverLink", mockReceiver);
+        Deencapsulation.setField(amqpsDeviceOperations, "receiverLinkTag", linkName);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockReceiver.current();
+                result = mockDelivery;
+                mockDelivery.isReadable();
+                result = true;
+                mockDelivery.isPartial();
+                result = false;
+                mockAmqpsMessage.decode((byte[]) any, anyInt, anyInt);
+                result = new IllegalArgumentException();
+            }
+        };
+
+        //act
+        boolean thrown = false;
+        try
+        {
+            Deencapsulation.invoke(amqpsDeviceOperations, "getMessageFromReceiverLink", linkName);
+        }
+        catch (Exception e)
+        {
+            thrown = true;
+        }
+
+        //assert
+        assertTrue(thrown);
+        assertEquals(0, bufferPool.getOutstandingCount());
+    }
+
     // Tests_SRS_AMQPSDEVICEOPERATIONS_12_047: [The function shall return true if all link are opened, false otherwise.]
     @Test
     public void operationLinksOpenedTrue()
@@ -23,6 +23,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -461,8 +462,8 @@ public class AmqpsDeviceTelemetryTest
                 result = messageId;
                 mockMessage.getCorrelationId();
                 result = correlationId;
-                mockMessage.getProperties();
-                result = iotHubMessageProperties;
+                mockMessage.getPropertyMap();
+                result = new MessagePropertyMap(iotHubMessageProperties);
                 new ApplicationProperties(userProperties);
             }
         };
@@ -484,6 +485,86 @@ public class AmqpsDeviceTelemetryTest
         };
     }
 
+    // Tests_SRS_AMQPSDEVICETELEMETRY_28_001: [The function shall copy the bytes of the message body into the proton message body, or use an empty body if the message has none.]
+    @Test
+    public void convertToProtonCopiesBytesOfReadOnlyBodySlice(
+            @Mocked final Message mockMessage,
+            @Mocked final MessageImpl mockProtonMessage,
+            @Mocked final Binary mockBinary
+    )
+    {
+        //arrange
+        final byte[] buffer = new byte[] {0x00, 0x61, 0x62, 0x63, 0x00};
+        final ByteBuffer body = ByteBuffer.wrap(buffer, 1, 3).slice().asReadOnlyBuffer();
+        AmqpsDeviceTelemetry amqpsDeviceTelemetry = Deencapsulation.newInstance(AmqpsDeviceTelemetry.class, mockDeviceClientConfig);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockMessage.getMessageType();
+                result = MessageType.DEVICE_TELEMETRY;
+                mockMessage.getPropertyMap();
+                result = new MessagePropertyMap(new MessageProperty[0]);
+                mockMessage.getBodyBuffer();
+                result = body;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(amqpsDeviceTelemetry, "convertToProton", mockMessage);
+
+        //assert
+        new Verifications()
+        {
+            {
+                new Binary(new byte[] {0x61, 0x62, 0x63});
+                times = 1;
+                mockMessage.getBytes();
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSDEVICETELEMETRY_28_001: [The function shall copy the bytes of the message body into the proton message body, or use an empty body if the message has none.]
+    @Test
+    public void convertToProtonCopiesDirectBody(
+            @Mocked final Message mockMessage,
+            @Mocked final MessageImpl mockProtonMessage,
+            @Mocked final Binary mockBinary
+    )
+    {
+        //arrange
+        final byte[] bytes = new byte[] {0x61, 0x62, 0x63};
+        final ByteBuffer body = ByteBuffer.allocateDirect(bytes.length);
+        body.put(bytes);
+        body.flip();
+        AmqpsDeviceTelemetry amqpsDeviceTelemetry = Deencapsulation.newInstance(AmqpsDeviceTelemetry.class, mockDeviceClientConfig);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockMessage.getMessageType();
+                result = MessageType.DEVICE_TELEMETRY;
+                mockMessage.getPropertyMap();
+                result = new MessagePropertyMap(new MessageProperty[0]);
+                mockMessage.getBodyBuffer();
+                result = body;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(amqpsDeviceTelemetry, "convertToProton", mockMessage);
+
+        //assert
+        new Verifications()
+        {
+            {
+                new Binary(bytes);
+                times = 1;
+            }
+        };
+    }
+
     // Codes_SRS_AMQPSDEVICETELEMETRY_12_020: [The function shall call the super function.]
     // Codes_SRS_AMQPSDEVICETELEMETRY_12_021: [The function shall set the MessageType to DEVICE_TELEMETRY if the super function returned not null.]
     // Codes_SRS_AMQPSDEVICETELEMETRY_12_022: [The function shall return the super function return value.]
@@ -23,6 +23,7 @@ import org.apache.qpid.proton.message.impl.MessageImpl;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.UUID;
 
@@ -1399,6 +1400,7 @@ public class AmqpsDeviceTwinTest
     // Tests_SRS_AMQPSDEVICETWIN_12_032: [The function shall copy the user properties to Proton message application properties excluding the reserved property names.]
     @Test
     public void convertToProtonSetsUserProperties(
+            @Mocked final MessagePropertyMap mockMessagePropertyMap,
             @Mocked final Properties mockProtonProperties,
             @Mocked final MessageProperty mockMessageProperty,
             @Mocked final IotHubTransportMessage mockIotHubTransportMessage,
@@ -1430,9 +1432,13 @@ public class AmqpsDeviceTwinTest
                 mockIotHubTransportMessage.getCorrelationId();
                 result = null;
 
-                mockIotHubTransportMessage.getProperties();
-                times = 2;
-                result = properties;
+                mockIotHubTransportMessage.getPropertyMap();
+                times = 1;
+                result = mockMessagePropertyMap;
+                mockMessagePropertyMap.size();
+                result = properties.length;
+                mockMessagePropertyMap.iterator();
+                result = Arrays.asList(properties).iterator();
                 mockMessageProperty.getName();
                 times = 2;
                 result = propertyKey;
@@ -1464,6 +1470,7 @@ public class AmqpsDeviceTwinTest
     // Tests_SRS_AMQPSDEVICETWIN_12_033: [The function shall set the proton message annotation operation field to GET if the IotHubTransportMessage operation type is GET_REQUEST.]
     @Test
     public void convertToProtonSetsMessageAnnotationsGetRequest(
+            @Mocked final MessagePropertyMap mockMessagePropertyMap,
             @Mocked final Properties mockProtonProperties,
             @Mocked final MessageProperty mockMessageProperty,
             @Mocked final IotHubTransportMessage mockIotHubTransportMessage,
@@ -1492,8 +1499,12 @@ public class AmqpsDeviceTwinTest
                 result = null;
                 mockIotHubTransportMessage.getCorrelationId();
                 result = null;
-                mockIotHubTransportMessage.getProperties();
-                result = properties;
+                mockIotHubTransportMessage.getPropertyMap();
+                result = mockMessagePropertyMap;
+                mockMessagePropertyMap.size();
+                result = properties.length;
+                mockMessagePropertyMap.iterator();
+                result = Arrays.asList(properties).iterator();
                 new ApplicationProperties((Map) any);
                 result = mockApplicationProperties;
 
@@ -1525,6 +1536,7 @@ public class AmqpsDeviceTwinTest
     // Tests_SRS_AMQPSDEVICETWIN_12_033: [The function shall set the proton message annotation operation field to GET if the IotHubTransportMessage operation type is GET_REQUEST.]
     @Test
     public void convertToProtonSetsMessageAnnotationsUpdateReportedPropertiesRequest(
+            @Mocked final MessagePropertyMap mockMessagePropertyMap,
             @Mocked final Properties mockProtonProperties,
             @Mocked final MessageProperty mockMessageProperty,
             @Mocked final IotHubTransportMessage mockIotHubTransportMessage,
@@ -1553,8 +1565,12 @@ public class AmqpsDeviceTwinTest
                 result = null;
                 mockIotHubTransportMessage.getCorrelationId();
                 result = null;
-                mockIotHubTransportMessage.getProperties();
-                result = properties;
+                mockIotHubTransportMessage.getPropertyMap();
+                result = mockMessagePropertyMap;
+                mockMessagePropertyMap.size();
+                result = properties.length;
+                mockMessagePropertyMap.iterator();
+                result = Arrays.asList(properties).iterator();
                 new ApplicationProperties((Map) any);
                 result = mockApplicationProperties;
 
@@ -1586,6 +1602,7 @@ public class AmqpsDeviceTwinTest
     // Tests_SRS_AMQPSDEVICETWIN_12_033: [The function shall set the proton message annotation operation field to GET if the IotHubTransportMessage operation type is GET_REQUEST.]
     @Test
     public void convertToProtonSetsMessageAnnotationsSubscribeDesiredPropertiesRequest(
+            @Mocked final MessagePropertyMap mockMessagePropertyMap,
             @Mocked final Properties mockProtonProperties,
             @Mocked final MessageProperty mockMessageProperty,
             @Mocked final IotHubTransportMessage mockIotHubTransportMessage,
@@ -1614,8 +1631,12 @@ public class AmqpsDeviceTwinTest
                 result = null;
                 mockIotHubTransportMessage.getCorrelationId();
                 result = null;
-                mockIotHubTransportMessage.getProperties();
-                result = properties;
+                mockIotHubTransportMessage.getPropertyMap();
+                result = mockMessagePropertyMap;
+                mockMessagePropertyMap.size();
+                result = properties.length;
+                mockMessagePropertyMap.iterator();
+                result = Arrays.asList(properties).iterator();
                 new ApplicationProperties((Map) any);
                 result = mockApplicationProperties;
 
@@ -1647,6 +1668,7 @@ public class AmqpsDeviceTwinTest
     // Tests_SRS_AMQPSDEVICETWIN_12_033: [The function shall set the proton message annotation operation field to GET if the IotHubTransportMessage operation type is GET_REQUEST.]
     @Test
     public void convertToProtonSetsMessageAnnotationsUnSubscribeDesiredPropertiesRequest(
+            @Mocked final MessagePropertyMap mockMessagePropertyMap,
             @Mocked final Properties mockProtonProperties,
             @Mocked final MessageProperty mockMessageProperty,
             @Mocked final IotHubTransportMessage mockIotHubTransportMessage,
@@ -1675,8 +1697,12 @@ public class AmqpsDeviceTwinTest
                 result = null;
                 mockIotHubTransportMessage.getCorrelationId();
                 result = null;
-                mockIotHubTransportMessage.getProperties();
-                result = properties;
+                mockIotHubTransportMessage.getPropertyMap();
+                result = mockMessagePropertyMap;
+                mockMessagePropertyMap.size();
+                result = properties.length;
+                mockMessagePropertyMap.iterator();
+                result = Arrays.asList(properties).iterator();
                 new ApplicationProperties((Map) any);
                 result = mockApplicationProperties;
 
@@ -0,0 +1,169 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsInFlightDeliveries;
+import mockit.Deencapsulation;
+import mockit.Mocked;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for AmqpsInFlightDeliveries.
+ * 100% methods, 100% lines covered
+ */
+public class AmqpsInFlightDeliveriesTest
+{
+    @Mocked
+    IotHubOutboundPacket mockPacket1;
+
+    @Mocked
+    IotHubOutboundPacket mockPacket2;
+
+    // Tests_SRS_AMQPSINFLIGHTDELIVERIES_28_001: [The constructor shall create an empty table.]
+    // Tests_SRS_AMQPSINFLIGHTDELIVERIES_28_009: [The function shall return true if the table has no packet, and false otherwise.]
+    @Test
+    public void constructorCreatesEmptyTable()
+    {
+        // act
+        AmqpsInFlightDeliveries inFlightDeliveries = new AmqpsInFlightDeliveries();
+
+        // assert
+        assertTrue(inFlightDeliveries.isEmpty());
+        assertEquals(0, inFlightDeliveries.size());
+    }
+
+    // Tests_SRS_AMQPSINFLIGHTDELIVERIES_28_002: [If the deliveryTag is negative or the packet is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void putThrowsOnNegativeDeliveryTag()
+    {
+        // act
+        new AmqpsInFlightDeliveries().put(-1, mockPacket1);
+    }
+
+    // Tests_SRS_AMQPSINFLIGHTDELIVERIES_28_002: [If the deliveryTag is negative or the packet is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void putThrowsOnNullPacket()
+    {
+        // act
+        new AmqpsInFlightDeliveries().put(1, null);
+    }
+
+    // Tests_SRS_AMQPSINFLIGHTDELIVERIES_28_003: [The function shall store the packet for the deliveryTag, replacing the packet previously stored for it, if any.]
+    // Tests_SRS_AMQPSINFLIGHTDELIVERIES_28_008: [The function shall return the number of packets in the table.]
+    @Test
+    public void putReplacesPacketOfSameDeliveryTag()
+    {
+        // arrange
+        AmqpsInFlightDeliveries inFlightDeliveries = new AmqpsInFlightDeliveries();
+
+        // act
+        inFlightDeliveries.put(7, mockPacket1);
+        inFlightDeliveries.put(7, mockPacket2);
+
+        // assert
+        assertEquals(1, inFlightDeliveries.size());
+        assertFalse(inFlightDeliveries.isEmpty());
+        assertSame(mockPacket2, inFlightDeliveries.remove(7));
+    }
+
+    // Tests_SRS_AMQPSINFLIGHTDELIVERIES_28_004: [If the table is more than half full, the function shall double its capacity.]
+    @Test
+    public void putGrowsTableAndKeepsAllPackets()
+    {
+        // arrange
+        final int count = 10000;
+        AmqpsInFlightDeliveries inFlightDeliveries = new AmqpsInFlightDeliveries();
+
+        // act
+        for (long deliveryTag = 0; deliveryTag < count; deliveryTag++)
+        {
+            inFlightDeliveries.put(deliveryTag, (deliveryTag % 2 == 0) ? mockPacket1 : mockPacket2);
+        }
+
+        // assert
+        assertEquals(count, inFlightDeliveries.size());
+        long[] keys = Deencapsulation.getField(inFlightDeliveries, "keys");
+        assertTrue(keys.length >= 2 * count);
+        for (long deliveryTag = 0; deliveryTag < count; deliveryTag++)
+        {
+            assertSame((deliveryTag % 2 == 0) ? mockPacket1 : mockPacket2, inFlightDeliveries.remove(deliveryTag));
+        }
+        assertTrue(inFlightDeliveries.isEmpty());
+    }
+
+    // Tests_SRS_AMQPSINFLIGHTDELIVERIES_28_005: [If the deliveryTag is negative or is not in the table, the function shall return null.]
+    @Test
+    public void removeReturnsNullIfDeliveryTagNotFound()
+    {
+        // arrange
+        AmqpsInFlightDeliveries inFlightDeliveries = new AmqpsInFlightDeliveries();
+        inFlightDeliveries.put(1, mockPacket1);
+
+        // act
+        // assert
+        assertNull(inFlightDeliveries.remove(2));
+        assertNull(inFlightDeliveries.remove(-1));
+        assertEquals(1, inFlightDeliveries.size());
+    }
+
+    // Tests_SRS_AMQPSINFLIGHTDELIVERIES_28_006: [The function shall remove the deliveryTag from the table and return its packet.]
+    @Test
+    public void removeKeepsOtherPacketsReachable()
+    {
+        // arrange
+        final int count = 1000;
+        AmqpsInFlightDeliveries inFlightDeliveries = new AmqpsInFlightDeliveries();
+        for (long deliveryTag = 0; deliveryTag < count; deliveryTag++)
+        {
+            inFlightDeliveries.put(deliveryTag, mockPacket1);
+        }
+
+        // act
+        for (long deliveryTag = 0; deliveryTag < count; deliveryTag += 2)
+        {
+            assertSame(mockPacket1, inFlightDeliveries.remove(deliveryTag));
+        }
+
+        // assert
+        assertEquals(count / 2, inFlightDeliveries.size());
+        for (long deliveryTag = 0; deliveryTag < count; deliveryTag++)
+        {
+            IotHubOutboundPacket packet = inFlightDeliveries.remove(deliveryTag);
+            if (deliveryTag % 2 == 0)
+            {
+                assertNull(packet);
+            }
+            else
+            {
+                assertSame(mockPacket1, packet);
+            }
+        }
+        assertTrue(inFlightDeliveries.isEmpty());
+    }
+
+    // Tests_SRS_AMQPSINFLIGHTDELIVERIES_28_007: [The function shall remove all the packets from the table and return them in the order of their delivery tags.]
+    @Test
+    public void removeAllReturnsPacketsInDeliveryTagOrder()
+    {
+        // arrange
+        AmqpsInFlightDeliveries inFlightDeliveries = new AmqpsInFlightDeliveries();
+        inFlightDeliveries.put(500, mockPacket2);
+        inFlightDeliveries.put(3, mockPacket1);
+
+        // act
+        List<IotHubOutboundPacket> packets = inFlightDeliveries.removeAll();
+
+        // assert
+        assertEquals(2, packets.size());
+        assertSame(mockPacket1, packets.get(0));
+        assertSame(mockPacket2, packets.get(1));
+        assertTrue(inFlightDeliveries.isEmpty());
+        assertNull(inFlightDeliveries.remove(3));
+    }
+}
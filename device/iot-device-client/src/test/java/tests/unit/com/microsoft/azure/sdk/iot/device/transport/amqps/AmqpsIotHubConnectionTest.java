@@ -10,6 +10,7 @@ import com.microsoft.azure.sdk.iot.deps.ws.impl.WebSocketImpl;
 import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenAuthenticationProvider;
 import com.microsoft.azure.sdk.iot.device.net.IotHubUri;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubReconnectScheduler;
 import com.microsoft.azure.sdk.iot.device.transport.State;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.*;
 import mockit.*;
@@ -27,6 +28,7 @@ import org.junit.Test;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -149,6 +151,9 @@ public class AmqpsIotHubConnectionTest {
     @Mocked
     IotHubConnectionString mockConnectionString;
 
+    @Mocked
+    IotHubReconnectScheduler mockReconnectScheduler;
+
     @Mocked
     AmqpsSessionManager mockAmqpsSessionManager;
 
@@ -363,6 +368,36 @@ public class AmqpsIotHubConnectionTest {
         assertEquals(State.CLOSED, actualState);
     }
 
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_28_002: [If the config has a receive prefetch count, the FlowController
+    // shall give it as link credit, so the service can send that many messages before they are acknowledged.]
+    @Test
+    public void constructorGivesReceivePrefetchCountAsLinkCredit() throws IOException
+    {
+        // arrange
+        baseExpectations();
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getReceivePrefetchCount();
+                result = 50;
+            }
+        };
+
+        // act
+        new AmqpsIotHubConnection(mockConfig);
+
+        // assert
+        new Verifications()
+        {
+            {
+                new FlowController(50);
+                times = 1;
+                new FlowController();
+                times = 0;
+            }
+        };
+    }
+
     // Tests_SRS_AMQPSIOTHUBCONNECTION_12_002: [The constructor shall create a Proton reactor.]
     @Test
     public void constructorCreatesProtonReactor() throws IOException
@@ -551,6 +586,7 @@ public class AmqpsIotHubConnectionTest {
 
     // Tests_SRS_AMQPSIOTHUBCONNECTION_12_057: [The function shall call the connection to authenticate.]
     // Tests_SRS_AMQPSIOTHUBCONNECTION_12_058: [The function shall call the connection to open device client links.]
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_28_004: [The function shall start the retries of the reconnect scheduler over.]
     @Test
     public void openCallsAuthenticateAndOpenLinks() throws IOException, InterruptedException
     {
@@ -568,6 +604,8 @@ public class AmqpsIotHubConnectionTest {
         new Verifications()
         {
             {
+                mockReconnectScheduler.reset();
+                times = 1;
                 mockConfig.getSasTokenAuthentication().getRenewedSasToken();
                 times = 1;
                 mockOpenLock.waitLock(anyLong);
@@ -966,10 +1004,9 @@ public class AmqpsIotHubConnectionTest {
         Deencapsulation.setField(connection, "state", State.CLOSED);
         Deencapsulation.setField(connection, "linkCredit", 100);
 
-        Integer expectedDeliveryHash = -1;
-        Integer actualDeliveryHash = connection.sendMessage(Message.Factory.create(), MessageType.DEVICE_TELEMETRY, mockConnectionString);
+        long actualDeliveryTag = connection.sendMessage(Message.Factory.create(), MessageType.DEVICE_TELEMETRY, mockConnectionString);
 
-        assertEquals(expectedDeliveryHash, actualDeliveryHash);
+        assertEquals(-1, actualDeliveryTag);
     }
 
     // Tests_SRS_AMQPSIOTHUBCONNECTION_15_015: [If the state of the connection is CLOSED or there is not enough
@@ -984,14 +1021,13 @@ public class AmqpsIotHubConnectionTest {
         Deencapsulation.setField(connection, "state", State.OPEN);
         Deencapsulation.setField(connection, "linkCredit", -1);
 
-        Integer expectedDeliveryHash = -1;
-        Integer actualDeliveryHash = connection.sendMessage(Message.Factory.create(), MessageType.DEVICE_TELEMETRY, mockConnectionString);
+        long actualDeliveryTag = connection.sendMessage(Message.Factory.create(), MessageType.DEVICE_TELEMETRY, mockConnectionString);
 
-        assertEquals(expectedDeliveryHash, actualDeliveryHash);
+        assertEquals(-1, actualDeliveryTag);
     }
 
     // Tests_SRS_AMQPSIOTHUBCONNECTION_12_024: [The function shall call AmqpsSessionManager.sendMessage with the given parameters.]
-    // Tests_SRS_AMQPSIOTHUBCONNECTION_15_021: [The function shall return the delivery hash.]
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_15_021: [The function shall return the delivery tag.]
     @Test
     public void sendMessage() throws IOException
     {
@@ -999,13 +1035,13 @@ public class AmqpsIotHubConnectionTest {
         baseExpectations();
 
         final byte[] messageBytes = new byte[] {1, 2};
-        final Integer expectedDeliveryHash = 42;
+        final long expectedDeliveryTag = 42;
 
         new NonStrictExpectations()
         {
             {
                 Deencapsulation.invoke(mockAmqpsSessionManager, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockConnectionString);
-                result = expectedDeliveryHash;
+                result = expectedDeliveryTag;
             }
         };
 
@@ -1015,10 +1051,10 @@ public class AmqpsIotHubConnectionTest {
         Deencapsulation.setField(connection, "linkCredit", 100);
 
         // act
-        Integer actualDeliveryHash = connection.sendMessage(mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockConnectionString);
+        long actualDeliveryTag = connection.sendMessage(mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockConnectionString);
 
         // assert
-        assertEquals(expectedDeliveryHash, actualDeliveryHash);
+        assertEquals(expectedDeliveryTag, actualDeliveryTag);
 
         new Verifications()
         {
@@ -1216,7 +1252,8 @@ public class AmqpsIotHubConnectionTest {
         };
     }
 
-    // Test_SRS_AMQPSIOTHUBCONNECTION_12_009: [The function shall call openAsync and disable reconnection if it is a reconnection attempt.]
+    // Test_SRS_AMQPSIOTHUBCONNECTION_12_013: [The function shall disable reconnection and schedule a call to openAsync if it is a reconnection attempt.]
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_28_008: [The attempt to reopen the connection shall run on the reconnect scheduler, after the delay of the retry policy.]
     @Test
     public void onReactorFinalReconnect() throws IOException
     {
@@ -1251,19 +1288,27 @@ public class AmqpsIotHubConnectionTest {
         Reactor reactor = Deencapsulation.getField(connection, "reactor");
         assertEquals(null, reactor);
         State state = Deencapsulation.getField(connection, "state");
-        assertEquals(State.OPEN, state);
+        assertEquals(State.CLOSED, state);
+        assertEquals(false, Deencapsulation.getField(connection, "reconnectCall"));
 
+        final List<Runnable> reconnectTasks = new ArrayList<>();
         new Verifications()
         {
             {
                 mockCloseLock.notifyLock();
                 times = 1;
-
+                mockReconnectScheduler.schedule(withCapture(reconnectTasks));
+                times = 1;
             }
         };
+
+        reconnectTasks.get(0).run();
+        state = Deencapsulation.getField(connection, "state");
+        assertEquals(State.OPEN, state);
     }
 
-    // Test_SRS_AMQPSIOTHUBCONNECTION_12_010: [The function shall log the error if openAsync failed.]
+    // Test_SRS_AMQPSIOTHUBCONNECTION_12_014: [The function shall log the error if openAsync failed.]
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_28_009: [If openAsync failed, the next attempt shall be scheduled.]
     @Test
     public void onReactorFinalReconnectFailed() throws IOException
     {
@@ -1295,6 +1340,16 @@ public class AmqpsIotHubConnectionTest {
 
         connection.onReactorFinal(mockEvent);
 
+        final List<Runnable> reconnectTasks = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockReconnectScheduler.schedule(withCapture(reconnectTasks));
+                times = 1;
+            }
+        };
+        reconnectTasks.get(0).run();
+
         Reactor reactor = Deencapsulation.getField(connection, "reactor");
         assertEquals(null, reactor);
         State state = Deencapsulation.getField(connection, "state");
@@ -1305,7 +1360,8 @@ public class AmqpsIotHubConnectionTest {
             {
                 mockCloseLock.notifyLock();
                 times = 1;
-
+                mockReconnectScheduler.schedule((Runnable) any);
+                times = 2;
             }
         };
     }
@@ -1442,6 +1498,36 @@ public class AmqpsIotHubConnectionTest {
         assertTrue(state == State.CLOSED);
     }
 
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_28_001: [The event handler shall call the AmqpsSessionManager.onConnectionRemoteOpen with the transport.]
+    @Test
+    public void onConnectionRemoteOpenCallsSessionManager() throws IOException
+    {
+        baseExpectations();
+
+        new NonStrictExpectations()
+        {
+            {
+                mockEvent.getConnection();
+                result = mockConnection;
+                mockConnection.getTransport();
+                result = mockTransport;
+            }
+        };
+
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+        Deencapsulation.setField(connection, "amqpsSessionManager", mockAmqpsSessionManager);
+
+        connection.onConnectionRemoteOpen(mockEvent);
+
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsSessionManager, "onConnectionRemoteOpen", mockTransport);
+                times = 1;
+            }
+        };
+    }
+
     // Tests_SRS_AMQPSIOTHUBCONNECTION_12_015: [The function shall call AmqpsSessionManager.getMessageFromReceiverLink.]
     // Tests_SRS_AMQPSIOTHUBCONNECTION_15_050: [All the listeners shall be notified that a message was received from the server.]
     @Test
@@ -1480,7 +1566,7 @@ public class AmqpsIotHubConnectionTest {
     }
 
     // Tests_SRS_AMQPSIOTHUBCONNECTION_15_038: [If this link is the Sender link and the event type is DELIVERY, the event handler shall get the Delivery (Proton) object from the event.]
-    // Tests_SRS_AMQPSIOTHUBCONNECTION_15_039: [The event handler shall note the remote delivery state and use it and the Delivery (Proton) hash code to inform the AmqpsIotHubConnection of the message receipt.]
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_15_039: [The event handler shall note the remote delivery state and use it and the Delivery (Proton) delivery tag to inform the AmqpsIotHubConnection of the message receipt.]
     @Test
     public void onDeliverySend(
     ) throws IOException
@@ -1503,7 +1589,8 @@ public class AmqpsIotHubConnectionTest {
                 result = mockDelivery;
                 mockDelivery.getRemoteState();
                 result = Accepted.getInstance();
-                mockServerListener.messageSent(anyInt, true);
+                mockDelivery.getTag();
+                result = AmqpsDeliveryTag.encode(42);
                 Deencapsulation.invoke(mockAmqpsSessionManager, "getMessageFromReceiverLink", receiverLinkName);
                 result = null;
             }
@@ -1521,7 +1608,7 @@ public class AmqpsIotHubConnectionTest {
                 times = 1;
                 mockDelivery.getRemoteState();
                 times = 1;
-                mockServerListener.messageSent(mockDelivery.hashCode(), true);
+                mockServerListener.messageSent(42, true);
                 times = 1;
                 mockDelivery.free();
                 times = 1;
@@ -1589,6 +1676,7 @@ public class AmqpsIotHubConnectionTest {
     // Tests_SRS_AMQPSIOTHUBCONNECTION_99_001: [All server listeners shall be notified when that the connection has been established.]
     // Tests_SRS_AMQPSIOTHUBCONNECTION_21_051: [The open lock shall be notified when that the connection has been established.]
     // Tests_SRS_AMQPSIOTHUBCONNECTION_12_052: [The function shall call AmqpsSessionManager.onLinkRemoteOpen with the given link.]
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_28_006: [When the connection is established, the retries of the reconnect scheduler shall start over.]
     @Test
     public void onLinkRemoteOpen() throws IOException
     {
@@ -1623,6 +1711,8 @@ public class AmqpsIotHubConnectionTest {
                 times = 1;
                 mockOpenLock.notifyLock();
                 times = 1;
+                mockReconnectScheduler.reset();
+                times = 1;
             }
         };
     }
@@ -1737,55 +1827,95 @@ public class AmqpsIotHubConnectionTest {
         };
     }
 
-    // Tests_SRS_AMQPSIOTHUBCONNECTION_15_048: [The event handler shall attempt to reconnect to IoTHub.]
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_28_007: [The event handler shall close the connection without waiting for the delay of the next attempt to reconnect.]
     @Test
-    public void onTransportErrorReconnectionCounterRotate() throws IOException, InterruptedException
+    public void onTransportErrorDoesNotScheduleBeforeTheReactorStops() throws IOException
     {
         baseExpectations();
 
-        new NonStrictExpectations()
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+
+        new MockUp<AmqpsIotHubConnection>()
         {
+            @Mock
+            void closeAsync()
             {
-                mockServerListener.connectionLost();
+                Deencapsulation.setField(connection, "state", State.CLOSED);
+            }
+        };
+
+        connection.onTransportError(mockEvent);
+
+        assertEquals(true, Deencapsulation.getField(connection, "reconnectCall"));
+        new Verifications()
+        {
+            {
+                mockReconnectScheduler.schedule((Runnable) any);
+                times = 0;
             }
         };
+    }
+
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_28_011: [If the connection was closed since the attempt was scheduled, the attempt shall do nothing.]
+    @Test
+    public void scheduledReconnectDoesNothingIfTheConnectionWasClosed() throws IOException
+    {
+        baseExpectations();
 
         final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
-        Deencapsulation.setField(connection, "currentReconnectionAttempt", Integer.MAX_VALUE);
+        Deencapsulation.setField(connection, "closeLock", mockCloseLock);
+        Deencapsulation.setField(connection, "reconnectCall", true);
 
         final Boolean[] openAsyncCalled = { false };
-        final Boolean[] closeAsyncCalled = { false };
-
         new MockUp<AmqpsIotHubConnection>()
         {
             @Mock
             void openAsync()
             {
                 openAsyncCalled[0] = true;
-                Deencapsulation.setField(connection, "state", State.OPEN);
             }
-
-            @Mock
-            void closeAsync()
+        };
+        new NonStrictExpectations()
+        {
             {
-                closeAsyncCalled[0] = true;
-                Deencapsulation.setField(connection, "state", State.CLOSED);
+                mockReconnectScheduler.isCancelled();
+                result = true;
             }
         };
 
-        connection.addListener(mockServerListener);
-        connection.onTransportError(mockEvent);
+        connection.onReactorFinal(mockEvent);
+        final List<Runnable> reconnectTasks = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockReconnectScheduler.schedule(withCapture(reconnectTasks));
+            }
+        };
+        reconnectTasks.get(0).run();
 
-        int currentReconnectionAttempt = Deencapsulation.getField(connection, "currentReconnectionAttempt");
-        assertEquals(currentReconnectionAttempt, 1);
-        assertEquals(true, closeAsyncCalled[0]);
         assertEquals(false, openAsyncCalled[0]);
+    }
 
-        new Verifications()
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_28_003: [The constructor shall create the reconnect scheduler of the connection with the configuration.]
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_28_005: [The function shall cancel the pending attempt to reconnect, if any.]
+    @Test
+    public void closeCancelsThePendingReconnect() throws IOException, InterruptedException
+    {
+        baseExpectations();
+
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+        Deencapsulation.setField(connection, "closeLock", mockCloseLock);
+
+        connection.close();
+
+        new VerificationsInOrder()
         {
             {
-                mockServerListener.connectionLost();
+                new IotHubReconnectScheduler(mockConfig);
                 times = 1;
+                mockReconnectScheduler.cancel();
+                times = 1;
+                mockCloseLock.waitLock(anyLong);
             }
         };
     }
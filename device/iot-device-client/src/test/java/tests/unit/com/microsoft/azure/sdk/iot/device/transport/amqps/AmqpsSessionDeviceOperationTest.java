@@ -14,9 +14,6 @@ import org.junit.Test;
 import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertNotNull;
@@ -86,10 +83,7 @@ public class AmqpsSessionDeviceOperationTest
     IotHubSasTokenAuthenticationProvider mockIotHubSasTokenAuthenticationProvider;
 
     @Mocked
-    Executors mockExecutors;
-
-    @Mocked
-    ScheduledExecutorService mockScheduledExecutorService;
+    AmqpsTokenRenewalScheduler mockAmqpsTokenRenewalScheduler;
 
     @Mocked
     AmqpsDeviceAuthenticationCBSTokenRenewalTask mockAmqpsDeviceAuthenticationCBSTokenRenewalTask;
@@ -103,6 +97,11 @@ public class AmqpsSessionDeviceOperationTest
     @Mocked
     List<UUID> mockListUUID;
 
+    private static void setLinkOwner(AmqpsSessionDeviceOperation amqpsSessionDeviceOperation, String linkName, AmqpsDeviceOperations amqpsDeviceOperations)
+    {
+        Map<String, AmqpsDeviceOperations> amqpsDeviceOperationsByLinkName = Deencapsulation.getField(amqpsSessionDeviceOperation, "amqpsDeviceOperationsByLinkName");
+        amqpsDeviceOperationsByLinkName.put(linkName, amqpsDeviceOperations);
+    }
 
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_001: [The constructor shall throw IllegalArgumentException if the deviceClientConfig or the amqpsDeviceAuthentication parameter is null.]
     @Test (expected = IllegalArgumentException.class)
@@ -110,7 +109,7 @@ public class AmqpsSessionDeviceOperationTest
     {
         // arrange
         // act
-        new AmqpsSessionDeviceOperation(null, mockAmqpsDeviceAuthentication);
+        new AmqpsSessionDeviceOperation(null, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
     }
 
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_001: [The constructor shall throw IllegalArgumentException if the deviceClientConfig or the amqpsDeviceAuthentication parameter is null.]
@@ -119,7 +118,24 @@ public class AmqpsSessionDeviceOperationTest
     {
         // arrange
         // act
-        new AmqpsSessionDeviceOperation(mockDeviceClientConfig, null);
+        new AmqpsSessionDeviceOperation(mockDeviceClientConfig, null, mockAmqpsTokenRenewalScheduler);
+    }
+
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_28_001: [The constructor shall throw IllegalArgumentException if the authentication type is CBS and the tokenRenewalScheduler parameter is null.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsIfTokenRenewalSchedulerIsNullForCBS() throws IllegalArgumentException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceClientConfig.getAuthenticationType();
+                result = DeviceClientConfig.AuthType.CBS;
+            }
+        };
+
+        // act
+        new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationCBS, null);
     }
 
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_002: [The constructor shall save the deviceClientConfig and amqpsDeviceAuthentication parameter value to a member variable.]
@@ -129,7 +145,7 @@ public class AmqpsSessionDeviceOperationTest
     public void constructorSuccessSAS() throws IllegalArgumentException
     {
         // act
-        AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationSAS);
+        AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationSAS, mockAmqpsTokenRenewalScheduler);
 
         // assert
         DeviceClientConfig actualDeviceClientConfig = Deencapsulation.getField(amqpsSessionDeviceOperation, "deviceClientConfig");
@@ -158,7 +174,7 @@ public class AmqpsSessionDeviceOperationTest
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_044: [The constructor shall calculate the token renewal period as the 75% of the expiration period.]
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_048: [The constructor saves the calculated renewal period if it is greater than zero.]
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_045: [The constructor shall create AmqpsDeviceAuthenticationCBSTokenRenewalTask if the authentication type is CBS.]
-    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_046: [The constructor shall create and start a scheduler with the calculated renewal period for AmqpsDeviceAuthenticationCBSTokenRenewalTask if the authentication type is CBS.]
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_28_002: [The constructor shall schedule the AmqpsDeviceAuthenticationCBSTokenRenewalTask with the calculated renewal period on the tokenRenewalScheduler if the authentication type is CBS.]
     @Test
     public void constructorSuccessCBS() throws IllegalArgumentException
     {
@@ -178,14 +194,11 @@ public class AmqpsSessionDeviceOperationTest
 
                 new AmqpsDeviceAuthenticationCBSTokenRenewalTask((AmqpsSessionDeviceOperation)any);
                 result = mockAmqpsDeviceAuthenticationCBSTokenRenewalTask;
-                mockExecutors.newScheduledThreadPool(1);
-                result = mockScheduledExecutorService;
-                mockScheduledExecutorService.scheduleAtFixedRate(mockAmqpsDeviceAuthenticationCBSTokenRenewalTask, 0, expectedRenewalTimeMillisecs, TimeUnit.MILLISECONDS);
             }
         };
 
         // act
-        AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationCBS);
+        AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationCBS, mockAmqpsTokenRenewalScheduler);
 
         // assert
         DeviceClientConfig actualDeviceClientConfig = Deencapsulation.getField(amqpsSessionDeviceOperation, "deviceClientConfig");
@@ -206,23 +219,21 @@ public class AmqpsSessionDeviceOperationTest
                 times = 1;
                 Deencapsulation.newInstance(AmqpsDeviceTwin.class, mockDeviceClientConfig);
                 times = 1;
-                mockExecutors.newScheduledThreadPool(1);
-                times = 1;
-                mockScheduledExecutorService.scheduleAtFixedRate(mockAmqpsDeviceAuthenticationCBSTokenRenewalTask, 0, expectedRenewalTimeMillisecs, TimeUnit.MILLISECONDS);
+                mockAmqpsTokenRenewalScheduler.schedule(mockAmqpsDeviceAuthenticationCBSTokenRenewalTask, expectedRenewalTimeMillisecs);
                 times = 1;
             }
         };
     }
 
-    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_058: [The function shall shut down the executor threads.]
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_28_003: [The function shall cancel the token renewal of the device.]
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_059: [The function shall close the operation links.]
     @Test
     public void close()
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "deviceClientConfig", mockDeviceClientConfig);
-        Deencapsulation.setField(amqpsSessionDeviceOperation, "taskSchedulerTokenRenewal", mockScheduledExecutorService);
+        Deencapsulation.setField(amqpsSessionDeviceOperation, "tokenRenewalTask", mockAmqpsDeviceAuthenticationCBSTokenRenewalTask);
 
         // act
         amqpsSessionDeviceOperation.close();
@@ -231,7 +242,7 @@ public class AmqpsSessionDeviceOperationTest
         new Verifications()
         {
             {
-                mockScheduledExecutorService.shutdownNow();
+                mockAmqpsTokenRenewalScheduler.cancel(mockAmqpsDeviceAuthenticationCBSTokenRenewalTask);
                 times = 1;
                 Deencapsulation.invoke(mockAmqpsDeviceOperations, "closeLinks");
                 times = 3;
@@ -250,7 +261,7 @@ public class AmqpsSessionDeviceOperationTest
     {
         // arrange
         final int MAX_WAIT_TO_AUTHENTICATE = 10*1000;
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "deviceClientConfig", mockDeviceClientConfig);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "authenticationLock", mockLock);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "cbsCorrelationIdList", mockListUUID);
@@ -284,12 +295,54 @@ public class AmqpsSessionDeviceOperationTest
         };
     }
 
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_28_012: [If the token renewal was canceled by close, the function shall schedule the token renewal again if the authentication type is CBS.]
+    @Test
+    public void authenticateCBSSchedulesRenewalAgainAfterClose() throws IllegalArgumentException, IOException, InterruptedException
+    {
+        // arrange
+        final long tokenValidSecs = 3600;
+        final long expectedRenewalTimeMillisecs = 2700 * 1000;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceClientConfig.getAuthenticationType();
+                result = DeviceClientConfig.AuthType.CBS;
+                mockDeviceClientConfig.getSasTokenAuthentication();
+                result = mockIotHubSasTokenAuthenticationProvider;
+                mockIotHubSasTokenAuthenticationProvider.getTokenValidSecs();
+                result = tokenValidSecs;
+                UUID.randomUUID();
+                result = mockUUID;
+            }
+        };
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
+        Deencapsulation.setField(amqpsSessionDeviceOperation, "tokenRenewalTask", mockAmqpsDeviceAuthenticationCBSTokenRenewalTask);
+        Deencapsulation.setField(amqpsSessionDeviceOperation, "authenticationLock", mockLock);
+        Deencapsulation.setField(amqpsSessionDeviceOperation, "cbsCorrelationIdList", mockListUUID);
+        amqpsSessionDeviceOperation.close();
+
+        // act
+        amqpsSessionDeviceOperation.authenticate();
+        amqpsSessionDeviceOperation.authenticate();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockAmqpsTokenRenewalScheduler.cancel(mockAmqpsDeviceAuthenticationCBSTokenRenewalTask);
+                times = 1;
+                mockAmqpsTokenRenewalScheduler.schedule(mockAmqpsDeviceAuthenticationCBSTokenRenewalTask, expectedRenewalTimeMillisecs);
+                times = 1;
+            }
+        };
+    }
+
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_049: [The function shall set the authentication state to authenticated if the authentication type is not CBS.]
     @Test
     public void authenticateSAS() throws IllegalArgumentException, IOException
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
 
         new NonStrictExpectations()
         {
@@ -313,7 +366,7 @@ public class AmqpsSessionDeviceOperationTest
     {
         // arrange
         final int MAX_WAIT_TO_AUTHENTICATE = 10*1000;
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "authenticationLock", mockLock);
 
         new NonStrictExpectations()
@@ -339,9 +392,8 @@ public class AmqpsSessionDeviceOperationTest
         // arrange
         final long tokenValidSecs = 3600;
         final long expectedRenewalTimeMillisecs = 2700 * 1000;
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
-        Deencapsulation.setField(amqpsSessionDeviceOperation, "taskSchedulerTokenRenewal", mockScheduledExecutorService);
 
         new NonStrictExpectations()
         {
@@ -366,14 +418,71 @@ public class AmqpsSessionDeviceOperationTest
         new Verifications()
         {
             {
-                mockScheduledExecutorService.shutdownNow();
-                times = 1;
-                mockScheduledExecutorService.scheduleAtFixedRate((AmqpsDeviceAuthenticationCBSTokenRenewalTask)any, 0, expectedRenewalTimeMillisecs, TimeUnit.MILLISECONDS);
+                mockAmqpsTokenRenewalScheduler.schedule((AmqpsDeviceAuthenticationCBSTokenRenewalTask)any, expectedRenewalTimeMillisecs);
                 times = 1;
             }
         };
     }
 
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_28_013: [The function shall set the authentication state to authenticating and return without waiting for the authentication message reply, so the renewals of the other devices are not delayed.]
+    @Test
+    public void renewTokenDoesNotWaitForUnansweredRenewalOfOtherSession() throws IllegalArgumentException, IOException, InterruptedException
+    {
+        // arrange
+        final String linkName = "linkName";
+        final AmqpsSessionDeviceOperation unansweredSession = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
+        final AmqpsSessionDeviceOperation answeredSession = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
+        final List<UUID> unansweredCorrelationIdList = Collections.synchronizedList(new ArrayList<UUID>());
+        final List<UUID> answeredCorrelationIdList = Collections.synchronizedList(new ArrayList<UUID>());
+        Deencapsulation.setField(unansweredSession, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
+        Deencapsulation.setField(answeredSession, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
+        Deencapsulation.setField(unansweredSession, "cbsCorrelationIdList", unansweredCorrelationIdList);
+        Deencapsulation.setField(answeredSession, "cbsCorrelationIdList", answeredCorrelationIdList);
+        Deencapsulation.setField(unansweredSession, "authenticationLock", mockLock);
+        Deencapsulation.setField(answeredSession, "authenticationLock", mockLock);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceClientConfig.getAuthenticationType();
+                result = DeviceClientConfig.AuthType.CBS;
+                mockDeviceClientConfig.getSasTokenAuthentication();
+                result = mockIotHubSasTokenAuthenticationProvider;
+                mockIotHubSasTokenAuthenticationProvider.getTokenValidSecs();
+                result = 3600;
+            }
+        };
+
+        // act
+        unansweredSession.renewToken();
+        answeredSession.renewToken();
+
+        // assert
+        assertEquals(1, unansweredCorrelationIdList.size());
+        assertEquals(1, answeredCorrelationIdList.size());
+        final UUID answeredCorrelationId = answeredCorrelationIdList.get(0);
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsDeviceAuthentication, "getMessageFromReceiverLink", linkName);
+                result = mockAmqpsMessage;
+                Deencapsulation.invoke(mockAmqpsDeviceAuthentication, "authenticationMessageReceived", mockAmqpsMessage, answeredCorrelationId);
+                result = true;
+            }
+        };
+        Deencapsulation.invoke(answeredSession, "getMessageFromReceiverLink", linkName);
+
+        assertEquals(AmqpsDeviceAuthenticationState.AUTHENTICATING, unansweredSession.getAmqpsAuthenticatorState());
+        assertEquals(AmqpsDeviceAuthenticationState.AUTHENTICATED, answeredSession.getAmqpsAuthenticatorState());
+        new Verifications()
+        {
+            {
+                mockLock.waitLock(anyLong);
+                times = 0;
+            }
+        };
+    }
+
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_050: [The function shall renew the sas token if the authentication type is CBS and the authentication state is authenticated.]
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_051: [The function start the authentication with the new token.]
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_052: [The function shall restart the scheduler with the calculated renewal period if the authentication type is CBS. ]
@@ -383,9 +492,8 @@ public class AmqpsSessionDeviceOperationTest
         // arrange
         final long tokenValidSecs = 3600;
         final long expectedRenewalTimeMillisecs = 2700 * 1000;
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
-        Deencapsulation.setField(amqpsSessionDeviceOperation, "taskSchedulerTokenRenewal", mockScheduledExecutorService);
 
         new NonStrictExpectations()
         {
@@ -410,11 +518,7 @@ public class AmqpsSessionDeviceOperationTest
         new Verifications()
         {
             {
-                mockScheduledExecutorService.shutdownNow();
-                times = 0;
-                mockExecutors.newScheduledThreadPool(1);
-                times = 0;
-                mockScheduledExecutorService.scheduleAtFixedRate((AmqpsDeviceAuthenticationCBSTokenRenewalTask)any, 0, expectedRenewalTimeMillisecs, TimeUnit.MILLISECONDS);
+                mockAmqpsTokenRenewalScheduler.schedule((AmqpsDeviceAuthenticationCBSTokenRenewalTask)any, anyLong);
                 times = 0;
             }
         };
@@ -430,7 +534,7 @@ public class AmqpsSessionDeviceOperationTest
     public void getAmqpsAuthenticatorState()
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.UNKNOWN);
 
         // act
@@ -445,7 +549,7 @@ public class AmqpsSessionDeviceOperationTest
     public void operationLinksOpenedTrue() throws IllegalArgumentException, IOException
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         ArrayList<AmqpsDeviceOperations> operationList = new ArrayList<>();
         operationList.add(mockAmqpsDeviceTelemetry);
         operationList.add(mockAmqpsDeviceMethods);
@@ -477,7 +581,7 @@ public class AmqpsSessionDeviceOperationTest
     public void operationLinksOpenedFalse() throws IllegalArgumentException, IOException
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         ArrayList<AmqpsDeviceOperations> operationList = new ArrayList<>();
         operationList.add(mockAmqpsDeviceTelemetry);
         operationList.add(mockAmqpsDeviceMethods);
@@ -508,7 +612,7 @@ public class AmqpsSessionDeviceOperationTest
     public void openLinks() throws IllegalArgumentException, IOException
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
 
         // act
@@ -529,7 +633,7 @@ public class AmqpsSessionDeviceOperationTest
     public void closeLinks() throws IllegalArgumentException, IOException
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
 
         // act
         Deencapsulation.invoke(amqpsSessionDeviceOperation, "closeLinks");
@@ -545,12 +649,50 @@ public class AmqpsSessionDeviceOperationTest
     }
 
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_011: [The function shall call initLink on all device operations.**]**]
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_28_005: [The function shall call initLink on the device operation that owns the link, if any.]
     @Test
     public void initLink() throws IllegalArgumentException, IOException
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final String linkName = "linkName";
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
+        setLinkOwner(amqpsSessionDeviceOperation, linkName, mockAmqpsDeviceTelemetry);
+        new NonStrictExpectations()
+        {
+            {
+                mockLink.getName();
+                result = linkName;
+            }
+        };
+
+        // act
+        Deencapsulation.invoke(amqpsSessionDeviceOperation, "initLink", mockLink);
+
+        // assert
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsDeviceTelemetry, "initLink", mockLink);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_28_005: [The function shall call initLink on the device operation that owns the link, if any.]
+    @Test
+    public void initLinkDoesNothingForUnknownLink() throws IllegalArgumentException, IOException
+    {
+        // arrange
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
+        Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
+        new NonStrictExpectations()
+        {
+            {
+                mockLink.getName();
+                result = "unknownLinkName";
+            }
+        };
 
         // act
         Deencapsulation.invoke(amqpsSessionDeviceOperation, "initLink", mockLink);
@@ -560,7 +702,7 @@ public class AmqpsSessionDeviceOperationTest
         {
             {
                 Deencapsulation.invoke(mockAmqpsDeviceOperations, "initLink", mockLink);
-                times = 3;
+                times = 0;
             }
         };
     }
@@ -570,14 +712,14 @@ public class AmqpsSessionDeviceOperationTest
     public void sendMessageNotAuthenticated() throws IllegalArgumentException, IOException
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATING);
 
         // act
-        Integer deliveryHash = Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+        long deliveryTag = Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
 
         // assert
-        assertTrue(deliveryHash == -1);
+        assertEquals(-1, deliveryTag);
     }
 
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_013: [The function shall return -1 if the deviceId int he connection string is not equal to the deviceId in the config.]
@@ -585,7 +727,7 @@ public class AmqpsSessionDeviceOperationTest
     public void sendMessageDeviceIdMismatch() throws IllegalArgumentException, IOException
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
 
         new NonStrictExpectations()
@@ -599,23 +741,23 @@ public class AmqpsSessionDeviceOperationTest
         };
 
         // act
-        Integer deliveryHash = Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+        long deliveryTag = Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
 
         // assert
-        assertTrue(deliveryHash == -1);
+        assertEquals(-1, deliveryTag);
     }
 
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_014: [The function shall encode the message and copy the contents to the byte buffer.]
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_017: [The function shall set the delivery tag for the sender.]
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_018: [The function shall call sendMessageAndGetDeliveryHash on all device operation objects.]
-    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_019: [The function shall return the delivery hash.]
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_019: [The function shall return the delivery tag if a device operation object sent the message, and -1 otherwise.]
     @Test
     public void sendMessageNoDelivery() throws IllegalArgumentException, IOException
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
-        final byte[] bytes = new byte[1024];
+        final byte[] bytes = new byte[AmqpsBufferPool.DEFAULT_BUFFER_SIZE_IN_BYTES];
         new NonStrictExpectations()
         {
             {
@@ -634,10 +776,10 @@ public class AmqpsSessionDeviceOperationTest
         };
 
         // act
-        Integer actualDeliveryHash = Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+        long actualDeliveryTag = Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
 
         // assert
-        assertTrue(actualDeliveryHash == -1);
+        assertEquals(-1, actualDeliveryTag);
         new Verifications()
         {
             {
@@ -650,14 +792,14 @@ public class AmqpsSessionDeviceOperationTest
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_014: [The function shall encode the message and copy the contents to the byte buffer.]
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_017: [The function shall set the delivery tag for the sender.]
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_018: [The function shall call sendMessageAndGetDeliveryHash on all device operation objects.]
-    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_019: [The function shall return the delivery hash.]
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_019: [The function shall return the delivery tag if a device operation object sent the message, and -1 otherwise.]
     @Test
     public void sendMessageSuccess() throws IllegalArgumentException, IOException
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
-        final byte[] bytes = new byte[1024];
+        final byte[] bytes = new byte[AmqpsBufferPool.DEFAULT_BUFFER_SIZE_IN_BYTES];
         new NonStrictExpectations()
         {
             {
@@ -676,10 +818,10 @@ public class AmqpsSessionDeviceOperationTest
         };
 
         // act
-        Integer actualDeliveryHash = Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+        long actualDeliveryTag = Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
 
         // assert
-        assertTrue(actualDeliveryHash != -1);
+        assertTrue(actualDeliveryTag >= 0);
         new Verifications()
         {
             {
@@ -689,14 +831,46 @@ public class AmqpsSessionDeviceOperationTest
         };
     }
 
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_28_008: [The delivery tag shall be the next number of the delivery tag sequence, encoded by AmqpsDeliveryTag.]
+    @Test
+    public void sendMessageSendsIncreasingDeliveryTags() throws IllegalArgumentException, IOException
+    {
+        // arrange
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
+        Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
+        final byte[] bytes = new byte[AmqpsBufferPool.DEFAULT_BUFFER_SIZE_IN_BYTES];
+        new NonStrictExpectations()
+        {
+            {
+                mockIotHubConnectionString.getDeviceId();
+                result = "deviceId";
+                mockDeviceClientConfig.getDeviceId();
+                result = "deviceId";
+
+                Deencapsulation.invoke(mockAmqpsDeviceTelemetry, "sendMessageAndGetDeliveryHash", MessageType.DEVICE_TELEMETRY, bytes, anyInt, anyInt, bytes);
+                result = mockAmqpsSendReturnValue;
+                Deencapsulation.invoke(mockAmqpsSendReturnValue, "isDeliverySuccessful");
+                result = true;
+            }
+        };
+
+        // act
+        long firstDeliveryTag = Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+        long secondDeliveryTag = Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+
+        // assert
+        assertTrue(firstDeliveryTag >= 0);
+        assertTrue(secondDeliveryTag > firstDeliveryTag);
+    }
+
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_015: [The function shall doubles the buffer if encode throws BufferOverflowException.]
     @Test
     public void sendMessageDoublesBufferIfEncodeThrowsBufferOverflowException() throws IllegalArgumentException, IOException
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
-        final byte[] bytes = new byte[1024];
+        final byte[] bytes = new byte[AmqpsBufferPool.DEFAULT_BUFFER_SIZE_IN_BYTES];
         new NonStrictExpectations()
         {
             {
@@ -716,10 +890,10 @@ public class AmqpsSessionDeviceOperationTest
         };
 
         // act
-        Integer actualDeliveryHash = Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+        long actualDeliveryTag = Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
 
         // assert
-        assertTrue(actualDeliveryHash != -1);
+        assertTrue(actualDeliveryTag >= 0);
         new Verifications()
         {
             {
@@ -729,14 +903,79 @@ public class AmqpsSessionDeviceOperationTest
         };
     }
 
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_28_011: [The function shall take the buffer from the buffer pool, and release it once the message is sent.]
+    @Test
+    public void sendMessageReleasesEncodeBuffers() throws IllegalArgumentException, IOException
+    {
+        // arrange
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
+        Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
+        AmqpsBufferPool bufferPool = new AmqpsBufferPool();
+        Deencapsulation.invoke(amqpsSessionDeviceOperation, "setBufferPool", bufferPool);
+        final byte[] bytes = new byte[AmqpsBufferPool.DEFAULT_BUFFER_SIZE_IN_BYTES];
+        new NonStrictExpectations()
+        {
+            {
+                mockIotHubConnectionString.getDeviceId();
+                result = "deviceId";
+                mockDeviceClientConfig.getDeviceId();
+                result = "deviceId";
+
+                mockProtonMessage.encode(bytes, anyInt, anyInt);
+                result = new BufferOverflowException();
+            }
+        };
+
+        // act
+        Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+        Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+
+        // assert
+        assertEquals(0, bufferPool.getOutstandingCount());
+    }
+
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_28_009: [The function shall throw IllegalArgumentException if the bufferPool is null.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setBufferPoolThrowsIfBufferPoolNull()
+    {
+        // arrange
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
+
+        // act
+        Deencapsulation.invoke(amqpsSessionDeviceOperation, "setBufferPool", new Class[] {AmqpsBufferPool.class}, (AmqpsBufferPool) null);
+    }
+
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_28_010: [The function shall save the bufferPool and set it on all the device operation objects.]
+    @Test
+    public void setBufferPoolSetsPoolOnDeviceOperations()
+    {
+        // arrange
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
+        final AmqpsBufferPool bufferPool = new AmqpsBufferPool();
+
+        // act
+        Deencapsulation.invoke(amqpsSessionDeviceOperation, "setBufferPool", bufferPool);
+
+        // assert
+        assertEquals(bufferPool, Deencapsulation.getField(amqpsSessionDeviceOperation, "bufferPool"));
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsDeviceOperations, "setBufferPool", bufferPool);
+                times = 3;
+            }
+        };
+    }
+
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_020: [The function shall return null if the state is not authenticated or authenticating.]
     @Test
     public void getMessageFromReceiverLinkNotAuthenticated() throws IllegalArgumentException, IOException
     {
         // arrange
         final String linkName = "linkName";
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.NOT_AUTHENTICATED);
+        setLinkOwner(amqpsSessionDeviceOperation, linkName, mockAmqpsDeviceTelemetry);
 
         new NonStrictExpectations()
         {
@@ -759,8 +998,9 @@ public class AmqpsSessionDeviceOperationTest
     {
         // arrange
         final String linkName = "linkName";
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
+        setLinkOwner(amqpsSessionDeviceOperation, linkName, mockAmqpsDeviceTelemetry);
 
         new NonStrictExpectations()
         {
@@ -783,7 +1023,7 @@ public class AmqpsSessionDeviceOperationTest
     {
         // arrange
         final String linkName = "linkName";
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
 
         new NonStrictExpectations()
@@ -819,7 +1059,7 @@ public class AmqpsSessionDeviceOperationTest
         final Integer propertyValue = 200;
         final List<UUID> cbsCorrelationIdList = Collections.synchronizedList(new ArrayList<UUID>());
         cbsCorrelationIdList.add(mockUUID);
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATING);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsDeviceAuthentication", mockAmqpsDeviceAuthentication);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "cbsCorrelationIdList", cbsCorrelationIdList);
@@ -867,7 +1107,7 @@ public class AmqpsSessionDeviceOperationTest
         final String propertyKey = "status-code";
         final Integer propertyValue = 200;
         final List<UUID> cbsCorrelationIdList = Collections.synchronizedList(new ArrayList<UUID>());
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATING);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsDeviceAuthentication", mockAmqpsDeviceAuthentication);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "cbsCorrelationIdList", cbsCorrelationIdList);
@@ -916,7 +1156,7 @@ public class AmqpsSessionDeviceOperationTest
         final Integer propertyValue = 200;
         final List<UUID> cbsCorrelationIdList = Collections.synchronizedList(new ArrayList<UUID>());
         cbsCorrelationIdList.add(mockUUID);
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATING);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsDeviceAuthentication", mockAmqpsDeviceAuthentication);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "cbsCorrelationIdList", cbsCorrelationIdList);
@@ -961,11 +1201,12 @@ public class AmqpsSessionDeviceOperationTest
         final Integer propertyValue = 200;
         final List<UUID> cbsCorrelationIdList = Collections.synchronizedList(new ArrayList<UUID>());
         cbsCorrelationIdList.add(mockUUID);
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.UNKNOWN);
         ArrayList<AmqpsDeviceOperations> operationList = new ArrayList<>();
         operationList.add(mockAmqpsDeviceTelemetry);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsDeviceOperationsList", operationList);
+        setLinkOwner(amqpsSessionDeviceOperation, linkName, mockAmqpsDeviceTelemetry);
 
         new NonStrictExpectations()
         {
@@ -990,14 +1231,64 @@ public class AmqpsSessionDeviceOperationTest
         };
     }
 
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_28_006: [The function shall only read the message from the device operation that owns the link, and return null if there is none.]
+    @Test
+    public void getMessageFromReceiverLinkUnknownLinkReturnsNull() throws IllegalArgumentException, IOException
+    {
+        // arrange
+        final String linkName = "linkName";
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
+        Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
+
+        // act
+        AmqpsMessage actualAmqpsMessage = Deencapsulation.invoke(amqpsSessionDeviceOperation, "getMessageFromReceiverLink", linkName);
+
+        // assert
+        assertNull(actualAmqpsMessage);
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsDeviceOperations, "getMessageFromReceiverLink", linkName);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_28_004: [The constructor shall index the device operations by the names of their sender and receiver links.]
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_28_007: [The function shall return the names of the sender and receiver links of all device operations.]
+    @Test
+    public void getLinkNamesReturnsOperationLinkNames()
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsDeviceOperations, "getSenderLinkTag");
+                result = "senderLinkName";
+                Deencapsulation.invoke(mockAmqpsDeviceOperations, "getReceiverLinkTag");
+                result = "receiverLinkName";
+            }
+        };
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
+
+        // act
+        Set<String> linkNames = Deencapsulation.invoke(amqpsSessionDeviceOperation, "getLinkNames");
+
+        // assert
+        assertEquals(2, linkNames.size());
+        assertTrue(linkNames.contains("senderLinkName"));
+        assertTrue(linkNames.contains("receiverLinkName"));
+    }
+
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_024: [The function shall return true if any of the operation's link name is a match and return false otherwise.]
     @Test
     public void isLinkFoundTrue()
     {
         // arrange
         final String linkName = "linkName";
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
+        setLinkOwner(amqpsSessionDeviceOperation, linkName, mockAmqpsDeviceTelemetry);
 
         new NonStrictExpectations()
         {
@@ -1020,7 +1311,7 @@ public class AmqpsSessionDeviceOperationTest
     {
         // arrange
         final String linkName = "linkName";
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
         Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
 
         new NonStrictExpectations()
@@ -1044,7 +1335,7 @@ public class AmqpsSessionDeviceOperationTest
     public void convertToProtonSuccess() throws IllegalArgumentException, InterruptedException
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
 
         new NonStrictExpectations()
         {
@@ -1067,7 +1358,7 @@ public class AmqpsSessionDeviceOperationTest
     public void convertFromoProtonSuccess() throws IllegalArgumentException, InterruptedException
     {
         // arrange
-        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, mockAmqpsTokenRenewalScheduler);
 
         new NonStrictExpectations()
         {
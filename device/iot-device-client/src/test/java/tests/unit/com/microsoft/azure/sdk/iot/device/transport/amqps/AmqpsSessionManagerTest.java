@@ -9,6 +9,10 @@ import org.junit.Test;
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -40,6 +44,9 @@ public class AmqpsSessionManagerTest
     @Mocked
     ScheduledExecutorService mockScheduledExecutorService;
 
+    @Mocked
+    AmqpsTokenRenewalScheduler mockAmqpsTokenRenewalScheduler;
+
     @Mocked
     ObjectLock mockObjectLock;
 
@@ -79,6 +86,12 @@ public class AmqpsSessionManagerTest
     @Mocked
     AmqpsConvertFromProtonReturnValue mockAmqpsConvertFromProtonReturnValue;
 
+    private static void indexDeviceSession(AmqpsSessionManager amqpsSessionManager, String indexName, String key, AmqpsSessionDeviceOperation amqpsSessionDeviceOperation)
+    {
+        Map<String, AmqpsSessionDeviceOperation> index = Deencapsulation.getField(amqpsSessionManager, indexName);
+        index.put(key, amqpsSessionDeviceOperation);
+    }
+
     // Tests_SRS_AMQPSESSIONMANAGER_12_001: [The constructor shall throw IllegalArgumentException if the deviceClientConfig parameter is null.]
     @Test (expected = IllegalArgumentException.class)
     public void constructorThrowsIfDeviceClientIsNull() throws IllegalArgumentException
@@ -113,7 +126,7 @@ public class AmqpsSessionManagerTest
                 result = DeviceClientConfig.AuthType.SAS_TOKEN;
                 new AmqpsDeviceAuthenticationSAS(mockDeviceClientConfig);
                 result = mockAmqpsDeviceAuthenticationSAS;
-                new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationSAS);
+                new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationSAS, (AmqpsTokenRenewalScheduler) any);
                 result = mockAmqpsSessionDeviceOperation;
             }
         };
@@ -140,6 +153,7 @@ public class AmqpsSessionManagerTest
     // Tests_SRS_AMQPSESSIONMANAGER_12_005: [The constructor shall create AmqpsDeviceAuthenticationCBSTokenRenewalTask if the authentication type is CBS.]
     // Tests_SRS_AMQPSESSIONMANAGER_12_006: [The constructor shall create and start a scheduler for AmqpsDeviceAuthenticationCBSTokenRenewalTask if the authentication type is CBS.]
     // Tests_SRS_AMQPSESSIONMANAGER_12_007: [The constructor shall add the create a AmqpsSessionDeviceOperation with the given deviceClientConfig.]
+    // Tests_SRS_AMQPSESSIONMANAGER_28_001: [The constructor shall create the token renewal scheduler shared by all the devices if the authentication type is CBS.]
     @Test
     public void constructorCreatesCBS() throws IllegalArgumentException
     {
@@ -151,7 +165,7 @@ public class AmqpsSessionManagerTest
                 result = DeviceClientConfig.AuthType.CBS;
                 new AmqpsDeviceAuthenticationCBS(mockDeviceClientConfig);
                 result = mockAmqpsDeviceAuthenticationCBS;
-                new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationCBS);
+                new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationCBS, (AmqpsTokenRenewalScheduler) any);
                 result = mockAmqpsSessionDeviceOperation;
             }
         };
@@ -170,6 +184,10 @@ public class AmqpsSessionManagerTest
             {
                 new AmqpsDeviceAuthenticationCBS(mockDeviceClientConfig);
                 times = 1;
+                new AmqpsTokenRenewalScheduler();
+                times = 1;
+                new AmqpsSessionDeviceOperation(mockDeviceClientConfig, (AmqpsDeviceAuthentication) any, (AmqpsTokenRenewalScheduler) withNotNull());
+                times = 1;
             }
         };
     }
@@ -186,11 +204,19 @@ public class AmqpsSessionManagerTest
     }
 
     // Tests_SRS_AMQPSESSIONMANAGER_12_009: [The function shall create a new  AmqpsSessionDeviceOperation with the given deviceClietnConfig and add it to the session list.]
+    // Tests_SRS_AMQPSESSIONMANAGER_28_004: [The function shall index the new AmqpsSessionDeviceOperation by the device id.]
     @Test
     public void addDeviceOperationSessionSuccess() throws IllegalArgumentException
     {
         // arrange
         AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig);
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceClientConfig.getDeviceId();
+                result = "deviceId";
+            }
+        };
 
         // act
         Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceAuthentication", mockAmqpsDeviceAuthenticationCBS);
@@ -199,20 +225,125 @@ public class AmqpsSessionManagerTest
         // assert
         ArrayList<AmqpsSessionDeviceOperation> actualList =  Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionList");
         assertEquals(actualList.size(), 2);
+        Map<String, AmqpsSessionDeviceOperation> actualIndex = Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionsByDeviceId");
+        assertEquals(actualList.get(1), actualIndex.get("deviceId"));
 
         new Verifications()
         {
             {
-                new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationCBS);
+                new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationCBS, (AmqpsTokenRenewalScheduler) any);
                 times = 1;
             }
         };
     }
 
+    // Tests_SRS_AMQPSESSIONMANAGER_28_015: [The function shall remove the device session already registered for the device id, if any.]
+    @Test
+    public void addDeviceOperationSessionReplacesSessionOfSameDevice() throws IllegalArgumentException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceClientConfig.getDeviceId();
+                result = "deviceId";
+            }
+        };
+        AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig);
+        ArrayList<AmqpsSessionDeviceOperation> actualList =  Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionList");
+        final AmqpsSessionDeviceOperation previousSession = actualList.get(0);
+
+        // act
+        Deencapsulation.invoke(amqpsSessionManager, "addDeviceOperationSession", mockDeviceClientConfig);
+
+        // assert
+        assertEquals(1, actualList.size());
+        assertNotSame(previousSession, actualList.get(0));
+        Map<String, AmqpsSessionDeviceOperation> actualIndex = Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionsByDeviceId");
+        assertEquals(1, actualIndex.size());
+        assertEquals(actualList.get(0), actualIndex.get("deviceId"));
+
+        new Verifications()
+        {
+            {
+                previousSession.close();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSESSIONMANAGER_28_016: [The function shall throw IllegalArgumentException if the deviceId parameter is null.]
+    @Test (expected = IllegalArgumentException.class)
+    public void removeDeviceOperationSessionThrowsIfDeviceIdIsNull() throws IllegalArgumentException
+    {
+        // arrange
+        AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig);
+
+        // act
+        Deencapsulation.invoke(amqpsSessionManager, "removeDeviceOperationSession", String.class);
+    }
+
+    // Tests_SRS_AMQPSESSIONMANAGER_28_017: [The function shall remove the device session of the device id from the device id index, and do nothing else if there is none.]
+    // Tests_SRS_AMQPSESSIONMANAGER_28_018: [The function shall remove the device session from the session list and from the link name index, then close it.]
+    @Test
+    public void removeDeviceOperationSessionStopsRoutingToTheDevice() throws IllegalArgumentException
+    {
+        // arrange
+        final AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig);
+        Deencapsulation.setField(amqpsSessionManager, "session", mockSession);
+
+        ArrayList<AmqpsSessionDeviceOperation> sessionList = new ArrayList<>();
+        sessionList.add(mockAmqpsSessionDeviceOperation);
+        sessionList.add(mockAmqpsSessionDeviceOperation1);
+        Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceSessionList", sessionList);
+        indexDeviceSession(amqpsSessionManager, "amqpsDeviceSessionsByDeviceId", "otherDeviceId", mockAmqpsSessionDeviceOperation);
+        indexDeviceSession(amqpsSessionManager, "amqpsDeviceSessionsByDeviceId", "deviceId", mockAmqpsSessionDeviceOperation1);
+        indexDeviceSession(amqpsSessionManager, "amqpsDeviceSessionsByLinkName", "otherLinkName", mockAmqpsSessionDeviceOperation);
+        indexDeviceSession(amqpsSessionManager, "amqpsDeviceSessionsByLinkName", "linkName", mockAmqpsSessionDeviceOperation1);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockIotHubConnectionString.getDeviceId();
+                result = "deviceId";
+            }
+        };
+
+        // act
+        Deencapsulation.invoke(amqpsSessionManager, "removeDeviceOperationSession", "deviceId");
+        Deencapsulation.invoke(amqpsSessionManager, "removeDeviceOperationSession", "unknownDeviceId");
+        long deliveryTag = Deencapsulation.invoke(amqpsSessionManager, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+
+        // assert
+        assertEquals(-1, deliveryTag);
+        assertEquals(1, sessionList.size());
+        assertEquals(mockAmqpsSessionDeviceOperation, sessionList.get(0));
+        Map<String, AmqpsSessionDeviceOperation> deviceIdIndex = Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionsByDeviceId");
+        assertEquals(1, deviceIdIndex.size());
+        assertEquals(mockAmqpsSessionDeviceOperation, deviceIdIndex.get("otherDeviceId"));
+        Map<String, AmqpsSessionDeviceOperation> linkNameIndex = Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionsByLinkName");
+        assertEquals(1, linkNameIndex.size());
+        assertEquals(mockAmqpsSessionDeviceOperation, linkNameIndex.get("otherLinkName"));
+
+        new Verifications()
+        {
+            {
+                mockAmqpsSessionDeviceOperation1.close();
+                times = 1;
+                mockAmqpsSessionDeviceOperation.close();
+                times = 0;
+                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation1, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+                times = 0;
+            }
+        };
+    }
+
     // Tests_SRS_AMQPSESSIONMANAGER_12_010: [The function shall call all device session to closeNow links.]
     // Tests_SRS_AMQPSESSIONMANAGER_12_011: [The function shall closeNow the authentication links.]
     // Tests_SRS_AMQPSESSIONMANAGER_12_012: [The function shall closeNow the session.]
     // Tests_SRS_AMQPSESSIONMANAGER_12_043: [THe function shall shut down the scheduler.]
+    // Tests_SRS_AMQPSESSIONMANAGER_28_002: [The function shall cancel all the token renewals of the connection, and keep the token renewal scheduler for the next open.]
+    // Tests_SRS_AMQPSESSIONMANAGER_28_005: [The function shall remove all the links from the link name index.]
     @Test
     public void closeNowSuccess() throws IllegalArgumentException, InterruptedException
     {
@@ -227,6 +358,8 @@ public class AmqpsSessionManagerTest
         sessionList.add(mockAmqpsSessionDeviceOperation1);
         Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceSessionList", sessionList);
         Deencapsulation.setField(amqpsSessionManager, "taskSchedulerCBSSend", mockScheduledExecutorService);
+        Deencapsulation.setField(amqpsSessionManager, "tokenRenewalScheduler", mockAmqpsTokenRenewalScheduler);
+        indexDeviceSession(amqpsSessionManager, "amqpsDeviceSessionsByLinkName", "linkName", mockAmqpsSessionDeviceOperation);
 
         new NonStrictExpectations()
         {
@@ -246,6 +379,8 @@ public class AmqpsSessionManagerTest
         assertEquals(2, actualList.size());
         Session actualSession =  Deencapsulation.getField(amqpsSessionManager, "session");
         assertNull(actualSession);
+        Map<String, AmqpsSessionDeviceOperation> actualIndex = Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionsByLinkName");
+        assertTrue(actualIndex.isEmpty());
 
         new Verifications()
         {
@@ -254,6 +389,8 @@ public class AmqpsSessionManagerTest
                 times = 1;
                 mockScheduledExecutorService.shutdownNow();
                 times = 1;
+                mockAmqpsTokenRenewalScheduler.cancelAll();
+                times = 1;
                 Deencapsulation.invoke(mockAmqpsSessionDeviceOperation, "close");
                 times = 1;
                 Deencapsulation.invoke(mockAmqpsSessionDeviceOperation1, "close");
@@ -266,6 +403,49 @@ public class AmqpsSessionManagerTest
         };
     }
 
+    // Tests_SRS_AMQPSESSIONMANAGER_28_003: [The function shall return the number of pending renewals of the token renewal scheduler, or 0 if there is no token renewal scheduler.]
+    @Test
+    public void getPendingTokenRenewalCountReturnsSchedulerCount() throws IllegalArgumentException
+    {
+        // arrange
+        AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig);
+        Deencapsulation.setField(amqpsSessionManager, "tokenRenewalScheduler", mockAmqpsTokenRenewalScheduler);
+        new NonStrictExpectations()
+        {
+            {
+                mockAmqpsTokenRenewalScheduler.getPendingRenewalCount();
+                result = 5;
+            }
+        };
+
+        // act
+        int pendingRenewals = Deencapsulation.invoke(amqpsSessionManager, "getPendingTokenRenewalCount");
+
+        // assert
+        assertEquals(5, pendingRenewals);
+    }
+
+    // Tests_SRS_AMQPSESSIONMANAGER_28_003: [The function shall return the number of pending renewals of the token renewal scheduler, or 0 if there is no token renewal scheduler.]
+    @Test
+    public void getPendingTokenRenewalCountReturnsZeroWithoutScheduler() throws IllegalArgumentException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceClientConfig.getAuthenticationType();
+                result = DeviceClientConfig.AuthType.SAS_TOKEN;
+            }
+        };
+        AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig);
+
+        // act
+        int pendingRenewals = Deencapsulation.invoke(amqpsSessionManager, "getPendingTokenRenewalCount");
+
+        // assert
+        assertEquals(0, pendingRenewals);
+    }
+
     // Tests_SRS_AMQPSESSIONMANAGER_12_014: [The function shall do nothing if the authentication is not open.]
     @Test
     public void authenticateDoesNothing() throws IllegalArgumentException, InterruptedException
@@ -405,6 +585,41 @@ public class AmqpsSessionManagerTest
         };
     }
 
+    // Tests_SRS_AMQPSESSIONMANAGER_28_010: [Before opening the links of a device session, the function shall index the device session by the names of its links.]
+    @Test
+    public void openDeviceOperationLinksIndexesLinkNames() throws IllegalArgumentException, InterruptedException
+    {
+        // arrange
+        final Set<String> linkNames = new HashSet<>();
+        linkNames.add("senderLinkName");
+        linkNames.add("receiverLinkName");
+        final AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig);
+        Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceAuthentication", mockAmqpsDeviceAuthenticationCBS);
+        Deencapsulation.setField(amqpsSessionManager, "session", mockSession);
+
+        ArrayList<AmqpsSessionDeviceOperation> sessionList = new ArrayList<>();
+        sessionList.add(mockAmqpsSessionDeviceOperation);
+        Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceSessionList", sessionList);
+        Deencapsulation.setField(amqpsSessionManager, "openLinksLock", mockObjectLock);
+
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation, "getLinkNames");
+                result = Collections.unmodifiableSet(linkNames);
+            }
+        };
+
+        // act
+        Deencapsulation.invoke(amqpsSessionManager, "openDeviceOperationLinks");
+
+        // assert
+        Map<String, AmqpsSessionDeviceOperation> actualIndex = Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionsByLinkName");
+        assertEquals(2, actualIndex.size());
+        assertEquals(mockAmqpsSessionDeviceOperation, actualIndex.get("senderLinkName"));
+        assertEquals(mockAmqpsSessionDeviceOperation, actualIndex.get("receiverLinkName"));
+    }
+
     // Tests_SRS_AMQPSESSIONMANAGER_12_023: [The function shall initialize the session member variable from the connection if the session is null.]
     // Tests_SRS_AMQPSESSIONMANAGER_12_024: [The function shall open the initialized session.]
     @Test
@@ -521,11 +736,68 @@ public class AmqpsSessionManagerTest
         };
     }
 
+    // Tests_SRS_AMQPSESSIONMANAGER_28_012: [The function shall set the size of the buffers of the connection to the maximum frame size of the remote peer.]
+    @Test
+    public void onConnectionRemoteOpenSizesBufferPool() throws IllegalArgumentException
+    {
+        // arrange
+        final AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.getRemoteMaxFrameSize();
+                result = 65536;
+            }
+        };
+
+        // act
+        Deencapsulation.invoke(amqpsSessionManager, "onConnectionRemoteOpen", mockTransport);
+
+        // assert
+        AmqpsBufferPool bufferPool = Deencapsulation.getField(amqpsSessionManager, "bufferPool");
+        assertEquals(65536, bufferPool.getBufferSize());
+    }
+
+    // Tests_SRS_AMQPSESSIONMANAGER_28_013: [The constructor shall set the buffer pool of the connection on the authentication object.]
+    // Tests_SRS_AMQPSESSIONMANAGER_28_014: [The function shall set the buffer pool of the connection on the new AmqpsSessionDeviceOperation.]
+    @Test
+    public void devicesShareTheBufferPoolOfTheConnection() throws IllegalArgumentException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceClientConfig.getAuthenticationType();
+                result = DeviceClientConfig.AuthType.CBS;
+                new AmqpsSessionDeviceOperation(mockDeviceClientConfig, (AmqpsDeviceAuthentication) any, (AmqpsTokenRenewalScheduler) any);
+                result = mockAmqpsSessionDeviceOperation;
+            }
+        };
+        final AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig);
+
+        // act
+        Deencapsulation.invoke(amqpsSessionManager, "addDeviceOperationSession", mockDeviceClientConfig);
+
+        // assert
+        final AmqpsBufferPool bufferPool = Deencapsulation.getField(amqpsSessionManager, "bufferPool");
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsDeviceAuthenticationCBS, "setBufferPool", bufferPool);
+                times = 1;
+                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation, "setBufferPool", bufferPool);
+                times = 2;
+            }
+        };
+    }
+
     // Tests_SRS_AMQPSESSIONMANAGER_12_027: [The function shall call authentication initLink on all session list member if the authentication is open and the session is not null.]
+    // Tests_SRS_AMQPSESSIONMANAGER_28_006: [The function shall only call initLink on the device session that owns the link, if any.]
     @Test
     public void onLinkInitCallsDeviceSessionInitLink() throws IllegalArgumentException, InterruptedException
     {
         // arrange
+        final String linkName = "linkName";
         final AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig);
         Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceAuthentication", mockAmqpsDeviceAuthenticationCBS);
         Deencapsulation.setField(amqpsSessionManager, "session", mockSession);
@@ -534,12 +806,15 @@ public class AmqpsSessionManagerTest
         sessionList.add(mockAmqpsSessionDeviceOperation);
         sessionList.add(mockAmqpsSessionDeviceOperation1);
         Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceSessionList", sessionList);
+        indexDeviceSession(amqpsSessionManager, "amqpsDeviceSessionsByLinkName", linkName, mockAmqpsSessionDeviceOperation1);
 
         new NonStrictExpectations()
         {
             {
                 mockAmqpsDeviceAuthenticationCBS.operationLinksOpened();
                 result = true;
+                mockLink.getName();
+                result = linkName;
             }
         };
 
@@ -551,7 +826,7 @@ public class AmqpsSessionManagerTest
         {
             {
                 Deencapsulation.invoke(mockAmqpsSessionDeviceOperation, "initLink", mockLink);
-                times = 1;
+                times = 0;
                 Deencapsulation.invoke(mockAmqpsSessionDeviceOperation1, "initLink", mockLink);
                 times = 1;
             }
@@ -671,6 +946,7 @@ public class AmqpsSessionManagerTest
     }
 
     // Tests_SRS_AMQPSESSIONMANAGER_12_031: [The function shall call all all device session's isLinkFound, and if both links are opened notify the lock.]
+    // Tests_SRS_AMQPSESSIONMANAGER_28_011: [The function shall only call isLinkFound and operationLinksOpened on the device session that owns the link, if any.]
     @Test
     public void onLinkRemoteOpenNotify() throws IllegalArgumentException, InterruptedException
     {
@@ -685,6 +961,7 @@ public class AmqpsSessionManagerTest
         Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceSessionList", sessionList);
 
         Deencapsulation.setField(amqpsSessionManager, "openLinksLock", mockObjectLock);
+        indexDeviceSession(amqpsSessionManager, "amqpsDeviceSessionsByLinkName", linkName, mockAmqpsSessionDeviceOperation);
 
         new Expectations()
         {
@@ -722,12 +999,12 @@ public class AmqpsSessionManagerTest
         };
     }
 
-    // Tests_SRS_AMQPSESSIONMANAGER_12_032: [The function shall call sendMessage on all session list member and if there is a successful send return with the deliveryHash, otherwise return -1.]
+    // Tests_SRS_AMQPSESSIONMANAGER_12_032: [The function shall call sendMessage on all session list member and if there is a successful send return with the deliveryTag, otherwise return -1.]
     @Test
     public void sendMessageNoSender() throws IllegalArgumentException, InterruptedException
     {
         // arrange
-        final String linkName = "linkName";
+        final String deviceId = "deviceId";
         final AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig);
         Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceAuthentication", mockAmqpsDeviceAuthenticationCBS);
         Deencapsulation.setField(amqpsSessionManager, "session", mockSession);
@@ -736,30 +1013,32 @@ public class AmqpsSessionManagerTest
         sessionList.add(mockAmqpsSessionDeviceOperation);
         sessionList.add(mockAmqpsSessionDeviceOperation1);
         Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceSessionList", sessionList);
+        indexDeviceSession(amqpsSessionManager, "amqpsDeviceSessionsByDeviceId", deviceId, mockAmqpsSessionDeviceOperation);
 
-        new StrictExpectations()
+        new NonStrictExpectations()
         {
             {
+                mockIotHubConnectionString.getDeviceId();
+                result = deviceId;
                 Deencapsulation.invoke(mockAmqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
                 result = -1;
-                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation1, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
-                result = -1;
             }
         };
 
         // act
-        Integer deliveryHash = Deencapsulation.invoke(amqpsSessionManager, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+        long deliveryTag = Deencapsulation.invoke(amqpsSessionManager, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
 
         // assert
-        assertTrue(deliveryHash == -1);
+        assertEquals(-1, deliveryTag);
     }
 
-    // Tests_SRS_AMQPSESSIONMANAGER_12_032: [The function shall call sendMessage on all session list member and if there is a successful send return with the deliveryHash, otherwise return -1.]
+    // Tests_SRS_AMQPSESSIONMANAGER_12_032: [The function shall call sendMessage on all session list member and if there is a successful send return with the deliveryTag, otherwise return -1.]
+    // Tests_SRS_AMQPSESSIONMANAGER_28_008: [The function shall only call sendMessage on the device session of the device id in the iotHubConnectionString, and return -1 if there is none.]
     @Test
     public void sendMessageSuccess() throws IllegalArgumentException, InterruptedException
     {
         // arrange
-        final String linkName = "linkName";
+        final String deviceId = "deviceId";
         final AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig);
         Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceAuthentication", mockAmqpsDeviceAuthenticationCBS);
         Deencapsulation.setField(amqpsSessionManager, "session", mockSession);
@@ -768,22 +1047,61 @@ public class AmqpsSessionManagerTest
         sessionList.add(mockAmqpsSessionDeviceOperation);
         sessionList.add(mockAmqpsSessionDeviceOperation1);
         Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceSessionList", sessionList);
+        indexDeviceSession(amqpsSessionManager, "amqpsDeviceSessionsByDeviceId", deviceId, mockAmqpsSessionDeviceOperation1);
 
-        new StrictExpectations()
+        new NonStrictExpectations()
         {
             {
-                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
-                result = -1;
+                mockIotHubConnectionString.getDeviceId();
+                result = deviceId;
                 Deencapsulation.invoke(mockAmqpsSessionDeviceOperation1, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
-                result = 42;
+                result = 42L;
+            }
+        };
+
+        // act
+        long deliveryTag = Deencapsulation.invoke(amqpsSessionManager, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+
+        // assert
+        assertEquals(42, deliveryTag);
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSESSIONMANAGER_28_008: [The function shall only call sendMessage on the device session of the device id in the iotHubConnectionString, and return -1 if there is none.]
+    @Test
+    public void sendMessageUnknownDeviceReturnsMinusOne() throws IllegalArgumentException, InterruptedException
+    {
+        // arrange
+        final AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig);
+        Deencapsulation.setField(amqpsSessionManager, "session", mockSession);
+        indexDeviceSession(amqpsSessionManager, "amqpsDeviceSessionsByDeviceId", "deviceId", mockAmqpsSessionDeviceOperation);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockIotHubConnectionString.getDeviceId();
+                result = "otherDeviceId";
             }
         };
 
         // act
-        Integer deliveryHash = Deencapsulation.invoke(amqpsSessionManager, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+        long deliveryTag = Deencapsulation.invoke(amqpsSessionManager, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
 
         // assert
-        assertEquals((Integer)42, deliveryHash);
+        assertEquals(-1, deliveryTag);
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation, "sendMessage", mockProtonMessage, MessageType.DEVICE_TELEMETRY, mockIotHubConnectionString);
+                times = 0;
+            }
+        };
     }
 
     // Tests_SRS_AMQPSESSIONMANAGER_12_033: [The function shall do nothing and return null if the session is not open.]
@@ -832,6 +1150,7 @@ public class AmqpsSessionManagerTest
     }
 
     // Tests_SRS_AMQPSESSIONMANAGER_12_035: [The function shall call device sessions getMessageFromReceiverLink if the authentication is open.]
+    // Tests_SRS_AMQPSESSIONMANAGER_28_009: [The function shall only call getMessageFromReceiverLink on the device session that owns the link, and return null if there is none.]
     @Test
     public void getMessageFromReceiverLinkCallsDeviceSessionsAuthenticated() throws IllegalArgumentException, InterruptedException
     {
@@ -845,6 +1164,7 @@ public class AmqpsSessionManagerTest
         sessionList.add(mockAmqpsSessionDeviceOperation);
         sessionList.add(mockAmqpsSessionDeviceOperation1);
         Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceSessionList", sessionList);
+        indexDeviceSession(amqpsSessionManager, "amqpsDeviceSessionsByLinkName", linkName, mockAmqpsSessionDeviceOperation);
 
         new Expectations()
         {
@@ -904,6 +1224,7 @@ public class AmqpsSessionManagerTest
     }
 
     // Tests_SRS_AMQPSESSIONMANAGER_12_038: [The function shall call all device session's isLinkFound, and if any of them true return true otherwise return false.]
+    // Tests_SRS_AMQPSESSIONMANAGER_28_007: [The function shall only call isLinkFound on the device session that owns the link, if any.]
     @Test
     public void isLinkFoundCallsDeviceSessions() throws IllegalArgumentException, InterruptedException
     {
@@ -917,6 +1238,7 @@ public class AmqpsSessionManagerTest
         sessionList.add(mockAmqpsSessionDeviceOperation);
         sessionList.add(mockAmqpsSessionDeviceOperation1);
         Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceSessionList", sessionList);
+        indexDeviceSession(amqpsSessionManager, "amqpsDeviceSessionsByLinkName", linkName, mockAmqpsSessionDeviceOperation);
 
         new Expectations()
         {
@@ -935,6 +1257,47 @@ public class AmqpsSessionManagerTest
         assertEquals(true, isFound);
     }
 
+    // Tests_SRS_AMQPSESSIONMANAGER_28_007: [The function shall only call isLinkFound on the device session that owns the link, if any.]
+    // Tests_SRS_AMQPSESSIONMANAGER_28_009: [The function shall only call getMessageFromReceiverLink on the device session that owns the link, and return null if there is none.]
+    @Test
+    public void unknownLinkIsNotRoutedToDeviceSessions() throws IllegalArgumentException, InterruptedException
+    {
+        // arrange
+        final String linkName = "linkName";
+        final AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig);
+        Deencapsulation.setField(amqpsSessionManager, "session", mockSession);
+        Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceAuthentication", mockAmqpsDeviceAuthenticationCBS);
+
+        ArrayList<AmqpsSessionDeviceOperation> sessionList = new ArrayList<>();
+        sessionList.add(mockAmqpsSessionDeviceOperation);
+        Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceSessionList", sessionList);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockAmqpsDeviceAuthenticationCBS.operationLinksOpened();
+                result = true;
+            }
+        };
+
+        // act
+        Boolean isFound = Deencapsulation.invoke(amqpsSessionManager, "isLinkFound", linkName);
+        AmqpsMessage amqpsMessage = Deencapsulation.invoke(amqpsSessionManager, "getMessageFromReceiverLink", linkName);
+
+        // assert
+        assertFalse(isFound);
+        assertNull(amqpsMessage);
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation, "isLinkFound", linkName);
+                times = 0;
+                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation, "getMessageFromReceiverLink", linkName);
+                times = 0;
+            }
+        };
+    }
+
     // Tests_SRS_AMQPSESSIONMANAGER_12_039: [The function shall return with the return value of authentication.operationLinksOpened.]
     @Test
     public void isAuthenticationOpenedTrue() throws IllegalArgumentException, InterruptedException
@@ -0,0 +1,214 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsTokenRenewalScheduler;
+import mockit.Deencapsulation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for AmqpsTokenRenewalScheduler.
+ * 100% methods, 90% lines covered
+ */
+public class AmqpsTokenRenewalSchedulerTest
+{
+    private static final long RENEWAL_PERIOD_IN_MILLISECONDS = 600000;
+
+    private AmqpsTokenRenewalScheduler scheduler;
+
+    private final Runnable renewalTask1 = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+        }
+    };
+
+    private final Runnable renewalTask2 = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+        }
+    };
+
+    @Before
+    public void setUp()
+    {
+        scheduler = new AmqpsTokenRenewalScheduler();
+    }
+
+    @After
+    public void tearDown()
+    {
+        scheduler.cancelAll();
+    }
+
+    private long getScheduledDelay(Runnable renewalTask)
+    {
+        Map<Runnable, Object> scheduledRenewals = Deencapsulation.getField(scheduler, "scheduledRenewals");
+        ScheduledFuture<?> future = Deencapsulation.getField(scheduledRenewals.get(renewalTask), "future");
+        return future.getDelay(TimeUnit.MILLISECONDS);
+    }
+
+    // Tests_SRS_AMQPSTOKENRENEWALSCHEDULER_28_001: [The constructor shall run the renewals on the single daemon renewal thread shared by the process, and start with no scheduled renewal.]
+    @Test
+    public void constructorSharesExecutor()
+    {
+        // act
+        AmqpsTokenRenewalScheduler otherScheduler = new AmqpsTokenRenewalScheduler();
+
+        // assert
+        ScheduledExecutorService executor = Deencapsulation.getField(AmqpsTokenRenewalScheduler.class, "EXECUTOR");
+        assertNotNull(executor);
+        assertFalse(executor.isShutdown());
+        assertEquals(0, otherScheduler.getPendingRenewalCount());
+        assertEquals(0, scheduler.getPendingRenewalCount());
+        assertEquals(0, scheduler.getCompletedRenewalCount());
+    }
+
+    // Tests_SRS_AMQPSTOKENRENEWALSCHEDULER_28_002: [If the renewalTask is null or the renewalPeriodInMilliseconds is not positive, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void scheduleThrowsOnNullTask()
+    {
+        // act
+        scheduler.schedule(null, RENEWAL_PERIOD_IN_MILLISECONDS);
+    }
+
+    // Tests_SRS_AMQPSTOKENRENEWALSCHEDULER_28_002: [If the renewalTask is null or the renewalPeriodInMilliseconds is not positive, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void scheduleThrowsOnZeroPeriod()
+    {
+        // act
+        scheduler.schedule(renewalTask1, 0);
+    }
+
+    // Tests_SRS_AMQPSTOKENRENEWALSCHEDULER_28_005: [The function shall schedule the renewalTask to run after the renewal period minus a random jitter of up to 10 percent of the period, and again after each run.]
+    // Tests_SRS_AMQPSTOKENRENEWALSCHEDULER_28_007: [The function shall return the number of scheduled renewal tasks.]
+    @Test
+    public void scheduleAddsRenewalWithJitteredDelay()
+    {
+        // act
+        scheduler.schedule(renewalTask1, RENEWAL_PERIOD_IN_MILLISECONDS);
+        scheduler.schedule(renewalTask2, RENEWAL_PERIOD_IN_MILLISECONDS);
+
+        // assert
+        assertEquals(2, scheduler.getPendingRenewalCount());
+        long delay = getScheduledDelay(renewalTask1);
+        assertTrue(delay <= RENEWAL_PERIOD_IN_MILLISECONDS);
+        assertTrue(delay >= RENEWAL_PERIOD_IN_MILLISECONDS * 9 / 10 - 1000);
+    }
+
+    // Tests_SRS_AMQPSTOKENRENEWALSCHEDULER_28_004: [The function shall cancel the previous schedule of the renewalTask.]
+    @Test
+    public void scheduleReplacesPreviousSchedule()
+    {
+        // arrange
+        scheduler.schedule(renewalTask1, RENEWAL_PERIOD_IN_MILLISECONDS);
+        Map<Runnable, Object> scheduledRenewals = Deencapsulation.getField(scheduler, "scheduledRenewals");
+        ScheduledFuture<?> previousFuture = Deencapsulation.getField(scheduledRenewals.get(renewalTask1), "future");
+
+        // act
+        scheduler.schedule(renewalTask1, 2 * RENEWAL_PERIOD_IN_MILLISECONDS);
+
+        // assert
+        assertTrue(previousFuture.isCancelled());
+        assertEquals(1, scheduler.getPendingRenewalCount());
+        assertTrue(getScheduledDelay(renewalTask1) > RENEWAL_PERIOD_IN_MILLISECONDS);
+    }
+
+    // Tests_SRS_AMQPSTOKENRENEWALSCHEDULER_28_005: [The function shall schedule the renewalTask to run after the renewal period minus a random jitter of up to 10 percent of the period, and again after each run.]
+    // Tests_SRS_AMQPSTOKENRENEWALSCHEDULER_28_008: [The function shall return the number of renewals that ran, successfully or not.]
+    @Test
+    public void scheduledRenewalRunsRepeatedly() throws InterruptedException
+    {
+        // arrange
+        final CountDownLatch runs = new CountDownLatch(3);
+        Runnable renewalTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runs.countDown();
+                throw new IllegalStateException();
+            }
+        };
+
+        // act
+        scheduler.schedule(renewalTask, 10);
+
+        // assert
+        assertTrue(runs.await(10, TimeUnit.SECONDS));
+        assertTrue(scheduler.getCompletedRenewalCount() >= 2);
+        assertEquals(1, scheduler.getPendingRenewalCount());
+    }
+
+    // Tests_SRS_AMQPSTOKENRENEWALSCHEDULER_28_006: [The function shall cancel the schedule of the renewalTask, if any, without interrupting a renewal that is running.]
+    @Test
+    public void cancelRemovesRenewal()
+    {
+        // arrange
+        scheduler.schedule(renewalTask1, RENEWAL_PERIOD_IN_MILLISECONDS);
+        scheduler.schedule(renewalTask2, RENEWAL_PERIOD_IN_MILLISECONDS);
+
+        // act
+        scheduler.cancel(renewalTask1);
+        scheduler.cancel(renewalTask1);
+
+        // assert
+        assertEquals(1, scheduler.getPendingRenewalCount());
+    }
+
+    // Tests_SRS_AMQPSTOKENRENEWALSCHEDULER_28_009: [The function shall cancel all the scheduled renewal tasks of the scheduler, without interrupting a renewal that is running, and keep the renewal thread for the other schedulers.]
+    @Test
+    public void cancelAllCancelsOnlyRenewalsOfScheduler()
+    {
+        // arrange
+        AmqpsTokenRenewalScheduler otherScheduler = new AmqpsTokenRenewalScheduler();
+        scheduler.schedule(renewalTask1, RENEWAL_PERIOD_IN_MILLISECONDS);
+        scheduler.schedule(renewalTask2, RENEWAL_PERIOD_IN_MILLISECONDS);
+        otherScheduler.schedule(renewalTask1, RENEWAL_PERIOD_IN_MILLISECONDS);
+
+        // act
+        scheduler.cancelAll();
+
+        // assert
+        assertEquals(0, scheduler.getPendingRenewalCount());
+        assertEquals(1, otherScheduler.getPendingRenewalCount());
+        otherScheduler.cancelAll();
+    }
+
+    // Tests_SRS_AMQPSTOKENRENEWALSCHEDULER_28_009: [The function shall cancel all the scheduled renewal tasks of the scheduler, without interrupting a renewal that is running, and keep the renewal thread for the other schedulers.]
+    @Test
+    public void scheduleRunsRenewalAgainAfterCancelAll() throws InterruptedException
+    {
+        // arrange
+        final CountDownLatch run = new CountDownLatch(1);
+        scheduler.schedule(renewalTask1, RENEWAL_PERIOD_IN_MILLISECONDS);
+        scheduler.cancelAll();
+
+        // act
+        scheduler.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                run.countDown();
+            }
+        }, 1);
+
+        // assert
+        assertTrue(run.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -6,17 +6,21 @@ package tests.unit.com.microsoft.azure.sdk.iot.device.transport.amqps;
 import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenAuthenticationProvider;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundMessageStore;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueue;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueueMetrics;
 import com.microsoft.azure.sdk.iot.device.transport.State;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.*;
 import mockit.*;
 import org.apache.qpid.proton.message.impl.MessageImpl;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -54,12 +58,6 @@ public class AmqpsTransportTest
     @Mocked
     IotHubConnectionStateCallback mockConnectionStateCallback;
 
-    @Mocked
-    Map<Integer, IotHubOutboundPacket> mockMapIntegerIotHubOutboundPacket;
-
-    @Mocked
-    Map.Entry<Integer, IotHubOutboundPacket> mockMapIntegerIotHubOutboundPacketEntry;
-
     @Mocked
     AmqpsDeviceOperations mockAmqpsDeviceOperations;
 
@@ -89,6 +87,21 @@ public class AmqpsTransportTest
     @Mocked
     IotHubSasTokenAuthenticationProvider mockSasTokenAuthentication;
 
+    @Before
+    public void setup()
+    {
+        // The callbacks are invoked on the calling thread, as without a callback executor.
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getCallbackExecutor();
+                result = null;
+                mockDeviceClientConfig.getCallbackExecutor();
+                result = null;
+            }
+        };
+    }
+
     // Tests_SRS_AMQPSTRANSPORT_15_001: [The constructor shall save the input parameters into instance variables.]
     @Test
     public void constructorSavesInputParameters()
@@ -431,32 +444,28 @@ public class AmqpsTransportTest
             {
                 mockedPacket.getMessage();
                 result = mockMsg;
-                mockMsg.getBytes();
-                result = "AnyData".getBytes();
-                mockMapIntegerIotHubOutboundPacket.size();
-                result = 1;
-                mockMapIntegerIotHubOutboundPacket.entrySet();
-                result = mockMapIntegerIotHubOutboundPacketEntry;
+                mockMsg.getBodyLength();
+                result = "AnyData".getBytes().length;
             }
         };
-        Deencapsulation.setField(transport, "inProgressMessages", mockMapIntegerIotHubOutboundPacket);
+        AmqpsInFlightDeliveries inProgressMessages = Deencapsulation.getField(transport, "inProgressMessages");
+        inProgressMessages.put(1, mockedPacket);
 
         transport.open();
         transport.addMessage(mockMsg, mockCallback, null);
         transport.close();
 
 
-        Queue<IotHubOutboundPacket> actualWaitingMessages = Deencapsulation.getField(transport, "waitingMessages");
-        Map<Integer, IotHubOutboundPacket> actualInProgressMessages = Deencapsulation.getField(transport, "inProgressMessages");
+        IotHubOutboundQueue actualWaitingMessages = Deencapsulation.getField(transport, "waitingMessages");
 
         assertEquals(actualWaitingMessages.size(), 0);
-        assertEquals(actualInProgressMessages.size(), 1);
+        assertEquals(inProgressMessages.size(), 0);
 
         new Verifications()
         {
             {
                 mockedPacket.getMessage();
-                times = 1;
+                times = 2;
                 mockCallback.execute((IotHubStatusCode) any, any);
                 times = 2;
                 expectedConnection.close();
@@ -732,7 +741,7 @@ public class AmqpsTransportTest
                 new IotHubOutboundPacket(mockMessage, mockCallback, context);
                 times = 2;
                 mockPacket.getMessage();
-                times = 2;
+                times = 4;
                 mockConnection.sendMessage((org.apache.qpid.proton.message.Message) any, MessageType.DEVICE_TELEMETRY, (IotHubConnectionString) any);
                 times = 2;
             }
@@ -795,7 +804,7 @@ public class AmqpsTransportTest
         transport.sendMessages();
 
         //assert
-        Queue<IotHubOutboundPacket> waitingMessagesList = Deencapsulation.getField(transport, "waitingMessages");
+        IotHubOutboundQueue waitingMessagesList = Deencapsulation.getField(transport, "waitingMessages");
         assertTrue(waitingMessagesList.isEmpty());
 
         Queue<IotHubCallbackPacket> callbackList = Deencapsulation.getField(transport, "callbackList");
@@ -893,7 +902,7 @@ public class AmqpsTransportTest
         };
     }
 
-    // Tests_SRS_AMQPSTRANSPORT_15_016: [If the sent message hash is valid, it shall be added to the in progress map.]
+    // Tests_SRS_AMQPSTRANSPORT_15_016: [If the sent message delivery tag is valid, it shall be added to the in progress map.]
     @Test
     public void sendMessagesAddsSentMessagesToInProgressMap(
             @Mocked final Message mockMessage,
@@ -917,7 +926,7 @@ public class AmqpsTransportTest
                 mockMessage.getMessageType();
                 result = MessageType.DEVICE_TELEMETRY;
                 mockConnection.sendMessage((org.apache.qpid.proton.message.Message) any, MessageType.DEVICE_TELEMETRY, (IotHubConnectionString) any);
-                returns (1, 2);
+                returns (1L, 2L);
                 mockConfig.getDeviceId();
                 result = "deviceId";
                 Deencapsulation.invoke(mockAmqpsDeviceTelemetry, "convertToProton", mockMessage);
@@ -935,7 +944,7 @@ public class AmqpsTransportTest
         transport.addMessage(mockMessage, mockCallback, context);
         transport.sendMessages();
 
-        Map<Integer, IotHubOutboundPacket> inProgressMessages = Deencapsulation.getField(transport, "inProgressMessages");
+        AmqpsInFlightDeliveries inProgressMessages = Deencapsulation.getField(transport, "inProgressMessages");
         Assert.assertEquals(2, inProgressMessages.size());
 
         new Verifications()
@@ -944,14 +953,14 @@ public class AmqpsTransportTest
                 new IotHubOutboundPacket(mockMessage, mockCallback, context);
                 times = 2;
                 mockPacket.getMessage();
-                times = 2;
+                times = 4;
                 mockConnection.sendMessage((org.apache.qpid.proton.message.Message) any, MessageType.DEVICE_TELEMETRY, (IotHubConnectionString) any);
                 times = 2;
             }
         };
     }
 
-    // Tests_SRS_AMQPSTRANSPORT_15_017: [If the sent message hash is not valid, it shall be buffered to be sent in a subsequent attempt.]
+    // Tests_SRS_AMQPSTRANSPORT_15_017: [If the sent message delivery tag is not valid, it shall be buffered to be sent in a subsequent attempt.]
     @Test
     public void sendMessagesAddsNotSentMessagesToInProgressMap(
             @Mocked final Message mockMessage,
@@ -977,7 +986,7 @@ public class AmqpsTransportTest
                 mockMessage.getMessageType();
                 result = MessageType.DEVICE_TELEMETRY;
                 mockConnection.sendMessage((org.apache.qpid.proton.message.Message) any, MessageType.DEVICE_TELEMETRY, (IotHubConnectionString) any);
-                returns (1, -1);
+                returns (1L, -1L);
                 mockConfig.getDeviceId();
                 result = "deviceId";
                 Deencapsulation.invoke(mockAmqpsDeviceTelemetry, "convertToProton", mockMessage);
@@ -995,10 +1004,10 @@ public class AmqpsTransportTest
         transport.addMessage(mockMessage, mockCallback, context);
         transport.sendMessages();
 
-        Map<Integer, IotHubOutboundPacket> inProgressMessages = Deencapsulation.getField(transport, "inProgressMessages");
+        AmqpsInFlightDeliveries inProgressMessages = Deencapsulation.getField(transport, "inProgressMessages");
         Assert.assertEquals(1, inProgressMessages.size());
 
-        Queue<IotHubOutboundPacket> waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
+        IotHubOutboundQueue waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
         Assert.assertEquals(1, waitingMessages.size());
 
         new Verifications()
@@ -1007,7 +1016,7 @@ public class AmqpsTransportTest
                 new IotHubOutboundPacket(mockMessage, mockCallback, context);
                 times = 2;
                 mockPacket.getMessage();
-                times = 2;
+                times = 5;
                 mockConnection.sendMessage((org.apache.qpid.proton.message.Message) any, MessageType.DEVICE_TELEMETRY, (IotHubConnectionString) any);
                 times = 2;
             }
@@ -1055,10 +1064,10 @@ public class AmqpsTransportTest
         transport.addMessage(mockMessage, mockCallback, context);
         transport.sendMessages();
 
-        Map<Integer, IotHubOutboundPacket> inProgressMessages = Deencapsulation.getField(transport, "inProgressMessages");
+        AmqpsInFlightDeliveries inProgressMessages = Deencapsulation.getField(transport, "inProgressMessages");
         Assert.assertEquals(1, inProgressMessages.size());
 
-        Queue<IotHubOutboundPacket> waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
+        IotHubOutboundQueue waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
         Assert.assertEquals(0, waitingMessages.size());
 
         Queue<IotHubCallbackPacket> callbackList = Deencapsulation.getField(transport, "callbackList");
@@ -1070,7 +1079,7 @@ public class AmqpsTransportTest
                 new IotHubOutboundPacket(mockMessage, mockCallback, context);
                 times = 2;
                 mockPacket.getMessage();
-                times = 2;
+                times = 4;
                 mockConnection.sendMessage((org.apache.qpid.proton.message.Message) any, MessageType.DEVICE_TELEMETRY, (IotHubConnectionString) any);
                 times = 0;
                 new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_EXPIRED, (IotHubEventCallback) any, any);
@@ -1166,6 +1175,75 @@ public class AmqpsTransportTest
         };
     }
 
+    // Tests_SRS_AMQPSTRANSPORT_28_007: [The constructor shall create a callback dispatcher for the config.]
+    // Tests_SRS_AMQPSTRANSPORT_28_008: [The function shall invoke the callbacks through the callback dispatcher.]
+    // Tests_SRS_AMQPSTRANSPORT_28_009: [The function shall return false while the callback dispatcher has callbacks to invoke.]
+    // Tests_SRS_AMQPSTRANSPORT_28_010: [The function shall return the metrics of the callback dispatcher.]
+    @Test
+    public void invokeCallbacksWithCallbackExecutorInvokesCallbacksOnExecutor() throws IOException
+    {
+        // arrange
+        final Integer context = 24;
+        final List<Runnable> tasks = new ArrayList<>();
+        final Executor executor = new Executor()
+        {
+            @Override
+            public void execute(Runnable task)
+            {
+                tasks.add(task);
+            }
+        };
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig);
+                result = mockConnection;
+                mockIotHubCallbackPacket.getCallback();
+                result = mockIotHubEventCallback;
+                mockIotHubCallbackPacket.getStatus();
+                result = IotHubStatusCode.OK_EMPTY;
+                mockIotHubCallbackPacket.getContext();
+                result = context;
+                mockConfig.getDeviceId();
+                result = "deviceId";
+                mockConfig.getCallbackExecutor();
+                result = executor;
+            }
+        };
+        AmqpsTransport transport = new AmqpsTransport(mockConfig);
+        transport.open();
+        Queue<IotHubCallbackPacket> callbackList = new LinkedList<>();
+        callbackList.add(mockIotHubCallbackPacket);
+        Deencapsulation.setField(transport, "callbackList", callbackList);
+
+        // act
+        transport.invokeCallbacks();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockIotHubEventCallback.execute((IotHubStatusCode) any, any);
+                times = 0;
+            }
+        };
+        assertEquals(1, tasks.size());
+        assertEquals(1, transport.getCallbackDispatcherMetrics().getPendingCount());
+
+        // act
+        tasks.remove(0).run();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockIotHubEventCallback.execute(IotHubStatusCode.OK_EMPTY, context);
+                times = 1;
+            }
+        };
+        assertEquals(1L, transport.getCallbackDispatcherMetrics().getCompletedCount());
+    }
+
     // Tests_SRS_AMQPSTRANSPORT_15_021: [If the transport is closed, the function shall throw an IllegalStateException.]
     @Test(expected = IllegalStateException.class)
     public void handleMessageFailsIfTransportNeverOpened() throws IOException
@@ -1347,6 +1425,153 @@ public class AmqpsTransportTest
         Assert.assertTrue(receivedTransportMessages.size() == 1);
     }
 
+    // Tests_SRS_AMQPSTRANSPORT_28_011: [The function shall consume the received messages until none is left,
+    // or the receive prefetch count of the config is reached, so a burst of messages is handled in one pass.]
+    @Test
+    public void handleMessageConsumesAllReceivedMessages() throws IOException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig);
+                result = mockConnection;
+                mockConfig.getReceivePrefetchCount();
+                result = 10;
+                mockConfig.getDeviceTelemetryMessageCallback();
+                result = mockMessageCallback;
+                mockMessageCallback.execute((Message) any, any);
+                result = IotHubMessageResult.COMPLETE;
+                mockConnection.sendMessageResult(mockAmqpsMessage, IotHubMessageResult.COMPLETE);
+                result = true;
+                Deencapsulation.invoke(mockAmqpsDeviceTelemetry, "convertFromProton", mockAmqpsMessage, mockDeviceClientConfig);
+                result = mockAmqpsConvertFromProtonReturnValue;
+                Deencapsulation.setField(mockAmqpsConvertFromProtonReturnValue, "message", new Message());
+            }
+        };
+        AmqpsTransport transport = new AmqpsTransport(mockConfig);
+        transport.open();
+        Queue<AmqpsMessage> receivedMessages = new LinkedBlockingQueue<>();
+        receivedMessages.add(mockAmqpsMessage);
+        receivedMessages.add(mockAmqpsMessage);
+        receivedMessages.add(mockAmqpsMessage);
+        Deencapsulation.setField(transport, "receivedMessages", receivedMessages);
+
+        // act
+        transport.handleMessage();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockMessageCallback.execute((Message) any, any);
+                times = 3;
+                mockConnection.sendMessageResult(mockAmqpsMessage, IotHubMessageResult.COMPLETE);
+                times = 3;
+            }
+        };
+        Queue<AmqpsMessage> receivedTransportMessages = Deencapsulation.getField(transport, "receivedMessages");
+        Assert.assertEquals(0, receivedTransportMessages.size());
+    }
+
+    // Tests_SRS_AMQPSTRANSPORT_28_011: [The function shall consume the received messages until none is left,
+    // or the receive prefetch count of the config is reached, so a burst of messages is handled in one pass.]
+    @Test
+    public void handleMessageConsumesUpToReceivePrefetchCount() throws IOException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig);
+                result = mockConnection;
+                mockConfig.getReceivePrefetchCount();
+                result = 2;
+                mockConfig.getDeviceTelemetryMessageCallback();
+                result = mockMessageCallback;
+                mockMessageCallback.execute((Message) any, any);
+                result = IotHubMessageResult.COMPLETE;
+                mockConnection.sendMessageResult(mockAmqpsMessage, IotHubMessageResult.COMPLETE);
+                result = true;
+                Deencapsulation.invoke(mockAmqpsDeviceTelemetry, "convertFromProton", mockAmqpsMessage, mockDeviceClientConfig);
+                result = mockAmqpsConvertFromProtonReturnValue;
+                Deencapsulation.setField(mockAmqpsConvertFromProtonReturnValue, "message", new Message());
+            }
+        };
+        AmqpsTransport transport = new AmqpsTransport(mockConfig);
+        transport.open();
+        Queue<AmqpsMessage> receivedMessages = new LinkedBlockingQueue<>();
+        receivedMessages.add(mockAmqpsMessage);
+        receivedMessages.add(mockAmqpsMessage);
+        receivedMessages.add(mockAmqpsMessage);
+        Deencapsulation.setField(transport, "receivedMessages", receivedMessages);
+
+        // act
+        transport.handleMessage();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockMessageCallback.execute((Message) any, any);
+                times = 2;
+                mockConnection.sendMessageResult(mockAmqpsMessage, IotHubMessageResult.COMPLETE);
+                times = 2;
+            }
+        };
+        Queue<AmqpsMessage> receivedTransportMessages = Deencapsulation.getField(transport, "receivedMessages");
+        Assert.assertEquals(1, receivedTransportMessages.size());
+    }
+
+    // Tests_SRS_AMQPSTRANSPORT_28_011: [The function shall consume the received messages until none is left,
+    // or the receive prefetch count of the config is reached, so a burst of messages is handled in one pass.]
+    @Test
+    public void handleMessageStopsConsumingIfCannotSendResultBackToServer() throws IOException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig);
+                result = mockConnection;
+                mockConfig.getReceivePrefetchCount();
+                result = 10;
+                mockConfig.getDeviceTelemetryMessageCallback();
+                result = mockMessageCallback;
+                mockMessageCallback.execute((Message) any, any);
+                result = IotHubMessageResult.COMPLETE;
+                mockConnection.sendMessageResult(mockAmqpsMessage, IotHubMessageResult.COMPLETE);
+                result = false;
+                Deencapsulation.invoke(mockAmqpsDeviceTelemetry, "convertFromProton", mockAmqpsMessage, mockDeviceClientConfig);
+                result = mockAmqpsConvertFromProtonReturnValue;
+                Deencapsulation.setField(mockAmqpsConvertFromProtonReturnValue, "message", new Message());
+            }
+        };
+        AmqpsTransport transport = new AmqpsTransport(mockConfig);
+        transport.open();
+        Queue<AmqpsMessage> receivedMessages = new LinkedBlockingQueue<>();
+        receivedMessages.add(mockAmqpsMessage);
+        receivedMessages.add(mockAmqpsMessage);
+        receivedMessages.add(mockAmqpsMessage);
+        Deencapsulation.setField(transport, "receivedMessages", receivedMessages);
+
+        // act
+        transport.handleMessage();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockMessageCallback.execute((Message) any, any);
+                times = 1;
+                mockConnection.sendMessageResult(mockAmqpsMessage, IotHubMessageResult.COMPLETE);
+                times = 1;
+            }
+        };
+        Queue<AmqpsMessage> receivedTransportMessages = Deencapsulation.getField(transport, "receivedMessages");
+        Assert.assertEquals(3, receivedTransportMessages.size());
+    }
+
     // Tests_SRS_AMQPSTRANSPORT_15_028: [If the result could not be sent to IoTHub, the message shall be put back in the received messages queue to be processed again.]
     // Tests_SRS_AMQPSTRANSPORT_15_028: [If the result could not be sent to IoTHub, the message shall be put back in the received messages queue to be processed again.]
     @Test
@@ -1398,7 +1623,7 @@ public class AmqpsTransportTest
         Assert.assertTrue(receivedTransportMessages.size() == 2);
     }
 
-    // Tests_SRS_AMQPSTRANSPORT_15_029: [If the hash cannot be found in the list of keys for the messages in progress, the method returns.]
+    // Tests_SRS_AMQPSTRANSPORT_15_029: [If the delivery tag cannot be found in the list of keys for the messages in progress, the method returns.]
     @Test
     public void messageSentReturnsIfThereAreNoMessagesInProgress() throws IOException
     {
@@ -1417,7 +1642,7 @@ public class AmqpsTransportTest
         AmqpsTransport transport = new AmqpsTransport(mockConfig);
         transport.open();
 
-        Map<Integer, IotHubOutboundPacket> inProgressMessages = new ConcurrentHashMap<>();
+        AmqpsInFlightDeliveries inProgressMessages = new AmqpsInFlightDeliveries();
         Deencapsulation.setField(transport, "inProgressMessages", inProgressMessages);
 
         transport.messageSent(1, true);
@@ -1451,7 +1676,7 @@ public class AmqpsTransportTest
         AmqpsTransport transport = new AmqpsTransport(mockConfig);
         transport.open();
 
-        Map<Integer, IotHubOutboundPacket> inProgressMessages = new ConcurrentHashMap<>();
+        AmqpsInFlightDeliveries inProgressMessages = new AmqpsInFlightDeliveries();
         inProgressMessages.put(1, new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
         inProgressMessages.put(2, new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
         Deencapsulation.setField(transport, "inProgressMessages", inProgressMessages);
@@ -1466,7 +1691,7 @@ public class AmqpsTransportTest
             }
         };
 
-        Queue<IotHubOutboundPacket> waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
+        IotHubOutboundQueue waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
         Queue<IotHubCallbackPacket> callbackList  = Deencapsulation.getField(transport, "callbackList");
 
         Assert.assertTrue(inProgressMessages.size() == 1);
@@ -1493,7 +1718,7 @@ public class AmqpsTransportTest
         AmqpsTransport transport = new AmqpsTransport(mockConfig);
         transport.open();
 
-        Map<Integer, IotHubOutboundPacket> inProgressMessages = new ConcurrentHashMap<>();
+        AmqpsInFlightDeliveries inProgressMessages = new AmqpsInFlightDeliveries();
         inProgressMessages.put(1, new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
         inProgressMessages.put(2, new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
         Deencapsulation.setField(transport, "inProgressMessages", inProgressMessages);
@@ -1508,7 +1733,7 @@ public class AmqpsTransportTest
             }
         };
 
-        Queue<IotHubOutboundPacket> waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
+        IotHubOutboundQueue waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
         Queue<IotHubCallbackPacket> callbackList  = Deencapsulation.getField(transport, "callbackList");
 
         Assert.assertTrue(inProgressMessages.size() == 1);
@@ -1536,12 +1761,12 @@ public class AmqpsTransportTest
         AmqpsTransport transport = new AmqpsTransport(mockConfig);
         transport.open();
 
-        Map<Integer, IotHubOutboundPacket> inProgressMessages = new ConcurrentHashMap<>();
+        AmqpsInFlightDeliveries inProgressMessages = new AmqpsInFlightDeliveries();
         inProgressMessages.put(1, new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
         inProgressMessages.put(2, new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
         Deencapsulation.setField(transport, "inProgressMessages", inProgressMessages);
 
-        Queue<IotHubOutboundPacket> waitingMessages = new LinkedBlockingDeque<>();
+        IotHubOutboundQueue waitingMessages = new IotHubOutboundQueue(mockConfig, new LinkedBlockingDeque<IotHubCallbackPacket>());
         waitingMessages.add(new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
         waitingMessages.add(new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
         Deencapsulation.setField(transport, "waitingMessages", waitingMessages);
@@ -1697,7 +1922,7 @@ public class AmqpsTransportTest
         AmqpsTransport transport = new AmqpsTransport(mockConfig);
 
 
-        Queue<IotHubOutboundPacket> waitingMessages = new LinkedBlockingDeque<>();
+        IotHubOutboundQueue waitingMessages = new IotHubOutboundQueue(mockConfig, new LinkedBlockingDeque<IotHubCallbackPacket>());
         waitingMessages.add(new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
         Deencapsulation.setField(transport, "waitingMessages", waitingMessages);
 
@@ -1723,7 +1948,7 @@ public class AmqpsTransportTest
         AmqpsTransport transport = new AmqpsTransport(mockConfig);
 
 
-        Map<Integer, IotHubOutboundPacket> inProgressMessages = new ConcurrentHashMap<>();
+        AmqpsInFlightDeliveries inProgressMessages = new AmqpsInFlightDeliveries();
         inProgressMessages.put(1, new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
         Deencapsulation.setField(transport, "inProgressMessages", inProgressMessages);
 
@@ -1756,4 +1981,147 @@ public class AmqpsTransportTest
 
         Assert.assertFalse(isEmpty);
     }
-}
\ No newline at end of file
+
+    // Tests_SRS_AMQPSTRANSPORT_28_001: [The constructor shall create the queue of messages waiting to be sent, bounded by the outbound queue capacity and policy of the config.]
+    // Tests_SRS_AMQPSTRANSPORT_28_002: [The function shall return the metrics of the transport queue.]
+    @Test
+    public void addMessageDropsMessageWhenOutboundQueueIsFull(@Mocked final IotHubEventCallback mockCallback) throws IOException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getDeviceId();
+                result = "deviceId";
+                mockConfig.getOutboundQueueCapacity();
+                result = 1;
+                mockConfig.getOutboundQueuePolicy();
+                result = IotHubOutboundQueuePolicy.FAIL_FAST;
+            }
+        };
+        final Object context = new Object();
+        AmqpsTransport transport = new AmqpsTransport(mockConfig);
+        transport.open();
+
+        // act
+        transport.addMessage(new Message("first"), mockCallback, null);
+        transport.addMessage(new Message("second"), mockCallback, context);
+
+        // assert
+        Queue<IotHubCallbackPacket> callbackList = Deencapsulation.getField(transport, "callbackList");
+        assertEquals(1, callbackList.size());
+        new Verifications()
+        {
+            {
+                new IotHubCallbackPacket(IotHubStatusCode.OUTBOUND_QUEUE_FULL, mockCallback, context);
+                times = 1;
+            }
+        };
+        IotHubOutboundQueueMetrics metrics = transport.getOutboundQueueMetrics();
+        assertEquals(1, metrics.getSize());
+        assertEquals(1, metrics.getDroppedCount());
+    }
+
+    // Tests_SRS_AMQPSTRANSPORT_28_003: [The function shall open the outbound message store of the config, if any,
+    // and put the messages it holds in front of the queue of messages waiting to be sent.]
+    // Tests_SRS_AMQPSTRANSPORT_28_004: [The function shall close the outbound message store, which keeps the cancelled messages for the next open.]
+    @Test
+    public void openReplaysTheOutboundMessageStoreAndCloseClosesIt(@Mocked final IotHubOutboundMessageStore mockStore) throws IOException
+    {
+        // arrange
+        final IotHubOutboundPacket storedPacket = new IotHubOutboundPacket(new Message("stored"), mockIotHubEventCallback, null);
+        new NonStrictExpectations()
+        {
+            {
+                IotHubOutboundMessageStore.open(mockConfig);
+                result = mockStore;
+                mockStore.replay(IotHubOutboundMessageStore.REPLAY_BATCH_SIZE);
+                result = Arrays.asList(storedPacket);
+            }
+        };
+        AmqpsTransport transport = new AmqpsTransport(mockConfig);
+
+        // act
+        transport.open();
+
+        // assert
+        IotHubOutboundQueue waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
+        assertEquals(1, waitingMessages.size());
+        assertEquals(storedPacket, waitingMessages.peek());
+
+        // act
+        transport.close();
+
+        // assert
+        new Verifications()
+        {
+            {
+                new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, mockIotHubEventCallback, null);
+                times = 1;
+                mockStore.close();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSTRANSPORT_28_005: [If the transport has an outbound message store, the function shall write the message to it before adding it to the queue.]
+    @Test
+    public void addMessageWritesTheMessageToTheOutboundMessageStore(@Mocked final IotHubOutboundMessageStore mockStore) throws IOException
+    {
+        // arrange
+        final Message message = new Message("telemetry");
+        final Object context = new Object();
+        final IotHubOutboundPacket storedPacket = new IotHubOutboundPacket(message, mockIotHubEventCallback, context);
+        new NonStrictExpectations()
+        {
+            {
+                IotHubOutboundMessageStore.open(mockConfig);
+                result = mockStore;
+                mockStore.replay(anyInt);
+                result = new ArrayList<IotHubOutboundPacket>();
+                mockStore.createPacket(message, mockIotHubEventCallback, context);
+                result = storedPacket;
+            }
+        };
+        AmqpsTransport transport = new AmqpsTransport(mockConfig);
+        transport.open();
+
+        // act
+        transport.addMessage(message, mockIotHubEventCallback, context);
+
+        // assert
+        IotHubOutboundQueue waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
+        assertEquals(storedPacket, waitingMessages.peek());
+    }
+
+    // Tests_SRS_AMQPSTRANSPORT_28_006: [If there are no messages in the waiting list, the function shall put the next messages of the outbound message store in it.]
+    @Test
+    public void sendMessagesTakesTheNextMessagesOfTheOutboundMessageStore(@Mocked final IotHubOutboundMessageStore mockStore) throws IOException
+    {
+        // arrange
+        final IotHubOutboundPacket storedPacket = new IotHubOutboundPacket(new Message("stored"), mockIotHubEventCallback, null);
+        new NonStrictExpectations()
+        {
+            {
+                IotHubOutboundMessageStore.open(mockConfig);
+                result = mockStore;
+                mockStore.replay(IotHubOutboundMessageStore.REPLAY_BATCH_SIZE);
+                returns(new ArrayList<IotHubOutboundPacket>(), Arrays.asList(storedPacket));
+            }
+        };
+        AmqpsTransport transport = new AmqpsTransport(mockConfig);
+        transport.open();
+
+        // act
+        transport.sendMessages();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockStore.replay(IotHubOutboundMessageStore.REPLAY_BATCH_SIZE);
+                times = 2;
+            }
+        };
+    }
+}
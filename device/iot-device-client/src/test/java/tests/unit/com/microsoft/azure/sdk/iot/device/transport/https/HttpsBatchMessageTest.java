@@ -247,6 +247,115 @@ public class HttpsBatchMessageTest
         }
     }
 
+    // Tests_SRS_HTTPSBATCHMESSAGE_11_002: [The function shall add the message as a JSON object appended to the current JSON array.]
+    // Tests_SRS_HTTPSBATCHMESSAGE_28_001: [The function shall append the UTF-8 encoded message to the batch body buffer, growing the buffer when it is full, without encoding again the messages already in the batch.]
+    @Test
+    public void addMessageAppendsManySmallMessages(
+            @Mocked final HttpsSingleMessage mockMsg) throws
+            IotHubSizeExceededException
+    {
+        final String msgBody = "test-msg-body";
+        final int numMessages = 500;
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBody();
+                result = msgBody.getBytes();
+            }
+        };
+        HttpsBatchMessage singleMsgBatch = new HttpsBatchMessage();
+        singleMsgBatch.addMessage(mockMsg);
+        String singleMsgBody = new String(singleMsgBatch.getBody(), UTF8);
+        String jsonMsg = singleMsgBody.substring(1, singleMsgBody.length() - 1);
+
+        HttpsBatchMessage batchMsg = new HttpsBatchMessage();
+        for (int i = 0; i < numMessages; i++)
+        {
+            batchMsg.addMessage(mockMsg);
+        }
+
+        StringBuilder expectedBatchBody = new StringBuilder("[");
+        for (int i = 0; i < numMessages; i++)
+        {
+            if (i > 0)
+            {
+                expectedBatchBody.append(",");
+            }
+            expectedBatchBody.append(jsonMsg);
+        }
+        expectedBatchBody.append("]");
+        assertThat(new String(batchMsg.getBody(), UTF8), is(expectedBatchBody.toString()));
+        assertThat(batchMsg.numMessages(), is(numMessages));
+    }
+
+    // Tests_SRS_HTTPSBATCHMESSAGE_28_002: [The function shall return a copy of the batch body, which is not changed by messages added later.]
+    @Test
+    public void getBodyReturnsCopyOfBatchBody(
+            @Mocked final HttpsSingleMessage mockMsg) throws
+            IotHubSizeExceededException
+    {
+        final String msgBody = "test-msg-body";
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBody();
+                result = msgBody.getBytes();
+            }
+        };
+        HttpsBatchMessage batchMsg = new HttpsBatchMessage();
+        batchMsg.addMessage(mockMsg);
+        byte[] firstBody = batchMsg.getBody();
+        String expectedFirstBody = new String(firstBody, UTF8);
+
+        batchMsg.addMessage(mockMsg);
+        firstBody[0] = 0;
+
+        assertThat(new String(batchMsg.getBody(), UTF8).startsWith(expectedFirstBody.substring(0, expectedFirstBody.length() - 1) + ","), is(true));
+        assertThat(new String(batchMsg.getBody(), UTF8).charAt(0), is('['));
+    }
+
+    // Tests_SRS_HTTPSBATCHMESSAGE_28_003: [If the provided maxSizeInBytes is smaller than 1, the constructor shall throw IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsZeroMaxSize()
+    {
+        new HttpsBatchMessage(0);
+    }
+
+    // Tests_SRS_HTTPSBATCHMESSAGE_28_004: [The constructor shall limit the batch body to the smaller of the provided maxSizeInBytes and 256 kb.]
+    @Test
+    public void addMessageRejectsMessageOverProvidedMaxSize(
+            @Mocked final HttpsSingleMessage mockMsg) throws
+            IotHubSizeExceededException
+    {
+        final String msgBody = "test-msg-body";
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBody();
+                result = msgBody.getBytes();
+            }
+        };
+        HttpsBatchMessage singleMsgBatch = new HttpsBatchMessage();
+        singleMsgBatch.addMessage(mockMsg);
+        int singleMsgBatchSize = singleMsgBatch.getBody().length;
+
+        HttpsBatchMessage batchMsg = new HttpsBatchMessage(singleMsgBatchSize);
+        batchMsg.addMessage(mockMsg);
+        boolean exceeded = false;
+        try
+        {
+            batchMsg.addMessage(mockMsg);
+        }
+        catch (IotHubSizeExceededException e)
+        {
+            exceeded = true;
+        }
+
+        assertThat(exceeded, is(true));
+        assertThat(batchMsg.numMessages(), is(1));
+        assertThat(batchMsg.getBody().length, is(singleMsgBatchSize));
+    }
+
     // Tests_SRS_HTTPSBATCHMESSAGE_11_011: [The function shall return 'application/vnd.microsoft.iothub.json'.]
     @Test
     public void getContentTypeReturnsCorrectContentType()
@@ -13,6 +13,8 @@ import org.junit.Test;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -355,6 +357,42 @@ public class HttpsConnectionTest
         };
     }
 
+    //Tests_SRS_HTTPSCONNECTION_28_005: [The function shall reuse the SSL socket factory already created for the given context, so the connections of the same context can share keep-alive sockets and TLS sessions.]
+    @Test
+    public void setSSLContextReusesSocketFactoryOfSameContext(@Mocked final SSLContext mockedContext,
+                                                              @Mocked final SSLSocketFactory mockedSocketFactory) throws IOException
+    {
+        final HttpsMethod httpsMethod = HttpsMethod.POST;
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+                mockUrl.openConnection();
+                result = mockUrlConn;
+                mockUrlConn.getRequestMethod();
+                result = httpsMethod.name();
+                mockedContext.getSocketFactory();
+                result = mockedSocketFactory;
+            }
+        };
+        final HttpsConnection conn1 = new HttpsConnection(mockUrl, httpsMethod);
+        final HttpsConnection conn2 = new HttpsConnection(mockUrl, httpsMethod);
+
+        Deencapsulation.invoke(conn1, "setSSLContext", mockedContext);
+        Deencapsulation.invoke(conn2, "setSSLContext", mockedContext);
+
+        new Verifications()
+        {
+            {
+                mockedContext.getSocketFactory();
+                times = 1;
+                mockUrlConn.setSSLSocketFactory(mockedSocketFactory);
+                times = 2;
+            }
+        };
+    }
+
     //Tests_SRS_HTTPSCONNECTION_25_025: [The function shall throw IllegalArgumentException if the context is null value.**]**
     @Test (expected = IllegalArgumentException.class)
     public void setSSLContextThrowsOnNullContext(@Mocked final SSLContext mockedContext) throws IOException
@@ -425,8 +463,7 @@ public class HttpsConnectionTest
 
     // Tests_SRS_HTTPSCONNECTION_11_011: [The function shall read from the input stream (response stream) and return the response.]
     @Test
-    public void readInputCompletelyReadsInputStream(
-            @Mocked final InputStream mockIs)
+    public void readInputCompletelyReadsInputStream()
             throws IOException
     {
         final HttpsMethod httpsMethod = HttpsMethod.GET;
@@ -440,9 +477,7 @@ public class HttpsConnectionTest
                 mockUrlConn.getRequestMethod();
                 result = httpsMethod.name();
                 mockUrlConn.getInputStream();
-                result = mockIs;
-                mockIs.read();
-                returns(1, 2, 3, -1);
+                result = new ByteArrayInputStream(new byte[] { 1, 2, 3 });
             }
         };
         HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
@@ -496,7 +531,7 @@ public class HttpsConnectionTest
                 result = httpsMethod.name();
                 mockUrlConn.getInputStream();
                 result = mockIs;
-                mockIs.read();
+                mockIs.read((byte[]) any, anyInt, anyInt);
                 result = -1;
             }
         };
@@ -513,10 +548,97 @@ public class HttpsConnectionTest
         };
     }
 
+    // Tests_SRS_HTTPSCONNECTION_28_001: [The function shall read the input stream in bulk, using the Content-Length of the response to size the result.]
+    @Test
+    public void readInputReadsContentLengthBytes() throws IOException
+    {
+        final HttpsMethod httpsMethod = HttpsMethod.GET;
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+                mockUrl.openConnection();
+                result = mockUrlConn;
+                mockUrlConn.getRequestMethod();
+                result = httpsMethod.name();
+                mockUrlConn.getContentLengthLong();
+                result = 3;
+                mockUrlConn.getInputStream();
+                result = new ByteArrayInputStream(new byte[] { 1, 2, 3 });
+            }
+        };
+        HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
+        conn.connect();
+
+        byte[] testResponse = conn.readInput();
+
+        byte[] expectedResponse = { 1, 2, 3 };
+        assertThat(testResponse, is(expectedResponse));
+    }
+
+    // Tests_SRS_HTTPSCONNECTION_28_001: [The function shall read the input stream in bulk, using the Content-Length of the response to size the result.]
+    @Test
+    public void readInputReadsResponseBiggerThanChunk() throws IOException
+    {
+        final byte[] expectedResponse = new byte[20000];
+        expectedResponse[19999] = 1;
+        final HttpsMethod httpsMethod = HttpsMethod.GET;
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+                mockUrl.openConnection();
+                result = mockUrlConn;
+                mockUrlConn.getRequestMethod();
+                result = httpsMethod.name();
+                mockUrlConn.getContentLengthLong();
+                result = -1;
+                mockUrlConn.getInputStream();
+                result = new ByteArrayInputStream(expectedResponse);
+            }
+        };
+        HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
+        conn.connect();
+
+        byte[] testResponse = conn.readInput();
+
+        assertThat(testResponse, is(expectedResponse));
+    }
+
+    // Tests_SRS_HTTPSCONNECTION_28_002: [The function shall read the error stream in bulk, using the Content-Length of the response to size the result.]
+    @Test
+    public void readErrorReadsContentLengthBytes() throws IOException
+    {
+        final HttpsMethod httpsMethod = HttpsMethod.GET;
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+                mockUrl.openConnection();
+                result = mockUrlConn;
+                mockUrlConn.getRequestMethod();
+                result = httpsMethod.name();
+                mockUrlConn.getContentLengthLong();
+                result = 3;
+                mockUrlConn.getErrorStream();
+                result = new ByteArrayInputStream(new byte[] { 1, 2, 3 });
+            }
+        };
+        HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
+        conn.connect();
+
+        byte[] testError = conn.readError();
+
+        byte[] expectedError = { 1, 2, 3 };
+        assertThat(testError, is(expectedError));
+    }
+
     // Tests_SRS_HTTPSCONNECTION_11_013: [The function shall read from the error stream and return the response.]
     @Test
-    public void readErrorCompletelyReadsErrorStream(
-            @Mocked final InputStream mockIs)
+    public void readErrorCompletelyReadsErrorStream()
             throws IOException
     {
         final HttpsMethod httpsMethod = HttpsMethod.GET;
@@ -530,9 +652,7 @@ public class HttpsConnectionTest
                 mockUrlConn.getRequestMethod();
                 result = httpsMethod.name();
                 mockUrlConn.getErrorStream();
-                result = mockIs;
-                mockIs.read();
-                returns(1, 2, 3, -1);
+                result = new ByteArrayInputStream(new byte[] { 1, 2, 3 });
             }
         };
         HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
@@ -614,7 +734,7 @@ public class HttpsConnectionTest
                 result = httpsMethod.name();
                 mockUrlConn.getErrorStream();
                 result = mockIs;
-                mockIs.read();
+                mockIs.read((byte[]) any, anyInt, anyInt);
                 result = -1;
             }
         };
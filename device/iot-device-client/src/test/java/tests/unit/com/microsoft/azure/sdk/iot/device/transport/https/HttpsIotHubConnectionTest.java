@@ -11,12 +11,18 @@ import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import mockit.Verifications;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URL;
 import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.*;
@@ -45,6 +51,13 @@ public class HttpsIotHubConnectionTest
 
     private static final String testSasToken = "SharedAccessSignature sr=test&sig=test&se=0";
 
+    @BeforeClass
+    public static void loadSecurityProviders()
+    {
+        // The security providers are loaded from their jar URLs, which cannot be done while URL is mocked.
+        UUID.randomUUID();
+    }
+
     @Before
     public void setup() throws IOException
     {
@@ -374,6 +387,212 @@ public class HttpsIotHubConnectionTest
         conn.sendEvent(mockMsg);
     }
 
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_28_004: [The function shall reuse the URL built by a previous call for the same IoT Hub hostname and device id.]
+    @Test
+    public void sendEventReusesUrlForSameDevice(@Mocked final IotHubEventUri mockUri) throws IOException
+    {
+        final String iotHubHostname = "test.iothub";
+        final String deviceId = "test-device-id";
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getIotHubHostname();
+                result = iotHubHostname;
+                mockConfig.getDeviceId();
+                result = deviceId;
+            }
+        };
+
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+        conn.sendEvent(mockMsg);
+        conn.sendEvent(mockMsg);
+
+        new Verifications()
+        {
+            {
+                new IotHubEventUri(iotHubHostname, deviceId);
+                times = 1;
+                new HttpsRequest((URL) any, HttpsMethod.POST, (byte[]) any);
+                times = 2;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_28_004: [The function shall reuse the URL built by a previous call for the same IoT Hub hostname and device id.]
+    @Test
+    public void sendEventRebuildsUrlWhenDeviceIdChanges(@Mocked final IotHubEventUri mockUri) throws IOException
+    {
+        final String iotHubHostname = "test.iothub";
+        final String deviceId1 = "test-device-id-1";
+        final String deviceId2 = "test-device-id-2";
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getIotHubHostname();
+                result = iotHubHostname;
+                mockConfig.getDeviceId();
+                returns(deviceId1, deviceId2);
+            }
+        };
+
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+        conn.sendEvent(mockMsg);
+        conn.sendEvent(mockMsg);
+
+        new Verifications()
+        {
+            {
+                new IotHubEventUri(iotHubHostname, deviceId1);
+                times = 1;
+                new IotHubEventUri(iotHubHostname, deviceId2);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_28_001: [The constructor shall allow up to the configuration parameter httpsMaxInFlightRequests requests in flight at the same time, and at least 1.]
+    @Test
+    public void constructorCreatesRequestPermitsFromConfig()
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getHttpsMaxInFlightRequests();
+                result = 3;
+            }
+        };
+
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+
+        Semaphore requestPermits = Deencapsulation.getField(conn, "requestPermits");
+        assertThat(requestPermits.availablePermits(), is(3));
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_28_001: [The constructor shall allow up to the configuration parameter httpsMaxInFlightRequests requests in flight at the same time, and at least 1.]
+    @Test
+    public void constructorCreatesAtLeastOneRequestPermit()
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getHttpsMaxInFlightRequests();
+                result = 0;
+            }
+        };
+
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+
+        Semaphore requestPermits = Deencapsulation.getField(conn, "requestPermits");
+        assertThat(requestPermits.availablePermits(), is(1));
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_28_002: [The function shall wait for a free request permit before sending the request, and give it back after the request completes or fails.]
+    @Test
+    public void sendEventGivesBackRequestPermitIfRequestFails(@Mocked final IotHubEventUri mockUri) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockRequest.send();
+                result = new IOException();
+            }
+        };
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+
+        try
+        {
+            conn.sendEvent(mockMsg);
+            fail("sendEvent should have thrown IOException");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+
+        Semaphore requestPermits = Deencapsulation.getField(conn, "requestPermits");
+        assertThat(requestPermits.availablePermits(), is(1));
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_28_003: [If the thread is interrupted while waiting for a request permit, the function shall throw an InterruptedIOException.]
+    @Test
+    public void sendEventThrowsIfInterruptedWhileWaitingForRequestPermit(@Mocked final IotHubEventUri mockUri) throws IOException
+    {
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+        Deencapsulation.setField(conn, "requestPermits", new Semaphore(0));
+
+        Thread.currentThread().interrupt();
+        try
+        {
+            conn.sendEvent(mockMsg);
+            fail("sendEvent should have thrown InterruptedIOException");
+        }
+        catch (InterruptedIOException e)
+        {
+            // expected
+        }
+        finally
+        {
+            assertTrue(Thread.interrupted());
+        }
+
+        new Verifications()
+        {
+            {
+                mockRequest.send();
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_28_002: [The function shall wait for a free request permit before sending the request, and give it back after the request completes or fails.]
+    @Test
+    public void sendEventDoesNotWaitForReceiveMessage(@Mocked final IotHubEventUri mockUri) throws IOException, InterruptedException
+    {
+        final HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+        final Object messageLock = Deencapsulation.getField(conn, "MESSAGE_LOCK");
+        final CountDownLatch lockTaken = new CountDownLatch(1);
+        final CountDownLatch sendDone = new CountDownLatch(1);
+        Thread receiveThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized (messageLock)
+                {
+                    lockTaken.countDown();
+                    try
+                    {
+                        sendDone.await(10, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        receiveThread.start();
+        assertTrue(lockTaken.await(10, TimeUnit.SECONDS));
+
+        try
+        {
+            conn.sendEvent(mockMsg);
+        }
+        finally
+        {
+            sendDone.countDown();
+            receiveThread.join();
+        }
+
+        new Verifications()
+        {
+            {
+                mockRequest.send();
+                times = 1;
+            }
+        };
+    }
+
     // Tests_SRS_HTTPSIOTHUBCONNECTION_21_041: [The function shall send a request to the URL https://[iotHubHostname]/devices/[deviceId]/[path]?api-version=2016-02-03.]
     @Test
     public void sendHttpsMessageHasCorrectUrl(
@@ -410,6 +629,40 @@ public class HttpsIotHubConnectionTest
         };
     }
 
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_28_005: [The function shall reuse the URL built by a previous call for the same IoT Hub hostname, device id and path.]
+    @Test
+    public void sendHttpsMessageReusesUrlForSamePath(@Mocked final IotHubUri mockUri) throws IOException
+    {
+        final String iotHubHostname = "test.iothub";
+        final String deviceId = "test-device-id";
+        final String uriPath1 = "/files";
+        final String uriPath2 = "/files/notifications";
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getIotHubHostname();
+                result = iotHubHostname;
+                mockConfig.getDeviceId();
+                result = deviceId;
+            }
+        };
+
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+        conn.sendHttpsMessage(mockMsg, HttpsMethod.POST, uriPath1);
+        conn.sendHttpsMessage(mockMsg, HttpsMethod.POST, uriPath1);
+        conn.sendHttpsMessage(mockMsg, HttpsMethod.POST, uriPath2);
+
+        new Verifications()
+        {
+            {
+                new IotHubUri(iotHubHostname, deviceId, uriPath1);
+                times = 1;
+                new IotHubUri(iotHubHostname, deviceId, uriPath2);
+                times = 1;
+            }
+        };
+    }
+
     // Tests_SRS_HTTPSIOTHUBCONNECTION_21_042: [The function shall send a `httpsMethod` request.]
     @Test
     public void sendHttpsMessageSendsPostRequest(
@@ -734,6 +987,35 @@ public class HttpsIotHubConnectionTest
         };
     }
 
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_28_006: [The function shall reuse the URL built by a previous call for the same IoT Hub hostname and device id.]
+    @Test
+    public void receiveMessageReusesUrlForSameDevice(@Mocked final IotHubMessageUri mockUri) throws IOException
+    {
+        final String iotHubHostname = "test.iothub";
+        final String deviceId = "test-device-id";
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getIotHubHostname();
+                result = iotHubHostname;
+                mockConfig.getDeviceId();
+                result = deviceId;
+            }
+        };
+
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+        conn.receiveMessage();
+        conn.receiveMessage();
+
+        new Verifications()
+        {
+            {
+                new IotHubMessageUri(iotHubHostname, deviceId);
+                times = 1;
+            }
+        };
+    }
+
     // Tests_SRS_HTTPSIOTHUBCONNECTION_11_014: [The function shall send a GET request.]
     @Test
     public void receiveMessageSendsGetRequest(@Mocked final IotHubMessageUri mockUri) throws IOException
@@ -7,16 +7,22 @@ import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.exceptions.IotHubSizeExceededException;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueue;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueueMetrics;
 import com.microsoft.azure.sdk.iot.device.transport.https.*;
 import junit.framework.AssertionFailedError;
 import mockit.*;
+import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.Executor;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.*;
@@ -33,6 +39,19 @@ public class HttpsTransportTest
     @Mocked
     HttpsIotHubConnection mockConn;
 
+    @Before
+    public void setup()
+    {
+        // The callbacks are invoked on the calling thread, as without a callback executor.
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getCallbackExecutor();
+                result = null;
+            }
+        };
+    }
+
     // Tests_SRS_HTTPSTRANSPORT_11_021: [The function shall establish an HTTPS connection with the IoT Hub given in the configuration.]
     @Test
     public void openCreatesCorrectHttpsConnection() throws IOException
@@ -113,7 +132,7 @@ public class HttpsTransportTest
 
 
         Queue<IotHubOutboundPacket> actualInProgressMessages = Deencapsulation.getField(transport, "inProgressList");
-        Queue<IotHubOutboundPacket> actualWaitingMessages = Deencapsulation.getField(transport, "waitingList");
+        IotHubOutboundQueue actualWaitingMessages = Deencapsulation.getField(transport, "waitingList");
         
         assertEquals(actualWaitingMessages.size(), 0);
         assertEquals(actualInProgressMessages.size(), 0);        
@@ -579,6 +598,66 @@ public class HttpsTransportTest
         };
     }
 
+    // Tests_SRS_HTTPSTRANSPORT_28_003: [The constructor shall create a callback dispatcher for the config.]
+    // Tests_SRS_HTTPSTRANSPORT_28_004: [The function shall invoke the callbacks through the callback dispatcher.]
+    // Tests_SRS_HTTPSTRANSPORT_28_005: [The function shall return false while the callback dispatcher has callbacks to invoke.]
+    // Tests_SRS_HTTPSTRANSPORT_28_006: [The function shall return the metrics of the callback dispatcher.]
+    @Test
+    public void invokeCallbacksWithCallbackExecutorInvokesCallbacksOnExecutor(
+            @Mocked final IotHubEventCallback mockCallback)
+            throws URISyntaxException, IOException
+    {
+        // arrange
+        final List<Runnable> tasks = new ArrayList<>();
+        final Executor executor = new Executor()
+        {
+            @Override
+            public void execute(Runnable task)
+            {
+                tasks.add(task);
+            }
+        };
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getCallbackExecutor();
+                result = executor;
+            }
+        };
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        Queue<IotHubCallbackPacket> callbackList = Deencapsulation.getField(transport, "callbackList");
+        callbackList.add(new IotHubCallbackPacket(IotHubStatusCode.OK_EMPTY, mockCallback, "context"));
+
+        // act
+        transport.invokeCallbacks();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockCallback.execute((IotHubStatusCode) any, any);
+                times = 0;
+            }
+        };
+        assertEquals(1, tasks.size());
+        assertFalse(transport.isEmpty());
+
+        // act
+        tasks.remove(0).run();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.OK_EMPTY, "context");
+                times = 1;
+            }
+        };
+        assertTrue(transport.isEmpty());
+        assertEquals(1L, transport.getCallbackDispatcherMetrics().getCompletedCount());
+    }
+
     // Tests_SRS_HTTPSTRANSPORT_11_007: [The function shall invoke all callbacks on the callback queue.]
     @Test
     public <T extends Queue> void invokeCallbacksInvokesAllEventCallbacksWithMessage(
@@ -1047,4 +1126,38 @@ public class HttpsTransportTest
         //act
         transport.registerConnectionStateCallback(null, callbackContext);
     }
+
+    // Tests_SRS_HTTPSTRANSPORT_28_001: [The transport queue shall be bounded by the outbound queue capacity and policy of the config.]
+    // Tests_SRS_HTTPSTRANSPORT_28_002: [The function shall return the metrics of the transport queue.]
+    @Test
+    public void addMessageDropsMessageWhenOutboundQueueIsFull(@Mocked final IotHubEventCallback mockCallback) throws IOException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getOutboundQueueCapacity();
+                result = 1;
+                mockConfig.getOutboundQueuePolicy();
+                result = IotHubOutboundQueuePolicy.FAIL_FAST;
+            }
+        };
+        final Object context = new Object();
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+
+        // act
+        transport.addMessage(new Message("first"), mockCallback, null);
+        transport.addMessage(new Message("second"), mockCallback, context);
+
+        // assert
+        Queue<IotHubCallbackPacket> callbackList = Deencapsulation.getField(transport, "callbackList");
+        assertEquals(1, callbackList.size());
+        IotHubCallbackPacket callbackPacket = callbackList.remove();
+        assertEquals(IotHubStatusCode.OUTBOUND_QUEUE_FULL, callbackPacket.getStatus());
+        assertEquals(context, callbackPacket.getContext());
+        IotHubOutboundQueueMetrics metrics = transport.getOutboundQueueMetrics();
+        assertEquals(1, metrics.getSize());
+        assertEquals(1, metrics.getDroppedCount());
+    }
 }
@@ -19,6 +19,7 @@ import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -114,6 +115,22 @@ public class MqttConnectionTest
         assertNotNull(actualLock);
     }
 
+    //Tests_SRS_MQTTCONNECTION_28_001: [The constructor shall create an in-flight window with MAX_IN_FLIGHT_COUNT slots for this MqttConnection.]
+    @Test
+    public void constructorCreatesInFlightWindow() throws Exception
+    {
+        //arrange
+        baseConstructorExpectations();
+
+        //act
+        final MqttConnection mqttConnection = Deencapsulation.newInstance(MqttConnection.class, SERVER_URI, CLIENT_ID, USER_NAME, PASSWORD, mockIotHubSSLContext);
+
+        //assert
+        Semaphore actualWindow = Deencapsulation.getField(mqttConnection, "inFlightWindow");
+        int maxInFlightCount = Deencapsulation.getField(MqttConnection.class, "MAX_IN_FLIGHT_COUNT");
+        assertEquals(maxInFlightCount, actualWindow.availablePermits());
+    }
+
     @Test (expected = IOException.class)
     public void constructorThrowsOnAsyncClientFailure() throws Exception
     {
@@ -222,6 +239,53 @@ public class MqttConnectionTest
         assertNotNull(mqttLock);
     }
 
+    //Tests_SRS_MQTTCONNECTION_28_002: [Getter for the in-flight window on this connection.]
+    @Test
+    public void getInFlightWindowSucceeds() throws Exception
+    {
+        //arrange
+        final MqttConnection mqttConnection = Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class}, SERVER_URI, CLIENT_ID, USER_NAME, PASSWORD, mockIotHubSSLContext);
+
+        //act
+        Semaphore inFlightWindow = Deencapsulation.invoke(mqttConnection, "getInFlightWindow");
+
+        //assert
+        assertNotNull(inFlightWindow);
+    }
+
+    //Tests_SRS_MQTTCONNECTION_28_003: [The function shall set the free slots of the in-flight window to MAX_IN_FLIGHT_COUNT minus the provided number of pending deliveries, and never below zero.]
+    @Test
+    public void resetInFlightWindowGivesBackSlotsOfLostDeliveries() throws Exception
+    {
+        //arrange
+        final MqttConnection mqttConnection = Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class}, SERVER_URI, CLIENT_ID, USER_NAME, PASSWORD, mockIotHubSSLContext);
+        int maxInFlightCount = Deencapsulation.getField(MqttConnection.class, "MAX_IN_FLIGHT_COUNT");
+        Semaphore inFlightWindow = Deencapsulation.invoke(mqttConnection, "getInFlightWindow");
+        inFlightWindow.acquire(maxInFlightCount);
+
+        //act
+        Deencapsulation.invoke(mqttConnection, "resetInFlightWindow", 3);
+
+        //assert
+        assertEquals(maxInFlightCount - 3, inFlightWindow.availablePermits());
+    }
+
+    //Tests_SRS_MQTTCONNECTION_28_003: [The function shall set the free slots of the in-flight window to MAX_IN_FLIGHT_COUNT minus the provided number of pending deliveries, and never below zero.]
+    @Test
+    public void resetInFlightWindowNeverGoesBelowZero() throws Exception
+    {
+        //arrange
+        final MqttConnection mqttConnection = Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class}, SERVER_URI, CLIENT_ID, USER_NAME, PASSWORD, mockIotHubSSLContext);
+        int maxInFlightCount = Deencapsulation.getField(MqttConnection.class, "MAX_IN_FLIGHT_COUNT");
+        Semaphore inFlightWindow = Deencapsulation.invoke(mqttConnection, "getInFlightWindow");
+
+        //act
+        Deencapsulation.invoke(mqttConnection, "resetInFlightWindow", maxInFlightCount + 1);
+
+        //assert
+        assertEquals(0, inFlightWindow.availablePermits());
+    }
+
     //Tests_SRS_MQTTCONNECTION_25_010: [Getter for the MqttConnectionOptions.]
     @Test
     public void getConnectionOptionsSucceeds() throws Exception
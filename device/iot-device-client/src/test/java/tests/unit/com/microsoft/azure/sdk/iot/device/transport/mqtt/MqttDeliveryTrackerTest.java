@@ -0,0 +1,281 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.mqtt;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttDeliveryTracker;
+import mockit.Deencapsulation;
+import mockit.Injectable;
+import mockit.NonStrictExpectations;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MqttDeliveryTracker.java
+ */
+public class MqttDeliveryTrackerTest
+{
+    private static final long DELIVERY_TIMEOUT_IN_MILLISECONDS = 60000;
+
+    @Injectable
+    IMqttDeliveryToken mockedToken1;
+
+    @Injectable
+    IMqttDeliveryToken mockedToken2;
+
+    @Injectable
+    IMqttDeliveryToken mockedToken3;
+
+    @Injectable
+    IotHubOutboundPacket mockedPacket1;
+
+    @Injectable
+    IotHubOutboundPacket mockedPacket2;
+
+    @Injectable
+    IotHubOutboundPacket mockedPacket3;
+
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_001: [The constructor shall save the delivery timeout and start with no tracked deliveries.]
+    @Test
+    public void constructorSavesTimeout()
+    {
+        // act
+        MqttDeliveryTracker tracker = new MqttDeliveryTracker(DELIVERY_TIMEOUT_IN_MILLISECONDS);
+
+        // assert
+        assertEquals(DELIVERY_TIMEOUT_IN_MILLISECONDS, (long) Deencapsulation.getField(tracker, "deliveryTimeoutInMilliseconds"));
+        assertTrue(tracker.isEmpty());
+    }
+
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_002: [If the provided deliveryTimeoutInMilliseconds is zero or negative, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnZeroTimeout()
+    {
+        // act
+        new MqttDeliveryTracker(0);
+    }
+
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_003: [The function shall save the packet and its publish time under the provided delivery token.]
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_015: [The function shall return true if there are no packets in flight, delivered or requeued, and false otherwise.]
+    @Test
+    public void trackSavesPacketUnderToken()
+    {
+        // arrange
+        MqttDeliveryTracker tracker = new MqttDeliveryTracker(DELIVERY_TIMEOUT_IN_MILLISECONDS);
+
+        // act
+        tracker.track(mockedToken1, mockedPacket1);
+
+        // assert
+        Map<IMqttDeliveryToken, Object> inFlightDeliveries = Deencapsulation.getField(tracker, "inFlightDeliveries");
+        assertTrue(inFlightDeliveries.containsKey(mockedToken1));
+        assertFalse(tracker.isEmpty());
+        assertTrue(tracker.pollDelivered().isEmpty());
+    }
+
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_004: [If the provided deliveryToken or packet is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void trackThrowsOnNullToken()
+    {
+        // arrange
+        MqttDeliveryTracker tracker = new MqttDeliveryTracker(DELIVERY_TIMEOUT_IN_MILLISECONDS);
+
+        // act
+        tracker.track(null, mockedPacket1);
+    }
+
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_004: [If the provided deliveryToken or packet is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void trackThrowsOnNullPacket()
+    {
+        // arrange
+        MqttDeliveryTracker tracker = new MqttDeliveryTracker(DELIVERY_TIMEOUT_IN_MILLISECONDS);
+
+        // act
+        tracker.track(mockedToken1, null);
+    }
+
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_005: [If the delivery is already complete, the function shall add the packet to the delivered list.]
+    @Test
+    public void trackAddsAlreadyCompletedDeliveryToDeliveredList()
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockedToken1.isComplete();
+                result = true;
+            }
+        };
+        MqttDeliveryTracker tracker = new MqttDeliveryTracker(DELIVERY_TIMEOUT_IN_MILLISECONDS);
+
+        // act
+        tracker.track(mockedToken1, mockedPacket1);
+
+        // assert
+        List<IotHubOutboundPacket> delivered = tracker.pollDelivered();
+        assertEquals(1, delivered.size());
+        assertEquals(mockedPacket1, delivered.get(0));
+        assertTrue(tracker.isEmpty());
+    }
+
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_006: [The function shall move the packet tracked under the provided deliveryToken to the delivered list.]
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_008: [The function shall remove and return all packets in the delivered list, in publish order.]
+    @Test
+    public void completeMovesPacketsToDeliveredListInOrder()
+    {
+        // arrange
+        MqttDeliveryTracker tracker = new MqttDeliveryTracker(DELIVERY_TIMEOUT_IN_MILLISECONDS);
+        tracker.track(mockedToken1, mockedPacket1);
+        tracker.track(mockedToken2, mockedPacket2);
+        tracker.track(mockedToken3, mockedPacket3);
+
+        // act
+        tracker.complete(mockedToken3);
+        tracker.complete(mockedToken1);
+
+        // assert
+        List<IotHubOutboundPacket> delivered = tracker.pollDelivered();
+        assertEquals(2, delivered.size());
+        assertEquals(mockedPacket3, delivered.get(0));
+        assertEquals(mockedPacket1, delivered.get(1));
+        assertTrue(tracker.pollDelivered().isEmpty());
+        assertFalse(tracker.isEmpty());
+    }
+
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_007: [If the provided deliveryToken is not tracked, the function shall do nothing.]
+    @Test
+    public void completeDoesNothingForUnknownToken()
+    {
+        // arrange
+        MqttDeliveryTracker tracker = new MqttDeliveryTracker(DELIVERY_TIMEOUT_IN_MILLISECONDS);
+
+        // act
+        tracker.complete(mockedToken1);
+
+        // assert
+        assertTrue(tracker.pollDelivered().isEmpty());
+        assertTrue(tracker.isEmpty());
+    }
+
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_009: [The function shall stop tracking every packet tracked for longer than the delivery timeout.]
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_010: [The function shall return the packets that timed out, in publish order.]
+    @Test
+    public void pollTimedOutReturnsExpiredPacketsInOrder() throws InterruptedException
+    {
+        // arrange
+        MqttDeliveryTracker tracker = new MqttDeliveryTracker(1);
+        tracker.track(mockedToken1, mockedPacket1);
+        tracker.track(mockedToken2, mockedPacket2);
+        Thread.sleep(10);
+
+        // act
+        List<IotHubOutboundPacket> timedOut = tracker.pollTimedOut();
+
+        // assert
+        assertEquals(2, timedOut.size());
+        assertEquals(mockedPacket1, timedOut.get(0));
+        assertEquals(mockedPacket2, timedOut.get(1));
+        assertTrue(tracker.isEmpty());
+    }
+
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_009: [The function shall stop tracking every packet tracked for longer than the delivery timeout.]
+    @Test
+    public void pollTimedOutKeepsPacketsWithinTimeout()
+    {
+        // arrange
+        MqttDeliveryTracker tracker = new MqttDeliveryTracker(DELIVERY_TIMEOUT_IN_MILLISECONDS);
+        tracker.track(mockedToken1, mockedPacket1);
+
+        // act
+        List<IotHubOutboundPacket> timedOut = tracker.pollTimedOut();
+
+        // assert
+        assertTrue(timedOut.isEmpty());
+        assertFalse(tracker.isEmpty());
+    }
+
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_011: [The function shall move every tracked packet whose delivery token is not complete and not in the provided pending tokens to the requeued list, in publish order.]
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_012: [The function shall move every tracked packet whose delivery is complete to the delivered list.]
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_013: [The function shall remove and return all packets in the requeued list, in publish order.]
+    @Test
+    public void requeueLostDeliveriesRequeuesPacketsNoLongerPending()
+    {
+        // arrange
+        MqttDeliveryTracker tracker = new MqttDeliveryTracker(DELIVERY_TIMEOUT_IN_MILLISECONDS);
+        tracker.track(mockedToken1, mockedPacket1);
+        tracker.track(mockedToken2, mockedPacket2);
+        tracker.track(mockedToken3, mockedPacket3);
+        new NonStrictExpectations()
+        {
+            {
+                mockedToken1.isComplete();
+                result = false;
+                mockedToken2.isComplete();
+                result = true;
+                mockedToken3.isComplete();
+                result = false;
+            }
+        };
+
+        // act
+        tracker.requeueLostDeliveries(new IMqttDeliveryToken[] {mockedToken3});
+
+        // assert
+        List<IotHubOutboundPacket> requeued = tracker.pollRequeued();
+        assertEquals(1, requeued.size());
+        assertEquals(mockedPacket1, requeued.get(0));
+        List<IotHubOutboundPacket> delivered = tracker.pollDelivered();
+        assertEquals(1, delivered.size());
+        assertEquals(mockedPacket2, delivered.get(0));
+        assertFalse(tracker.isEmpty());
+    }
+
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_011: [The function shall move every tracked packet whose delivery token is not complete and not in the provided pending tokens to the requeued list, in publish order.]
+    @Test
+    public void requeueLostDeliveriesWithNullPendingTokensRequeuesAll()
+    {
+        // arrange
+        MqttDeliveryTracker tracker = new MqttDeliveryTracker(DELIVERY_TIMEOUT_IN_MILLISECONDS);
+        tracker.track(mockedToken1, mockedPacket1);
+        tracker.track(mockedToken2, mockedPacket2);
+
+        // act
+        tracker.requeueLostDeliveries(null);
+
+        // assert
+        List<IotHubOutboundPacket> requeued = tracker.pollRequeued();
+        assertEquals(2, requeued.size());
+        assertEquals(mockedPacket1, requeued.get(0));
+        assertEquals(mockedPacket2, requeued.get(1));
+        assertTrue(tracker.isEmpty());
+    }
+
+    // Tests_SRS_MQTTDELIVERYTRACKER_28_014: [The function shall remove and return all requeued packets followed by all packets in flight, in publish order.]
+    @Test
+    public void removeUndeliveredReturnsRequeuedThenInFlightPackets()
+    {
+        // arrange
+        MqttDeliveryTracker tracker = new MqttDeliveryTracker(DELIVERY_TIMEOUT_IN_MILLISECONDS);
+        tracker.track(mockedToken1, mockedPacket1);
+        tracker.requeueLostDeliveries(null);
+        tracker.track(mockedToken2, mockedPacket2);
+        tracker.track(mockedToken3, mockedPacket3);
+
+        // act
+        List<IotHubOutboundPacket> undelivered = tracker.removeUndelivered();
+
+        // assert
+        assertEquals(3, undelivered.size());
+        assertEquals(mockedPacket1, undelivered.get(0));
+        assertEquals(mockedPacket2, undelivered.get(1));
+        assertEquals(mockedPacket3, undelivered.get(2));
+        assertTrue(tracker.isEmpty());
+    }
+}
@@ -10,6 +10,7 @@ import com.microsoft.azure.sdk.iot.device.transport.IotHubTransportMessage;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.Mqtt;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttConnection;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttDeviceMethod;
+import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttPendingRequests;
 import mockit.Deencapsulation;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
@@ -19,8 +20,6 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Test;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -155,9 +154,9 @@ public class MqttDeviceMethodTest
         testMessage.setRequestId("ReqId");
         testMessage.setStatus("testStatus");
         final MqttDeviceMethod testMethod = new MqttDeviceMethod(mockedMqttConnection);
-        Map<String, DeviceOperations> testRequestMap = new HashMap<>();
-        testRequestMap.put("ReqId", DEVICE_OPERATION_METHOD_RECEIVE_REQUEST);
-        Deencapsulation.setField(testMethod, "requestMap", testRequestMap);
+        MqttPendingRequests testRequestMap = new MqttPendingRequests(60000);
+        testRequestMap.add("ReqId", DEVICE_OPERATION_METHOD_RECEIVE_REQUEST);
+        Deencapsulation.setField(testMethod, "pendingRequests", testRequestMap);
         testMethod.start();
 
         //act
@@ -171,7 +170,7 @@ public class MqttDeviceMethodTest
                 maxTimes = 1;
             }
         };
-        assertTrue(testRequestMap.isEmpty());
+        assertEquals(0, testRequestMap.size());
     }
 
     @Test (expected = IOException.class)
@@ -289,9 +288,9 @@ public class MqttDeviceMethodTest
         testMessage.setRequestId("ReqId");
         testMessage.setStatus("testStatus");
         MqttDeviceMethod testMethod = new MqttDeviceMethod(mockedMqttConnection);
-        Map<String, DeviceOperations> testRequestMap = new HashMap<>();
-        testRequestMap.put("ReqId", DEVICE_OPERATION_METHOD_SUBSCRIBE_REQUEST);
-        Deencapsulation.setField(testMethod, "requestMap", testRequestMap);
+        MqttPendingRequests testRequestMap = new MqttPendingRequests(60000);
+        testRequestMap.add("ReqId", DEVICE_OPERATION_METHOD_SUBSCRIBE_REQUEST);
+        Deencapsulation.setField(testMethod, "pendingRequests", testRequestMap);
         testMethod.start();
 
         //act
@@ -444,4 +443,55 @@ public class MqttDeviceMethodTest
         Deencapsulation.setField(mqttDeviceMethod, "allReceivedMessages", null);
         mqttDeviceMethod.receive();
     }
+
+    /*
+    Tests_SRS_MqttDeviceMethod_28_001: [**If the topic is of type post topic then this method shall add the request id to the pending requests until the response is sent.**]**
+     */
+    @Test
+    public void receiveKeepsSeveralInvocationsPending() throws IOException
+    {
+        //arrange
+        Queue<Pair<String, byte[]>> testAllReceivedMessages = new ConcurrentLinkedQueue<>();
+        testAllReceivedMessages.add(new MutablePair<>("$iothub/methods/POST/testMethod/?$rid=10", "TestPayload".getBytes()));
+        testAllReceivedMessages.add(new MutablePair<>("$iothub/methods/POST/testMethod/?$rid=11", "TestPayload".getBytes()));
+        MqttDeviceMethod testMethod = new MqttDeviceMethod(mockedMqttConnection);
+        Deencapsulation.setField(testMethod, "allReceivedMessages", testAllReceivedMessages);
+        Deencapsulation.setField(testMethod, "mqttLock", new Object());
+        testMethod.start();
+
+        //act
+        testMethod.receive();
+        testMethod.receive();
+
+        //assert
+        MqttPendingRequests pendingRequests = Deencapsulation.getField(testMethod, "pendingRequests");
+        assertEquals(2, pendingRequests.size());
+        assertEquals(DEVICE_OPERATION_METHOD_RECEIVE_REQUEST, pendingRequests.remove("10"));
+        assertEquals(DEVICE_OPERATION_METHOD_RECEIVE_REQUEST, pendingRequests.remove("11"));
+    }
+
+    /*
+    Tests_SRS_MqttDeviceMethod_28_002: [**This method shall remove the method invocations that were not answered within the time the IoT Hub waits for their response.**]**
+     */
+    @Test
+    public void receiveRemovesExpiredInvocations() throws IOException, InterruptedException
+    {
+        //arrange
+        MqttDeviceMethod testMethod = new MqttDeviceMethod(mockedMqttConnection);
+        Deencapsulation.setField(testMethod, "allReceivedMessages", new ConcurrentLinkedQueue<Pair<String, byte[]>>());
+        Deencapsulation.setField(testMethod, "mqttLock", new Object());
+        MqttPendingRequests pendingRequests = new MqttPendingRequests(1);
+        pendingRequests.add("10", DEVICE_OPERATION_METHOD_RECEIVE_REQUEST);
+        pendingRequests.add("11", DEVICE_OPERATION_METHOD_RECEIVE_REQUEST);
+        Deencapsulation.setField(testMethod, "pendingRequests", pendingRequests);
+        testMethod.start();
+        Thread.sleep(10);
+
+        //act
+        Message testMessage = testMethod.receive();
+
+        //assert
+        assertNull(testMessage);
+        assertEquals(0, pendingRequests.size());
+    }
 }
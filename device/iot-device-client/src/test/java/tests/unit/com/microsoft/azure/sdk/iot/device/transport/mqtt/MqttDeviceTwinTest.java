@@ -9,13 +9,13 @@ import com.microsoft.azure.sdk.iot.device.transport.IotHubTransportMessage;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.Mqtt;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttConnection;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttDeviceTwin;
+import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttPendingRequests;
 import mockit.*;
 import org.apache.commons.lang3.tuple.MutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.junit.Test;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -461,9 +461,9 @@ public class MqttDeviceTwinTest
             Queue<Pair<String, byte[]>> testAllReceivedMessages = new ConcurrentLinkedQueue<>();
             testAllReceivedMessages.add(new MutablePair<>(insertTopic, actualPayload));
             Deencapsulation.setField(testTwin, "allReceivedMessages", testAllReceivedMessages);
-            Map<String, DeviceOperations> requestMap = new HashMap<>();
-            requestMap.put(mockReqId, DEVICE_OPERATION_TWIN_GET_REQUEST);
-            Deencapsulation.setField(testTwin, "requestMap", requestMap);
+            MqttPendingRequests requestMap = new MqttPendingRequests(60000);
+            requestMap.add(mockReqId, DEVICE_OPERATION_TWIN_GET_REQUEST);
+            Deencapsulation.setField(testTwin, "pendingRequests", requestMap);
 
             //act
             receivedMessage = (IotHubTransportMessage) testTwin.receive();
@@ -501,9 +501,9 @@ public class MqttDeviceTwinTest
             testAllReceivedMessages.add(new MutablePair<>(insertTopic, actualPayload));
             Deencapsulation.setField(testTwin, "allReceivedMessages", testAllReceivedMessages);
 
-            Map<String, DeviceOperations> requestMap = new HashMap<>();
-            requestMap.put(mockReqId, DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST);
-            Deencapsulation.setField(testTwin, "requestMap", requestMap);
+            MqttPendingRequests requestMap = new MqttPendingRequests(60000);
+            requestMap.add(mockReqId, DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST);
+            Deencapsulation.setField(testTwin, "pendingRequests", requestMap);
 
             //act
             receivedMessage = (IotHubTransportMessage) testTwin.receive();
@@ -519,6 +519,33 @@ public class MqttDeviceTwinTest
             assertTrue(receivedMessage.getVersion().equals(mockVersion));
         }
     }
+    /*
+    **Tests_SRS_MQTTDEVICETWIN_28_001: [**This method shall parse the response and patch topics in a single pass with a TopicParser, without splitting them.**]**
+     */
+    @Test
+    public void receiveParsesResponseTopicWithVersionBeforeRequestId() throws IOException
+    {
+        //arrange
+        final String insertTopic = "$iothub/twin/res/" + "204" + "/?$version=" + mockVersion + "&$rid=" + mockReqId;
+        baseConstructorExpectation();
+        MqttDeviceTwin testTwin = new MqttDeviceTwin(mockedMqttConnection);
+        Queue<Pair<String, byte[]>> testAllReceivedMessages = new ConcurrentLinkedQueue<>();
+        testAllReceivedMessages.add(new MutablePair<>(insertTopic, new byte[0]));
+        Deencapsulation.setField(testTwin, "allReceivedMessages", testAllReceivedMessages);
+        MqttPendingRequests requestMap = new MqttPendingRequests(60000);
+        requestMap.add(mockReqId, DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST);
+        Deencapsulation.setField(testTwin, "pendingRequests", requestMap);
+
+        //act
+        IotHubTransportMessage receivedMessage = (IotHubTransportMessage) testTwin.receive();
+
+        //assert
+        assertEquals("204", receivedMessage.getStatus());
+        assertEquals(mockReqId, receivedMessage.getRequestId());
+        assertEquals(mockVersion, receivedMessage.getVersion());
+        assertEquals(DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_RESPONSE, receivedMessage.getDeviceOperationType());
+    }
+
     /*
     **Tests_SRS_MQTTDEVICETWIN_25_042: [**If the topic is of type patch for desired properties then this method shall parse further to look for version which if found is set by calling setVersion**]**
      */
@@ -634,9 +661,9 @@ public class MqttDeviceTwinTest
             Deencapsulation.setField(testTwin, "mqttLock", new Object());
 
 
-            Map<String, DeviceOperations> requestMap = new HashMap<>();
-            requestMap.put(mockReqId, DEVICE_OPERATION_TWIN_GET_REQUEST);
-            Deencapsulation.setField(testTwin, "requestMap", requestMap);
+            MqttPendingRequests requestMap = new MqttPendingRequests(60000);
+            requestMap.add(mockReqId, DEVICE_OPERATION_TWIN_GET_REQUEST);
+            Deencapsulation.setField(testTwin, "pendingRequests", requestMap);
 
             //act
             receivedMessage = (IotHubTransportMessage) testTwin.receive();
@@ -669,9 +696,9 @@ public class MqttDeviceTwinTest
             testAllReceivedMessages.add(new MutablePair<>(insertTopic, actualPayload));
             Deencapsulation.setField(testTwin, "allReceivedMessages", testAllReceivedMessages);
 
-            Map<String, DeviceOperations> requestMap = new HashMap<>();
-            requestMap.put(mockReqId, DEVICE_OPERATION_TWIN_GET_REQUEST);
-            Deencapsulation.setField(testTwin, "requestMap", requestMap);
+            MqttPendingRequests requestMap = new MqttPendingRequests(60000);
+            requestMap.add(mockReqId, DEVICE_OPERATION_TWIN_GET_REQUEST);
+            Deencapsulation.setField(testTwin, "pendingRequests", requestMap);
             Deencapsulation.setField(testTwin, "mqttLock", new Object());
 
             //act
@@ -708,9 +735,9 @@ public class MqttDeviceTwinTest
             testAllReceivedMessages.add(new MutablePair<>(insertTopic, actualPayload));
             Deencapsulation.setField(testTwin, "allReceivedMessages", testAllReceivedMessages);
 
-            Map<String, DeviceOperations> requestMap = new HashMap<>();
-            requestMap.put(mockReqId, DEVICE_OPERATION_TWIN_GET_REQUEST);
-            Deencapsulation.setField(testTwin, "requestMap", requestMap);
+            MqttPendingRequests requestMap = new MqttPendingRequests(60000);
+            requestMap.add(mockReqId, DEVICE_OPERATION_TWIN_GET_REQUEST);
+            Deencapsulation.setField(testTwin, "pendingRequests", requestMap);
 
             //act
             receivedMessage = (IotHubTransportMessage) testTwin.receive();
@@ -747,9 +774,9 @@ public class MqttDeviceTwinTest
             Queue<Pair<String, byte[]>> testAllReceivedMessages = new ConcurrentLinkedQueue<>();
             testAllReceivedMessages.add(new MutablePair<>(insertTopic, actualPayload));
             Deencapsulation.setField(testTwin, "allReceivedMessages", testAllReceivedMessages);
-            Map<String, DeviceOperations> requestMap = new HashMap<>();
-            requestMap.put(mockReqId, DEVICE_OPERATION_TWIN_GET_REQUEST);
-            Deencapsulation.setField(testTwin, "requestMap", requestMap);
+            MqttPendingRequests requestMap = new MqttPendingRequests(60000);
+            requestMap.add(mockReqId, DEVICE_OPERATION_TWIN_GET_REQUEST);
+            Deencapsulation.setField(testTwin, "pendingRequests", requestMap);
 
             //act
             receivedMessage = (IotHubTransportMessage) testTwin.receive();
@@ -785,9 +812,9 @@ public class MqttDeviceTwinTest
             Deencapsulation.setField(testTwin, "allReceivedMessages", testAllReceivedMessages);
             Deencapsulation.setField(testTwin, "mqttLock", new Object());
 
-            Map<String, DeviceOperations> requestMap = new HashMap<>();
-            requestMap.put(mockReqId, DEVICE_OPERATION_TWIN_GET_REQUEST);
-            Deencapsulation.setField(testTwin, "requestMap", requestMap);
+            MqttPendingRequests requestMap = new MqttPendingRequests(60000);
+            requestMap.add(mockReqId, DEVICE_OPERATION_TWIN_GET_REQUEST);
+            Deencapsulation.setField(testTwin, "pendingRequests", requestMap);
 
             //act
             receivedMessage = (IotHubTransportMessage) testTwin.receive();
@@ -835,9 +862,9 @@ public class MqttDeviceTwinTest
             testAllReceivedMessages.add(new MutablePair<>(insertTopic, actualPayload));
             Deencapsulation.setField(testTwin, "allReceivedMessages", testAllReceivedMessages);
 
-            Map<String, DeviceOperations> requestMap = new HashMap<>();
-            requestMap.put(mockReqId, DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST);
-            Deencapsulation.setField(testTwin, "requestMap", requestMap);
+            MqttPendingRequests requestMap = new MqttPendingRequests(60000);
+            requestMap.add(mockReqId, DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST);
+            Deencapsulation.setField(testTwin, "pendingRequests", requestMap);
             Deencapsulation.setField(testTwin, "mqttLock", new Object());
 
             //act
@@ -1075,4 +1102,142 @@ public class MqttDeviceTwinTest
         Deencapsulation.setField(mqttDeviceTwin, "allReceivedMessages", null);
         mqttDeviceTwin.receive();
     }
+
+    /*
+    **Tests_SRS_MQTTDEVICETWIN_28_002: [**send method shall add the request to the pending requests before publishing it, so any number of requests can wait for their response at once.**]**
+     */
+    @Test
+    public void sendKeepsSeveralRequestsPending(@Mocked final Mqtt mockMqtt) throws IOException
+    {
+        //arrange
+        MqttDeviceTwin testTwin = new MqttDeviceTwin(mockedMqttConnection);
+        testTwin.start();
+        IotHubTransportMessage getMessage = new IotHubTransportMessage(new byte[0], MessageType.DEVICE_TWIN);
+        getMessage.setDeviceOperationType(DEVICE_OPERATION_TWIN_GET_REQUEST);
+        getMessage.setRequestId("1");
+        IotHubTransportMessage patchMessage = new IotHubTransportMessage(new byte[] {0x61}, MessageType.DEVICE_TWIN);
+        patchMessage.setDeviceOperationType(DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST);
+        patchMessage.setRequestId("2");
+
+        //act
+        testTwin.send(getMessage);
+        testTwin.send(patchMessage);
+
+        //assert
+        MqttPendingRequests pendingRequests = Deencapsulation.getField(testTwin, "pendingRequests");
+        assertEquals(2, pendingRequests.size());
+        assertEquals(DEVICE_OPERATION_TWIN_GET_REQUEST, pendingRequests.remove("1"));
+        assertEquals(DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST, pendingRequests.remove("2"));
+    }
+
+    /*
+    **Tests_SRS_MQTTDEVICETWIN_28_003: [**send method shall throw IOException if a request with the same request id is already waiting for its response.**]**
+     */
+    @Test (expected = IOException.class)
+    public void sendThrowsIfRequestIdIsAlreadyPending(@Mocked final Mqtt mockMqtt) throws IOException
+    {
+        //arrange
+        MqttDeviceTwin testTwin = new MqttDeviceTwin(mockedMqttConnection);
+        testTwin.start();
+        IotHubTransportMessage getMessage = new IotHubTransportMessage(new byte[0], MessageType.DEVICE_TWIN);
+        getMessage.setDeviceOperationType(DEVICE_OPERATION_TWIN_GET_REQUEST);
+        getMessage.setRequestId(mockReqId);
+        testTwin.send(getMessage);
+
+        //act
+        testTwin.send(getMessage);
+    }
+
+    /*
+    **Tests_SRS_MQTTDEVICETWIN_28_004: [**If the request cannot be published, send method shall remove it from the pending requests.**]**
+     */
+    @Test
+    public void sendRemovesRequestIfPublishFails() throws IOException
+    {
+        //arrange
+        new MockUp<Mqtt>()
+        {
+            @Mock
+            void subscribe(String topic)
+            {
+            }
+
+            @Mock
+            IMqttDeliveryToken publish(String publishTopic, byte[] payload) throws IOException
+            {
+                throw new IOException("publish failed");
+            }
+        };
+        baseConstructorExpectation();
+        MqttDeviceTwin testTwin = new MqttDeviceTwin(mockedMqttConnection);
+        testTwin.start();
+        IotHubTransportMessage getMessage = new IotHubTransportMessage(new byte[0], MessageType.DEVICE_TWIN);
+        getMessage.setDeviceOperationType(DEVICE_OPERATION_TWIN_GET_REQUEST);
+        getMessage.setRequestId(mockReqId);
+        boolean thrown = false;
+
+        //act
+        try
+        {
+            testTwin.send(getMessage);
+        }
+        catch (IOException expected)
+        {
+            thrown = true;
+        }
+
+        //assert
+        assertTrue(thrown);
+        MqttPendingRequests pendingRequests = Deencapsulation.getField(testTwin, "pendingRequests");
+        assertEquals(0, pendingRequests.size());
+    }
+
+    /*
+    **Tests_SRS_MQTTDEVICETWIN_28_005: [**If a pending request did not get its response within the request timeout, this method shall remove it and return a response to it with the request id, the status 504 and no payload.**]**
+     */
+    @Test
+    public void receiveReturnsTimeoutResponseForExpiredRequest() throws IOException, InterruptedException
+    {
+        //arrange
+        baseConstructorExpectation();
+        MqttDeviceTwin testTwin = new MqttDeviceTwin(mockedMqttConnection);
+        Deencapsulation.setField(testTwin, "allReceivedMessages", new ConcurrentLinkedQueue<Pair<String, byte[]>>());
+        MqttPendingRequests pendingRequests = new MqttPendingRequests(1);
+        pendingRequests.add(mockReqId, DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST);
+        Deencapsulation.setField(testTwin, "pendingRequests", pendingRequests);
+        Thread.sleep(10);
+
+        //act
+        IotHubTransportMessage receivedMessage = (IotHubTransportMessage) testTwin.receive();
+
+        //assert
+        assertNotNull(receivedMessage);
+        assertEquals(DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_RESPONSE, receivedMessage.getDeviceOperationType());
+        assertEquals(mockReqId, receivedMessage.getRequestId());
+        assertEquals("504", receivedMessage.getStatus());
+        assertEquals(0, receivedMessage.getBytes().length);
+        assertEquals(0, pendingRequests.size());
+        assertNull(testTwin.receive());
+    }
+
+    /*
+    **Tests_SRS_MQTTDEVICETWIN_28_006: [**If the response is for a request that is not pending, such as a request that timed out, this method shall drop it and return null.**]**
+     */
+    @Test
+    public void receiveDropsResponseForRequestNotPending() throws IOException
+    {
+        //arrange
+        baseConstructorExpectation();
+        MqttDeviceTwin testTwin = new MqttDeviceTwin(mockedMqttConnection);
+        Queue<Pair<String, byte[]>> testAllReceivedMessages = new ConcurrentLinkedQueue<>();
+        testAllReceivedMessages.add(new MutablePair<>("$iothub/twin/res/200/?$rid=" + mockReqId, new byte[0]));
+        Deencapsulation.setField(testTwin, "allReceivedMessages", testAllReceivedMessages);
+
+        //act
+        IotHubTransportMessage receivedMessage = (IotHubTransportMessage) testTwin.receive();
+
+        //assert
+        assertNull(receivedMessage);
+        assertTrue(testAllReceivedMessages.isEmpty());
+    }
 }
\ No newline at end of file
@@ -6,16 +6,20 @@ package tests.unit.com.microsoft.azure.sdk.iot.device.transport.mqtt;
 import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenAuthenticationProvider;
 import com.microsoft.azure.sdk.iot.device.net.IotHubUri;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransportMessage;
 import com.microsoft.azure.sdk.iot.device.transport.State;
 import com.microsoft.azure.sdk.iot.device.transport.TransportUtils;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.*;
 import mockit.*;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.junit.Test;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 
 import static junit.framework.TestCase.assertNotNull;
 import static org.junit.Assert.assertEquals;
@@ -73,6 +77,15 @@ public class MqttIotHubConnectionTest
     @Mocked
     private IotHubSasTokenAuthenticationProvider mockedSasTokenAuthenticationProvider;
 
+    @Mocked
+    private MqttDeliveryTracker mockedDeliveryTracker;
+
+    @Mocked
+    private IotHubOutboundPacket mockedPacket;
+
+    @Mocked
+    private IMqttDeliveryToken mockedDeliveryToken;
+
     // Tests_SRS_MQTTIOTHUBCONNECTION_15_001: [The constructor shall save the configuration.]
     @Test
     public void constructorSavesCorrectConfigAndListener() throws IOException
@@ -617,8 +630,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockedMessage.getBytes();
-                result = msgBody;
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(msgBody);
                 mockDeviceMessaging.send(mockedMessage);
             }
         };
@@ -665,7 +678,7 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockedMessage.getBytes();
+                mockedMessage.getBodyBuffer();
                 result = msgBody;
             }
         };
@@ -687,8 +700,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockedMessage.getBytes();
-                result = new byte[0];
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(new byte[0]);
             }
         };
 
@@ -710,8 +723,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockedMessage.getBytes();
-                result = msgBody;
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(msgBody);
             }
         };
 
@@ -730,8 +743,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockedMessage.getBytes();
-                result = msgBody;
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(msgBody);
             }
         };
 
@@ -752,8 +765,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockedMessage.getBytes();
-                result = msgBody;
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(msgBody);
                 mockDeviceMessaging.send(mockedMessage);
                 result = new IOException(anyString);
             }
@@ -777,8 +790,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockDeviceTwinMsg.getBytes();
-                result = msgBody;
+                mockDeviceTwinMsg.getBodyBuffer();
+                result = ByteBuffer.wrap(msgBody);
                 mockDeviceTwinMsg.getMessageType();
                 result = MessageType.DEVICE_TWIN;
 
@@ -816,8 +829,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockDeviceMethodMsg.getBytes();
-                result = msgBody;
+                mockDeviceMethodMsg.getBodyBuffer();
+                result = ByteBuffer.wrap(msgBody);
                 mockDeviceMethodMsg.getMessageType();
                 result = MessageType.DEVICE_METHODS;
 
@@ -1175,6 +1188,196 @@ public class MqttIotHubConnectionTest
         assertEquals(callbackContext, actualConnectionStateCallbackContext);
     }
 
+    //Tests_SRS_MQTTIOTHUBCONNECTION_28_001: [If the provided delivery tracker is null, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void registerDeliveryTrackerThrowsForNullTracker()
+    {
+        //arrange
+        baseExpectations();
+        MqttIotHubConnection connection = new MqttIotHubConnection(mockConfig);
+
+        //act
+        Deencapsulation.invoke(connection, "registerDeliveryTracker", new Class[] {MqttDeliveryTracker.class}, (Object) null);
+    }
+
+    //Tests_SRS_MQTTIOTHUBCONNECTION_28_002: [This function shall save the provided delivery tracker.]
+    @Test
+    public void registerDeliveryTrackerSavesTracker()
+    {
+        //arrange
+        baseExpectations();
+        MqttIotHubConnection connection = new MqttIotHubConnection(mockConfig);
+
+        //act
+        Deencapsulation.invoke(connection, "registerDeliveryTracker", mockedDeliveryTracker);
+
+        //assert
+        assertEquals(mockedDeliveryTracker, Deencapsulation.getField(connection, "deliveryTracker"));
+    }
+
+    //Tests_SRS_MQTTIOTHUBCONNECTION_28_003: [If a delivery tracker is registered, the function shall set it on the MqttMessaging object.]
+    @Test
+    public void openSetsDeliveryTrackerOnMessagingClient() throws IOException
+    {
+        //arrange
+        baseExpectations();
+        openExpectations();
+        MqttIotHubConnection connection = new MqttIotHubConnection(mockConfig);
+        Deencapsulation.invoke(connection, "registerDeliveryTracker", mockedDeliveryTracker);
+
+        //act
+        connection.open();
+
+        //assert
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockDeviceMessaging, "setDeliveryTracker", mockedDeliveryTracker);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_MQTTIOTHUBCONNECTION_28_004: [If a delivery tracker is registered, this function shall requeue on the tracker the deliveries that the MQTT client no longer holds in flight.]
+    @Test
+    public void connectionEstablishedRequeuesLostDeliveries(@Mocked final MqttAsyncClient mockMqttAsyncClient) throws IOException
+    {
+        //arrange
+        baseExpectations();
+        openExpectations();
+        final IMqttDeliveryToken[] pendingTokens = new IMqttDeliveryToken[] {mockedDeliveryToken};
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockedMqttConnection, "getMqttAsyncClient");
+                result = mockMqttAsyncClient;
+                mockMqttAsyncClient.getPendingDeliveryTokens();
+                result = pendingTokens;
+            }
+        };
+        MqttIotHubConnection connection = new MqttIotHubConnection(mockConfig);
+        Deencapsulation.invoke(connection, "registerDeliveryTracker", mockedDeliveryTracker);
+        connection.open();
+
+        //act
+        connection.connectionEstablished();
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedDeliveryTracker.requeueLostDeliveries(pendingTokens);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_MQTTIOTHUBCONNECTION_28_008: [This function shall reset the in-flight window of the connection to the number of deliveries that the MQTT client still holds in flight.]
+    @Test
+    public void connectionEstablishedResetsInFlightWindow(@Mocked final MqttAsyncClient mockMqttAsyncClient) throws IOException
+    {
+        //arrange
+        baseExpectations();
+        openExpectations();
+        final IMqttDeliveryToken[] pendingTokens = new IMqttDeliveryToken[] {mockedDeliveryToken, mockedDeliveryToken};
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockedMqttConnection, "getMqttAsyncClient");
+                result = mockMqttAsyncClient;
+                mockMqttAsyncClient.getPendingDeliveryTokens();
+                result = pendingTokens;
+            }
+        };
+        MqttIotHubConnection connection = new MqttIotHubConnection(mockConfig);
+        connection.open();
+
+        //act
+        connection.connectionEstablished();
+
+        //assert
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockedMqttConnection, "resetInFlightWindow", 2);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_MQTTIOTHUBCONNECTION_28_005: [If the packet is null, the function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void sendPacketThrowsForNullPacket()
+    {
+        //arrange
+        baseExpectations();
+        MqttIotHubConnection connection = new MqttIotHubConnection(mockConfig);
+
+        //act
+        connection.sendPacket(null);
+    }
+
+    //Tests_SRS_MQTTIOTHUBCONNECTION_28_006: [The function shall send the message of the packet in the same way as sendEvent.]
+    //Tests_SRS_MQTTIOTHUBCONNECTION_28_007: [If the message is telemetry and a delivery tracker is registered, the function shall track the delivery token of the message with the packet.]
+    @Test
+    public void sendPacketTracksTelemetryDelivery() throws IOException
+    {
+        //arrange
+        baseExpectations();
+        openExpectations();
+        new NonStrictExpectations()
+        {
+            {
+                mockedPacket.getMessage();
+                result = mockedMessage;
+                mockDeviceMessaging.send(mockedMessage);
+                result = mockedDeliveryToken;
+            }
+        };
+        MqttIotHubConnection connection = new MqttIotHubConnection(mockConfig);
+        Deencapsulation.invoke(connection, "registerDeliveryTracker", mockedDeliveryTracker);
+        connection.open();
+
+        //act
+        IotHubStatusCode result = connection.sendPacket(mockedPacket);
+
+        //assert
+        assertEquals(IotHubStatusCode.OK_EMPTY, result);
+        new Verifications()
+        {
+            {
+                mockDeviceMessaging.send(mockedMessage);
+                times = 1;
+                mockedDeliveryTracker.track(mockedDeliveryToken, mockedPacket);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_MQTTIOTHUBCONNECTION_28_007: [If the message is telemetry and a delivery tracker is registered, the function shall track the delivery token of the message with the packet.]
+    @Test
+    public void sendEventDoesNotTrackDelivery() throws IOException
+    {
+        //arrange
+        baseExpectations();
+        openExpectations();
+        MqttIotHubConnection connection = new MqttIotHubConnection(mockConfig);
+        Deencapsulation.invoke(connection, "registerDeliveryTracker", mockedDeliveryTracker);
+        connection.open();
+
+        //act
+        connection.sendEvent(mockedMessage);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedDeliveryTracker.track((IMqttDeliveryToken) any, (IotHubOutboundPacket) any);
+                times = 0;
+            }
+        };
+    }
+
     //Tests_SRS_MQTTIOTHUBCONNECTION_34_035: [If the sas token saved in the config has expired and needs to be renewed, this function shall return UNAUTHORIZED.]
     //Tests_SRS_MQTTIOTHUBCONNECTION_34_036: [If the sas token saved in the config has expired and needs to be renewed and if there is a connection state callback saved, this function shall invoke that callback with Status SAS_TOKEN_EXPIRED.]
     @Test
@@ -1225,6 +1428,8 @@ public class MqttIotHubConnectionTest
 
                 mockedMessage.getBytes();
                 result = expectedMessageBody;
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(expectedMessageBody);
 
                 mockedMessage.getMessageType();
                 result = MessageType.UNKNOWN;
@@ -6,14 +6,17 @@ package tests.unit.com.microsoft.azure.sdk.iot.device.transport.mqtt;
 
 import com.microsoft.azure.sdk.iot.device.Message;
 import com.microsoft.azure.sdk.iot.device.MessageProperty;
+import com.microsoft.azure.sdk.iot.device.MessagePropertyMap;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.Mqtt;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttConnection;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttConnectionStateListener;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttMessaging;
 import mockit.*;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -230,8 +233,8 @@ public class MqttMessagingTest
         new NonStrictExpectations()
         {
             {
-                mockedMessage.getBytes();
-                result = messageBody;
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(messageBody);
                 Deencapsulation.invoke(mockMqtt, "publish", anyString, messageBody);
             }
         };
@@ -242,8 +245,8 @@ public class MqttMessagingTest
         new Verifications()
         {
             {
-                mockedMessage.getBytes();
-                times = 2;
+                mockedMessage.getBodyBuffer();
+                times = 1;
                 Deencapsulation.invoke(mockMqtt, "publish", anyString, messageBody);
                 times = 1;
 
@@ -252,6 +255,57 @@ public class MqttMessagingTest
 
     }
 
+    /*
+    **Tests_SRS_MqttMessaging_28_001: [**send method shall return the delivery token returned by publish().**]**
+     */
+    @Test
+    public void sendReturnsDeliveryTokenFromPublish(@Mocked final Mqtt mockMqtt, @Mocked final IMqttDeliveryToken mockDeliveryToken) throws IOException
+    {
+        final byte[] messageBody = {0x61, 0x62, 0x63};
+        new NonStrictExpectations()
+        {
+            {
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(messageBody);
+                Deencapsulation.invoke(mockMqtt, "publish", anyString, messageBody);
+                result = mockDeliveryToken;
+            }
+        };
+
+        MqttMessaging testMqttMessaging = new MqttMessaging(mockedMqttConnection, CLIENT_ID, mockedMqttConnectionStateListener);
+        IMqttDeliveryToken actualToken = testMqttMessaging.send(mockedMessage);
+
+        assertEquals(mockDeliveryToken, actualToken);
+    }
+
+    /*
+    **Tests_SRS_MqttMessaging_28_002: [**send method shall publish a copy of the bytes of the message body.**]**
+     */
+    @Test
+    public void sendPublishesOnlyTheBytesOfABodySlice(@Mocked final Mqtt mockMqtt) throws IOException
+    {
+        final byte[] buffer = {0x00, 0x61, 0x62, 0x63, 0x00};
+        final ByteBuffer slice = ByteBuffer.wrap(buffer, 1, 3).slice();
+        new NonStrictExpectations()
+        {
+            {
+                mockedMessage.getBodyBuffer();
+                result = slice;
+            }
+        };
+
+        MqttMessaging testMqttMessaging = new MqttMessaging(mockedMqttConnection, CLIENT_ID, mockedMqttConnectionStateListener);
+        testMqttMessaging.send(mockedMessage);
+
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockMqtt, "publish", anyString, new byte[] {0x61, 0x62, 0x63});
+                times = 1;
+            }
+        };
+    }
+
     @Test (expected =  IOException.class)
     public void sendShallThrowIOExceptionIfMessageIsEmpty(@Mocked final Mqtt mockMqtt) throws IOException
     {
@@ -259,8 +313,8 @@ public class MqttMessagingTest
         new NonStrictExpectations()
         {
             {
-                mockedMessage.getBytes();
-                result = messageBody;
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(messageBody);
                 Deencapsulation.invoke(mockMqtt, "publish", anyString, messageBody);
                 result = mockedIOException;
             }
@@ -272,7 +326,7 @@ public class MqttMessagingTest
         new Verifications()
         {
             {
-                mockedMessage.getBytes();
+                mockedMessage.getBodyBuffer();
                 times = 1;
                 Deencapsulation.invoke(mockMqtt, "publish", MOCK_PARSE_TOPIC, new byte[1]);
                 times = 1;
@@ -293,7 +347,7 @@ public class MqttMessagingTest
         new Verifications()
         {
             {
-                mockedMessage.getBytes();
+                mockedMessage.getBodyBuffer();
                 times = 0;
                 Deencapsulation.invoke(mockMqtt, "publish", MOCK_PARSE_TOPIC, new byte[1]);
                 times = 0;
@@ -318,10 +372,10 @@ public class MqttMessagingTest
         new NonStrictExpectations()
         {
             {
-                mockedMessage.getBytes();
-                result = messageBody;
-                mockedMessage.getProperties();
-                result = messageProperties;
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(messageBody);
+                mockedMessage.getPropertyMap();
+                result = new MessagePropertyMap(messageProperties);
                 mockedMessage.getDiagnosticId();
                 result = null;
                 mockedMessage.getDiagnosticCorrelationContext();
@@ -357,10 +411,10 @@ public class MqttMessagingTest
         new NonStrictExpectations()
         {
             {
-                mockedMessage.getBytes();
-                result = messageBody;
-                mockedMessage.getProperties();
-                result = messageProperties;
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(messageBody);
+                mockedMessage.getPropertyMap();
+                result = new MessagePropertyMap(messageProperties);
                 mockedMessage.getMessageId();
                 result = messageId;
             }
@@ -393,10 +447,10 @@ public class MqttMessagingTest
         new NonStrictExpectations()
         {
             {
-                mockedMessage.getBytes();
-                result = messageBody;
-                mockedMessage.getProperties();
-                result = messageProperties;
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(messageBody);
+                mockedMessage.getPropertyMap();
+                result = new MessagePropertyMap(messageProperties);
                 mockedMessage.getCorrelationId();
                 result = correlationId;
             }
@@ -429,10 +483,10 @@ public class MqttMessagingTest
         new NonStrictExpectations()
         {
             {
-                mockedMessage.getBytes();
-                result = messageBody;
-                mockedMessage.getProperties();
-                result = messageProperties;
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(messageBody);
+                mockedMessage.getPropertyMap();
+                result = new MessagePropertyMap(messageProperties);
                 mockedMessage.getUserId();
                 result = userId;
             }
@@ -465,10 +519,10 @@ public class MqttMessagingTest
         new NonStrictExpectations()
         {
             {
-                mockedMessage.getBytes();
-                result = messageBody;
-                mockedMessage.getProperties();
-                result = messageProperties;
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(messageBody);
+                mockedMessage.getPropertyMap();
+                result = new MessagePropertyMap(messageProperties);
                 mockedMessage.getTo();
                 result = to;
             }
@@ -514,8 +568,8 @@ public class MqttMessagingTest
         new NonStrictExpectations()
         {
             {
-                mockedMessage.getBytes();
-                result = messageBody;
+                mockedMessage.getBodyBuffer();
+                result = ByteBuffer.wrap(messageBody);
                 mockedMessage.getMessageId();
                 result = messageId;
                 mockedMessage.getCorrelationId();
@@ -524,8 +578,8 @@ public class MqttMessagingTest
                 result = userId;
                 mockedMessage.getTo();
                 result = to;
-                mockedMessage.getProperties();
-                result = messageProperties;
+                mockedMessage.getPropertyMap();
+                result = new MessagePropertyMap(messageProperties);
                 Deencapsulation.invoke(mockMqtt, "publish", anyString, messageBody);
                 mockedMessage.getDiagnosticId();
                 result = null;
@@ -0,0 +1,241 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.mqtt;
+
+import com.microsoft.azure.sdk.iot.device.DeviceTwin.DeviceOperations;
+import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttPendingRequests;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.microsoft.azure.sdk.iot.device.DeviceTwin.DeviceOperations.*;
+import static org.junit.Assert.*;
+
+/** Unit tests for MqttPendingRequests. */
+public class MqttPendingRequestsTest
+{
+    private static final long LONG_TIMEOUT_IN_MILLISECONDS = 60000;
+
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_001: [If the provided requestTimeoutInMilliseconds is zero or negative, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnZeroTimeout()
+    {
+        // act
+        new MqttPendingRequests(0);
+    }
+
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_002: [The constructor shall save the request timeout and start with no pending request.]
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_011: [The function shall return the number of pending requests.]
+    @Test
+    public void constructorStartsWithNoPendingRequest()
+    {
+        // act
+        MqttPendingRequests pendingRequests = new MqttPendingRequests(LONG_TIMEOUT_IN_MILLISECONDS);
+
+        // assert
+        assertEquals(0, pendingRequests.size());
+        assertNull(pendingRequests.removeExpired());
+    }
+
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_003: [If the provided requestId is null or empty, or the operation is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void addThrowsOnNullRequestId()
+    {
+        // act
+        new MqttPendingRequests(LONG_TIMEOUT_IN_MILLISECONDS).add(null, DEVICE_OPERATION_TWIN_GET_REQUEST);
+    }
+
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_003: [If the provided requestId is null or empty, or the operation is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void addThrowsOnEmptyRequestId()
+    {
+        // act
+        new MqttPendingRequests(LONG_TIMEOUT_IN_MILLISECONDS).add("", DEVICE_OPERATION_TWIN_GET_REQUEST);
+    }
+
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_003: [If the provided requestId is null or empty, or the operation is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void addThrowsOnNullOperation()
+    {
+        // act
+        new MqttPendingRequests(LONG_TIMEOUT_IN_MILLISECONDS).add("1", null);
+    }
+
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_004: [If a request with the same id is already pending, the function shall not change it and shall return false.]
+    @Test
+    public void addRefusesRequestIdAlreadyPending()
+    {
+        // arrange
+        MqttPendingRequests pendingRequests = new MqttPendingRequests(LONG_TIMEOUT_IN_MILLISECONDS);
+        pendingRequests.add("1", DEVICE_OPERATION_TWIN_GET_REQUEST);
+
+        // act
+        boolean added = pendingRequests.add("1", DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST);
+
+        // assert
+        assertFalse(added);
+        assertEquals(1, pendingRequests.size());
+        assertEquals(DEVICE_OPERATION_TWIN_GET_REQUEST, pendingRequests.remove("1"));
+    }
+
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_005: [The function shall save the request with its operation and a deadline of the request timeout from now, and return true.]
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_007: [The function shall remove the pending request with the provided id and return its operation, or return null if there is none, even if its deadline passed.]
+    @Test
+    public void removeReturnsOperationOfAnsweredRequest()
+    {
+        // arrange
+        MqttPendingRequests pendingRequests = new MqttPendingRequests(LONG_TIMEOUT_IN_MILLISECONDS);
+
+        // act
+        boolean added = pendingRequests.add("1", DEVICE_OPERATION_TWIN_GET_REQUEST);
+        pendingRequests.add("2", DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST);
+
+        // assert
+        assertTrue(added);
+        assertEquals(2, pendingRequests.size());
+        assertEquals(DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST, pendingRequests.remove("2"));
+        assertNull(pendingRequests.remove("2"));
+        assertEquals(1, pendingRequests.size());
+    }
+
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_006: [If the provided requestId is null, the function shall return null.]
+    @Test
+    public void removeReturnsNullForNullRequestId()
+    {
+        // act
+        DeviceOperations operation = new MqttPendingRequests(LONG_TIMEOUT_IN_MILLISECONDS).remove(null);
+
+        // assert
+        assertNull(operation);
+    }
+
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_007: [The function shall remove the pending request with the provided id and return its operation, or return null if there is none, even if its deadline passed.]
+    @Test
+    public void removeReturnsOperationOfExpiredRequestNotYetRemoved() throws InterruptedException
+    {
+        // arrange
+        MqttPendingRequests pendingRequests = new MqttPendingRequests(1);
+        pendingRequests.add("1", DEVICE_OPERATION_TWIN_GET_REQUEST);
+        Thread.sleep(10);
+
+        // act
+        DeviceOperations operation = pendingRequests.remove("1");
+
+        // assert
+        assertEquals(DEVICE_OPERATION_TWIN_GET_REQUEST, operation);
+        assertNull(pendingRequests.removeExpired());
+    }
+
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_009: [If the deadline of the oldest pending request did not pass, the function shall return null.]
+    @Test
+    public void removeExpiredReturnsNullBeforeDeadline()
+    {
+        // arrange
+        MqttPendingRequests pendingRequests = new MqttPendingRequests(LONG_TIMEOUT_IN_MILLISECONDS);
+        pendingRequests.add("1", DEVICE_OPERATION_TWIN_GET_REQUEST);
+
+        // act
+        Pair<String, DeviceOperations> expired = pendingRequests.removeExpired();
+
+        // assert
+        assertNull(expired);
+        assertEquals(1, pendingRequests.size());
+    }
+
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_008: [The function shall skip the requests that were already removed.]
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_010: [Otherwise, the function shall remove the oldest pending request and return its id and operation.]
+    @Test
+    public void removeExpiredReturnsExpiredRequestsOnceInOrder() throws InterruptedException
+    {
+        // arrange
+        MqttPendingRequests pendingRequests = new MqttPendingRequests(1);
+        pendingRequests.add("1", DEVICE_OPERATION_TWIN_GET_REQUEST);
+        pendingRequests.add("2", DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST);
+        pendingRequests.add("3", DEVICE_OPERATION_TWIN_GET_REQUEST);
+        pendingRequests.remove("2");
+        Thread.sleep(10);
+
+        // act
+        Pair<String, DeviceOperations> first = pendingRequests.removeExpired();
+        Pair<String, DeviceOperations> second = pendingRequests.removeExpired();
+        Pair<String, DeviceOperations> third = pendingRequests.removeExpired();
+
+        // assert
+        assertEquals("1", first.getKey());
+        assertEquals(DEVICE_OPERATION_TWIN_GET_REQUEST, first.getValue());
+        assertEquals("3", second.getKey());
+        assertNull(third);
+        assertEquals(0, pendingRequests.size());
+    }
+
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_008: [The function shall skip the requests that were already removed.]
+    @Test
+    public void removeExpiredSkipsRequestIdAddedAgain() throws InterruptedException
+    {
+        // arrange
+        MqttPendingRequests pendingRequests = new MqttPendingRequests(50);
+        pendingRequests.add("1", DEVICE_OPERATION_TWIN_GET_REQUEST);
+        pendingRequests.remove("1");
+        Thread.sleep(60);
+        pendingRequests.add("1", DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST);
+
+        // act
+        Pair<String, DeviceOperations> expired = pendingRequests.removeExpired();
+
+        // assert
+        assertNull(expired);
+        assertEquals(DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST, pendingRequests.remove("1"));
+    }
+
+    // Tests_SRS_MQTTPENDINGREQUESTS_28_005: [The function shall save the request with its operation and a deadline of the request timeout from now, and return true.]
+    @Test
+    public void addKeepsRequestsAddedFromSeveralThreads() throws InterruptedException
+    {
+        // arrange
+        final int threadCount = 8;
+        final int requestsPerThread = 500;
+        final MqttPendingRequests pendingRequests = new MqttPendingRequests(LONG_TIMEOUT_IN_MILLISECONDS);
+        final AtomicInteger nextRequestId = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++)
+        {
+            Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    for (int j = 0; j < requestsPerThread; j++)
+                    {
+                        pendingRequests.add(String.valueOf(nextRequestId.getAndIncrement()), DEVICE_OPERATION_TWIN_GET_REQUEST);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        // act
+        start.countDown();
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        // assert
+        assertEquals(threadCount * requestsPerThread, pendingRequests.size());
+    }
+}
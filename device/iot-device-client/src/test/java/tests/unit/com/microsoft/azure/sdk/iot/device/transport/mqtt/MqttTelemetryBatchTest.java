@@ -0,0 +1,217 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.mqtt;
+
+import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
+import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessageType;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttTelemetryBatch;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import mockit.VerificationsInOrder;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Unit tests for MqttTelemetryBatch. */
+public class MqttTelemetryBatchTest
+{
+    private static final int MAX_SIZE_IN_BYTES = 4096;
+
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_001: [If the provided maxSizeInBytes is smaller than 1, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnZeroMaxSize()
+    {
+        // act
+        new MqttTelemetryBatch(0);
+    }
+
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_002: [The constructor shall create an empty batch whose body cannot grow over the provided maxSizeInBytes.]
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_010: [The function shall return true if the batch has no packet, and false otherwise.]
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_011: [The function shall return the time the first packet was packed, or 0 if the batch is empty.]
+    @Test
+    public void constructorCreatesEmptyBatch()
+    {
+        // act
+        MqttTelemetryBatch batch = new MqttTelemetryBatch(MAX_SIZE_IN_BYTES);
+
+        // assert
+        assertTrue(batch.isEmpty());
+        assertEquals(0, batch.size());
+        assertEquals(0L, batch.getStartTimeInMilliseconds());
+        assertTrue(batch.getPackets().isEmpty());
+    }
+
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_003: [If the packet is null, has no message, or is a batch, the function shall return false.]
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_004: [The function shall return true only for the telemetry messages with a body that is not empty.]
+    @Test
+    public void canPackAcceptsOnlyTelemetryWithBody()
+    {
+        // arrange
+        Message twinMessage = new Message("twin");
+        twinMessage.setMessageType(MessageType.DEVICE_TWIN);
+        Message methodMessage = new Message("method");
+        methodMessage.setMessageType(MessageType.DEVICE_METHODS);
+        MqttTelemetryBatch batch = new MqttTelemetryBatch(MAX_SIZE_IN_BYTES);
+        batch.add(new IotHubOutboundPacket(new Message("body"), (IotHubEventCallback) null, null));
+
+        // act - assert
+        assertTrue(MqttTelemetryBatch.canPack(new IotHubOutboundPacket(new Message("body"), (IotHubEventCallback) null, null)));
+        assertFalse(MqttTelemetryBatch.canPack(null));
+        assertFalse(MqttTelemetryBatch.canPack(new IotHubOutboundPacket(null, (IotHubEventCallback) null, null)));
+        assertFalse(MqttTelemetryBatch.canPack(new IotHubOutboundPacket(new Message(new byte[0]), (IotHubEventCallback) null, null)));
+        assertFalse(MqttTelemetryBatch.canPack(new IotHubOutboundPacket(twinMessage, (IotHubEventCallback) null, null)));
+        assertFalse(MqttTelemetryBatch.canPack(new IotHubOutboundPacket(methodMessage, (IotHubEventCallback) null, null)));
+        assertFalse(MqttTelemetryBatch.canPack(batch.toPacket()));
+    }
+
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_005: [If the packet cannot be packed into a batch, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void addThrowsOnNullPacket()
+    {
+        // arrange
+        MqttTelemetryBatch batch = new MqttTelemetryBatch(MAX_SIZE_IN_BYTES);
+
+        // act
+        batch.add(null);
+    }
+
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_006: [The function shall append the message of the packet to the JSON array, in the format of the HTTPS batches, and return true.]
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_008: [When the first packet is packed, the function shall save the current time as the start time of the batch.]
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_009: [The function shall return the number of packets in the batch.]
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_012: [The function shall return the packets, in the order they were packed, in a list that cannot be changed.]
+    @Test
+    public void addPacksPacketsInOrder()
+    {
+        // arrange
+        IotHubOutboundPacket first = new IotHubOutboundPacket(new Message("body1"), (IotHubEventCallback) null, null);
+        IotHubOutboundPacket second = new IotHubOutboundPacket(new Message("body2"), (IotHubEventCallback) null, null);
+        MqttTelemetryBatch batch = new MqttTelemetryBatch(MAX_SIZE_IN_BYTES);
+        long before = System.currentTimeMillis();
+
+        // act
+        assertTrue(batch.add(first));
+        assertTrue(batch.add(second));
+
+        // assert
+        assertEquals(2, batch.size());
+        assertFalse(batch.isEmpty());
+        assertTrue(batch.getStartTimeInMilliseconds() >= before);
+        List<IotHubOutboundPacket> packets = batch.getPackets();
+        assertSame(first, packets.get(0));
+        assertSame(second, packets.get(1));
+        try
+        {
+            packets.clear();
+            fail("the list of packets can be changed");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            assertEquals(2, batch.size());
+        }
+    }
+
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_007: [If the message makes the body larger than the maximum size, the function shall leave the batch unchanged and return false.]
+    @Test
+    public void addReturnsFalseWhenMessageDoesNotFit()
+    {
+        // arrange
+        MqttTelemetryBatch batch = new MqttTelemetryBatch(64);
+
+        // act
+        boolean added = batch.add(new IotHubOutboundPacket(new Message(new byte[128]), (IotHubEventCallback) null, null));
+
+        // assert
+        assertFalse(added);
+        assertTrue(batch.isEmpty());
+        assertEquals(0L, batch.getStartTimeInMilliseconds());
+    }
+
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_013: [If the batch is empty, the function shall throw IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void toPacketThrowsOnEmptyBatch()
+    {
+        // arrange
+        MqttTelemetryBatch batch = new MqttTelemetryBatch(MAX_SIZE_IN_BYTES);
+
+        // act
+        batch.toPacket();
+    }
+
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_014: [The function shall create a telemetry message with the JSON array as its body and the content type of the HTTPS batches as its content-type property.]
+    @Test
+    public void toPacketCreatesTelemetryMessageWithJsonArrayBody()
+    {
+        // arrange
+        MqttTelemetryBatch batch = new MqttTelemetryBatch(MAX_SIZE_IN_BYTES);
+        batch.add(new IotHubOutboundPacket(new Message("body1"), (IotHubEventCallback) null, null));
+        batch.add(new IotHubOutboundPacket(new Message("body2"), (IotHubEventCallback) null, null));
+
+        // act
+        Message message = batch.toPacket().getMessage();
+
+        // assert
+        assertEquals(MessageType.DEVICE_TELEMETRY, message.getMessageType());
+        assertEquals("application/vnd.microsoft.iothub.json", message.getProperty(MqttTelemetryBatch.CONTENT_TYPE_PROPERTY));
+        String body = new String(message.getBytes(), Message.DEFAULT_IOTHUB_MESSAGE_CHARSET);
+        assertTrue(body.startsWith("[{\"body\":"));
+        assertTrue(body.endsWith("}]"));
+        assertTrue(body.contains("},{\"body\":"));
+    }
+
+    // Tests_SRS_MQTTTELEMETRYBATCH_28_015: [The callback of the packet shall invoke the callback of every packed packet, in order, with the status of the publish, and shall throw the first exception thrown by these callbacks once all of them are invoked.]
+    @Test
+    public void toPacketCallbackInvokesEveryPackedCallback(
+            @Mocked final IotHubEventCallback mockCallback)
+    {
+        // arrange
+        final Object firstContext = "context1";
+        final Object secondContext = "context2";
+        final IllegalStateException callbackException = new IllegalStateException("callback failed");
+        new NonStrictExpectations()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.ERROR, firstContext);
+                result = callbackException;
+            }
+        };
+        MqttTelemetryBatch batch = new MqttTelemetryBatch(MAX_SIZE_IN_BYTES);
+        batch.add(new IotHubOutboundPacket(new Message("body1"), mockCallback, firstContext));
+        batch.add(new IotHubOutboundPacket(new Message("body2"), (IotHubEventCallback) null, null));
+        batch.add(new IotHubOutboundPacket(new Message("body3"), mockCallback, secondContext));
+        IotHubOutboundPacket packet = batch.toPacket();
+
+        // act
+        try
+        {
+            packet.getCallback().execute(IotHubStatusCode.ERROR, packet.getContext());
+            fail("the exception of the first callback was not thrown");
+        }
+        catch (IllegalStateException e)
+        {
+            assertSame(callbackException, e);
+        }
+
+        // assert
+        new VerificationsInOrder()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.ERROR, firstContext);
+                mockCallback.execute(IotHubStatusCode.ERROR, secondContext);
+            }
+        };
+        new Verifications()
+        {
+            {
+                mockCallback.execute((IotHubStatusCode) any, any);
+                times = 2;
+            }
+        };
+    }
+}
@@ -5,6 +5,7 @@ package tests.unit.com.microsoft.azure.sdk.iot.device.transport.mqtt;
 import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
 import com.microsoft.azure.sdk.iot.device.Message;
 import com.microsoft.azure.sdk.iot.device.auth.IotHubSasToken;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubReconnectScheduler;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.*;
 import mockit.*;
 import org.apache.commons.lang3.tuple.MutablePair;
@@ -17,6 +18,7 @@ import java.io.IOException;
 import java.security.InvalidParameterException;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 
 import static org.junit.Assert.*;
 
@@ -31,6 +33,7 @@ public class MqttTest
     private static final byte[] EXPECTED_PAYLOAD = {0x61, 0x62, 0x63};
     private Message expectedMessage;
     private static final String EXPECTED_EXPIRED_SAS_TOKEN = "SharedAccessSignature sr=hostname&sig=Signature&se=0";
+    private static final int MAX_IN_FLIGHT_COUNT = 10;
 
     @Mocked
     private IMqttDeliveryToken mockMqttDeliveryToken;
@@ -62,6 +65,9 @@ public class MqttTest
     @Mocked
     private MqttConnectionStateListener mockedMqttConnectionStateListener;
 
+    @Mocked
+    private IotHubReconnectScheduler mockReconnectScheduler;
+
     @Before
     public void setUp()
     {
@@ -117,6 +123,11 @@ public class MqttTest
     }
 
     private void baseConstructorExpectations() throws MqttException
+    {
+        baseConstructorExpectations(new Semaphore(MAX_IN_FLIGHT_COUNT));
+    }
+
+    private void baseConstructorExpectations(final Semaphore inFlightWindow) throws MqttException
     {
         new NonStrictExpectations()
         {
@@ -125,6 +136,27 @@ public class MqttTest
                 result = new ConcurrentLinkedQueue<>();
                 Deencapsulation.invoke(mockedMqttConnection, "getMqttLock");
                 result = new Object();
+                Deencapsulation.invoke(mockedMqttConnection, "getInFlightWindow");
+                result = inFlightWindow;
+            }
+        };
+    }
+
+    private void runReconnectsWhenScheduled()
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockReconnectScheduler.schedule((Runnable) any);
+                result = new Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    boolean schedule(Runnable reconnectTask)
+                    {
+                        reconnectTask.run();
+                        return true;
+                    }
+                };
             }
         };
     }
@@ -244,6 +276,7 @@ public class MqttTest
     /*
     ** Tests_SRS_Mqtt_25_004: [**If an instance of the inner class MqttConnectionInfo is already created than it shall return doing nothing.**]**
     *  Tests_SRS_Mqtt_25_003: [The constructor shall retrieve lock, queue from the provided connection information and save the connection.]
+    *  Tests_SRS_Mqtt_28_006: [The constructor shall retrieve the in-flight window from the provided connection information.]
      */
     @Test
     public void manyExtendsOfAbstractClassDoesNotChangeConfig() throws IOException, MqttException
@@ -255,16 +288,19 @@ public class MqttTest
         MqttConnection actualInfoInstance1 = Deencapsulation.getField(mockMqtt1, "mqttConnection");
         Queue<Pair<String, byte[]>> actualQueue1 = Deencapsulation.getField(mockMqtt1, "allReceivedMessages");
         Object actualLock1 = Deencapsulation.getField(mockMqtt1, "mqttLock");
+        Semaphore actualWindow1 = Deencapsulation.getField(mockMqtt1, "inFlightWindow");
 
         Mqtt mockMqtt2 = instantiateMqtt(false);
         MqttConnection actualInfoInstance2 = Deencapsulation.getField(mockMqtt2, "mqttConnection");
         Queue<Pair<String, byte[]>> actualQueue2 = Deencapsulation.getField(mockMqtt2, "allReceivedMessages");
         Object actualLock2 = Deencapsulation.getField(mockMqtt2, "mqttLock");
+        Semaphore actualWindow2 = Deencapsulation.getField(mockMqtt2, "inFlightWindow");
 
         //assert
         assertEquals(actualInfoInstance1, actualInfoInstance2);
         assertEquals(actualQueue1, actualQueue2);
         assertEquals(actualLock1, actualLock2);
+        assertEquals(actualWindow1, actualWindow2);
 
         new Verifications()
         {
@@ -554,28 +590,19 @@ public class MqttTest
     }
 
     /*
-    **Tests_SRS_Mqtt_25_012: [**If the MQTT connection is closed, the function shall throw an IOException.**]**
+    **Tests_SRS_Mqtt_28_002: [**If the MQTT connection is closed while publish waits for a slot in the in-flight window, the function shall throw an IOException.**]**
     */
     @Test (expected = IOException.class)
     public void publishFailsWhenConnectionBrokenWhilePublishing() throws IOException, MqttException
     {
         //arrange
-        baseConstructorExpectations();
+        baseConstructorExpectations(new Semaphore(0));
         final byte[] payload = {0x61, 0x62, 0x63};
-        final IMqttDeliveryToken[] testTokens = {mockMqttDeliveryToken, mockMqttDeliveryToken, mockMqttDeliveryToken,
-                mockMqttDeliveryToken, mockMqttDeliveryToken, mockMqttDeliveryToken,
-                mockMqttDeliveryToken, mockMqttDeliveryToken, mockMqttDeliveryToken,
-                mockMqttDeliveryToken, mockMqttDeliveryToken, mockMqttDeliveryToken
-        };
         new NonStrictExpectations()
         {
             {
                 mockMqttAsyncClient.isConnected();
-                result = true;
-                mockMqttAsyncClient.getPendingDeliveryTokens();
-                result = testTokens;
-                mockMqttAsyncClient.isConnected();
-                result = false;
+                returns(true, false);
             }
         };
         Mqtt mockMqtt = instantiateMqtt(true);
@@ -584,6 +611,112 @@ public class MqttTest
         Deencapsulation.invoke(mockMqtt, "publish", MOCK_PARSE_TOPIC, payload);
     }
 
+    /*
+    **Tests_SRS_Mqtt_28_001: [**publish shall take a slot in the in-flight window of the connection before publishing, waiting without holding the mqtt lock until a slot is free.**]**
+    **Tests_SRS_Mqtt_28_003: [**The function shall return the delivery token returned by paho for the published message.**]**
+    */
+    @Test
+    public void publishTakesSlotFromInFlightWindowAndReturnsToken() throws IOException, MqttException
+    {
+        //arrange
+        final Semaphore inFlightWindow = new Semaphore(MAX_IN_FLIGHT_COUNT);
+        baseConstructorExpectations(inFlightWindow);
+        basePublishExpectations();
+        final byte[] payload = {0x61, 0x62, 0x63};
+        Mqtt mockMqtt = instantiateMqtt(true);
+
+        //act
+        IMqttDeliveryToken actualToken = Deencapsulation.invoke(mockMqtt, "publish", MOCK_PARSE_TOPIC, payload);
+
+        //assert
+        assertEquals(mockMqttDeliveryToken, actualToken);
+        assertEquals(MAX_IN_FLIGHT_COUNT - 1, inFlightWindow.availablePermits());
+    }
+
+    /*
+    **Tests_SRS_Mqtt_28_001: [**publish shall take a slot in the in-flight window of the connection before publishing, waiting without holding the mqtt lock until a slot is free.**]**
+    */
+    @Test
+    public void publishWaitsForSlotWithoutHoldingMqttLock() throws Exception
+    {
+        //arrange
+        final Semaphore inFlightWindow = new Semaphore(0);
+        baseConstructorExpectations(inFlightWindow);
+        basePublishExpectations();
+        final byte[] payload = {0x61, 0x62, 0x63};
+        final Mqtt mockMqtt = instantiateMqtt(true);
+        final Object mqttLock = Deencapsulation.getField(mockMqtt, "mqttLock");
+        final IOException[] publishException = new IOException[1];
+        Thread publishThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Deencapsulation.invoke(mockMqtt, "publish", MOCK_PARSE_TOPIC, payload);
+                }
+                catch (Exception e)
+                {
+                    publishException[0] = new IOException(e);
+                }
+            }
+        });
+
+        //act
+        publishThread.start();
+        Thread.sleep(100);
+        boolean lockFreeWhileWaiting;
+        synchronized (mqttLock)
+        {
+            lockFreeWhileWaiting = publishThread.isAlive();
+        }
+        inFlightWindow.release();
+        publishThread.join(5000);
+
+        //assert
+        assertTrue(lockFreeWhileWaiting);
+        assertFalse(publishThread.isAlive());
+        assertNull(publishException[0]);
+        assertEquals(0, inFlightWindow.availablePermits());
+    }
+
+    /*
+    **Tests_SRS_Mqtt_28_004: [**If the message could not be handed to paho, the function shall give its slot in the in-flight window back.**]**
+    */
+    @Test
+    public void publishGivesSlotBackIfPahoThrows() throws IOException, MqttException
+    {
+        //arrange
+        final Semaphore inFlightWindow = new Semaphore(MAX_IN_FLIGHT_COUNT);
+        baseConstructorExpectations(inFlightWindow);
+        final byte[] payload = {0x61, 0x62, 0x63};
+        new NonStrictExpectations()
+        {
+            {
+                mockMqttAsyncClient.isConnected();
+                result = true;
+                mockMqttAsyncClient.publish(MOCK_PARSE_TOPIC, (MqttMessage) any);
+                result = mockMqttException;
+            }
+        };
+        Mqtt mockMqtt = instantiateMqtt(true);
+        boolean exceptionThrown = false;
+
+        //act
+        try
+        {
+            Deencapsulation.invoke(mockMqtt, "publish", MOCK_PARSE_TOPIC, payload);
+        }
+        catch (Exception e)
+        {
+            exceptionThrown = e instanceof IOException;
+        }
+
+        //assert
+        assertTrue(exceptionThrown);
+        assertEquals(MAX_IN_FLIGHT_COUNT, inFlightWindow.availablePermits());
+    }
 
     /*
     **Tests_SRS_Mqtt_25_014: [**The function shall publish message payload on the publishTopic specified to the IoT Hub given in the configuration.**]**
@@ -994,6 +1127,82 @@ public class MqttTest
         Message receivedMessage = mockMqtt.receive();
     }
 
+    /*
+    **Tests_SRS_Mqtt_28_005: [**The function shall give the slot taken by the delivered message back to the in-flight window.**]**
+     */
+    @Test
+    public void deliveryCompleteGivesSlotBackToInFlightWindow() throws IOException, MqttException
+    {
+        //arrange
+        final Semaphore inFlightWindow = new Semaphore(MAX_IN_FLIGHT_COUNT);
+        baseConstructorExpectations(inFlightWindow);
+        basePublishExpectations();
+        final byte[] payload = {0x61, 0x62, 0x63};
+        Mqtt mockMqtt = instantiateMqtt(true);
+        Deencapsulation.invoke(mockMqtt, "publish", MOCK_PARSE_TOPIC, payload);
+
+        //act
+        mockMqtt.deliveryComplete(mockMqttDeliveryToken);
+
+        //assert
+        assertEquals(MAX_IN_FLIGHT_COUNT, inFlightWindow.availablePermits());
+    }
+
+    /*
+    **Tests_SRS_Mqtt_28_007: [**If a delivery tracker is set, the function shall mark the delivery of the token as complete on the tracker.**]**
+     */
+    @Test
+    public void deliveryCompleteCompletesDeliveryOnTracker(@Mocked final MqttDeliveryTracker mockDeliveryTracker) throws IOException, MqttException
+    {
+        //arrange
+        baseConstructorExpectations();
+        Mqtt mockMqtt = instantiateMqtt(true);
+        Deencapsulation.invoke(mockMqtt, "setDeliveryTracker", mockDeliveryTracker);
+
+        //act
+        mockMqtt.deliveryComplete(mockMqttDeliveryToken);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockDeliveryTracker.complete(mockMqttDeliveryToken);
+                times = 1;
+            }
+        };
+    }
+
+    /*
+    **Tests_SRS_Mqtt_28_008: [**If deliveryTracker is null, the function shall throw an IllegalArgumentException**]**
+     */
+    @Test (expected = IllegalArgumentException.class)
+    public void setDeliveryTrackerThrowsOnNull() throws IOException, MqttException
+    {
+        //arrange
+        baseConstructorExpectations();
+        Mqtt mockMqtt = instantiateMqtt(true);
+
+        //act
+        Deencapsulation.invoke(mockMqtt, "setDeliveryTracker", new Class[] {MqttDeliveryTracker.class}, (Object) null);
+    }
+
+    /*
+    **Tests_SRS_Mqtt_28_009: [**The function shall save the provided delivery tracker.**]**
+     */
+    @Test
+    public void setDeliveryTrackerSavesTracker(@Mocked final MqttDeliveryTracker mockDeliveryTracker) throws IOException, MqttException
+    {
+        //arrange
+        baseConstructorExpectations();
+        Mqtt mockMqtt = instantiateMqtt(true);
+
+        //act
+        Deencapsulation.invoke(mockMqtt, "setDeliveryTracker", mockDeliveryTracker);
+
+        //assert
+        assertEquals(mockDeliveryTracker, Deencapsulation.getField(mockMqtt, "deliveryTracker"));
+    }
+
     /*
     **Tests_SRS_Mqtt_25_030: [**The payload of the message and the topic is added to the received messages queue .**]**
      */
@@ -1038,6 +1247,7 @@ public class MqttTest
     //Tests_SRS_Mqtt_25_026: [The function shall notify all its concrete classes by calling abstract method onReconnect at the entry of the function]
     //Tests_SRS_Mqtt_25_029: [The function shall notify all its concrete classes by calling abstract method onReconnectComplete at the exit of the function]
     //Tests_SRS_Mqtt_34_045: [If this object has a saved listener, this function shall notify the listener that connection was lost.]
+    //Tests_SRS_Mqtt_28_014: [If the attempt reconnects, the retries shall start over the next time the connection is lost.]
     @Test
     public void connectionLostAttemptsToReconnectWithSASTokenStillValid() throws IOException, MqttException
     {
@@ -1045,6 +1255,7 @@ public class MqttTest
         Mqtt mockMqtt = null;
         Throwable t = new Throwable();
         baseConstructorExpectations();
+        runReconnectsWhenScheduled();
 
         new StrictExpectations()
         {
@@ -1068,9 +1279,6 @@ public class MqttTest
                 mockMqttToken.waitForCompletion();
 
                 mockedMqttConnectionStateListener.connectionEstablished();
-
-                mockMqttAsyncClient.isConnected();
-                result = true;
             }
         };
 
@@ -1085,6 +1293,16 @@ public class MqttTest
         {
             System.out.print("Completed throwing exception - " + e.getCause() + e.getMessage());
         }
+
+        new Verifications()
+        {
+            {
+                mockReconnectScheduler.schedule((Runnable) any);
+                times = 1;
+                mockReconnectScheduler.reset();
+                times = 1;
+            }
+        };
     }
 
     /*
@@ -1109,6 +1327,7 @@ public class MqttTest
         Mqtt mockMqtt = null;
         Throwable t = new Throwable();
         baseConstructorExpectations();
+        runReconnectsWhenScheduled();
 
         new StrictExpectations()
         {
@@ -1133,8 +1352,6 @@ public class MqttTest
                 mockMqttAsyncClient.connect(mockMqttConnectionOptions);
                 result = mockMqttToken;
                 mockMqttToken.waitForCompletion();
-                mockMqttAsyncClient.isConnected();
-                result = true;
             }
         };
 
@@ -1142,7 +1359,7 @@ public class MqttTest
         try
         {
             mockMqtt = instantiateMqtt(true);
-            Deencapsulation.setField(mockMqtt, "deviceClientConfig", mockDeviceClientConfig);
+            Deencapsulation.invoke(mockMqtt, "setDeviceClientConfig", mockDeviceClientConfig);
             mockMqtt.connectionLost(t);
         }
         catch (Exception e)
@@ -1166,6 +1383,7 @@ public class MqttTest
         Mqtt mockMqtt = null;
         Throwable t = new Throwable();
         baseConstructorExpectations();
+        runReconnectsWhenScheduled();
         new StrictExpectations()
         {
             {
@@ -1190,9 +1408,7 @@ public class MqttTest
         Deencapsulation.invoke(mockMqtt, "publish", MOCK_PARSE_TOPIC, payload);
     }
     
-    /*
-    **Tests_SRS_Mqtt_25_027: [**The function shall attempt to reconnect to the IoTHub in a loop with exponential backoff until it succeeds**]**
-     */
+    //Tests_SRS_Mqtt_28_015: [If the attempt fails, the next attempt shall be scheduled with the reconnect scheduler.]
     @Test
     public void connectionLostAttemptsToReconnectAgainIfConnectFails() throws IOException, MqttException
     {
@@ -1200,6 +1416,7 @@ public class MqttTest
         Mqtt mockMqtt = null;
         Throwable t = new Throwable();
         baseConstructorExpectations();
+        runReconnectsWhenScheduled();
         new NonStrictExpectations()
         {
             {
@@ -1244,9 +1461,6 @@ public class MqttTest
                 result = mockMqttToken;
 
                 mockMqttToken.waitForCompletion();
-
-                mockMqttAsyncClient.isConnected();
-                result = true;
             }
         };
         //act
@@ -1261,6 +1475,98 @@ public class MqttTest
             System.out.print("Completed throwing exception - " + e.getCause() + e.getMessage());
         }
 
+        new Verifications()
+        {
+            {
+                mockReconnectScheduler.schedule((Runnable) any);
+                times = 2;
+                mockReconnectScheduler.reset();
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_Mqtt_28_011: [The function shall schedule the first attempt to reconnect with the reconnect scheduler, and return without waiting for it.]
+    //Tests_SRS_Mqtt_28_016: [The function shall create the reconnect scheduler of the connection with the device client configuration.]
+    @Test
+    public void connectionLostSchedulesReconnectWithoutWaiting() throws IOException, MqttException
+    {
+        //arrange
+        baseConstructorExpectations();
+        Mqtt mockMqtt = instantiateMqtt(true, mockedMqttConnectionStateListener);
+        Deencapsulation.invoke(mockMqtt, "setDeviceClientConfig", mockDeviceClientConfig);
+
+        //act
+        mockMqtt.connectionLost(new Throwable());
+
+        //assert
+        new Verifications()
+        {
+            {
+                new IotHubReconnectScheduler(mockDeviceClientConfig);
+                times = 1;
+                mockedMqttConnectionStateListener.connectionLost();
+                times = 1;
+                mockReconnectScheduler.schedule((Runnable) any);
+                times = 1;
+                mockMqttAsyncClient.connect((MqttConnectOptions) any);
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_Mqtt_28_013: [If the connection was closed since the attempt was scheduled, the attempt shall do nothing.]
+    @Test
+    public void scheduledReconnectDoesNothingIfTheConnectionWasClosed() throws IOException, MqttException
+    {
+        //arrange
+        baseConstructorExpectations();
+        runReconnectsWhenScheduled();
+        new NonStrictExpectations()
+        {
+            {
+                mockReconnectScheduler.isCancelled();
+                result = true;
+            }
+        };
+        Mqtt mockMqtt = instantiateMqtt(true);
+        Deencapsulation.invoke(mockMqtt, "setDeviceClientConfig", mockDeviceClientConfig);
+
+        //act
+        mockMqtt.connectionLost(new Throwable());
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockMqttAsyncClient.connect((MqttConnectOptions) any);
+                times = 0;
+                mockReconnectScheduler.schedule((Runnable) any);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_Mqtt_28_017: [The function shall cancel the pending attempt to reconnect, if any.]
+    @Test
+    public void disconnectCancelsThePendingReconnect() throws IOException, MqttException
+    {
+        //arrange
+        baseConstructorExpectations();
+        Mqtt mockMqtt = instantiateMqtt(true);
+        Deencapsulation.invoke(mockMqtt, "setDeviceClientConfig", mockDeviceClientConfig);
+
+        //act
+        Deencapsulation.invoke(mockMqtt, "disconnect");
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockReconnectScheduler.cancel();
+                times = 1;
+            }
+        };
     }
 
     // Tests_SRS_Mqtt_34_021: [If the call peekMessage returns null then this method shall do nothing and return null]
@@ -1411,6 +1717,48 @@ public class MqttTest
         assertEquals("=", receivedMessage.getProperties()[3].getValue());
     }
 
+    /*
+    **Tests_SRS_Mqtt_28_010: [**This method shall parse the properties in a single pass over the topic, and only URL decode a key or value that holds an escaped character.**]**
+    */
+    @Test
+    public void receiveSuccessParsesPlainAndEscapedPropertiesInOnePass() throws IOException, MqttException
+    {
+        //arrange
+        final byte[] payload = {0x61, 0x62, 0x63};
+        final String mockParseTopic = "devices/deviceID/messages/devicebound/%24.mid=mid-1&%24.to=%2Fdevices%2FdeviceID&%24.cid=cid%2D2&iothub-ack=full&plain=value&escaped=a%20b&";
+        baseConstructorExpectations();
+        baseConnectExpectation();
+        new MockUp<MqttMessaging>()
+        {
+            @Mock
+            Pair<String, byte[]> peekMessage()
+            {
+                return new MutablePair<>(mockParseTopic, payload);
+            }
+        };
+
+        final Mqtt mockMqtt = new MqttMessaging(mockedMqttConnection, CLIENT_ID, mockedMqttConnectionStateListener);
+        new NonStrictExpectations()
+        {
+            {
+                mockMqttAsyncClient.isConnected();
+                result = true;
+            }
+        };
+
+        Deencapsulation.invoke(mockMqtt, "connect");
+
+        //act
+        Message receivedMessage = mockMqtt.receive();
+
+        //assert
+        assertEquals("mid-1", receivedMessage.getMessageId());
+        assertEquals("cid-2", receivedMessage.getCorrelationId());
+        assertEquals(2, receivedMessage.getProperties().length);
+        assertEquals("value", receivedMessage.getProperty("plain"));
+        assertEquals("a b", receivedMessage.getProperty("escaped"));
+    }
+
     /*
     ** Codes_SRS_Mqtt_99_50: [**If deviceConfig is null, the function shall throw an IllegalArgumentException**]**
     */
@@ -5,19 +5,32 @@ package tests.unit.com.microsoft.azure.sdk.iot.device.transport.mqtt;
 
 import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenAuthenticationProvider;
+import com.microsoft.azure.sdk.iot.device.exceptions.IotHubSizeExceededException;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundMessageStore;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueue;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueueMetrics;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsBatchMessage;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsSingleMessage;
+import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttDeliveryTracker;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttIotHubConnection;
+import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttTelemetryBatch;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttTransport;
 import junit.framework.AssertionFailedError;
 import mockit.*;
+import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.Executor;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.*;
@@ -46,6 +59,19 @@ public class MqttTransportTest
 
     private class ConnectionStateCallbackContext {}
 
+    @Before
+    public void setup()
+    {
+        // The callbacks are invoked on the calling thread, as without a callback executor.
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getCallbackExecutor();
+                result = null;
+            }
+        };
+    }
+
     //Tests_SRS_MQTTTRANSPORT_34_003: [This function shall open the connection of the saved MqttIotHubConnection object.]
     @Test
     public void openOpensMqttConnection() throws IOException, NoSuchFieldException, IllegalAccessException
@@ -114,6 +140,25 @@ public class MqttTransportTest
         };
     }
 
+    // Tests_SRS_MQTTTRANSPORT_28_026: [The function shall open the transport queue, so it accepts new messages again after a close.]
+    // Tests_SRS_MQTTTRANSPORT_28_027: [The function shall close the transport queue first, so the callers waiting for room in it get their messages cancelled.]
+    @Test
+    public void closeClosesQueueAndOpenOpensItAgain() throws IOException
+    {
+        // arrange
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        IotHubOutboundQueue waitingList = Deencapsulation.getField(transport, "waitingList");
+        transport.open();
+
+        // act
+        transport.close();
+
+        // assert
+        assertTrue((boolean) Deencapsulation.getField(waitingList, "isClosed"));
+        transport.open();
+        assertFalse((boolean) Deencapsulation.getField(waitingList, "isClosed"));
+    }
+
     // Tests_SRS_MQTTTRANSPORT_15_006: [If the MQTT connection is closed, the function shall do nothing.]
     @Test
     public void closeDoesNothingIfConnectionNeverOpened() throws IOException
@@ -178,7 +223,7 @@ public class MqttTransportTest
         transport.close();
 
 
-        Queue<IotHubOutboundPacket> actualWaitingMessages = Deencapsulation.getField(transport, "waitingList");
+        IotHubOutboundQueue actualWaitingMessages = Deencapsulation.getField(transport, "waitingList");
         
         assertEquals(actualWaitingMessages.size(), 0);
         
@@ -303,7 +348,7 @@ public class MqttTransportTest
         new Verifications()
         {
             {
-                expectedConnection.sendEvent(mockMsg);
+                expectedConnection.sendPacket(mockPacket);
                 times = 2;
             }
         };
@@ -335,7 +380,11 @@ public class MqttTransportTest
                 result = mockCallback;
                 mockPacket.getContext();
                 result = context;
-                mockedConnection.sendEvent((Message) any);
+                mockPacket.getMessage();
+                result = mockMsg;
+                mockMsg.getMessageType();
+                result = MessageType.DEVICE_TWIN;
+                mockedConnection.sendPacket((IotHubOutboundPacket) any);
                 returns(IotHubStatusCode.OK_EMPTY, IotHubStatusCode.ERROR);
                 new IotHubCallbackPacket(IotHubStatusCode.OK_EMPTY, mockCallback, context);
                 result = mockCallbackPacket;
@@ -417,7 +466,7 @@ public class MqttTransportTest
         new NonStrictExpectations()
         {
             {
-                mockedConnection.sendEvent((Message) any);
+                mockedConnection.sendPacket((IotHubOutboundPacket) any);
                 result = new IllegalStateException(anyString);
                 result = IotHubStatusCode.OK_EMPTY;
             }
@@ -433,12 +482,181 @@ public class MqttTransportTest
         new Verifications()
         {
             {
-                expectedConnection.sendEvent(mockMsg);
+                expectedConnection.sendPacket((IotHubOutboundPacket) any);
                 times = 2;
             }
         };
     }
 
+    // Tests_SRS_MQTTTRANSPORT_28_020: [If the config has an MQTT batch maximum size, the function shall pack
+    // the telemetry messages into batches that do not exceed it, in the order they were queued.]
+    // Tests_SRS_MQTTTRANSPORT_28_023: [The function shall publish the pending batch once its first message waited
+    // for the MQTT batch linger time of the config.]
+    @Test
+    public void sendMessagesPacksTelemetryIntoOneBatch(
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException
+    {
+        // arrange
+        final Object[] contexts = { "context1", "context2", "context3" };
+        final List<IotHubOutboundPacket> sentPackets = new ArrayList<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getMqttBatchMaxSizeInBytes();
+                result = 4096;
+                mockedConfig.getMqttBatchLingerTimeInMilliseconds();
+                result = 0L;
+                mockedConnection.sendPacket(withCapture(sentPackets));
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+        for (Object context : contexts)
+        {
+            transport.addMessage(new Message("body"), mockCallback, context);
+        }
+
+        // act
+        transport.sendMessages();
+
+        // assert
+        assertEquals(1, sentPackets.size());
+        Message batch = sentPackets.get(0).getMessage();
+        assertEquals("application/vnd.microsoft.iothub.json", batch.getProperty(MqttTelemetryBatch.CONTENT_TYPE_PROPERTY));
+        String body = new String(batch.getBytes(), Message.DEFAULT_IOTHUB_MESSAGE_CHARSET);
+        assertTrue(body.startsWith("[{") && body.endsWith("}]"));
+        assertEquals(3, body.split("\"body\":").length - 1);
+        sentPackets.get(0).getCallback().execute(IotHubStatusCode.OK_EMPTY, null);
+        new VerificationsInOrder()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.OK_EMPTY, contexts[0]);
+                mockCallback.execute(IotHubStatusCode.OK_EMPTY, contexts[1]);
+                mockCallback.execute(IotHubStatusCode.OK_EMPTY, contexts[2]);
+            }
+        };
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_28_021: [When a message does not fit in the batch, the function shall publish the batch
+    // and start a new one, and a message too large for an empty batch shall be sent on its own.]
+    @Test
+    public void sendMessagesPublishesFullBatchAndStartsNewOne(
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException, IotHubSizeExceededException
+    {
+        // arrange
+        final Message[] messages = { new Message("body1"), new Message("body2"), new Message("body3") };
+        HttpsBatchMessage twoMessages = new HttpsBatchMessage();
+        twoMessages.addMessage(HttpsSingleMessage.parseHttpsMessage(messages[0]));
+        twoMessages.addMessage(HttpsSingleMessage.parseHttpsMessage(messages[1]));
+        final int twoMessagesSize = twoMessages.getBody().length;
+        final List<IotHubOutboundPacket> sentPackets = new ArrayList<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getMqttBatchMaxSizeInBytes();
+                result = twoMessagesSize;
+                mockedConfig.getMqttBatchLingerTimeInMilliseconds();
+                result = 0L;
+                mockedConnection.sendPacket(withCapture(sentPackets));
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+        for (Message message : messages)
+        {
+            transport.addMessage(message, mockCallback, null);
+        }
+
+        // act
+        transport.sendMessages();
+
+        // assert
+        assertEquals(2, sentPackets.size());
+        assertArrayEquals(twoMessages.getBody(), sentPackets.get(0).getMessage().getBytes());
+        String secondBody = new String(sentPackets.get(1).getMessage().getBytes(), Message.DEFAULT_IOTHUB_MESSAGE_CHARSET);
+        assertEquals(1, secondBody.split("\"body\":").length - 1);
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_28_022: [The function shall publish the pending batch before a message that is not packed, so the messages keep their order.]
+    @Test
+    public void sendMessagesPublishesBatchBeforeTwinMessage(
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException
+    {
+        // arrange
+        final Message twinMessage = new Message("twin");
+        twinMessage.setMessageType(MessageType.DEVICE_TWIN);
+        final List<IotHubOutboundPacket> sentPackets = new ArrayList<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getMqttBatchMaxSizeInBytes();
+                result = 4096;
+                mockedConfig.getMqttBatchLingerTimeInMilliseconds();
+                result = 60000L;
+                mockedConnection.sendPacket(withCapture(sentPackets));
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+        transport.addMessage(new Message("telemetry"), mockCallback, null);
+        transport.addMessage(twinMessage, mockCallback, null);
+
+        // act
+        transport.sendMessages();
+
+        // assert
+        assertEquals(2, sentPackets.size());
+        assertNotNull(sentPackets.get(0).getMessage().getProperty(MqttTelemetryBatch.CONTENT_TYPE_PROPERTY));
+        assertSame(twinMessage, sentPackets.get(1).getMessage());
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_28_023: [The function shall publish the pending batch once its first message waited
+    // for the MQTT batch linger time of the config.]
+    // Tests_SRS_MQTTTRANSPORT_28_025: [The function shall return false while a batch waits for the linger time.]
+    // Tests_SRS_MQTTTRANSPORT_28_024: [The method will cancel the messages packed into a batch that was not published.]
+    @Test
+    public void sendMessagesKeepsBatchUntilLingerTimeAndCloseCancelsIt(
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException
+    {
+        // arrange
+        final Object context = "context";
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getMqttBatchMaxSizeInBytes();
+                result = 4096;
+                mockedConfig.getMqttBatchLingerTimeInMilliseconds();
+                result = 60000L;
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+        transport.addMessage(new Message("body"), mockCallback, context);
+
+        // act
+        transport.sendMessages();
+
+        // assert
+        assertFalse(transport.isEmpty());
+        transport.close();
+        new Verifications()
+        {
+            {
+                mockedConnection.sendPacket((IotHubOutboundPacket) any);
+                times = 0;
+                mockCallback.execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, context);
+                times = 1;
+            }
+        };
+    }
+
     // Tests_SRS_MQTTTRANSPORT_15_011: [If the MQTT connection is closed,
     // the function shall throw an IllegalStateException.]
     @Test(expected = IllegalStateException.class)
@@ -500,6 +718,67 @@ public class MqttTransportTest
         };
     }
 
+    // Tests_SRS_MQTTTRANSPORT_28_014: [The constructor shall create a callback dispatcher for the config.]
+    // Tests_SRS_MQTTTRANSPORT_28_015: [The function shall invoke the callbacks through the callback dispatcher, so a slow callback does not hold the send lock when the config has a callback executor.]
+    // Tests_SRS_MQTTTRANSPORT_28_017: [The function shall return false while the callback dispatcher has callbacks to invoke.]
+    // Tests_SRS_MQTTTRANSPORT_28_018: [The function shall return the metrics of the callback dispatcher.]
+    @Test
+    public void invokeCallbacksWithCallbackExecutorInvokesCallbacksOnExecutor(
+            @Mocked final IotHubEventCallback mockCallback) throws IOException
+    {
+        // arrange
+        final List<Runnable> tasks = new ArrayList<>();
+        final Executor executor = new Executor()
+        {
+            @Override
+            public void execute(Runnable task)
+            {
+                tasks.add(task);
+            }
+        };
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getCallbackExecutor();
+                result = executor;
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+        Queue<IotHubCallbackPacket> callbackList = Deencapsulation.getField(transport, "callbackList");
+        callbackList.add(new IotHubCallbackPacket(IotHubStatusCode.OK_EMPTY, mockCallback, "first"));
+        callbackList.add(new IotHubCallbackPacket(IotHubStatusCode.ERROR, mockCallback, "second"));
+
+        // act
+        transport.invokeCallbacks();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockCallback.execute((IotHubStatusCode) any, any);
+                times = 0;
+            }
+        };
+        assertEquals(1, tasks.size());
+        assertFalse(transport.isEmpty());
+        assertEquals(2, transport.getCallbackDispatcherMetrics().getPendingCount());
+
+        // act
+        tasks.remove(0).run();
+
+        // assert
+        new VerificationsInOrder()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.OK_EMPTY, "first");
+                mockCallback.execute(IotHubStatusCode.ERROR, "second");
+            }
+        };
+        assertTrue(transport.isEmpty());
+        assertEquals(2L, transport.getCallbackDispatcherMetrics().getCompletedCount());
+    }
+
     // Tests_SRS_MQTTTRANSPORT_15_014: [If the transport is closed, the function shall throw an IllegalStateException.]
     @Test(expected = IllegalStateException.class)
     public void invokeCallbacksFailsIfTransportNeverOpened() throws IOException
@@ -632,6 +911,193 @@ public class MqttTransportTest
         assertThat(testIsEmpty, is(expectedIsEmpty));
     }
 
+    // Tests_SRS_MQTTTRANSPORT_28_001: [The constructor shall create a delivery tracker and register it with the MqttIotHubConnection.]
+    @Test
+    public void constructorRegistersDeliveryTracker(@Mocked final MqttDeliveryTracker mockTracker)
+    {
+        // act
+        MqttTransport transport = new MqttTransport(mockedConfig);
+
+        // assert
+        final MqttDeliveryTracker actualTracker = Deencapsulation.getField(transport, "deliveryTracker");
+        assertNotNull(actualTracker);
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockedConnection, "registerDeliveryTracker", actualTracker);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_28_004: [If a telemetry message was sent with status OK_EMPTY,
+    // the function shall not add its callback, which is added when the IoT Hub acknowledges the message.]
+    @Test
+    public void sendMessagesDoesNotAddCallbackForTrackedTelemetry(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getMessageType();
+                result = MessageType.DEVICE_TELEMETRY;
+                mockedConnection.sendPacket((IotHubOutboundPacket) any);
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+        transport.addMessage(mockMsg, mockCallback, null);
+
+        // act
+        transport.sendMessages();
+
+        // assert
+        Queue<IotHubCallbackPacket> callbackList = Deencapsulation.getField(transport, "callbackList");
+        assertTrue(callbackList.isEmpty());
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_28_003: [The function shall put the messages requeued by the delivery tracker in front of the waiting list, keeping their order.]
+    @Test
+    public void sendMessagesSendsRequeuedMessagesFirst(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final MqttDeliveryTracker mockTracker)
+            throws IOException
+    {
+        // arrange
+        final IotHubOutboundPacket requeuedPacket1 = new IotHubOutboundPacket(mockMsg, mockCallback, "requeued1");
+        final IotHubOutboundPacket requeuedPacket2 = new IotHubOutboundPacket(mockMsg, mockCallback, "requeued2");
+        new NonStrictExpectations()
+        {
+            {
+                mockTracker.pollRequeued();
+                returns(Arrays.asList(requeuedPacket1, requeuedPacket2), Arrays.<IotHubOutboundPacket>asList());
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+        transport.addMessage(mockMsg, mockCallback, "waiting");
+
+        // act
+        transport.sendMessages();
+
+        // assert
+        new VerificationsInOrder()
+        {
+            {
+                mockedConnection.sendPacket(requeuedPacket1);
+                mockedConnection.sendPacket(requeuedPacket2);
+                mockedConnection.sendPacket(withInstanceOf(IotHubOutboundPacket.class));
+            }
+        };
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_28_005: [The function shall add the messages acknowledged by the IoT Hub to the callback queue with status OK_EMPTY.]
+    // Tests_SRS_MQTTTRANSPORT_28_006: [The function shall add the messages not acknowledged within the delivery timeout to the callback queue with status ERROR.]
+    @Test
+    public void invokeCallbacksInvokesDeliveredAndTimedOutCallbacks(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final MqttDeliveryTracker mockTracker)
+            throws IOException
+    {
+        // arrange
+        final Object deliveredContext = "delivered";
+        final Object timedOutContext = "timedOut";
+        new NonStrictExpectations()
+        {
+            {
+                mockTracker.pollDelivered();
+                result = Arrays.asList(new IotHubOutboundPacket(mockMsg, mockCallback, deliveredContext));
+                mockTracker.pollTimedOut();
+                result = Arrays.asList(new IotHubOutboundPacket(mockMsg, mockCallback, timedOutContext));
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+
+        // act
+        transport.invokeCallbacks();
+
+        // assert
+        new VerificationsInOrder()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.OK_EMPTY, deliveredContext);
+                times = 1;
+                mockCallback.execute(IotHubStatusCode.ERROR, timedOutContext);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_28_002: [The method will add the messages delivered but not yet notified to the callback list with status OK_EMPTY.]
+    // Tests_SRS_MQTTTRANSPORT_99_020: [The method will remove all the messages which are in progress or waiting to be sent and add them to the callback list.]
+    @Test
+    public void closeCancelsUndeliveredMessages(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final MqttDeliveryTracker mockTracker)
+            throws IOException
+    {
+        // arrange
+        final Object deliveredContext = "delivered";
+        final Object undeliveredContext = "undelivered";
+        new NonStrictExpectations()
+        {
+            {
+                mockTracker.pollDelivered();
+                result = Arrays.asList(new IotHubOutboundPacket(mockMsg, mockCallback, deliveredContext));
+                mockTracker.removeUndelivered();
+                result = Arrays.asList(new IotHubOutboundPacket(mockMsg, mockCallback, undeliveredContext));
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+
+        // act
+        transport.close();
+
+        // assert
+        new VerificationsInOrder()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.OK_EMPTY, deliveredContext);
+                times = 1;
+                mockCallback.execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, undeliveredContext);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_15_019: [The function shall return true if the waiting list,
+    // callback list and delivery tracker are all empty, and false otherwise.]
+    @Test
+    public void isEmptyReturnsFalseIfDeliveryTrackerIsNotEmpty(@Mocked final MqttDeliveryTracker mockTracker)
+            throws IOException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockTracker.isEmpty();
+                result = false;
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+
+        // act
+        boolean testIsEmpty = transport.isEmpty();
+
+        // assert
+        assertFalse(testIsEmpty);
+    }
+
     // Tests_SRS_MQTTTRANSPORT_15_016: [The function shall attempt to consume a message from the IoT Hub.]
     @Test
     public void handleMessageAttemptsToReceiveMessage(@Mocked final MessageCallback mockCallback) throws IOException
@@ -695,6 +1161,146 @@ public class MqttTransportTest
         };
     }
 
+    // Tests_SRS_MQTTTRANSPORT_28_019: [The function shall consume the received messages until none is left,
+    // or the receive prefetch count of the config is reached, so a burst of messages is handled in one pass.]
+    @Test
+    public void handleMessageConsumesAllReceivedMessages(
+            @Mocked final MessageCallback mockCallback,
+            @Mocked final Message mockMsg) throws IOException
+    {
+        // arrange
+        final Object context = new Object();
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getReceivePrefetchCount();
+                result = 10;
+                mockedConfig.getDeviceTelemetryMessageCallback();
+                result = mockCallback;
+                mockedConfig.getDeviceTelemetryMessageContext();
+                result = context;
+                mockedConnection.receiveMessage();
+                returns(mockMsg, mockMsg, mockMsg, null);
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+
+        // act
+        transport.handleMessage();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockedConnection.receiveMessage();
+                times = 4;
+                mockCallback.execute(mockMsg, context);
+                times = 3;
+            }
+        };
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_28_019: [The function shall consume the received messages until none is left,
+    // or the receive prefetch count of the config is reached, so a burst of messages is handled in one pass.]
+    @Test
+    public void handleMessageConsumesUpToReceivePrefetchCount(
+            @Mocked final MessageCallback mockCallback,
+            @Mocked final Message mockMsg) throws IOException
+    {
+        // arrange
+        final Object context = new Object();
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getReceivePrefetchCount();
+                result = 2;
+                mockedConfig.getDeviceTelemetryMessageCallback();
+                result = mockCallback;
+                mockedConfig.getDeviceTelemetryMessageContext();
+                result = context;
+                mockedConnection.receiveMessage();
+                result = mockMsg;
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+
+        // act
+        transport.handleMessage();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockedConnection.receiveMessage();
+                times = 2;
+                mockCallback.execute(mockMsg, context);
+                times = 2;
+            }
+        };
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_28_016: [The function shall invoke the message callback through the callback dispatcher,
+    // so a slow callback does not delay the next received message when the config has a callback executor.]
+    @Test
+    public void handleMessageWithCallbackExecutorInvokesCallbackOnExecutor(
+            @Mocked final MessageCallback mockCallback,
+            @Mocked final Message mockMsg) throws IOException
+    {
+        // arrange
+        final Object context = new Object();
+        final List<Runnable> tasks = new ArrayList<>();
+        final Executor executor = new Executor()
+        {
+            @Override
+            public void execute(Runnable task)
+            {
+                tasks.add(task);
+            }
+        };
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getCallbackExecutor();
+                result = executor;
+                mockedConfig.getDeviceTelemetryMessageCallback();
+                result = mockCallback;
+                mockedConfig.getDeviceTelemetryMessageContext();
+                result = context;
+                mockedConnection.receiveMessage();
+                result = mockMsg;
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+
+        // act
+        transport.handleMessage();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockCallback.execute((Message) any, any);
+                times = 0;
+            }
+        };
+        assertEquals(1, tasks.size());
+
+        // act
+        tasks.remove(0).run();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockCallback.execute(mockMsg, context);
+                times = 1;
+            }
+        };
+    }
+
     // Tests_SRS_MQTTTRANSPORT_15_018: [If the MQTT connection is closed,
     // the function shall throw an IllegalStateException.]
     @Test(expected = IllegalStateException.class)
@@ -741,4 +1347,144 @@ public class MqttTransportTest
             }
         };
     }
-}
\ No newline at end of file
+
+    // Tests_SRS_MQTTTRANSPORT_28_007: [The transport queue shall be bounded by the outbound queue capacity and policy of the config.]
+    // Tests_SRS_MQTTTRANSPORT_28_009: [The function shall return the metrics of the transport queue.]
+    @Test
+    public void addMessageDropsMessageWhenOutboundQueueIsFull(@Mocked final IotHubEventCallback mockCallback) throws IOException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getOutboundQueueCapacity();
+                result = 1;
+                mockedConfig.getOutboundQueuePolicy();
+                result = IotHubOutboundQueuePolicy.FAIL_FAST;
+            }
+        };
+        final Object context = new Object();
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+
+        // act
+        transport.addMessage(new Message("first"), mockCallback, null);
+        transport.addMessage(new Message("second"), mockCallback, context);
+
+        // assert
+        Queue<IotHubCallbackPacket> callbackList = Deencapsulation.getField(transport, "callbackList");
+        assertEquals(1, callbackList.size());
+        IotHubCallbackPacket callbackPacket = callbackList.remove();
+        assertEquals(IotHubStatusCode.OUTBOUND_QUEUE_FULL, callbackPacket.getStatus());
+        assertEquals(context, callbackPacket.getContext());
+        IotHubOutboundQueueMetrics metrics = transport.getOutboundQueueMetrics();
+        assertEquals(1, metrics.getSize());
+        assertEquals(1, metrics.getDroppedCount());
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_28_010: [The function shall open the outbound message store of the config, if any,
+    // and put the messages it holds in front of the transport queue.]
+    // Tests_SRS_MQTTTRANSPORT_28_011: [The function shall close the outbound message store, which keeps the cancelled messages for the next open.]
+    @Test
+    public void openReplaysTheOutboundMessageStoreAndCloseClosesIt(@Mocked final IotHubOutboundMessageStore mockStore,
+                                                                   @Mocked final IotHubEventCallback mockCallback) throws IOException
+    {
+        // arrange
+        final IotHubOutboundPacket storedPacket = new IotHubOutboundPacket(new Message("stored"), mockCallback, null);
+        new NonStrictExpectations()
+        {
+            {
+                IotHubOutboundMessageStore.open(mockedConfig);
+                result = mockStore;
+                mockStore.replay(IotHubOutboundMessageStore.REPLAY_BATCH_SIZE);
+                result = Arrays.asList(storedPacket);
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+
+        // act
+        transport.open();
+
+        // assert
+        IotHubOutboundQueue waitingList = Deencapsulation.getField(transport, "waitingList");
+        assertEquals(1, waitingList.size());
+        assertEquals(storedPacket, waitingList.peek());
+
+        // act
+        transport.close();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, null);
+                times = 1;
+                mockStore.close();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_28_012: [If the transport has an outbound message store, the function shall write the message to it before adding it to the transport queue.]
+    @Test
+    public void addMessageWritesTheMessageToTheOutboundMessageStore(@Mocked final IotHubOutboundMessageStore mockStore,
+                                                                   @Mocked final IotHubEventCallback mockCallback) throws IOException
+    {
+        // arrange
+        final Message message = new Message("telemetry");
+        final Object context = new Object();
+        final IotHubOutboundPacket storedPacket = new IotHubOutboundPacket(message, mockCallback, context);
+        new NonStrictExpectations()
+        {
+            {
+                IotHubOutboundMessageStore.open(mockedConfig);
+                result = mockStore;
+                mockStore.replay(anyInt);
+                result = new ArrayList<IotHubOutboundPacket>();
+                mockStore.createPacket(message, mockCallback, context);
+                result = storedPacket;
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+
+        // act
+        transport.addMessage(message, mockCallback, context);
+
+        // assert
+        IotHubOutboundQueue waitingList = Deencapsulation.getField(transport, "waitingList");
+        assertEquals(storedPacket, waitingList.peek());
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_28_013: [If the waiting list is empty, the function shall put the next messages of the outbound message store in it.]
+    @Test
+    public void sendMessagesSendsTheNextMessagesOfTheOutboundMessageStore(@Mocked final IotHubOutboundMessageStore mockStore,
+                                                                         @Mocked final IotHubEventCallback mockCallback) throws IOException
+    {
+        // arrange
+        final IotHubOutboundPacket storedPacket = new IotHubOutboundPacket(new Message("stored"), mockCallback, null);
+        new NonStrictExpectations()
+        {
+            {
+                IotHubOutboundMessageStore.open(mockedConfig);
+                result = mockStore;
+                mockStore.replay(IotHubOutboundMessageStore.REPLAY_BATCH_SIZE);
+                returns(new ArrayList<IotHubOutboundPacket>(), Arrays.asList(storedPacket));
+            }
+        };
+        MqttTransport transport = new MqttTransport(mockedConfig);
+        transport.open();
+
+        // act
+        transport.sendMessages();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockedConnection.sendPacket(storedPacket);
+                times = 1;
+            }
+        };
+    }
+}
@@ -27,9 +27,40 @@ public class TopicParserTest
 
         //assert
         assertNotNull(testParser);
-        String[] tokens = Deencapsulation.getField(testParser, "topicTokens");
-        assertNotNull(tokens);
-        assertTrue(tokens.length > 1);
+        int tokenCount = Deencapsulation.invoke(testParser, "getTokenCount");
+        assertTrue(tokenCount > 1);
+    }
+
+    /*
+    Tests_SRS_TopicParser_28_001: [**The constructor shall find the tokens in a single pass and save where each of them starts, without copying them out of the topic.**]**
+    Tests_SRS_TopicParser_28_002: [**This method shall return the number of tokens, not counting the empty tokens at the end of the topic.**]**
+     */
+    @Test
+    public void getTokenCountIgnoresEmptyTokensAtTheEnd()
+    {
+        //act
+        TopicParser testParser = new TopicParser("$iothub/twin/res//200//");
+
+        //assert
+        assertEquals(5, (int) Deencapsulation.invoke(testParser, "getTokenCount"));
+        assertEquals("", Deencapsulation.invoke(testParser, "getMethodName", 3));
+        assertEquals("200", Deencapsulation.invoke(testParser, "getMethodName", 4));
+    }
+
+    /*
+    Tests_SRS_TopicParser_28_001: [**The constructor shall find the tokens in a single pass and save where each of them starts, without copying them out of the topic.**]**
+     */
+    @Test
+    public void getRequestIdDoesNotLookPastItsToken()
+    {
+        //arrange
+        TopicParser testParser = new TopicParser("$iothub/methods/POST/?/$rid=5");
+
+        //act
+        String reqId = Deencapsulation.invoke(testParser, "getRequestId", 3);
+
+        //assert
+        assertNull(reqId);
     }
 
     /*
@@ -5,12 +5,13 @@
 
 package com.microsoft.azure.sdk.iot.service.transport.http;
 
+import com.microsoft.azure.sdk.iot.deps.transport.http.HttpStreamReader;
+
 import javax.net.ssl.HttpsURLConnection;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.ProtocolException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -203,7 +204,8 @@ public class HttpConnection
         // Codes_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_12_014: [The function shall read from the input stream (response stream) and return the response.]
         // Codes_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_12_015: [The function shall throw an IOException if the input stream could not be accessed.]
         InputStream inputStream = this.connection.getInputStream();
-        byte[] input = readInputStream(inputStream);
+        // Codes_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_28_001: [The function shall read the input stream in bulk, using the Content-Length of the response to size the result.]
+        byte[] input = HttpStreamReader.readFully(inputStream, this.connection.getContentLengthLong());
         // Codes_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_12_016: [The function shall close the input stream after it has been completely read.]
         inputStream.close();
 
@@ -228,7 +230,8 @@ public class HttpConnection
         // if there is no error reason, getErrorStream() returns null.
         if (errorStream != null)
         {
-            error = readInputStream(errorStream);
+            // Codes_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_28_002: [The function shall read the error stream in bulk, using the Content-Length of the response to size the result.]
+            error = HttpStreamReader.readFully(errorStream, this.connection.getContentLengthLong());
             // Codes_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_12_019: [The function shall close the error stream after it has been completely read.]
             errorStream.close();
         }
@@ -278,23 +281,8 @@ public class HttpConnection
     protected static byte[] readInputStream(InputStream stream)
             throws IOException
     {
-        ArrayList<Byte> byteBuffer = new ArrayList<>();
-        int nextByte = -1;
-        // read(byte[]) reads the byte into the buffer and returns the number
-        // of bytes read, or -1 if the end of the stream has been reached.
-        while ((nextByte = stream.read()) > -1)
-        {
-            byteBuffer.add((byte) nextByte);
-        }
-
-        int bufferSize = byteBuffer.size();
-        byte[] byteArray = new byte[bufferSize];
-        for (int i = 0; i < bufferSize; ++i)
-        {
-            byteArray[i] = byteBuffer.get(i);
-        }
-
-        return byteArray;
+        // Codes_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_28_003: [The function shall read the stream in bulk, without knowing its length.]
+        return HttpStreamReader.readFully(stream, -1);
     }
 
     protected HttpConnection()